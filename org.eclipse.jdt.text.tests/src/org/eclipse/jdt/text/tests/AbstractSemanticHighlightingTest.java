@@ -144,6 +144,19 @@ public class AbstractSemanticHighlightingTest extends TestCase {
 		EditorTestHelper.runEventQueue(100);
 	}
 
+	protected void replaceAndReconcile(int line, int column, int length, String text) throws BadLocationException {
+		IDocument document= fSourceViewer.getDocument();
+		document.replace(document.getLineOffset(line) + column, length, text);
+		assertTrue(EditorTestHelper.joinReconciler(fSourceViewer, 1000, 10000, 100));
+		EditorTestHelper.runEventQueue(100);
+	}
+
+	protected void forceReconcile() {
+		EditorTestHelper.forceReconcile(fSourceViewer);
+		assertTrue(EditorTestHelper.joinReconciler(fSourceViewer, 0, 10000, 100));
+		EditorTestHelper.runEventQueue(100);
+	}
+
 	private void enableSemanticHighlighting(String preferenceKey) {
 		IPreferenceStore store= JavaPlugin.getDefault().getPreferenceStore();
 		store.setValue(getEnabledPreferenceKey(preferenceKey), true);
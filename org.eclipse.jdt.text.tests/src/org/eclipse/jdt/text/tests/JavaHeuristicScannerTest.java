@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -17,6 +17,7 @@ import junit.framework.Test;
 import junit.framework.TestCase;
 import junit.framework.TestSuite;
 
+import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.rules.FastPartitioner;
@@ -1104,4 +1105,75 @@ public class JavaHeuristicScannerTest extends TestCase {
 		indent= fScanner.computeIndentation(offset).toString();
 		Assert.assertEquals("\t\t\t", indent);
 	}
+
+	public void testBracketCacheInLargeDocument() throws Exception {
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < 200; i++) {
+			buffer.append("\tvoid m" + i + "(int[] a) {\n");
+			buffer.append("\t\tif (a[0] == ')') { // } (\n");
+			buffer.append("\t\t\tfoo(\"{[(\", new int[] { 1, (2) });\n");
+			buffer.append("\t\t}\n");
+			buffer.append("\t\t/* { */\n");
+			buffer.append("\t}\n");
+		}
+		fDocument.set("class A {\n" + buffer + "}\n");
+		assertPeersAsScanned();
+
+		// partition changes
+		int offset= fDocument.get().indexOf("/* { */");
+		fDocument.replace(offset, 2, "");
+		assertPeersAsScanned();
+		fDocument.replace(fDocument.get().indexOf("foo("), 0, "/*");
+		assertPeersAsScanned();
+		fDocument.replace(0, 0, "\"");
+		assertPeersAsScanned();
+		fDocument.replace(0, 1, "");
+		assertPeersAsScanned();
+
+		// bracket changes
+		offset= fDocument.get().indexOf("void m100");
+		fDocument.replace(offset, 0, "{ (");
+		assertPeersAsScanned();
+		fDocument.replace(offset, 3, "} ]");
+		assertPeersAsScanned();
+		fDocument.replace(offset, fDocument.getLength() / 3, "");
+		assertPeersAsScanned();
+	}
+
+	private void assertPeersAsScanned() throws BadLocationException {
+		char[][] peers= { { '(', ')' }, { '[', ']' }, { '{', '}' } };
+		for (int offset= 0; offset < fDocument.getLength(); offset+= 97) {
+			for (int i= 0; i < peers.length; i++) {
+				char open= peers[i][0];
+				char close= peers[i][1];
+				Assert.assertEquals(scanForOpeningPeer(offset, open, close), fHeuristicScanner.findOpeningPeer(offset, open, close));
+				Assert.assertEquals(scanForOpeningPeer(offset, offset / 2, open, close), fHeuristicScanner.findOpeningPeer(offset, offset / 2, open, close));
+				Assert.assertEquals(scanForClosingPeer(offset, open, close), fHeuristicScanner.findClosingPeer(offset, open, close));
+			}
+		}
+	}
+
+	private int scanForOpeningPeer(int start, char open, char close) throws BadLocationException {
+		return scanForOpeningPeer(start, JavaHeuristicScanner.UNBOUND, open, close);
+	}
+
+	private int scanForOpeningPeer(int start, int bound, char open, char close) throws BadLocationException {
+		int depth= 1;
+		for (int pos= fHeuristicScanner.scanBackward(start, bound, new char[] { open, close }); pos != JavaHeuristicScanner.NOT_FOUND; pos= fHeuristicScanner.scanBackward(pos - 1, bound, new char[] { open, close })) {
+			depth+= fDocument.getChar(pos) == close ? 1 : -1;
+			if (depth == 0)
+				return pos;
+		}
+		return JavaHeuristicScanner.NOT_FOUND;
+	}
+
+	private int scanForClosingPeer(int start, char open, char close) throws BadLocationException {
+		int depth= 1;
+		for (int pos= fHeuristicScanner.scanForward(start, JavaHeuristicScanner.UNBOUND, new char[] { open, close }); pos != JavaHeuristicScanner.NOT_FOUND; pos= fHeuristicScanner.scanForward(pos + 1, JavaHeuristicScanner.UNBOUND, new char[] { open, close })) {
+			depth+= fDocument.getChar(pos) == open ? 1 : -1;
+			if (depth == 0)
+				return pos;
+		}
+		return JavaHeuristicScanner.NOT_FOUND;
+	}
 }
@@ -327,4 +327,53 @@ public class SemanticHighlightingTest extends AbstractSemanticHighlightingTest {
 		assertEqualPositions(expected, actual);
 	}
 
+	public void testIncrementalReconcileInMethodBody() throws Exception {
+		setUpSemanticHighlighting(SemanticHighlightings.LOCAL_VARIABLE);
+		int count= getSemanticHighlightingPositions().length;
+		String text= "local--;\n\t\t";
+		replaceAndReconcile(9, 2, 0, text);
+		try {
+			Position[] incremental= getSemanticHighlightingPositions();
+			assertEquals(count + 1, incremental.length);
+			forceReconcile();
+			assertEqualPositions(getSemanticHighlightingPositions(), incremental);
+		} finally {
+			replaceAndReconcile(9, 2, text.length(), "");
+		}
+		assertEquals(count, getSemanticHighlightingPositions().length);
+	}
+
+	public void testIncrementalReconcileWithStructuralChange() throws Exception {
+		setUpSemanticHighlighting(SemanticHighlightings.LOCAL_VARIABLE);
+		String text= "}\n\tvoid method2(int local) {\n\t\t";
+		replaceAndReconcile(9, 2, 0, text);
+		try {
+			Position[] incremental= getSemanticHighlightingPositions();
+			forceReconcile();
+			assertEqualPositions(getSemanticHighlightingPositions(), incremental);
+		} finally {
+			replaceAndReconcile(9, 2, text.length(), "");
+		}
+	}
+
+	public void testRepeatedReconcile() throws Exception {
+		setUpSemanticHighlighting(SemanticHighlightings.FIELD);
+		Position[] initial= getSemanticHighlightingPositions();
+		assertTrue(initial.length > 0);
+		forceReconcile();
+		assertEqualPositions(initial, getSemanticHighlightingPositions());
+		String text= "int field2;\n\t";
+		replaceAndReconcile(3, 1, 0, text);
+		try {
+			Position[] edited= getSemanticHighlightingPositions();
+			assertEquals(initial.length + 1, edited.length);
+			assertEqualPositions(new Position[] { createPosition(3, 5, 6) }, new Position[] { edited[0] });
+			forceReconcile();
+			assertEqualPositions(edited, getSemanticHighlightingPositions());
+		} finally {
+			replaceAndReconcile(3, 1, text.length(), "");
+		}
+		assertEqualPositions(initial, getSemanticHighlightingPositions());
+	}
+
 }
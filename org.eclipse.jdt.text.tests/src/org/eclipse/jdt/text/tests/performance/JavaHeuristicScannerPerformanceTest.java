@@ -0,0 +1,110 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.text.tests.performance;
+
+import junit.framework.Test;
+
+import org.eclipse.test.performance.PerformanceMeter;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.rules.FastPartitioner;
+
+import org.eclipse.jdt.ui.text.IJavaPartitions;
+
+import org.eclipse.jdt.internal.ui.text.FastJavaPartitionScanner;
+import org.eclipse.jdt.internal.ui.text.JavaHeuristicScanner;
+import org.eclipse.jdt.internal.ui.text.JavaIndenter;
+
+
+/**
+ * Performance tests for {@link JavaHeuristicScanner} and {@link JavaIndenter} on a large
+ * source file.
+ *
+ * @since 3.8
+ */
+public class JavaHeuristicScannerPerformanceTest extends TextPerformanceTestCase2 {
+
+	private static final String FILE= PerformanceTestSetup.STYLED_TEXT;
+
+	private static final int WARM_UP_RUNS= 5;
+
+	private static final int MEASURED_RUNS= 10;
+
+	public static Test suite() {
+		return new PerformanceTestSetup(new PerfTestSuite(JavaHeuristicScannerPerformanceTest.class));
+	}
+
+	private Document fDocument;
+	private FastPartitioner fPartitioner;
+	private JavaHeuristicScanner fScanner;
+	private JavaIndenter fIndenter;
+
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		fDocument= new Document(ResourceTestHelper.read(FILE).toString());
+		String[] types= new String[] {
+			IJavaPartitions.JAVA_DOC,
+			IJavaPartitions.JAVA_MULTI_LINE_COMMENT,
+			IJavaPartitions.JAVA_SINGLE_LINE_COMMENT,
+			IJavaPartitions.JAVA_STRING,
+			IJavaPartitions.JAVA_CHARACTER,
+			IDocument.DEFAULT_CONTENT_TYPE
+		};
+		fPartitioner= new FastPartitioner(new FastJavaPartitionScanner(), types);
+		fPartitioner.connect(fDocument);
+		fDocument.setDocumentPartitioner(IJavaPartitions.JAVA_PARTITIONING, fPartitioner);
+
+		fScanner= new JavaHeuristicScanner(fDocument);
+		fIndenter= new JavaIndenter(fDocument, fScanner);
+
+		setWarmUpRuns(WARM_UP_RUNS);
+		setMeasuredRuns(MEASURED_RUNS);
+	}
+
+	protected void tearDown() throws Exception {
+		fDocument.setDocumentPartitioner(IJavaPartitions.JAVA_PARTITIONING, null);
+		fPartitioner.disconnect();
+		fPartitioner= null;
+		fDocument= null;
+		super.tearDown();
+	}
+
+	public void measureFindSurroundingBlock(PerformanceMeter meter) throws BadLocationException {
+		int lines= fDocument.getNumberOfLines();
+		meter.start();
+		for (int line= 1; line < lines; line++)
+			fScanner.findSurroundingBlock(fDocument.getLineOffset(line));
+		meter.stop();
+	}
+
+	public void measureComputeIndentation(PerformanceMeter meter) throws BadLocationException {
+		int lines= fDocument.getNumberOfLines();
+		meter.start();
+		for (int line= 0; line < lines; line+= 10)
+			fIndenter.computeIndentation(fDocument.getLineOffset(line));
+		meter.stop();
+	}
+
+	public void measureTypingWithIndentation(PerformanceMeter meter) throws BadLocationException {
+		int lines= fDocument.getNumberOfLines();
+		meter.start();
+		for (int line= lines - 1; line > 0; line-= 50) {
+			int offset= fDocument.getLineOffset(line);
+			fDocument.replace(offset, 0, "{\n");
+			fIndenter.computeIndentation(offset + 2);
+			fDocument.replace(offset, 2, "");
+		}
+		meter.stop();
+	}
+}
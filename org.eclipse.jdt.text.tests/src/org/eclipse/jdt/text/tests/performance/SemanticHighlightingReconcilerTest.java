@@ -0,0 +1,179 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.text.tests.performance;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import org.eclipse.jdt.testplugin.JavaProjectHelper;
+import org.eclipse.test.performance.PerformanceMeter;
+
+import org.eclipse.text.tests.Accessor;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import org.eclipse.core.resources.IFile;
+
+import org.eclipse.jface.preference.IPreferenceStore;
+
+import org.eclipse.jface.text.source.SourceViewer;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import org.eclipse.jdt.ui.SharedASTProvider;
+
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+import org.eclipse.jdt.internal.ui.javaeditor.JavaEditor;
+import org.eclipse.jdt.internal.ui.javaeditor.SemanticHighlighting;
+import org.eclipse.jdt.internal.ui.javaeditor.SemanticHighlightingManager;
+import org.eclipse.jdt.internal.ui.javaeditor.SemanticHighlightingReconciler;
+import org.eclipse.jdt.internal.ui.javaeditor.SemanticHighlightings;
+
+
+/**
+ * Measures the time to reconcile the semantic highlighting of compilation units of increasing
+ * size, with all semantic highlightings enabled.
+ *
+ * @since 3.8
+ */
+public class SemanticHighlightingReconcilerTest extends TextPerformanceTestCase {
+
+	private static final Class THIS= SemanticHighlightingReconcilerTest.class;
+
+	private static final String PROJECT= "SHReconcilerTest";
+
+	private static final String PACKAGE= "test";
+
+	private static final int WARM_UP_RUNS= 3;
+
+	private static final int MEASURED_RUNS= 10;
+
+	private IJavaProject fJavaProject;
+
+	private IPackageFragment fPackage;
+
+
+	public static Test suite() {
+		return new PerformanceTestSetup(new TestSuite(THIS));
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		setWarmUpRuns(WARM_UP_RUNS);
+		setMeasuredRuns(MEASURED_RUNS);
+
+		IPreferenceStore store= JavaPlugin.getDefault().getPreferenceStore();
+		SemanticHighlighting[] semanticHighlightings= SemanticHighlightings.getSemanticHighlightings();
+		for (int i= 0, n= semanticHighlightings.length; i < n; i++)
+			store.setValue(SemanticHighlightings.getEnabledPreferenceKey(semanticHighlightings[i]), true);
+
+		fJavaProject= JavaProjectHelper.createJavaProject(PROJECT, "bin");
+		JavaProjectHelper.addRTJar15(fJavaProject);
+		IPackageFragmentRoot sourceFolder= JavaProjectHelper.addSourceContainer(fJavaProject, "src");
+		fPackage= sourceFolder.createPackageFragment(PACKAGE, false, null);
+	}
+
+	protected void tearDown() throws Exception {
+		EditorTestHelper.closeAllEditors();
+
+		IPreferenceStore store= JavaPlugin.getDefault().getPreferenceStore();
+		SemanticHighlighting[] semanticHighlightings= SemanticHighlightings.getSemanticHighlightings();
+		for (int i= 0, n= semanticHighlightings.length; i < n; i++)
+			store.setToDefault(SemanticHighlightings.getEnabledPreferenceKey(semanticHighlightings[i]));
+
+		if (fJavaProject != null)
+			JavaProjectHelper.delete(fJavaProject);
+		super.tearDown();
+	}
+
+	public void test1000Lines() throws Exception {
+		measure(1000);
+	}
+
+	public void test5000Lines() throws Exception {
+		measure(5000);
+	}
+
+	public void test15000Lines() throws Exception {
+		measure(15000);
+	}
+
+	private void measure(int lines) throws Exception {
+		String typeName= "Reconcile" + lines;
+		ICompilationUnit cu= fPackage.createCompilationUnit(typeName + ".java", createContents(typeName, lines), false, null);
+		JavaEditor editor= (JavaEditor) EditorTestHelper.openInEditor((IFile) cu.getResource(), true);
+		SourceViewer sourceViewer= EditorTestHelper.getSourceViewer(editor);
+		assertTrue(EditorTestHelper.joinReconciler(sourceViewer, 0, 10000, 100));
+		EditorTestHelper.runEventQueue(100);
+
+		SemanticHighlightingManager manager= (SemanticHighlightingManager) new Accessor(editor, JavaEditor.class).get("fSemanticManager");
+		assertNotNull(manager);
+		SemanticHighlightingReconciler reconciler= manager.getReconciler();
+		assertNotNull(reconciler);
+		CompilationUnit ast= SharedASTProvider.getAST(cu, SharedASTProvider.WAIT_YES, null);
+		assertNotNull(ast);
+
+		measure(reconciler, ast, getNullPerformanceMeter(), getWarmUpRuns());
+		PerformanceMeter performanceMeter= createPerformanceMeter("Java Editor: Semantic highlighting reconcile, " + lines + " lines");
+		measure(reconciler, ast, performanceMeter, getMeasuredRuns());
+		commitAllMeasurements();
+		assertAllPerformance();
+	}
+
+	private void measure(SemanticHighlightingReconciler reconciler, CompilationUnit ast, PerformanceMeter performanceMeter, int runs) {
+		for (int i= 0; i < runs; i++) {
+			performanceMeter.start();
+			reconciler.reconciled(ast, true, new NullProgressMonitor());
+			performanceMeter.stop();
+			EditorTestHelper.runEventQueue();
+		}
+	}
+
+	/**
+	 * Creates the source of a type with roughly the given number of lines, using fields,
+	 * parameters, local variables, static and inherited members, literals and deprecated members.
+	 *
+	 * @param typeName the type name
+	 * @param lines the number of lines
+	 * @return the source
+	 */
+	private static String createContents(String typeName, int lines) {
+		StringBuffer buf= new StringBuffer(lines * 40);
+		buf.append("package " + PACKAGE + ";\n");
+		buf.append("\n");
+		buf.append("import java.util.ArrayList;\n");
+		buf.append("import java.util.List;\n");
+		buf.append("\n");
+		buf.append("public class " + typeName + " extends ArrayList<String> {\n");
+		buf.append("    private static final long serialVersionUID= 1L;\n");
+		buf.append("    static int sCount= 0;\n");
+		for (int i= 0, n= (lines - 9) / 12; i < n; i++) {
+			buf.append("    private int fField" + i + "= " + i + ";\n");
+			buf.append("    /** @deprecated */\n");
+			buf.append("    int method" + i + "(int param, List<String> list) {\n");
+			buf.append("        int local= param + fField" + i + " * 2;\n");
+			buf.append("        for (String element : list) {\n");
+			buf.append("            local+= element.length() + size();\n");
+			buf.append("        }\n");
+			buf.append("        Integer boxed= local;\n");
+			buf.append("        sCount+= boxed + Math.max(local, 'c');\n");
+			buf.append("        return " + (i > 0 ? "method" + (i - 1) + "(local, list)" : "local") + ";\n");
+			buf.append("    }\n");
+			buf.append("\n");
+		}
+		buf.append("}\n");
+		return buf.toString();
+	}
+}
@@ -0,0 +1,202 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.text.tests.spelling;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.Set;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.jdt.internal.ui.text.spelling.engine.AbstractSpellDictionary;
+import org.eclipse.jdt.internal.ui.text.spelling.engine.RankedWordProposal;
+
+/**
+ * Tests the dictionaries whose word lists are compiled into memory-mapped files.
+ *
+ * @since 3.9
+ */
+public class CompiledSpellDictionaryTestCase extends TestCase {
+
+	private static class CompiledDictionary extends AbstractSpellDictionary {
+
+		private final File fWordList;
+
+		public CompiledDictionary(File wordList) {
+			fWordList= wordList;
+		}
+
+		/*
+		 * @see org.eclipse.jdt.internal.ui.text.spelling.engine.AbstractSpellDictionary#isCompiled()
+		 */
+		protected boolean isCompiled() {
+			return true;
+		}
+
+		/*
+		 * @see org.eclipse.jdt.ui.text.spelling.engine.ISpellDictionary#addWord(java.lang.String)
+		 */
+		public void addWord(String word) {
+			hashWord(word);
+		}
+
+		/*
+		 * @see org.eclipse.jdt.ui.text.spelling.engine.AbstractSpellDictionary#getURL()
+		 */
+		protected URL getURL() throws MalformedURLException {
+			return fWordList.toURI().toURL();
+		}
+	}
+
+	public static Test suite() {
+		return new TestSuite(CompiledSpellDictionaryTestCase.class);
+	}
+
+	private File fWordList;
+
+	public CompiledSpellDictionaryTestCase(String name) {
+		super(name);
+	}
+
+	/*
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	protected void setUp() throws Exception {
+		super.setUp();
+		fWordList= File.createTempFile("dictionary", ".txt"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	/*
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	protected void tearDown() throws Exception {
+		fWordList.delete();
+		super.tearDown();
+	}
+
+	private void writeWordList(String[] words) throws IOException {
+		OutputStream stream= new FileOutputStream(fWordList);
+		try {
+			for (int i= 0; i < words.length; i++) {
+				stream.write(words[i].getBytes("US-ASCII")); //$NON-NLS-1$
+				stream.write('\n');
+			}
+		} finally {
+			stream.close();
+		}
+	}
+
+	private static boolean contains(Set proposals, String word) {
+		for (Iterator iterator= proposals.iterator(); iterator.hasNext();) {
+			if (((RankedWordProposal)iterator.next()).getText().equals(word))
+				return true;
+		}
+		return false;
+	}
+
+	public void testLookup() throws Exception {
+		writeWordList(new String[] { "lorry", "truck", "Sentence", "global", "lastwagen" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+
+		CompiledDictionary dictionary= new CompiledDictionary(fWordList);
+		try {
+			assertTrue(dictionary.isCorrect("lorry")); //$NON-NLS-1$
+			assertTrue(dictionary.isCorrect("truck")); //$NON-NLS-1$
+			assertTrue(dictionary.isCorrect("Sentence")); //$NON-NLS-1$
+			assertTrue(dictionary.isCorrect("global")); //$NON-NLS-1$
+			assertTrue(dictionary.isCorrect("lastwagen")); //$NON-NLS-1$
+			assertFalse(dictionary.isCorrect("wagon")); //$NON-NLS-1$
+			assertTrue(dictionary.isLoaded());
+
+			assertTrue(contains(dictionary.getProposals("sentence", false), "Sentence")); //$NON-NLS-1$ //$NON-NLS-2$
+		} finally {
+			dictionary.unload();
+		}
+	}
+
+	public void testCompiledFileIsReused() throws Exception {
+		writeWordList(new String[] { "lorry", "truck" }); //$NON-NLS-1$ //$NON-NLS-2$
+		long modified= fWordList.lastModified();
+
+		CompiledDictionary dictionary= new CompiledDictionary(fWordList);
+		assertTrue(dictionary.isCorrect("lorry")); //$NON-NLS-1$
+		dictionary.unload();
+
+		// same length and time stamp: the compiled file is still considered current
+		writeWordList(new String[] { "wagon", "truck" }); //$NON-NLS-1$ //$NON-NLS-2$
+		assertTrue(fWordList.setLastModified(modified));
+
+		dictionary= new CompiledDictionary(fWordList);
+		try {
+			assertTrue(dictionary.isCorrect("lorry")); //$NON-NLS-1$
+			assertFalse(dictionary.isCorrect("wagon")); //$NON-NLS-1$
+		} finally {
+			dictionary.unload();
+		}
+	}
+
+	public void testChangedWordListIsRecompiled() throws Exception {
+		writeWordList(new String[] { "lorry", "truck" }); //$NON-NLS-1$ //$NON-NLS-2$
+		long modified= fWordList.lastModified();
+
+		CompiledDictionary dictionary= new CompiledDictionary(fWordList);
+		assertTrue(dictionary.isCorrect("lorry")); //$NON-NLS-1$
+		dictionary.unload();
+
+		writeWordList(new String[] { "wagon", "truck", "global" }); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		assertTrue(fWordList.setLastModified(modified + 10000));
+
+		dictionary= new CompiledDictionary(fWordList);
+		try {
+			assertFalse(dictionary.isCorrect("lorry")); //$NON-NLS-1$
+			assertTrue(dictionary.isCorrect("wagon")); //$NON-NLS-1$
+			assertTrue(dictionary.isCorrect("global")); //$NON-NLS-1$
+		} finally {
+			dictionary.unload();
+		}
+	}
+
+	public void testAddedWords() throws Exception {
+		writeWordList(new String[] { "lorry", "Sentence" }); //$NON-NLS-1$ //$NON-NLS-2$
+
+		CompiledDictionary dictionary= new CompiledDictionary(fWordList);
+		try {
+			assertTrue(dictionary.isCorrect("lorry")); //$NON-NLS-1$
+			assertFalse(dictionary.isCorrect("truck")); //$NON-NLS-1$
+
+			dictionary.addWord("truck"); //$NON-NLS-1$
+			dictionary.addWord("sentence"); //$NON-NLS-1$
+			assertTrue(dictionary.isCorrect("truck")); //$NON-NLS-1$
+			assertTrue(dictionary.isCorrect("lorry")); //$NON-NLS-1$
+
+			// the words with the same hash come from the compiled file and the heap
+			Set proposals= dictionary.getProposals("sentence", false); //$NON-NLS-1$
+			assertTrue(contains(proposals, "Sentence")); //$NON-NLS-1$
+			assertTrue(contains(proposals, "sentence")); //$NON-NLS-1$
+		} finally {
+			dictionary.unload();
+		}
+
+		// added words are not compiled
+		dictionary= new CompiledDictionary(fWordList);
+		try {
+			assertFalse(dictionary.isCorrect("truck")); //$NON-NLS-1$
+		} finally {
+			dictionary.unload();
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -93,6 +93,16 @@ public class RefactoringScannerTests extends RefactoringTest{
 		helper("A.java", 8);
 	}
 
+	public void testNameNotInText() throws Exception{
+		fScanner.scan("/* TestPatter */ class TestPatter { String s= \"estPattern\"; }".toCharArray());
+		assertEquals("results.length", 0, fScanner.getMatches().size());
+	}
+
+	public void testNameOnlyInCode() throws Exception{
+		fScanner.scan("/* a comment */ class TestPattern { String s= \"a string\"; }".toCharArray());
+		assertEquals("results.length", 0, fScanner.getMatches().size());
+	}
+
 	public void testWord1() throws Exception{
 		helper("B.java", 6);
 	}
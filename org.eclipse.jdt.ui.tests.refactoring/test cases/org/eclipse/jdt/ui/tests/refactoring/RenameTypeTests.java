@@ -1135,6 +1135,27 @@ public class RenameTypeTests extends RefactoringTest {
 		assertEqualLines("invalid renaming in another.p.A", getFileContents(getOutputTestFileName(type, folder)), cu.getSource());
 	}
 
+	public void testTextualMatchesWithByteOrderMark() throws Exception {
+		ICompilationUnit cu= createCU(getPackageP(), "A.java", "package p;\npublic class A {\n}\n");
+		ICompilationUnit other= createCU(getPackageP(), "Other.java", "package p;\n/* uses A */\nclass Other {\n}\n");
+		IFile file= (IFile) other.getResource();
+		byte[] bom= new byte[] { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+		byte[] contents= "package p;\n/* uses A */\nclass Other {\n}\n".getBytes("UTF-8");
+		byte[] bytes= new byte[bom.length + contents.length];
+		System.arraycopy(bom, 0, bytes, 0, bom.length);
+		System.arraycopy(contents, 0, bytes, bom.length, contents.length);
+		file.setCharset("UTF-8", null);
+		file.setContents(new ByteArrayInputStream(bytes), true, false, null);
+		other.close();
+		assertFalse(other.isOpen());
+
+		RenameJavaElementDescriptor descriptor= createRefactoringDescriptor(getType(cu, "A"), "B");
+		descriptor.setUpdateTextualOccurrences(true);
+		assertEquals("was supposed to pass", null, performRefactoring(descriptor));
+
+		assertEqualLines("invalid renaming in p.Other", "package p;\n/* uses B */\nclass Other {\n}\n", other.getSource());
+	}
+
 	public void test64() throws Exception {
 //		printTestDisabledMessage("test for bug 79131");
 		IPackageFragment p2= getRoot().createPackageFragment("p2", true, null);
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2007, 2011 IBM Corporation and others.
+ * Copyright (c) 2007, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -20,6 +20,8 @@ import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
 
+import org.eclipse.swt.widgets.Display;
+
 import org.eclipse.text.edits.ReplaceEdit;
 
 import org.eclipse.ltk.core.refactoring.Change;
@@ -38,6 +40,8 @@ import org.eclipse.jdt.core.refactoring.CompilationUnitChange;
 import org.eclipse.jdt.ui.JavaUI;
 import org.eclipse.jdt.ui.SharedASTProvider;
 
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+
 
 /**
  * Tests the AST provider.
@@ -138,6 +142,62 @@ public class ASTProviderTest extends CoreTests {
 		cu.getBuffer().save(null, true);
 	}
 
+	public void testRecentASTs() throws Exception {
+		IPackageFragment pack1= fSourceFolder.createPackageFragment("test1", false, null);
+		ICompilationUnit cu1= pack1.createCompilationUnit("E1.java", "package test1;\npublic class E1 {\n}\n", false, null);
+		ICompilationUnit cu2= pack1.createCompilationUnit("E2.java", "package test1;\npublic class E2 {\n}\n", false, null);
+
+		try {
+			JavaUI.openInEditor(cu1);
+			CompilationUnit ast1= joinReconciler(cu1);
+			assertNotNull(ast1);
+
+			JavaUI.openInEditor(cu2);
+			assertNotNull(SharedASTProvider.getAST(cu2, SharedASTProvider.WAIT_ACTIVE_ONLY, null));
+
+			// the AST of the inactive editor is kept
+			CompilationUnit recent= SharedASTProvider.getAST(cu1, SharedASTProvider.WAIT_NO, null);
+			assertSame(ast1, recent);
+			assertEquals(cu1.getBuffer().getContents(), recent.toString());
+
+			// a modified document invalidates the AST
+			cu1.getBuffer().append("\n");
+			assertNull(SharedASTProvider.getAST(cu1, SharedASTProvider.WAIT_NO, null));
+		} finally {
+			JavaPlugin.getActivePage().closeAllEditors(false);
+		}
+		assertNull(SharedASTProvider.getAST(cu1, SharedASTProvider.WAIT_NO, null));
+	}
+
+	/**
+	 * Waits until the editor of the given compilation unit has done its initial reconcile, that
+	 * is until its shared AST has not changed for longer than the reconciler delay.
+	 *
+	 * @param cu the compilation unit of the active editor
+	 * @return the shared AST
+	 * @throws InterruptedException if the thread has been interrupted
+	 */
+	private static CompilationUnit joinReconciler(ICompilationUnit cu) throws InterruptedException {
+		Display display= Display.getCurrent();
+		CompilationUnit ast= null;
+		long unchangedSince= System.currentTimeMillis();
+		long timeout= unchangedSince + 10000;
+		while (System.currentTimeMillis() < timeout) {
+			CompilationUnit current= SharedASTProvider.getAST(cu, SharedASTProvider.WAIT_ACTIVE_ONLY, null);
+			if (current != ast) {
+				ast= current;
+				unchangedSince= System.currentTimeMillis();
+			} else if (System.currentTimeMillis() - unchangedSince > 2000) {
+				break;
+			}
+			while (display.readAndDispatch()) {
+				// process pending events
+			}
+			Thread.sleep(50);
+		}
+		return ast;
+	}
+
 	private static String getNormalizeNumber(int number) {
 		if (number < 10) {
 			return "000" + number;
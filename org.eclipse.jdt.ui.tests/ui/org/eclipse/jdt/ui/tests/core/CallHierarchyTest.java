@@ -20,6 +20,7 @@ import junit.framework.TestSuite;
 
 import org.eclipse.core.runtime.NullProgressMonitor;
 
+import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IInitializer;
 import org.eclipse.jdt.core.IMember;
 import org.eclipse.jdt.core.IMethod;
@@ -450,6 +451,100 @@ public class CallHierarchyTest extends TestCase {
         assertEquals("Wrong line number", 12, recursiveMethod2Wrapper.getMethodCall().getFirstCallLocation().getLineNumber());
     }
 
+    public void testCachedCalls() throws Exception {
+        helper.createSimpleClasses();
+
+        MethodWrapper wrapper= getSingleCallerRoot(helper.getMethod4());
+        assertFalse(wrapper.hasCachedCalls());
+        wrapper.getCalls(new NullProgressMonitor());
+        assertTrue(wrapper.hasCachedCalls());
+
+        // an empty result is cached as well
+        MethodWrapper[] calls= wrapper.getCalls(new NullProgressMonitor());
+        assertEquals(0, calls.length);
+
+        MethodWrapper callerWrapper= getSingleCallerRoot(helper.getMethod1());
+        MethodWrapper[] callers= callerWrapper.getCalls(new NullProgressMonitor());
+        MethodWrapper method3Wrapper= helper.findMethodWrapper(helper.getMethod3(), callers);
+        assertFalse(method3Wrapper.hasCachedCalls());
+        method3Wrapper.getCalls(new NullProgressMonitor());
+
+        MethodWrapper[] callersAgain= callerWrapper.getCalls(new NullProgressMonitor());
+        assertTrue(helper.findMethodWrapper(helper.getMethod3(), callersAgain).hasCachedCalls());
+    }
+
+    public void testIndexedCallersAndCallees() throws Exception {
+        helper.createSimpleClasses();
+        CallHierarchy.getDefault().getCallGraphIndex().join();
+
+        Collection expectedCallers= new ArrayList();
+        expectedCallers.add(helper.getMethod2());
+        expectedCallers.add(helper.getMethod3());
+        MethodWrapper[] calls= getSingleCallerRoot(helper.getMethod1()).getCalls(new NullProgressMonitor());
+        helper.assertCalls(expectedCallers, calls);
+        MethodWrapper method2Wrapper= helper.findMethodWrapper(helper.getMethod2(), calls);
+        assertEquals("Wrong line number", 9, method2Wrapper.getMethodCall().getFirstCallLocation().getLineNumber());
+
+        Collection expectedConstructorCallers= new ArrayList();
+        expectedConstructorCallers.add(helper.getType2());
+        calls= getSingleCallerRoot(helper.getType1().getMethod("A", EMPTY)).getCalls(new NullProgressMonitor());
+        helper.assertCalls(expectedConstructorCallers, calls);
+
+        Collection expectedCallees= new ArrayList();
+        expectedCallees.add(helper.getMethod3());
+        calls= getSingleCalleeRoot(helper.getMethod4()).getCalls(new NullProgressMonitor());
+        helper.assertCalls(expectedCallees, calls);
+    }
+
+    public void testIndexedCallersOfOverridingMethod() throws Exception {
+        helper.createPackages();
+        ICompilationUnit base= helper.getPackage1().createCompilationUnit("Base.java",
+                "package pack1;\n" +
+                "public class Base {\n" +
+                "    public void run() { }\n" +
+                "    private void helper() { }\n" +
+                "    public void callHelper() { helper(); }\n" +
+                "}\n", true, null);
+        ICompilationUnit sub= helper.getPackage2().createCompilationUnit("Sub.java",
+                "package pack2;\n" +
+                "public final class Sub extends pack1.Base {\n" +
+                "    public void run() { }\n" +
+                "}\n", true, null);
+        ICompilationUnit caller= helper.getPackage2().createCompilationUnit("Caller.java",
+                "package pack2;\n" +
+                "public class Caller {\n" +
+                "    public void callBase(pack1.Base base) { base.run(); }\n" +
+                "    public void callSub(Sub sub) { sub.run(); }\n" +
+                "}\n", true, null);
+        CallHierarchy.getDefault().getCallGraphIndex().join();
+
+        IType callerType= caller.getType("Caller");
+        IMethod callBase= callerType.getMethod("callBase", new String[] { "QBase;" });
+        IMethod callSub= callerType.getMethod("callSub", new String[] { "QSub;" });
+        assertTrue(callBase.exists());
+        assertTrue(callSub.exists());
+
+        // calls through the overridden declaration may dispatch to the overriding method
+        IMethod subRun= sub.getType("Sub").getMethod("run", EMPTY);
+        assertFalse(CallHierarchy.getDefault().getCallGraphIndex().canFindCallers(subRun));
+        Collection expectedCallers= new ArrayList();
+        expectedCallers.add(callBase);
+        expectedCallers.add(callSub);
+        helper.assertCalls(expectedCallers, getSingleCallerRoot(subRun).getCalls(new NullProgressMonitor()));
+
+        // calls on a subtype receiver are bound to the overriding method, but may dispatch to the overridden one
+        IMethod baseRun= base.getType("Base").getMethod("run", EMPTY);
+        assertFalse(CallHierarchy.getDefault().getCallGraphIndex().canFindCallers(baseRun));
+        MethodWrapper[] calls= getSingleCallerRoot(baseRun).getCalls(new NullProgressMonitor());
+        assertNotNull(helper.findMethodWrapper(callBase, calls));
+
+        IMethod helperMethod= base.getType("Base").getMethod("helper", EMPTY);
+        assertTrue(CallHierarchy.getDefault().getCallGraphIndex().canFindCallers(helperMethod));
+        Collection expectedHelperCallers= new ArrayList();
+        expectedHelperCallers.add(base.getType("Base").getMethod("callHelper", EMPTY));
+        helper.assertCalls(expectedHelperCallers, getSingleCallerRoot(helperMethod).getCalls(new NullProgressMonitor()));
+    }
+
     private void assertRecursive(MethodWrapper[] callResults, boolean shouldBeRecursive) {
         for (int i= 0; i < callResults.length; i++) {
             assertEquals(
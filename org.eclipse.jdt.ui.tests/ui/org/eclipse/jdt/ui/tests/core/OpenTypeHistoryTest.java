@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.ui.tests.core;
+
+import java.io.File;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import org.eclipse.jdt.testplugin.JavaProjectHelper;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.search.SearchEngine;
+import org.eclipse.jdt.core.search.TypeNameMatch;
+
+import org.eclipse.jdt.internal.corext.util.OpenTypeHistory;
+
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+
+
+public class OpenTypeHistoryTest extends TestCase {
+
+	private static final Class THIS= OpenTypeHistoryTest.class;
+
+	private static final String FILENAME= "OpenTypeHistoryTest.xml";
+	private static final String JOURNAL_FILENAME= "OpenTypeHistoryTest.journal";
+
+	private IJavaProject fJProject1;
+
+	private TypeNameMatch fTypeA;
+	private TypeNameMatch fTypeB;
+	private TypeNameMatch fTypeC;
+
+	public OpenTypeHistoryTest(String name) {
+		super(name);
+	}
+
+	public static Test suite() {
+		return setUpTest(new TestSuite(THIS));
+	}
+
+	public static Test setUpTest(Test test) {
+		return new ProjectTestSetup(test);
+	}
+
+	protected void setUp() throws Exception {
+		fJProject1= ProjectTestSetup.getProject();
+		deleteHistoryFiles();
+
+		IPackageFragmentRoot sourceFolder= JavaProjectHelper.addSourceContainer(fJProject1, "src");
+		IPackageFragment pack= sourceFolder.createPackageFragment("pack", false, null);
+		fTypeA= createType(pack, "A");
+		fTypeB= createType(pack, "B");
+		fTypeC= createType(pack, "C");
+	}
+
+	protected void tearDown() throws Exception {
+		deleteHistoryFiles();
+		JavaProjectHelper.clear(fJProject1, ProjectTestSetup.getDefaultClasspath());
+	}
+
+	private static TypeNameMatch createType(IPackageFragment pack, String name) throws Exception {
+		ICompilationUnit cu= pack.createCompilationUnit(name + ".java", "package pack;\npublic class " + name + " {\n}\n", false, null);
+		IType type= cu.getType(name);
+		return SearchEngine.createTypeNameMatch(type, type.getFlags());
+	}
+
+	private static File getStateFile(String name) {
+		return JavaPlugin.getDefault().getStateLocation().append(name).toFile();
+	}
+
+	private static void deleteHistoryFiles() {
+		getStateFile(FILENAME).delete();
+		getStateFile(JOURNAL_FILENAME).delete();
+	}
+
+	private static void assertTypes(TypeNameMatch[] expected, OpenTypeHistory history) {
+		TypeNameMatch[] actual= history.getTypeInfos();
+		assertEquals(expected.length, actual.length);
+		for (int i= 0; i < expected.length; i++) {
+			assertEquals(expected[i].getFullyQualifiedName(), actual[i].getFullyQualifiedName());
+			assertEquals(expected[i].getModifiers(), actual[i].getModifiers());
+		}
+	}
+
+	public void testJournalReplay() throws Exception {
+		OpenTypeHistory history= new OpenTypeHistory(FILENAME, JOURNAL_FILENAME);
+		history.accessed(fTypeA);
+		history.accessed(fTypeB);
+		history.accessed(fTypeC);
+		history.remove(fTypeB);
+		history.accessed(fTypeA);
+		history.save();
+
+		assertTrue(getStateFile(JOURNAL_FILENAME).exists());
+		assertFalse(getStateFile(FILENAME).exists());
+
+		OpenTypeHistory loaded= new OpenTypeHistory(FILENAME, JOURNAL_FILENAME);
+		assertTypes(new TypeNameMatch[] { fTypeA, fTypeC }, loaded);
+		assertFalse(loaded.contains(fTypeB));
+	}
+
+	public void testJournalCompaction() throws Exception {
+		OpenTypeHistory history= new OpenTypeHistory(FILENAME, JOURNAL_FILENAME);
+		// more records than the journal may hold
+		for (int i= 0; i < 1000; i++) {
+			history.accessed(fTypeA);
+			history.accessed(fTypeB);
+		}
+		history.save();
+
+		assertTrue(getStateFile(FILENAME).exists());
+		assertFalse(getStateFile(JOURNAL_FILENAME).exists());
+
+		OpenTypeHistory loaded= new OpenTypeHistory(FILENAME, JOURNAL_FILENAME);
+		assertTypes(new TypeNameMatch[] { fTypeB, fTypeA }, loaded);
+
+		// later modifications are journaled on top of the compacted file
+		loaded.remove(fTypeB);
+		loaded.accessed(fTypeC);
+		loaded.save();
+
+		assertTrue(getStateFile(JOURNAL_FILENAME).exists());
+
+		loaded= new OpenTypeHistory(FILENAME, JOURNAL_FILENAME);
+		assertTypes(new TypeNameMatch[] { fTypeC, fTypeA }, loaded);
+	}
+
+	public void testSaveWithoutModifications() throws Exception {
+		OpenTypeHistory history= new OpenTypeHistory(FILENAME, JOURNAL_FILENAME);
+		history.save();
+
+		assertFalse(getStateFile(FILENAME).exists());
+		assertFalse(getStateFile(JOURNAL_FILENAME).exists());
+	}
+}
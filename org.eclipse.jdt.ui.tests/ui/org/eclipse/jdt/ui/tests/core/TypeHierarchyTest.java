@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,6 +29,7 @@ import org.eclipse.jdt.core.ITypeHierarchy;
 import org.eclipse.jdt.core.ITypeHierarchyChangedListener;
 
 import org.eclipse.jdt.internal.corext.util.JavaModelUtil;
+import org.eclipse.jdt.internal.corext.util.TypeHierarchyCache;
 
 import org.eclipse.jdt.ui.JavaUI;
 import org.eclipse.jdt.ui.SharedASTProvider;
@@ -286,7 +287,35 @@ public class TypeHierarchyTest extends TestCase {
 
 	}
 
+	public void testSharedHierarchyCache() throws Exception {
+		IPackageFragmentRoot root1= JavaProjectHelper.addSourceContainer(fJavaProject1, "src");
+		IPackageFragment pack1= root1.createPackageFragment("pack1", true, null);
 
-
-
+		ICompilationUnit cu1= pack1.getCompilationUnit("A.java");
+		IType type1= cu1.createType("public class A {\n}\n", null, true, null);
+
+		ICompilationUnit cu2= pack1.getCompilationUnit("B.java");
+		cu2.createType("public class B extends A {\n}\n", null, true, null);
+
+		TypeHierarchyCache cache= TypeHierarchyCache.getDefault();
+		cache.clear();
+		int misses= cache.getMisses(false);
+		int hits= cache.getHits(false);
+		int superTypeHits= cache.getHits(true);
+
+		// e.g. the type hierarchy view followed by pull up
+		ITypeHierarchy hierarchy= cache.getTypeHierarchy(type1, null);
+		assertEquals(1, hierarchy.getSubtypes(type1).length);
+		assertSame(hierarchy, cache.getTypeHierarchy(type1, null));
+		assertEquals(misses + 1, cache.getMisses(false));
+		assertEquals(hits + 1, cache.getHits(false));
+
+		// the full hierarchy also answers super type queries
+		assertSame(hierarchy, cache.getSupertypeHierarchy(type1, null));
+		assertEquals(superTypeHits + 1, cache.getHits(true));
+
+		cache.invalidate(hierarchy);
+		assertNotSame(hierarchy, cache.getTypeHierarchy(type1, null));
+		assertEquals(misses + 2, cache.getMisses(false));
+	}
 }
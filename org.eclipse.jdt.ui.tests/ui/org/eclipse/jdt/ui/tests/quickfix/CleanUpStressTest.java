@@ -34,10 +34,14 @@ import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.JavaModelException;
 
 import org.eclipse.jdt.internal.corext.fix.CleanUpConstants;
+import org.eclipse.jdt.internal.corext.fix.CleanUpRefactoring;
+import org.eclipse.jdt.internal.corext.fix.CleanUpRefactoring.PipelineStatistics;
 
 import org.eclipse.jdt.ui.JavaElementLabels;
 import org.eclipse.jdt.ui.tests.core.ProjectTestSetup;
 
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+
 
 public class CleanUpStressTest extends CleanUpTestCase {
 
@@ -5209,6 +5213,38 @@ public class CleanUpStressTest extends CleanUpTestCase {
 		List cus= new ArrayList();
 		addAllCUs(fJProject1.getChildren(), cus);
 
+		enableAllCleanUps();
+
+		ICompilationUnit[] units= (ICompilationUnit[])cus.toArray(new ICompilationUnit[cus.size()]);
+		performRefactoring(units);
+
+
+//		generateTable(units);
+
+		assertAllAsExpected(units);
+	}
+
+	public void testAllCleanUpsPipelined() throws Exception {
+		List cus= new ArrayList();
+		addAllCUs(fJProject1.getChildren(), cus);
+
+		enableAllCleanUps();
+
+		ICompilationUnit[] units= (ICompilationUnit[])cus.toArray(new ICompilationUnit[cus.size()]);
+		CleanUpRefactoring ref= new CleanUpRefactoring();
+		ref.setUseOptionsFromProfile(true);
+		ref.setFixCalculationThreads(4);
+		performRefactoring(ref, units, JavaPlugin.getDefault().getCleanUpRegistry().createCleanUps());
+
+		assertAllAsExpected(units);
+
+		PipelineStatistics statistics= ref.getPipelineStatistics();
+		assertEquals(units.length, statistics.getUnits(PipelineStatistics.PARSE));
+		assertTrue(statistics.getUnits(PipelineStatistics.CALCULATE_FIX) >= units.length);
+		assertEquals(statistics.getUnits(PipelineStatistics.CALCULATE_FIX), statistics.getUnits(PipelineStatistics.CREATE_CHANGE));
+	}
+
+	private void enableAllCleanUps() throws Exception {
 		enable(CleanUpConstants.MEMBER_ACCESSES_NON_STATIC_FIELD_USE_THIS);
 		enable(CleanUpConstants.MEMBER_ACCESSES_NON_STATIC_FIELD_USE_THIS_ALWAYS);
 		enable(CleanUpConstants.MEMBER_ACCESSES_NON_STATIC_METHOD_USE_THIS);
@@ -5258,13 +5294,9 @@ public class CleanUpStressTest extends CleanUpTestCase {
 
 		enable(CleanUpConstants.SORT_MEMBERS);
 		enable(CleanUpConstants.SORT_MEMBERS_ALL);
+	}
 
-		ICompilationUnit[] units= (ICompilationUnit[])cus.toArray(new ICompilationUnit[cus.size()]);
-		performRefactoring(units);
-
-
-//		generateTable(units);
-
+	private void assertAllAsExpected(ICompilationUnit[] units) throws Exception {
 		for (int i= 0; i < units.length; i++) {
 	        ICompilationUnit cu= units[i];
 			String previewContent= getNormalizedContent(new Document(cu.getBuffer().getContents()));
@@ -0,0 +1,1342 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.corext.callhierarchy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IMember;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.ISourceRange;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTRequestor;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ConstructorInvocation;
+import org.eclipse.jdt.core.dom.EnumConstantDeclaration;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.TypeDeclaration;
+import org.eclipse.jdt.core.search.IJavaSearchScope;
+
+import org.eclipse.jdt.internal.corext.dom.ASTBatchParser;
+import org.eclipse.jdt.internal.corext.dom.Bindings;
+import org.eclipse.jdt.internal.corext.util.JavaModelUtil;
+import org.eclipse.jdt.internal.corext.util.MethodOverrideTester;
+
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+
+/**
+ * Index of the calls in the source compilation units of the workspace, used to find the callers
+ * and callees of a member without searching.
+ * <p>
+ * The index is built by a background job from ASTs with resolved bindings, kept up to date from
+ * the Java element deltas of the workspace and saved to the plug-in state location on shutdown.
+ * A call is stored as the handle identifiers of the calling member and the called member together
+ * with the source range and line number of the call. Units that have not been indexed yet, are
+ * being indexed or have unsaved changes are not covered by the index and have to be searched, see
+ * {@link #getUncoveredUnits()}.
+ * </p>
+ * <p>
+ * Only the callers of types and of non-virtual methods declared in source are answered from the
+ * index, see {@link #canFindCallers(IMember)}. Calls from class files are not indexed, so the
+ * callers of binary members are always searched, and the binary roots in the scope are searched
+ * for the callers of source members.
+ * </p>
+ *
+ * @since 3.9
+ */
+public class CallGraphIndex {
+
+	/**
+	 * The calls and the declarations of a compilation unit.
+	 */
+	private static class UnitEntry {
+
+		/** The handle identifier of the compilation unit */
+		final String fHandle;
+		/** The modification stamp of the unit's resource when it was indexed */
+		final long fStamp;
+		/** The declarations of the unit, see {@link CallCollector#visit(MethodDeclaration)} */
+		final String[] fDeclarations;
+		/** The simple names of the declarations */
+		final String[] fDeclarationNames;
+		/** The handle identifiers of the calling members */
+		final String[] fCallers;
+		/** The handle identifiers of the called members */
+		final String[] fCallees;
+		/** The simple names of the called members */
+		final String[] fCalleeNames;
+		/** The start offsets of the calls */
+		final int[] fStarts;
+		/** The end offsets of the calls */
+		final int[] fEnds;
+		/** The line numbers of the calls */
+		final int[] fLines;
+		/** The flags of the calls, see {@link CallGraphIndex#FLAG_IMPLICIT} */
+		final int[] fFlags;
+
+		UnitEntry(String handle, long stamp, String[] declarations, String[] declarationNames, String[] callers, String[] callees, String[] calleeNames, int[] starts, int[] ends, int[] lines, int[] flags) {
+			fHandle= handle;
+			fStamp= stamp;
+			fDeclarations= declarations;
+			fDeclarationNames= declarationNames;
+			fCallers= callers;
+			fCallees= callees;
+			fCalleeNames= calleeNames;
+			fStarts= starts;
+			fEnds= ends;
+			fLines= lines;
+			fFlags= flags;
+		}
+	}
+
+	/**
+	 * A call found in the index.
+	 */
+	private static class Call {
+
+		final String fCaller;
+		final String fCallee;
+		final int fStart;
+		final int fEnd;
+		final int fLine;
+
+		Call(String caller, String callee, int start, int end, int line) {
+			fCaller= caller;
+			fCallee= callee;
+			fStart= start;
+			fEnd= end;
+			fLine= line;
+		}
+	}
+
+	/**
+	 * Collects the calls and declarations of a compilation unit.
+	 */
+	private static class CallCollector extends ASTVisitor {
+
+		private final ICompilationUnit fUnit;
+		private final CompilationUnit fAST;
+		private final Map<String, String> fStrings= new HashMap<String, String>();
+
+		private final List<String> fDeclarations= new ArrayList<String>();
+		private final List<String> fDeclarationNames= new ArrayList<String>();
+		private final List<String> fCallers= new ArrayList<String>();
+		private final List<String> fCallees= new ArrayList<String>();
+		private final List<String> fCalleeNames= new ArrayList<String>();
+		private int[] fStarts= new int[64];
+		private int[] fEnds= new int[64];
+		private int[] fLines= new int[64];
+		private int[] fFlags= new int[64];
+
+		CallCollector(ICompilationUnit unit, CompilationUnit ast) {
+			fUnit= unit;
+			fAST= ast;
+		}
+
+		UnitEntry createEntry(long stamp) {
+			int count= fCallers.size();
+			return new UnitEntry(fUnit.getHandleIdentifier(), stamp,
+					fDeclarations.toArray(new String[fDeclarations.size()]),
+					fDeclarationNames.toArray(new String[fDeclarationNames.size()]),
+					fCallers.toArray(new String[count]),
+					fCallees.toArray(new String[count]),
+					fCalleeNames.toArray(new String[count]),
+					trim(fStarts, count), trim(fEnds, count), trim(fLines, count), trim(fFlags, count));
+		}
+
+		/*
+		 * A type is declared with its super types, so that a change of the type hierarchy changes the declaration.
+		 * @see org.eclipse.jdt.core.dom.ASTVisitor#visit(org.eclipse.jdt.core.dom.TypeDeclaration)
+		 */
+		@Override
+		public boolean visit(TypeDeclaration node) {
+			ITypeBinding binding= node.resolveBinding();
+			if (binding == null)
+				return true;
+			IJavaElement type= binding.getJavaElement();
+			if (type != null && !binding.isLocal()) {
+				StringBuffer declaration= new StringBuffer(type.getHandleIdentifier());
+				ITypeBinding superclass= binding.getSuperclass();
+				if (superclass != null)
+					declaration.append(' ').append(superclass.getKey());
+				ITypeBinding[] interfaces= binding.getInterfaces();
+				for (int i= 0; i < interfaces.length; i++)
+					declaration.append(' ').append(interfaces[i].getKey());
+				addDeclaration(declaration.toString(), binding.getName());
+			}
+
+			if (!node.isInterface() && type instanceof IMember && !hasConstructor(node)) {
+				// the default constructor calls the super constructor
+				IMember callee= getImplicitSuperConstructor(binding);
+				if (callee != null)
+					addCall((IMember) type, callee, node.getName(), FLAG_IMPLICIT);
+			}
+			return true;
+		}
+
+		/*
+		 * @see org.eclipse.jdt.core.dom.ASTVisitor#visit(org.eclipse.jdt.core.dom.MethodDeclaration)
+		 */
+		@Override
+		public boolean visit(MethodDeclaration node) {
+			IMethodBinding binding= node.resolveBinding();
+			if (binding == null)
+				return true;
+			IJavaElement method= binding.getJavaElement();
+			if (method == null)
+				return true;
+			if (!binding.getDeclaringClass().isLocal() && !binding.getDeclaringClass().isAnonymous())
+				addDeclaration(method.getHandleIdentifier(), binding.getName());
+
+			Block body= node.getBody();
+			if (node.isConstructor() && body != null && method instanceof IMember && !hasExplicitConstructorCall(body)) {
+				IMember callee= getImplicitSuperConstructor(binding.getDeclaringClass());
+				if (callee != null)
+					addCall((IMember) method, callee, node.getName(), FLAG_IMPLICIT);
+			}
+			return true;
+		}
+
+		/*
+		 * @see org.eclipse.jdt.core.dom.ASTVisitor#visit(org.eclipse.jdt.core.dom.MethodInvocation)
+		 */
+		@Override
+		public boolean visit(MethodInvocation node) {
+			addCall(node.resolveMethodBinding(), node, node.getName().getStartPosition(), 0);
+			return true;
+		}
+
+		/*
+		 * @see org.eclipse.jdt.core.dom.ASTVisitor#visit(org.eclipse.jdt.core.dom.SuperMethodInvocation)
+		 */
+		@Override
+		public boolean visit(SuperMethodInvocation node) {
+			addCall(node.resolveMethodBinding(), node, node.getName().getStartPosition(), 0);
+			return true;
+		}
+
+		/*
+		 * @see org.eclipse.jdt.core.dom.ASTVisitor#visit(org.eclipse.jdt.core.dom.ClassInstanceCreation)
+		 */
+		@Override
+		public boolean visit(ClassInstanceCreation node) {
+			addCall(node.resolveConstructorBinding(), node, node.getStartPosition(), 0);
+			return true;
+		}
+
+		/*
+		 * @see org.eclipse.jdt.core.dom.ASTVisitor#visit(org.eclipse.jdt.core.dom.ConstructorInvocation)
+		 */
+		@Override
+		public boolean visit(ConstructorInvocation node) {
+			addCall(node.resolveConstructorBinding(), node, node.getStartPosition(), 0);
+			return true;
+		}
+
+		/*
+		 * @see org.eclipse.jdt.core.dom.ASTVisitor#visit(org.eclipse.jdt.core.dom.SuperConstructorInvocation)
+		 */
+		@Override
+		public boolean visit(SuperConstructorInvocation node) {
+			addCall(node.resolveConstructorBinding(), node, node.getStartPosition(), 0);
+			return true;
+		}
+
+		/*
+		 * @see org.eclipse.jdt.core.dom.ASTVisitor#visit(org.eclipse.jdt.core.dom.EnumConstantDeclaration)
+		 */
+		@Override
+		public boolean visit(EnumConstantDeclaration node) {
+			addCall(node.resolveConstructorBinding(), node, node.getName().getStartPosition(), FLAG_IMPLICIT);
+			return true;
+		}
+
+		private void addCall(IMethodBinding binding, ASTNode node, int start, int flags) {
+			IMember callee= getCallee(binding);
+			if (callee == null)
+				return;
+			try {
+				IJavaElement caller= fUnit.getElementAt(start);
+				if (caller instanceof IMember)
+					addCall((IMember) caller, callee, start, node.getStartPosition() + node.getLength(), flags);
+			} catch (JavaModelException e) {
+				// the unit does not exist anymore or is not structured, skip the call
+			}
+		}
+
+		private void addCall(IMember caller, IMember callee, ASTNode name, int flags) {
+			addCall(caller, callee, name.getStartPosition(), name.getStartPosition() + name.getLength(), flags);
+		}
+
+		private void addCall(IMember caller, IMember callee, int start, int end, int flags) {
+			int count= fCallers.size();
+			if (count == fStarts.length) {
+				fStarts= grow(fStarts);
+				fEnds= grow(fEnds);
+				fLines= grow(fLines);
+				fFlags= grow(fFlags);
+			}
+			fCallers.add(intern(caller.getHandleIdentifier()));
+			fCallees.add(intern(callee.getHandleIdentifier()));
+			fCalleeNames.add(intern(callee.getElementName()));
+			fStarts[count]= start;
+			fEnds[count]= end;
+			int line= fAST.getLineNumber(start);
+			fLines[count]= line < 1 ? 1 : line;
+			fFlags[count]= flags;
+		}
+
+		private void addDeclaration(String declaration, String name) {
+			fDeclarations.add(declaration);
+			fDeclarationNames.add(intern(name));
+		}
+
+		private String intern(String string) {
+			String existing= fStrings.get(string);
+			if (existing != null)
+				return existing;
+			fStrings.put(string, string);
+			return string;
+		}
+
+		/**
+		 * Returns the member that is called through the given binding. The default constructor
+		 * is represented by its type, constructors of anonymous types by the constructor of the
+		 * super type.
+		 *
+		 * @param binding the method binding, can be <code>null</code>
+		 * @return the called member or <code>null</code>
+		 */
+		private static IMember getCallee(IMethodBinding binding) {
+			if (binding == null)
+				return null;
+			binding= binding.getMethodDeclaration();
+			ITypeBinding declaringClass= binding.getDeclaringClass();
+			if (declaringClass.isAnonymous() && binding.isConstructor()) {
+				ITypeBinding[] interfaces= declaringClass.getInterfaces();
+				ITypeBinding superType= interfaces.length > 0 ? interfaces[0] : declaringClass.getSuperclass();
+				if (superType == null)
+					return null;
+				IMethodBinding superConstructor= Bindings.findMethodInType(superType, superType.getErasure().getName(), binding.getParameterTypes());
+				if (superConstructor != null) {
+					IJavaElement element= superConstructor.getMethodDeclaration().getJavaElement();
+					if (element instanceof IMember)
+						return (IMember) element;
+				}
+				IJavaElement element= superType.getErasure().getJavaElement();
+				return element instanceof IMember ? (IMember) element : null;
+			}
+			IJavaElement element= binding.getJavaElement();
+			if (element instanceof IMember)
+				return (IMember) element;
+			if (binding.isDefaultConstructor()) {
+				element= declaringClass.getErasure().getJavaElement();
+				if (element instanceof IMember)
+					return (IMember) element;
+			}
+			return null;
+		}
+
+		private static IMember getImplicitSuperConstructor(ITypeBinding type) {
+			ITypeBinding superclass= type.getSuperclass();
+			if (superclass == null || !superclass.isFromSource() || type.isEnum())
+				return null;
+			superclass= superclass.getErasure();
+			IMethodBinding constructor= Bindings.findMethodInType(superclass, superclass.getName(), new ITypeBinding[0]);
+			IJavaElement element= constructor != null ? constructor.getJavaElement() : superclass.getJavaElement();
+			return element instanceof IMember ? (IMember) element : null;
+		}
+
+		private static boolean hasConstructor(TypeDeclaration node) {
+			MethodDeclaration[] methods= node.getMethods();
+			for (int i= 0; i < methods.length; i++) {
+				if (methods[i].isConstructor())
+					return true;
+			}
+			return false;
+		}
+
+		private static boolean hasExplicitConstructorCall(Block body) {
+			List<Statement> statements= body.statements();
+			if (statements.isEmpty())
+				return false;
+			int type= statements.get(0).getNodeType();
+			return type == ASTNode.CONSTRUCTOR_INVOCATION || type == ASTNode.SUPER_CONSTRUCTOR_INVOCATION;
+		}
+
+		private static int[] grow(int[] array) {
+			int[] result= new int[array.length * 2];
+			System.arraycopy(array, 0, result, 0, array.length);
+			return result;
+		}
+
+		private static int[] trim(int[] array, int length) {
+			int[] result= new int[length];
+			System.arraycopy(array, 0, result, 0, length);
+			return result;
+		}
+	}
+
+	/**
+	 * Indexes batches of dirty units until there are none left.
+	 */
+	private class Indexer implements Runnable {
+
+		private final IProgressMonitor fMonitor;
+
+		Indexer(IProgressMonitor monitor) {
+			fMonitor= monitor;
+		}
+
+		public void run() {
+			while (true) {
+				if (fMonitor.isCanceled())
+					throw new OperationCanceledException();
+				ICompilationUnit[] batch= takeBatch();
+				if (batch == null)
+					return;
+				final Map<ICompilationUnit, Long> stamps= new HashMap<ICompilationUnit, Long>();
+				for (int i= 0; i < batch.length; i++)
+					stamps.put(batch[i], new Long(getStamp(batch[i])));
+				final Set<ICompilationUnit> indexed= new HashSet<ICompilationUnit>();
+				try {
+					new ASTBatchParser().createASTs(batch, new String[0], new ASTRequestor() {
+						@Override
+						public void acceptAST(ICompilationUnit source, CompilationUnit ast) {
+							if (fMonitor.isCanceled())
+								throw new OperationCanceledException();
+							CallCollector collector= new CallCollector(source, ast);
+							ast.accept(collector);
+							commit(source, collector.createEntry(stamps.get(source).longValue()));
+							indexed.add(source);
+						}
+					}, null);
+				} catch (OperationCanceledException e) {
+					abortBatch(batch, indexed);
+					throw e;
+				} catch (RuntimeException e) {
+					JavaPlugin.log(e);
+				}
+				finishBatch(batch, indexed);
+			}
+		}
+	}
+
+	/**
+	 * Builds and updates the index.
+	 */
+	private class IndexJob extends Job {
+
+		public IndexJob() {
+			super(CallHierarchyMessages.CallGraphIndex_job_name);
+		}
+
+		/*
+		 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+		 */
+		@Override
+		protected IStatus run(IProgressMonitor monitor) {
+			try {
+				load();
+				enumerate(monitor);
+				indexDirtyUnits(monitor);
+			} catch (OperationCanceledException e) {
+				return Status.CANCEL_STATUS;
+			}
+			return Status.OK_STATUS;
+		}
+	}
+
+	/**
+	 * Marks the units affected by Java element deltas as dirty.
+	 */
+	private class DeltaListener implements IElementChangedListener {
+
+		/*
+		 * @see org.eclipse.jdt.core.IElementChangedListener#elementChanged(org.eclipse.jdt.core.ElementChangedEvent)
+		 */
+		public void elementChanged(ElementChangedEvent event) {
+			if (processDelta(event.getDelta()))
+				fJob.schedule(UPDATE_DELAY);
+		}
+
+		private boolean processDelta(IJavaElementDelta delta) {
+			IJavaElement element= delta.getElement();
+			int kind= delta.getKind();
+			int flags= delta.getFlags();
+			switch (element.getElementType()) {
+				case IJavaElement.JAVA_MODEL:
+					return processChildrenDelta(delta);
+				case IJavaElement.JAVA_PROJECT:
+					if (kind != IJavaElementDelta.CHANGED || (flags & (IJavaElementDelta.F_OPENED | IJavaElementDelta.F_CLOSED)) != 0) {
+						invalidateEnumeration();
+						return true;
+					}
+					if ((flags & (IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED)) != 0) {
+						invalidateAll();
+						return true;
+					}
+					return processChildrenDelta(delta);
+				case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+					if (kind != IJavaElementDelta.CHANGED || (flags & (IJavaElementDelta.F_ADDED_TO_CLASSPATH | IJavaElementDelta.F_REMOVED_FROM_CLASSPATH | IJavaElementDelta.F_ARCHIVE_CONTENT_CHANGED)) != 0) {
+						invalidateAll();
+						return true;
+					}
+					return processChildrenDelta(delta);
+				case IJavaElement.PACKAGE_FRAGMENT:
+					if (kind != IJavaElementDelta.CHANGED) {
+						invalidateEnumeration();
+						return true;
+					}
+					return processChildrenDelta(delta);
+				case IJavaElement.COMPILATION_UNIT:
+					ICompilationUnit unit= (ICompilationUnit) element;
+					if (!JavaModelUtil.isPrimary(unit))
+						return false;
+					if (kind == IJavaElementDelta.REMOVED) {
+						remove(unit);
+						return true;
+					}
+					if (kind == IJavaElementDelta.ADDED || (flags & (IJavaElementDelta.F_CONTENT | IJavaElementDelta.F_PRIMARY_RESOURCE)) != 0) {
+						markDirty(unit);
+						return true;
+					}
+					return false;
+				default:
+					return false;
+			}
+		}
+
+		private boolean processChildrenDelta(IJavaElementDelta delta) {
+			boolean changed= false;
+			IJavaElementDelta[] children= delta.getAffectedChildren();
+			for (int i= 0; i < children.length; i++) {
+				if (processDelta(children[i]))
+					changed= true;
+			}
+			return changed;
+		}
+	}
+
+	/** Flag of calls that are not written in the source, like implicit super constructor calls */
+	private static final int FLAG_IMPLICIT= 1;
+
+	private static final String FILENAME= "CallGraphIndex.dat"; //$NON-NLS-1$
+	private static final int FILE_SIGNATURE= 0x4A434749;
+	private static final int FILE_VERSION= 1;
+
+	/** The number of units parsed together */
+	private static final int BATCH_SIZE= 50;
+	/** The maximum number of threads that parse units */
+	private static final int MAX_THREADS= 4;
+	/** The delay before the index is updated after a change, in milliseconds */
+	private static final long UPDATE_DELAY= 1000;
+	/** The maximum number of uncovered units that are searched in addition to the index */
+	private static final int MAX_UNCOVERED_UNITS= 100;
+
+	private static CallGraphIndex fgInstance;
+
+	/** The entries by unit handle identifier */
+	private final Map<String, UnitEntry> fUnits= new HashMap<String, UnitEntry>();
+	/** The handle identifiers of the units that call a member, by member handle identifier */
+	private final Map<String, Set<String>> fCalleeUnits= new HashMap<String, Set<String>>();
+	/** The handle identifiers of the units that call a member, by member name */
+	private final Map<String, Set<String>> fCalleeNameUnits= new HashMap<String, Set<String>>();
+	/** The units that have to be indexed, in the order they became dirty */
+	private final Map<String, ICompilationUnit> fDirtyUnits= new LinkedHashMap<String, ICompilationUnit>();
+	/** The units that are being indexed */
+	private final Map<String, ICompilationUnit> fIndexingUnits= new HashMap<String, ICompilationUnit>();
+	/** The units that could not be indexed */
+	private final Map<String, ICompilationUnit> fFailedUnits= new HashMap<String, ICompilationUnit>();
+
+	private boolean fIsLoaded;
+	private boolean fIsEnumerated;
+	/** Incremented whenever the units of the workspace have to be enumerated again */
+	private int fEnumerationStamp;
+	private boolean fIsModified;
+	private boolean fIsShutdown;
+
+	private final IElementChangedListener fDeltaListener;
+	private final IndexJob fJob;
+
+	/**
+	 * Returns the index, and starts building it if necessary.
+	 *
+	 * @return the call graph index
+	 */
+	public static synchronized CallGraphIndex getInstance() {
+		if (fgInstance == null)
+			fgInstance= new CallGraphIndex();
+		return fgInstance;
+	}
+
+	/**
+	 * Stops updating the index and saves it, if it has been started.
+	 */
+	public static synchronized void shutdown() {
+		if (fgInstance == null)
+			return;
+		fgInstance.doShutdown();
+		fgInstance= null;
+	}
+
+	private CallGraphIndex() {
+		fDeltaListener= new DeltaListener();
+		JavaCore.addElementChangedListener(fDeltaListener, ElementChangedEvent.POST_CHANGE);
+		fJob= new IndexJob();
+		fJob.setSystem(true);
+		fJob.setPriority(Job.DECORATE);
+		fJob.schedule();
+	}
+
+	private void doShutdown() {
+		JavaCore.removeElementChangedListener(fDeltaListener);
+		synchronized (this) {
+			fIsShutdown= true;
+		}
+		fJob.cancel();
+		try {
+			fJob.join();
+		} catch (InterruptedException e) {
+			// save what has been indexed so far
+		}
+		save();
+	}
+
+	/**
+	 * Waits until all units of the workspace have been indexed.
+	 *
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	public void join() throws InterruptedException {
+		while (true) {
+			synchronized (this) {
+				if (fIsShutdown || fIsEnumerated && fDirtyUnits.isEmpty() && fIndexingUnits.isEmpty())
+					return;
+			}
+			fJob.wakeUp();
+			if (fJob.getState() == Job.NONE)
+				fJob.schedule();
+			fJob.join();
+		}
+	}
+
+	/**
+	 * Returns the compilation units whose calls are not in the index: units that have not been
+	 * indexed yet, are being indexed, could not be indexed, or have unsaved changes.
+	 *
+	 * @return the uncovered units, or <code>null</code> if the units of the workspace are not
+	 *         known yet or too many units are not covered
+	 */
+	public ICompilationUnit[] getUncoveredUnits() {
+		Map<String, ICompilationUnit> uncovered= new LinkedHashMap<String, ICompilationUnit>();
+		synchronized (this) {
+			if (!fIsEnumerated)
+				return null;
+			uncovered.putAll(fDirtyUnits);
+			uncovered.putAll(fIndexingUnits);
+			uncovered.putAll(fFailedUnits);
+		}
+		ICompilationUnit[] workingCopies= JavaCore.getWorkingCopies(null);
+		for (int i= 0; i < workingCopies.length; i++) {
+			try {
+				if (workingCopies[i].hasUnsavedChanges())
+					uncovered.put(workingCopies[i].getPrimary().getHandleIdentifier(), workingCopies[i].getPrimary());
+			} catch (JavaModelException e) {
+				uncovered.put(workingCopies[i].getPrimary().getHandleIdentifier(), workingCopies[i].getPrimary());
+			}
+		}
+		if (uncovered.size() > MAX_UNCOVERED_UNITS)
+			return null;
+		Collection<ICompilationUnit> units= uncovered.values();
+		return units.toArray(new ICompilationUnit[units.size()]);
+	}
+
+	/**
+	 * Tells whether the callers of the given member can be found in the index.
+	 * <p>
+	 * The index only knows the method that a call is bound to at compile time. A reference search
+	 * for a method also reports the calls that may dispatch to it at run time: calls through a
+	 * declaration in a supertype and calls on a subtype receiver. So methods that override another
+	 * method or that can be overridden are always searched.
+	 * </p>
+	 *
+	 * @param member the member
+	 * @return <code>true</code> if the member is a constructor or a method that neither overrides
+	 *         nor can be overridden, or a named type, declared in a compilation unit
+	 */
+	public boolean canFindCallers(IMember member) {
+		if (member.getCompilationUnit() == null)
+			return false;
+		if (member instanceof IMethod) {
+			try {
+				return !isVirtual((IMethod) member);
+			} catch (JavaModelException e) {
+				return false;
+			}
+		}
+		if (member instanceof IType) {
+			IType type= (IType) member;
+			try {
+				return !type.isAnonymous() && !type.isLocal();
+			} catch (JavaModelException e) {
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Tells whether calls to other methods may dispatch to the given method or calls to the given
+	 * method may dispatch to other methods.
+	 *
+	 * @param method the method
+	 * @return <code>false</code> if the method is a constructor, is private or static, or is final
+	 *         or declared in a final type and does not override a method
+	 * @throws JavaModelException if the method or its type hierarchy cannot be accessed
+	 */
+	private static boolean isVirtual(IMethod method) throws JavaModelException {
+		if (method.isConstructor())
+			return false;
+		int flags= method.getFlags();
+		if (Flags.isPrivate(flags) || Flags.isStatic(flags))
+			return false;
+		IType type= method.getDeclaringType();
+		if (!Flags.isFinal(flags) && !Flags.isFinal(type.getFlags()))
+			return true;
+		MethodOverrideTester tester= new MethodOverrideTester(type, type.newSupertypeHierarchy(null));
+		return tester.findOverriddenMethod(method, true) != null;
+	}
+
+	/**
+	 * Adds the indexed calls to the given member to the collector. Calls from the given units
+	 * and calls from outside of the scope are skipped.
+	 *
+	 * @param member the called member, see {@link #canFindCallers(IMember)}
+	 * @param scope the search scope
+	 * @param excludedUnits the units to skip, see {@link #getUncoveredUnits()}
+	 * @param collector the collector
+	 */
+	void addCallers(IMember member, IJavaSearchScope scope, ICompilationUnit[] excludedUnits, CallSearchResultCollector collector) {
+		Set<String> excluded= getHandles(excludedUnits);
+		List<Call> calls= new ArrayList<Call>();
+		if (member instanceof IType) {
+			// a type stands for all of its constructors
+			try {
+				IMethod[] methods= ((IType) member).getMethods();
+				for (int i= 0; i < methods.length; i++) {
+					if (methods[i].isConstructor())
+						findCalls(methods[i].getHandleIdentifier(), excluded, calls);
+				}
+			} catch (JavaModelException e) {
+				JavaPlugin.log(e);
+			}
+		}
+		findCalls(member.getHandleIdentifier(), excluded, calls);
+
+		for (Iterator<Call> iter= calls.iterator(); iter.hasNext();) {
+			Call call= iter.next();
+			IJavaElement caller= JavaCore.create(call.fCaller);
+			if (caller instanceof IMember && scope.encloses(caller))
+				collector.addMember((IMember) caller, (IMember) caller, call.fStart, call.fEnd, call.fLine);
+		}
+	}
+
+	/**
+	 * Returns the calls in the given member, like {@link CalleeAnalyzerVisitor}.
+	 *
+	 * @param member the calling member
+	 * @param scope the search scope, calls to methods outside of the scope are skipped
+	 * @return a map from handle identifier ({@link String}) to {@link MethodCall}, or
+	 *         <code>null</code> if the unit of the member is not covered by the index
+	 */
+	Map<String, MethodCall> findCallees(IMember member, IJavaSearchScope scope) {
+		ICompilationUnit unit= member.getCompilationUnit();
+		if (unit == null)
+			return null;
+		ICompilationUnit[] uncovered= getUncoveredUnits();
+		if (uncovered == null || getHandles(uncovered).contains(unit.getHandleIdentifier()))
+			return null;
+
+		// like the CalleeAnalyzerVisitor, include the calls in local and anonymous types of the member
+		int start;
+		int end;
+		try {
+			ISourceRange range= member.getSourceRange();
+			if (range == null || range.getOffset() < 0)
+				return null;
+			start= range.getOffset();
+			end= start + range.getLength();
+		} catch (JavaModelException e) {
+			return null;
+		}
+		List<Call> calls= new ArrayList<Call>();
+		synchronized (this) {
+			UnitEntry entry= fUnits.get(unit.getHandleIdentifier());
+			if (entry == null)
+				return null;
+			for (int i= 0; i < entry.fCallers.length; i++) {
+				if ((entry.fFlags[i] & FLAG_IMPLICIT) == 0 && entry.fStarts[i] >= start && entry.fEnds[i] <= end)
+					calls.add(new Call(entry.fCallers[i], entry.fCallees[i], entry.fStarts[i], entry.fEnds[i], entry.fLines[i]));
+			}
+		}
+
+		CallSearchResultCollector collector= new CallSearchResultCollector();
+		for (Iterator<Call> iter= calls.iterator(); iter.hasNext();) {
+			Call call= iter.next();
+			IJavaElement callee= JavaCore.create(call.fCallee);
+			IMember referencedMember= null;
+			if (callee instanceof IMethod) {
+				IMethod method= (IMethod) callee;
+				try {
+					if (method.getDeclaringType().isInterface()) {
+						Collection<IJavaElement> implementingMethods= CallHierarchy.getDefault().getImplementingMethods(method);
+						if (implementingMethods.size() == 1)
+							method= (IMethod) implementingMethods.iterator().next();
+					}
+				} catch (JavaModelException e) {
+					// keep the interface method
+				}
+				if (scope.encloses(method))
+					referencedMember= method;
+			} else if (callee instanceof IType) {
+				referencedMember= (IMember) callee;
+			}
+			collector.addMember(member, referencedMember, call.fStart, call.fEnd, call.fLine);
+		}
+		return collector.getCallers();
+	}
+
+	private synchronized void findCalls(String callee, Set<String> excludedUnits, List<Call> calls) {
+		Set<String> units= fCalleeUnits.get(callee);
+		if (units == null)
+			return;
+		for (Iterator<String> iter= units.iterator(); iter.hasNext();) {
+			String unit= iter.next();
+			if (excludedUnits.contains(unit))
+				continue;
+			UnitEntry entry= fUnits.get(unit);
+			for (int i= 0; i < entry.fCallees.length; i++) {
+				if (callee.equals(entry.fCallees[i]))
+					calls.add(new Call(entry.fCallers[i], callee, entry.fStarts[i], entry.fEnds[i], entry.fLines[i]));
+			}
+		}
+	}
+
+	private static Set<String> getHandles(ICompilationUnit[] units) {
+		Set<String> handles= new HashSet<String>();
+		for (int i= 0; i < units.length; i++)
+			handles.add(units[i].getHandleIdentifier());
+		return handles;
+	}
+
+	private static long getStamp(ICompilationUnit unit) {
+		IResource resource= unit.getResource();
+		return resource != null ? resource.getModificationStamp() : IResource.NULL_STAMP;
+	}
+
+	//---- updating the index ---------------------------------------------------------------
+
+	private synchronized void markDirty(ICompilationUnit unit) {
+		String handle= unit.getHandleIdentifier();
+		fFailedUnits.remove(handle);
+		fDirtyUnits.put(handle, unit);
+	}
+
+	private synchronized void markDirty(String unitHandle) {
+		IJavaElement unit= JavaCore.create(unitHandle);
+		if (unit instanceof ICompilationUnit)
+			markDirty((ICompilationUnit) unit);
+	}
+
+	private synchronized void remove(ICompilationUnit unit) {
+		String handle= unit.getHandleIdentifier();
+		fDirtyUnits.remove(handle);
+		fFailedUnits.remove(handle);
+		UnitEntry entry= fUnits.remove(handle);
+		if (entry != null) {
+			removeCalls(entry);
+			invalidateCallers(entry.fDeclarations, entry.fDeclarationNames, new String[0], null);
+			fIsModified= true;
+		}
+	}
+
+	private synchronized void invalidateEnumeration() {
+		fIsEnumerated= false;
+		fEnumerationStamp++;
+	}
+
+	/**
+	 * Marks all units as dirty, e.g. when the class path changed and the bindings of all calls
+	 * may have changed.
+	 */
+	private synchronized void invalidateAll() {
+		invalidateEnumeration();
+		for (Iterator<String> iter= fUnits.keySet().iterator(); iter.hasNext();)
+			markDirty(iter.next());
+	}
+
+	/**
+	 * Marks the units that call a member whose declaration changed as dirty, since their calls
+	 * may now bind to different members.
+	 *
+	 * @param oldDeclarations the old declarations
+	 * @param oldNames the names of the old declarations
+	 * @param newDeclarations the new declarations
+	 * @param indexedUnit the handle identifier of the unit that has just been indexed and is
+	 *            up to date, or <code>null</code>
+	 */
+	private void invalidateCallers(String[] oldDeclarations, String[] oldNames, String[] newDeclarations, String indexedUnit) {
+		Set<String> retained= new HashSet<String>();
+		for (int i= 0; i < newDeclarations.length; i++)
+			retained.add(newDeclarations[i]);
+		Set<String> changedNames= new HashSet<String>();
+		for (int i= 0; i < oldDeclarations.length; i++) {
+			if (!retained.remove(oldDeclarations[i]))
+				changedNames.add(oldNames[i]);
+		}
+		for (Iterator<String> iter= retained.iterator(); iter.hasNext();) {
+			// added declarations: the name is the last segment of a method handle or the type name of a type handle
+			IJavaElement element= JavaCore.create(getHandle(iter.next()));
+			if (element != null)
+				changedNames.add(element.getElementName());
+		}
+		for (Iterator<String> iter= changedNames.iterator(); iter.hasNext();) {
+			Set<String> units= fCalleeNameUnits.get(iter.next());
+			if (units != null) {
+				String[] handles= units.toArray(new String[units.size()]);
+				for (int i= 0; i < handles.length; i++) {
+					if (!handles[i].equals(indexedUnit))
+						markDirty(handles[i]);
+				}
+			}
+		}
+	}
+
+	private void invalidateHierarchies(String[] oldDeclarations, String[] newDeclarations) {
+		Set<String> oldTypes= new HashSet<String>();
+		Set<String> oldDeclarationSet= new HashSet<String>();
+		for (int i= 0; i < oldDeclarations.length; i++) {
+			oldDeclarationSet.add(oldDeclarations[i]);
+			if (oldDeclarations[i].indexOf(' ') != -1)
+				oldTypes.add(getHandle(oldDeclarations[i]));
+		}
+		for (int i= 0; i < newDeclarations.length; i++) {
+			String declaration= newDeclarations[i];
+			if (!oldDeclarationSet.contains(declaration) && oldTypes.contains(getHandle(declaration))) {
+				// the super types of an existing type changed, calls to inherited members anywhere may bind differently
+				invalidateAll();
+				return;
+			}
+		}
+	}
+
+	private static String getHandle(String declaration) {
+		int index= declaration.indexOf(' ');
+		return index == -1 ? declaration : declaration.substring(0, index);
+	}
+
+	private synchronized void commit(ICompilationUnit unit, UnitEntry entry) {
+		if (fIsShutdown)
+			return;
+		UnitEntry oldEntry= fUnits.put(entry.fHandle, entry);
+		if (oldEntry != null)
+			removeCalls(oldEntry);
+		addCalls(entry);
+		fIsModified= true;
+		if (oldEntry != null) {
+			invalidateCallers(oldEntry.fDeclarations, oldEntry.fDeclarationNames, entry.fDeclarations, entry.fHandle);
+			invalidateHierarchies(oldEntry.fDeclarations, entry.fDeclarations);
+		}
+		if (!fDirtyUnits.containsKey(entry.fHandle))
+			fIndexingUnits.remove(entry.fHandle);
+	}
+
+	private void addCalls(UnitEntry entry) {
+		for (int i= 0; i < entry.fCallees.length; i++) {
+			add(fCalleeUnits, entry.fCallees[i], entry.fHandle);
+			add(fCalleeNameUnits, entry.fCalleeNames[i], entry.fHandle);
+		}
+	}
+
+	private void removeCalls(UnitEntry entry) {
+		for (int i= 0; i < entry.fCallees.length; i++) {
+			remove(fCalleeUnits, entry.fCallees[i], entry.fHandle);
+			remove(fCalleeNameUnits, entry.fCalleeNames[i], entry.fHandle);
+		}
+	}
+
+	private static void add(Map<String, Set<String>> map, String key, String unit) {
+		Set<String> units= map.get(key);
+		if (units == null) {
+			units= new HashSet<String>(4);
+			map.put(key, units);
+		}
+		units.add(unit);
+	}
+
+	private static void remove(Map<String, Set<String>> map, String key, String unit) {
+		Set<String> units= map.get(key);
+		if (units != null && units.remove(unit) && units.isEmpty())
+			map.remove(key);
+	}
+
+	private synchronized ICompilationUnit[] takeBatch() {
+		if (fIsShutdown || fDirtyUnits.isEmpty())
+			return null;
+		int size= Math.min(BATCH_SIZE, fDirtyUnits.size());
+		ICompilationUnit[] batch= new ICompilationUnit[size];
+		Iterator<Map.Entry<String, ICompilationUnit>> iter= fDirtyUnits.entrySet().iterator();
+		for (int i= 0; i < size; i++) {
+			Map.Entry<String, ICompilationUnit> entry= iter.next();
+			iter.remove();
+			fIndexingUnits.put(entry.getKey(), entry.getValue());
+			batch[i]= entry.getValue();
+		}
+		return batch;
+	}
+
+	private synchronized void finishBatch(ICompilationUnit[] batch, Set<ICompilationUnit> indexed) {
+		for (int i= 0; i < batch.length; i++) {
+			ICompilationUnit unit= batch[i];
+			String handle= unit.getHandleIdentifier();
+			if (fIndexingUnits.remove(handle) == null || indexed.contains(unit))
+				continue;
+			if (unit.exists()) {
+				fFailedUnits.put(handle, unit);
+			} else {
+				remove(unit);
+			}
+		}
+	}
+
+	private synchronized void abortBatch(ICompilationUnit[] batch, Set<ICompilationUnit> indexed) {
+		for (int i= 0; i < batch.length; i++) {
+			ICompilationUnit unit= batch[i];
+			String handle= unit.getHandleIdentifier();
+			if (fIndexingUnits.remove(handle) != null && !indexed.contains(unit))
+				fDirtyUnits.put(handle, unit);
+		}
+	}
+
+	/**
+	 * Finds the source compilation units of the workspace, marks the ones that are not indexed
+	 * or have been modified since they were indexed as dirty, and removes the entries of the
+	 * units that do not exist anymore.
+	 *
+	 * @param monitor the progress monitor
+	 */
+	private void enumerate(IProgressMonitor monitor) {
+		int enumerationStamp;
+		synchronized (this) {
+			if (fIsEnumerated)
+				return;
+			enumerationStamp= fEnumerationStamp;
+		}
+		Map<String, ICompilationUnit> units= new HashMap<String, ICompilationUnit>();
+		try {
+			IJavaProject[] projects= JavaCore.create(ResourcesPlugin.getWorkspace().getRoot()).getJavaProjects();
+			for (int i= 0; i < projects.length; i++) {
+				IPackageFragmentRoot[] roots= projects[i].getPackageFragmentRoots();
+				for (int j= 0; j < roots.length; j++) {
+					if (roots[j].getKind() != IPackageFragmentRoot.K_SOURCE || !projects[i].equals(roots[j].getJavaProject()))
+						continue;
+					IJavaElement[] fragments= roots[j].getChildren();
+					for (int k= 0; k < fragments.length; k++) {
+						if (monitor.isCanceled())
+							throw new OperationCanceledException();
+						ICompilationUnit[] fragmentUnits= ((IPackageFragment) fragments[k]).getCompilationUnits();
+						for (int l= 0; l < fragmentUnits.length; l++)
+							units.put(fragmentUnits[l].getHandleIdentifier(), fragmentUnits[l]);
+					}
+				}
+			}
+		} catch (JavaModelException e) {
+			JavaPlugin.log(e);
+			return;
+		}
+
+		Map<String, Long> stamps= new HashMap<String, Long>();
+		for (Iterator<ICompilationUnit> iter= units.values().iterator(); iter.hasNext();) {
+			ICompilationUnit unit= iter.next();
+			stamps.put(unit.getHandleIdentifier(), new Long(getStamp(unit)));
+		}
+
+		synchronized (this) {
+			if (enumerationStamp != fEnumerationStamp)
+				return;
+			String[] indexed= fUnits.keySet().toArray(new String[fUnits.size()]);
+			for (int i= 0; i < indexed.length; i++) {
+				ICompilationUnit unit= units.get(indexed[i]);
+				if (unit == null) {
+					IJavaElement element= JavaCore.create(indexed[i]);
+					if (element instanceof ICompilationUnit) {
+						remove((ICompilationUnit) element);
+					} else {
+						removeCalls(fUnits.remove(indexed[i]));
+						fIsModified= true;
+					}
+				}
+			}
+			for (Iterator<ICompilationUnit> iter= units.values().iterator(); iter.hasNext();) {
+				ICompilationUnit unit= iter.next();
+				String handle= unit.getHandleIdentifier();
+				UnitEntry entry= fUnits.get(handle);
+				long stamp= stamps.get(handle).longValue();
+				if ((entry == null || entry.fStamp != stamp || stamp == IResource.NULL_STAMP) && !fIndexingUnits.containsKey(handle) && !fFailedUnits.containsKey(handle))
+					fDirtyUnits.put(handle, unit);
+			}
+			fIsEnumerated= true;
+		}
+	}
+
+	private void indexDirtyUnits(IProgressMonitor monitor) {
+		int threads= Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+		if (threads <= 1) {
+			new Indexer(monitor).run();
+			return;
+		}
+
+		ExecutorService executor= Executors.newFixedThreadPool(threads - 1, new ThreadFactory() {
+			private int fCount;
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread= new Thread(runnable, "Call Hierarchy Indexer " + ++fCount); //$NON-NLS-1$
+				thread.setDaemon(true);
+				thread.setPriority(Thread.MIN_PRIORITY);
+				return thread;
+			}
+		});
+		try {
+			List<Future<?>> futures= new ArrayList<Future<?>>();
+			for (int i= 0; i < threads - 1; i++)
+				futures.add(executor.submit(new Indexer(monitor)));
+			// the job's thread takes part in the indexing
+			new Indexer(monitor).run();
+			for (Iterator<Future<?>> iter= futures.iterator(); iter.hasNext();)
+				iter.next().get();
+		} catch (InterruptedException e) {
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof OperationCanceledException)
+				throw (OperationCanceledException) e.getCause();
+			JavaPlugin.log(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	//---- persistence -----------------------------------------------------------------------
+
+	private static File getFile() {
+		return JavaPlugin.getDefault().getStateLocation().append(FILENAME).toFile();
+	}
+
+	private void load() {
+		synchronized (this) {
+			if (fIsLoaded)
+				return;
+			fIsLoaded= true;
+		}
+		File file= getFile();
+		if (!file.exists())
+			return;
+
+		List<UnitEntry> entries= new ArrayList<UnitEntry>();
+		DataInputStream in= null;
+		try {
+			in= new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+			if (in.readInt() != FILE_SIGNATURE || in.readInt() != FILE_VERSION)
+				return;
+			int unitCount= in.readInt();
+			for (int i= 0; i < unitCount; i++)
+				entries.add(readEntry(in));
+		} catch (IOException e) {
+			// a corrupt index is rebuilt
+			JavaPlugin.log(e);
+			return;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) {
+					JavaPlugin.log(e);
+				}
+			}
+		}
+
+		synchronized (this) {
+			for (Iterator<UnitEntry> iter= entries.iterator(); iter.hasNext();) {
+				UnitEntry entry= iter.next();
+				if (!fUnits.containsKey(entry.fHandle)) {
+					fUnits.put(entry.fHandle, entry);
+					addCalls(entry);
+				}
+			}
+		}
+	}
+
+	private void save() {
+		UnitEntry[] entries;
+		synchronized (this) {
+			if (!fIsModified)
+				return;
+			entries= fUnits.values().toArray(new UnitEntry[fUnits.size()]);
+			fIsModified= false;
+		}
+
+		File file= getFile();
+		DataOutputStream out= null;
+		try {
+			out= new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+			out.writeInt(FILE_SIGNATURE);
+			out.writeInt(FILE_VERSION);
+			out.writeInt(entries.length);
+			for (int i= 0; i < entries.length; i++)
+				writeEntry(out, entries[i]);
+		} catch (IOException e) {
+			JavaPlugin.log(e);
+			file.delete();
+		} finally {
+			if (out != null) {
+				try {
+					out.close();
+				} catch (IOException e) {
+					JavaPlugin.log(e);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Format of an entry: handle, stamp, string table, declarations and names as string indices,
+	 * calls as caller, callee and callee name string indices followed by start, end, line and flags.
+	 */
+	private static void writeEntry(DataOutputStream out, UnitEntry entry) throws IOException {
+		Map<String, Integer> indices= new LinkedHashMap<String, Integer>();
+		index(indices, entry.fDeclarations);
+		index(indices, entry.fDeclarationNames);
+		index(indices, entry.fCallers);
+		index(indices, entry.fCallees);
+		index(indices, entry.fCalleeNames);
+
+		out.writeUTF(entry.fHandle);
+		out.writeLong(entry.fStamp);
+		out.writeInt(indices.size());
+		for (Iterator<String> iter= indices.keySet().iterator(); iter.hasNext();)
+			out.writeUTF(iter.next());
+		out.writeInt(entry.fDeclarations.length);
+		for (int i= 0; i < entry.fDeclarations.length; i++) {
+			out.writeInt(indices.get(entry.fDeclarations[i]).intValue());
+			out.writeInt(indices.get(entry.fDeclarationNames[i]).intValue());
+		}
+		out.writeInt(entry.fCallers.length);
+		for (int i= 0; i < entry.fCallers.length; i++) {
+			out.writeInt(indices.get(entry.fCallers[i]).intValue());
+			out.writeInt(indices.get(entry.fCallees[i]).intValue());
+			out.writeInt(indices.get(entry.fCalleeNames[i]).intValue());
+			out.writeInt(entry.fStarts[i]);
+			out.writeInt(entry.fEnds[i]);
+			out.writeInt(entry.fLines[i]);
+			out.writeInt(entry.fFlags[i]);
+		}
+	}
+
+	private static void index(Map<String, Integer> indices, String[] strings) {
+		for (int i= 0; i < strings.length; i++) {
+			if (!indices.containsKey(strings[i]))
+				indices.put(strings[i], new Integer(indices.size()));
+		}
+	}
+
+	private static UnitEntry readEntry(DataInputStream in) throws IOException {
+		String handle= in.readUTF();
+		long stamp= in.readLong();
+		String[] strings= new String[in.readInt()];
+		for (int i= 0; i < strings.length; i++)
+			strings[i]= in.readUTF();
+		int declarationCount= in.readInt();
+		String[] declarations= new String[declarationCount];
+		String[] declarationNames= new String[declarationCount];
+		for (int i= 0; i < declarationCount; i++) {
+			declarations[i]= strings[in.readInt()];
+			declarationNames[i]= strings[in.readInt()];
+		}
+		int callCount= in.readInt();
+		String[] callers= new String[callCount];
+		String[] callees= new String[callCount];
+		String[] calleeNames= new String[callCount];
+		int[] starts= new int[callCount];
+		int[] ends= new int[callCount];
+		int[] lines= new int[callCount];
+		int[] flags= new int[callCount];
+		for (int i= 0; i < callCount; i++) {
+			callers[i]= strings[in.readInt()];
+			callees[i]= strings[in.readInt()];
+			calleeNames[i]= strings[in.readInt()];
+			starts[i]= in.readInt();
+			ends[i]= in.readInt();
+			lines[i]= in.readInt();
+			flags[i]= in.readInt();
+		}
+		return new UnitEntry(handle, stamp, declarations, declarationNames, callers, callees, calleeNames, starts, ends, lines, flags);
+	}
+}
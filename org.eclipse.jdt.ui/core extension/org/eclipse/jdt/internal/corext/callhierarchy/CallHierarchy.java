@@ -177,6 +177,17 @@ public class CallHierarchy {
         this.fSearchScope = searchScope;
     }
 
+    /**
+     * Returns the index used to find callers and callees without searching. The index is
+     * built in the background the first time it is requested.
+     *
+     * @return the call graph index
+     * @since 3.9
+     */
+    public CallGraphIndex getCallGraphIndex() {
+        return CallGraphIndex.getInstance();
+    }
+
 	/**
 	 * Checks whether the fully qualified name is ignored by the set filters.
 	 *
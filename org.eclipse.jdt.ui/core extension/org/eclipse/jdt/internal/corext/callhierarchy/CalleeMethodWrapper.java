@@ -91,6 +91,10 @@ class CalleeMethodWrapper extends MethodWrapper {
 	protected Map<String, MethodCall> findChildren(IProgressMonitor progressMonitor) {
     	IMember member= getMember();
 		if (member.exists()) {
+			Map<String, MethodCall> indexedCallees= CallHierarchy.getDefault().getCallGraphIndex().findCallees(member, CallHierarchy.getDefault().getSearchScope());
+			if (indexedCallees != null)
+				return indexedCallees;
+
 			CompilationUnit cu= CallHierarchy.getCompilationUnitNode(member, true);
 		    if (progressMonitor != null) {
 		        progressMonitor.worked(5);
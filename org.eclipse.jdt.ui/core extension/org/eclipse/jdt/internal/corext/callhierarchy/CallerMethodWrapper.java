@@ -13,21 +13,32 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.corext.callhierarchy;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.SubProgressMonitor;
 
+import org.eclipse.core.resources.ResourcesPlugin;
+
 import org.eclipse.jdt.core.Flags;
+import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.IField;
 import org.eclipse.jdt.core.IInitializer;
 import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.IMember;
 import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
 import org.eclipse.jdt.core.ISourceRange;
 import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.search.IJavaSearchConstants;
 import org.eclipse.jdt.core.search.IJavaSearchScope;
@@ -152,6 +163,24 @@ public class CallerMethodWrapper extends MethodWrapper {
 			IJavaSearchScope defaultSearchScope= getSearchScope();
 			boolean isWorkspaceScope= SearchEngine.createWorkspaceScope().equals(defaultSearchScope);
 			IJavaSearchScope searchScope= isWorkspaceScope ? getAccurateSearchScope(defaultSearchScope, member) : defaultSearchScope;
+
+			CallGraphIndex index= CallHierarchy.getDefault().getCallGraphIndex();
+			ICompilationUnit[] uncoveredUnits= index.canFindCallers(member) ? index.getUncoveredUnits() : null;
+			if (uncoveredUnits != null) {
+				// answer from the index and only search the units that are not indexed and the class files
+				CallSearchResultCollector resultCollector= new CallSearchResultCollector();
+				index.addCallers(member, searchScope, uncoveredUnits, resultCollector);
+				List<IJavaElement> searchedElements= new ArrayList<IJavaElement>();
+				for (int i= 0; i < uncoveredUnits.length; i++) {
+					if (searchScope.encloses(uncoveredUnits[i]))
+						searchedElements.add(uncoveredUnits[i]);
+				}
+				addBinaryRoots(searchScope, searchedElements);
+				if (searchedElements.isEmpty())
+					return resultCollector.getCallers();
+				searchRequestor= new MethodReferencesSearchRequestor(resultCollector);
+				searchScope= SearchEngine.createJavaSearchScope(searchedElements.toArray(new IJavaElement[searchedElements.size()]));
+			}
 			searchEngine.search(pattern, new SearchParticipant[] { SearchEngine.getDefaultSearchParticipant() }, searchScope, searchRequestor,
 					monitor);
 			return searchRequestor.getCallers();
@@ -162,6 +191,27 @@ public class CallerMethodWrapper extends MethodWrapper {
 		}
 	}
 
+	/**
+	 * Adds the binary package fragment roots of the workspace that are enclosed in the given scope
+	 * to the list. Calls from class files are not in the {@link CallGraphIndex}.
+	 *
+	 * @param scope the search scope
+	 * @param elements the list to add the roots to
+	 * @throws JavaModelException if the roots cannot be accessed
+	 */
+	private static void addBinaryRoots(IJavaSearchScope scope, List<IJavaElement> elements) throws JavaModelException {
+		Set<IPath> paths= new HashSet<IPath>();
+		IJavaProject[] projects= JavaCore.create(ResourcesPlugin.getWorkspace().getRoot()).getJavaProjects();
+		for (int i= 0; i < projects.length; i++) {
+			IPackageFragmentRoot[] roots= projects[i].getPackageFragmentRoots();
+			for (int j= 0; j < roots.length; j++) {
+				IPackageFragmentRoot root= roots[j];
+				if (root.getKind() == IPackageFragmentRoot.K_BINARY && scope.encloses(root) && paths.add(root.getPath()))
+					elements.add(root);
+			}
+		}
+	}
+
 	private IJavaSearchScope getAccurateSearchScope(IJavaSearchScope defaultSearchScope, IMember member) throws JavaModelException {
 		if (! JdtFlags.isPrivate(member))
 			return defaultSearchScope;
@@ -23,7 +23,17 @@ class MethodReferencesSearchRequestor extends SearchRequestor {
     private boolean fRequireExactMatch = true;
 
     MethodReferencesSearchRequestor() {
-        fSearchResults = new CallSearchResultCollector();
+        this(new CallSearchResultCollector());
+    }
+
+    /**
+     * Creates a requestor that adds the matches to the given collector.
+     *
+     * @param searchResults the collector, may already contain calls
+     * @since 3.9
+     */
+    MethodReferencesSearchRequestor(CallSearchResultCollector searchResults) {
+        fSearchResults = searchResults;
     }
 
     public Map<String, MethodCall> getCallers() {
@@ -14,9 +14,17 @@ import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.Hashtable;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.eclipse.swt.widgets.Display;
 
@@ -24,6 +32,7 @@ import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.SubProgressMonitor;
 import org.eclipse.core.runtime.jobs.ISchedulingRule;
 
@@ -165,6 +174,86 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 		}
 	}
 
+	/**
+	 * Throughput of the stages of a clean up: parsing the compilation units, calculating the fixes
+	 * and integrating the fixes into the changes of the refactoring.
+	 */
+	public static class PipelineStatistics {
+
+		public static final int PARSE= 0;
+		public static final int CALCULATE_FIX= 1;
+		public static final int CREATE_CHANGE= 2;
+
+		private static final String[] STAGE_NAMES= { "parse", "calculate fix", "create change" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		private final AtomicLong[] fUnits;
+		private final AtomicLong[] fNanos;
+		private final AtomicLong fWaitNanos;
+
+		public PipelineStatistics() {
+			fUnits= new AtomicLong[STAGE_NAMES.length];
+			fNanos= new AtomicLong[STAGE_NAMES.length];
+			for (int i= 0; i < STAGE_NAMES.length; i++) {
+				fUnits[i]= new AtomicLong();
+				fNanos[i]= new AtomicLong();
+			}
+			fWaitNanos= new AtomicLong();
+		}
+
+		void add(int stage, int units, long nanos) {
+			fUnits[stage].addAndGet(units);
+			fNanos[stage].addAndGet(nanos);
+		}
+
+		void addWaitTime(long nanos) {
+			fWaitNanos.addAndGet(nanos);
+		}
+
+		/**
+		 * @param stage one of {@link #PARSE}, {@link #CALCULATE_FIX} or {@link #CREATE_CHANGE}
+		 * @return the number of compilation units processed by the stage
+		 */
+		public long getUnits(int stage) {
+			return fUnits[stage].get();
+		}
+
+		/**
+		 * @param stage one of {@link #PARSE}, {@link #CALCULATE_FIX} or {@link #CREATE_CHANGE}
+		 * @return the time in ms spent in the stage, summed over all threads of the stage
+		 */
+		public long getTime(int stage) {
+			return fNanos[stage].get() / 1000000;
+		}
+
+		/**
+		 * @param stage one of {@link #PARSE}, {@link #CALCULATE_FIX} or {@link #CREATE_CHANGE}
+		 * @return the compilation units processed per second by one thread of the stage
+		 */
+		public double getThroughput(int stage) {
+			long nanos= fNanos[stage].get();
+			return nanos == 0 ? 0 : fUnits[stage].get() * 1e9 / nanos;
+		}
+
+		/**
+		 * @return the time in ms the change creation waited for fixes, a high value indicates that
+		 *         more threads should calculate fixes
+		 */
+		public long getWaitTime() {
+			return fWaitNanos.get() / 1000000;
+		}
+
+		@Override
+		public String toString() {
+			StringBuffer buf= new StringBuffer();
+			for (int i= 0; i < STAGE_NAMES.length; i++) {
+				buf.append(STAGE_NAMES[i]).append(": ").append(getUnits(i)).append(" units in ").append(getTime(i)).append(" ms, "); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				buf.append(Math.round(getThroughput(i))).append(" units/s\n"); //$NON-NLS-1$
+			}
+			buf.append("waiting for fixes: ").append(getWaitTime()).append(" ms"); //$NON-NLS-1$ //$NON-NLS-2$
+			return buf.toString();
+		}
+	}
+
 	private static class FixCalculationException extends RuntimeException {
 
 		private static final long serialVersionUID= 3807273310144726165L;
@@ -199,6 +288,47 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 		}
 	}
 
+	private static class PendingFix {
+
+		private final ParseListElement fElement;
+		private final CleanUpContext fContext;
+		private CleanUpChange fSolution;
+		private ICleanUp[] fRejectedCleanUps;
+
+		public PendingFix(ParseListElement element, CleanUpContext context) {
+			fElement= element;
+			fContext= context;
+		}
+
+		public void calculate(PipelineStatistics statistics) {
+			long start= System.nanoTime();
+			List<ICleanUp> result= new ArrayList<ICleanUp>();
+			try {
+				fSolution= calculateChange(fContext, fElement.getCleanUps(), result, null);
+			} catch (CoreException e) {
+				throw new FixCalculationException(e);
+			}
+			fRejectedCleanUps= result.toArray(new ICleanUp[result.size()]);
+			statistics.add(PipelineStatistics.CALCULATE_FIX, 1, System.nanoTime() - start);
+		}
+
+		public ICompilationUnit getCompilationUnit() {
+			return fContext.getCompilationUnit();
+		}
+
+		public CleanUpTarget getTarget() {
+			return fElement.getTarget();
+		}
+
+		public CleanUpChange getSolution() {
+			return fSolution;
+		}
+
+		public ICleanUp[] getRejectedCleanUps() {
+			return fRejectedCleanUps;
+		}
+	}
+
 	private final class CleanUpRefactoringProgressMonitor extends SubProgressMonitor {
 
 		private double fRealWork;
@@ -244,16 +374,35 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 		}
 	}
 
+	/**
+	 * Calculates the fixes for the parsed compilation units. Without an executor, the fixes are
+	 * calculated in {@link #acceptAST(ICompilationUnit, CompilationUnit)}. With an executor, the
+	 * compilation units of a parser batch are collected and their fixes are calculated by one task
+	 * once the batch is complete: the ASTs of a batch share the lookup environment of the parser,
+	 * which must not be used by several threads. The fixes are integrated in the calling thread in
+	 * the order in which the units were parsed, so that the result does not depend on the executor.
+	 */
 	private static class CleanUpASTRequestor extends ASTRequestor {
 
 		private final List<ParseListElement> fUndoneElements;
 		private final Hashtable<ICompilationUnit, List<CleanUpChange>> fSolutions;
 		private final Hashtable<ICompilationUnit, ParseListElement> fCompilationUnitParseElementMap;
 		private final CleanUpRefactoringProgressMonitor fMonitor;
-
-		public CleanUpASTRequestor(List<ParseListElement> parseList, Hashtable<ICompilationUnit, List<CleanUpChange>> solutions, CleanUpRefactoringProgressMonitor monitor) {
+		private final ExecutorService fExecutor;
+		private final int fMaxPendingBatches;
+		private final PipelineStatistics fStatistics;
+		private final LinkedList<Future<List<PendingFix>>> fPendingBatches;
+		private List<PendingFix> fBatch;
+		private long fNonParseTime;
+
+		public CleanUpASTRequestor(List<ParseListElement> parseList, Hashtable<ICompilationUnit, List<CleanUpChange>> solutions, CleanUpRefactoringProgressMonitor monitor, ExecutorService executor, int maxPendingBatches, PipelineStatistics statistics) {
 			fSolutions= solutions;
 			fMonitor= monitor;
+			fExecutor= executor;
+			fMaxPendingBatches= maxPendingBatches;
+			fStatistics= statistics;
+			fPendingBatches= new LinkedList<Future<List<PendingFix>>>();
+			fBatch= new ArrayList<PendingFix>();
 			fUndoneElements= new ArrayList<ParseListElement>();
 			fCompilationUnitParseElementMap= new Hashtable<ICompilationUnit, ParseListElement>(parseList.size());
 			for (Iterator<ParseListElement> iter= parseList.iterator(); iter.hasNext();) {
@@ -267,8 +416,7 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 		 */
 		@Override
 		public void acceptAST(ICompilationUnit source, CompilationUnit ast) {
-
-			fMonitor.subTask(fMonitor.getSubTaskMessage(source));
+			long start= System.nanoTime();
 
 			ICompilationUnit primary= (ICompilationUnit)source.getPrimaryElement();
 			ParseListElement element= fCompilationUnitParseElementMap.get(primary);
@@ -280,38 +428,116 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 			} else {
 				context= new CleanUpContext(source, ast);
 			}
-			ICleanUp[] rejectedCleanUps= calculateSolutions(context, element.getCleanUps());
+			PendingFix fix= new PendingFix(element, context);
 
-			if (rejectedCleanUps.length > 0) {
-				fUndoneElements.add(new ParseListElement(target, rejectedCleanUps));
-				fMonitor.reset();
+			if (fExecutor == null) {
+				fMonitor.subTask(fMonitor.getSubTaskMessage(source));
+				fix.calculate(fStatistics);
+				integrate(fix);
 			} else {
-				fMonitor.flush();
+				fBatch.add(fix);
 			}
+			fNonParseTime+= System.nanoTime() - start;
 		}
 
 		public void acceptSource(ICompilationUnit source) {
 			acceptAST(source, null);
 		}
 
+		/**
+		 * Called before a new parser batch starts. Submits the units of the previous batch and
+		 * integrates finished batches until at most the maximal number of batches is pending.
+		 */
+		public void startBatch() {
+			if (fExecutor == null)
+				return;
+
+			long start= System.nanoTime();
+			if (!fBatch.isEmpty()) {
+				final List<PendingFix> batch= fBatch;
+				fBatch= new ArrayList<PendingFix>();
+				fPendingBatches.add(fExecutor.submit(new Callable<List<PendingFix>>() {
+					public List<PendingFix> call() {
+						for (Iterator<PendingFix> iter= batch.iterator(); iter.hasNext();) {
+							iter.next().calculate(fStatistics);
+						}
+						return batch;
+					}
+				}));
+			}
+			while (fPendingBatches.size() > fMaxPendingBatches) {
+				integrateNextBatch();
+			}
+			fNonParseTime+= System.nanoTime() - start;
+		}
+
+		/**
+		 * Submits the last batch and integrates all pending batches.
+		 */
+		public void finish() {
+			startBatch();
+			while (!fPendingBatches.isEmpty()) {
+				integrateNextBatch();
+			}
+		}
+
+		public void dispose() {
+			for (Iterator<Future<List<PendingFix>>> iter= fPendingBatches.iterator(); iter.hasNext();) {
+				iter.next().cancel(true);
+			}
+			fPendingBatches.clear();
+			fBatch.clear();
+		}
+
+		public long getNonParseTime() {
+			return fNonParseTime;
+		}
+
 		public List<ParseListElement> getUndoneElements() {
 			return fUndoneElements;
 		}
 
-		private ICleanUp[] calculateSolutions(CleanUpContext context, ICleanUp[] cleanUps) {
-			List<ICleanUp>result= new ArrayList<ICleanUp>();
-			CleanUpChange solution;
+		private void integrateNextBatch() {
+			Future<List<PendingFix>> future= fPendingBatches.removeFirst();
+			List<PendingFix> batch;
+			long start= System.nanoTime();
 			try {
-				solution= calculateChange(context, cleanUps, result, null);
-			} catch (CoreException e) {
-				throw new FixCalculationException(e);
+				batch= future.get();
+			} catch (InterruptedException e) {
+				throw new OperationCanceledException();
+			} catch (ExecutionException e) {
+				// PendingFix#calculate only throws unchecked exceptions
+				Throwable cause= e.getCause();
+				if (cause instanceof Error)
+					throw (Error) cause;
+				throw (RuntimeException) cause;
+			}
+			fStatistics.addWaitTime(System.nanoTime() - start);
+
+			for (Iterator<PendingFix> iter= batch.iterator(); iter.hasNext();) {
+				PendingFix fix= iter.next();
+				fMonitor.subTask(fMonitor.getSubTaskMessage(fix.getCompilationUnit()));
+				integrate(fix);
+
+				if (fMonitor.isCanceled())
+					throw new OperationCanceledException();
 			}
+		}
 
-			if (solution != null) {
-				integrateSolution(solution, context.getCompilationUnit());
+		private void integrate(PendingFix fix) {
+			long start= System.nanoTime();
+			if (fix.getSolution() != null) {
+				integrateSolution(fix.getSolution(), fix.getCompilationUnit());
 			}
 
-			return result.toArray(new ICleanUp[result.size()]);
+			ICleanUp[] rejectedCleanUps= fix.getRejectedCleanUps();
+			if (rejectedCleanUps.length > 0) {
+				fUndoneElements.add(new ParseListElement(fix.getTarget(), rejectedCleanUps));
+				fMonitor.reset();
+			} else {
+				fMonitor.flush();
+			}
+			fStatistics.add(PipelineStatistics.CREATE_CHANGE, 1, System.nanoTime() - start);
 		}
 
 		private void integrateSolution(CleanUpChange solution, ICompilationUnit source) {
@@ -332,10 +558,14 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 		private final Hashtable<ICompilationUnit, List<CleanUpChange>> fSolutions;
 		private final Hashtable<ICompilationUnit, ICompilationUnit> fWorkingCopies; // map from primary to working copy
 		private final Map<String, String> fCleanUpOptions;
+		private final ExecutorService fExecutor;
+		private final PipelineStatistics fStatistics;
 		private final int fSize;
 		private int fIndex;
 
-		public CleanUpFixpointIterator(CleanUpTarget[] targets, ICleanUp[] cleanUps) {
+		public CleanUpFixpointIterator(CleanUpTarget[] targets, ICleanUp[] cleanUps, ExecutorService executor, PipelineStatistics statistics) {
+			fExecutor= executor;
+			fStatistics= statistics;
 			fSolutions= new Hashtable<ICompilationUnit, List<CleanUpChange>>(targets.length);
 			fWorkingCopies= new Hashtable<ICompilationUnit, ICompilationUnit>();
 
@@ -387,37 +617,45 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 				}
 
 				CleanUpRefactoringProgressMonitor cuMonitor= new CleanUpRefactoringProgressMonitor(monitor, parseList.size() + sourceList.size(), fSize, fIndex);
-				CleanUpASTRequestor requestor= new CleanUpASTRequestor(fParseList, fSolutions, cuMonitor);
-				if (parseList.size() > 0) {
-					ASTBatchParser parser= new ASTBatchParser() {
-						@Override
-						protected ASTParser createParser(IJavaProject project) {
-							ASTParser result= createCleanUpASTParser();
-							result.setProject(project);
-
-							Map<String, String> options= RefactoringASTParser.getCompilerOptions(project);
-							options.putAll(fCleanUpOptions);
-							result.setCompilerOptions(options);
-							return result;
-						}
-					};
-					try {
+				final CleanUpASTRequestor requestor= new CleanUpASTRequestor(fParseList, fSolutions, cuMonitor, fExecutor, fFixCalculationThreads, fStatistics);
+				try {
+					if (parseList.size() > 0) {
+						ASTBatchParser parser= new ASTBatchParser() {
+							@Override
+							protected ASTParser createParser(IJavaProject project) {
+								requestor.startBatch();
+
+								ASTParser result= createCleanUpASTParser();
+								result.setProject(project);
+
+								Map<String, String> options= RefactoringASTParser.getCompilerOptions(project);
+								options.putAll(fCleanUpOptions);
+								result.setCompilerOptions(options);
+								return result;
+							}
+						};
+						long start= System.nanoTime();
 						ICompilationUnit[] units= parseList.toArray(new ICompilationUnit[parseList.size()]);
 						parser.createASTs(units, new String[0], requestor, cuMonitor);
-					} catch (FixCalculationException e) {
-						throw e.getException();
+						fStatistics.add(PipelineStatistics.PARSE, units.length, System.nanoTime() - start - requestor.getNonParseTime());
 					}
-				}
 
-				for (Iterator<ICompilationUnit> iterator= sourceList.iterator(); iterator.hasNext();) {
-					ICompilationUnit cu= iterator.next();
+					requestor.startBatch();
+					for (Iterator<ICompilationUnit> iterator= sourceList.iterator(); iterator.hasNext();) {
+						ICompilationUnit cu= iterator.next();
 
-					monitor.worked(1);
+						monitor.worked(1);
 
-					requestor.acceptSource(cu);
+						requestor.acceptSource(cu);
 
-					if (monitor.isCanceled())
-						throw new OperationCanceledException();
+						if (monitor.isCanceled())
+							throw new OperationCanceledException();
+					}
+					requestor.finish();
+				} catch (FixCalculationException e) {
+					throw e.getException();
+				} finally {
+					requestor.dispose();
 				}
 
 				fParseList= requestor.getUndoneElements();
@@ -515,6 +753,8 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 	 */
 	private static final int SLOW_CLEAN_UP_THRESHOLD= 2000;
 
+	private static final boolean DEBUG= "true".equalsIgnoreCase(Platform.getDebugOption("org.eclipse.jdt.ui/debug/CleanUpPipeline")); //$NON-NLS-1$//$NON-NLS-2$
+
 	private final List<ICleanUp> fCleanUps;
 	private final Hashtable<IJavaProject, List<CleanUpTarget>> fProjects;
 	private Change fChange;
@@ -523,6 +763,9 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 
 	private boolean fUseOptionsFromProfile;
 
+	private int fFixCalculationThreads;
+	private PipelineStatistics fStatistics;
+
 	public CleanUpRefactoring() {
 		this(FixMessages.CleanUpRefactoring_Refactoring_name);
 	}
@@ -532,12 +775,43 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 		fCleanUps= new ArrayList<ICleanUp>();
 		fProjects= new Hashtable<IJavaProject, List<CleanUpTarget>>();
 		fUseOptionsFromProfile= false;
+		fFixCalculationThreads= 1;
 	}
 
 	public void setUseOptionsFromProfile(boolean enabled) {
 		fUseOptionsFromProfile= enabled;
 	}
 
+	/**
+	 * Sets the number of threads that calculate the fixes. With more than one thread, parsing,
+	 * fix calculation and change creation run as a pipeline: while the next compilation units are
+	 * parsed, the fixes for the units of previously parsed batches are calculated on a thread pool
+	 * and integrated into the changes in parse order. The resulting changes are the same as with a
+	 * single thread.
+	 * <p>
+	 * All clean ups must support concurrent calls to {@link ICleanUp#createFix(CleanUpContext)}
+	 * for different compilation units.
+	 * </p>
+	 *
+	 * @param threads the number of threads, <code>1</code> to calculate the fixes in the thread
+	 *            that checks the final conditions
+	 */
+	public void setFixCalculationThreads(int threads) {
+		fFixCalculationThreads= Math.max(1, threads);
+	}
+
+	public int getFixCalculationThreads() {
+		return fFixCalculationThreads;
+	}
+
+	/**
+	 * @return the throughput of the stages of the last final condition check, or <code>null</code>
+	 *         if the conditions have not been checked yet
+	 */
+	public PipelineStatistics getPipelineStatistics() {
+		return fStatistics;
+	}
+
 	public void addCompilationUnit(ICompilationUnit unit) {
 		addCleanUpTarget(new CleanUpTarget(unit));
 	}
@@ -651,6 +925,8 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 		RefactoringStatus result= new RefactoringStatus();
 
 		ICleanUp[] cleanUps= getCleanUps();
+		fStatistics= new PipelineStatistics();
+		ExecutorService executor= fFixCalculationThreads > 1 ? createExecutor() : null;
 		pm.beginTask("", cuCount * 2 * fCleanUps.size() + 4 * cleanUps.length); //$NON-NLS-1$
 		try {
 			DynamicValidationStateChange change= new DynamicValidationStateChange(getName());
@@ -671,7 +947,7 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 				if (result.hasFatalError())
 					return result;
 
-				Change[] changes= cleanUpProject(project, targets, cleanUps, pm);
+				Change[] changes= cleanUpProject(project, targets, cleanUps, executor, pm);
 
 				result.merge(checkPostConditions(new SubProgressMonitor(pm, cleanUps.length)));
 				if (result.hasFatalError())
@@ -687,12 +963,29 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 			findFilesToBeModified(change, files);
 			result.merge(Checks.validateModifiesFiles(files.toArray(new IFile[files.size()]), getValidationContext()));
 		} finally {
+			if (executor != null)
+				executor.shutdownNow();
 			pm.done();
 		}
 
+		if (DEBUG)
+			System.out.println("CleanUpRefactoring > " + fFixCalculationThreads + " thread(s)\n" + fStatistics); //$NON-NLS-1$ //$NON-NLS-2$
+
 		return result;
 	}
 
+	private ExecutorService createExecutor() {
+		return Executors.newFixedThreadPool(fFixCalculationThreads, new ThreadFactory() {
+			private int fCount;
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread= new Thread(runnable, "Clean Up Fix Calculation " + ++fCount); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
 	private void findFilesToBeModified(CompositeChange change, List<IResource> result) throws JavaModelException {
 		Change[] children= change.getChildren();
 		for (int i= 0; i < children.length; i++) {
@@ -707,8 +1000,8 @@ public class CleanUpRefactoring extends Refactoring implements IScheduledRefacto
 		}
 	}
 
-	private Change[] cleanUpProject(IJavaProject project, CleanUpTarget[] targets, ICleanUp[] cleanUps, IProgressMonitor monitor) throws CoreException {
-		CleanUpFixpointIterator iter= new CleanUpFixpointIterator(targets, cleanUps);
+	private Change[] cleanUpProject(IJavaProject project, CleanUpTarget[] targets, ICleanUp[] cleanUps, ExecutorService executor, IProgressMonitor monitor) throws CoreException {
+		CleanUpFixpointIterator iter= new CleanUpFixpointIterator(targets, cleanUps, executor, fStatistics);
 
 		SubProgressMonitor subMonitor= new SubProgressMonitor(monitor, 2 * targets.length * cleanUps.length);
 		subMonitor.beginTask("", targets.length); //$NON-NLS-1$
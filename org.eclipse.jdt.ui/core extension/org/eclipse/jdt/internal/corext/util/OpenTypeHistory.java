@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,14 +10,25 @@
  *******************************************************************************/
  package org.eclipse.jdt.internal.corext.util;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.w3c.dom.Element;
 
@@ -52,8 +63,16 @@ import org.eclipse.jdt.core.search.TypeNameMatch;
 
 import org.eclipse.jdt.internal.corext.CorextMessages;
 
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+
 /**
  * History for the open type dialog. Object and keys are both {@link TypeNameMatch}s.
+ * <p>
+ * Modifications are synchronized and publish an immutable snapshot of the history, so that
+ * the queries of the dialog never block, not even while the consistency check is running.
+ * Modifications are appended to a journal which is replayed on load; the XML file is only
+ * rewritten when the journal has grown too long.
+ * </p>
  */
 public class OpenTypeHistory extends History {
 
@@ -163,12 +182,38 @@ public class OpenTypeHistory extends History {
 		}
 	}
 
+	/**
+	 * An immutable snapshot of the history.
+	 */
+	private static class Snapshot {
+		/** The types, from the oldest to the newest */
+		final TypeNameMatch[] fTypes;
+		/** The positions of the types */
+		final Map<TypeNameMatch, Integer> fPositions;
+
+		Snapshot(Collection<Object> values) {
+			fTypes= values.toArray(new TypeNameMatch[values.size()]);
+			fPositions= new HashMap<TypeNameMatch, Integer>(fTypes.length * 2);
+			for (int i= 0; i < fTypes.length; i++)
+				fPositions.put(fTypes[i], new Integer(i));
+		}
+	}
+
 	// Needs to be volatile since accesses aren't synchronized.
 	private volatile boolean fNeedsConsistencyCheck;
 	// Map of cached time stamps
-	private Map<TypeNameMatch, Long> fTimestampMapping;
-
-	private final IElementChangedListener fDeltaListener;
+	private final Map<TypeNameMatch, Long> fTimestampMapping;
+	// The current state of the history, read without synchronization
+	private volatile Snapshot fSnapshot;
+	// Journal records not yet written
+	private final List<String> fPendingRecords;
+	// Number of records in the journal file
+	private int fJournalSize;
+	// Name of the journal file in the state location
+	private final String fJournalFileName;
+
+	// Only registered for the shared instance
+	private IElementChangedListener fDeltaListener;
 	private final UpdateJob fUpdateJob;
 
 	private static final String FILENAME= "OpenTypeHistory.xml"; //$NON-NLS-1$
@@ -178,6 +223,13 @@ public class OpenTypeHistory extends History {
 	private static final String NODE_MODIFIERS= "modifiers";  //$NON-NLS-1$
 	private static final String NODE_TIMESTAMP= "timestamp"; //$NON-NLS-1$
 
+	private static final String JOURNAL_FILENAME= "OpenTypeHistory.journal"; //$NON-NLS-1$
+	private static final char RECORD_ACCESSED= '+';
+	private static final char RECORD_REMOVED= '-';
+	private static final char RECORD_SEPARATOR= '\t';
+	/** The number of journal records after which the XML file is rewritten */
+	private static final int MAX_JOURNAL_SIZE= 1000;
+
 	private static OpenTypeHistory fgInstance;
 
 	public static synchronized OpenTypeHistory getInstance() {
@@ -193,12 +245,29 @@ public class OpenTypeHistory extends History {
 	}
 
 	private OpenTypeHistory() {
-		super(FILENAME, NODE_ROOT, NODE_TYPE_INFO);
-		fTimestampMapping= new HashMap<TypeNameMatch, Long>();
-		fNeedsConsistencyCheck= true;
-		load();
+		this(FILENAME, JOURNAL_FILENAME);
 		fDeltaListener= new TypeHistoryDeltaListener();
 		JavaCore.addElementChangedListener(fDeltaListener);
+	}
+
+	/**
+	 * Creates a history that is stored in the given files in the state location of the plug-in.
+	 * The history does not listen to Java element changes.
+	 * <p>
+	 * This constructor is for testing purpose only. Clients should use {@link #getInstance()}.
+	 * </p>
+	 *
+	 * @param fileName the name of the XML file
+	 * @param journalFileName the name of the journal file
+	 */
+	public OpenTypeHistory(String fileName, String journalFileName) {
+		super(fileName, NODE_ROOT, NODE_TYPE_INFO);
+		fJournalFileName= journalFileName;
+		fTimestampMapping= new ConcurrentHashMap<TypeNameMatch, Long>();
+		fPendingRecords= new ArrayList<String>();
+		fSnapshot= new Snapshot(Collections.emptyList());
+		fNeedsConsistencyCheck= true;
+		load();
 		fUpdateJob= new UpdateJob();
 		// It is not necessary anymore that the update job has a rule since
 		// markAsInconsistent isn't synchronized anymore. See bugs
@@ -238,52 +307,142 @@ public class OpenTypeHistory extends History {
 		internalCheckConsistency(monitor);
 	}
 
-	public synchronized boolean contains(TypeNameMatch type) {
-		return super.contains(type);
+	public boolean contains(TypeNameMatch type) {
+		return fSnapshot.fPositions.containsKey(type);
+	}
+
+	@Override
+	public boolean contains(Object object) {
+		return fSnapshot.fPositions.containsKey(object);
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return fSnapshot.fPositions.containsKey(key);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return fSnapshot.fTypes.length == 0;
+	}
+
+	@Override
+	public float getNormalizedPosition(Object key) {
+		Snapshot snapshot= fSnapshot;
+		Integer position= snapshot.fPositions.get(key);
+		if (position == null)
+			return 0.0f;
+		return (float) (position.intValue() + 1) / (float) snapshot.fTypes.length;
+	}
+
+	@Override
+	public int getPosition(Object key) {
+		Integer position= fSnapshot.fPositions.get(key);
+		return position != null ? position.intValue() : -1;
 	}
 
 	public synchronized void accessed(TypeNameMatch info) {
 		// Fetching the timestamp might not be cheap (remote file system
 		// external Jars. So check if we alreay have one.
-		if (!fTimestampMapping.containsKey(info)) {
-			fTimestampMapping.put(info, new Long(getContainerTimestamp(info)));
+		Long timestamp= fTimestampMapping.get(info);
+		if (timestamp == null) {
+			timestamp= new Long(getContainerTimestamp(info));
+			fTimestampMapping.put(info, timestamp);
 		}
 		super.accessed(info);
+		addAccessedRecord(info, timestamp.longValue());
+		publish();
 	}
 
 	public synchronized TypeNameMatch remove(TypeNameMatch info) {
 		fTimestampMapping.remove(info);
-		return (TypeNameMatch)super.remove(info);
+		TypeNameMatch removed= (TypeNameMatch)super.remove(info);
+		if (removed != null)
+			addRemovedRecord(removed);
+		publish();
+		return removed;
+	}
+
+	@Override
+	public synchronized void accessed(Object object) {
+		accessed((TypeNameMatch) object);
+	}
+
+	@Override
+	public synchronized Object remove(Object object) {
+		return remove((TypeNameMatch) object);
+	}
+
+	@Override
+	public synchronized Object removeKey(Object key) {
+		return remove((TypeNameMatch) key);
 	}
 
 	public synchronized void replace(TypeNameMatch old, TypeNameMatch newMatch) {
+		internalReplace(old, newMatch, getContainerTimestamp(newMatch));
+	}
+
+	/**
+	 * Replaces a type whose modifiers have changed, unless the type has been removed in the
+	 * meantime.
+	 *
+	 * @param old the checked type
+	 * @param newMatch the type with the current modifiers
+	 * @param timestamp the time stamp of its container
+	 */
+	private synchronized void replace(TypeNameMatch old, TypeNameMatch newMatch, long timestamp) {
+		if (!super.contains(old))
+			return;
+		internalReplace(old, newMatch, timestamp);
+	}
+
+	private void internalReplace(TypeNameMatch old, TypeNameMatch newMatch, long timestamp) {
 		fTimestampMapping.remove(old);
-		fTimestampMapping.put(newMatch, new Long(getContainerTimestamp(newMatch)));
-		super.remove(old);
+		fTimestampMapping.put(newMatch, new Long(timestamp));
+		if (super.remove(old) != null)
+			addRemovedRecord(old);
 		super.accessed(newMatch);
+		addAccessedRecord(newMatch, timestamp);
+		publish();
 	}
 
-	public synchronized TypeNameMatch[] getTypeInfos() {
-		Collection<Object> values= getValues();
-		int size= values.size();
+	/**
+	 * Updates the time stamp of a type that has been checked, unless the type has been removed
+	 * in the meantime.
+	 *
+	 * @param type the checked type
+	 * @param timestamp the time stamp of its container
+	 */
+	private synchronized void checked(TypeNameMatch type, long timestamp) {
+		if (super.contains(type))
+			fTimestampMapping.put(type, new Long(timestamp));
+	}
+
+	/**
+	 * Publishes the current state of the history to the readers. Must be called with the
+	 * lock held.
+	 */
+	private void publish() {
+		fSnapshot= new Snapshot(getValues());
+	}
+
+	public TypeNameMatch[] getTypeInfos() {
+		TypeNameMatch[] types= fSnapshot.fTypes;
+		int size= types.length;
 		TypeNameMatch[] result= new TypeNameMatch[size];
-		int i= size - 1;
-		for (Iterator<Object> iter= values.iterator(); iter.hasNext();) {
-			result[i]= (TypeNameMatch)iter.next();
-			i--;
-		}
+		for (int i= 0; i < size; i++)
+			result[i]= types[size - 1 - i];
 		return result;
 	}
 
-	public synchronized TypeNameMatch[] getFilteredTypeInfos(TypeInfoFilter filter) {
-		Collection<Object> values= getValues();
+	public TypeNameMatch[] getFilteredTypeInfos(TypeInfoFilter filter) {
+		TypeNameMatch[] types= fSnapshot.fTypes;
 		List<TypeNameMatch> result= new ArrayList<TypeNameMatch>();
-		for (Iterator<Object> iter= values.iterator(); iter.hasNext();) {
-			TypeNameMatch type= (TypeNameMatch)iter.next();
+		for (int i= types.length - 1; i >= 0; i--) {
+			TypeNameMatch type= types[i];
 			if ((filter == null || filter.matchesHistoryElement(type)) && !TypeFilter.isFiltered(type.getFullyQualifiedName()))
 				result.add(type);
 		}
-		Collections.reverse(result);
 		return result.toArray(new TypeNameMatch[result.size()]);
 
 	}
@@ -293,34 +452,56 @@ public class OpenTypeHistory extends History {
 		return object;
 	}
 
-	private synchronized void internalCheckConsistency(IProgressMonitor monitor) throws OperationCanceledException {
+	/**
+	 * Checks the types of the current snapshot. The time stamp of a container is fetched once
+	 * for all types in it. The history is not locked while checking, so that it can be queried
+	 * and modified concurrently.
+	 *
+	 * @param monitor the progress monitor
+	 * @throws OperationCanceledException if the check has been canceled
+	 */
+	private void internalCheckConsistency(IProgressMonitor monitor) throws OperationCanceledException {
 		// Setting fNeedsConsistencyCheck is necessary here since
 		// markAsInconsistent isn't synchronized.
 		fNeedsConsistencyCheck= true;
-		List<Object> typesToCheck= new ArrayList<Object>(getKeys());
-		monitor.beginTask(CorextMessages.TypeInfoHistory_consistency_check, typesToCheck.size());
+		Map<Object, List<TypeNameMatch>> typesByContainer= new LinkedHashMap<Object, List<TypeNameMatch>>();
+		TypeNameMatch[] types= fSnapshot.fTypes;
+		for (int i= 0; i < types.length; i++) {
+			Object container= getContainer(types[i]);
+			List<TypeNameMatch> sameContainer= typesByContainer.get(container);
+			if (sameContainer == null) {
+				sameContainer= new ArrayList<TypeNameMatch>();
+				typesByContainer.put(container, sameContainer);
+			}
+			sameContainer.add(types[i]);
+		}
+		monitor.beginTask(CorextMessages.TypeInfoHistory_consistency_check, typesByContainer.size());
 		monitor.setTaskName(CorextMessages.TypeInfoHistory_consistency_check);
-		for (Iterator<Object> iter= typesToCheck.iterator(); iter.hasNext();) {
-			TypeNameMatch type= (TypeNameMatch)iter.next();
-			long currentTimestamp= getContainerTimestamp(type);
-			Long lastTested= fTimestampMapping.get(type);
-			if (lastTested != null && currentTimestamp != IResource.NULL_STAMP && currentTimestamp == lastTested.longValue() && !isContainerDirty(type))
-				continue;
-			try {
-				IType jType= type.getType();
-				if (jType == null || !jType.exists()) {
-					remove(type);
-				} else {
-					// copy over the modifiers since they may have changed
-					int modifiers= jType.getFlags();
-					if (modifiers != type.getModifiers()) {
-						replace(type, SearchEngine.createTypeNameMatch(jType, modifiers));
+		for (Iterator<List<TypeNameMatch>> iter= typesByContainer.values().iterator(); iter.hasNext();) {
+			List<TypeNameMatch> sameContainer= iter.next();
+			long currentTimestamp= getContainerTimestamp(sameContainer.get(0));
+			boolean isDirty= isContainerDirty(sameContainer.get(0));
+			for (Iterator<TypeNameMatch> typeIter= sameContainer.iterator(); typeIter.hasNext();) {
+				TypeNameMatch type= typeIter.next();
+				Long lastTested= fTimestampMapping.get(type);
+				if (lastTested != null && currentTimestamp != IResource.NULL_STAMP && currentTimestamp == lastTested.longValue() && !isDirty)
+					continue;
+				try {
+					IType jType= type.getType();
+					if (jType == null || !jType.exists()) {
+						remove(type);
 					} else {
-						fTimestampMapping.put(type, new Long(currentTimestamp));
+						// copy over the modifiers since they may have changed
+						int modifiers= jType.getFlags();
+						if (modifiers != type.getModifiers()) {
+							replace(type, SearchEngine.createTypeNameMatch(jType, modifiers), currentTimestamp);
+						} else {
+							checked(type, currentTimestamp);
+						}
 					}
+				} catch (JavaModelException e) {
+					remove(type);
 				}
-			} catch (JavaModelException e) {
-				remove(type);
 			}
 			if (monitor.isCanceled())
 				throw new OperationCanceledException();
@@ -330,6 +511,20 @@ public class OpenTypeHistory extends History {
 		fNeedsConsistencyCheck= false;
 	}
 
+	/**
+	 * Returns the container whose time stamp is checked for the given type: the resource of
+	 * the type or, for types in external archives, the package fragment root.
+	 *
+	 * @param match the type
+	 * @return the container
+	 */
+	private Object getContainer(TypeNameMatch match) {
+		IResource resource= match.getType().getResource();
+		if (resource != null)
+			return resource;
+		return match.getPackageFragmentRoot();
+	}
+
 	private long getContainerTimestamp(TypeNameMatch match) {
 		try {
 			IType type= match.getType();
@@ -378,27 +573,163 @@ public class OpenTypeHistory extends History {
 
 
 	private void doShutdown() {
-		JavaCore.removeElementChangedListener(fDeltaListener);
+		if (fDeltaListener != null)
+			JavaCore.removeElementChangedListener(fDeltaListener);
 		save();
 	}
 
+	/**
+	 * Loads the XML file and replays the journal.
+	 */
 	@Override
-	protected Object createFromElement(Element type) {
-		String handle= type.getAttribute(NODE_HANDLE);
-		if (handle == null )
-			return null;
+	public synchronized void load() {
+		super.load();
+		File journal= getJournalFile();
+		if (journal.exists()) {
+			BufferedReader reader= null;
+			try {
+				reader= new BufferedReader(new InputStreamReader(new FileInputStream(journal), "utf-8")); //$NON-NLS-1$
+				String record;
+				while ((record= reader.readLine()) != null) {
+					replay(record);
+					fJournalSize++;
+				}
+			} catch (IOException e) {
+				JavaPlugin.log(e);
+			} finally {
+				try {
+					if (reader != null)
+						reader.close();
+				} catch (IOException e) {
+					JavaPlugin.log(e);
+				}
+			}
+		}
+		publish();
+	}
+
+	/**
+	 * Appends the modifications since the last save to the journal. The XML file is only
+	 * rewritten if the journal has grown too long.
+	 */
+	@Override
+	public synchronized void save() {
+		if (fPendingRecords.isEmpty())
+			return;
+
+		if (fJournalSize + fPendingRecords.size() > MAX_JOURNAL_SIZE) {
+			super.save();
+			File journal= getJournalFile();
+			if (!journal.exists() || journal.delete()) {
+				fJournalSize= 0;
+				fPendingRecords.clear();
+				return;
+			}
+		}
 
+		Writer writer= null;
+		try {
+			writer= new BufferedWriter(new OutputStreamWriter(new FileOutputStream(getJournalFile(), true), "utf-8")); //$NON-NLS-1$
+			for (Iterator<String> iter= fPendingRecords.iterator(); iter.hasNext();) {
+				writer.write(iter.next());
+				writer.write('\n');
+			}
+			fJournalSize+= fPendingRecords.size();
+			fPendingRecords.clear();
+		} catch (IOException e) {
+			JavaPlugin.log(e);
+		} finally {
+			try {
+				if (writer != null)
+					writer.close();
+			} catch (IOException e) {
+				JavaPlugin.log(e);
+			}
+		}
+	}
+
+	private File getJournalFile() {
+		return JavaPlugin.getDefault().getStateLocation().append(fJournalFileName).toFile();
+	}
+
+	private void addAccessedRecord(TypeNameMatch type, long timestamp) {
+		fPendingRecords.add(new StringBuffer().append(RECORD_ACCESSED)
+				.append(type.getModifiers()).append(RECORD_SEPARATOR)
+				.append(timestamp).append(RECORD_SEPARATOR)
+				.append(type.getType().getHandleIdentifier()).toString());
+	}
+
+	private void addRemovedRecord(TypeNameMatch type) {
+		fPendingRecords.add(RECORD_REMOVED + type.getType().getHandleIdentifier());
+	}
+
+	/**
+	 * Applies a journal record to the history. Malformed records are ignored.
+	 *
+	 * @param record the record
+	 */
+	private void replay(String record) {
+		if (record.length() == 0)
+			return;
+
+		if (record.charAt(0) == RECORD_REMOVED) {
+			String handle= record.substring(1);
+			for (Iterator<Object> iter= new ArrayList<Object>(getKeys()).iterator(); iter.hasNext();) {
+				TypeNameMatch type= (TypeNameMatch) iter.next();
+				if (handle.equals(type.getType().getHandleIdentifier())) {
+					fTimestampMapping.remove(type);
+					super.remove(type);
+				}
+			}
+		} else if (record.charAt(0) == RECORD_ACCESSED) {
+			int modifiersEnd= record.indexOf(RECORD_SEPARATOR);
+			int timestampEnd= modifiersEnd == -1 ? -1 : record.indexOf(RECORD_SEPARATOR, modifiersEnd + 1);
+			if (timestampEnd == -1)
+				return;
+			try {
+				int modifiers= Integer.parseInt(record.substring(1, modifiersEnd));
+				long timestamp= Long.parseLong(record.substring(modifiersEnd + 1, timestampEnd));
+				TypeNameMatch type= createTypeNameMatch(record.substring(timestampEnd + 1), modifiers, timestamp);
+				if (type != null)
+					super.accessed(type);
+			} catch (NumberFormatException e) {
+				// ignore the record
+			}
+		}
+	}
+
+	/**
+	 * Creates a type from its stored attributes.
+	 *
+	 * @param handle the handle identifier of the type
+	 * @param modifiers the modifiers of the type
+	 * @param timestamp the time stamp of the container or {@link IResource#NULL_STAMP}
+	 * @return the type or <code>null</code> if the handle does not denote a type
+	 */
+	private TypeNameMatch createTypeNameMatch(String handle, int modifiers, long timestamp) {
 		IJavaElement element= JavaCore.create(handle);
 		if (!(element instanceof IType))
 			return null;
 
+		TypeNameMatch info= SearchEngine.createTypeNameMatch((IType) element, modifiers);
+		if (timestamp != IResource.NULL_STAMP) {
+			fTimestampMapping.put(info, new Long(timestamp));
+		}
+		return info;
+	}
+
+	@Override
+	protected Object createFromElement(Element type) {
+		String handle= type.getAttribute(NODE_HANDLE);
+		if (handle == null )
+			return null;
+
 		int modifiers= 0;
 		try {
 			modifiers= Integer.parseInt(type.getAttribute(NODE_MODIFIERS));
 		} catch (NumberFormatException e) {
 			// take zero
 		}
-		TypeNameMatch info= SearchEngine.createTypeNameMatch((IType) element, modifiers);
 		long timestamp= IResource.NULL_STAMP;
 		String timestampValue= type.getAttribute(NODE_TIMESTAMP);
 		if (timestampValue != null && timestampValue.length() > 0) {
@@ -408,10 +739,7 @@ public class OpenTypeHistory extends History {
 				// take null stamp
 			}
 		}
-		if (timestamp != IResource.NULL_STAMP) {
-			fTimestampMapping.put(info, new Long(timestamp));
-		}
-		return info;
+		return createTypeNameMatch(handle, modifiers, timestamp);
 	}
 
 	@Override
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,7 +10,6 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.corext.util;
 
-import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.Map;
 
@@ -18,66 +17,25 @@ import org.eclipse.core.runtime.IProgressMonitor;
 
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.ITypeHierarchy;
-import org.eclipse.jdt.core.ITypeHierarchyChangedListener;
 import org.eclipse.jdt.core.JavaModelException;
 
 /**
- * A thread-safe cache for super type hierarchies.
+ * A thread-safe cache for super type hierarchies. The hierarchies are shared with the
+ * {@link TypeHierarchyCache}.
  */
 public class SuperTypeHierarchyCache {
 
-	private static class HierarchyCacheEntry implements ITypeHierarchyChangedListener {
-
-		private ITypeHierarchy fTypeHierarchy;
-		private long fLastAccess;
-
-		public HierarchyCacheEntry(ITypeHierarchy hierarchy) {
-			fTypeHierarchy= hierarchy;
-			fTypeHierarchy.addTypeHierarchyChangedListener(this);
-			markAsAccessed();
-		}
-
-		public void typeHierarchyChanged(ITypeHierarchy typeHierarchy) {
-			removeHierarchyEntryFromCache(this);
-		}
-
-		public ITypeHierarchy getTypeHierarchy() {
-			return fTypeHierarchy;
-		}
-
-		public void markAsAccessed() {
-			fLastAccess= System.currentTimeMillis();
-		}
-
-		public long getLastAccess() {
-			return fLastAccess;
-		}
-
-		public void dispose() {
-			if (fTypeHierarchy != null) {
-				fTypeHierarchy.removeTypeHierarchyChangedListener(this);
-				fTypeHierarchy= null;
-			}
-		}
-
-		/* (non-Javadoc)
-		 * @see java.lang.Object#toString()
-		 */
-		@Override
-		public String toString() {
-			return "Super hierarchy of: " + fTypeHierarchy.getType().getElementName(); //$NON-NLS-1$
-		}
-
-	}
-
-
 	private static final int CACHE_SIZE= 8;
 
-	private static ArrayList<HierarchyCacheEntry> fgHierarchyCache= new ArrayList<HierarchyCacheEntry>(CACHE_SIZE);
 	private static Map<IType, MethodOverrideTester> fgMethodOverrideTesterCache= new LRUMap<IType, MethodOverrideTester>(CACHE_SIZE);
 
-	private static int fgCacheHits= 0;
-	private static int fgCacheMisses= 0;
+	static {
+		TypeHierarchyCache.getDefault().addRemovalListener(new TypeHierarchyCache.IRemovalListener() {
+			public void hierarchyRemoved(ITypeHierarchy hierarchy) {
+				removeMethodOverrideTester(hierarchy);
+			}
+		});
+	}
 
 	/**
 	 * Returns a super type hierarchy that contains the given type.
@@ -126,9 +84,9 @@ public class SuperTypeHierarchyCache {
 	/**
 	 * Returns a super type hierarchy that contains the given type.
 	 * The returned hierarchy may actually be based on a subtype of the
-	 * requested type. Therefore, queries such as {@link ITypeHierarchy#getAllClasses()}
-	 * or {@link ITypeHierarchy#getRootInterfaces()} may return more types than the same
-	 * queries on a type hierarchy for just the given type.
+	 * requested type, or be a full type hierarchy. Therefore, queries such as
+	 * {@link ITypeHierarchy#getAllClasses()} or {@link ITypeHierarchy#getRootInterfaces()}
+	 * may return more types than the same queries on a type hierarchy for just the given type.
 	 *
 	 * @param type the focus type
 	 * @param progressMonitor progress monitor
@@ -136,92 +94,24 @@ public class SuperTypeHierarchyCache {
 	 * @throws JavaModelException if a problem occurs
 	 */
 	public static ITypeHierarchy getTypeHierarchy(IType type, IProgressMonitor progressMonitor) throws JavaModelException {
-		ITypeHierarchy hierarchy= findTypeHierarchyInCache(type);
-		if (hierarchy == null) {
-			fgCacheMisses++;
-			hierarchy= type.newSupertypeHierarchy(progressMonitor);
-			addTypeHierarchyToCache(hierarchy);
-		} else {
-			fgCacheHits++;
-		}
-		return hierarchy;
+		return TypeHierarchyCache.getDefault().getSupertypeHierarchy(type, progressMonitor);
 	}
 
-	private static void addTypeHierarchyToCache(ITypeHierarchy hierarchy) {
-		synchronized (fgHierarchyCache) {
-			int nEntries= fgHierarchyCache.size();
-			if (nEntries >= CACHE_SIZE) {
-				// find obsolete entries or remove entry that was least recently accessed
-				HierarchyCacheEntry oldest= null;
-				ArrayList<HierarchyCacheEntry> obsoleteHierarchies= new ArrayList<HierarchyCacheEntry>(CACHE_SIZE);
-				for (int i= 0; i < nEntries; i++) {
-					HierarchyCacheEntry entry= fgHierarchyCache.get(i);
-					ITypeHierarchy curr= entry.getTypeHierarchy();
-					if (!curr.exists() || hierarchy.contains(curr.getType())) {
-						obsoleteHierarchies.add(entry);
-					} else {
-						if (oldest == null || entry.getLastAccess() < oldest.getLastAccess()) {
-							oldest= entry;
-						}
-					}
-				}
-				if (!obsoleteHierarchies.isEmpty()) {
-					for (int i= 0; i < obsoleteHierarchies.size(); i++) {
-						removeHierarchyEntryFromCache(obsoleteHierarchies.get(i));
-					}
-				} else if (oldest != null) {
-					removeHierarchyEntryFromCache(oldest);
-				}
-			}
-			HierarchyCacheEntry newEntry= new HierarchyCacheEntry(hierarchy);
-			fgHierarchyCache.add(newEntry);
-		}
-	}
-
-
 	/**
 	 * Check if the given type is in the hierarchy cache.
 	 * @param type a type
 	 * @return <code>true</code> if a hierarchy for the given type is cached
 	 */
 	public static boolean hasInCache(IType type) {
-		return findTypeHierarchyInCache(type) != null;
+		return TypeHierarchyCache.getDefault().hasSupertypeHierarchy(type);
 	}
 
-
-	private static ITypeHierarchy findTypeHierarchyInCache(IType type) {
-		synchronized (fgHierarchyCache) {
-			for (int i= fgHierarchyCache.size() - 1; i>= 0; i--) {
-				HierarchyCacheEntry curr= fgHierarchyCache.get(i);
-				ITypeHierarchy hierarchy= curr.getTypeHierarchy();
-				if (!hierarchy.exists()) {
-					removeHierarchyEntryFromCache(curr);
-				} else {
-					if (hierarchy.contains(type)) {
-						curr.markAsAccessed();
-						return hierarchy;
-					}
-				}
-			}
-		}
-		return null;
-	}
-
-	private static void removeHierarchyEntryFromCache(HierarchyCacheEntry entry) {
-		synchronized (fgHierarchyCache) {
-			removeMethodOverrideTester(entry.getTypeHierarchy());
-			entry.dispose();
-			fgHierarchyCache.remove(entry);
-		}
-	}
-
-
 	/**
 	 * Gets the number of times the hierarchy could be taken from the hierarchy.
 	 * @return Returns a int
 	 */
 	public static int getCacheHits() {
-		return fgCacheHits;
+		return TypeHierarchyCache.getDefault().getHits(true);
 	}
 
 	/**
@@ -229,6 +119,6 @@ public class SuperTypeHierarchyCache {
 	 * @return Returns a int
 	 */
 	public static int getCacheMisses() {
-		return fgCacheMisses;
+		return TypeHierarchyCache.getDefault().getMisses(true);
 	}
-}
+}
\ No newline at end of file
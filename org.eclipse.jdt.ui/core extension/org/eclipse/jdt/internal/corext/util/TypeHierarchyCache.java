@@ -0,0 +1,400 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.corext.util;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.Platform;
+
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.ITypeHierarchy;
+import org.eclipse.jdt.core.ITypeHierarchyChangedListener;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.WorkingCopyOwner;
+
+/**
+ * A thread-safe, workspace-wide cache for type hierarchies and super type hierarchies on primary
+ * working copies. The type hierarchy view, refactorings and quick fixes share the cached
+ * hierarchies, so that a hierarchy is only computed once.
+ * <p>
+ * A cached hierarchy is removed as soon as it reports a change. The size of a hierarchy is
+ * estimated from the number of types it contains, and the least recently used hierarchies are
+ * removed when the total size exceeds a budget derived from the maximum heap size.
+ * </p>
+ * <p>
+ * Clients must not {@link ITypeHierarchy#refresh(IProgressMonitor) refresh} the returned
+ * hierarchies, but request a new hierarchy after a change instead.
+ * </p>
+ *
+ * @since 3.9
+ */
+public class TypeHierarchyCache {
+
+	/**
+	 * Listener that is informed when a hierarchy is removed from the cache.
+	 */
+	public interface IRemovalListener {
+
+		/**
+		 * Called when the given hierarchy has been removed from the cache, because it changed
+		 * or has been evicted.
+		 *
+		 * @param hierarchy the removed hierarchy
+		 */
+		void hierarchyRemoved(ITypeHierarchy hierarchy);
+	}
+
+	private class Entry implements ITypeHierarchyChangedListener {
+
+		private final ITypeHierarchy fHierarchy;
+		private final boolean fIsSuperTypesOnly;
+		private final int fWeight;
+
+		public Entry(ITypeHierarchy hierarchy, boolean isSuperTypesOnly) {
+			fHierarchy= hierarchy;
+			fIsSuperTypesOnly= isSuperTypesOnly;
+			fWeight= Math.max(1, hierarchy.getAllTypes().length);
+			fHierarchy.addTypeHierarchyChangedListener(this);
+		}
+
+		public void typeHierarchyChanged(ITypeHierarchy typeHierarchy) {
+			remove(this);
+		}
+
+		/**
+		 * Tells whether this hierarchy can answer a query for the given type.
+		 *
+		 * @param type the type
+		 * @param isSuperTypesOnly <code>true</code> if only the super types are needed
+		 * @return <code>true</code> if this hierarchy contains all requested types
+		 */
+		public boolean covers(IType type, boolean isSuperTypesOnly) {
+			IType focus= fHierarchy.getType();
+			if (!isSuperTypesOnly)
+				return !fIsSuperTypesOnly && type.equals(focus);
+			if (fIsSuperTypesOnly)
+				return fHierarchy.contains(type); // a super type hierarchy contains the super types of all its types
+			if (type.equals(focus))
+				return true;
+			IType[] supertypes= fHierarchy.getAllSupertypes(focus);
+			for (int i= 0; i < supertypes.length; i++) {
+				if (type.equals(supertypes[i]))
+					return true;
+			}
+			return false;
+		}
+
+		public void dispose() {
+			fHierarchy.removeTypeHierarchyChangedListener(this);
+		}
+
+		/* (non-Javadoc)
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return (fIsSuperTypesOnly ? "Super hierarchy of: " : "Hierarchy of: ") + fHierarchy.getType().getElementName(); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+	}
+
+	private static final boolean DEBUG= "true".equalsIgnoreCase(Platform.getDebugOption("org.eclipse.jdt.ui/debug/TypeHierarchyCache")); //$NON-NLS-1$//$NON-NLS-2$
+
+	/** The estimated memory used per type of a hierarchy, in bytes */
+	private static final int BYTES_PER_TYPE= 200;
+	/** The minimum number of types that are cached */
+	private static final int MIN_WEIGHT= 5000;
+
+	private static TypeHierarchyCache fgDefault;
+
+	/** The entries, in least recently used order */
+	private final LinkedHashMap<Entry, Entry> fEntries= new LinkedHashMap<Entry, Entry>(16, 0.75f, true);
+	private final List<IRemovalListener> fRemovalListeners= new ArrayList<IRemovalListener>();
+	private final int fMaxWeight;
+	private int fWeight;
+
+	private int fHits;
+	private int fMisses;
+	private int fSuperTypeHits;
+	private int fSuperTypeMisses;
+	private int fEvictions;
+
+	/**
+	 * Returns the shared cache.
+	 *
+	 * @return the type hierarchy cache
+	 */
+	public static synchronized TypeHierarchyCache getDefault() {
+		if (fgDefault == null) {
+			long budget= Runtime.getRuntime().maxMemory() / 100 / BYTES_PER_TYPE;
+			fgDefault= new TypeHierarchyCache((int) Math.min(Integer.MAX_VALUE, Math.max(MIN_WEIGHT, budget)));
+		}
+		return fgDefault;
+	}
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param maxWeight the maximum number of types in all cached hierarchies
+	 */
+	TypeHierarchyCache(int maxWeight) {
+		fMaxWeight= maxWeight;
+	}
+
+	/**
+	 * Returns a type hierarchy for the given type, which contains all super types and subtypes
+	 * of the type.
+	 *
+	 * @param type the focus type
+	 * @param monitor the progress monitor, or <code>null</code>
+	 * @return a type hierarchy with <code>type</code> as focus type
+	 * @throws JavaModelException if a problem occurs
+	 */
+	public ITypeHierarchy getTypeHierarchy(IType type, IProgressMonitor monitor) throws JavaModelException {
+		ITypeHierarchy hierarchy= find(type, false);
+		if (hierarchy != null)
+			return hierarchy;
+		hierarchy= type.newTypeHierarchy(monitor);
+		add(hierarchy, false);
+		return hierarchy;
+	}
+
+	/**
+	 * Returns a type hierarchy for the given type, which contains all super types and subtypes
+	 * of the type. The hierarchy is only cached if the owner has no working copies.
+	 *
+	 * @param type the focus type
+	 * @param owner the working copy owner
+	 * @param monitor the progress monitor, or <code>null</code>
+	 * @return a type hierarchy with <code>type</code> as focus type
+	 * @throws JavaModelException if a problem occurs
+	 */
+	public ITypeHierarchy getTypeHierarchy(IType type, WorkingCopyOwner owner, IProgressMonitor monitor) throws JavaModelException {
+		if (owner == null || JavaCore.getWorkingCopies(owner).length == 0)
+			return getTypeHierarchy(type, monitor);
+		synchronized (this) {
+			fMisses++;
+		}
+		return type.newTypeHierarchy(owner, monitor);
+	}
+
+	/**
+	 * Returns a super type hierarchy that contains the given type.
+	 * The returned hierarchy may actually be based on a subtype of the
+	 * requested type, or be a full type hierarchy. Therefore, queries such as
+	 * {@link ITypeHierarchy#getAllClasses()} or {@link ITypeHierarchy#getRootInterfaces()}
+	 * may return more types than the same queries on a type hierarchy for just the given type.
+	 *
+	 * @param type the type
+	 * @param monitor the progress monitor, or <code>null</code>
+	 * @return a hierarchy that contains <code>type</code> and all its super types
+	 * @throws JavaModelException if a problem occurs
+	 */
+	public ITypeHierarchy getSupertypeHierarchy(IType type, IProgressMonitor monitor) throws JavaModelException {
+		ITypeHierarchy hierarchy= find(type, true);
+		if (hierarchy != null)
+			return hierarchy;
+		hierarchy= type.newSupertypeHierarchy(monitor);
+		add(hierarchy, true);
+		return hierarchy;
+	}
+
+	/**
+	 * Tells whether a super type hierarchy for the given type is cached.
+	 *
+	 * @param type a type
+	 * @return <code>true</code> if a hierarchy that contains the super types of the given type
+	 *         is cached
+	 */
+	public synchronized boolean hasSupertypeHierarchy(IType type) {
+		return findEntry(type, true) != null;
+	}
+
+	/**
+	 * Removes the given hierarchy from the cache, so that the next request computes a new
+	 * hierarchy.
+	 *
+	 * @param hierarchy the hierarchy to remove
+	 */
+	public void invalidate(ITypeHierarchy hierarchy) {
+		Entry found= null;
+		synchronized (this) {
+			for (Iterator<Entry> iter= fEntries.keySet().iterator(); iter.hasNext();) {
+				Entry entry= iter.next();
+				if (entry.fHierarchy == hierarchy) {
+					found= entry;
+					break;
+				}
+			}
+		}
+		if (found != null)
+			remove(found);
+	}
+
+	public synchronized void addRemovalListener(IRemovalListener listener) {
+		if (!fRemovalListeners.contains(listener))
+			fRemovalListeners.add(listener);
+	}
+
+	public synchronized void removeRemovalListener(IRemovalListener listener) {
+		fRemovalListeners.remove(listener);
+	}
+
+	/**
+	 * Removes all hierarchies from the cache.
+	 */
+	public void clear() {
+		Entry[] entries;
+		synchronized (this) {
+			entries= fEntries.keySet().toArray(new Entry[fEntries.size()]);
+		}
+		for (int i= 0; i < entries.length; i++)
+			remove(entries[i]);
+	}
+
+	/**
+	 * Returns the number of times a hierarchy was found in the cache.
+	 *
+	 * @param superTypesOnly <code>true</code> for super type hierarchy queries,
+	 *            <code>false</code> for type hierarchy queries
+	 * @return the number of hits
+	 */
+	public synchronized int getHits(boolean superTypesOnly) {
+		return superTypesOnly ? fSuperTypeHits : fHits;
+	}
+
+	/**
+	 * Returns the number of times a hierarchy had to be computed.
+	 *
+	 * @param superTypesOnly <code>true</code> for super type hierarchy queries,
+	 *            <code>false</code> for type hierarchy queries
+	 * @return the number of misses
+	 */
+	public synchronized int getMisses(boolean superTypesOnly) {
+		return superTypesOnly ? fSuperTypeMisses : fMisses;
+	}
+
+	/**
+	 * Returns the number of hierarchies that have been removed to stay within the memory budget.
+	 *
+	 * @return the number of evictions
+	 */
+	public synchronized int getEvictions() {
+		return fEvictions;
+	}
+
+	/**
+	 * Returns the estimated size of the cached hierarchies.
+	 *
+	 * @return the number of types in all cached hierarchies
+	 */
+	public synchronized int getWeight() {
+		return fWeight;
+	}
+
+	private synchronized ITypeHierarchy find(IType type, boolean isSuperTypesOnly) {
+		Entry entry= findEntry(type, isSuperTypesOnly);
+		if (entry != null) {
+			fEntries.get(entry); // mark as accessed
+			if (isSuperTypesOnly)
+				fSuperTypeHits++;
+			else
+				fHits++;
+			return entry.fHierarchy;
+		}
+		if (isSuperTypesOnly)
+			fSuperTypeMisses++;
+		else
+			fMisses++;
+		if (DEBUG)
+			System.out.println("TypeHierarchyCache: miss for " + type.getFullyQualifiedName() + ", " + getStatistics()); //$NON-NLS-1$ //$NON-NLS-2$
+		return null;
+	}
+
+	private Entry findEntry(IType type, boolean isSuperTypesOnly) {
+		Entry result= null;
+		List<Entry> obsolete= null;
+		for (Iterator<Entry> iter= fEntries.keySet().iterator(); iter.hasNext();) {
+			Entry entry= iter.next();
+			if (!entry.fHierarchy.exists()) {
+				if (obsolete == null)
+					obsolete= new ArrayList<Entry>();
+				obsolete.add(entry);
+			} else if (entry.covers(type, isSuperTypesOnly)) {
+				result= entry; // the most recently used entry wins
+			}
+		}
+		if (obsolete != null) {
+			for (int i= 0; i < obsolete.size(); i++)
+				remove(obsolete.get(i));
+		}
+		return result;
+	}
+
+	private void add(ITypeHierarchy hierarchy, boolean isSuperTypesOnly) {
+		Entry newEntry= new Entry(hierarchy, isSuperTypesOnly);
+		List<Entry> removed= new ArrayList<Entry>();
+		synchronized (this) {
+			for (Iterator<Entry> iter= fEntries.keySet().iterator(); iter.hasNext();) {
+				Entry entry= iter.next();
+				// the new hierarchy replaces hierarchies it covers
+				if (entry.fIsSuperTypesOnly && newEntry.covers(entry.fHierarchy.getType(), true)
+						|| !entry.fIsSuperTypesOnly && !isSuperTypesOnly && entry.fHierarchy.getType().equals(hierarchy.getType())) {
+					iter.remove();
+					fWeight-= entry.fWeight;
+					removed.add(entry);
+				}
+			}
+			fEntries.put(newEntry, newEntry);
+			fWeight+= newEntry.fWeight;
+			for (Iterator<Entry> iter= fEntries.keySet().iterator(); fWeight > fMaxWeight && iter.hasNext();) {
+				Entry entry= iter.next();
+				if (entry == newEntry)
+					break;
+				iter.remove();
+				fWeight-= entry.fWeight;
+				fEvictions++;
+				removed.add(entry);
+			}
+		}
+		for (int i= 0; i < removed.size(); i++)
+			disposeEntry(removed.get(i));
+	}
+
+	private void remove(Entry entry) {
+		synchronized (this) {
+			if (fEntries.remove(entry) == null)
+				return;
+			fWeight-= entry.fWeight;
+		}
+		disposeEntry(entry);
+	}
+
+	private void disposeEntry(Entry entry) {
+		entry.dispose();
+		IRemovalListener[] listeners;
+		synchronized (this) {
+			listeners= fRemovalListeners.toArray(new IRemovalListener[fRemovalListeners.size()]);
+		}
+		for (int i= 0; i < listeners.length; i++)
+			listeners[i].hierarchyRemoved(entry.fHierarchy);
+	}
+
+	private String getStatistics() {
+		return "hits: " + fHits + ", misses: " + fMisses //$NON-NLS-1$ //$NON-NLS-2$
+				+ ", super type hits: " + fSuperTypeHits + ", super type misses: " + fSuperTypeMisses //$NON-NLS-1$ //$NON-NLS-2$
+				+ ", evictions: " + fEvictions + ", weight: " + fWeight + "/" + fMaxWeight; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+	}
+}
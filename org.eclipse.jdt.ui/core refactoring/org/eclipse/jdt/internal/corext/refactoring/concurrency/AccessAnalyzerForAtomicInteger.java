@@ -3,8 +3,10 @@ package org.eclipse.jdt.internal.corext.refactoring.concurrency;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.jdt.core.Flags;
@@ -65,6 +67,7 @@ public class AccessAnalyzerForAtomicInteger extends ASTVisitor {
 	private RefactoringStatus fStatus;
 
 	private boolean fSetterMustReturnValue;
+	private SideEffectsFinder fSideEffectsFinder;
 
 	public AccessAnalyzerForAtomicInteger(
 			ConvertToAtomicIntegerRefactoring refactoring,
@@ -321,35 +324,34 @@ public class AccessAnalyzerForAtomicInteger extends ASTVisitor {
 	
 	private void checkMoreThanOneFieldReference(ASTNode node, Block syncBody) {
 		ASTNode enclosingStatement = ASTNodes.getParent(node, Statement.class);
+		if (fSideEffectsFinder == null)
+			fSideEffectsFinder = new SideEffectsFinder((CompilationUnit) node.getRoot());
 		List statements = syncBody.statements();
 		for (Iterator iterator = statements.iterator(); iterator.hasNext();) {
 			Statement statement = (Statement) iterator.next();
 			if (!statement.equals(enclosingStatement)){
-				statement.accept(new ASTVisitor(){
-					public boolean visit(SimpleName identifier){
-						IBinding identifierBinding = resolveBinding(identifier);
-						if (identifierBinding instanceof IVariableBinding){
-							IVariableBinding varBinding = (IVariableBinding) identifierBinding;
-							if (varBinding.isField()){
-								RefactoringStatus errorStatus = fStatus.createErrorStatus("Synchronized block contains references to another field \""
-										+ identifier.getIdentifier()
-										+ "\". AtomicInteger cannot preserve invariants over two field accesses, " +
-												"consider using locks instead.");
-								
-								RefactoringStatusEntry[] entries = fStatus.getEntries();
-								boolean alreadyExistingError = false;
-								for (int i = 0; i < entries.length; i++) {
-									RefactoringStatusEntry refactoringStatusEntry = entries[i];
-									if (refactoringStatusEntry.getMessage().equals(errorStatus.getMessageMatchingSeverity(RefactoringStatus.ERROR)))
-										alreadyExistingError = true;
-								}
-								if (!alreadyExistingError)
-									fStatus.merge(errorStatus);
-							}
-						}
-						return true;
+				// also covers fields that are only accessed by methods called from the block
+				SideEffectsFinder.Effects effects = fSideEffectsFinder.getEffects(statement);
+				Set<IVariableBinding> fields = new LinkedHashSet<IVariableBinding>(effects.getReadFields());
+				fields.addAll(effects.getWrittenFields());
+				fields.addAll(effects.getModifiedFields());
+				for (Iterator<IVariableBinding> fieldIterator = fields.iterator(); fieldIterator.hasNext();) {
+					IVariableBinding varBinding = fieldIterator.next();
+					if (Bindings.equals(varBinding, fFieldBinding))
+						continue;
+					RefactoringStatus errorStatus = fStatus.createErrorStatus(ConcurrencyRefactorings.AccessAnalyzerForAtomicInteger_access_error_1
+							+ varBinding.getName() + ConcurrencyRefactorings.AccessAnalyzerForAtomicInteger_access_error_2);
+
+					RefactoringStatusEntry[] entries = fStatus.getEntries();
+					boolean alreadyExistingError = false;
+					for (int i = 0; i < entries.length; i++) {
+						RefactoringStatusEntry refactoringStatusEntry = entries[i];
+						if (refactoringStatusEntry.getMessage().equals(errorStatus.getMessageMatchingSeverity(RefactoringStatus.ERROR)))
+							alreadyExistingError = true;
 					}
-				});
+					if (!alreadyExistingError)
+						fStatus.merge(errorStatus);
+				}
 			}
 			
 		}
@@ -0,0 +1,702 @@
+package org.eclipse.jdt.internal.corext.refactoring.concurrency;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.text.edits.TextEditGroup;
+
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.DoStatement;
+import org.eclipse.jdt.core.dom.EnhancedForStatement;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.NullLiteral;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.SuperFieldAccess;
+import org.eclipse.jdt.core.dom.SynchronizedStatement;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.WhileStatement;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ImportRewrite;
+
+import org.eclipse.jdt.internal.corext.dom.ASTNodes;
+import org.eclipse.jdt.internal.corext.dom.Bindings;
+import org.eclipse.jdt.internal.corext.dom.JdtASTMatcher;
+import org.eclipse.jdt.internal.corext.dom.ModifierRewrite;
+import org.eclipse.jdt.internal.corext.refactoring.base.JavaStatusContext;
+import org.eclipse.jdt.internal.corext.util.Messages;
+
+/**
+ * Rewrites the accesses to a synchronized collection field for a collection of
+ * <code>java.util.concurrent</code>.
+ * <p>
+ * Creations of the old collection are replaced, check-then-act sequences such as
+ * <code>if (!set.contains(e)) set.add(e);</code> are replaced by the matching atomic operation
+ * and synchronized regions that only guard a single operation on the field are removed. Methods
+ * the new collection does not offer, <code>null</code> elements, and synchronized regions that
+ * combine several operations on the field are reported as errors.
+ * </p>
+ */
+public class AccessAnalyzerForConcurrentCollection extends ASTVisitor {
+
+	private static final String REMOVE_SYNCHRONIZED_MODIFIER= ConcurrencyRefactorings.ConcurrencyRefactorings_remove_synch_mod;
+	private static final String REMOVE_SYNCHRONIZED_BLOCK= ConcurrencyRefactorings.ConcurrencyRefactorings_remove_synch_block;
+	private static final String REPLACE_CREATION= ConcurrencyRefactorings.AccessAnalyzerForConcurrentCollection_replace_creation;
+	private static final String ATOMIC_OPERATION= ConcurrencyRefactorings.AccessAnalyzerForConcurrentCollection_atomic_operation;
+
+	private static final String CONCURRENT_HASH_MAP= "java.util.concurrent.ConcurrentHashMap"; //$NON-NLS-1$
+	private static final String OBJECT= "java.lang.Object"; //$NON-NLS-1$
+
+	/** the default capacity of <code>PriorityQueue</code> */
+	private static final String DEFAULT_CAPACITY= "11"; //$NON-NLS-1$
+
+	private final ConvertToConcurrentCollectionRefactoring fRefactoring;
+	private final ICompilationUnit fCUnit;
+	private final IVariableBinding fFieldBinding;
+	private final ASTRewrite fRewriter;
+	private final ImportRewrite fImportRewriter;
+	private final List<TextEditGroup> fGroupDescriptions;
+	private final RefactoringStatus fStatus;
+	private final int fTarget;
+	private final Map<ASTNode, Integer> fRegionAccesses;
+	private SideEffectsFinder fSideEffectsFinder;
+	private boolean fUsesTargetMethods;
+	private boolean fEscapeReported;
+	private boolean fLoopWriteReported;
+
+	public AccessAnalyzerForConcurrentCollection(ConvertToConcurrentCollectionRefactoring refactoring, ICompilationUnit unit,
+			IVariableBinding field, ASTRewrite rewriter, ImportRewrite importRewrite) {
+		fRefactoring= refactoring;
+		fCUnit= unit;
+		fFieldBinding= field.getVariableDeclaration();
+		fRewriter= rewriter;
+		fImportRewriter= importRewrite;
+		fGroupDescriptions= new ArrayList<TextEditGroup>();
+		fStatus= new RefactoringStatus();
+		fTarget= refactoring.getTarget();
+		fRegionAccesses= new HashMap<ASTNode, Integer>();
+	}
+
+	public RefactoringStatus getStatus() {
+		return fStatus;
+	}
+
+	public Collection<TextEditGroup> getGroupDescriptions() {
+		return fGroupDescriptions;
+	}
+
+	/**
+	 * Returns whether the rewritten code calls methods that are only declared by the new
+	 * collection class, so that the field has to be declared with that class.
+	 *
+	 * @return <code>true</code> if the declared type of the field must change
+	 */
+	public boolean usesTargetMethods() {
+		return fUsesTargetMethods;
+	}
+
+	@Override
+	public boolean visit(CompilationUnit node) {
+		fSideEffectsFinder= new SideEffectsFinder(node);
+		return true;
+	}
+
+	@Override
+	public boolean visit(VariableDeclarationFragment node) {
+		if (!considerBinding(node.resolveBinding()) || node.getInitializer() == null)
+			return true;
+		replaceCreation(node.getInitializer());
+		return false;
+	}
+
+	@Override
+	public boolean visit(Assignment node) {
+		if (!considerBinding(resolveBinding(node.getLeftHandSide())))
+			return true;
+		if (node.getOperator() == Assignment.Operator.ASSIGN)
+			replaceCreation(node.getRightHandSide());
+		return false;
+	}
+
+	@Override
+	public boolean visit(SynchronizedStatement node) {
+		// client-side locking on the collection itself is no access
+		if (!considerBinding(resolveBinding(getUnparenthesized(node.getExpression()))))
+			return true;
+		node.getBody().accept(this);
+		return false;
+	}
+
+	@Override
+	public boolean visit(IfStatement node) {
+		return !replaceCheckThenAct(node);
+	}
+
+	@Override
+	public boolean visit(MethodInvocation node) {
+		Expression receiver= node.getExpression();
+		if (receiver == null || !isFieldReference(receiver))
+			return true;
+		IMethodBinding binding= node.resolveMethodBinding();
+		if (binding != null) {
+			checkInvocation(node, binding);
+			markAccess(node);
+			Statement statement= (Statement) ASTNodes.getParent(node, Statement.class);
+			if (statement != null && countReferences(statement) == 1)
+				removeSynchronization(statement, null);
+		}
+		List<?> arguments= node.arguments();
+		for (int i= 0; i < arguments.size(); i++) {
+			((Expression) arguments.get(i)).accept(this);
+		}
+		return false;
+	}
+
+	@Override
+	public boolean visit(SimpleName node) {
+		if (node.isDeclaration() || !considerBinding(node.resolveBinding()))
+			return true;
+		if (node.getLocationInParent() == QualifiedName.NAME_PROPERTY
+				|| node.getLocationInParent() == FieldAccess.NAME_PROPERTY
+				|| node.getLocationInParent() == SuperFieldAccess.NAME_PROPERTY)
+			return true;
+		handleReference(node);
+		return false;
+	}
+
+	@Override
+	public boolean visit(QualifiedName node) {
+		if (!considerBinding(node.resolveBinding()))
+			return true;
+		handleReference(node);
+		return false;
+	}
+
+	@Override
+	public boolean visit(FieldAccess node) {
+		if (!considerBinding(node.getName().resolveBinding()))
+			return true;
+		handleReference(node);
+		return false;
+	}
+
+	@Override
+	public boolean visit(SuperFieldAccess node) {
+		if (!considerBinding(node.getName().resolveBinding()))
+			return true;
+		handleReference(node);
+		return false;
+	}
+
+	/*
+	 * Iterating over the field is an access; passing it to other code lets that code depend on
+	 * the old class and on the lock.
+	 */
+	private void handleReference(Expression reference) {
+		markAccess(reference);
+		ASTNode parent= reference.getParent();
+		if (parent instanceof EnhancedForStatement && ((EnhancedForStatement) parent).getExpression() == reference)
+			return;
+		if (!fEscapeReported) {
+			fEscapeReported= true;
+			fStatus.addWarning(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentCollection_field_escapes,
+					new String[] { fFieldBinding.getName(), parent.toString() }), JavaStatusContext.create(fCUnit, reference));
+		}
+	}
+
+	private void replaceCreation(Expression value) {
+		if (getUnparenthesized(value) instanceof NullLiteral)
+			return;
+		ClassInstanceCreation creation= ConvertToConcurrentCollectionRefactoring.getCreation(value);
+		ITypeBinding type= creation != null ? creation.resolveTypeBinding() : null;
+		if (type == null || !type.getErasure().getQualifiedName().equals(fRefactoring.getSourceType())) {
+			addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentCollection_unknown_value,
+					new String[] { fFieldBinding.getName(), value.toString() }), value);
+			return;
+		}
+		Expression replacement= createCollection(creation);
+		if (replacement != null)
+			fRewriter.replace(value, replacement, createGroupDescription(REPLACE_CREATION));
+	}
+
+	/*
+	 * new ArrayList<E>(10) => new CopyOnWriteArrayList<E>()
+	 * new HashSet<E>(10) => ConcurrentHashMap.<E>newKeySet(10)
+	 * new PriorityQueue<E>(comparator) => new PriorityBlockingQueue<E>(11, comparator)
+	 */
+	private Expression createCollection(ClassInstanceCreation creation) {
+		AST ast= creation.getAST();
+		List<?> arguments= creation.arguments();
+		Type type= creation.getType();
+		List<?> typeArguments= type instanceof ParameterizedType ? ((ParameterizedType) type).typeArguments() : null;
+
+		if (fTarget == ConvertToConcurrentCollectionRefactoring.CONCURRENT_KEY_SET) {
+			if (!arguments.isEmpty() && !isInt((Expression) arguments.get(0))) {
+				addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentCollection_unsupported_creation,
+						new String[] { creation.toString(), fRefactoring.getTargetDescription() }), creation);
+				return null;
+			}
+			MethodInvocation invocation= ast.newMethodInvocation();
+			invocation.setExpression(ast.newName(fImportRewriter.addImport(CONCURRENT_HASH_MAP)));
+			invocation.setName(ast.newSimpleName("newKeySet")); //$NON-NLS-1$
+			if (typeArguments != null)
+				invocation.typeArguments().addAll(ASTNode.copySubtrees(ast, typeArguments));
+			if (!arguments.isEmpty())
+				invocation.arguments().add(copyExpression((Expression) arguments.get(0)));
+			return invocation;
+		}
+
+		Type newType= ast.newSimpleType(ast.newName(fImportRewriter.addImport(fRefactoring.getTargetQualifiedName())));
+		if (typeArguments != null) {
+			ParameterizedType parameterized= ast.newParameterizedType(newType);
+			parameterized.typeArguments().addAll(ASTNode.copySubtrees(ast, typeArguments));
+			newType= parameterized;
+		}
+		ClassInstanceCreation result= ast.newClassInstanceCreation();
+		result.setType(newType);
+		for (int i= 0; i < arguments.size(); i++) {
+			Expression argument= (Expression) arguments.get(i);
+			// CopyOnWriteArrayList and ConcurrentLinkedQueue have no initial capacity
+			if ((fTarget == ConvertToConcurrentCollectionRefactoring.COPY_ON_WRITE_ARRAY_LIST
+					|| fTarget == ConvertToConcurrentCollectionRefactoring.CONCURRENT_LINKED_QUEUE) && isInt(argument))
+				continue;
+			if (fTarget == ConvertToConcurrentCollectionRefactoring.PRIORITY_BLOCKING_QUEUE && arguments.size() == 1
+					&& !isInt(argument) && !SideEffectsFinder.isCollection(argument.resolveTypeBinding()))
+				result.arguments().add(ast.newNumberLiteral(DEFAULT_CAPACITY));
+			result.arguments().add(copyExpression(argument));
+		}
+		return result;
+	}
+
+	private void checkInvocation(MethodInvocation node, IMethodBinding binding) {
+		String name= binding.getName();
+		if (!isSupported(binding)) {
+			addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentCollection_unsupported_method,
+					new String[] { fRefactoring.getTargetDescription(), name }), node);
+			return;
+		}
+		if (fTarget != ConvertToConcurrentCollectionRefactoring.COPY_ON_WRITE_ARRAY_LIST) {
+			List<?> arguments= node.arguments();
+			for (int i= 0; i < arguments.size(); i++) {
+				if (getUnparenthesized((Expression) arguments.get(i)) instanceof NullLiteral) {
+					addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentCollection_null_element,
+							new String[] { node.toString(), fRefactoring.getTargetDescription() }), node);
+					return;
+				}
+			}
+			return;
+		}
+		if ("iterator".equals(name) || "listIterator".equals(name)) { //$NON-NLS-1$ //$NON-NLS-2$
+			checkIteratorWrites(node);
+		} else if (!fLoopWriteReported && !SideEffectsFinder.isCollectionRead(binding) && isInLoop(node)) {
+			// every write copies the whole array
+			fLoopWriteReported= true;
+			fStatus.addWarning(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentCollection_copy_in_loop,
+					node.toString()), JavaStatusContext.create(fCUnit, node));
+		}
+	}
+
+	/*
+	 * The iterators of CopyOnWriteArrayList work on a snapshot and do not support remove, set
+	 * and add.
+	 */
+	private void checkIteratorWrites(MethodInvocation node) {
+		ASTNode parent= node.getParent();
+		IBinding iterator= null;
+		if (parent instanceof VariableDeclarationFragment && ((VariableDeclarationFragment) parent).getInitializer() == node)
+			iterator= ((VariableDeclarationFragment) parent).resolveBinding();
+		else if (parent instanceof Assignment && ((Assignment) parent).getRightHandSide() == node)
+			iterator= resolveBinding(((Assignment) parent).getLeftHandSide());
+		ASTNode scope= ASTNodes.getParent(node, BodyDeclaration.class);
+		if (iterator == null || scope == null)
+			return;
+		final IBinding iteratorBinding= iterator;
+		scope.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(MethodInvocation invocation) {
+				String name= invocation.getName().getIdentifier();
+				Expression expression= invocation.getExpression();
+				if (expression instanceof SimpleName && Bindings.equals(iteratorBinding, ((SimpleName) expression).resolveBinding())
+						&& ("remove".equals(name) || "set".equals(name) || "add".equals(name))) { //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+					addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentCollection_iterator_write,
+							new String[] { invocation.toString(), fFieldBinding.getName() }), invocation);
+				}
+				return true;
+			}
+		});
+	}
+
+	/*
+	 * if (!set.contains(e)) set.add(e); => set.add(e);
+	 * if (!list.contains(e)) list.add(e); => list.addIfAbsent(e);
+	 * if (!map.containsKey(k)) map.put(k, v); => map.putIfAbsent(k, v);
+	 * if (c.contains(e)) c.remove(e); => c.remove(e);
+	 * if (!queue.isEmpty()) queue.poll(); => queue.poll();
+	 */
+	private boolean replaceCheckThenAct(IfStatement node) {
+		if (node.getElseStatement() != null)
+			return false;
+		Statement thenStatement= getSingleStatement(node.getThenStatement());
+		if (!(thenStatement instanceof ExpressionStatement))
+			return false;
+		Expression action= getUnparenthesized(((ExpressionStatement) thenStatement).getExpression());
+		if (!(action instanceof MethodInvocation) || ((MethodInvocation) action).getExpression() == null
+				|| !isFieldReference(((MethodInvocation) action).getExpression()))
+			return false;
+		MethodInvocation actionCall= (MethodInvocation) action;
+		String operation= getAtomicOperation(node.getExpression(), actionCall);
+		if (operation == null)
+			return false;
+
+		AST ast= node.getAST();
+		MethodInvocation invocation= ast.newMethodInvocation();
+		invocation.setExpression(copyExpression(actionCall.getExpression()));
+		invocation.setName(ast.newSimpleName(operation));
+		List<?> arguments= actionCall.arguments();
+		for (int i= 0; i < arguments.size(); i++) {
+			invocation.arguments().add(copyExpression((Expression) arguments.get(i)));
+		}
+		if ("putIfAbsent".equals(operation)) { //$NON-NLS-1$
+			checkEagerValue((Expression) arguments.get(1));
+			fUsesTargetMethods|= !declaresMethod(fFieldBinding.getType(), operation);
+		} else if ("addIfAbsent".equals(operation)) { //$NON-NLS-1$
+			fUsesTargetMethods= true;
+		}
+		ExpressionStatement statement= ast.newExpressionStatement(invocation);
+		markAccess(node);
+		if (!removeSynchronization(node, statement))
+			fRewriter.replace(node, statement, createGroupDescription(ATOMIC_OPERATION));
+		return true;
+	}
+
+	private String getAtomicOperation(Expression condition, MethodInvocation action) {
+		Expression check= getUnparenthesized(condition);
+		boolean absent= false;
+		if (check instanceof PrefixExpression && ((PrefixExpression) check).getOperator() == PrefixExpression.Operator.NOT) {
+			absent= true;
+			check= getUnparenthesized(((PrefixExpression) check).getOperand());
+		} else if (check instanceof InfixExpression) {
+			// map.get(k) == null
+			InfixExpression infix= (InfixExpression) check;
+			if (infix.getOperator() != InfixExpression.Operator.EQUALS || infix.hasExtendedOperands())
+				return null;
+			if (infix.getRightOperand() instanceof NullLiteral)
+				check= getUnparenthesized(infix.getLeftOperand());
+			else if (infix.getLeftOperand() instanceof NullLiteral)
+				check= getUnparenthesized(infix.getRightOperand());
+			else
+				return null;
+			if (!(check instanceof MethodInvocation) || !"get".equals(((MethodInvocation) check).getName().getIdentifier())) //$NON-NLS-1$
+				return null;
+			absent= true;
+		}
+		if (!(check instanceof MethodInvocation) || ((MethodInvocation) check).getExpression() == null
+				|| !isFieldReference(((MethodInvocation) check).getExpression()))
+			return null;
+		MethodInvocation checkCall= (MethodInvocation) check;
+		String checkName= checkCall.getName().getIdentifier();
+		String actionName= action.getName().getIdentifier();
+		List<?> checkArguments= checkCall.arguments();
+		List<?> actionArguments= action.arguments();
+
+		if ("isEmpty".equals(checkName) && absent && actionArguments.isEmpty() //$NON-NLS-1$
+				&& ("poll".equals(actionName) || "remove".equals(actionName)) //$NON-NLS-1$ //$NON-NLS-2$
+				&& (fTarget == ConvertToConcurrentCollectionRefactoring.CONCURRENT_LINKED_QUEUE
+						|| fTarget == ConvertToConcurrentCollectionRefactoring.PRIORITY_BLOCKING_QUEUE))
+			return "poll"; //$NON-NLS-1$
+		if (checkArguments.size() != 1 || actionArguments.isEmpty() || !matches((Expression) checkArguments.get(0), (Expression) actionArguments.get(0)))
+			return null;
+
+		if (fTarget == ConvertToConcurrentCollectionRefactoring.CONCURRENT_SKIP_LIST_MAP) {
+			boolean keyCheck= "containsKey".equals(checkName) || "get".equals(checkName); //$NON-NLS-1$ //$NON-NLS-2$
+			if (keyCheck && absent && "put".equals(actionName) && actionArguments.size() == 2) //$NON-NLS-1$
+				return "putIfAbsent"; //$NON-NLS-1$
+			if ("containsKey".equals(checkName) && !absent && "remove".equals(actionName) && actionArguments.size() == 1) //$NON-NLS-1$ //$NON-NLS-2$
+				return "remove"; //$NON-NLS-1$
+			return null;
+		}
+		if (!"contains".equals(checkName) || actionArguments.size() != 1) //$NON-NLS-1$
+			return null;
+		if (!absent && "remove".equals(actionName) && !isInt((Expression) actionArguments.get(0))) //$NON-NLS-1$
+			return "remove"; //$NON-NLS-1$
+		if (absent && "add".equals(actionName)) { //$NON-NLS-1$
+			if (fTarget == ConvertToConcurrentCollectionRefactoring.CONCURRENT_KEY_SET)
+				return "add"; //$NON-NLS-1$
+			if (fTarget == ConvertToConcurrentCollectionRefactoring.COPY_ON_WRITE_ARRAY_LIST)
+				return "addIfAbsent"; //$NON-NLS-1$
+		}
+		return null;
+	}
+
+	/*
+	 * The value passed to putIfAbsent is computed even if the key is present.
+	 */
+	private void checkEagerValue(Expression value) {
+		SideEffectsFinder.Effects effects= fSideEffectsFinder.getEffects(value);
+		if (effects.hasWrites() || !effects.getUnknownCalls().isEmpty()) {
+			fStatus.addWarning(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentCollection_eager_value,
+					value.toString()), JavaStatusContext.create(fCUnit, value));
+		}
+	}
+
+	/*
+	 * Removes the synchronization around a statement that is the only statement of its
+	 * synchronized block or method and only accesses the field.
+	 */
+	private boolean removeSynchronization(Statement statement, Statement replacement) {
+		ASTNode region= getSynchronizedRegion(statement);
+		if (region == null)
+			return false;
+		Block body= region instanceof SynchronizedStatement ? ((SynchronizedStatement) region).getBody() : ((MethodDeclaration) region).getBody();
+		List<?> statements= body.statements();
+		if (statements.size() != 1 || statements.get(0) != statement || !accessesOnlyField(statement))
+			return false;
+		if (region instanceof SynchronizedStatement) {
+			Statement newStatement= replacement != null ? replacement : (Statement) fRewriter.createMoveTarget(statement);
+			fRewriter.replace(region, newStatement, createGroupDescription(REMOVE_SYNCHRONIZED_BLOCK));
+		} else {
+			MethodDeclaration method= (MethodDeclaration) region;
+			ModifierRewrite.create(fRewriter, method).setModifiers(method.getModifiers() & ~Modifier.SYNCHRONIZED,
+					createGroupDescription(REMOVE_SYNCHRONIZED_MODIFIER));
+			if (replacement != null)
+				fRewriter.replace(statement, replacement, createGroupDescription(ATOMIC_OPERATION));
+		}
+		fRegionAccesses.remove(region);
+		return true;
+	}
+
+	private boolean accessesOnlyField(Statement statement) {
+		SideEffectsFinder.Effects effects= fSideEffectsFinder.getEffects(statement);
+		if (!effects.getUnknownCalls().isEmpty() || !effects.getEscapingCalls().isEmpty() || effects.writesUnknownArrays()
+				|| !effects.getWrittenArrays().isEmpty())
+			return false;
+		List<IVariableBinding> fields= new ArrayList<IVariableBinding>(effects.getReadFields());
+		fields.addAll(effects.getWrittenFields());
+		fields.addAll(effects.getModifiedFields());
+		for (int i= 0; i < fields.size(); i++) {
+			if (!Bindings.equals(fields.get(i), fFieldBinding))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	 * Records an access in the innermost synchronized region around the node. Once the other
+	 * accesses no longer take the lock, a region with several accesses is no longer atomic.
+	 */
+	private void markAccess(ASTNode node) {
+		ASTNode region= getSynchronizedRegion(node);
+		if (region == null)
+			return;
+		Integer previous= fRegionAccesses.get(region);
+		int accesses= previous == null ? 1 : previous.intValue() + 1;
+		fRegionAccesses.put(region, new Integer(accesses));
+		if (accesses == 2) {
+			addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentCollection_compound_region,
+					new String[] { fFieldBinding.getName(), fRefactoring.getTargetDescription() }), node);
+		}
+	}
+
+	private ASTNode getSynchronizedRegion(ASTNode node) {
+		ASTNode syncStatement= ASTNodes.getParent(node, SynchronizedStatement.class);
+		if (syncStatement != null)
+			return syncStatement;
+		MethodDeclaration method= (MethodDeclaration)ASTNodes.getParent(node, MethodDeclaration.class);
+		if (method != null && Modifier.isSynchronized(method.getModifiers()) && method.getBody() != null)
+			return method;
+		return null;
+	}
+
+	/*
+	 * Returns whether the new collection offers the method: methods of Object, of the interfaces
+	 * the new collection implements and their super interfaces.
+	 */
+	private boolean isSupported(IMethodBinding binding) {
+		IMethodBinding declaration= binding.getMethodDeclaration();
+		ITypeBinding declaringClass= declaration.getDeclaringClass();
+		if (OBJECT.equals(declaringClass.getErasure().getQualifiedName()))
+			return true;
+		if (fTarget == ConvertToConcurrentCollectionRefactoring.PRIORITY_BLOCKING_QUEUE && "comparator".equals(binding.getName())) //$NON-NLS-1$
+			return true;
+		String[] interfaces= getSupportedInterfaces();
+		for (int i= 0; i < interfaces.length; i++) {
+			ITypeBinding type= Bindings.findTypeInHierarchy(declaringClass, interfaces[i]);
+			if (type != null && declaresMethod(type, declaration))
+				return true;
+		}
+		return false;
+	}
+
+	private String[] getSupportedInterfaces() {
+		switch (fTarget) {
+			case ConvertToConcurrentCollectionRefactoring.COPY_ON_WRITE_ARRAY_LIST:
+				return new String[] { "java.util.List" }; //$NON-NLS-1$
+			case ConvertToConcurrentCollectionRefactoring.CONCURRENT_SKIP_LIST_MAP:
+				return new String[] { "java.util.NavigableMap", "java.util.SortedMap" }; //$NON-NLS-1$ //$NON-NLS-2$
+			case ConvertToConcurrentCollectionRefactoring.CONCURRENT_KEY_SET:
+				return new String[] { "java.util.Set" }; //$NON-NLS-1$
+			default:
+				return new String[] { "java.util.Queue" }; //$NON-NLS-1$
+		}
+	}
+
+	private static boolean declaresMethod(ITypeBinding type, IMethodBinding method) {
+		IMethodBinding[] methods= type.getDeclaredMethods();
+		for (int i= 0; i < methods.length; i++) {
+			if (hasSameErasure(methods[i].getMethodDeclaration(), method))
+				return true;
+		}
+		ITypeBinding[] interfaces= type.getInterfaces();
+		for (int i= 0; i < interfaces.length; i++) {
+			if (declaresMethod(interfaces[i], method))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean declaresMethod(ITypeBinding type, String name) {
+		IMethodBinding[] methods= type.getDeclaredMethods();
+		for (int i= 0; i < methods.length; i++) {
+			if (name.equals(methods[i].getName()))
+				return true;
+		}
+		ITypeBinding superclass= type.getSuperclass();
+		if (superclass != null && declaresMethod(superclass, name))
+			return true;
+		ITypeBinding[] interfaces= type.getInterfaces();
+		for (int i= 0; i < interfaces.length; i++) {
+			if (declaresMethod(interfaces[i], name))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean hasSameErasure(IMethodBinding first, IMethodBinding second) {
+		if (!first.getName().equals(second.getName()))
+			return false;
+		ITypeBinding[] firstParameters= first.getParameterTypes();
+		ITypeBinding[] secondParameters= second.getParameterTypes();
+		if (firstParameters.length != secondParameters.length)
+			return false;
+		for (int i= 0; i < firstParameters.length; i++) {
+			if (!firstParameters[i].getErasure().isEqualTo(secondParameters[i].getErasure()))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isInLoop(ASTNode node) {
+		for (ASTNode parent= node.getParent(); parent != null && !(parent instanceof BodyDeclaration); parent= parent.getParent()) {
+			if (parent instanceof ForStatement || parent instanceof EnhancedForStatement || parent instanceof WhileStatement
+					|| parent instanceof DoStatement)
+				return true;
+		}
+		return false;
+	}
+
+	private int countReferences(ASTNode node) {
+		final int[] result= new int[1];
+		node.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SimpleName name) {
+				if (!name.isDeclaration() && considerBinding(name.resolveBinding()))
+					result[0]++;
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	private static Statement getSingleStatement(Statement statement) {
+		if (statement instanceof Block) {
+			List<?> statements= ((Block) statement).statements();
+			return statements.size() == 1 ? (Statement) statements.get(0) : null;
+		}
+		return statement;
+	}
+
+	private static boolean matches(Expression first, Expression second) {
+		return first.subtreeMatch(new JdtASTMatcher(), second);
+	}
+
+	private static boolean isInt(Expression expression) {
+		ITypeBinding type= expression.resolveTypeBinding();
+		return type != null && "int".equals(type.getName()); //$NON-NLS-1$
+	}
+
+	/*
+	 * Uses ASTNode.copySubtree rather than ASTRewrite.createCopyTarget since the copied node is
+	 * inside a node that gets replaced, see AccessAnalyzerForAtomicLong.
+	 */
+	private Expression copyExpression(Expression expression) {
+		return (Expression)ASTNode.copySubtree(expression.getAST(), expression);
+	}
+
+	private static Expression getUnparenthesized(Expression expression) {
+		while (expression instanceof ParenthesizedExpression)
+			expression= ((ParenthesizedExpression)expression).getExpression();
+		return expression;
+	}
+
+	private boolean isFieldReference(Expression expression) {
+		return considerBinding(resolveBinding(getUnparenthesized(expression)));
+	}
+
+	private void addError(String message, ASTNode node) {
+		fStatus.addError(message, JavaStatusContext.create(fCUnit, node));
+	}
+
+	private IBinding resolveBinding(Expression expression) {
+		if (expression instanceof SimpleName)
+			return ((SimpleName)expression).resolveBinding();
+		else if (expression instanceof QualifiedName)
+			return ((QualifiedName)expression).resolveBinding();
+		else if (expression instanceof FieldAccess)
+			return ((FieldAccess)expression).getName().resolveBinding();
+		else if (expression instanceof SuperFieldAccess)
+			return ((SuperFieldAccess)expression).getName().resolveBinding();
+		return null;
+	}
+
+	private TextEditGroup createGroupDescription(String name) {
+		TextEditGroup result= new TextEditGroup(name);
+		fGroupDescriptions.add(result);
+		return result;
+	}
+
+	private boolean considerBinding(IBinding binding) {
+		if (!(binding instanceof IVariableBinding))
+			return false;
+		return Bindings.equals(fFieldBinding, ((IVariableBinding)binding).getVariableDeclaration());
+	}
+}
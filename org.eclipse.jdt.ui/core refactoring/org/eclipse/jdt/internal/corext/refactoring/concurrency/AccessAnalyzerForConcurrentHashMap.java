@@ -66,6 +66,7 @@ import org.eclipse.jdt.internal.corext.dom.Bindings;
 import org.eclipse.jdt.internal.corext.dom.JdtASTMatcher;
 import org.eclipse.jdt.internal.corext.dom.ModifierRewrite;
 import org.eclipse.jdt.internal.corext.refactoring.RefactoringCoreMessages;
+import org.eclipse.jdt.internal.corext.refactoring.base.JavaStatusContext;
 import org.eclipse.jdt.internal.corext.refactoring.code.ExtractMethodRefactoring;
 import org.eclipse.jdt.internal.corext.util.Messages;
 import org.eclipse.jface.text.Document;
@@ -99,8 +100,10 @@ public class AccessAnalyzerForConcurrentHashMap extends ASTVisitor {
 
 	private boolean fSetterMustReturnValue;
 	private final CompilationUnit cuRoot;
+	private SideEffectsFinder fSideEffectsFinder;
 	private final ConvertToConcurrentHashMapRefactoring refactoring;
 	private String fMethodName;
+	private ConcurrentHashMapComputeRewriter fComputeRewriter;
 
 	public AccessAnalyzerForConcurrentHashMap(
 			ConvertToConcurrentHashMapRefactoring refactoring,
@@ -122,6 +125,13 @@ public class AccessAnalyzerForConcurrentHashMap extends ASTVisitor {
 			// assume non final field
 		}
 		fStatus= new RefactoringStatus();
+		if (refactoring.isApplyingComputeOperations()) {
+			try {
+				fComputeRewriter= new ConcurrentHashMapComputeRewriter(unit, root, fFieldBinding, rewriter, fGroupDescriptions, fStatus);
+			} catch (JavaModelException e) {
+				// fall back to putIfAbsent()
+			}
+		}
 	}
 
 	public RefactoringStatus getStatus() {
@@ -188,6 +198,11 @@ public class AccessAnalyzerForConcurrentHashMap extends ASTVisitor {
 	@Override
 	public boolean visit(IfStatement ifStatement) {
 			
+			if (fComputeRewriter != null && fComputeRewriter.rewrite(ifStatement)) {
+				endComputeRewrite();
+				return false;
+			}
+			
 			Expression ifExpression = ifStatement.getExpression();
 			
 			// Remove the parentheses.
@@ -206,6 +221,27 @@ public class AccessAnalyzerForConcurrentHashMap extends ASTVisitor {
 			return false;
 	}
 
+	@Override
+	public boolean visit(ExpressionStatement statement) {
+		if (fComputeRewriter != null && fComputeRewriter.rewrite(statement)) {
+			endComputeRewrite();
+			return false;
+		}
+		return true;
+	}
+	
+	private void endComputeRewrite() {
+		// the atomic operation may leave a synchronized region with a single statement
+		Statement replaced= fComputeRewriter.getReplacedStatement();
+		Statement replacement= fComputeRewriter.getReplacement();
+		if (ASTNodes.getParent(replaced, SynchronizedStatement.class) != null)
+			checkSynchronizedBlock(replaced, replacement, METHOD_INVOCATION);
+		MethodDeclaration method= (MethodDeclaration) ASTNodes.getParent(replaced, MethodDeclaration.class);
+		if (method != null && Modifier.isSynchronized(method.getModifiers()))
+			checkSynchronizedMethod(replaced, replacement, METHOD_INVOCATION);
+		usingCHMOnlyMethods = true;
+	}
+
 	private void handleOperatorConditional(IfStatement ifStatement, Expression ifExpression) {
 		
 		Operator operator = ((InfixExpression)ifExpression).getOperator();
@@ -751,9 +787,19 @@ public class AccessAnalyzerForConcurrentHashMap extends ASTVisitor {
 	
 	private void checkSideEffects(ICompilationUnit unit,
 			Block enclosingBlock, int indexBeginningStatement, int indexEndStatement) {
-		SideEffectsFinder sideEffectsFinder = new SideEffectsFinder (unit, enclosingBlock, indexBeginningStatement, indexEndStatement, fFieldBinding, fStatus);
-		sideEffectsFinder.findEffects();
-		
+		if (fSideEffectsFinder == null)
+			fSideEffectsFinder = new SideEffectsFinder(cuRoot);
+		SideEffectsFinder.Effects effects = fSideEffectsFinder.getEffects(enclosingBlock, indexBeginningStatement, indexEndStatement);
+		// putIfAbsent() evaluates the value eagerly, so these effects also happen when the key is present
+		List<String> writtenNames = SideEffectsFinder.getWrittenNames(effects, fFieldBinding);
+		for (String name : writtenNames) {
+			fStatus.addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentHashMap_create_value_writes,
+					new String[] { name, fFieldBinding.getName() }), JavaStatusContext.create(unit, enclosingBlock));
+		}
+		for (String name : effects.getEscapingCalls()) {
+			fStatus.addWarning(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentHashMap_create_value_escapes, name),
+					JavaStatusContext.create(unit, enclosingBlock));
+		}
 	}
 
 	private void insertCreateValueMethod(String codeForCreateValueMethod, MethodDeclaration methodContainingPutIfAbsent) {
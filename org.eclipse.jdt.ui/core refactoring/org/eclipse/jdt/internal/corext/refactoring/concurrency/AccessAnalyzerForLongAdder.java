@@ -0,0 +1,555 @@
+package org.eclipse.jdt.internal.corext.refactoring.concurrency;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.text.edits.TextEditGroup;
+
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.NumberLiteral;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SuperFieldAccess;
+import org.eclipse.jdt.core.dom.SynchronizedStatement;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ImportRewrite;
+
+import org.eclipse.jdt.internal.corext.dom.ASTNodes;
+import org.eclipse.jdt.internal.corext.dom.Bindings;
+import org.eclipse.jdt.internal.corext.dom.ModifierRewrite;
+import org.eclipse.jdt.internal.corext.refactoring.base.JavaStatusContext;
+import org.eclipse.jdt.internal.corext.util.Messages;
+
+/**
+ * Rewrites the accesses to a <code>long</code> or <code>AtomicLong</code> field into accesses to a
+ * <code>LongAdder</code> or <code>LongAccumulator</code>.
+ * <p>
+ * Adders only support blind updates: every write whose value is used, every read of the field in a
+ * synchronized region that also writes it, and every <code>AtomicLong</code> operation that needs a
+ * consistent value (<code>compareAndSet</code>, <code>getAndSet</code>, ...) is reported as an error.
+ * </p>
+ */
+public class AccessAnalyzerForLongAdder extends ASTVisitor {
+
+	private static final String READ_ACCESS= ConcurrencyRefactorings.ConcurrencyRefactorings_read_access;
+	private static final String WRITE_ACCESS= ConcurrencyRefactorings.ConcurrencyRefactorings_write_access;
+	private static final String POSTFIX_ACCESS= ConcurrencyRefactorings.ConcurrencyRefactorings_postfix_access;
+	private static final String PREFIX_ACCESS= ConcurrencyRefactorings.ConcurrencyRefactorings_prefix_access;
+	private static final String REMOVE_SYNCHRONIZED_MODIFIER= ConcurrencyRefactorings.ConcurrencyRefactorings_remove_synch_mod;
+	private static final String REMOVE_SYNCHRONIZED_BLOCK= ConcurrencyRefactorings.ConcurrencyRefactorings_remove_synch_block;
+
+	private static final String LONG_ADDER= "java.util.concurrent.atomic.LongAdder"; //$NON-NLS-1$
+	private static final String LONG_ACCUMULATOR= "java.util.concurrent.atomic.LongAccumulator"; //$NON-NLS-1$
+
+	private static final int READ= 1;
+	private static final int WRITE= 2;
+
+	private final ConvertToLongAdderRefactoring fRefactoring;
+	private final ICompilationUnit fCUnit;
+	private final IVariableBinding fFieldBinding;
+	private final ASTRewrite fRewriter;
+	private final ImportRewrite fImportRewriter;
+	private final List<TextEditGroup> fGroupDescriptions;
+	private final RefactoringStatus fStatus;
+	private final boolean fAtomicLongField;
+	private final boolean fUseAccumulator;
+	private final Map<ASTNode, Integer> fSynchronizedRegions;
+	private int fOperations;
+	private boolean fReferenceRewritten;
+
+	public AccessAnalyzerForLongAdder(ConvertToLongAdderRefactoring refactoring, ICompilationUnit unit,
+			IVariableBinding field, ASTRewrite rewriter, ImportRewrite importRewrite) {
+		fRefactoring= refactoring;
+		fCUnit= unit;
+		fFieldBinding= field.getVariableDeclaration();
+		fRewriter= rewriter;
+		fImportRewriter= importRewrite;
+		fGroupDescriptions= new ArrayList<TextEditGroup>();
+		fStatus= new RefactoringStatus();
+		fAtomicLongField= refactoring.isAtomicLongField();
+		fUseAccumulator= refactoring.isUseAccumulator();
+		fSynchronizedRegions= new HashMap<ASTNode, Integer>();
+	}
+
+	public RefactoringStatus getStatus() {
+		return fStatus;
+	}
+
+	public Collection<TextEditGroup> getGroupDescriptions() {
+		return fGroupDescriptions;
+	}
+
+	/**
+	 * Returns the accumulation functions used by the writes of this compilation unit.
+	 *
+	 * @return a combination of {@link ConvertToLongAdderRefactoring#OPERATION_SUM},
+	 *         {@link ConvertToLongAdderRefactoring#OPERATION_MAX} and
+	 *         {@link ConvertToLongAdderRefactoring#OPERATION_MIN}
+	 */
+	public int getOperations() {
+		return fOperations;
+	}
+
+	@Override
+	public boolean visit(SimpleName node) {
+		if (node.isDeclaration() || !considerBinding(node.resolveBinding()))
+			return true;
+		if (node.getLocationInParent() == QualifiedName.NAME_PROPERTY
+				|| node.getLocationInParent() == FieldAccess.NAME_PROPERTY
+				|| node.getLocationInParent() == SuperFieldAccess.NAME_PROPERTY)
+			return true;
+		handleReference(node);
+		return false;
+	}
+
+	@Override
+	public boolean visit(QualifiedName node) {
+		if (!considerBinding(node.resolveBinding()))
+			return true;
+		handleReference(node);
+		return false;
+	}
+
+	@Override
+	public boolean visit(FieldAccess node) {
+		if (!considerBinding(node.getName().resolveBinding()))
+			return true;
+		handleReference(node);
+		return false;
+	}
+
+	@Override
+	public boolean visit(SuperFieldAccess node) {
+		if (!considerBinding(node.getName().resolveBinding()))
+			return true;
+		handleReference(node);
+		return false;
+	}
+
+	@Override
+	public boolean visit(Assignment node) {
+		Expression lhs= node.getLeftHandSide();
+		if (!considerBinding(resolveBinding(lhs)))
+			return true;
+
+		if (fAtomicLongField) {
+			addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForLongAdder_reassigned,
+					fFieldBinding.getName()), node);
+			return false;
+		}
+		if (!isValueIgnored(node)) {
+			addValueUsedError(node);
+			return false;
+		}
+		AST ast= node.getAST();
+		Expression rhs= node.getRightHandSide();
+		String name= null;
+		Expression argument= null;
+		int operation= ConvertToLongAdderRefactoring.OPERATION_SUM;
+
+		if (node.getOperator() == Assignment.Operator.PLUS_ASSIGN) {
+			// field+= 10; => field.add(10);
+			name= getAddMethodName();
+			argument= copyExpression(rhs);
+		} else if (node.getOperator() == Assignment.Operator.MINUS_ASSIGN) {
+			// field-= 10; => field.add(-(10));
+			name= getAddMethodName();
+			argument= createNegativeExpression(rhs);
+		} else if (node.getOperator() == Assignment.Operator.ASSIGN) {
+			Expression value= getUnparenthesized(rhs);
+			if (value instanceof InfixExpression && !((InfixExpression)value).hasExtendedOperands()) {
+				InfixExpression infix= (InfixExpression)value;
+				boolean leftIsField= isFieldReference(infix.getLeftOperand());
+				boolean rightIsField= isFieldReference(infix.getRightOperand());
+				if (infix.getOperator() == InfixExpression.Operator.PLUS && leftIsField != rightIsField) {
+					// field= field + 10; => field.add(10);
+					name= getAddMethodName();
+					argument= copyExpression(leftIsField ? infix.getRightOperand() : infix.getLeftOperand());
+				} else if (infix.getOperator() == InfixExpression.Operator.MINUS && leftIsField && !rightIsField) {
+					// field= field - 10; => field.add(-(10));
+					name= getAddMethodName();
+					argument= createNegativeExpression(infix.getRightOperand());
+				}
+			} else if (value instanceof MethodInvocation) {
+				// field= Math.max(field, value); => field.accumulate(value);
+				MethodInvocation invocation= (MethodInvocation)value;
+				operation= getMathOperation(invocation);
+				if (operation != 0) {
+					Expression other= getOtherArgument(invocation);
+					if (other != null) {
+						if (!fUseAccumulator) {
+							addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForLongAdder_requires_accumulator,
+									node.toString()), node);
+							return false;
+						}
+						name= "accumulate"; //$NON-NLS-1$
+						argument= copyExpression(other);
+					}
+				}
+			} else if (fRefactoring.isInitialValue(value) && !referencesField(value)) {
+				// field= 0; => field.reset();
+				name= "reset"; //$NON-NLS-1$
+				operation= 0;
+			}
+		}
+		if (name == null || (argument != null && referencesField(argument))) {
+			addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForLongAdder_unsupported_write,
+					new String[] { node.toString(), getTypeName() }), node);
+			return false;
+		}
+		fOperations|= operation;
+
+		MethodInvocation invocation= ast.newMethodInvocation();
+		invocation.setExpression(copyExpression(lhs));
+		invocation.setName(ast.newSimpleName(name));
+		if (argument != null)
+			invocation.arguments().add(argument);
+		replaceWrite(node, invocation, WRITE_ACCESS);
+		return false;
+	}
+
+	@Override
+	public boolean visit(PostfixExpression expression) {
+		Expression operand= expression.getOperand();
+		if (!considerBinding(resolveBinding(operand)))
+			return true;
+		if (fAtomicLongField) {
+			addEscapeError(operand);
+			return false;
+		}
+		if (!isValueIgnored(expression)) {
+			addValueUsedError(expression);
+			return false;
+		}
+		boolean increment= expression.getOperator() == PostfixExpression.Operator.INCREMENT;
+		replaceWrite(expression, createStep(operand, increment), POSTFIX_ACCESS);
+		return false;
+	}
+
+	@Override
+	public boolean visit(PrefixExpression expression) {
+		Expression operand= expression.getOperand();
+		PrefixExpression.Operator operator= expression.getOperator();
+		if (operator != PrefixExpression.Operator.INCREMENT && operator != PrefixExpression.Operator.DECREMENT)
+			return true;
+		if (!considerBinding(resolveBinding(operand)))
+			return true;
+		if (fAtomicLongField) {
+			addEscapeError(operand);
+			return false;
+		}
+		if (!isValueIgnored(expression)) {
+			addValueUsedError(expression);
+			return false;
+		}
+		replaceWrite(expression, createStep(operand, operator == PrefixExpression.Operator.INCREMENT), PREFIX_ACCESS);
+		return false;
+	}
+
+	@Override
+	public boolean visit(MethodInvocation node) {
+		Expression receiver= node.getExpression();
+		if (!fAtomicLongField || receiver == null || !isFieldReference(receiver))
+			return true;
+
+		String name= node.getName().getIdentifier();
+		List<?> arguments= node.arguments();
+		String newName= null;
+		boolean write= true;
+		boolean removeArguments= false;
+		boolean addStep= false;
+		boolean increment= false;
+
+		if ("incrementAndGet".equals(name) || "getAndIncrement".equals(name)) { //$NON-NLS-1$ //$NON-NLS-2$
+			newName= fUseAccumulator ? "accumulate" : "increment"; //$NON-NLS-1$ //$NON-NLS-2$
+			addStep= fUseAccumulator;
+			increment= true;
+		} else if ("decrementAndGet".equals(name) || "getAndDecrement".equals(name)) { //$NON-NLS-1$ //$NON-NLS-2$
+			newName= fUseAccumulator ? "accumulate" : "decrement"; //$NON-NLS-1$ //$NON-NLS-2$
+			addStep= fUseAccumulator;
+		} else if ("addAndGet".equals(name) || "getAndAdd".equals(name)) { //$NON-NLS-1$ //$NON-NLS-2$
+			newName= getAddMethodName();
+		} else if (("set".equals(name) || "lazySet".equals(name)) && arguments.size() == 1 //$NON-NLS-1$ //$NON-NLS-2$
+				&& fRefactoring.isInitialValue((Expression)arguments.get(0))) {
+			newName= "reset"; //$NON-NLS-1$
+			removeArguments= true;
+		} else if ("get".equals(name) || "longValue".equals(name)) { //$NON-NLS-1$ //$NON-NLS-2$
+			newName= getReadMethodName();
+			write= false;
+		} else if ("intValue".equals(name) || "floatValue".equals(name) || "doubleValue".equals(name) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				|| "toString".equals(name)) { //$NON-NLS-1$
+			newName= name;
+			write= false;
+		}
+		if (newName == null) {
+			addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForLongAdder_unsupported_method,
+					new String[] { getTypeName(), name }), node);
+			return false;
+		}
+		if (write && !"reset".equals(newName) && !isValueIgnored(node)) { //$NON-NLS-1$
+			addValueUsedError(node);
+			return false;
+		}
+
+		TextEditGroup group= createGroupDescription(write ? WRITE_ACCESS : READ_ACCESS);
+		if (!newName.equals(name))
+			fRewriter.set(node, MethodInvocation.NAME_PROPERTY, node.getAST().newSimpleName(newName), group);
+		if (removeArguments) {
+			fRewriter.remove((ASTNode)arguments.get(0), group);
+		} else if (addStep) {
+			fRewriter.getListRewrite(node, MethodInvocation.ARGUMENTS_PROPERTY).insertLast(createStepValue(node.getAST(), increment), group);
+		}
+		fReferenceRewritten= true;
+		if (write) {
+			if (!"reset".equals(newName)) //$NON-NLS-1$
+				fOperations|= ConvertToLongAdderRefactoring.OPERATION_SUM;
+			markRegion(node, WRITE);
+		} else {
+			markRegion(node, READ);
+		}
+		for (int i= 0; i < arguments.size(); i++) {
+			((Expression)arguments.get(i)).accept(this);
+		}
+		return false;
+	}
+
+	@Override
+	public void endVisit(CompilationUnit node) {
+		if (fReferenceRewritten)
+			fImportRewriter.addImport(fUseAccumulator ? LONG_ACCUMULATOR : LONG_ADDER);
+	}
+
+	private void handleReference(Expression reference) {
+		if (fAtomicLongField) {
+			addEscapeError(reference);
+			return;
+		}
+		// field => field.sum()
+		AST ast= reference.getAST();
+		MethodInvocation invocation= ast.newMethodInvocation();
+		invocation.setExpression(copyExpression(reference));
+		invocation.setName(ast.newSimpleName(getReadMethodName()));
+		fRewriter.replace(reference, invocation, createGroupDescription(READ_ACCESS));
+		fReferenceRewritten= true;
+		markRegion(reference, READ);
+	}
+
+	private void replaceWrite(Expression node, MethodInvocation invocation, String accessType) {
+		fReferenceRewritten= true;
+		markRegion(node, WRITE);
+		ExpressionStatement statement= (ExpressionStatement)node.getParent();
+		SynchronizedStatement syncStatement= (SynchronizedStatement)ASTNodes.getParent(node, SynchronizedStatement.class);
+		if (syncStatement != null) {
+			List<?> statements= syncStatement.getBody().statements();
+			if (statements.size() == 1 && statements.get(0) == statement) {
+				ExpressionStatement newStatement= node.getAST().newExpressionStatement(invocation);
+				fRewriter.replace(syncStatement, newStatement, createGroupDescription(REMOVE_SYNCHRONIZED_BLOCK));
+				return;
+			}
+		} else {
+			MethodDeclaration method= (MethodDeclaration)ASTNodes.getParent(node, MethodDeclaration.class);
+			if (method != null && Modifier.isSynchronized(method.getModifiers()) && method.getBody() != null) {
+				List<?> statements= method.getBody().statements();
+				if (statements.size() == 1 && statements.get(0) == statement) {
+					ModifierRewrite.create(fRewriter, method).setModifiers(method.getModifiers() & ~Modifier.SYNCHRONIZED,
+							createGroupDescription(REMOVE_SYNCHRONIZED_MODIFIER));
+				}
+			}
+		}
+		fRewriter.replace(node, invocation, createGroupDescription(accessType));
+	}
+
+	/*
+	 * Records the kind of access in the innermost synchronized region around the node. A region
+	 * which both reads and writes the field relies on reading a consistent value, which adders
+	 * cannot provide.
+	 */
+	private void markRegion(ASTNode node, int access) {
+		ASTNode region= getSynchronizedRegion(node);
+		if (region == null)
+			return;
+		Integer previous= fSynchronizedRegions.get(region);
+		int accesses= previous == null ? access : previous.intValue() | access;
+		fSynchronizedRegions.put(region, new Integer(accesses));
+		if (accesses == (READ | WRITE) && (previous == null || previous.intValue() != accesses)) {
+			addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForLongAdder_read_write_region,
+					new String[] { fFieldBinding.getName(), getTypeName() }), node);
+		}
+	}
+
+	private ASTNode getSynchronizedRegion(ASTNode node) {
+		ASTNode syncStatement= ASTNodes.getParent(node, SynchronizedStatement.class);
+		if (syncStatement != null)
+			return syncStatement;
+		MethodDeclaration method= (MethodDeclaration)ASTNodes.getParent(node, MethodDeclaration.class);
+		if (method != null && Modifier.isSynchronized(method.getModifiers()))
+			return method;
+		return null;
+	}
+
+	private MethodInvocation createStep(Expression operand, boolean increment) {
+		// field++; => field.increment(); or field.accumulate(1);
+		AST ast= operand.getAST();
+		MethodInvocation invocation= ast.newMethodInvocation();
+		invocation.setExpression(copyExpression(operand));
+		if (fUseAccumulator) {
+			invocation.setName(ast.newSimpleName("accumulate")); //$NON-NLS-1$
+			invocation.arguments().add(createStepValue(ast, increment));
+		} else {
+			invocation.setName(ast.newSimpleName(increment ? "increment" : "decrement")); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		fOperations|= ConvertToLongAdderRefactoring.OPERATION_SUM;
+		return invocation;
+	}
+
+	private Expression createStepValue(AST ast, boolean increment) {
+		NumberLiteral one= ast.newNumberLiteral("1"); //$NON-NLS-1$
+		if (increment)
+			return one;
+		PrefixExpression minusOne= ast.newPrefixExpression();
+		minusOne.setOperator(PrefixExpression.Operator.MINUS);
+		minusOne.setOperand(one);
+		return minusOne;
+	}
+
+	private Expression createNegativeExpression(Expression expression) {
+		AST ast= expression.getAST();
+		ParenthesizedExpression parenthesized= ast.newParenthesizedExpression();
+		parenthesized.setExpression(copyExpression(expression));
+		PrefixExpression negative= ast.newPrefixExpression();
+		negative.setOperator(PrefixExpression.Operator.MINUS);
+		negative.setOperand(parenthesized);
+		return negative;
+	}
+
+	/*
+	 * Uses ASTNode.copySubtree rather than ASTRewrite.createCopyTarget since the copied node is
+	 * inside a node that gets replaced, see AccessAnalyzerForAtomicLong.
+	 */
+	private Expression copyExpression(Expression expression) {
+		return (Expression)ASTNode.copySubtree(expression.getAST(), expression);
+	}
+
+	private static Expression getUnparenthesized(Expression expression) {
+		while (expression instanceof ParenthesizedExpression)
+			expression= ((ParenthesizedExpression)expression).getExpression();
+		return expression;
+	}
+
+	private int getMathOperation(MethodInvocation invocation) {
+		IMethodBinding binding= invocation.resolveMethodBinding();
+		if (binding == null || invocation.arguments().size() != 2
+				|| !"java.lang.Math".equals(binding.getDeclaringClass().getQualifiedName())) //$NON-NLS-1$
+			return 0;
+		String name= binding.getName();
+		if ("max".equals(name)) //$NON-NLS-1$
+			return ConvertToLongAdderRefactoring.OPERATION_MAX;
+		if ("min".equals(name)) //$NON-NLS-1$
+			return ConvertToLongAdderRefactoring.OPERATION_MIN;
+		return 0;
+	}
+
+	private Expression getOtherArgument(MethodInvocation invocation) {
+		Expression first= (Expression)invocation.arguments().get(0);
+		Expression second= (Expression)invocation.arguments().get(1);
+		boolean firstIsField= isFieldReference(first);
+		boolean secondIsField= isFieldReference(second);
+		if (firstIsField == secondIsField)
+			return null;
+		return firstIsField ? second : first;
+	}
+
+	private String getAddMethodName() {
+		return fUseAccumulator ? "accumulate" : "add"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private String getReadMethodName() {
+		return fUseAccumulator ? "get" : "sum"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private String getTypeName() {
+		return fUseAccumulator ? "LongAccumulator" : "LongAdder"; //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	private boolean isValueIgnored(Expression expression) {
+		return expression.getParent() instanceof ExpressionStatement;
+	}
+
+	private boolean isFieldReference(Expression expression) {
+		return considerBinding(resolveBinding(getUnparenthesized(expression)));
+	}
+
+	private boolean referencesField(Expression expression) {
+		final boolean[] result= new boolean[1];
+		expression.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SimpleName node) {
+				if (considerBinding(node.resolveBinding()))
+					result[0]= true;
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	private void addValueUsedError(ASTNode node) {
+		addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForLongAdder_value_used,
+				new String[] { node.toString(), getTypeName() }), node);
+	}
+
+	private void addEscapeError(Expression reference) {
+		addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForLongAdder_field_escapes,
+				new String[] { fFieldBinding.getName(), reference.getParent().toString() }), reference);
+	}
+
+	private void addError(String message, ASTNode node) {
+		fStatus.addError(message, JavaStatusContext.create(fCUnit, node));
+	}
+
+	private IBinding resolveBinding(Expression expression) {
+		if (expression instanceof SimpleName)
+			return ((SimpleName)expression).resolveBinding();
+		else if (expression instanceof QualifiedName)
+			return ((QualifiedName)expression).resolveBinding();
+		else if (expression instanceof FieldAccess)
+			return ((FieldAccess)expression).getName().resolveBinding();
+		else if (expression instanceof SuperFieldAccess)
+			return ((SuperFieldAccess)expression).getName().resolveBinding();
+		return null;
+	}
+
+	private TextEditGroup createGroupDescription(String name) {
+		TextEditGroup result= new TextEditGroup(name);
+		fGroupDescriptions.add(result);
+		return result;
+	}
+
+	private boolean considerBinding(IBinding binding) {
+		if (!(binding instanceof IVariableBinding))
+			return false;
+		return Bindings.equals(fFieldBinding, ((IVariableBinding)binding).getVariableDeclaration());
+	}
+}
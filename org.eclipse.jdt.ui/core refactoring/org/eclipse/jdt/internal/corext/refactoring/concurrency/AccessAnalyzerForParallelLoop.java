@@ -0,0 +1,447 @@
+package org.eclipse.jdt.internal.corext.refactoring.concurrency;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.ArrayAccess;
+import org.eclipse.jdt.core.dom.ArrayCreation;
+import org.eclipse.jdt.core.dom.ArrayInitializer;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.BreakStatement;
+import org.eclipse.jdt.core.dom.CatchClause;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ContinueStatement;
+import org.eclipse.jdt.core.dom.DoStatement;
+import org.eclipse.jdt.core.dom.EnhancedForStatement;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.LabeledStatement;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.ReturnStatement;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SuperFieldAccess;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.SwitchStatement;
+import org.eclipse.jdt.core.dom.ThrowStatement;
+import org.eclipse.jdt.core.dom.TryStatement;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.WhileStatement;
+
+import org.eclipse.jdt.internal.corext.dom.Bindings;
+import org.eclipse.jdt.internal.corext.refactoring.base.JavaStatusContext;
+import org.eclipse.jdt.internal.corext.util.Messages;
+
+/**
+ * Checks that the iterations of a loop do not depend on each other, so that its body can run in
+ * parallel.
+ * <p>
+ * Writes to locals are found by the flow analysis in {@link ConvertLoopToParallelStreamRefactoring}.
+ * This visitor reports the other writes that block the conversion: writes to fields, to array
+ * elements other than the one of the current index and to shared collections, calls to methods of
+ * the compilation unit that have such writes, and statements that leave the loop. Calls whose side
+ * effects cannot be determined are reported as warnings.
+ * </p>
+ */
+public class AccessAnalyzerForParallelLoop extends ASTVisitor {
+
+	private static final String RUNTIME_EXCEPTION= "java.lang.RuntimeException"; //$NON-NLS-1$
+	private static final String ERROR= "java.lang.Error"; //$NON-NLS-1$
+
+	private final ICompilationUnit fCUnit;
+	private final CompilationUnit fRoot;
+	private final String fSource;
+	private final ASTNode fLoop;
+	private final ASTNode fBody;
+	private final String fLabel;
+	private final IVariableBinding fIndexBinding;
+	private final IVariableBinding fElementBinding;
+	private final RefactoringStatus fStatus;
+	private final List<ContinueStatement> fContinueStatements;
+	private final Set<IBinding> fWrittenArrays;
+	private final List<ArrayAccess> fArrayReads;
+	private final SideEffectsFinder fSideEffectsFinder;
+
+	/**
+	 * Creates a new analyzer.
+	 *
+	 * @param unit the compilation unit containing the loop
+	 * @param root the AST of the compilation unit
+	 * @param source the source of the compilation unit
+	 * @param loop the <code>ForStatement</code> or <code>EnhancedForStatement</code> to analyze
+	 * @param label the label of the loop, or <code>null</code>
+	 * @param indexBinding the index of an indexed loop, or <code>null</code>
+	 * @param elementBinding the element of an enhanced for loop, or <code>null</code>
+	 */
+	public AccessAnalyzerForParallelLoop(ICompilationUnit unit, CompilationUnit root, String source, ASTNode loop, String label,
+			IVariableBinding indexBinding, IVariableBinding elementBinding) {
+		fCUnit= unit;
+		fRoot= root;
+		fSource= source;
+		fLoop= loop;
+		fBody= loop instanceof ForStatement ? ((ForStatement)loop).getBody() : ((EnhancedForStatement)loop).getBody();
+		fLabel= label;
+		fIndexBinding= indexBinding;
+		fElementBinding= elementBinding;
+		fStatus= new RefactoringStatus();
+		fContinueStatements= new ArrayList<ContinueStatement>();
+		fWrittenArrays= new HashSet<IBinding>();
+		fArrayReads= new ArrayList<ArrayAccess>();
+		fSideEffectsFinder= new SideEffectsFinder(root);
+	}
+
+	/**
+	 * Analyzes the body of the loop.
+	 *
+	 * @return the writes and statements that block the conversion
+	 */
+	public RefactoringStatus analyze() {
+		fBody.accept(this);
+		for (int i= 0; i < fArrayReads.size(); i++) {
+			ArrayAccess access= fArrayReads.get(i);
+			IBinding array= getVariable(access.getArray());
+			if (array != null && fWrittenArrays.contains(array) && !isIndex(access.getIndex())) {
+				fStatus.addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_array_dependence,
+						getSource(access)), JavaStatusContext.create(fCUnit, access));
+			}
+		}
+		return fStatus;
+	}
+
+	/**
+	 * Returns the <code>continue</code> statements that skip to the next iteration of the analyzed
+	 * loop. They have to be replaced by <code>return</code> statements in a lambda.
+	 *
+	 * @return the continue statements of the analyzed loop
+	 */
+	public List<ContinueStatement> getContinueStatements() {
+		return fContinueStatements;
+	}
+
+	@Override
+	public boolean visit(AnonymousClassDeclaration node) {
+		// the code of an anonymous class is not necessarily executed by the loop
+		return false;
+	}
+
+	@Override
+	public boolean visit(TypeDeclarationStatement node) {
+		return false;
+	}
+
+	@Override
+	public boolean visit(Assignment node) {
+		checkWrite(node.getLeftHandSide(), node);
+		return true;
+	}
+
+	@Override
+	public boolean visit(PrefixExpression node) {
+		PrefixExpression.Operator operator= node.getOperator();
+		if (operator == PrefixExpression.Operator.INCREMENT || operator == PrefixExpression.Operator.DECREMENT)
+			checkWrite(node.getOperand(), node);
+		return true;
+	}
+
+	@Override
+	public boolean visit(PostfixExpression node) {
+		checkWrite(node.getOperand(), node);
+		return true;
+	}
+
+	@Override
+	public boolean visit(ArrayAccess node) {
+		fArrayReads.add(node);
+		return true;
+	}
+
+	@Override
+	public boolean visit(MethodInvocation node) {
+		IMethodBinding binding= node.resolveMethodBinding();
+		if (binding == null)
+			return true;
+		checkThrownExceptions(binding, node);
+		checkInvocation(binding, node.getExpression(), node);
+		return true;
+	}
+
+	@Override
+	public boolean visit(SuperMethodInvocation node) {
+		IMethodBinding binding= node.resolveMethodBinding();
+		if (binding == null)
+			return true;
+		checkThrownExceptions(binding, node);
+		checkInvocation(binding, null, node);
+		return true;
+	}
+
+	@Override
+	public boolean visit(ClassInstanceCreation node) {
+		IMethodBinding binding= node.resolveConstructorBinding();
+		if (binding != null)
+			checkThrownExceptions(binding, node);
+		return true;
+	}
+
+	@Override
+	public boolean visit(ThrowStatement node) {
+		ITypeBinding exception= node.getExpression().resolveTypeBinding();
+		if (exception != null && isChecked(exception) && !isCaught(exception, node)) {
+			fStatus.addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_checked_exception,
+					exception.getName()), JavaStatusContext.create(fCUnit, node));
+		}
+		return true;
+	}
+
+	@Override
+	public boolean visit(ReturnStatement node) {
+		fStatus.addError(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_return, JavaStatusContext.create(fCUnit, node));
+		return true;
+	}
+
+	@Override
+	public boolean visit(BreakStatement node) {
+		SimpleName label= node.getLabel();
+		if (label == null ? !hasInnerTarget(node, true) : !hasInnerLabel(node, label.getIdentifier()))
+			fStatus.addError(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_break, JavaStatusContext.create(fCUnit, node));
+		return true;
+	}
+
+	@Override
+	public boolean visit(ContinueStatement node) {
+		SimpleName label= node.getLabel();
+		if (label == null) {
+			if (!hasInnerTarget(node, false))
+				fContinueStatements.add(node);
+		} else if (label.getIdentifier().equals(fLabel)) {
+			fContinueStatements.add(node);
+		} else if (!hasInnerLabel(node, label.getIdentifier())) {
+			fStatus.addError(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_continue, JavaStatusContext.create(fCUnit, node));
+		}
+		return true;
+	}
+
+	private void checkWrite(Expression target, ASTNode node) {
+		target= getUnparenthesized(target);
+		if (target instanceof ArrayAccess) {
+			ArrayAccess access= (ArrayAccess) target;
+			Expression array= getUnparenthesized(access.getArray());
+			if (isFreshObject(array, fBody))
+				return;
+			IBinding variable= getVariable(array);
+			if (variable != null && isIndex(access.getIndex())) {
+				// distinct iterations write distinct elements
+				fWrittenArrays.add(variable);
+				return;
+			}
+			fStatus.addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_array_write,
+					getSource(target)), JavaStatusContext.create(fCUnit, node));
+			return;
+		}
+		IBinding variable= getVariable(target);
+		if (!(variable instanceof IVariableBinding) || !((IVariableBinding) variable).isField())
+			return; // locals are covered by the flow analysis
+		Expression qualifier= getQualifier(target);
+		if (qualifier != null && isElement(qualifier)) {
+			fStatus.addWarning(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_element_write,
+					new String[] { getSource(target), fElementBinding.getName() }), JavaStatusContext.create(fCUnit, node));
+			return;
+		}
+		if (qualifier != null && isFreshObject(qualifier, fBody))
+			return;
+		fStatus.addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_field_write,
+				getSource(target)), JavaStatusContext.create(fCUnit, node));
+	}
+
+	private void checkInvocation(IMethodBinding binding, Expression receiver, ASTNode node) {
+		ITypeBinding declaringClass= binding.getDeclaringClass();
+		if (SideEffectsFinder.isSideEffectFree(declaringClass))
+			return;
+		if (receiver != null) {
+			receiver= getUnparenthesized(receiver);
+			if (isFreshObject(receiver, fBody))
+				return;
+		}
+		String name= binding.getName();
+		if (SideEffectsFinder.isCollection(declaringClass)) {
+			if (SideEffectsFinder.isCollectionRead(binding))
+				return;
+			if (receiver != null && isElement(receiver)) {
+				fStatus.addWarning(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_element_write,
+						new String[] { getSource(node), fElementBinding.getName() }), JavaStatusContext.create(fCUnit, node));
+			} else {
+				fStatus.addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_collection_write,
+						new String[] { name, receiver != null ? getSource(receiver) : "this" }), JavaStatusContext.create(fCUnit, node)); //$NON-NLS-1$
+			}
+			return;
+		}
+		SideEffectsFinder.Effects effects= fSideEffectsFinder.getMethodEffects(binding);
+		if (effects == null) {
+			fStatus.addWarning(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_unknown_call,
+					name), JavaStatusContext.create(fCUnit, node));
+			return;
+		}
+		List<String> writes= new ArrayList<String>();
+		for (IVariableBinding field : effects.getWrittenOtherFields())
+			writes.add(field.getName());
+		for (IVariableBinding field : effects.getModifiedFields())
+			writes.add(field.getName());
+		for (IVariableBinding array : effects.getWrittenArrays())
+			writes.add(array.getName() + "[]"); //$NON-NLS-1$
+		if (effects.writesUnknownArrays())
+			writes.add("[]"); //$NON-NLS-1$
+		if (!isElement(receiver)) {
+			for (IVariableBinding field : effects.getWrittenThisFields())
+				writes.add(field.getName());
+		}
+		if (!writes.isEmpty()) {
+			fStatus.addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_method_write,
+					new String[] { name, writes.get(0) }), JavaStatusContext.create(fCUnit, node));
+		} else if (!effects.getWrittenThisFields().isEmpty()) {
+			fStatus.addWarning(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_element_write,
+					new String[] { getSource(node), fElementBinding.getName() }), JavaStatusContext.create(fCUnit, node));
+		} else if (!effects.getUnknownCalls().isEmpty()) {
+			fStatus.addWarning(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_unknown_nested_call,
+					new String[] { name, effects.getUnknownCalls().iterator().next() }), JavaStatusContext.create(fCUnit, node));
+		}
+	}
+
+	private void checkThrownExceptions(IMethodBinding binding, ASTNode node) {
+		ITypeBinding[] exceptions= binding.getExceptionTypes();
+		for (int i= 0; i < exceptions.length; i++) {
+			if (isChecked(exceptions[i]) && !isCaught(exceptions[i], node)) {
+				fStatus.addError(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForParallelLoop_checked_exception,
+						exceptions[i].getName()), JavaStatusContext.create(fCUnit, node));
+				return;
+			}
+		}
+	}
+
+	private boolean isCaught(ITypeBinding exception, ASTNode node) {
+		ASTNode child= node;
+		ASTNode parent= node.getParent();
+		while (parent != null && child != fBody) {
+			if (parent instanceof TryStatement && ((TryStatement) parent).getBody() == child) {
+				List<CatchClause> catchClauses= ((TryStatement) parent).catchClauses();
+				for (int i= 0; i < catchClauses.size(); i++) {
+					ITypeBinding caught= catchClauses.get(i).getException().getType().resolveBinding();
+					if (caught != null && Bindings.isSuperType(caught, exception))
+						return true;
+				}
+			}
+			child= parent;
+			parent= parent.getParent();
+		}
+		return false;
+	}
+
+	private static boolean isChecked(ITypeBinding exception) {
+		return Bindings.findTypeInHierarchy(exception, RUNTIME_EXCEPTION) == null && Bindings.findTypeInHierarchy(exception, ERROR) == null;
+	}
+
+	/**
+	 * Returns whether an unlabeled <code>break</code> or <code>continue</code> statement refers to
+	 * a statement nested in the analyzed loop.
+	 */
+	private boolean hasInnerTarget(ASTNode node, boolean isBreak) {
+		for (ASTNode parent= node.getParent(); parent != null && parent != fLoop; parent= parent.getParent()) {
+			if (parent instanceof ForStatement || parent instanceof EnhancedForStatement || parent instanceof WhileStatement || parent instanceof DoStatement)
+				return true;
+			if (isBreak && parent instanceof SwitchStatement)
+				return true;
+		}
+		return false;
+	}
+
+	private boolean hasInnerLabel(ASTNode node, String label) {
+		for (ASTNode parent= node.getParent(); parent != null && parent != fLoop; parent= parent.getParent()) {
+			if (parent instanceof LabeledStatement && ((LabeledStatement) parent).getLabel().getIdentifier().equals(label))
+				return true;
+		}
+		return false;
+	}
+
+	private boolean isIndex(Expression expression) {
+		expression= getUnparenthesized(expression);
+		return fIndexBinding != null && expression instanceof SimpleName && fIndexBinding.isEqualTo(((SimpleName) expression).resolveBinding());
+	}
+
+	private boolean isElement(Expression expression) {
+		if (expression == null)
+			return false;
+		expression= getUnparenthesized(expression);
+		return fElementBinding != null && expression instanceof SimpleName && fElementBinding.isEqualTo(((SimpleName) expression).resolveBinding());
+	}
+
+	/**
+	 * Returns whether the expression is an object created inside of the given scope, i.e. a new
+	 * object or a local of the scope that is initialized with a new object.
+	 */
+	private boolean isFreshObject(Expression expression, ASTNode scope) {
+		if (expression instanceof ClassInstanceCreation || expression instanceof ArrayCreation || expression instanceof ArrayInitializer)
+			return true;
+		if (!(expression instanceof SimpleName))
+			return false;
+		IBinding binding= ((SimpleName) expression).resolveBinding();
+		if (!(binding instanceof IVariableBinding) || ((IVariableBinding) binding).isField())
+			return false;
+		ASTNode declaration= fRoot.findDeclaringNode(binding);
+		if (!(declaration instanceof VariableDeclarationFragment) || !isInside(declaration, scope))
+			return false;
+		Expression initializer= ((VariableDeclarationFragment) declaration).getInitializer();
+		return initializer instanceof ClassInstanceCreation || initializer instanceof ArrayCreation || initializer instanceof ArrayInitializer;
+	}
+
+	private static boolean isInside(ASTNode node, ASTNode scope) {
+		int start= scope.getStartPosition();
+		return start <= node.getStartPosition() && node.getStartPosition() + node.getLength() <= start + scope.getLength();
+	}
+
+	private static IBinding getVariable(Expression expression) {
+		expression= getUnparenthesized(expression);
+		if (expression instanceof Name)
+			return ((Name) expression).resolveBinding();
+		if (expression instanceof FieldAccess)
+			return ((FieldAccess) expression).resolveFieldBinding();
+		if (expression instanceof SuperFieldAccess)
+			return ((SuperFieldAccess) expression).resolveFieldBinding();
+		return null;
+	}
+
+	private static Expression getQualifier(Expression expression) {
+		if (expression instanceof QualifiedName)
+			return ((QualifiedName) expression).getQualifier();
+		if (expression instanceof FieldAccess)
+			return getUnparenthesized(((FieldAccess) expression).getExpression());
+		return null;
+	}
+
+	private static Expression getUnparenthesized(Expression expression) {
+		while (expression instanceof ParenthesizedExpression)
+			expression= ((ParenthesizedExpression) expression).getExpression();
+		return expression;
+	}
+
+	private String getSource(ASTNode node) {
+		return fSource.substring(node.getStartPosition(), node.getStartPosition() + node.getLength());
+	}
+}
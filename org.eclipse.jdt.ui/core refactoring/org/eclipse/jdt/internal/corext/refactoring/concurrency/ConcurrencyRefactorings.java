@@ -44,6 +44,108 @@ public final class ConcurrencyRefactorings extends NLS {
 	public static String ConvertToAtomicLong_name_official;
 	public static String ConvertToAtomicLong_compile_error;
 	
+	public static String ConvertToAtomicBatch_check_preconditions;
+	public static String ConvertToAtomicBatch_search_fields;
+	public static String ConvertToAtomicBatch_analyze_fields;
+	public static String ConvertToAtomicBatch_create_changes;
+	public static String ConvertToAtomicBatch_name_official;
+	public static String ConvertToAtomicBatch_no_scope;
+	public static String ConvertToAtomicBatch_no_kind;
+	public static String ConvertToAtomicBatch_no_fields;
+	public static String ConvertToAtomicBatch_no_convertible_fields;
+	public static String ConvertToAtomicBatch_field_skipped;
+	public static String ConvertToAtomicBatch_field_conflict;
+	public static String ConvertToAtomicBatch_unexpected_error;
+	
+	public static String ConvertToLongAdder_check_preconditions;
+	public static String ConvertToLongAdder_task_name;
+	public static String ConvertToLongAdder_analyze_error;
+	public static String ConvertToLongAdder_type_error;
+	public static String ConvertToLongAdder_missing_type;
+	public static String ConvertToLongAdder_unknown_initializer;
+	public static String ConvertToLongAdder_mixed_operations;
+	public static String ConvertToLongAdder_nonzero_initializer;
+	public static String ConvertToLongAdder_method_reference_error;
+	public static String ConvertToLongAdder_change_type;
+	public static String ConvertToLongAdder_name_user;
+	public static String ConvertToLongAdder_name_official;
+	public static String ConvertToLongAdder_comment;
+	public static String ConvertToLongAdder_create_changes;
+	public static String ConvertToLongAdder_compile_error;
+	
+	public static String ConvertToConcurrentCollection_check_preconditions;
+	public static String ConvertToConcurrentCollection_task_name;
+	public static String ConvertToConcurrentCollection_analyze_error;
+	public static String ConvertToConcurrentCollection_type_error;
+	public static String ConvertToConcurrentCollection_missing_type;
+	public static String ConvertToConcurrentCollection_invalid_target;
+	public static String ConvertToConcurrentCollection_change_type;
+	public static String ConvertToConcurrentCollection_name_user;
+	public static String ConvertToConcurrentCollection_name_official;
+	public static String ConvertToConcurrentCollection_comment;
+	public static String ConvertToConcurrentCollection_create_changes;
+	public static String ConvertToConcurrentCollection_compile_error;
+	
+	public static String ConvertLoopToParallelStream_check_preconditions;
+	public static String ConvertLoopToParallelStream_no_loop;
+	public static String ConvertLoopToParallelStream_analyze_error;
+	public static String ConvertLoopToParallelStream_compile_error;
+	public static String ConvertLoopToParallelStream_missing_type;
+	public static String ConvertLoopToParallelStream_lambda_error;
+	public static String ConvertLoopToParallelStream_unsupported_for;
+	public static String ConvertLoopToParallelStream_unsupported_bound;
+	public static String ConvertLoopToParallelStream_unsupported_array;
+	public static String ConvertLoopToParallelStream_unsupported_iterable;
+	public static String ConvertLoopToParallelStream_local_write;
+	public static String ConvertLoopToParallelStream_index_write;
+	public static String ConvertLoopToParallelStream_captured_local;
+	public static String ConvertLoopToParallelStream_floating_point_warning;
+	public static String ConvertLoopToParallelStream_convert_loop;
+	public static String ConvertLoopToParallelStream_name_official;
+	public static String ConvertLoopToParallelStream_create_changes;
+	
+	public static String SplitLock_check_preconditions;
+	public static String SplitLock_no_class;
+	public static String SplitLock_analyze_error;
+	public static String SplitLock_compile_error;
+	public static String SplitLock_no_regions;
+	public static String SplitLock_single_domain;
+	public static String SplitLock_spanning_region;
+	public static String SplitLock_this_escapes;
+	public static String SplitLock_unguarded_monitor_call;
+	public static String SplitLock_unguarded_region;
+	public static String SplitLock_map_domain;
+	public static String SplitLock_clients_warning;
+	public static String SplitLock_invalid_stripe_count;
+	public static String SplitLock_add_lock;
+	public static String SplitLock_use_lock;
+	public static String SplitLock_name_user;
+	public static String SplitLock_name_official;
+	public static String SplitLock_comment;
+	public static String SplitLock_create_changes;
+	
+	public static String ConvertToReadWriteLock_check_preconditions;
+	public static String ConvertToReadWriteLock_no_class;
+	public static String ConvertToReadWriteLock_analyze_error;
+	public static String ConvertToReadWriteLock_compile_error;
+	public static String ConvertToReadWriteLock_no_regions;
+	public static String ConvertToReadWriteLock_unknown_call;
+	public static String ConvertToReadWriteLock_this_escapes;
+	public static String ConvertToReadWriteLock_monitor_call;
+	public static String ConvertToReadWriteLock_reentrant_region;
+	public static String ConvertToReadWriteLock_no_read_only_region;
+	public static String ConvertToReadWriteLock_clients_warning;
+	public static String ConvertToReadWriteLock_duplicate_field;
+	public static String ConvertToReadWriteLock_missing_type;
+	public static String ConvertToReadWriteLock_add_lock;
+	public static String ConvertToReadWriteLock_read_lock;
+	public static String ConvertToReadWriteLock_write_lock;
+	public static String ConvertToReadWriteLock_optimistic_read;
+	public static String ConvertToReadWriteLock_name_user;
+	public static String ConvertToReadWriteLock_name_official;
+	public static String ConvertToReadWriteLock_comment;
+	public static String ConvertToReadWriteLock_create_changes;
+	
 	public static String ConvertToConcurrentHashMapRefactoring_check_preconditions;
 	public static String ConvertToConcurrentHashMapRefactoring_task_name;
 	public static String ConvertToConcurrentHashMapRefactoring_program_name;
@@ -53,6 +155,8 @@ public final class ConcurrencyRefactorings extends NLS {
 	public static String ConvertToConcurrentHashMapRefactoring_create_changes;
 	public static String ConvertToConcurrentHashMapRefactoring_name_official;
 	public static String ConvertToConcurrentHashMapRefactoring_compile_error;
+	public static String ConvertToConcurrentHashMapRefactoring_missing_function;
+	public static String ConvertToConcurrentHashMapRefactoring_lambda_fallback;
 	
 	public static String ConvertToFJTaskRefactoring_check_preconditions;
 	public static String ConvertToFJTaskRefactoring_task_name;
@@ -69,6 +173,14 @@ public final class ConcurrencyRefactorings extends NLS {
 	public static String ConvertToFJTaskRefactoring_create_changes;
 	public static String ConvertToFJTaskRefactoring_name_official;
 	public static String ConvertToFJTaskRefactoring_sequential_req;
+	public static String ConvertToFJTaskRefactoring_recursive_task;
+	public static String ConvertToFJTaskRefactoring_nested_call;
+	public static String ConvertToFJTaskRefactoring_conditional_call;
+	public static String ConvertToFJTaskRefactoring_dependent_call;
+	public static String ConvertToFJTaskRefactoring_loop_error;
+	public static String ConvertToFJTaskRefactoring_loop_variable_error;
+	public static String ConvertToFJTaskRefactoring_shared_field_write;
+	public static String ConvertToFJTaskRefactoring_shared_object_write;
 	
 	public static String AccessAnalyzerForAtomicInteger_access_error_1;
 	public static String AccessAnalyzerForAtomicInteger_access_error_2;
@@ -83,6 +195,47 @@ public final class ConcurrencyRefactorings extends NLS {
 	public static String AccessAnalyzerForConcurrentHashMap_clone_error;
 	public static String AccessAnalyzerForConcurrentHashMap_synch_block_error;
 	public static String AccessAnalyzerForConcurrentHashMap_synch_method_error;
+	public static String AccessAnalyzerForConcurrentHashMap_create_value_writes;
+	public static String AccessAnalyzerForConcurrentHashMap_create_value_escapes;
+	public static String AccessAnalyzerForConcurrentHashMap_replace_with_compute_if_absent;
+	public static String AccessAnalyzerForConcurrentHashMap_replace_with_compute_if_present;
+	public static String AccessAnalyzerForConcurrentHashMap_replace_with_compute;
+	public static String AccessAnalyzerForConcurrentHashMap_replace_with_merge;
+	public static String AccessAnalyzerForConcurrentHashMap_replace_with_remove;
+	public static String AccessAnalyzerForConcurrentHashMap_not_moved_to_lambda;
+	
+	public static String AccessAnalyzerForConcurrentCollection_replace_creation;
+	public static String AccessAnalyzerForConcurrentCollection_atomic_operation;
+	public static String AccessAnalyzerForConcurrentCollection_unknown_value;
+	public static String AccessAnalyzerForConcurrentCollection_unsupported_creation;
+	public static String AccessAnalyzerForConcurrentCollection_unsupported_method;
+	public static String AccessAnalyzerForConcurrentCollection_null_element;
+	public static String AccessAnalyzerForConcurrentCollection_iterator_write;
+	public static String AccessAnalyzerForConcurrentCollection_copy_in_loop;
+	public static String AccessAnalyzerForConcurrentCollection_eager_value;
+	public static String AccessAnalyzerForConcurrentCollection_compound_region;
+	public static String AccessAnalyzerForConcurrentCollection_field_escapes;
+	
+	public static String AccessAnalyzerForLongAdder_value_used;
+	public static String AccessAnalyzerForLongAdder_read_write_region;
+	public static String AccessAnalyzerForLongAdder_unsupported_write;
+	public static String AccessAnalyzerForLongAdder_requires_accumulator;
+	public static String AccessAnalyzerForLongAdder_unsupported_method;
+	public static String AccessAnalyzerForLongAdder_field_escapes;
+	public static String AccessAnalyzerForLongAdder_reassigned;
+	
+	public static String AccessAnalyzerForParallelLoop_field_write;
+	public static String AccessAnalyzerForParallelLoop_array_write;
+	public static String AccessAnalyzerForParallelLoop_array_dependence;
+	public static String AccessAnalyzerForParallelLoop_element_write;
+	public static String AccessAnalyzerForParallelLoop_collection_write;
+	public static String AccessAnalyzerForParallelLoop_method_write;
+	public static String AccessAnalyzerForParallelLoop_unknown_call;
+	public static String AccessAnalyzerForParallelLoop_unknown_nested_call;
+	public static String AccessAnalyzerForParallelLoop_checked_exception;
+	public static String AccessAnalyzerForParallelLoop_return;
+	public static String AccessAnalyzerForParallelLoop_break;
+	public static String AccessAnalyzerForParallelLoop_continue;
 	
 	static {
 		NLS.initializeMessages(BUNDLE_NAME, ConcurrencyRefactorings.class);
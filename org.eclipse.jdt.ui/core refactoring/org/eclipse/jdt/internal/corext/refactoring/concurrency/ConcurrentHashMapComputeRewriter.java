@@ -0,0 +1,1107 @@
+package org.eclipse.jdt.internal.corext.refactoring.concurrency;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.text.edits.TextEditGroup;
+
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.BreakStatement;
+import org.eclipse.jdt.core.dom.CastExpression;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.ContinueStatement;
+import org.eclipse.jdt.core.dom.DoStatement;
+import org.eclipse.jdt.core.dom.EnhancedForStatement;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.NullLiteral;
+import org.eclipse.jdt.core.dom.NumberLiteral;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.ReturnStatement;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.StringLiteral;
+import org.eclipse.jdt.core.dom.SuperFieldAccess;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.SwitchStatement;
+import org.eclipse.jdt.core.dom.ThrowStatement;
+import org.eclipse.jdt.core.dom.TryStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+import org.eclipse.jdt.core.dom.WhileStatement;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+
+import org.eclipse.jdt.internal.corext.dom.ASTNodes;
+import org.eclipse.jdt.internal.corext.dom.Bindings;
+import org.eclipse.jdt.internal.corext.dom.JdtASTMatcher;
+import org.eclipse.jdt.internal.corext.refactoring.base.JavaStatusContext;
+import org.eclipse.jdt.internal.corext.util.Messages;
+
+/**
+ * Replaces check-then-act sequences on a map field by the atomic operations that
+ * <code>java.util.concurrent.ConcurrentHashMap</code> offers since Java 8:
+ * <ul>
+ * <li><code>V v= map.get(k); if (v == null) { v= create(); map.put(k, v); }</code> becomes
+ * <code>V v= map.computeIfAbsent(k, key -> create());</code></li>
+ * <li><code>Integer n= map.get(k); map.put(k, n == null ? 1 : n + 1);</code> and the equivalent
+ * <code>if</code> statement become <code>map.merge(k, 1, Integer::sum);</code>, other updates of
+ * the old value become <code>compute</code> or <code>computeIfPresent</code></li>
+ * <li><code>if (map.containsKey(k) &amp;&amp; map.get(k).equals(v)) map.remove(k);</code> becomes
+ * <code>map.remove(k, v);</code></li>
+ * </ul>
+ * <p>
+ * The lambda bodies are copied from the original statements, so the value is only computed if it
+ * is needed and the map is updated atomically. Sequences that cannot be moved into a lambda
+ * expression are left to the <code>putIfAbsent</code> conversion of
+ * {@link AccessAnalyzerForConcurrentHashMap}.
+ * </p>
+ */
+public class ConcurrentHashMapComputeRewriter {
+
+	private static final String GET= "get"; //$NON-NLS-1$
+	private static final String GET_OR_DEFAULT= "getOrDefault"; //$NON-NLS-1$
+	private static final String CONTAINS_KEY= "containsKey"; //$NON-NLS-1$
+	private static final String PUT= "put"; //$NON-NLS-1$
+	private static final String REMOVE= "remove"; //$NON-NLS-1$
+	private static final String EQUALS= "equals"; //$NON-NLS-1$
+	private static final String COMPUTE_IF_ABSENT= "computeIfAbsent"; //$NON-NLS-1$
+	private static final String COMPUTE_IF_PRESENT= "computeIfPresent"; //$NON-NLS-1$
+	private static final String COMPUTE= "compute"; //$NON-NLS-1$
+	private static final String MERGE= "merge"; //$NON-NLS-1$
+
+	private static final String KEY= "key"; //$NON-NLS-1$
+	private static final String VALUE= "value"; //$NON-NLS-1$
+	private static final String NULL= "null"; //$NON-NLS-1$
+
+	private static final String STRING= "java.lang.String"; //$NON-NLS-1$
+	private static final String RUNTIME_EXCEPTION= "java.lang.RuntimeException"; //$NON-NLS-1$
+	private static final String ERROR= "java.lang.Error"; //$NON-NLS-1$
+
+	/** the value types that can be summed up by <code>merge</code>, and their functions */
+	private static final String[][] SUM_FUNCTIONS= {
+			{ "java.lang.Integer", "Integer::sum" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "java.lang.Long", "Long::sum" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ "java.lang.Double", "Double::sum" }, //$NON-NLS-1$ //$NON-NLS-2$
+			{ STRING, "String::concat" } }; //$NON-NLS-1$
+
+	/** the condition does not test the old value */
+	private static final int OTHER= 0;
+	/** the condition holds if the key is absent, e.g. <code>v == null</code> */
+	private static final int ABSENT= 1;
+	/** the condition holds if the key is present, e.g. <code>map.containsKey(k)</code> */
+	private static final int PRESENT= 2;
+	/** the condition starts with a presence test, e.g. <code>v != null &amp;&amp; v.isEmpty()</code> */
+	private static final int PRESENT_AND= 3;
+
+	private final ICompilationUnit fCUnit;
+	private final CompilationUnit fRoot;
+	private final IVariableBinding fFieldBinding;
+	private final ASTRewrite fRewriter;
+	private final List<TextEditGroup> fGroupDescriptions;
+	private final RefactoringStatus fStatus;
+	private final String fSource;
+	private final SideEffectsFinder fSideEffectsFinder;
+	private Statement fReplacedStatement;
+	private Statement fReplacement;
+
+	public ConcurrentHashMapComputeRewriter(ICompilationUnit unit, CompilationUnit root, IVariableBinding field, ASTRewrite rewriter,
+			List<TextEditGroup> groupDescriptions, RefactoringStatus status) throws JavaModelException {
+		fCUnit= unit;
+		fRoot= root;
+		fFieldBinding= field.getVariableDeclaration();
+		fRewriter= rewriter;
+		fGroupDescriptions= groupDescriptions;
+		fStatus= status;
+		fSource= unit.getSource();
+		fSideEffectsFinder= new SideEffectsFinder(root);
+	}
+
+	/**
+	 * @return the statement that was replaced by the last successful rewrite
+	 */
+	public Statement getReplacedStatement() {
+		return fReplacedStatement;
+	}
+
+	/**
+	 * @return the statement that contains the atomic operation after the last successful rewrite
+	 */
+	public Statement getReplacement() {
+		return fReplacement;
+	}
+
+	/**
+	 * Rewrites an <code>if</code> statement that tests the old value of a key and then puts or
+	 * removes the key. The declaration of a local that holds the old value may precede the
+	 * statement.
+	 *
+	 * @param node the <code>if</code> statement
+	 * @return <code>true</code> if the statement was rewritten
+	 */
+	public boolean rewrite(IfStatement node) {
+		if (!(node.getParent() instanceof Block) || fSource == null)
+			return false;
+		Block block= (Block) node.getParent();
+		int index= block.statements().indexOf(node);
+		List<Statement> thenStatements= getStatements(node.getThenStatement());
+		if (thenStatements.isEmpty())
+			return false;
+		MethodInvocation action= getAction(thenStatements.get(thenStatements.size() - 1));
+		if (action == null)
+			return false;
+		Expression key= (Expression) action.arguments().get(0);
+		if (!isPure(key))
+			return false;
+		VariableDeclarationFragment local= getOldValueDeclaration(block, index, key);
+		IVariableBinding localBinding= local != null ? local.resolveBinding() : null;
+		Expression condition= getUnparenthesized(node.getExpression());
+		int test= getTest(condition, key, localBinding);
+
+		if (test == ABSENT && node.getElseStatement() == null && isPut(action))
+			return rewriteComputeIfAbsent(node, block, index, action, local);
+
+		if (thenStatements.size() != 1)
+			return false;
+		MethodInvocation elseAction= null;
+		if (node.getElseStatement() != null) {
+			elseAction= getAction(getSingleStatement(node.getElseStatement()));
+			if (elseAction == null || !matches(key, (Expression) elseAction.arguments().get(0)))
+				return false;
+		}
+		if (local != null && !references(node, localBinding))
+			local= null;
+		// the old value is no longer available after the atomic operation
+		if (local != null && isReferencedAfter(block, index, local.resolveBinding()))
+			return false;
+		return rewriteCompute(node, condition, test, action, elseAction, local);
+	}
+
+	/**
+	 * Rewrites a <code>put</code> that stores a new value computed from the old value of the key,
+	 * e.g. <code>map.put(k, map.get(k) + 1)</code>. The declaration of a local that holds the old
+	 * value may precede the statement.
+	 *
+	 * @param node the statement
+	 * @return <code>true</code> if the statement was rewritten
+	 */
+	public boolean rewrite(ExpressionStatement node) {
+		if (!(node.getParent() instanceof Block) || fSource == null)
+			return false;
+		MethodInvocation put= getAction(node);
+		if (put == null || !isPut(put))
+			return false;
+		Block block= (Block) node.getParent();
+		int index= block.statements().indexOf(node);
+		Expression key= (Expression) put.arguments().get(0);
+		Expression value= (Expression) put.arguments().get(1);
+		if (!isPure(key))
+			return false;
+		VariableDeclarationFragment local= getOldValueDeclaration(block, index, key);
+		IVariableBinding localBinding= local != null ? local.resolveBinding() : null;
+		if (local != null && !references(value, localBinding)) {
+			local= null;
+			localBinding= null;
+		}
+		if (local != null && isReferencedAfter(block, index, localBinding))
+			return false;
+		String map= getSource(put.getExpression());
+		String keySource= getSource(key);
+
+		// n == null ? 1 : n + 1 and map.getOrDefault(k, 0) + 1 sum up the old value
+		Expression unparenthesized= getUnparenthesized(value);
+		Expression increment= null;
+		String function= null;
+		if (unparenthesized instanceof ConditionalExpression) {
+			ConditionalExpression conditional= (ConditionalExpression) unparenthesized;
+			int test= getTest(conditional.getExpression(), key, localBinding);
+			if (test == ABSENT || test == PRESENT) {
+				increment= test == ABSENT ? conditional.getThenExpression() : conditional.getElseExpression();
+				function= getSumFunction(increment, test == ABSENT ? conditional.getElseExpression() : conditional.getThenExpression(), key, localBinding);
+			}
+		} else if (unparenthesized instanceof InfixExpression) {
+			increment= getDefaultIncrement((InfixExpression) unparenthesized, key);
+			if (increment != null)
+				function= getSumFunction(increment, unparenthesized, key, null);
+		}
+		if (function != null) {
+			String code= map + '.' + MERGE + '(' + keySource + ", " + getSource(getUnparenthesized(increment)) + ", " + function + ");"; //$NON-NLS-1$ //$NON-NLS-2$
+			replace(node, code, ASTNode.EXPRESSION_STATEMENT, local, ConcurrencyRefactorings.AccessAnalyzerForConcurrentHashMap_replace_with_merge);
+			return true;
+		}
+
+		Set<String> usedNames= getUsedNames(node);
+		String valueName= local != null ? local.getName().getIdentifier() : getUniqueName(VALUE, usedNames);
+		String keyName= getUniqueName(KEY, usedNames);
+		Map<ASTNode, String> replacements= new HashMap<ASTNode, String>();
+		LambdaBodyAnalyzer analyzer= new LambdaBodyAnalyzer(key, localBinding, valueName, true, replacements);
+		analyzer.analyze(new ASTNode[] { value });
+		if (!analyzer.usesOldValue())
+			return false;
+		if (!analyzer.isValid()) {
+			reportNotConverted(node, COMPUTE);
+			return false;
+		}
+		String code= map + '.' + COMPUTE + '(' + keySource + ", (" + keyName + ", " + valueName + ") -> " //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				+ getSource(value, replacements) + ");"; //$NON-NLS-1$
+		replace(node, code, ASTNode.EXPRESSION_STATEMENT, local, ConcurrencyRefactorings.AccessAnalyzerForConcurrentHashMap_replace_with_compute);
+		return true;
+	}
+
+	private boolean rewriteComputeIfAbsent(IfStatement node, Block block, int index, MethodInvocation put, VariableDeclarationFragment local) {
+		Statement thenStatement= node.getThenStatement();
+		List<Statement> statements= getStatements(thenStatement);
+		Statement putStatement= statements.get(statements.size() - 1);
+		Expression key= (Expression) put.arguments().get(0);
+		Expression value= (Expression) put.arguments().get(1);
+		IVariableBinding localBinding= local != null ? local.resolveBinding() : null;
+		boolean assignsLocal= localBinding != null && isVariable(value, localBinding);
+		boolean usedAfter= localBinding != null && isReferencedAfter(block, index, localBinding);
+		// the local stays null in the original code if the put does not store it
+		if (localBinding != null && !assignsLocal && usedAfter)
+			return false;
+
+		Set<String> usedNames= getUsedNames(node);
+		String keyName= getUniqueName(KEY, usedNames);
+		String valueName= null;
+		Map<ASTNode, String> replacements= new HashMap<ASTNode, String>();
+		Assignment initialization= null;
+		if (assignsLocal) {
+			// the then block has to start with v= create();, which becomes the declaration of the value
+			initialization= getInitialization(statements.get(0), localBinding);
+			if (statements.size() < 2 || initialization == null)
+				return false;
+			valueName= usedAfter ? getUniqueName(VALUE, usedNames) : localBinding.getName();
+			VariableDeclarationStatement declaration= (VariableDeclarationStatement) local.getParent();
+			replacements.put(initialization.getLeftHandSide(), getSource(declaration.getType()) + ' ' + valueName);
+		}
+		List<ASTNode> moved= new ArrayList<ASTNode>(statements.subList(0, statements.size() - 1));
+		moved.add(value);
+		LambdaBodyAnalyzer analyzer= new LambdaBodyAnalyzer(key, localBinding, valueName, false, replacements);
+		analyzer.analyze(moved.toArray(new ASTNode[moved.size()]));
+		if (!analyzer.isValid()) {
+			reportNotConverted(node, COMPUTE_IF_ABSENT);
+			return false;
+		}
+
+		String body;
+		if (statements.size() == 1) {
+			body= getSource(value, replacements);
+		} else if (initialization != null && statements.size() == 2) {
+			body= getSource(initialization.getRightHandSide(), replacements);
+		} else {
+			replacements.put(putStatement, "return " + getSource(value, replacements) + ';'); //$NON-NLS-1$
+			body= getSource(thenStatement, replacements);
+		}
+		String invocation= getSource(put.getExpression()) + '.' + COMPUTE_IF_ABSENT + '(' + getSource(key) + ", " + keyName + " -> " + body + ')'; //$NON-NLS-1$ //$NON-NLS-2$
+		String description= ConcurrencyRefactorings.AccessAnalyzerForConcurrentHashMap_replace_with_compute_if_absent;
+
+		if (localBinding == null || !usedAfter) {
+			replace(node, invocation + ';', ASTNode.EXPRESSION_STATEMENT, local, description);
+			return true;
+		}
+		Map<ASTNode, String> initializer= new HashMap<ASTNode, String>();
+		initializer.put(getOldValueInvocation(local), invocation);
+		List<Statement> blockStatements= block.statements();
+		Statement next= index + 1 < blockStatements.size() ? blockStatements.get(index + 1) : null;
+		if (next instanceof ReturnStatement && isVariable(((ReturnStatement) next).getExpression(), localBinding)
+				&& !isReferencedAfter(block, index + 1, localBinding)) {
+			// V v= map.get(k); if (v == null) { ... } return v; becomes a single return statement
+			TextEditGroup group= createGroupDescription(description);
+			fRewriter.remove(node, group);
+			replace(next, "return " + getSource(local.getInitializer(), initializer) + ';', ASTNode.RETURN_STATEMENT, local, group); //$NON-NLS-1$
+		} else {
+			VariableDeclarationStatement declaration= (VariableDeclarationStatement) local.getParent();
+			TextEditGroup group= createGroupDescription(description);
+			fRewriter.remove(node, group);
+			replace(declaration, getSource(declaration, initializer), ASTNode.VARIABLE_DECLARATION_STATEMENT, null, group);
+		}
+		return true;
+	}
+
+	private boolean rewriteCompute(IfStatement node, Expression condition, int test, MethodInvocation action, MethodInvocation elseAction,
+			VariableDeclarationFragment local) {
+		IVariableBinding localBinding= local != null ? local.resolveBinding() : null;
+		Expression key= (Expression) action.arguments().get(0);
+		Expression thenValue= isPut(action) ? (Expression) action.arguments().get(1) : null;
+		Expression elseValue= elseAction != null && isPut(elseAction) ? (Expression) elseAction.arguments().get(1) : null;
+		String map= getSource(action.getExpression());
+		String keySource= getSource(key);
+
+		if (elseAction == null && thenValue == null && (test == PRESENT || test == ABSENT))
+			return false; // a plain remove(key)
+		if ((test == ABSENT || test == PRESENT) && thenValue != null && elseValue != null) {
+			Expression whenAbsent= test == ABSENT ? thenValue : elseValue;
+			Expression whenPresent= test == ABSENT ? elseValue : thenValue;
+			String function= getSumFunction(whenAbsent, whenPresent, key, localBinding);
+			if (function != null) {
+				String code= map + '.' + MERGE + '(' + keySource + ", " + getSource(getUnparenthesized(whenAbsent)) + ", " + function + ");"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+				replace(node, code, ASTNode.EXPRESSION_STATEMENT, local, ConcurrencyRefactorings.AccessAnalyzerForConcurrentHashMap_replace_with_merge);
+				return true;
+			}
+		}
+		Expression rest= null;
+		int restStart= 0;
+		int end= condition.getStartPosition() + condition.getLength();
+		if (test == PRESENT_AND && elseAction == null) {
+			rest= ((InfixExpression) condition).getRightOperand();
+			restStart= rest.getStartPosition();
+			Expression removedValue= thenValue == null && !((InfixExpression) condition).hasExtendedOperands() ? getRemovedValue(rest, key, localBinding) : null;
+			if (removedValue != null) {
+				String code= map + '.' + REMOVE + '(' + keySource + ", " + getSource(removedValue) + ");"; //$NON-NLS-1$ //$NON-NLS-2$
+				replace(node, code, ASTNode.EXPRESSION_STATEMENT, local, ConcurrencyRefactorings.AccessAnalyzerForConcurrentHashMap_replace_with_remove);
+				return true;
+			}
+		}
+
+		Set<String> usedNames= getUsedNames(node);
+		String valueName= local != null ? local.getName().getIdentifier() : getUniqueName(VALUE, usedNames);
+		String keyName= getUniqueName(KEY, usedNames);
+		Map<ASTNode, String> replacements= new HashMap<ASTNode, String>();
+		List<ASTNode> moved= new ArrayList<ASTNode>();
+		moved.add(condition);
+		if (thenValue != null)
+			moved.add(thenValue);
+		if (elseValue != null)
+			moved.add(elseValue);
+		LambdaBodyAnalyzer analyzer= new LambdaBodyAnalyzer(key, localBinding, valueName, true, replacements);
+		analyzer.analyze(moved.toArray(new ASTNode[moved.size()]));
+		// only updates that depend on the old value have to be atomic, replace(k, v) is fine otherwise
+		boolean ifPresent= elseAction == null && (test == PRESENT || test == PRESENT_AND);
+		if (!analyzer.usesOldValue() || ifPresent && test == PRESENT && !references(thenValue, localBinding) && !usesMap(thenValue))
+			return false;
+		if (!analyzer.isValid()) {
+			reportNotConverted(node, ifPresent ? COMPUTE_IF_PRESENT : COMPUTE);
+			return false;
+		}
+
+		String thenCode= thenValue != null ? getOperandSource(thenValue, replacements) : NULL;
+		String body;
+		String description;
+		if (ifPresent) {
+			// the function is only called for present keys, so the presence test is dropped
+			body= test == PRESENT ? getSource(thenValue, replacements) : getSource(restStart, end, replacements) + " ? " + thenCode + " : " + valueName; //$NON-NLS-1$ //$NON-NLS-2$
+			description= ConcurrencyRefactorings.AccessAnalyzerForConcurrentHashMap_replace_with_compute_if_present;
+		} else {
+			String elseCode= elseAction == null ? valueName : elseValue != null ? getOperandSource(elseValue, replacements) : NULL;
+			body= getOperandSource(condition, replacements) + " ? " + thenCode + " : " + elseCode; //$NON-NLS-1$ //$NON-NLS-2$
+			description= ConcurrencyRefactorings.AccessAnalyzerForConcurrentHashMap_replace_with_compute;
+		}
+		String code= map + '.' + (ifPresent ? COMPUTE_IF_PRESENT : COMPUTE) + '(' + keySource + ", (" + keyName + ", " + valueName + ") -> " + body + ");"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		replace(node, code, ASTNode.EXPRESSION_STATEMENT, local, description);
+		return true;
+	}
+
+	private void replace(Statement statement, String code, int nodeType, VariableDeclarationFragment local, String description) {
+		replace(statement, code, nodeType, local, createGroupDescription(description));
+	}
+
+	private void replace(Statement statement, String code, int nodeType, VariableDeclarationFragment local, TextEditGroup group) {
+		if (local != null)
+			fRewriter.remove(local.getParent(), group);
+		fReplacement= (Statement) fRewriter.createStringPlaceholder(code, nodeType);
+		fReplacedStatement= statement;
+		fRewriter.replace(statement, fReplacement, group);
+	}
+
+	private void reportNotConverted(ASTNode node, String method) {
+		fStatus.addInfo(Messages.format(ConcurrencyRefactorings.AccessAnalyzerForConcurrentHashMap_not_moved_to_lambda,
+				new String[] { fFieldBinding.getName(), method }), JavaStatusContext.create(fCUnit, node));
+	}
+
+	/**
+	 * Returns the function that <code>merge</code> combines the old value and the increment with,
+	 * if the new value is the increment for an absent key and the sum of the old value and the
+	 * increment otherwise.
+	 */
+	private String getSumFunction(Expression whenAbsent, Expression whenPresent, Expression key, IVariableBinding local) {
+		Expression increment= getUnparenthesized(whenAbsent);
+		Expression sum= getUnparenthesized(whenPresent);
+		if (!(sum instanceof InfixExpression))
+			return null;
+		InfixExpression infix= (InfixExpression) sum;
+		if (infix.getOperator() != InfixExpression.Operator.PLUS || infix.hasExtendedOperands())
+			return null;
+		Expression left= getUnparenthesized(infix.getLeftOperand());
+		Expression right= getUnparenthesized(infix.getRightOperand());
+		Expression oldValue;
+		Expression other;
+		if (isOldValue(left, key, local) || isDefault(left, key)) {
+			oldValue= left;
+			other= right;
+		} else if (isOldValue(right, key, local) || isDefault(right, key)) {
+			oldValue= right;
+			other= left;
+		} else {
+			return null;
+		}
+		if (!other.subtreeMatch(new JdtASTMatcher(), increment) || !isPure(increment) || usesMap(increment) || references(increment, local))
+			return null;
+		ITypeBinding type= oldValue.resolveTypeBinding();
+		ITypeBinding incrementType= increment.resolveTypeBinding();
+		if (type == null || incrementType == null)
+			return null;
+		String typeName= type.getErasure().getQualifiedName();
+		if (STRING.equals(typeName) && (oldValue != left || !STRING.equals(incrementType.getQualifiedName())))
+			return null; // concatenation is not commutative
+		for (int i= 0; i < SUM_FUNCTIONS.length; i++) {
+			if (SUM_FUNCTIONS[i][0].equals(typeName))
+				return SUM_FUNCTIONS[i][1];
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the increment of <code>map.getOrDefault(k, 0) + increment</code>.
+	 */
+	private Expression getDefaultIncrement(InfixExpression sum, Expression key) {
+		if (sum.getOperator() != InfixExpression.Operator.PLUS || sum.hasExtendedOperands())
+			return null;
+		if (isDefault(getUnparenthesized(sum.getLeftOperand()), key))
+			return sum.getRightOperand();
+		if (isDefault(getUnparenthesized(sum.getRightOperand()), key))
+			return sum.getLeftOperand();
+		return null;
+	}
+
+	/**
+	 * Returns whether the expression is <code>map.getOrDefault(k, 0)</code> or
+	 * <code>map.getOrDefault(k, "")</code>, which behave like an absent key in a sum.
+	 */
+	private boolean isDefault(Expression expression, Expression key) {
+		if (!isMapInvocation(expression, GET_OR_DEFAULT, 2) || !matches(key, (Expression) ((MethodInvocation) expression).arguments().get(0)))
+			return false;
+		Expression defaultValue= getUnparenthesized((Expression) ((MethodInvocation) expression).arguments().get(1));
+		if (defaultValue instanceof StringLiteral)
+			return ((StringLiteral) defaultValue).getLiteralValue().length() == 0;
+		return defaultValue instanceof NumberLiteral && ((NumberLiteral) defaultValue).getToken().matches("0+(\\.0*)?[lLdDfF]?"); //$NON-NLS-1$
+	}
+
+	/**
+	 * Returns <code>v</code> if the rest of a condition is <code>map.get(k).equals(v)</code> or
+	 * <code>v.equals(map.get(k))</code>, so that the removal becomes <code>remove(k, v)</code>.
+	 */
+	private Expression getRemovedValue(Expression rest, Expression key, IVariableBinding local) {
+		rest= getUnparenthesized(rest);
+		if (!(rest instanceof MethodInvocation))
+			return null;
+		MethodInvocation invocation= (MethodInvocation) rest;
+		if (!EQUALS.equals(invocation.getName().getIdentifier()) || invocation.arguments().size() != 1 || invocation.getExpression() == null)
+			return null;
+		Expression receiver= getUnparenthesized(invocation.getExpression());
+		Expression argument= getUnparenthesized((Expression) invocation.arguments().get(0));
+		Expression value;
+		if (isOldValue(receiver, key, local))
+			value= argument;
+		else if (isOldValue(argument, key, local))
+			value= receiver;
+		else
+			return null;
+		if (value instanceof NullLiteral || !isPure(value) || usesMap(value) || references(value, local))
+			return null;
+		return value;
+	}
+
+	private int getTest(Expression condition, Expression key, IVariableBinding local) {
+		condition= getUnparenthesized(condition);
+		if (condition instanceof InfixExpression) {
+			InfixExpression infix= (InfixExpression) condition;
+			InfixExpression.Operator operator= infix.getOperator();
+			if ((operator == InfixExpression.Operator.EQUALS || operator == InfixExpression.Operator.NOT_EQUALS) && !infix.hasExtendedOperands()) {
+				Expression left= getUnparenthesized(infix.getLeftOperand());
+				Expression right= getUnparenthesized(infix.getRightOperand());
+				Expression tested= left instanceof NullLiteral ? right : right instanceof NullLiteral ? left : null;
+				if (tested != null && isOldValue(tested, key, local))
+					return operator == InfixExpression.Operator.EQUALS ? ABSENT : PRESENT;
+			} else if (operator == InfixExpression.Operator.CONDITIONAL_AND && getTest(infix.getLeftOperand(), key, local) == PRESENT) {
+				return PRESENT_AND;
+			}
+		} else if (condition instanceof PrefixExpression) {
+			PrefixExpression prefix= (PrefixExpression) condition;
+			if (prefix.getOperator() == PrefixExpression.Operator.NOT && isContainsKey(getUnparenthesized(prefix.getOperand()), key))
+				return ABSENT;
+		} else if (isContainsKey(condition, key)) {
+			return PRESENT;
+		}
+		return OTHER;
+	}
+
+	/**
+	 * Returns the declaration <code>V v= map.get(k);</code> if it directly precedes the statement
+	 * at the given index.
+	 */
+	private VariableDeclarationFragment getOldValueDeclaration(Block block, int index, Expression key) {
+		if (index < 1)
+			return null;
+		Object previous= block.statements().get(index - 1);
+		if (!(previous instanceof VariableDeclarationStatement))
+			return null;
+		List<VariableDeclarationFragment> fragments= ((VariableDeclarationStatement) previous).fragments();
+		if (fragments.size() != 1)
+			return null;
+		VariableDeclarationFragment fragment= fragments.get(0);
+		if (fragment.getExtraDimensions() != 0 || fragment.getInitializer() == null || fragment.resolveBinding() == null)
+			return null;
+		MethodInvocation invocation= getOldValueInvocation(fragment);
+		if (invocation == null || !matches(key, (Expression) invocation.arguments().get(0)))
+			return null;
+		return fragment;
+	}
+
+	private MethodInvocation getOldValueInvocation(VariableDeclarationFragment fragment) {
+		Expression initializer= getUnparenthesized(fragment.getInitializer());
+		if (initializer instanceof CastExpression)
+			initializer= getUnparenthesized(((CastExpression) initializer).getExpression());
+		return isMapInvocation(initializer, GET, 1) ? (MethodInvocation) initializer : null;
+	}
+
+	private static Assignment getInitialization(Statement statement, IVariableBinding local) {
+		if (!(statement instanceof ExpressionStatement) || !(((ExpressionStatement) statement).getExpression() instanceof Assignment))
+			return null;
+		Assignment assignment= (Assignment) ((ExpressionStatement) statement).getExpression();
+		if (assignment.getOperator() != Assignment.Operator.ASSIGN || !(assignment.getLeftHandSide() instanceof SimpleName)
+				|| !isVariable(assignment.getLeftHandSide(), local))
+			return null;
+		return assignment;
+	}
+
+	/**
+	 * Returns the <code>put(k, v)</code> or <code>remove(k)</code> invocation on the field that
+	 * the statement consists of.
+	 */
+	private MethodInvocation getAction(Statement statement) {
+		if (!(statement instanceof ExpressionStatement))
+			return null;
+		Expression expression= ((ExpressionStatement) statement).getExpression();
+		if (isMapInvocation(expression, PUT, 2) || isMapInvocation(expression, REMOVE, 1))
+			return (MethodInvocation) expression;
+		return null;
+	}
+
+	private static boolean isPut(MethodInvocation invocation) {
+		return PUT.equals(invocation.getName().getIdentifier());
+	}
+
+	private boolean isOldValue(Expression expression, Expression key, IVariableBinding local) {
+		expression= getUnparenthesized(expression);
+		if (local != null && isVariable(expression, local))
+			return true;
+		return isMapInvocation(expression, GET, 1) && matches(key, (Expression) ((MethodInvocation) expression).arguments().get(0));
+	}
+
+	private boolean isContainsKey(Expression expression, Expression key) {
+		return isMapInvocation(expression, CONTAINS_KEY, 1) && matches(key, (Expression) ((MethodInvocation) expression).arguments().get(0));
+	}
+
+	private boolean isMapInvocation(Expression expression, String name, int arguments) {
+		if (!(expression instanceof MethodInvocation))
+			return false;
+		MethodInvocation invocation= (MethodInvocation) expression;
+		return isMapInvocation(invocation) && name.equals(invocation.getName().getIdentifier()) && invocation.arguments().size() == arguments;
+	}
+
+	private boolean isMapInvocation(MethodInvocation invocation) {
+		return invocation.getExpression() != null && isField(invocation.getExpression());
+	}
+
+	private boolean isField(Expression expression) {
+		IBinding binding= null;
+		expression= getUnparenthesized(expression);
+		if (expression instanceof Name)
+			binding= ((Name) expression).resolveBinding();
+		else if (expression instanceof FieldAccess)
+			binding= ((FieldAccess) expression).resolveFieldBinding();
+		else if (expression instanceof SuperFieldAccess)
+			binding= ((SuperFieldAccess) expression).resolveFieldBinding();
+		return binding instanceof IVariableBinding && Bindings.equals(fFieldBinding, ((IVariableBinding) binding).getVariableDeclaration());
+	}
+
+	private static boolean matches(Expression key, Expression other) {
+		return getUnparenthesized(key).subtreeMatch(new JdtASTMatcher(), getUnparenthesized(other));
+	}
+
+	/**
+	 * Returns whether evaluating the expression once instead of several times cannot be observed.
+	 */
+	private boolean isPure(Expression expression) {
+		final boolean[] result= new boolean[] { true };
+		expression.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(Assignment node) {
+				result[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(PrefixExpression node) {
+				if (node.getOperator() == PrefixExpression.Operator.INCREMENT || node.getOperator() == PrefixExpression.Operator.DECREMENT)
+					result[0]= false;
+				return true;
+			}
+			@Override
+			public boolean visit(PostfixExpression node) {
+				result[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(ClassInstanceCreation node) {
+				result[0]= false;
+				return false;
+			}
+		});
+		if (!result[0])
+			return false;
+		SideEffectsFinder.Effects effects= fSideEffectsFinder.getEffects(expression);
+		return !effects.hasWrites() && effects.getUnknownCalls().isEmpty();
+	}
+
+	private boolean usesMap(ASTNode node) {
+		if (node == null)
+			return false;
+		final boolean[] result= new boolean[1];
+		node.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SimpleName name) {
+				IBinding binding= name.resolveBinding();
+				if (binding instanceof IVariableBinding && Bindings.equals(fFieldBinding, ((IVariableBinding) binding).getVariableDeclaration()))
+					result[0]= true;
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	private static boolean references(ASTNode node, final IVariableBinding variable) {
+		if (node == null || variable == null)
+			return false;
+		final boolean[] result= new boolean[1];
+		node.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SimpleName name) {
+				if (variable.isEqualTo(name.resolveBinding()))
+					result[0]= true;
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	private static boolean isReferencedAfter(Block block, int index, IVariableBinding variable) {
+		List<Statement> statements= block.statements();
+		for (int i= index + 1; i < statements.size(); i++) {
+			if (references(statements.get(i), variable))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean isVariable(Expression expression, IVariableBinding variable) {
+		expression= getUnparenthesized(expression);
+		return variable != null && expression instanceof SimpleName && variable.isEqualTo(((SimpleName) expression).resolveBinding());
+	}
+
+	private static List<Statement> getStatements(Statement statement) {
+		if (statement instanceof Block)
+			return ((Block) statement).statements();
+		return Collections.singletonList(statement);
+	}
+
+	private static Statement getSingleStatement(Statement statement) {
+		List<Statement> statements= getStatements(statement);
+		return statements.size() == 1 ? statements.get(0) : null;
+	}
+
+	private static Set<String> getUsedNames(ASTNode node) {
+		ASTNode scope= ASTNodes.getParent(node, BodyDeclaration.class);
+		final Set<String> result= new HashSet<String>();
+		(scope != null ? scope : node).accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SimpleName name) {
+				result.add(name.getIdentifier());
+				return false;
+			}
+		});
+		return result;
+	}
+
+	private static String getUniqueName(String name, Set<String> usedNames) {
+		String result= name;
+		for (int i= 2; usedNames.contains(result); i++)
+			result= name + i;
+		usedNames.add(result);
+		return result;
+	}
+
+	private static Expression getUnparenthesized(Expression expression) {
+		while (expression instanceof ParenthesizedExpression)
+			expression= ((ParenthesizedExpression) expression).getExpression();
+		return expression;
+	}
+
+	private String getSource(ASTNode node) {
+		return fSource.substring(node.getStartPosition(), node.getStartPosition() + node.getLength());
+	}
+
+	private String getSource(ASTNode node, Map<ASTNode, String> replacements) {
+		return getSource(node.getStartPosition(), node.getStartPosition() + node.getLength(), replacements);
+	}
+
+	/**
+	 * Returns the source between the given positions with the given nodes replaced. Nodes inside
+	 * of a replaced node are ignored.
+	 */
+	private String getSource(int start, int end, Map<ASTNode, String> replacements) {
+		List<ASTNode> nodes= new ArrayList<ASTNode>();
+		for (ASTNode node : replacements.keySet()) {
+			if (start <= node.getStartPosition() && node.getStartPosition() + node.getLength() <= end)
+				nodes.add(node);
+		}
+		Collections.sort(nodes, new Comparator<ASTNode>() {
+			public int compare(ASTNode first, ASTNode second) {
+				if (first.getStartPosition() != second.getStartPosition())
+					return first.getStartPosition() - second.getStartPosition();
+				return second.getLength() - first.getLength();
+			}
+		});
+		StringBuffer buffer= new StringBuffer();
+		int position= start;
+		for (ASTNode node : nodes) {
+			if (node.getStartPosition() < position)
+				continue;
+			buffer.append(fSource.substring(position, node.getStartPosition())).append(replacements.get(node));
+			position= node.getStartPosition() + node.getLength();
+		}
+		buffer.append(fSource.substring(position, end));
+		return buffer.toString();
+	}
+
+	/**
+	 * Returns the source of an operand of a conditional expression.
+	 */
+	private String getOperandSource(Expression expression, Map<ASTNode, String> replacements) {
+		String source= getSource(expression, replacements);
+		if (expression instanceof ConditionalExpression || expression instanceof Assignment)
+			return '(' + source + ')';
+		return source;
+	}
+
+	private TextEditGroup createGroupDescription(String name) {
+		TextEditGroup result= new TextEditGroup(name);
+		fGroupDescriptions.add(result);
+		return result;
+	}
+
+	/**
+	 * Checks whether code can be moved into the function that is passed to the map, and collects
+	 * the replacements for the accesses to the old value. The function must not access the map,
+	 * leave the statement, throw checked exceptions or capture locals that are not effectively
+	 * final.
+	 */
+	private class LambdaBodyAnalyzer extends ASTVisitor {
+
+		private final Expression fKey;
+		private final IVariableBinding fOldValue;
+		private final String fValueName;
+		private final boolean fReplaceMapReads;
+		private final Map<ASTNode, String> fReplacements;
+		private ASTNode[] fMoved;
+		private boolean fUsesOldValue;
+		private boolean fValid;
+
+		/**
+		 * @param key the key of the map operation
+		 * @param oldValue the local that holds the old value, or <code>null</code>
+		 * @param valueName the name of the old value in the function, or <code>null</code> if the
+		 *            function has no access to it
+		 * @param replaceMapReads <code>true</code> if <code>map.get(key)</code> and
+		 *            <code>map.containsKey(key)</code> refer to the old value
+		 * @param replacements receives the replacements
+		 */
+		public LambdaBodyAnalyzer(Expression key, IVariableBinding oldValue, String valueName, boolean replaceMapReads, Map<ASTNode, String> replacements) {
+			fKey= key;
+			fOldValue= oldValue;
+			fValueName= valueName;
+			fReplaceMapReads= replaceMapReads;
+			fReplacements= replacements;
+			fValid= true;
+		}
+
+		public void analyze(ASTNode[] moved) {
+			fMoved= moved;
+			for (int i= 0; i < moved.length; i++) {
+				moved[i].accept(this);
+				// ConcurrentHashMap does not allow the function to update the map
+				if (fSideEffectsFinder.getEffects(moved[i]).writes(fFieldBinding))
+					fValid= false;
+			}
+		}
+
+		public boolean isValid() {
+			return fValid;
+		}
+
+		public boolean usesOldValue() {
+			return fUsesOldValue;
+		}
+
+		@Override
+		public boolean visit(MethodInvocation node) {
+			if (isMapInvocation(node)) {
+				String name= node.getName().getIdentifier();
+				if (fReplaceMapReads && node.arguments().size() == 1 && matches(fKey, (Expression) node.arguments().get(0))) {
+					if (GET.equals(name)) {
+						replaceOldValue(node, fValueName);
+						return false;
+					} else if (CONTAINS_KEY.equals(name)) {
+						replaceOldValue(node, getTestSource(node, " != null")); //$NON-NLS-1$
+						return false;
+					}
+				}
+				fValid= false;
+				return false;
+			}
+			checkExceptions(node, node.resolveMethodBinding());
+			return true;
+		}
+
+		@Override
+		public boolean visit(SuperMethodInvocation node) {
+			checkExceptions(node, node.resolveMethodBinding());
+			return true;
+		}
+
+		@Override
+		public boolean visit(ClassInstanceCreation node) {
+			checkExceptions(node, node.resolveConstructorBinding());
+			return true;
+		}
+
+		@Override
+		public boolean visit(ThrowStatement node) {
+			ITypeBinding exception= node.getExpression().resolveTypeBinding();
+			if (exception == null || isChecked(exception) && !isHandled(node))
+				fValid= false;
+			return true;
+		}
+
+		@Override
+		public boolean visit(PrefixExpression node) {
+			PrefixExpression.Operator operator= node.getOperator();
+			if (operator == PrefixExpression.Operator.NOT && fReplaceMapReads && isContainsKey(getUnparenthesized(node.getOperand()), fKey)) {
+				replaceOldValue(node, getTestSource(node, " == null")); //$NON-NLS-1$
+				return false;
+			}
+			if (operator == PrefixExpression.Operator.INCREMENT || operator == PrefixExpression.Operator.DECREMENT)
+				checkWrite(node.getOperand());
+			return true;
+		}
+
+		@Override
+		public boolean visit(PostfixExpression node) {
+			checkWrite(node.getOperand());
+			return true;
+		}
+
+		@Override
+		public boolean visit(Assignment node) {
+			checkWrite(node.getLeftHandSide());
+			return true;
+		}
+
+		@Override
+		public boolean visit(SimpleName node) {
+			if (fReplacements.containsKey(node))
+				return false;
+			IBinding binding= node.resolveBinding();
+			if (!(binding instanceof IVariableBinding))
+				return false;
+			IVariableBinding variable= (IVariableBinding) binding;
+			if (variable.isField()) {
+				if (Bindings.equals(fFieldBinding, variable.getVariableDeclaration()))
+					fValid= false;
+			} else if (fOldValue != null && variable.isEqualTo(fOldValue)) {
+				if (fValueName == null)
+					fValid= false;
+				else if (!fValueName.equals(node.getIdentifier()))
+					replaceOldValue(node, fValueName);
+				else
+					fUsesOldValue= true;
+			} else if (!isMoved(fRoot.findDeclaringNode(variable)) && !isEffectivelyFinal(variable, node)) {
+				// lambda expressions only capture effectively final locals
+				fValid= false;
+			}
+			return false;
+		}
+
+		@Override
+		public boolean visit(ReturnStatement node) {
+			if (!isMoved(ASTNodes.getParent(node, AnonymousClassDeclaration.class)))
+				fValid= false;
+			return true;
+		}
+
+		@Override
+		public boolean visit(BreakStatement node) {
+			if (node.getLabel() != null || !isMoved(getJumpTarget(node, true)))
+				fValid= false;
+			return false;
+		}
+
+		@Override
+		public boolean visit(ContinueStatement node) {
+			if (node.getLabel() != null || !isMoved(getJumpTarget(node, false)))
+				fValid= false;
+			return false;
+		}
+
+		private void replaceOldValue(ASTNode node, String replacement) {
+			fReplacements.put(node, replacement);
+			fUsesOldValue= true;
+		}
+
+		private String getTestSource(Expression node, String test) {
+			String result= fValueName + test;
+			ASTNode parent= node.getParent();
+			for (int i= 0; i < fMoved.length; i++) {
+				if (fMoved[i] == node)
+					return result;
+			}
+			if (parent instanceof ParenthesizedExpression)
+				return result;
+			if (parent instanceof InfixExpression) {
+				InfixExpression.Operator operator= ((InfixExpression) parent).getOperator();
+				if (operator == InfixExpression.Operator.CONDITIONAL_AND || operator == InfixExpression.Operator.CONDITIONAL_OR)
+					return result;
+			}
+			return '(' + result + ')';
+		}
+
+		private void checkWrite(Expression target) {
+			target= getUnparenthesized(target);
+			if (!(target instanceof SimpleName))
+				return;
+			IBinding binding= ((SimpleName) target).resolveBinding();
+			if (!(binding instanceof IVariableBinding) || ((IVariableBinding) binding).isField())
+				return;
+			IVariableBinding variable= (IVariableBinding) binding;
+			if (fOldValue != null && variable.isEqualTo(fOldValue))
+				return;
+			// the function cannot assign locals of the enclosing method
+			if (!isMoved(fRoot.findDeclaringNode(variable)))
+				fValid= false;
+		}
+
+		private void checkExceptions(ASTNode node, IMethodBinding method) {
+			if (method == null) {
+				fValid= false;
+				return;
+			}
+			ITypeBinding[] exceptions= method.getExceptionTypes();
+			for (int i= 0; i < exceptions.length; i++) {
+				if (isChecked(exceptions[i]) && !isHandled(node))
+					fValid= false;
+			}
+		}
+
+		private boolean isChecked(ITypeBinding exception) {
+			return Bindings.findTypeInHierarchy(exception, RUNTIME_EXCEPTION) == null && Bindings.findTypeInHierarchy(exception, ERROR) == null;
+		}
+
+		/**
+		 * Returns whether a moved <code>try</code> statement or anonymous class encloses the node.
+		 * The catch clauses are not compared with the exception.
+		 */
+		private boolean isHandled(ASTNode node) {
+			for (ASTNode parent= node.getParent(); parent != null && isMoved(parent); parent= parent.getParent()) {
+				if (parent instanceof TryStatement || parent instanceof AnonymousClassDeclaration)
+					return true;
+			}
+			return false;
+		}
+
+		private boolean isMoved(ASTNode node) {
+			if (node == null)
+				return false;
+			for (int i= 0; i < fMoved.length; i++) {
+				int start= fMoved[i].getStartPosition();
+				if (start <= node.getStartPosition() && node.getStartPosition() + node.getLength() <= start + fMoved[i].getLength())
+					return true;
+			}
+			return false;
+		}
+
+		private ASTNode getJumpTarget(ASTNode node, boolean includeSwitch) {
+			for (ASTNode parent= node.getParent(); parent != null; parent= parent.getParent()) {
+				if (parent instanceof ForStatement || parent instanceof EnhancedForStatement || parent instanceof WhileStatement
+						|| parent instanceof DoStatement || includeSwitch && parent instanceof SwitchStatement)
+					return parent;
+				if (parent instanceof BodyDeclaration)
+					return null;
+			}
+			return null;
+		}
+
+		private boolean isEffectivelyFinal(IVariableBinding local, ASTNode reference) {
+			if (Modifier.isFinal(local.getModifiers()))
+				return true;
+			ASTNode scope= ASTNodes.getParent(reference, BodyDeclaration.class);
+			ASTNode declaration= scope != null ? ASTNodes.findDeclaration(local, scope) : null;
+			if (declaration == null)
+				return true; // declared in an enclosing method, so it must be final already
+			final IVariableBinding variable= local;
+			final int[] writes= new int[1];
+			scope.accept(new ASTVisitor() {
+				@Override
+				public boolean visit(Assignment node) {
+					if (isVariable(node.getLeftHandSide(), variable))
+						writes[0]++;
+					return true;
+				}
+				@Override
+				public boolean visit(PrefixExpression node) {
+					PrefixExpression.Operator operator= node.getOperator();
+					if ((operator == PrefixExpression.Operator.INCREMENT || operator == PrefixExpression.Operator.DECREMENT)
+							&& isVariable(node.getOperand(), variable))
+						writes[0]++;
+					return true;
+				}
+				@Override
+				public boolean visit(PostfixExpression node) {
+					if (isVariable(node.getOperand(), variable))
+						writes[0]++;
+					return true;
+				}
+			});
+			boolean initialized= !(declaration instanceof VariableDeclarationFragment) || ((VariableDeclarationFragment) declaration).getInitializer() != null;
+			return initialized ? writes[0] == 0 : writes[0] <= 1;
+		}
+	}
+}
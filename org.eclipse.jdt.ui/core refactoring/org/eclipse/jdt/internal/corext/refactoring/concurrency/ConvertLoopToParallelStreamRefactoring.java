@@ -0,0 +1,766 @@
+package org.eclipse.jdt.internal.corext.refactoring.concurrency;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import org.eclipse.core.resources.IFile;
+
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.edits.TextEditGroup;
+
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.Refactoring;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.TextChange;
+import org.eclipse.ltk.core.refactoring.participants.ResourceChangeChecker;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.ArrayAccess;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ContinueStatement;
+import org.eclipse.jdt.core.dom.EnhancedForStatement;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.ExpressionStatement;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.LabeledStatement;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.ThisExpression;
+import org.eclipse.jdt.core.dom.VariableDeclarationExpression;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ImportRewrite;
+
+import org.eclipse.jdt.internal.corext.codemanipulation.StubUtility;
+import org.eclipse.jdt.internal.corext.dom.ASTNodes;
+import org.eclipse.jdt.internal.corext.dom.Bindings;
+import org.eclipse.jdt.internal.corext.dom.LocalVariableIndex;
+import org.eclipse.jdt.internal.corext.dom.NodeFinder;
+import org.eclipse.jdt.internal.corext.dom.Selection;
+import org.eclipse.jdt.internal.corext.refactoring.Checks;
+import org.eclipse.jdt.internal.corext.refactoring.base.JavaStatusContext;
+import org.eclipse.jdt.internal.corext.refactoring.changes.DynamicValidationStateChange;
+import org.eclipse.jdt.internal.corext.refactoring.changes.TextChangeCompatibility;
+import org.eclipse.jdt.internal.corext.refactoring.code.flow.FlowContext;
+import org.eclipse.jdt.internal.corext.refactoring.code.flow.FlowInfo;
+import org.eclipse.jdt.internal.corext.refactoring.code.flow.InOutFlowAnalyzer;
+import org.eclipse.jdt.internal.corext.refactoring.util.RefactoringASTParser;
+import org.eclipse.jdt.internal.corext.refactoring.util.ResourceUtil;
+import org.eclipse.jdt.internal.corext.refactoring.util.TextChangeManager;
+import org.eclipse.jdt.internal.corext.util.JavaModelUtil;
+import org.eclipse.jdt.internal.corext.util.Messages;
+
+/**
+ * Converts a sequential <code>for</code> or enhanced <code>for</code> loop into a parallel stream:
+ * <code>IntStream.range(a, b).parallel()</code> for indexed loops,
+ * <code>Arrays.stream(array).parallel()</code> for arrays and
+ * <code>collection.parallelStream()</code> for collections.
+ * <p>
+ * The loop body becomes the lambda of <code>forEach</code>. A loop whose only write to a local
+ * declared outside of the loop is a sum, count, minimum or maximum is converted into the matching
+ * reduction of the stream instead.
+ * </p>
+ * <p>
+ * The iterations must be independent. Writes to locals are found with the flow analysis used by
+ * Extract Method, the other writes are found by {@link AccessAnalyzerForParallelLoop}. Every write
+ * that blocks the conversion is reported as an error.
+ * </p>
+ */
+public class ConvertLoopToParallelStreamRefactoring extends Refactoring {
+
+	private static final String NO_NAME= ConcurrencyRefactorings.ConcurrencyRefactorings_empty_string;
+	private static final String INT_STREAM= "java.util.stream.IntStream"; //$NON-NLS-1$
+	private static final String LONG_STREAM= "java.util.stream.LongStream"; //$NON-NLS-1$
+	private static final String ARRAYS= "java.util.Arrays"; //$NON-NLS-1$
+	private static final String COLLECTION= "java.util.Collection"; //$NON-NLS-1$
+	private static final String VERSION_1_8= "1.8"; //$NON-NLS-1$
+
+	// kinds of stream elements and accumulators
+	private static final int OBJECT= 0;
+	private static final int INT= 1;
+	private static final int LONG= 2;
+	private static final int DOUBLE= 3;
+	private static final String[] MAP_METHODS= { null, "mapToInt", "mapToLong", "mapToDouble" }; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+	// reductions
+	private static final int NO_REDUCTION= 0;
+	private static final int SUM= 1;
+	private static final int COUNT= 2;
+	private static final int MAX= 3;
+	private static final int MIN= 4;
+
+	private final ICompilationUnit fCUnit;
+	private final int fSelectionStart;
+	private final int fSelectionLength;
+	private CompilationUnit fRoot;
+	private String fSource;
+	private Statement fLoop;
+	private Statement fReplacedStatement;
+	private String fLabel;
+	private BodyDeclaration fEnclosingBodyDeclaration;
+	private TextChangeManager fChangeManager;
+	private boolean fForEachOrdered;
+
+	// indexed loops
+	private IVariableBinding fIndexBinding;
+	private Expression fLowerBound;
+	private Expression fUpperBound;
+	private boolean fInclusive;
+
+	// enhanced for loops
+	private IVariableBinding fElementBinding;
+	private Expression fIterable;
+	private boolean fArray;
+
+	private int fElementKind;
+
+	// reduction
+	private int fReduction;
+	private IVariableBinding fAccumulator;
+	private int fAccumulatorKind;
+	private Expression fReducedValue;
+	private Expression fFilter;
+	private boolean fSubtract;
+
+	public ConvertLoopToParallelStreamRefactoring(ICompilationUnit unit, int selectionStart, int selectionLength) {
+		fChangeManager= new TextChangeManager();
+		fCUnit= unit;
+		fSelectionStart= selectionStart;
+		fSelectionLength= selectionLength;
+	}
+
+	@Override
+	public RefactoringStatus checkInitialConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+		RefactoringStatus result= new RefactoringStatus();
+		result.merge(Checks.checkAvailability(fCUnit));
+
+		if (result.hasFatalError())
+			return result;
+
+		fRoot= new RefactoringASTParser(AST.JLS3).parse(fCUnit, true, pm);
+		fSource= fCUnit.getSource();
+		fLoop= findLoop(NodeFinder.perform(fRoot, fSelectionStart, fSelectionLength));
+		if (fLoop == null) {
+			result.addFatalError(ConcurrencyRefactorings.ConvertLoopToParallelStream_no_loop);
+			return result;
+		}
+		if (fLoop.getParent() instanceof LabeledStatement) {
+			fReplacedStatement= (Statement) fLoop.getParent();
+			fLabel= ((LabeledStatement) fReplacedStatement).getLabel().getIdentifier();
+		} else {
+			fReplacedStatement= fLoop;
+		}
+		fEnclosingBodyDeclaration= (BodyDeclaration) ASTNodes.getParent(fLoop, BodyDeclaration.class);
+		if (fEnclosingBodyDeclaration == null) {
+			result.addFatalError(ConcurrencyRefactorings.ConvertLoopToParallelStream_analyze_error);
+			return result;
+		}
+		checkCompileErrors(result);
+		if (result.hasError())
+			return result;
+
+		if (fLoop instanceof ForStatement)
+			result.merge(initializeIndexedLoop((ForStatement) fLoop));
+		else
+			result.merge(initializeEnhancedLoop((EnhancedForStatement) fLoop));
+		if (result.hasFatalError())
+			return result;
+
+		IJavaProject project= fCUnit.getJavaProject();
+		if (project.findType(INT_STREAM) == null) {
+			result.addFatalError(ConcurrencyRefactorings.ConvertLoopToParallelStream_missing_type);
+			return result;
+		}
+		if (JavaModelUtil.isVersionLessThan(project.getOption(JavaCore.COMPILER_SOURCE, true), VERSION_1_8))
+			result.addFatalError(ConcurrencyRefactorings.ConvertLoopToParallelStream_lambda_error);
+		return result;
+	}
+
+	private static Statement findLoop(ASTNode node) {
+		for (; node != null && !(node instanceof BodyDeclaration); node= node.getParent()) {
+			if (node instanceof ForStatement || node instanceof EnhancedForStatement)
+				return (Statement) node;
+			if (node instanceof LabeledStatement) {
+				Statement body= ((LabeledStatement) node).getBody();
+				if (body instanceof ForStatement || body instanceof EnhancedForStatement)
+					return body;
+			}
+		}
+		return null;
+	}
+
+	private RefactoringStatus initializeIndexedLoop(ForStatement loop) {
+		RefactoringStatus result= new RefactoringStatus();
+		List<Expression> initializers= loop.initializers();
+		List<Expression> updaters= loop.updaters();
+		if (initializers.size() != 1 || updaters.size() != 1 || loop.getExpression() == null
+				|| !(initializers.get(0) instanceof VariableDeclarationExpression)) {
+			result.addFatalError(ConcurrencyRefactorings.ConvertLoopToParallelStream_unsupported_for, JavaStatusContext.create(fCUnit, loop));
+			return result;
+		}
+		List<VariableDeclarationFragment> fragments= ((VariableDeclarationExpression) initializers.get(0)).fragments();
+		VariableDeclarationFragment fragment= fragments.get(0);
+		fIndexBinding= fragment.resolveBinding();
+		if (fragments.size() != 1 || fragment.getInitializer() == null || fIndexBinding == null) {
+			result.addFatalError(ConcurrencyRefactorings.ConvertLoopToParallelStream_unsupported_for, JavaStatusContext.create(fCUnit, loop));
+			return result;
+		}
+		fElementKind= getKind(fIndexBinding.getType());
+		fLowerBound= fragment.getInitializer();
+
+		Expression condition= getUnparenthesized(loop.getExpression());
+		if (condition instanceof InfixExpression && !((InfixExpression) condition).hasExtendedOperands()) {
+			InfixExpression infix= (InfixExpression) condition;
+			InfixExpression.Operator operator= infix.getOperator();
+			if ((operator == InfixExpression.Operator.LESS || operator == InfixExpression.Operator.LESS_EQUALS)
+					&& isVariable(infix.getLeftOperand(), fIndexBinding)) {
+				fUpperBound= infix.getRightOperand();
+			} else if ((operator == InfixExpression.Operator.GREATER || operator == InfixExpression.Operator.GREATER_EQUALS)
+					&& isVariable(infix.getRightOperand(), fIndexBinding)) {
+				fUpperBound= infix.getLeftOperand();
+			}
+			fInclusive= operator == InfixExpression.Operator.LESS_EQUALS || operator == InfixExpression.Operator.GREATER_EQUALS;
+		}
+		if ((fElementKind != INT && fElementKind != LONG) || fUpperBound == null || references(fUpperBound, fIndexBinding)
+				|| !isIncrement(updaters.get(0))) {
+			result.addFatalError(ConcurrencyRefactorings.ConvertLoopToParallelStream_unsupported_for, JavaStatusContext.create(fCUnit, loop));
+			return result;
+		}
+		ITypeBinding boundType= fUpperBound.resolveTypeBinding();
+		if (boundType == null || !boundType.isAssignmentCompatible(fIndexBinding.getType())) {
+			result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertLoopToParallelStream_unsupported_bound,
+					new String[] { getSource(fUpperBound), fIndexBinding.getName() }), JavaStatusContext.create(fCUnit, fUpperBound));
+		}
+		return result;
+	}
+
+	private boolean isIncrement(Expression updater) {
+		if (updater instanceof PostfixExpression) {
+			PostfixExpression postfix= (PostfixExpression) updater;
+			return postfix.getOperator() == PostfixExpression.Operator.INCREMENT && isVariable(postfix.getOperand(), fIndexBinding);
+		}
+		if (updater instanceof PrefixExpression) {
+			PrefixExpression prefix= (PrefixExpression) updater;
+			return prefix.getOperator() == PrefixExpression.Operator.INCREMENT && isVariable(prefix.getOperand(), fIndexBinding);
+		}
+		if (updater instanceof Assignment) {
+			Assignment assignment= (Assignment) updater;
+			Object value= assignment.getRightHandSide().resolveConstantExpressionValue();
+			return assignment.getOperator() == Assignment.Operator.PLUS_ASSIGN && isVariable(assignment.getLeftHandSide(), fIndexBinding)
+					&& (value instanceof Integer || value instanceof Long) && ((Number) value).longValue() == 1;
+		}
+		return false;
+	}
+
+	private RefactoringStatus initializeEnhancedLoop(EnhancedForStatement loop) {
+		RefactoringStatus result= new RefactoringStatus();
+		fElementBinding= loop.getParameter().resolveBinding();
+		fIterable= loop.getExpression();
+		ITypeBinding type= fIterable.resolveTypeBinding();
+		if (fElementBinding == null || type == null) {
+			result.addFatalError(ConcurrencyRefactorings.ConvertLoopToParallelStream_analyze_error);
+			return result;
+		}
+		if (type.isArray()) {
+			fArray= true;
+			ITypeBinding componentType= type.getComponentType();
+			fElementKind= getKind(componentType);
+			if (fElementKind < 0) {
+				result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertLoopToParallelStream_unsupported_array,
+						componentType.getName()), JavaStatusContext.create(fCUnit, fIterable));
+			}
+		} else if (Bindings.findTypeInHierarchy(type, COLLECTION) != null) {
+			fElementKind= OBJECT;
+		} else {
+			result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertLoopToParallelStream_unsupported_iterable,
+					getSource(fIterable)), JavaStatusContext.create(fCUnit, fIterable));
+		}
+		return result;
+	}
+
+	@Override
+	public RefactoringStatus checkFinalConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+		RefactoringStatus result= new RefactoringStatus();
+		fChangeManager.clear();
+		pm.beginTask(NO_NAME, 4);
+		pm.setTaskName(ConcurrencyRefactorings.ConvertLoopToParallelStream_check_preconditions);
+
+		AccessAnalyzerForParallelLoop analyzer= new AccessAnalyzerForParallelLoop(fCUnit, fRoot, fSource, fLoop, fLabel, fIndexBinding, fElementBinding);
+		result.merge(analyzer.analyze());
+		pm.worked(1);
+		result.merge(checkLocals());
+		pm.worked(1);
+		if (result.hasError())
+			return result;
+
+		createEdits(analyzer.getContinueStatements());
+		pm.worked(1);
+
+		IFile[] filesToBeModified= ResourceUtil.getFiles(fChangeManager.getAllCompilationUnits());
+		result.merge(Checks.validateModifiesFiles(filesToBeModified, getValidationContext()));
+		if (result.hasFatalError())
+			return result;
+		ResourceChangeChecker.checkFilesToBeChanged(filesToBeModified, new SubProgressMonitor(pm, 1));
+		return result;
+	}
+
+	/**
+	 * Checks the locals declared outside of the loop: the body must not write them, except for a
+	 * single reduction, and it can only read them if they are effectively final.
+	 */
+	private RefactoringStatus checkLocals() {
+		RefactoringStatus result= new RefactoringStatus();
+		Statement body= getBody();
+		Selection bodySelection= Selection.createFromStartLength(body.getStartPosition(), body.getLength());
+		int maxVariableId= LocalVariableIndex.perform(fEnclosingBodyDeclaration);
+
+		FlowContext writeContext= new FlowContext(0, maxVariableId + 1);
+		writeContext.setConsiderAccessMode(true);
+		writeContext.setComputeMode(FlowContext.RETURN_VALUES);
+		FlowInfo writeInfo= new InOutFlowAnalyzer(writeContext).perform(new ASTNode[] { body });
+		IVariableBinding[] writes= writeInfo.get(writeContext, FlowInfo.WRITE | FlowInfo.WRITE_POTENTIAL | FlowInfo.UNKNOWN);
+		List<IVariableBinding> outerWrites= new ArrayList<IVariableBinding>();
+		for (int i= 0; i < writes.length; i++) {
+			ASTNode declaration= ASTNodes.findDeclaration(writes[i], fEnclosingBodyDeclaration);
+			if (declaration == null || !bodySelection.covers(declaration))
+				outerWrites.add(writes[i]);
+		}
+		fReduction= NO_REDUCTION;
+		fAccumulator= null;
+		if (outerWrites.size() == 1 && !outerWrites.get(0).isEqualTo(fIndexBinding) && initializeReduction(outerWrites.get(0))) {
+			if (fReduction == SUM && fAccumulatorKind == DOUBLE) {
+				result.addWarning(Messages.format(ConcurrencyRefactorings.ConvertLoopToParallelStream_floating_point_warning,
+						fAccumulator.getName()), JavaStatusContext.create(fCUnit, body));
+			}
+		} else {
+			for (int i= 0; i < outerWrites.size(); i++) {
+				IVariableBinding write= outerWrites.get(i);
+				ASTNode node= findWrite(body, write);
+				String message= write.isEqualTo(fIndexBinding) ? ConcurrencyRefactorings.ConvertLoopToParallelStream_index_write
+						: ConcurrencyRefactorings.ConvertLoopToParallelStream_local_write;
+				result.addError(Messages.format(message, write.getName()), JavaStatusContext.create(fCUnit, node != null ? node : body));
+			}
+		}
+
+		FlowContext readContext= new FlowContext(0, maxVariableId + 1);
+		readContext.setConsiderAccessMode(true);
+		readContext.setComputeMode(FlowContext.ARGUMENTS);
+		FlowInfo readInfo= new InOutFlowAnalyzer(readContext).perform(new ASTNode[] { body });
+		IVariableBinding[] reads= readInfo.get(readContext, FlowInfo.READ | FlowInfo.READ_POTENTIAL | FlowInfo.UNKNOWN);
+		for (int i= 0; i < reads.length; i++) {
+			IVariableBinding read= reads[i];
+			if (read.isEqualTo(fIndexBinding) || read.isEqualTo(fElementBinding) || read.isEqualTo(fAccumulator) || outerWrites.contains(read))
+				continue;
+			// the lambda can only capture effectively final locals
+			if (!isEffectivelyFinal(read)) {
+				result.addError(Messages.format(ConcurrencyRefactorings.ConvertLoopToParallelStream_captured_local,
+						read.getName()), JavaStatusContext.create(fCUnit, body));
+			}
+		}
+		return result;
+	}
+
+	private boolean initializeReduction(IVariableBinding accumulator) {
+		Statement statement= getSingleStatement(getBody());
+		Expression filter= null;
+		if (statement instanceof IfStatement) {
+			IfStatement ifStatement= (IfStatement) statement;
+			if (ifStatement.getElseStatement() != null)
+				return false;
+			filter= ifStatement.getExpression();
+			statement= getSingleStatement(ifStatement.getThenStatement());
+		}
+		if (!(statement instanceof ExpressionStatement))
+			return false;
+		Expression expression= ((ExpressionStatement) statement).getExpression();
+		int reduction= NO_REDUCTION;
+		Expression value= null;
+		boolean subtract= false;
+		if (expression instanceof PostfixExpression) {
+			PostfixExpression postfix= (PostfixExpression) expression;
+			if (isVariable(postfix.getOperand(), accumulator)) {
+				reduction= COUNT;
+				subtract= postfix.getOperator() == PostfixExpression.Operator.DECREMENT;
+			}
+		} else if (expression instanceof PrefixExpression) {
+			PrefixExpression prefix= (PrefixExpression) expression;
+			PrefixExpression.Operator operator= prefix.getOperator();
+			if ((operator == PrefixExpression.Operator.INCREMENT || operator == PrefixExpression.Operator.DECREMENT)
+					&& isVariable(prefix.getOperand(), accumulator)) {
+				reduction= COUNT;
+				subtract= operator == PrefixExpression.Operator.DECREMENT;
+			}
+		} else if (expression instanceof Assignment && isVariable(((Assignment) expression).getLeftHandSide(), accumulator)) {
+			Assignment assignment= (Assignment) expression;
+			Expression rightHandSide= getUnparenthesized(assignment.getRightHandSide());
+			if (assignment.getOperator() == Assignment.Operator.PLUS_ASSIGN || assignment.getOperator() == Assignment.Operator.MINUS_ASSIGN) {
+				reduction= SUM;
+				value= rightHandSide;
+				subtract= assignment.getOperator() == Assignment.Operator.MINUS_ASSIGN;
+			} else if (assignment.getOperator() == Assignment.Operator.ASSIGN && rightHandSide instanceof InfixExpression) {
+				// accumulator= accumulator + value, accumulator= value + accumulator, accumulator= accumulator - value
+				InfixExpression infix= (InfixExpression) rightHandSide;
+				InfixExpression.Operator operator= infix.getOperator();
+				if (!infix.hasExtendedOperands() && (operator == InfixExpression.Operator.PLUS || operator == InfixExpression.Operator.MINUS)) {
+					if (isVariable(infix.getLeftOperand(), accumulator)) {
+						reduction= SUM;
+						value= infix.getRightOperand();
+						subtract= operator == InfixExpression.Operator.MINUS;
+					} else if (operator == InfixExpression.Operator.PLUS && isVariable(infix.getRightOperand(), accumulator)) {
+						reduction= SUM;
+						value= infix.getLeftOperand();
+					}
+				}
+			} else if (assignment.getOperator() == Assignment.Operator.ASSIGN && rightHandSide instanceof MethodInvocation) {
+				// accumulator= Math.max(accumulator, value)
+				MethodInvocation invocation= (MethodInvocation) rightHandSide;
+				IMethodBinding binding= invocation.resolveMethodBinding();
+				List<Expression> arguments= invocation.arguments();
+				String name= invocation.getName().getIdentifier();
+				if (binding != null && "java.lang.Math".equals(binding.getDeclaringClass().getQualifiedName()) //$NON-NLS-1$
+						&& ("max".equals(name) || "min".equals(name)) && arguments.size() == 2) { //$NON-NLS-1$ //$NON-NLS-2$
+					if (isVariable(arguments.get(0), accumulator))
+						value= arguments.get(1);
+					else if (isVariable(arguments.get(1), accumulator))
+						value= arguments.get(0);
+					if (value != null)
+						reduction= "max".equals(name) ? MAX : MIN; //$NON-NLS-1$
+				}
+			}
+		}
+		if (reduction == NO_REDUCTION)
+			return false;
+		if ((value != null && references(value, accumulator)) || (filter != null && references(filter, accumulator)))
+			return false;
+		int accumulatorKind= getKind(accumulator.getType());
+		if (accumulatorKind != INT && accumulatorKind != LONG && accumulatorKind != DOUBLE)
+			return false;
+		if (value != null) {
+			ITypeBinding valueType= value.resolveTypeBinding();
+			if (valueType == null || !valueType.isAssignmentCompatible(accumulator.getType()))
+				return false;
+		}
+		fReduction= reduction;
+		fAccumulator= accumulator;
+		fAccumulatorKind= accumulatorKind;
+		fReducedValue= value;
+		fFilter= filter;
+		fSubtract= subtract;
+		return true;
+	}
+
+	private boolean isEffectivelyFinal(IVariableBinding local) {
+		if (Modifier.isFinal(local.getModifiers()))
+			return true;
+		ASTNode declaration= ASTNodes.findDeclaration(local, fEnclosingBodyDeclaration);
+		if (declaration == null)
+			return true; // declared in an enclosing method, so it must be final already
+		final IVariableBinding variable= local;
+		final int[] writes= new int[1];
+		fEnclosingBodyDeclaration.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(Assignment node) {
+				if (isVariable(node.getLeftHandSide(), variable))
+					writes[0]++;
+				return true;
+			}
+			@Override
+			public boolean visit(PrefixExpression node) {
+				PrefixExpression.Operator operator= node.getOperator();
+				if ((operator == PrefixExpression.Operator.INCREMENT || operator == PrefixExpression.Operator.DECREMENT)
+						&& isVariable(node.getOperand(), variable))
+					writes[0]++;
+				return true;
+			}
+			@Override
+			public boolean visit(PostfixExpression node) {
+				if (isVariable(node.getOperand(), variable))
+					writes[0]++;
+				return true;
+			}
+		});
+		boolean initialized= !(declaration instanceof VariableDeclarationFragment) || ((VariableDeclarationFragment) declaration).getInitializer() != null;
+		return initialized ? writes[0] == 0 : writes[0] <= 1;
+	}
+
+	private static ASTNode findWrite(ASTNode scope, final IVariableBinding variable) {
+		final ASTNode[] result= new ASTNode[1];
+		scope.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(Assignment node) {
+				if (result[0] == null && isVariable(node.getLeftHandSide(), variable))
+					result[0]= node;
+				return result[0] == null;
+			}
+			@Override
+			public boolean visit(PrefixExpression node) {
+				if (result[0] == null && isVariable(node.getOperand(), variable))
+					result[0]= node;
+				return result[0] == null;
+			}
+			@Override
+			public boolean visit(PostfixExpression node) {
+				if (result[0] == null && isVariable(node.getOperand(), variable))
+					result[0]= node;
+				return result[0] == null;
+			}
+		});
+		return result[0];
+	}
+
+	private void createEdits(List<ContinueStatement> continueStatements) throws CoreException {
+		ASTRewrite rewriter= ASTRewrite.create(fRoot.getAST());
+		ImportRewrite importRewrite= StubUtility.createImportRewrite(fRoot, true);
+		TextEditGroup group= new TextEditGroup(ConcurrencyRefactorings.ConvertLoopToParallelStream_convert_loop);
+
+		String statement;
+		if (fReduction == NO_REDUCTION)
+			statement= createForEach(importRewrite, continueStatements);
+		else
+			statement= createReduction(importRewrite);
+		rewriter.replace(fReplacedStatement, rewriter.createStringPlaceholder(statement, ASTNode.EXPRESSION_STATEMENT), group);
+
+		TextChange change= fChangeManager.get(fCUnit);
+		MultiTextEdit root= new MultiTextEdit();
+		change.setEdit(root);
+		TextEdit importEdit= importRewrite.rewriteImports(null);
+		TextChangeCompatibility.addTextEdit(change, ConcurrencyRefactorings.ConcurrencyRefactorings_update_imports, importEdit);
+		root.addChild(rewriter.rewriteAST());
+		change.addTextEditGroup(group);
+	}
+
+	/**
+	 * Creates the head of the stream pipeline, e.g. <code>IntStream.range(0, n).parallel()</code>.
+	 *
+	 * @param importRewrite the import rewrite, or <code>null</code> to use simple type names
+	 * @return the source of the parallel stream
+	 */
+	private String createStream(ImportRewrite importRewrite) {
+		StringBuffer buffer= new StringBuffer();
+		if (fIndexBinding != null) {
+			buffer.append(getTypeName(importRewrite, fElementKind == LONG ? LONG_STREAM : INT_STREAM));
+			buffer.append(fInclusive ? ".rangeClosed(" : ".range("); //$NON-NLS-1$ //$NON-NLS-2$
+			buffer.append(getSource(fLowerBound)).append(", ").append(getSource(fUpperBound)).append(").parallel()"); //$NON-NLS-1$ //$NON-NLS-2$
+		} else if (fArray) {
+			buffer.append(getTypeName(importRewrite, ARRAYS));
+			buffer.append(".stream(").append(getSource(fIterable)).append(").parallel()"); //$NON-NLS-1$ //$NON-NLS-2$
+		} else {
+			if (needsParentheses(fIterable))
+				buffer.append('(').append(getSource(fIterable)).append(')');
+			else
+				buffer.append(getSource(fIterable));
+			buffer.append(".parallelStream()"); //$NON-NLS-1$
+		}
+		return buffer.toString();
+	}
+
+	private String createForEach(ImportRewrite importRewrite, List<ContinueStatement> continueStatements) {
+		StringBuffer buffer= new StringBuffer(createStream(importRewrite));
+		buffer.append(fForEachOrdered ? ".forEachOrdered(" : ".forEach("); //$NON-NLS-1$ //$NON-NLS-2$
+		buffer.append(getParameterName()).append(" -> "); //$NON-NLS-1$
+		Statement body= getBody();
+		if (continueStatements.isEmpty() && body instanceof ExpressionStatement) {
+			buffer.append(getSource(((ExpressionStatement) body).getExpression()));
+		} else {
+			// a continue statement of the loop ends the current invocation of the lambda
+			StringBuffer lambdaBody= new StringBuffer(getSource(body));
+			for (int i= continueStatements.size() - 1; i >= 0; i--) {
+				ContinueStatement continueStatement= continueStatements.get(i);
+				int start= continueStatement.getStartPosition() - body.getStartPosition();
+				lambdaBody.replace(start, start + continueStatement.getLength(), "return;"); //$NON-NLS-1$
+			}
+			if (body instanceof Block)
+				buffer.append(lambdaBody);
+			else
+				buffer.append("{ ").append(lambdaBody).append(" }"); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		buffer.append(");"); //$NON-NLS-1$
+		return buffer.toString();
+	}
+
+	private String createReduction(ImportRewrite importRewrite) {
+		String parameter= getParameterName();
+		String accumulator= fAccumulator.getName();
+		StringBuffer stream= new StringBuffer(createStream(importRewrite));
+		if (fFilter != null)
+			stream.append(".filter(").append(parameter).append(" -> ").append(getSource(fFilter)).append(')'); //$NON-NLS-1$ //$NON-NLS-2$
+		if (fReduction == COUNT)
+			return accumulator + (fSubtract ? " -= " : " += ") + stream + ".count();"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+		boolean identity= isVariable(fReducedValue, fIndexBinding != null ? fIndexBinding : fElementBinding);
+		if (fElementKind != fAccumulatorKind) {
+			stream.append('.').append(MAP_METHODS[fAccumulatorKind]).append('(').append(parameter).append(" -> ").append(getSource(fReducedValue)).append(')'); //$NON-NLS-1$
+		} else if (!identity) {
+			stream.append(".map(").append(parameter).append(" -> ").append(getSource(fReducedValue)).append(')'); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+		if (fReduction == SUM)
+			return accumulator + (fSubtract ? " -= " : " += ") + stream + ".sum();"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		// the accumulator is the identity of the reduction, so every partition also considers it
+		String function= fReduction == MAX ? "Math::max" : "Math::min"; //$NON-NLS-1$ //$NON-NLS-2$
+		return accumulator + " = " + stream + ".reduce(" + accumulator + ", " + function + ");"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	private static String getTypeName(ImportRewrite importRewrite, String qualifiedName) {
+		if (importRewrite != null)
+			return importRewrite.addImport(qualifiedName);
+		return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+	}
+
+	private static boolean needsParentheses(Expression expression) {
+		return !(expression instanceof Name || expression instanceof FieldAccess || expression instanceof MethodInvocation
+				|| expression instanceof ParenthesizedExpression || expression instanceof ThisExpression
+				|| expression instanceof ArrayAccess || expression instanceof ClassInstanceCreation);
+	}
+
+	private Statement getBody() {
+		if (fLoop instanceof ForStatement)
+			return ((ForStatement) fLoop).getBody();
+		return ((EnhancedForStatement) fLoop).getBody();
+	}
+
+	private String getParameterName() {
+		return fIndexBinding != null ? fIndexBinding.getName() : fElementBinding.getName();
+	}
+
+	private static Statement getSingleStatement(Statement statement) {
+		if (statement instanceof Block) {
+			List<Statement> statements= ((Block) statement).statements();
+			return statements.size() == 1 ? statements.get(0) : null;
+		}
+		return statement;
+	}
+
+	private static int getKind(ITypeBinding type) {
+		if (!type.isPrimitive())
+			return OBJECT;
+		String name= type.getName();
+		if ("int".equals(name)) //$NON-NLS-1$
+			return INT;
+		if ("long".equals(name)) //$NON-NLS-1$
+			return LONG;
+		if ("double".equals(name)) //$NON-NLS-1$
+			return DOUBLE;
+		return -1;
+	}
+
+	private static boolean isVariable(Expression expression, IVariableBinding variable) {
+		expression= getUnparenthesized(expression);
+		return variable != null && expression instanceof SimpleName && variable.isEqualTo(((SimpleName) expression).resolveBinding());
+	}
+
+	private static boolean references(ASTNode node, final IVariableBinding variable) {
+		final boolean[] result= new boolean[1];
+		node.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SimpleName name) {
+				if (variable.isEqualTo(name.resolveBinding()))
+					result[0]= true;
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	private static Expression getUnparenthesized(Expression expression) {
+		while (expression instanceof ParenthesizedExpression)
+			expression= ((ParenthesizedExpression) expression).getExpression();
+		return expression;
+	}
+
+	private String getSource(ASTNode node) {
+		return fSource.substring(node.getStartPosition(), node.getStartPosition() + node.getLength());
+	}
+
+	private void checkCompileErrors(RefactoringStatus result) {
+		IProblem[] problems= fRoot.getProblems();
+		for (int i= 0; i < problems.length; i++) {
+			if (problems[i].isError()) {
+				result.addError(Messages.format(ConcurrencyRefactorings.ConvertLoopToParallelStream_compile_error,
+						fCUnit.getElementName()), JavaStatusContext.create(fCUnit));
+				return;
+			}
+		}
+	}
+
+	@Override
+	public Change createChange(IProgressMonitor pm) throws CoreException,
+			OperationCanceledException {
+		// the refactoring is not recordable: it has no descriptor to replay the selected loop
+		final DynamicValidationStateChange result= new DynamicValidationStateChange(getName());
+		TextChange[] changes= fChangeManager.getAllChanges();
+		pm.beginTask(NO_NAME, changes.length);
+		pm.setTaskName(ConcurrencyRefactorings.ConvertLoopToParallelStream_create_changes);
+		for (int i= 0; i < changes.length; i++) {
+			result.add(changes[i]);
+			pm.worked(1);
+		}
+		pm.done();
+		return result;
+	}
+
+	@Override
+	public String getName() {
+		return ConcurrencyRefactorings.ConvertLoopToParallelStream_name_official;
+	}
+
+	public ICompilationUnit getCompilationUnit() {
+		return fCUnit;
+	}
+
+	/**
+	 * Returns the parallel stream that replaces the selected loop, e.g.
+	 * <code>IntStream.range(0, n).parallel()</code>.
+	 *
+	 * @return the source of the stream
+	 */
+	public String getStreamDescription() {
+		return createStream(null);
+	}
+
+	public boolean isForEachOrdered() {
+		return fForEachOrdered;
+	}
+
+	/**
+	 * Sets whether the loop body is invoked with <code>forEachOrdered</code> instead of
+	 * <code>forEach</code>, which keeps the order of side effects such as output. Reductions do
+	 * not depend on the order and ignore this setting.
+	 *
+	 * @param forEachOrdered <code>true</code> to keep the encounter order of the loop
+	 * @return the status of the new setting
+	 */
+	public RefactoringStatus setForEachOrdered(boolean forEachOrdered) {
+		fForEachOrdered= forEachOrdered;
+		return new RefactoringStatus();
+	}
+}
@@ -0,0 +1,657 @@
+package org.eclipse.jdt.internal.corext.refactoring.concurrency;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import org.eclipse.core.resources.IFile;
+
+import org.eclipse.text.edits.MalformedTreeException;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.edits.TextEditGroup;
+
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.CompositeChange;
+import org.eclipse.ltk.core.refactoring.Refactoring;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.TextChange;
+import org.eclipse.ltk.core.refactoring.TextEditChangeGroup;
+import org.eclipse.ltk.core.refactoring.participants.ResourceChangeChecker;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IPackageFragment;
+import org.eclipse.jdt.core.IPackageFragmentRoot;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SuperFieldAccess;
+import org.eclipse.jdt.core.dom.SynchronizedStatement;
+import org.eclipse.jdt.core.dom.rewrite.ImportRewrite;
+import org.eclipse.jdt.core.refactoring.CompilationUnitChange;
+
+import org.eclipse.jdt.internal.corext.codemanipulation.StubUtility;
+import org.eclipse.jdt.internal.corext.refactoring.Checks;
+import org.eclipse.jdt.internal.corext.refactoring.base.JavaStatusContext;
+import org.eclipse.jdt.internal.corext.refactoring.changes.DynamicValidationStateChange;
+import org.eclipse.jdt.internal.corext.refactoring.changes.TextChangeCompatibility;
+import org.eclipse.jdt.internal.corext.refactoring.util.RefactoringASTParser;
+import org.eclipse.jdt.internal.corext.refactoring.util.ResourceUtil;
+import org.eclipse.jdt.internal.corext.refactoring.util.TextChangeManager;
+import org.eclipse.jdt.internal.corext.util.Messages;
+
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+
+/**
+ * Batch variant of {@link ConvertToAtomicIntegerRefactoring} and {@link ConvertToAtomicLongRefactoring}.
+ * <p>
+ * Finds every <code>int</code> and <code>long</code> field that is mutated inside synchronized code
+ * in the given Java projects, package fragment roots, packages or compilation units, runs the single
+ * field refactorings on these fields concurrently and merges their edits into one change. Fields
+ * which cannot be converted, or whose edits overlap with the edits of another converted field, are
+ * reported as warnings and left untouched.
+ * </p>
+ */
+public class ConvertToAtomicBatchRefactoring extends Refactoring {
+
+	private static final String NO_NAME= ConcurrencyRefactorings.ConcurrencyRefactorings_empty_string;
+	private static final String ATOMIC_INTEGER= "java.util.concurrent.atomic.AtomicInteger"; //$NON-NLS-1$
+	private static final String ATOMIC_LONG= "java.util.concurrent.atomic.AtomicLong"; //$NON-NLS-1$
+
+	private final IJavaElement[] fElements;
+	private ICompilationUnit[] fCompilationUnits;
+	private TextChangeManager fChangeManager;
+	private boolean fConvertIntFields= true;
+	private boolean fConvertLongFields= true;
+	private boolean fInitializeDeclarations= true;
+	private int fConvertedFieldCount;
+
+	public ConvertToAtomicBatchRefactoring(IJavaElement[] elements) {
+		fElements= elements;
+		fChangeManager= new TextChangeManager();
+	}
+
+	@Override
+	public RefactoringStatus checkInitialConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+
+		RefactoringStatus result= new RefactoringStatus();
+		pm.beginTask(NO_NAME, 1);
+		try {
+			if (fElements == null || fElements.length == 0) {
+				result.addFatalError(ConcurrencyRefactorings.ConvertToAtomicBatch_no_scope);
+				return result;
+			}
+			Set<ICompilationUnit> units= new LinkedHashSet<ICompilationUnit>();
+			for (int i= 0; i < fElements.length; i++) {
+				result.merge(Checks.checkAvailability(fElements[i]));
+				if (result.hasFatalError()) {
+					return result;
+				}
+				collectCompilationUnits(fElements[i], units);
+			}
+			fCompilationUnits= units.toArray(new ICompilationUnit[units.size()]);
+			if (fCompilationUnits.length == 0) {
+				result.addFatalError(ConcurrencyRefactorings.ConvertToAtomicBatch_no_scope);
+			}
+			return result;
+		} finally {
+			pm.done();
+		}
+	}
+
+	private void collectCompilationUnits(IJavaElement element, Set<ICompilationUnit> units) throws JavaModelException {
+
+		switch (element.getElementType()) {
+			case IJavaElement.JAVA_PROJECT:
+				IPackageFragmentRoot[] roots= ((IJavaProject) element).getPackageFragmentRoots();
+				for (int i= 0; i < roots.length; i++) {
+					if (roots[i].getKind() == IPackageFragmentRoot.K_SOURCE) {
+						collectCompilationUnits(roots[i], units);
+					}
+				}
+				break;
+			case IJavaElement.PACKAGE_FRAGMENT_ROOT:
+				IJavaElement[] fragments= ((IPackageFragmentRoot) element).getChildren();
+				for (int i= 0; i < fragments.length; i++) {
+					collectCompilationUnits(fragments[i], units);
+				}
+				break;
+			case IJavaElement.PACKAGE_FRAGMENT:
+				units.addAll(Arrays.asList(((IPackageFragment) element).getCompilationUnits()));
+				break;
+			case IJavaElement.COMPILATION_UNIT:
+				units.add((ICompilationUnit) element);
+				break;
+			default:
+				ICompilationUnit unit= (ICompilationUnit) element.getAncestor(IJavaElement.COMPILATION_UNIT);
+				if (unit != null) {
+					units.add(unit);
+				}
+		}
+	}
+
+	@Override
+	public RefactoringStatus checkFinalConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+
+		RefactoringStatus result= new RefactoringStatus();
+		fChangeManager.clear();
+		fConvertedFieldCount= 0;
+		pm.beginTask(NO_NAME, 11);
+		try {
+			pm.setTaskName(ConcurrencyRefactorings.ConvertToAtomicBatch_check_preconditions);
+			pm.worked(1);
+
+			pm.setTaskName(ConcurrencyRefactorings.ConvertToAtomicBatch_search_fields);
+			IField[] fields= findContendedCounterFields(new SubProgressMonitor(pm, 4));
+			if (fields.length == 0) {
+				result.addFatalError(ConcurrencyRefactorings.ConvertToAtomicBatch_no_fields);
+				return result;
+			}
+
+			pm.setTaskName(ConcurrencyRefactorings.ConvertToAtomicBatch_analyze_fields);
+			FieldConversion[] conversions= analyzeFields(fields, new SubProgressMonitor(pm, 5));
+
+			Map<ICompilationUnit, Set<String>> importsPerUnit= new LinkedHashMap<ICompilationUnit, Set<String>>();
+			for (int i= 0; i < conversions.length; i++) {
+				FieldConversion conversion= conversions[i];
+				if (conversion.fReason != null) {
+					result.addWarning(Messages.format(ConcurrencyRefactorings.ConvertToAtomicBatch_field_skipped,
+							new String[] { getFieldLabel(conversion.fField), conversion.fReason }), JavaStatusContext.create(conversion.fField));
+				} else {
+					ICompilationUnit conflictingUnit= mergeChanges(conversion, importsPerUnit);
+					if (conflictingUnit != null) {
+						result.addWarning(Messages.format(ConcurrencyRefactorings.ConvertToAtomicBatch_field_conflict,
+								new String[] { getFieldLabel(conversion.fField), conflictingUnit.getElementName() }), JavaStatusContext.create(conversion.fField));
+					} else {
+						fConvertedFieldCount++;
+					}
+				}
+			}
+			if (fConvertedFieldCount == 0) {
+				result.addFatalError(ConcurrencyRefactorings.ConvertToAtomicBatch_no_convertible_fields);
+				return result;
+			}
+
+			addImports(importsPerUnit);
+
+			IFile[] filesToBeModified= ResourceUtil.getFiles(fChangeManager.getAllCompilationUnits());
+			result.merge(Checks.validateModifiesFiles(filesToBeModified, getValidationContext()));
+			if (result.hasFatalError()) {
+				return result;
+			}
+			ResourceChangeChecker.checkFilesToBeChanged(filesToBeModified, new SubProgressMonitor(pm, 1));
+			return result;
+		} finally {
+			pm.done();
+		}
+	}
+
+	/**
+	 * Returns the <code>int</code> and <code>long</code> source fields which are written inside a
+	 * synchronized block or a synchronized method of the compilation units in scope, ordered by
+	 * their handle identifier.
+	 *
+	 * @param pm the progress monitor
+	 * @return the fields to convert
+	 * @throws CoreException if a compilation unit cannot be accessed
+	 */
+	private IField[] findContendedCounterFields(IProgressMonitor pm) throws CoreException {
+
+		pm.beginTask(NO_NAME, fCompilationUnits.length);
+		try {
+			final Map<String, IField> fields= new HashMap<String, IField>();
+			for (int i= 0; i < fCompilationUnits.length; i++) {
+				ICompilationUnit unit= fCompilationUnits[i];
+				pm.subTask(unit.getElementName());
+				CompilationUnit root= new RefactoringASTParser(AST.JLS4).parse(unit, true, new SubProgressMonitor(pm, 1));
+				root.accept(new ContendedCounterFinder(fields));
+				if (pm.isCanceled()) {
+					throw new OperationCanceledException();
+				}
+			}
+			IField[] result= fields.values().toArray(new IField[fields.size()]);
+			Arrays.sort(result, new Comparator<IField>() {
+				public int compare(IField o1, IField o2) {
+					return o1.getHandleIdentifier().compareTo(o2.getHandleIdentifier());
+				}
+			});
+			return result;
+		} finally {
+			pm.done();
+		}
+	}
+
+	/**
+	 * Runs the single field refactoring for every field on a bounded pool. The returned array has
+	 * the same order as <code>fields</code>, independently of the order in which the analyses finish.
+	 *
+	 * @param fields the fields to analyze
+	 * @param pm the progress monitor
+	 * @return the result of the analysis of each field
+	 */
+	private FieldConversion[] analyzeFields(IField[] fields, IProgressMonitor pm) {
+
+		pm.beginTask(NO_NAME, fields.length);
+		final FieldConversion[] conversions= new FieldConversion[fields.length];
+		final CancelableMonitor workerMonitor= new CancelableMonitor();
+		int threads= Math.max(1, Math.min(fields.length, Runtime.getRuntime().availableProcessors()));
+		ExecutorService executor= Executors.newFixedThreadPool(threads);
+		try {
+			CompletionService<FieldConversion> completionService= new ExecutorCompletionService<FieldConversion>(executor);
+			for (int i= 0; i < fields.length; i++) {
+				final int index= i;
+				final IField field= fields[i];
+				completionService.submit(new Callable<FieldConversion>() {
+					public FieldConversion call() throws Exception {
+						try {
+							return conversions[index]= analyzeField(field, workerMonitor);
+						} catch (CoreException e) {
+							JavaPlugin.log(e);
+							return conversions[index]= new FieldConversion(field, null, e.getStatus().getMessage());
+						}
+					}
+				});
+			}
+			int pending= fields.length;
+			while (pending > 0) {
+				if (pm.isCanceled()) {
+					workerMonitor.setCanceled(true);
+					throw new OperationCanceledException();
+				}
+				Future<FieldConversion> future= completionService.poll(100, TimeUnit.MILLISECONDS);
+				if (future == null) {
+					continue;
+				}
+				pending--;
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					Throwable cause= e.getCause();
+					if (cause instanceof OperationCanceledException) {
+						throw (OperationCanceledException) cause;
+					}
+					JavaPlugin.log(cause);
+				}
+				pm.worked(1);
+			}
+		} catch (InterruptedException e) {
+			workerMonitor.setCanceled(true);
+			throw new OperationCanceledException();
+		} finally {
+			executor.shutdownNow();
+			pm.done();
+		}
+		for (int i= 0; i < conversions.length; i++) {
+			if (conversions[i] == null) {
+				conversions[i]= new FieldConversion(fields[i], null, ConcurrencyRefactorings.ConvertToAtomicBatch_unexpected_error);
+			}
+		}
+		return conversions;
+	}
+
+	private FieldConversion analyzeField(IField field, IProgressMonitor pm) throws CoreException {
+
+		Refactoring refactoring;
+		if ("I".equals(field.getTypeSignature())) { //$NON-NLS-1$
+			ConvertToAtomicIntegerRefactoring integerRefactoring= new ConvertToAtomicIntegerRefactoring(field);
+			integerRefactoring.setInitializeDeclaration(fInitializeDeclarations);
+			refactoring= integerRefactoring;
+		} else {
+			ConvertToAtomicLongRefactoring longRefactoring= new ConvertToAtomicLongRefactoring(field);
+			longRefactoring.setInitializeDeclaration(fInitializeDeclarations);
+			refactoring= longRefactoring;
+		}
+		RefactoringStatus status= refactoring.checkInitialConditions(pm);
+		if (!status.hasError()) {
+			status.merge(refactoring.checkFinalConditions(pm));
+		}
+		if (status.hasError()) {
+			return new FieldConversion(field, null, status.getMessageMatchingSeverity(RefactoringStatus.ERROR));
+		}
+		return new FieldConversion(field, refactoring.createChange(pm), null);
+	}
+
+	/**
+	 * Moves the edits of the given field conversion into the text changes of this refactoring. If
+	 * an edit overlaps with an edit of a previously merged field, all edits of this conversion are
+	 * taken out again and the conflicting compilation unit is returned.
+	 *
+	 * @param conversion the analyzed field
+	 * @param importsPerUnit the imports to add, per compilation unit
+	 * @return the compilation unit in which the edits conflict, or <code>null</code> if the edits
+	 *         have been merged
+	 */
+	private ICompilationUnit mergeChanges(FieldConversion conversion, Map<ICompilationUnit, Set<String>> importsPerUnit) {
+
+		String fieldName= conversion.fField.getElementName();
+		String importName= "I".equals(getTypeSignature(conversion.fField)) ? ATOMIC_INTEGER : ATOMIC_LONG; //$NON-NLS-1$
+		List<TextEdit> added= new ArrayList<TextEdit>();
+		List<TextChange> touched= new ArrayList<TextChange>();
+		List<TextEditGroup> groups= new ArrayList<TextEditGroup>();
+		Change[] children= ((CompositeChange) conversion.fChange).getChildren();
+		for (int i= 0; i < children.length; i++) {
+			if (!(children[i] instanceof CompilationUnitChange)) {
+				continue;
+			}
+			CompilationUnitChange fieldChange= (CompilationUnitChange) children[i];
+			ICompilationUnit unit= fieldChange.getCompilationUnit();
+			TextEdit fieldRoot= fieldChange.getEdit();
+			if (fieldRoot == null) {
+				continue;
+			}
+			Set<TextEdit> importEdits= new HashSet<TextEdit>();
+			TextEditChangeGroup[] changeGroups= fieldChange.getTextEditChangeGroups();
+			for (int j= 0; j < changeGroups.length; j++) {
+				TextEditGroup group= changeGroups[j].getTextEditGroup();
+				if (ConcurrencyRefactorings.ConcurrencyRefactorings_update_imports.equals(group.getName())) {
+					importEdits.addAll(Arrays.asList(group.getTextEdits()));
+				} else {
+					groups.add(new TextEditGroup(fieldName + ": " + group.getName(), group.getTextEdits())); //$NON-NLS-1$
+				}
+			}
+			TextChange change= fChangeManager.get(unit);
+			TextEdit root= change.getEdit();
+			if (root == null) {
+				root= new MultiTextEdit();
+				change.setEdit(root);
+			}
+			TextEdit[] topLevelEdits= fieldRoot.removeChildren();
+			try {
+				for (int j= 0; j < topLevelEdits.length; j++) {
+					TextEdit topLevelEdit= topLevelEdits[j];
+					if (importEdits.contains(topLevelEdit)) {
+						continue;
+					}
+					TextEdit[] edits= topLevelEdit instanceof MultiTextEdit ? topLevelEdit.removeChildren() : new TextEdit[] { topLevelEdit };
+					for (int k= 0; k < edits.length; k++) {
+						root.addChild(edits[k]);
+						added.add(edits[k]);
+					}
+				}
+			} catch (MalformedTreeException e) {
+				for (int j= 0; j < added.size(); j++) {
+					TextEdit edit= added.get(j);
+					edit.getParent().removeChild(edit);
+				}
+				for (int j= 0; j < touched.size(); j++) {
+					removeIfEmpty(touched.get(j));
+				}
+				removeIfEmpty(change);
+				return unit;
+			}
+			touched.add(change);
+		}
+		for (int i= 0; i < touched.size(); i++) {
+			CompilationUnitChange change= (CompilationUnitChange) touched.get(i);
+			Set<String> imports= importsPerUnit.get(change.getCompilationUnit());
+			if (imports == null) {
+				imports= new HashSet<String>();
+				importsPerUnit.put(change.getCompilationUnit(), imports);
+			}
+			imports.add(importName);
+		}
+		for (int i= 0; i < groups.size(); i++) {
+			TextEditGroup group= groups.get(i);
+			TextEdit[] edits= group.getTextEdits();
+			for (int j= 0; j < touched.size(); j++) {
+				TextChange change= touched.get(j);
+				if (edits.length > 0 && isDescendant(edits[0], change.getEdit())) {
+					change.addTextEditGroup(group);
+					break;
+				}
+			}
+		}
+		return null;
+	}
+
+	private static boolean isDescendant(TextEdit edit, TextEdit root) {
+		for (TextEdit current= edit; current != null; current= current.getParent()) {
+			if (current == root) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private void removeIfEmpty(TextChange change) {
+		if (change instanceof CompilationUnitChange && !change.getEdit().hasChildren()) {
+			fChangeManager.remove(((CompilationUnitChange) change).getCompilationUnit());
+		}
+	}
+
+	private void addImports(Map<ICompilationUnit, Set<String>> importsPerUnit) throws CoreException {
+
+		for (Map.Entry<ICompilationUnit, Set<String>> entry : importsPerUnit.entrySet()) {
+			ImportRewrite importRewrite= StubUtility.createImportRewrite(entry.getKey(), true);
+			for (String name : entry.getValue()) {
+				importRewrite.addImport(name);
+			}
+			TextEdit importEdit= importRewrite.rewriteImports(null);
+			TextChangeCompatibility.addTextEdit(fChangeManager.get(entry.getKey()), ConcurrencyRefactorings.ConcurrencyRefactorings_update_imports, importEdit);
+		}
+	}
+
+	private static String getTypeSignature(IField field) {
+		try {
+			return field.getTypeSignature();
+		} catch (JavaModelException e) {
+			return null;
+		}
+	}
+
+	private static String getFieldLabel(IField field) {
+		return field.getDeclaringType().getElementName() + '.' + field.getElementName();
+	}
+
+	@Override
+	public Change createChange(IProgressMonitor pm) throws CoreException,
+			OperationCanceledException {
+
+		// the refactoring is not recordable: it has no descriptor to replay the selected elements
+		final DynamicValidationStateChange result= new DynamicValidationStateChange(getName());
+		TextChange[] changes= fChangeManager.getAllChanges();
+		pm.beginTask(NO_NAME, changes.length);
+		pm.setTaskName(ConcurrencyRefactorings.ConvertToAtomicBatch_create_changes);
+		for (int i= 0; i < changes.length; i++) {
+			result.add(changes[i]);
+			pm.worked(1);
+		}
+		pm.done();
+		return result;
+	}
+
+	@Override
+	public String getName() {
+		return ConcurrencyRefactorings.ConvertToAtomicBatch_name_official;
+	}
+
+	public IJavaElement[] getElements() {
+		return fElements;
+	}
+
+	public RefactoringStatus setConvertIntFields(boolean convertIntFields) {
+		fConvertIntFields= convertIntFields;
+		return checkFieldKinds();
+	}
+
+	public RefactoringStatus setConvertLongFields(boolean convertLongFields) {
+		fConvertLongFields= convertLongFields;
+		return checkFieldKinds();
+	}
+
+	public RefactoringStatus setInitializeDeclarations(boolean initializeDeclarations) {
+		fInitializeDeclarations= initializeDeclarations;
+		return new RefactoringStatus();
+	}
+
+	private RefactoringStatus checkFieldKinds() {
+		if (!fConvertIntFields && !fConvertLongFields) {
+			return RefactoringStatus.createErrorStatus(ConcurrencyRefactorings.ConvertToAtomicBatch_no_kind);
+		}
+		return new RefactoringStatus();
+	}
+
+	/**
+	 * Collects the <code>int</code> and <code>long</code> source fields which are assigned,
+	 * incremented or decremented inside synchronized code.
+	 */
+	private final class ContendedCounterFinder extends ASTVisitor {
+
+		private final Map<String, IField> fFields;
+
+		public ContendedCounterFinder(Map<String, IField> fields) {
+			fFields= fields;
+		}
+
+		@Override
+		public boolean visit(Assignment node) {
+			handleWrite(node, node.getLeftHandSide());
+			return true;
+		}
+
+		@Override
+		public boolean visit(PrefixExpression node) {
+			PrefixExpression.Operator operator= node.getOperator();
+			if (operator == PrefixExpression.Operator.INCREMENT || operator == PrefixExpression.Operator.DECREMENT) {
+				handleWrite(node, node.getOperand());
+			}
+			return true;
+		}
+
+		@Override
+		public boolean visit(PostfixExpression node) {
+			handleWrite(node, node.getOperand());
+			return true;
+		}
+
+		private void handleWrite(ASTNode node, Expression target) {
+			IBinding binding= resolveBinding(target);
+			if (!(binding instanceof IVariableBinding)) {
+				return;
+			}
+			IVariableBinding variable= ((IVariableBinding) binding).getVariableDeclaration();
+			if (!variable.isField() || fFields.containsKey(variable.getKey()) || !isConvertibleType(variable.getType())) {
+				return;
+			}
+			if (Modifier.isFinal(variable.getModifiers()) || !isInSynchronizedCode(node)) {
+				return;
+			}
+			IJavaElement element= variable.getJavaElement();
+			if (element instanceof IField && !((IField) element).isBinary()) {
+				fFields.put(variable.getKey(), (IField) element);
+			}
+		}
+
+		private boolean isConvertibleType(ITypeBinding type) {
+			String name= type.getName();
+			if (!type.isPrimitive()) {
+				return false;
+			}
+			return (fConvertIntFields && "int".equals(name)) || (fConvertLongFields && "long".equals(name)); //$NON-NLS-1$ //$NON-NLS-2$
+		}
+
+		private boolean isInSynchronizedCode(ASTNode node) {
+			for (ASTNode current= node.getParent(); current != null; current= current.getParent()) {
+				if (current instanceof SynchronizedStatement) {
+					return true;
+				}
+				if (current instanceof MethodDeclaration) {
+					return Modifier.isSynchronized(((MethodDeclaration) current).getModifiers());
+				}
+				if (current instanceof BodyDeclaration) {
+					return false;
+				}
+			}
+			return false;
+		}
+
+		private IBinding resolveBinding(Expression expression) {
+			if (expression instanceof SimpleName)
+				return ((SimpleName) expression).resolveBinding();
+			else if (expression instanceof QualifiedName)
+				return ((QualifiedName) expression).resolveBinding();
+			else if (expression instanceof FieldAccess)
+				return ((FieldAccess) expression).getName().resolveBinding();
+			else if (expression instanceof SuperFieldAccess)
+				return ((SuperFieldAccess) expression).getName().resolveBinding();
+			return null;
+		}
+	}
+
+	/**
+	 * The outcome of running the single field refactoring on one field: either a change or the
+	 * reason why the field cannot be converted.
+	 */
+	private static final class FieldConversion {
+
+		final IField fField;
+		final Change fChange;
+		final String fReason;
+
+		FieldConversion(IField field, Change change, String reason) {
+			fField= field;
+			fChange= change;
+			fReason= reason;
+		}
+	}
+
+	/**
+	 * Progress monitor handed to the worker threads. Only the cancellation state is shared with
+	 * the calling thread.
+	 */
+	private static final class CancelableMonitor extends NullProgressMonitor {
+
+		private volatile boolean fCanceled;
+
+		@Override
+		public boolean isCanceled() {
+			return fCanceled;
+		}
+
+		@Override
+		public void setCanceled(boolean canceled) {
+			fCanceled= canceled;
+		}
+	}
+}
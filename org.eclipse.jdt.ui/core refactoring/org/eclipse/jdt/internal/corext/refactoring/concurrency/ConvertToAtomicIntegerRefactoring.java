@@ -230,7 +230,7 @@ public class ConvertToAtomicIntegerRefactoring extends Refactoring {
 		change.setEdit(root);
 		
 		TextEdit importEdit = importRewrite.rewriteImports(null);
-		TextChangeCompatibility.addTextEdit(fChangeManager.get(unit), "Update Imports", importEdit);
+		TextChangeCompatibility.addTextEdit(fChangeManager.get(unit), ConcurrencyRefactorings.ConcurrencyRefactorings_update_imports, importEdit);
 		
 		root.addChild(rewriter.rewriteAST());
 		for (Iterator iter= groups.iterator(); iter.hasNext();) {
@@ -0,0 +1,603 @@
+package org.eclipse.jdt.internal.corext.refactoring.concurrency;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import org.eclipse.core.resources.IFile;
+
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.edits.TextEditGroup;
+
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.Refactoring;
+import org.eclipse.ltk.core.refactoring.RefactoringDescriptor;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.TextChange;
+import org.eclipse.ltk.core.refactoring.participants.ResourceChangeChecker;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IMethod;
+import org.eclipse.jdt.core.ISourceRange;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.ChildListPropertyDescriptor;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.Message;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ImportRewrite;
+import org.eclipse.jdt.core.refactoring.IJavaRefactorings;
+import org.eclipse.jdt.core.refactoring.descriptors.JavaRefactoringDescriptor;
+import org.eclipse.jdt.core.search.IJavaSearchConstants;
+import org.eclipse.jdt.core.search.SearchPattern;
+
+import org.eclipse.jdt.internal.corext.codemanipulation.StubUtility;
+import org.eclipse.jdt.internal.corext.dom.ASTNodes;
+import org.eclipse.jdt.internal.corext.dom.Bindings;
+import org.eclipse.jdt.internal.corext.dom.ModifierRewrite;
+import org.eclipse.jdt.internal.corext.dom.NodeFinder;
+import org.eclipse.jdt.internal.corext.refactoring.Checks;
+import org.eclipse.jdt.internal.corext.refactoring.RefactoringScopeFactory;
+import org.eclipse.jdt.internal.corext.refactoring.RefactoringSearchEngine;
+import org.eclipse.jdt.internal.corext.refactoring.base.JavaStatusContext;
+import org.eclipse.jdt.internal.corext.refactoring.changes.DynamicValidationRefactoringChange;
+import org.eclipse.jdt.internal.corext.refactoring.changes.TextChangeCompatibility;
+import org.eclipse.jdt.internal.corext.refactoring.util.RefactoringASTParser;
+import org.eclipse.jdt.internal.corext.refactoring.util.ResourceUtil;
+import org.eclipse.jdt.internal.corext.refactoring.util.TextChangeManager;
+import org.eclipse.jdt.internal.corext.util.Messages;
+
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+
+/**
+ * Converts a collection field that is guarded by <code>synchronized</code> to a collection of
+ * <code>java.util.concurrent</code>:
+ * <ul>
+ * <li><code>ArrayList</code> and <code>LinkedList</code> to <code>CopyOnWriteArrayList</code></li>
+ * <li><code>LinkedList</code> used as a queue to <code>ConcurrentLinkedQueue</code></li>
+ * <li><code>TreeMap</code> to <code>ConcurrentSkipListMap</code></li>
+ * <li><code>HashSet</code> to <code>ConcurrentHashMap.newKeySet()</code></li>
+ * <li><code>PriorityQueue</code> to <code>PriorityBlockingQueue</code></li>
+ * </ul>
+ * <p>
+ * Like {@link ConvertToConcurrentHashMapRefactoring}, check-then-act sequences are rewritten into
+ * the atomic operations of the new collection and synchronization that only guards a single
+ * operation is removed, see {@link AccessAnalyzerForConcurrentCollection}.
+ * </p>
+ */
+public class ConvertToConcurrentCollectionRefactoring extends Refactoring {
+
+	/**
+	 * Converts a list to <code>CopyOnWriteArrayList</code>.
+	 */
+	public static final int COPY_ON_WRITE_ARRAY_LIST= 1;
+
+	/**
+	 * Converts a linked list to <code>ConcurrentLinkedQueue</code>.
+	 */
+	public static final int CONCURRENT_LINKED_QUEUE= 2;
+
+	/**
+	 * Converts a tree map to <code>ConcurrentSkipListMap</code>.
+	 */
+	public static final int CONCURRENT_SKIP_LIST_MAP= 3;
+
+	/**
+	 * Converts a hash set to a set created by <code>ConcurrentHashMap.newKeySet()</code>.
+	 */
+	public static final int CONCURRENT_KEY_SET= 4;
+
+	/**
+	 * Converts a priority queue to <code>PriorityBlockingQueue</code>.
+	 */
+	public static final int PRIORITY_BLOCKING_QUEUE= 5;
+
+	private static final String NO_NAME= ConcurrencyRefactorings.ConcurrencyRefactorings_empty_string;
+
+	private static final String ARRAY_LIST= "java.util.ArrayList"; //$NON-NLS-1$
+	private static final String LINKED_LIST= "java.util.LinkedList"; //$NON-NLS-1$
+	private static final String TREE_MAP= "java.util.TreeMap"; //$NON-NLS-1$
+	private static final String HASH_SET= "java.util.HashSet"; //$NON-NLS-1$
+	private static final String PRIORITY_QUEUE= "java.util.PriorityQueue"; //$NON-NLS-1$
+	private static final String QUEUE= "java.util.Queue"; //$NON-NLS-1$
+	private static final String SET= "java.util.Set"; //$NON-NLS-1$
+	private static final String CONCURRENT_HASH_MAP= "java.util.concurrent.ConcurrentHashMap"; //$NON-NLS-1$
+	private static final String COLLECTIONS= "java.util.Collections"; //$NON-NLS-1$
+
+	private static final String[] TARGET_TYPES= {
+		null,
+		"java.util.concurrent.CopyOnWriteArrayList", //$NON-NLS-1$
+		"java.util.concurrent.ConcurrentLinkedQueue", //$NON-NLS-1$
+		"java.util.concurrent.ConcurrentSkipListMap", //$NON-NLS-1$
+		CONCURRENT_HASH_MAP,
+		"java.util.concurrent.PriorityBlockingQueue" //$NON-NLS-1$
+	};
+
+	private IField fField;
+	private CompilationUnit fRoot;
+	private VariableDeclarationFragment fFieldDeclarationFragment;
+	private ASTRewrite fRewriter;
+	private TextChangeManager fChangeManager;
+	private ImportRewrite fImportRewrite;
+	private String fSourceType;
+	private int fTarget;
+
+	public ConvertToConcurrentCollectionRefactoring(IField field) {
+		fChangeManager= new TextChangeManager();
+		fField= field;
+	}
+
+	@Override
+	public RefactoringStatus checkInitialConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+		RefactoringStatus result= new RefactoringStatus();
+		result.merge(Checks.checkAvailability(fField));
+
+		if (result.hasFatalError())
+			return result;
+
+		fRoot= new RefactoringASTParser(AST.JLS3).parse(fField.getCompilationUnit(), true, pm);
+		ISourceRange sourceRange= fField.getNameRange();
+		ASTNode node= NodeFinder.perform(fRoot, sourceRange.getOffset(), sourceRange.getLength());
+		if (node == null) {
+			return mappingErrorFound(result, node);
+		}
+		fFieldDeclarationFragment= (VariableDeclarationFragment)ASTNodes.getParent(node, VariableDeclarationFragment.class);
+		if (fFieldDeclarationFragment == null) {
+			return mappingErrorFound(result, node);
+		}
+		IVariableBinding binding= fFieldDeclarationFragment.resolveBinding();
+		if (binding == null) {
+			if (!processCompilerError(result, node))
+				result.addFatalError(ConcurrencyRefactorings.ConcurrencyRefactorings_type_error);
+			return result;
+		}
+		fSourceType= findSourceType(binding);
+		int[] targets= fSourceType != null ? getTargets(fSourceType) : new int[0];
+		if (targets.length == 0) {
+			result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertToConcurrentCollection_type_error,
+					new String[] { fField.getElementName(), binding.getType().getName() }));
+			return result;
+		}
+		fTarget= targets[0];
+		if (LINKED_LIST.equals(fSourceType) && Bindings.findTypeInHierarchy(binding.getType(), QUEUE) != null
+				&& !LINKED_LIST.equals(binding.getType().getErasure().getQualifiedName())) {
+			// declared as a Queue or Deque
+			fTarget= CONCURRENT_LINKED_QUEUE;
+		}
+		fRewriter= ASTRewrite.create(fRoot.getAST());
+		return result;
+	}
+
+	/*
+	 * Returns the implementation class of the field, taken from its initializer, from the
+	 * assignments in the compilation unit or from its declared type.
+	 */
+	private String findSourceType(final IVariableBinding binding) {
+		final List<String> types= new ArrayList<String>();
+		addCreatedType(fFieldDeclarationFragment.getInitializer(), types);
+		fRoot.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(Assignment node) {
+				IBinding assigned= null;
+				Expression lhs= node.getLeftHandSide();
+				if (lhs instanceof Name)
+					assigned= ((Name) lhs).resolveBinding();
+				else if (lhs instanceof FieldAccess)
+					assigned= ((FieldAccess) lhs).resolveFieldBinding();
+				if (assigned != null && Bindings.equals(assigned, binding))
+					addCreatedType(node.getRightHandSide(), types);
+				return true;
+			}
+		});
+		ITypeBinding declared= binding.getType().getErasure();
+		if (types.isEmpty() && !declared.isInterface())
+			types.add(declared.getQualifiedName());
+		if (types.isEmpty())
+			return null;
+		String type= types.get(0);
+		for (int i= 1; i < types.size(); i++) {
+			if (!type.equals(types.get(i)))
+				return null;
+		}
+		return type;
+	}
+
+	private static void addCreatedType(Expression expression, List<String> types) {
+		ClassInstanceCreation creation= getCreation(expression);
+		if (creation != null) {
+			ITypeBinding type= creation.resolveTypeBinding();
+			if (type != null)
+				types.add(type.getErasure().getQualifiedName());
+		}
+	}
+
+	/**
+	 * Returns the collection created by the given expression. Collections wrapped with
+	 * <code>Collections.synchronizedList()</code> and the like are unwrapped.
+	 *
+	 * @param expression the expression assigned to the field, or <code>null</code>
+	 * @return the collection creation, or <code>null</code>
+	 */
+	static ClassInstanceCreation getCreation(Expression expression) {
+		while (expression instanceof ParenthesizedExpression)
+			expression= ((ParenthesizedExpression) expression).getExpression();
+		if (expression instanceof ClassInstanceCreation)
+			return ((ClassInstanceCreation) expression).getAnonymousClassDeclaration() == null ? (ClassInstanceCreation) expression : null;
+		if (isSynchronizedWrapper(expression))
+			return getCreation((Expression) ((MethodInvocation) expression).arguments().get(0));
+		return null;
+	}
+
+	/**
+	 * Returns whether the expression is a call to one of the <code>Collections.synchronized*()</code>
+	 * methods.
+	 *
+	 * @param expression the expression
+	 * @return <code>true</code> for synchronized wrappers
+	 */
+	static boolean isSynchronizedWrapper(Expression expression) {
+		if (!(expression instanceof MethodInvocation))
+			return false;
+		MethodInvocation invocation= (MethodInvocation) expression;
+		if (invocation.arguments().size() != 1 || !invocation.getName().getIdentifier().startsWith("synchronized")) //$NON-NLS-1$
+			return false;
+		IMethodBinding method= invocation.resolveMethodBinding();
+		return method != null && COLLECTIONS.equals(method.getDeclaringClass().getQualifiedName());
+	}
+
+	/**
+	 * Returns the targets a collection class can be converted to. The first one is the default.
+	 *
+	 * @param sourceType the qualified name of the collection class
+	 * @return the possible targets
+	 */
+	public static int[] getTargets(String sourceType) {
+		if (ARRAY_LIST.equals(sourceType))
+			return new int[] { COPY_ON_WRITE_ARRAY_LIST };
+		if (LINKED_LIST.equals(sourceType))
+			return new int[] { COPY_ON_WRITE_ARRAY_LIST, CONCURRENT_LINKED_QUEUE };
+		if (TREE_MAP.equals(sourceType))
+			return new int[] { CONCURRENT_SKIP_LIST_MAP };
+		if (HASH_SET.equals(sourceType))
+			return new int[] { CONCURRENT_KEY_SET };
+		if (PRIORITY_QUEUE.equals(sourceType))
+			return new int[] { PRIORITY_BLOCKING_QUEUE };
+		return new int[0];
+	}
+
+	@Override
+	public RefactoringStatus checkFinalConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+
+		RefactoringStatus result= new RefactoringStatus();
+		fChangeManager.clear();
+		pm.beginTask(NO_NAME, 12);
+		pm.setTaskName(ConcurrencyRefactorings.ConvertToConcurrentCollection_check_preconditions);
+		result.merge(checkTargetAvailable());
+		pm.worked(1);
+		if (result.hasFatalError())
+			return result;
+		pm.setTaskName(ConcurrencyRefactorings.ConvertToConcurrentCollection_task_name);
+		final SubProgressMonitor subPm= new SubProgressMonitor(pm, 5);
+		ICompilationUnit[] affectedCUs= RefactoringSearchEngine.findAffectedCompilationUnits(
+			SearchPattern.createPattern(fField, IJavaSearchConstants.ALL_OCCURRENCES),
+			RefactoringScopeFactory.create(fField, true),
+			subPm,
+			result, true);
+
+		if (result.hasFatalError())
+			return result;
+
+		pm.setTaskName(ConcurrencyRefactorings.ConcurrencyRefactorings_program_name);
+		IProgressMonitor sub= new SubProgressMonitor(pm, 5);
+		sub.beginTask(NO_NAME, affectedCUs.length);
+		IVariableBinding fieldIdentifier= fFieldDeclarationFragment.resolveBinding();
+		List<TextEditGroup> ownerDescriptions= new ArrayList<TextEditGroup>();
+		ICompilationUnit owner= fField.getCompilationUnit();
+		fImportRewrite= StubUtility.createImportRewrite(fRoot, true);
+
+		// the declaration depends on the methods used in all compilation units, so the
+		// edits are only created once every unit has been analyzed
+		List<ICompilationUnit> units= new ArrayList<ICompilationUnit>();
+		List<ASTRewrite> rewriters= new ArrayList<ASTRewrite>();
+		List<ImportRewrite> importRewrites= new ArrayList<ImportRewrite>();
+		List<List<TextEditGroup>> descriptions= new ArrayList<List<TextEditGroup>>();
+		boolean usesTargetMethods= false;
+		for (int i= 0; i < affectedCUs.length; i++) {
+			ICompilationUnit unit= affectedCUs[i];
+			sub.subTask(unit.getElementName());
+			CompilationUnit root;
+			ASTRewrite rewriter;
+			ImportRewrite importRewrite;
+			List<TextEditGroup> groups;
+			if (owner.equals(unit)) {
+				root= fRoot;
+				rewriter= fRewriter;
+				importRewrite= fImportRewrite;
+				groups= ownerDescriptions;
+			} else {
+				root= new RefactoringASTParser(AST.JLS3).parse(unit, true);
+				rewriter= ASTRewrite.create(root.getAST());
+				importRewrite= StubUtility.createImportRewrite(root, true);
+				groups= new ArrayList<TextEditGroup>();
+				units.add(unit);
+				rewriters.add(rewriter);
+				importRewrites.add(importRewrite);
+				descriptions.add(groups);
+			}
+			checkCompileErrors(result, root, unit);
+			AccessAnalyzerForConcurrentCollection analyzer= new AccessAnalyzerForConcurrentCollection(this, unit, fieldIdentifier, rewriter, importRewrite);
+			root.accept(analyzer);
+			result.merge(analyzer.getStatus());
+			if (result.hasFatalError()) {
+				fChangeManager.clear();
+				return result;
+			}
+			groups.addAll(analyzer.getGroupDescriptions());
+			usesTargetMethods|= analyzer.usesTargetMethods();
+			sub.worked(1);
+			if (pm.isCanceled())
+				throw new OperationCanceledException();
+		}
+		sub.done();
+
+		TextEditGroup declarationGroup= changeDeclaredType(fRoot, usesTargetMethods);
+		if (declarationGroup != null)
+			ownerDescriptions.add(declarationGroup);
+		createEdits(owner, fRewriter, ownerDescriptions, fImportRewrite);
+		for (int i= 0; i < units.size(); i++) {
+			createEdits(units.get(i), rewriters.get(i), descriptions.get(i), importRewrites.get(i));
+		}
+
+		IFile[] filesToBeModified= ResourceUtil.getFiles(fChangeManager.getAllCompilationUnits());
+		result.merge(Checks.validateModifiesFiles(filesToBeModified, getValidationContext()));
+		if (result.hasFatalError())
+			return result;
+		ResourceChangeChecker.checkFilesToBeChanged(filesToBeModified, new SubProgressMonitor(pm, 1));
+		return result;
+	}
+
+	private RefactoringStatus checkTargetAvailable() throws JavaModelException {
+		RefactoringStatus result= new RefactoringStatus();
+		IType type= fField.getJavaProject().findType(getTargetQualifiedName());
+		boolean available= type != null;
+		if (available && fTarget == CONCURRENT_KEY_SET) {
+			IMethod newKeySet= type.getMethod("newKeySet", new String[0]); //$NON-NLS-1$
+			available= newKeySet.exists();
+		}
+		if (!available)
+			result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertToConcurrentCollection_missing_type, getTargetDescription()));
+		return result;
+	}
+
+	/*
+	 * The declared type is changed when it is the implementation class or when the code uses
+	 * methods that only the new collection offers, e.g. addIfAbsent().
+	 */
+	private TextEditGroup changeDeclaredType(CompilationUnit root, boolean usesTargetMethods) {
+		FieldDeclaration oldFieldDeclaration= (FieldDeclaration)ASTNodes.getParent(fFieldDeclarationFragment, FieldDeclaration.class);
+		Type oldType= oldFieldDeclaration.getType();
+		ITypeBinding declared= oldType.resolveBinding();
+		if (declared != null && declared.getErasure().isInterface() && !usesTargetMethods)
+			return null;
+
+		AST ast= root.getAST();
+		TextEditGroup gd= new TextEditGroup(ConcurrencyRefactorings.ConvertToConcurrentCollection_change_type);
+		String typeName= fImportRewrite.addImport(fTarget == CONCURRENT_KEY_SET ? SET : getTargetQualifiedName());
+		Type newType= ast.newSimpleType(ast.newName(typeName));
+		if (oldType instanceof ParameterizedType) {
+			ParameterizedType parameterized= ast.newParameterizedType(newType);
+			parameterized.typeArguments().addAll(ASTNode.copySubtrees(ast, ((ParameterizedType) oldType).typeArguments()));
+			newType= parameterized;
+		}
+
+		if (oldFieldDeclaration.fragments().size() > 1) {
+			// the other fragments keep their type, the initializer is moved with its rewritten content
+			VariableDeclarationFragment fragment= (VariableDeclarationFragment) fRewriter.createMoveTarget(fFieldDeclarationFragment);
+			FieldDeclaration newFieldDeclaration= ast.newFieldDeclaration(fragment);
+			newFieldDeclaration.setType(newType);
+			ModifierRewrite.create(fRewriter, newFieldDeclaration).copyAllModifiers(oldFieldDeclaration, gd);
+			ChildListPropertyDescriptor descriptor= getBodyDeclarationsProperty(oldFieldDeclaration.getParent());
+			fRewriter.getListRewrite(oldFieldDeclaration.getParent(), descriptor).insertAfter(newFieldDeclaration, oldFieldDeclaration, gd);
+		} else {
+			fRewriter.replace(oldType, newType, gd);
+		}
+		return gd;
+	}
+
+	private ChildListPropertyDescriptor getBodyDeclarationsProperty(ASTNode declaration) {
+		if (declaration instanceof AnonymousClassDeclaration)
+			return AnonymousClassDeclaration.BODY_DECLARATIONS_PROPERTY;
+		else if (declaration instanceof AbstractTypeDeclaration)
+			return ((AbstractTypeDeclaration) declaration).getBodyDeclarationsProperty();
+		Assert.isTrue(false);
+		return null;
+	}
+
+	private void createEdits(ICompilationUnit unit, ASTRewrite rewriter, List<TextEditGroup> groups, ImportRewrite importRewrite) throws CoreException {
+		TextChange change= fChangeManager.get(unit);
+		MultiTextEdit root= new MultiTextEdit();
+		change.setEdit(root);
+
+		TextEdit importEdit= importRewrite.rewriteImports(null);
+		TextChangeCompatibility.addTextEdit(change, ConcurrencyRefactorings.ConcurrencyRefactorings_update_imports, importEdit);
+
+		root.addChild(rewriter.rewriteAST());
+		for (int i= 0; i < groups.size(); i++) {
+			change.addTextEditGroup(groups.get(i));
+		}
+	}
+
+	private RefactoringStatus mappingErrorFound(RefactoringStatus result, ASTNode node) {
+		if (node != null && (node.getFlags() & ASTNode.MALFORMED) != 0 && processCompilerError(result, node))
+			return result;
+		result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertToConcurrentCollection_analyze_error, fField.getElementName()));
+		return result;
+	}
+
+	private boolean processCompilerError(RefactoringStatus result, ASTNode node) {
+		Message[] messages= ASTNodes.getMessages(node, ASTNodes.INCLUDE_ALL_PARENTS);
+		if (messages.length == 0)
+			return false;
+		result.addFatalError(Messages.format(
+			ConcurrencyRefactorings.ConcurrencyRefactorings_field_compile_error,
+			new String[] { fField.getElementName(), messages[0].getMessage()}));
+		return true;
+	}
+
+	@Override
+	public Change createChange(IProgressMonitor pm) throws CoreException,
+			OperationCanceledException {
+		String project= null;
+		IJavaProject javaProject= fField.getJavaProject();
+		if (javaProject != null)
+			project= javaProject.getElementName();
+		int flags= JavaRefactoringDescriptor.JAR_MIGRATION | JavaRefactoringDescriptor.JAR_REFACTORING | RefactoringDescriptor.STRUCTURAL_CHANGE | RefactoringDescriptor.MULTI_CHANGE;
+		final IType declaring= fField.getDeclaringType();
+		try {
+			if (declaring.isAnonymous() || declaring.isLocal())
+				flags|= JavaRefactoringDescriptor.JAR_SOURCE_ATTACHMENT;
+		} catch (JavaModelException exception) {
+			JavaPlugin.log(exception);
+		}
+
+		final Map<String, String> arguments= new HashMap<String, String>();
+		String description= ConcurrencyRefactorings.ConvertToConcurrentCollection_name_user;
+		String comment= Messages.format(ConcurrencyRefactorings.ConvertToConcurrentCollection_comment,
+				new String[] { fField.getElementName(), getTargetDescription() });
+
+		final JavaRefactoringDescriptor descriptor= new JavaRefactoringDescriptor(IJavaRefactorings.ENCAPSULATE_FIELD, project, description, comment, arguments, flags) {};
+
+		final DynamicValidationRefactoringChange result= new DynamicValidationRefactoringChange(descriptor, getName());
+		TextChange[] changes= fChangeManager.getAllChanges();
+		pm.beginTask(NO_NAME, changes.length);
+		pm.setTaskName(ConcurrencyRefactorings.ConvertToConcurrentCollection_create_changes);
+		for (int i= 0; i < changes.length; i++) {
+			result.add(changes[i]);
+			pm.worked(1);
+		}
+		pm.done();
+		return result;
+	}
+
+	@Override
+	public String getName() {
+		return ConcurrencyRefactorings.ConvertToConcurrentCollection_name_official;
+	}
+
+	public IField getField() {
+		return fField;
+	}
+
+	public String getFieldName() {
+		return fField.getElementName();
+	}
+
+	/**
+	 * Returns the qualified name of the collection class the field is currently initialized with.
+	 *
+	 * @return the collection class, e.g. <code>java.util.ArrayList</code>
+	 */
+	public String getSourceType() {
+		return fSourceType;
+	}
+
+	public int getTarget() {
+		return fTarget;
+	}
+
+	/**
+	 * Sets the collection the field is converted to.
+	 *
+	 * @param target one of the targets returned by {@link #getTargets(String)} for the
+	 *            current collection class
+	 * @return the status of the new setting
+	 */
+	public RefactoringStatus setTarget(int target) {
+		int[] targets= getTargets(fSourceType);
+		for (int i= 0; i < targets.length; i++) {
+			if (targets[i] == target) {
+				fTarget= target;
+				return new RefactoringStatus();
+			}
+		}
+		return RefactoringStatus.createFatalErrorStatus(Messages.format(ConcurrencyRefactorings.ConvertToConcurrentCollection_invalid_target,
+				new String[] { getTargetDescription(target), fSourceType }));
+	}
+
+	/**
+	 * @return the qualified name of the class that creates the new collection
+	 */
+	public String getTargetQualifiedName() {
+		return TARGET_TYPES[fTarget];
+	}
+
+	/**
+	 * @return a short description of the new collection, e.g. <code>CopyOnWriteArrayList</code>
+	 */
+	public String getTargetDescription() {
+		return getTargetDescription(fTarget);
+	}
+
+	/**
+	 * Returns a short description of a target collection.
+	 *
+	 * @param target the target
+	 * @return the description, e.g. <code>CopyOnWriteArrayList</code>
+	 */
+	public static String getTargetDescription(int target) {
+		if (target == CONCURRENT_KEY_SET)
+			return "ConcurrentHashMap.newKeySet()"; //$NON-NLS-1$
+		String name= TARGET_TYPES[target];
+		return name.substring(name.lastIndexOf('.') + 1);
+	}
+
+	private boolean isIgnorableProblem(IProblem problem) {
+		return problem.getID() == IProblem.NotVisibleField;
+	}
+
+	private void checkCompileErrors(RefactoringStatus result, CompilationUnit root, ICompilationUnit element) {
+		IProblem[] messages= root.getProblems();
+		for (int i= 0; i < messages.length; i++) {
+			IProblem problem= messages[i];
+			if (!isIgnorableProblem(problem)) {
+				result.addError(Messages.format(
+						ConcurrencyRefactorings.ConvertToConcurrentCollection_compile_error,
+						element.getElementName()), JavaStatusContext.create(element));
+				return;
+			}
+		}
+	}
+}
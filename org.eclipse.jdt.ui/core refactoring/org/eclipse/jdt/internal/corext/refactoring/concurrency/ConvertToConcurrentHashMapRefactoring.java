@@ -18,6 +18,7 @@ import org.eclipse.jdt.core.IField;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.ISourceRange;
 import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.compiler.IProblem;
 import org.eclipse.jdt.core.dom.AST;
@@ -59,6 +60,7 @@ import org.eclipse.jdt.internal.corext.refactoring.changes.TextChangeCompatibili
 import org.eclipse.jdt.internal.corext.refactoring.util.RefactoringASTParser;
 import org.eclipse.jdt.internal.corext.refactoring.util.ResourceUtil;
 import org.eclipse.jdt.internal.corext.refactoring.util.TextChangeManager;
+import org.eclipse.jdt.internal.corext.util.JavaModelUtil;
 import org.eclipse.jdt.internal.corext.util.Messages;
 import org.eclipse.jdt.internal.ui.JavaPlugin;
 import org.eclipse.jface.text.BadLocationException;
@@ -89,9 +91,13 @@ public class ConvertToConcurrentHashMapRefactoring extends Refactoring {
 	private TextChangeManager fChangeManager;
 	private ImportRewrite fImportRewrite;
 	private static final String LINKED_NAME= "name"; //$NON-NLS-1$
+	private static final String BI_FUNCTION= "java.util.function.BiFunction"; //$NON-NLS-1$
+	private static final String VERSION_1_8= "1.8"; //$NON-NLS-1$
 	private TextEditGroup extractMethodTextEdit;
 	private TextEditGroup removeSetMethodInvocationTextEdit;
 	private boolean usingCHMOnlyMethods = false;
+	private boolean fUseComputeOperations;
+	private boolean fApplyComputeOperations;
 	
 
 	public ConvertToConcurrentHashMapRefactoring(IField field){
@@ -108,6 +114,9 @@ public class ConvertToConcurrentHashMapRefactoring extends Refactoring {
 		pm.beginTask("", 12);
 		pm.setTaskName("Convert to ConcurrentHashMap: checking preconditions");
 		pm.worked(1);
+		fApplyComputeOperations= false;
+		if (fUseComputeOperations)
+			result.merge(checkComputeOperations());
 		if (result.hasFatalError())
 			return result;
 		pm.setTaskName("ConvertToConcurrentHashMap: searching for cunits"); 
@@ -185,6 +194,18 @@ public class ConvertToConcurrentHashMapRefactoring extends Refactoring {
 		
 	}
 
+	private RefactoringStatus checkComputeOperations() throws JavaModelException {
+		RefactoringStatus result= new RefactoringStatus();
+		IJavaProject project= fField.getJavaProject();
+		if (JavaModelUtil.isVersionLessThan(project.getOption(JavaCore.COMPILER_SOURCE, true), VERSION_1_8))
+			result.addInfo(ConcurrencyRefactorings.ConvertToConcurrentHashMapRefactoring_lambda_fallback);
+		else if (project.findType(BI_FUNCTION) == null)
+			result.addFatalError(ConcurrencyRefactorings.ConvertToConcurrentHashMapRefactoring_missing_function);
+		else
+			fApplyComputeOperations= true;
+		return result;
+	}
+
 	private List<String> test = new ArrayList<String>();
 	
 	
@@ -486,6 +507,35 @@ public class ConvertToConcurrentHashMapRefactoring extends Refactoring {
 		return fField.getElementName();
 	}
 
+	public boolean isUseComputeOperations() {
+		return fUseComputeOperations;
+	}
+
+	/**
+	 * Tells whether check-then-act sequences are rewritten with the compute operations. This is
+	 * the case if they have been requested and the source level of the project supports lambda
+	 * expressions. Otherwise <code>putIfAbsent</code> is used.
+	 *
+	 * @return <code>true</code> if the compute operations are emitted
+	 */
+	boolean isApplyingComputeOperations() {
+		return fApplyComputeOperations;
+	}
+
+	/**
+	 * Sets whether check-then-act sequences are converted to <code>computeIfAbsent</code>,
+	 * <code>compute</code>, <code>merge</code> and <code>remove(key, value)</code> instead of
+	 * <code>putIfAbsent</code>. These operations take lambda expressions, so the value is only
+	 * created if the key is absent.
+	 *
+	 * @param useComputeOperations <code>true</code> to use the Java 8 operations
+	 * @return the status of the new setting
+	 */
+	public RefactoringStatus setUseComputeOperations(boolean useComputeOperations) {
+		fUseComputeOperations= useComputeOperations;
+		return new RefactoringStatus();
+	}
+
 	
 	private boolean isIgnorableProblem(IProblem problem) {
 		if (problem.getID() == IProblem.NotVisibleField)
@@ -4,9 +4,13 @@ import java.text.MessageFormat;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
@@ -29,6 +33,7 @@ import org.eclipse.ltk.core.refactoring.Change;
 import org.eclipse.ltk.core.refactoring.Refactoring;
 import org.eclipse.ltk.core.refactoring.RefactoringDescriptor;
 import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.RefactoringStatusContext;
 import org.eclipse.ltk.core.refactoring.TextChange;
 import org.eclipse.ltk.core.refactoring.participants.ResourceChangeChecker;
 
@@ -40,6 +45,7 @@ import org.eclipse.jdt.core.ISourceRange;
 import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.SourceRange;
 import org.eclipse.jdt.core.compiler.IProblem;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
@@ -52,11 +58,18 @@ import org.eclipse.jdt.core.dom.Block;
 import org.eclipse.jdt.core.dom.ChildListPropertyDescriptor;
 import org.eclipse.jdt.core.dom.ClassInstanceCreation;
 import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ConditionalExpression;
+import org.eclipse.jdt.core.dom.DoStatement;
+import org.eclipse.jdt.core.dom.EnhancedForStatement;
 import org.eclipse.jdt.core.dom.Expression;
 import org.eclipse.jdt.core.dom.ExpressionStatement;
 import org.eclipse.jdt.core.dom.FieldAccess;
 import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IBinding;
 import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
 import org.eclipse.jdt.core.dom.IfStatement;
 import org.eclipse.jdt.core.dom.InfixExpression;
 import org.eclipse.jdt.core.dom.Message;
@@ -64,7 +77,11 @@ import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.MethodInvocation;
 import org.eclipse.jdt.core.dom.Modifier;
 import org.eclipse.jdt.core.dom.Modifier.ModifierKeyword;
+import org.eclipse.jdt.core.dom.Name;
 import org.eclipse.jdt.core.dom.NodeFinder;
+import org.eclipse.jdt.core.dom.ParameterizedType;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
 import org.eclipse.jdt.core.dom.PrimitiveType;
 import org.eclipse.jdt.core.dom.ReturnStatement;
 import org.eclipse.jdt.core.dom.SimpleName;
@@ -74,6 +91,7 @@ import org.eclipse.jdt.core.dom.Type;
 import org.eclipse.jdt.core.dom.TypeDeclaration;
 import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
 import org.eclipse.jdt.core.dom.VariableDeclarationStatement;
+import org.eclipse.jdt.core.dom.WhileStatement;
 import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
 import org.eclipse.jdt.core.dom.rewrite.ImportRewrite;
 import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
@@ -81,6 +99,7 @@ import org.eclipse.jdt.core.refactoring.IJavaRefactorings;
 import org.eclipse.jdt.core.refactoring.descriptors.FJTaskRefactoringDescriptor;
 import org.eclipse.jdt.core.refactoring.descriptors.JavaRefactoringDescriptor;
 
+import org.eclipse.jdt.internal.corext.dom.Bindings;
 import org.eclipse.jdt.internal.corext.dom.ModifierRewrite;
 import org.eclipse.jdt.internal.corext.refactoring.changes.DynamicValidationRefactoringChange;
 import org.eclipse.jdt.internal.corext.refactoring.changes.TextChangeCompatibility;
@@ -105,8 +124,7 @@ public class ConvertToFJTaskRefactoring extends Refactoring {
 	private ImportRewrite fImportRewrite;
 	private String nameForFJTaskSubtype= ConcurrencyRefactorings.ConcurrencyRefactorings_empty_string;
 	private String sequentialThreshold= ConcurrencyRefactorings.ConcurrencyRefactorings_empty_string;
-	private boolean fInfixExpressionFlag= false;
-	private boolean fMethodInvocationFlag= false;
+	private boolean fUsesTaskList= false;
 
 	
 
@@ -122,6 +140,7 @@ public class ConvertToFJTaskRefactoring extends Refactoring {
 		
 		RefactoringStatus result= new RefactoringStatus();
 		fChangeManager.clear();
+		fUsesTaskList= false;
 		pm.beginTask(ConcurrencyRefactorings.ConcurrencyRefactorings_empty_string, 12);
 		pm.setTaskName(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_check_preconditions);
 		pm.worked(1);
@@ -193,13 +212,13 @@ public class ConvertToFJTaskRefactoring extends Refactoring {
 		declTask.setType(ast.newSimpleType(ast.newSimpleName(nameForFJTaskSubtype)));
 		newStatements.add(declTask);
 		
-		String poolInvoke= "pool.invoke(" + taskInstanceName +");"; //$NON-NLS-1$ //$NON-NLS-2$
-		ASTNode poolInvokeNode= fRewriter.createStringPlaceholder(poolInvoke, ASTNode.EXPRESSION_STATEMENT);
-		newStatements.add(poolInvokeNode);
-		
-		if (!recursiveMethodReturnsVoid()) {
-			String returnSt= "return " + taskInstanceName + ".result;"; //$NON-NLS-1$ //$NON-NLS-2$
-			ASTNode returnNode= fRewriter.createStringPlaceholder(returnSt, ASTNode.EXPRESSION_STATEMENT);
+		if (recursiveMethodReturnsVoid()) {
+			String poolInvoke= "pool.invoke(" + taskInstanceName +");"; //$NON-NLS-1$ //$NON-NLS-2$
+			ASTNode poolInvokeNode= fRewriter.createStringPlaceholder(poolInvoke, ASTNode.EXPRESSION_STATEMENT);
+			newStatements.add(poolInvokeNode);
+		} else {
+			String returnSt= "return pool.invoke(" + taskInstanceName + ");"; //$NON-NLS-1$ //$NON-NLS-2$
+			ASTNode returnNode= fRewriter.createStringPlaceholder(returnSt, ASTNode.RETURN_STATEMENT);
 			newStatements.add(returnNode);
 		}
 		
@@ -213,17 +232,32 @@ public class ConvertToFJTaskRefactoring extends Refactoring {
 	private void addImports(ImportRewrite importRewrite) {
 		
 		importRewrite.addImport("java.util.concurrent.ForkJoinPool"); //$NON-NLS-1$
-		importRewrite.addImport("java.util.concurrent.RecursiveAction"); //$NON-NLS-1$
+		if (recursiveMethodReturnsVoid()) {
+			importRewrite.addImport("java.util.concurrent.RecursiveAction"); //$NON-NLS-1$
+		} else {
+			importRewrite.addImport("java.util.concurrent.RecursiveTask"); //$NON-NLS-1$
+		}
+		if (fUsesTaskList) {
+			importRewrite.addImport("java.util.ArrayList"); //$NON-NLS-1$
+			importRewrite.addImport("java.util.List"); //$NON-NLS-1$
+		}
 	}
 
 	private Collection<TextEditGroup> addCreateTaskClass(CompilationUnit root, RefactoringStatus result) {
 		
-		TextEditGroup gd= new TextEditGroup(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_recursive_action);
-		
 		AST ast= root.getAST();
 		TypeDeclaration recursiveActionSubtype= ast.newTypeDeclaration();
 		recursiveActionSubtype.setName(ast.newSimpleName(nameForFJTaskSubtype));
-		recursiveActionSubtype.setSuperclassType(ast.newSimpleType(ast.newSimpleName("RecursiveAction")));	//$NON-NLS-1$	
+		TextEditGroup gd;
+		if (recursiveMethodReturnsVoid()) {
+			gd= new TextEditGroup(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_recursive_action);
+			recursiveActionSubtype.setSuperclassType(ast.newSimpleType(ast.newSimpleName("RecursiveAction")));	//$NON-NLS-1$
+		} else {
+			gd= new TextEditGroup(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_recursive_task);
+			ParameterizedType recursiveTask= ast.newParameterizedType(ast.newSimpleType(ast.newSimpleName("RecursiveTask"))); //$NON-NLS-1$
+			recursiveTask.typeArguments().add(createTaskResultType(ast));
+			recursiveActionSubtype.setSuperclassType(recursiveTask);
+		}
 		ModifierRewrite.create(fRewriter, recursiveActionSubtype).copyAllModifiers(fMethodDeclaration, gd);
 		
 		createFields(recursiveActionSubtype, ast);
@@ -249,11 +283,14 @@ public class ConvertToFJTaskRefactoring extends Refactoring {
 		recursiveActionSubtype.bodyDeclarations().add(copyRecursiveMethod);
 	}
 
-	private void createComputeMethod(TypeDeclaration recursiveActionSubtype, AST ast, RefactoringStatus result) {
+	private void createComputeMethod(TypeDeclaration taskSubtype, AST ast, RefactoringStatus result) {
 		
 		MethodDeclaration computeMethod= ast.newMethodDeclaration();
 		computeMethod.setName(ast.newSimpleName("compute")); //$NON-NLS-1$
 		computeMethod.modifiers().add(ast.newModifier(ModifierKeyword.PROTECTED_KEYWORD));
+		if (!recursiveMethodReturnsVoid()) {
+			computeMethod.setReturnType2(createTaskResultType(ast));
+		}
 		
 		final TextEditGroup editGroup= new TextEditGroup(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_generate_compute);
 		
@@ -288,222 +325,67 @@ public class ConvertToFJTaskRefactoring extends Refactoring {
 				ListRewrite listRewriteForBaseBlock= scratchRewriter.getListRewrite(baseCaseBlock, Block.STATEMENTS_PROPERTY);
 				listRewriteForBaseBlock.insertBefore(sequentialMethodInvocation, lastStatementInBaseCase, editGroup);
 			} else {
-				Assignment assignmentToResult= ast.newAssignment();
-				assignmentToResult.setLeftHandSide(ast.newSimpleName("result")); //$NON-NLS-1$
-				assignmentToResult.setRightHandSide(createSequentialMethodInvocation(ast));
-				ExpressionStatement newExpressionStatement= ast.newExpressionStatement(assignmentToResult);
-				
-				ListRewrite listRewriteForBaseBlock= scratchRewriter.getListRewrite(baseCaseBlock, Block.STATEMENTS_PROPERTY);
-				listRewriteForBaseBlock.insertBefore(newExpressionStatement, lastStatementInBaseCase, editGroup);
-				ReturnStatement newReturnResult= ast.newReturnStatement();
-				scratchRewriter.replace(lastStatementInBaseCase, newReturnResult, editGroup);
+				ReturnStatement returnSequentialResult= ast.newReturnStatement();
+				returnSequentialResult.setExpression(createSequentialMethodInvocation(ast));
+				scratchRewriter.replace(lastStatementInBaseCase, returnSequentialResult, editGroup);
 			}
 		} else if (recursionBaseCaseBranch instanceof ReturnStatement) {
-			Block basecaseBlock= ast.newBlock();
-			List<ASTNode> basecaseStatements= basecaseBlock.statements();
 			if (recursiveMethodReturnsVoid()) {
-				ExpressionStatement sequentialMethodInvocation= ast.newExpressionStatement(createSequentialMethodInvocation(ast));
-				basecaseStatements.add(sequentialMethodInvocation);
+				Block basecaseBlock= ast.newBlock();
+				List<ASTNode> basecaseStatements= basecaseBlock.statements();
+				basecaseStatements.add(ast.newExpressionStatement(createSequentialMethodInvocation(ast)));
+				basecaseStatements.add(ast.newReturnStatement());
+				scratchRewriter.replace(recursionBaseCaseBranch, basecaseBlock, editGroup);
 			} else {
-				Assignment assignmentToResult= ast.newAssignment();
-				assignmentToResult.setLeftHandSide(ast.newSimpleName("result")); //$NON-NLS-1$
-				assignmentToResult.setRightHandSide(createSequentialMethodInvocation(ast));
-				ExpressionStatement newExpressionStatement= ast.newExpressionStatement(assignmentToResult);
-				basecaseStatements.add(newExpressionStatement);
+				ReturnStatement returnSequentialResult= ast.newReturnStatement();
+				returnSequentialResult.setExpression(createSequentialMethodInvocation(ast));
+				scratchRewriter.replace(recursionBaseCaseBranch, returnSequentialResult, editGroup);
 			}
-			basecaseStatements.add(ast.newReturnStatement());
-			scratchRewriter.replace(recursionBaseCaseBranch, basecaseBlock, editGroup);
 		}
 		
+		List<MethodInvocation> recursiveCalls= findRecursiveCalls(fMethodDeclaration.getBody());
+		if (recursiveCalls.size() == 0) {
+			RefactoringStatus fatalError= new RefactoringStatus();
+			fatalError.addFatalError(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_recursion_error_1 
+							+ fMethod.getElementName() + ConcurrencyRefactorings.ConvertToFJTaskRefactoring_recursion_error_2);
+			result.merge(fatalError);
+			return;
+		}
 		
-		final List<Statement> lastStatementWithRecursiveMethodInvocation= new ArrayList<Statement>();
-		final int[] taskNumber= new int[] {0};
-		final List<String> partialComputationsNames= new ArrayList<String>();
-		final List<String> typesOfComputations= new ArrayList<String>();
-		fMethodDeclaration.accept(new ASTVisitor() {
-			@Override
-			public boolean visit(MethodInvocation methodCall) {
-				
-				IMethodBinding bindingForMethodCall= methodCall.resolveMethodBinding();
-				IMethodBinding bindingForMethodDeclaration= fMethodDeclaration.resolveBinding();
-				if (bindingForMethodCall.isEqualTo(bindingForMethodDeclaration)) {
-					String codeForTaskDecl= nameForFJTaskSubtype + " task" + ++taskNumber[0] +  //$NON-NLS-1$
-				    " = new " + nameForFJTaskSubtype + "("; //$NON-NLS-1$ //$NON-NLS-2$
-					String methodArguments= ConcurrencyRefactorings.ConcurrencyRefactorings_empty_string;
-					List<Expression> arguments= methodCall.arguments();
-					for (Iterator<Expression> iterator= arguments.iterator(); iterator
-							.hasNext();) {
-						ASTNode argument= iterator.next();
-						methodArguments += argument.toString();
-						if (iterator.hasNext()) {
-							methodArguments += ", "; //$NON-NLS-1$
-						}
-					}
-					codeForTaskDecl += methodArguments + ");"; //$NON-NLS-1$
-					VariableDeclarationStatement taskDeclStatement= (VariableDeclarationStatement) scratchRewriter.createStringPlaceholder(codeForTaskDecl , ASTNode.VARIABLE_DECLARATION_STATEMENT);
-					Statement parentOfMethodCall= findParentStatement(methodCall);
-					if (recursiveMethodReturnsVoid()) {
-						scratchRewriter.replace(parentOfMethodCall, taskDeclStatement, editGroup);
-					}
-					else {
-						if (parentOfMethodCall == null) {
-							return false;
-						}
-						else if (parentOfMethodCall instanceof VariableDeclarationStatement){
-							VariableDeclarationStatement varDeclaration= (VariableDeclarationStatement) parentOfMethodCall;
-							VariableDeclarationFragment varFragment= (VariableDeclarationFragment) varDeclaration.fragments().get(0);
-							partialComputationsNames.add(varFragment.getName().getIdentifier());
-							typesOfComputations.add(varDeclaration.getType().toString());
-							scratchRewriter.replace(parentOfMethodCall, taskDeclStatement, editGroup);
-						}
-						else if (parentOfMethodCall instanceof ExpressionStatement) {
-							ExpressionStatement exprStatement= (ExpressionStatement) parentOfMethodCall;
-							Expression expressionContainer= exprStatement.getExpression();
-							if (expressionContainer instanceof Assignment) {
-								Assignment assignment= (Assignment) expressionContainer;
-								Expression leftHandSide= assignment.getLeftHandSide();
-								partialComputationsNames.add(leftHandSide.toString());
-								typesOfComputations.add(leftHandSide.resolveTypeBinding().getName());
-								scratchRewriter.replace(parentOfMethodCall, taskDeclStatement, editGroup);
-							}  
-							else
-								System.err.println(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_scenario_error + parentOfMethodCall.toString() );
-						}
-						else if (parentOfMethodCall instanceof ReturnStatement) {
-							ASTNode tempNode= parentOfMethodCall.getParent();
-							if (tempNode instanceof Block) {
-								Block blockWithReturn= (Block) tempNode;
-								ListRewrite listRewriteForBlock= scratchRewriter.getListRewrite(blockWithReturn, Block.STATEMENTS_PROPERTY);
-								List<ASTNode> statementsInBlockWithReturn= blockWithReturn.statements();
-								Statement lastStatementInBlock= (Statement) statementsInBlockWithReturn.get(statementsInBlockWithReturn.size() - 1);
-								if (lastStatementInBlock instanceof ReturnStatement) {  //TODO Do I need this check?
-									listRewriteForBlock.insertBefore(taskDeclStatement, lastStatementInBlock, editGroup);
-								}
-							}
-							Expression exprTemp= ((ReturnStatement) parentOfMethodCall).getExpression();
-							if (exprTemp instanceof InfixExpression) {
-								fInfixExpressionFlag= true;
-							}
-							else if (exprTemp instanceof MethodInvocation) {
-								fMethodInvocationFlag= true;
-							}
-							else
-								System.err.println(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_scenario_error + parentOfMethodCall.toString() );
-						}
-						else 
-							System.err.println(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_scenario_error + parentOfMethodCall.toString() );
-					}
-					lastStatementWithRecursiveMethodInvocation.add(parentOfMethodCall);
-					
-				}
-				return true;
-			}
-		});
-		try {
-			if (lastStatementWithRecursiveMethodInvocation.size() == 0) {
-				RefactoringStatus fatalError= new RefactoringStatus();
-				fatalError.addFatalError(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_recursion_error_1 
-								+ fMethod.getElementName() + ConcurrencyRefactorings.ConvertToFJTaskRefactoring_recursion_error_2);
-				result.merge(fatalError);
-				return;
+		// Recursive calls inside a loop are collected into a task list per loop. All other recursive
+		// calls of the same block are forked together, the last one is computed by the current thread.
+		Map<ASTNode, List<MethodInvocation>> subproblems= new LinkedHashMap<ASTNode, List<MethodInvocation>>();
+		for (MethodInvocation recursiveCall : recursiveCalls) {
+			ASTNode key= getEnclosingLoop(recursiveCall);
+			if (key == null) {
+				key= getSplitContainer(recursiveCall);
 			}
-			Block blockContainingTaskDecl;
-			ASTNode tempNode= lastStatementWithRecursiveMethodInvocation.get(0);
-			do {
-				tempNode= tempNode.getParent();
-			} while (tempNode != null && !Block.class.isInstance(tempNode));
-			if (tempNode == null) {
-				RefactoringStatus fatalError= new RefactoringStatus();
-				fatalError.addFatalError(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_recursion_error_1 
-								+ fMethod.getElementName() + ConcurrencyRefactorings.ConvertToFJTaskRefactoring_recursion_error_2);
-				result.merge(fatalError);
-				return;
-			}
-			blockContainingTaskDecl = (Block) tempNode;
-			ListRewrite listRewriteForBlock= scratchRewriter.getListRewrite(blockContainingTaskDecl, Block.STATEMENTS_PROPERTY);
-			
-			MethodInvocation forkJoinInvocation= ast.newMethodInvocation();
-			//TODO the code below assumes that there are just two tasks passed to the
-			// invokeAll. Need to implement the scenario with more than two tasks - COMPLETED (I think, seemed like was too easy...)
-			forkJoinInvocation.setName(ast.newSimpleName("invokeAll")); //$NON-NLS-1$
-			List<Expression> argumentsForkJoin= forkJoinInvocation.arguments();
-			for (int i= 1; i <= taskNumber[0]; i++) {
-				argumentsForkJoin.add(ast.newSimpleName("task" + i)); //$NON-NLS-1$
+			List<MethodInvocation> callsInContainer= subproblems.get(key);
+			if (callsInContainer == null) {
+				callsInContainer= new ArrayList<MethodInvocation>();
+				subproblems.put(key, callsInContainer);
 			}
-			Statement lastStatementWithRecursiveCall= lastStatementWithRecursiveMethodInvocation.get(lastStatementWithRecursiveMethodInvocation.size() - 1);  //TODO Check to make sure this node exists?  Lines 427, 434, 486, 488
-			
-			if (!recursiveMethodReturnsVoid()) {
-				if (partialComputationsNames.size() >= 1) {
-					if (lastStatementWithRecursiveCall instanceof VariableDeclarationStatement) {
-						for (int i= partialComputationsNames.size() - 1; i >= 0 ; ) {
-							String varStatement= typesOfComputations.get(i) + " " + partialComputationsNames.get(i) + " = task" + (i + 1) + ".result;"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-							VariableDeclarationStatement variableStatement= (VariableDeclarationStatement) scratchRewriter.createStringPlaceholder(varStatement, ASTNode.VARIABLE_DECLARATION_STATEMENT);
-							listRewriteForBlock.insertAfter(variableStatement, lastStatementWithRecursiveCall, editGroup);
-							i--;
-						}
-					} else if (lastStatementWithRecursiveCall instanceof ExpressionStatement) {
-						for (int i= partialComputationsNames.size() - 1; i >= 0 ; ) {
-							String varStatement= partialComputationsNames.get(i) + " = task" + (i + 1) + ".result;"; //$NON-NLS-1$ //$NON-NLS-2$
-							ExpressionStatement exprStatement= (ExpressionStatement) scratchRewriter.createStringPlaceholder(varStatement, ASTNode.EXPRESSION_STATEMENT);
-							listRewriteForBlock.insertAfter(exprStatement, lastStatementWithRecursiveCall, editGroup);
-							i--;
-						}
-					}
+			callsInContainer.add(recursiveCall);
+		}
+		
+		try {
+			String source= ((ICompilationUnit)fRoot.getJavaElement()).getSource();
+			int[] taskCounter= new int[] {0};
+			int[] loopCounter= new int[] {0};
+			for (Map.Entry<ASTNode, List<MethodInvocation>> entry : subproblems.entrySet()) {
+				ASTNode container= entry.getKey();
+				if (isLoop(container)) {
+					convertLoop((Statement) container, entry.getValue(), scratchRewriter, editGroup, source, loopCounter, result);
+				} else {
+					convertSplit(container, entry.getValue(), scratchRewriter, editGroup, taskCounter, result);
 				}
-				
-				List<ASTNode> statementsInBlockWithTaskDecl= blockContainingTaskDecl.statements();
-				Statement lastStatementInBlock= (Statement) statementsInBlockWithTaskDecl.get(statementsInBlockWithTaskDecl.size() - 1);
-				if (lastStatementInBlock instanceof ReturnStatement) {
-					if (fInfixExpressionFlag) {
-						Assignment assignToResult= ast.newAssignment();
-						assignToResult.setLeftHandSide(ast.newSimpleName("result")); //$NON-NLS-1$
-						InfixExpression infixExpression= ((InfixExpression)(ASTNode.copySubtree(ast, ((ReturnStatement)lastStatementInBlock).getExpression())));
-						int taskNum= 1;
-						infixExpression.setLeftOperand(ast.newQualifiedName(ast.newSimpleName("task" + taskNum++), ast.newSimpleName("result"))); //$NON-NLS-1$ //$NON-NLS-2$
-						infixExpression.setRightOperand(ast.newQualifiedName(ast.newSimpleName("task" + taskNum++), ast.newSimpleName("result"))); //$NON-NLS-1$ //$NON-NLS-2$
-						List<Expression> extendedOperands = infixExpression.extendedOperands();
-						for (int i= 0; i < extendedOperands.size(); ) {
-							extendedOperands.set(i, ast.newQualifiedName(ast.newSimpleName("task" + taskNum++), ast.newSimpleName("result"))); //$NON-NLS-1$ //$NON-NLS-2$
-							i++;
-						}
-						assignToResult.setRightHandSide(infixExpression);
-						scratchRewriter.replace(lastStatementInBlock, ast.newExpressionStatement(assignToResult), editGroup);
-					}
-					else if (fMethodInvocationFlag) {
-						Assignment assignToResult= ast.newAssignment();
-						assignToResult.setLeftHandSide(ast.newSimpleName("result")); //$NON-NLS-1$
-						ASTNode tempAST= ASTNode.copySubtree(ast, ((ReturnStatement)lastStatementInBlock).getExpression());
-						if (!(tempAST instanceof MethodInvocation)) {
-							RefactoringStatus fatalError= new RefactoringStatus();
-							fatalError.addFatalError(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_analyze_error 
-											+ fMethod.getElementName());
-							result.merge(fatalError);
-							return;
-						}
-						MethodInvocation methodInvocation= ((MethodInvocation) tempAST);
-						int taskNum= 1;
-						List<Expression> methodArguments= methodInvocation.arguments();
-						for (int index= 0; index < methodArguments.size(); ) {
-							methodArguments.set(index++, ast.newQualifiedName(ast.newSimpleName("task" + taskNum++), ast.newSimpleName("result"))); //$NON-NLS-1$ //$NON-NLS-2$
-						}
-						assignToResult.setRightHandSide(methodInvocation);
-						scratchRewriter.replace(lastStatementInBlock, ast.newExpressionStatement(assignToResult), editGroup);
-					}
-					else {
-						Assignment assignToResult= ast.newAssignment();
-						assignToResult.setLeftHandSide(ast.newSimpleName("result")); //$NON-NLS-1$
-						assignToResult.setRightHandSide((Expression) ASTNode.copySubtree(ast, ((ReturnStatement) lastStatementInBlock).getExpression()));
-						scratchRewriter.replace(lastStatementInBlock, ast.newExpressionStatement(assignToResult), editGroup);
-					}
+				if (result.hasFatalError()) {
+					return;
 				}
 			}
-			if (fInfixExpressionFlag || fMethodInvocationFlag ) {
-				listRewriteForBlock.insertBefore(ast.newExpressionStatement(forkJoinInvocation), lastStatementWithRecursiveCall, editGroup);
-			} else {
-				listRewriteForBlock.insertAfter(ast.newExpressionStatement(forkJoinInvocation), lastStatementWithRecursiveCall, editGroup);
-			}
+			
 			TextEdit edits= scratchRewriter.rewriteAST();
-			IDocument scratchDocument= new Document(((ICompilationUnit)fRoot.getJavaElement()).getSource());
+			IDocument scratchDocument= new Document(source);
 			try {
 				edits.apply(scratchDocument);
 				
@@ -531,45 +413,349 @@ public class ConvertToFJTaskRefactoring extends Refactoring {
 					}
 				}
 			} catch (MalformedTreeException e) {
-				e.printStackTrace();
+				JavaPlugin.log(e);
 			} catch (BadLocationException e) {
-				e.printStackTrace();
+				JavaPlugin.log(e);
 			}
 		} catch (JavaModelException e) {
-			e.printStackTrace();
+			JavaPlugin.log(e);
 		} catch (IllegalArgumentException e) {
-			e.printStackTrace();
+			JavaPlugin.log(e);
 		}
-		recursiveActionSubtype.bodyDeclarations().add(computeMethod);
+		taskSubtype.bodyDeclarations().add(computeMethod);
 	}
 
-	Statement findParentStatement(MethodInvocation methodCall) {
+	/*
+	 * Forks the recursive calls of a block: every call becomes a task which is created and forked
+	 * before the first statement containing a call, the last task is invoked by the current thread,
+	 * and the calls are replaced by joins of their tasks.
+	 */
+	private void convertSplit(ASTNode container, List<MethodInvocation> recursiveCalls, ASTRewrite scratchRewriter,
+			TextEditGroup editGroup, int[] taskCounter, RefactoringStatus result) {
 		
-		Statement  parentOfMethodCall= null;
-		ASTNode tempNode= methodCall;
-		do {
-			tempNode= tempNode.getParent();
-		} while (tempNode != null && !VariableDeclarationStatement.class.isInstance(tempNode));
-		if (tempNode != null) {
-			parentOfMethodCall= (VariableDeclarationStatement) tempNode;
+		AST ast= fRoot.getAST();
+		Statement firstStatement= getStatementInContainer(recursiveCalls.get(0), container);
+		List<Statement> taskStatements= new ArrayList<Statement>();
+		List<String> taskNames= new ArrayList<String>();
+		for (MethodInvocation recursiveCall : recursiveCalls) {
+			result.merge(checkCanBeForked(recursiveCall));
+			if (result.hasFatalError()) {
+				return;
+			}
+			Statement statement= getStatementInContainer(recursiveCall, container);
+			if (container instanceof Block && statement != firstStatement) {
+				List<Statement> statements= ((Block) container).statements();
+				Set<IBinding> writtenVariables= new HashSet<IBinding>();
+				for (int i= statements.indexOf(firstStatement); i < statements.indexOf(statement); i++) {
+					collectWrittenVariables(statements.get(i), writtenVariables);
+				}
+				if (argumentsReference(recursiveCall, writtenVariables)) {
+					result.addFatalError(MessageFormat.format(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_dependent_call,
+							new Object[] { recursiveCall.toString() }), createContext(recursiveCall));
+					return;
+				}
+			}
+			String taskName= "task" + ++taskCounter[0]; //$NON-NLS-1$
+			taskNames.add(taskName);
+			VariableDeclarationFragment taskFragment= ast.newVariableDeclarationFragment();
+			taskFragment.setName(ast.newSimpleName(taskName));
+			taskFragment.setInitializer(createTaskInstance(ast, recursiveCall));
+			VariableDeclarationStatement taskDeclaration= ast.newVariableDeclarationStatement(taskFragment);
+			taskDeclaration.setType(ast.newSimpleType(ast.newSimpleName(nameForFJTaskSubtype)));
+			taskStatements.add(taskDeclaration);
+			scratchRewriter.replace(recursiveCall, createTaskInvocation(ast, taskName, "join"), editGroup); //$NON-NLS-1$
+		}
+		for (int i= 0; i < taskNames.size() - 1; i++) {
+			taskStatements.add(ast.newExpressionStatement(createTaskInvocation(ast, taskNames.get(i), "fork"))); //$NON-NLS-1$
+		}
+		taskStatements.add(ast.newExpressionStatement(createTaskInvocation(ast, taskNames.get(taskNames.size() - 1), "invoke"))); //$NON-NLS-1$
+		
+		if (container instanceof Block) {
+			ListRewrite listRewriteForBlock= scratchRewriter.getListRewrite(container, Block.STATEMENTS_PROPERTY);
+			for (Statement taskStatement : taskStatements) {
+				listRewriteForBlock.insertBefore(taskStatement, firstStatement, editGroup);
+			}
 		} else {
-			tempNode= methodCall;
-			do {
-				tempNode= tempNode.getParent();
-			} while (tempNode != null && !ExpressionStatement.class.isInstance(tempNode));
-			if (tempNode != null) {
-				parentOfMethodCall= (ExpressionStatement) tempNode;
-			} else {
-				tempNode= methodCall;
-				do {
-					tempNode= tempNode.getParent();
-				} while (tempNode != null && !ReturnStatement.class.isInstance(tempNode));
-				if (tempNode != null) {
-					parentOfMethodCall= (ReturnStatement) tempNode;
+			// e.g. the else branch of the base case check is a single statement
+			Block block= ast.newBlock();
+			List<ASTNode> statements= block.statements();
+			statements.addAll(taskStatements);
+			statements.add(scratchRewriter.createMoveTarget(container));
+			scratchRewriter.replace(container, block, editGroup);
+		}
+	}
+
+	/*
+	 * Collects the subtasks created in a loop into a list, invokes all of them after the loop and
+	 * combines their results in a second loop over the task list.
+	 */
+	private void convertLoop(Statement loop, List<MethodInvocation> recursiveCalls, ASTRewrite scratchRewriter,
+			TextEditGroup editGroup, String source, int[] loopCounter, RefactoringStatus result) {
+		
+		AST ast= fRoot.getAST();
+		MethodInvocation recursiveCall= recursiveCalls.get(0);
+		Statement statement= getParentStatement(recursiveCall);
+		if (recursiveCalls.size() != 1 || !(statement instanceof ExpressionStatement) || !(loop.getParent() instanceof Block)) {
+			result.addFatalError(MessageFormat.format(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_loop_error,
+					new Object[] { recursiveCall.toString() }), createContext(loop));
+			return;
+		}
+		result.merge(checkCanBeForked(recursiveCall));
+		if (result.hasFatalError()) {
+			return;
+		}
+		boolean combineResults= ((ExpressionStatement) statement).getExpression() != recursiveCall;
+		if (combineResults && referencesLoopVariables(statement, recursiveCall, loop)) {
+			result.addFatalError(MessageFormat.format(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_loop_variable_error,
+					new Object[] { statement.toString().trim() }), createContext(statement));
+			return;
+		}
+		
+		String listName= "tasks" + ++loopCounter[0]; //$NON-NLS-1$
+		String listDeclaration= "List<" + nameForFJTaskSubtype + "> " + listName + " = new ArrayList<" + nameForFJTaskSubtype + ">();"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+		ListRewrite listRewriteForBlock= scratchRewriter.getListRewrite(loop.getParent(), Block.STATEMENTS_PROPERTY);
+		listRewriteForBlock.insertBefore(scratchRewriter.createStringPlaceholder(listDeclaration, ASTNode.VARIABLE_DECLARATION_STATEMENT), loop, editGroup);
+		
+		MethodInvocation addTask= ast.newMethodInvocation();
+		addTask.setExpression(ast.newSimpleName(listName));
+		addTask.setName(ast.newSimpleName("add")); //$NON-NLS-1$
+		addTask.arguments().add(createTaskInstance(ast, recursiveCall));
+		scratchRewriter.replace(statement, ast.newExpressionStatement(addTask), editGroup);
+		
+		if (combineResults) {
+			int start= statement.getStartPosition();
+			int end= start + statement.getLength();
+			int callStart= recursiveCall.getStartPosition();
+			int callEnd= callStart + recursiveCall.getLength();
+			String combineStatement= source.substring(start, callStart) + "subtask.join()" + source.substring(callEnd, end); //$NON-NLS-1$
+			String combineLoop= "for (" + nameForFJTaskSubtype + " subtask : " + listName + ") " + combineStatement; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			listRewriteForBlock.insertAfter(scratchRewriter.createStringPlaceholder(combineLoop, ASTNode.ENHANCED_FOR_STATEMENT), loop, editGroup);
+		}
+		MethodInvocation invokeAll= ast.newMethodInvocation();
+		invokeAll.setName(ast.newSimpleName("invokeAll")); //$NON-NLS-1$
+		invokeAll.arguments().add(ast.newSimpleName(listName));
+		listRewriteForBlock.insertAfter(ast.newExpressionStatement(invokeAll), loop, editGroup);
+		fUsesTaskList= true;
+	}
+
+	private RefactoringStatus checkCanBeForked(MethodInvocation recursiveCall) {
+		
+		RefactoringStatus result= new RefactoringStatus();
+		List<Expression> arguments= recursiveCall.arguments();
+		for (Expression argument : arguments) {
+			if (findRecursiveCalls(argument).size() > 0) {
+				result.addFatalError(MessageFormat.format(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_nested_call,
+						new Object[] { recursiveCall.toString() }), createContext(recursiveCall));
+				return result;
+			}
+		}
+		ASTNode node= recursiveCall;
+		ASTNode parent= node.getParent();
+		while (parent != null && !(node instanceof Statement)) {
+			boolean conditional= false;
+			if (parent instanceof ConditionalExpression) {
+				conditional= node.getLocationInParent() != ConditionalExpression.EXPRESSION_PROPERTY;
+			} else if (parent instanceof InfixExpression) {
+				InfixExpression.Operator operator= ((InfixExpression) parent).getOperator();
+				conditional= (operator == InfixExpression.Operator.CONDITIONAL_AND || operator == InfixExpression.Operator.CONDITIONAL_OR)
+						&& node.getLocationInParent() != InfixExpression.LEFT_OPERAND_PROPERTY;
+			}
+			if (conditional) {
+				result.addFatalError(MessageFormat.format(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_conditional_call,
+						new Object[] { recursiveCall.toString() }), createContext(recursiveCall));
+				return result;
+			}
+			node= parent;
+			parent= node.getParent();
+		}
+		return result;
+	}
+
+	private List<MethodInvocation> findRecursiveCalls(ASTNode node) {
+		
+		final List<MethodInvocation> recursiveCalls= new ArrayList<MethodInvocation>();
+		node.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(MethodInvocation methodCall) {
+				if (isRecursiveCall(methodCall)) {
+					recursiveCalls.add(methodCall);
 				}
+				return true;
 			}
+		});
+		return recursiveCalls;
+	}
+
+	private boolean isRecursiveCall(MethodInvocation methodCall) {
+		
+		IMethodBinding bindingForMethodCall= methodCall.resolveMethodBinding();
+		IMethodBinding bindingForMethodDeclaration= fMethodDeclaration.resolveBinding();
+		return bindingForMethodCall != null && bindingForMethodCall.isEqualTo(bindingForMethodDeclaration);
+	}
+
+	private Statement getEnclosingLoop(ASTNode node) {
+		
+		ASTNode parent= node.getParent();
+		while (parent != null && parent != fMethodDeclaration) {
+			if (isLoop(parent)) {
+				return (Statement) parent;
+			}
+			parent= parent.getParent();
+		}
+		return null;
+	}
+
+	private boolean isLoop(ASTNode node) {
+		
+		return node instanceof ForStatement || node instanceof EnhancedForStatement
+				|| node instanceof WhileStatement || node instanceof DoStatement;
+	}
+
+	private ASTNode getSplitContainer(MethodInvocation recursiveCall) {
+		
+		Statement statement= getParentStatement(recursiveCall);
+		if (statement.getParent() instanceof Block) {
+			return statement.getParent();
 		}
-		return parentOfMethodCall;	
+		return statement;
+	}
+
+	private Statement getStatementInContainer(ASTNode node, ASTNode container) {
+		
+		if (!(container instanceof Block)) {
+			return (Statement) container;
+		}
+		ASTNode statement= node;
+		while (statement.getParent() != container) {
+			statement= statement.getParent();
+		}
+		return (Statement) statement;
+	}
+
+	private Statement getParentStatement(ASTNode node) {
+		
+		ASTNode parent= node.getParent();
+		while (!(parent instanceof Statement)) {
+			parent= parent.getParent();
+		}
+		return (Statement) parent;
+	}
+
+	private void collectWrittenVariables(Statement statement, final Set<IBinding> writtenVariables) {
+		
+		statement.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(Assignment assignment) {
+				addVariable(assignment.getLeftHandSide());
+				return true;
+			}
+			@Override
+			public boolean visit(PrefixExpression prefix) {
+				addVariable(prefix.getOperand());
+				return true;
+			}
+			@Override
+			public boolean visit(PostfixExpression postfix) {
+				addVariable(postfix.getOperand());
+				return true;
+			}
+			@Override
+			public boolean visit(VariableDeclarationFragment fragment) {
+				addVariable(fragment.getName());
+				return true;
+			}
+			private void addVariable(Expression expression) {
+				if (expression instanceof Name) {
+					IBinding binding= ((Name) expression).resolveBinding();
+					if (binding != null) {
+						writtenVariables.add(binding);
+					}
+				}
+			}
+		});
+	}
+
+	private boolean argumentsReference(MethodInvocation recursiveCall, Set<IBinding> variables) {
+		
+		List<Expression> arguments= recursiveCall.arguments();
+		for (Expression argument : arguments) {
+			if (references(argument, null, variables)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean referencesLoopVariables(Statement statement, MethodInvocation recursiveCall, Statement loop) {
+		
+		final Set<IBinding> loopVariables= new HashSet<IBinding>();
+		loop.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(VariableDeclarationFragment fragment) {
+				loopVariables.add(fragment.resolveBinding());
+				return true;
+			}
+			@Override
+			public boolean visit(SingleVariableDeclaration declaration) {
+				loopVariables.add(declaration.resolveBinding());
+				return true;
+			}
+		});
+		return references(statement, recursiveCall, loopVariables);
+	}
+
+	private boolean references(ASTNode node, final ASTNode excluded, final Set<IBinding> variables) {
+		
+		final boolean[] result= new boolean[] {false};
+		node.accept(new ASTVisitor() {
+			@Override
+			public boolean preVisit2(ASTNode visited) {
+				return visited != excluded && !result[0];
+			}
+			@Override
+			public boolean visit(SimpleName name) {
+				IBinding binding= name.resolveBinding();
+				if (binding != null && variables.contains(binding)) {
+					result[0]= true;
+				}
+				return false;
+			}
+		});
+		return result[0];
+	}
+
+	private ClassInstanceCreation createTaskInstance(AST ast, MethodInvocation recursiveCall) {
+		
+		ClassInstanceCreation taskInstance= ast.newClassInstanceCreation();
+		taskInstance.setType(ast.newSimpleType(ast.newSimpleName(nameForFJTaskSubtype)));
+		List<Expression> arguments= recursiveCall.arguments();
+		for (Expression argument : arguments) {
+			taskInstance.arguments().add(ASTNode.copySubtree(ast, argument));
+		}
+		return taskInstance;
+	}
+
+	private MethodInvocation createTaskInvocation(AST ast, String taskName, String methodName) {
+		
+		MethodInvocation invocation= ast.newMethodInvocation();
+		invocation.setExpression(ast.newSimpleName(taskName));
+		invocation.setName(ast.newSimpleName(methodName));
+		return invocation;
+	}
+
+	private Type createTaskResultType(AST ast) {
+		
+		Type returnType= fMethodDeclaration.getReturnType2();
+		if (returnType.isPrimitiveType()) {
+			ITypeBinding boxedType= Bindings.getBoxedTypeBinding(returnType.resolveBinding(), ast);
+			return ast.newSimpleType(ast.newSimpleName(boxedType.getName()));
+		}
+		return (Type) ASTNode.copySubtree(ast, returnType);
+	}
+
+	private RefactoringStatusContext createContext(ASTNode node) {
+		
+		return new CompilationUnitSourceContext(fMethod.getCompilationUnit(), new SourceRange(node.getStartPosition(), node.getLength()));
 	}
 
 	private boolean methodsHaveSameSignature(
@@ -724,18 +910,6 @@ public class ConvertToFJTaskRefactoring extends Refactoring {
 			
 			recursiveActionSubtype.bodyDeclarations().add(newFieldDeclaration);
 		}
-		
-		if (!recursiveMethodReturnsVoid()) {
-			VariableDeclarationFragment newDeclarationFragment= ast.newVariableDeclarationFragment();
-			newDeclarationFragment.setName(ast.newSimpleName("result")); //$NON-NLS-1$
-			
-			FieldDeclaration newFieldDeclaration= ast.newFieldDeclaration(newDeclarationFragment);
-			newFieldDeclaration.setType((Type) ASTNode.copySubtree(ast, fMethodDeclaration.getReturnType2()));
-			List<Modifier> modifiers= newFieldDeclaration.modifiers();
-			modifiers.add(ast.newModifier(ModifierKeyword.PRIVATE_KEYWORD));
-			
-			recursiveActionSubtype.bodyDeclarations().add(newFieldDeclaration);
-		}
 	}
 	
 	boolean recursiveMethodReturnsVoid() {
@@ -809,9 +983,34 @@ public class ConvertToFJTaskRefactoring extends Refactoring {
 			}
 			return result;
 		}
+		checkSharedState(result);
 		fRewriter= ASTRewrite.create(fRoot.getAST());
 		return result;
 	}
+
+	private void checkSharedState(RefactoringStatus result) {
+		
+		// the subtasks run concurrently, so they must not update the state they share
+		SideEffectsFinder.Effects effects= new SideEffectsFinder(fRoot).getMethodEffects(fMethodDeclaration.resolveBinding());
+		if (effects == null) {
+			return;
+		}
+		RefactoringStatusContext context= createContext(fMethodDeclaration.getName());
+		for (IVariableBinding field : effects.getWrittenFields()) {
+			result.addError(MessageFormat.format(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_shared_field_write,
+					((Object[]) new String[] {field.getName()})), context);
+		}
+		Set<IVariableBinding> modified= new LinkedHashSet<IVariableBinding>(effects.getModifiedFields());
+		for (IVariableBinding array : effects.getWrittenArrays()) {
+			if (array.isField()) {
+				modified.add(array);
+			}
+		}
+		for (IVariableBinding field : modified) {
+			result.addWarning(MessageFormat.format(ConcurrencyRefactorings.ConvertToFJTaskRefactoring_shared_object_write,
+					((Object[]) new String[] {field.getName()})), context);
+		}
+	}
 	
 	private RefactoringStatus mappingErrorFound(RefactoringStatus result, ASTNode node) {
 		
@@ -0,0 +1,499 @@
+package org.eclipse.jdt.internal.corext.refactoring.concurrency;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import org.eclipse.core.resources.IFile;
+
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.edits.TextEditGroup;
+
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.Refactoring;
+import org.eclipse.ltk.core.refactoring.RefactoringDescriptor;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.TextChange;
+import org.eclipse.ltk.core.refactoring.participants.ResourceChangeChecker;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.ISourceRange;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.ChildListPropertyDescriptor;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.Message;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ImportRewrite;
+import org.eclipse.jdt.core.refactoring.IJavaRefactorings;
+import org.eclipse.jdt.core.refactoring.descriptors.JavaRefactoringDescriptor;
+import org.eclipse.jdt.core.search.IJavaSearchConstants;
+import org.eclipse.jdt.core.search.SearchPattern;
+
+import org.eclipse.jdt.internal.corext.codemanipulation.StubUtility;
+import org.eclipse.jdt.internal.corext.dom.ASTNodeFactory;
+import org.eclipse.jdt.internal.corext.dom.ASTNodes;
+import org.eclipse.jdt.internal.corext.dom.ModifierRewrite;
+import org.eclipse.jdt.internal.corext.dom.NodeFinder;
+import org.eclipse.jdt.internal.corext.refactoring.Checks;
+import org.eclipse.jdt.internal.corext.refactoring.RefactoringScopeFactory;
+import org.eclipse.jdt.internal.corext.refactoring.RefactoringSearchEngine;
+import org.eclipse.jdt.internal.corext.refactoring.base.JavaStatusContext;
+import org.eclipse.jdt.internal.corext.refactoring.changes.DynamicValidationRefactoringChange;
+import org.eclipse.jdt.internal.corext.refactoring.changes.TextChangeCompatibility;
+import org.eclipse.jdt.internal.corext.refactoring.util.RefactoringASTParser;
+import org.eclipse.jdt.internal.corext.refactoring.util.ResourceUtil;
+import org.eclipse.jdt.internal.corext.refactoring.util.TextChangeManager;
+import org.eclipse.jdt.internal.corext.util.JavaModelUtil;
+import org.eclipse.jdt.internal.corext.util.Messages;
+
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+
+/**
+ * Converts a write-heavy <code>long</code> or <code>AtomicLong</code> counter to a
+ * <code>LongAdder</code>, or to a <code>LongAccumulator</code> when the field is updated with
+ * <code>Math.max</code> or <code>Math.min</code>.
+ * <p>
+ * Adders spread contended updates over several cells and only combine them when the value is read.
+ * The refactoring is therefore refused when the code relies on reading a consistent value right
+ * after a write, see {@link AccessAnalyzerForLongAdder}.
+ * </p>
+ */
+public class ConvertToLongAdderRefactoring extends Refactoring {
+
+	/**
+	 * The field is updated with additions, increments or decrements.
+	 */
+	public static final int OPERATION_SUM= 1;
+
+	/**
+	 * The field is updated with <code>Math.max</code>.
+	 */
+	public static final int OPERATION_MAX= 2;
+
+	/**
+	 * The field is updated with <code>Math.min</code>.
+	 */
+	public static final int OPERATION_MIN= 4;
+
+	private static final String NO_NAME= ConcurrencyRefactorings.ConcurrencyRefactorings_empty_string;
+	private static final String ATOMIC_LONG= "java.util.concurrent.atomic.AtomicLong"; //$NON-NLS-1$
+	private static final String LONG_ADDER= "java.util.concurrent.atomic.LongAdder"; //$NON-NLS-1$
+	private static final String LONG_ACCUMULATOR= "java.util.concurrent.atomic.LongAccumulator"; //$NON-NLS-1$
+	private static final String VERSION_1_8= "1.8"; //$NON-NLS-1$
+
+	private IField fField;
+	private CompilationUnit fRoot;
+	private VariableDeclarationFragment fFieldDeclarationFragment;
+	private ASTRewrite fRewriter;
+	private TextChangeManager fChangeManager;
+	private ImportRewrite fImportRewrite;
+	private boolean fUseAccumulator;
+	private boolean fAtomicLongField;
+	private Expression fInitialValueExpression;
+	private Long fInitialValue;
+
+	public ConvertToLongAdderRefactoring(IField field) {
+		fChangeManager= new TextChangeManager();
+		fField= field;
+	}
+
+	@Override
+	public RefactoringStatus checkInitialConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+		RefactoringStatus result= new RefactoringStatus();
+		result.merge(Checks.checkAvailability(fField));
+
+		if (result.hasFatalError())
+			return result;
+
+		fRoot= new RefactoringASTParser(AST.JLS3).parse(fField.getCompilationUnit(), true, pm);
+		ISourceRange sourceRange= fField.getNameRange();
+		ASTNode node= NodeFinder.perform(fRoot, sourceRange.getOffset(), sourceRange.getLength());
+		if (node == null) {
+			return mappingErrorFound(result, node);
+		}
+		fFieldDeclarationFragment= (VariableDeclarationFragment)ASTNodes.getParent(node, VariableDeclarationFragment.class);
+		if (fFieldDeclarationFragment == null) {
+			return mappingErrorFound(result, node);
+		}
+		IVariableBinding binding= fFieldDeclarationFragment.resolveBinding();
+		if (binding == null) {
+			if (!processCompilerError(result, node))
+				result.addFatalError(ConcurrencyRefactorings.ConcurrencyRefactorings_type_error);
+			return result;
+		}
+		ITypeBinding type= binding.getType();
+		if (!initializeFieldKind(type)) {
+			result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertToLongAdder_type_error,
+					new String[] { fField.getElementName(), type.getName() }));
+			return result;
+		}
+		if (fField.getJavaProject().findType(LONG_ADDER) == null) {
+			result.addFatalError(ConcurrencyRefactorings.ConvertToLongAdder_missing_type);
+			return result;
+		}
+		fRewriter= ASTRewrite.create(fRoot.getAST());
+		return result;
+	}
+
+	private boolean initializeFieldKind(ITypeBinding type) {
+		Expression initializer= fFieldDeclarationFragment.getInitializer();
+		fInitialValueExpression= null;
+		fInitialValue= new Long(0);
+		if ("long".equals(type.getName())) { //$NON-NLS-1$
+			fAtomicLongField= false;
+			fInitialValueExpression= initializer;
+		} else if (ATOMIC_LONG.equals(type.getErasure().getQualifiedName())) {
+			fAtomicLongField= true;
+			if (initializer instanceof ClassInstanceCreation) {
+				List<?> arguments= ((ClassInstanceCreation)initializer).arguments();
+				if (arguments.size() == 1)
+					fInitialValueExpression= (Expression)arguments.get(0);
+			} else if (initializer != null) {
+				fInitialValue= null;
+				return true;
+			}
+		} else {
+			return false;
+		}
+		if (fInitialValueExpression != null)
+			fInitialValue= getConstantValue(fInitialValueExpression);
+		return true;
+	}
+
+	@Override
+	public RefactoringStatus checkFinalConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+
+		RefactoringStatus result= new RefactoringStatus();
+		fChangeManager.clear();
+		pm.beginTask(NO_NAME, 12);
+		pm.setTaskName(ConcurrencyRefactorings.ConvertToLongAdder_check_preconditions);
+		pm.worked(1);
+		if (fAtomicLongField && fInitialValue == null) {
+			result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertToLongAdder_unknown_initializer,
+					fField.getElementName()), JavaStatusContext.create(fField));
+			return result;
+		}
+		pm.setTaskName(ConcurrencyRefactorings.ConvertToLongAdder_task_name);
+		final SubProgressMonitor subPm= new SubProgressMonitor(pm, 5);
+		ICompilationUnit[] affectedCUs= RefactoringSearchEngine.findAffectedCompilationUnits(
+			SearchPattern.createPattern(fField, IJavaSearchConstants.ALL_OCCURRENCES),
+			RefactoringScopeFactory.create(fField, true),
+			subPm,
+			result, true);
+
+		if (result.hasFatalError())
+			return result;
+
+		pm.setTaskName(ConcurrencyRefactorings.ConcurrencyRefactorings_program_name);
+		IProgressMonitor sub= new SubProgressMonitor(pm, 5);
+		sub.beginTask(NO_NAME, affectedCUs.length);
+		IVariableBinding fieldIdentifier= fFieldDeclarationFragment.resolveBinding();
+		List<TextEditGroup> ownerDescriptions= new ArrayList<TextEditGroup>();
+		ICompilationUnit owner= fField.getCompilationUnit();
+		fImportRewrite= StubUtility.createImportRewrite(fRoot, true);
+
+		// the declaration depends on the operations of all compilation units, so the
+		// edits are only created once every unit has been analyzed
+		List<ICompilationUnit> units= new ArrayList<ICompilationUnit>();
+		List<ASTRewrite> rewriters= new ArrayList<ASTRewrite>();
+		List<ImportRewrite> importRewrites= new ArrayList<ImportRewrite>();
+		List<List<TextEditGroup>> descriptions= new ArrayList<List<TextEditGroup>>();
+		int operations= 0;
+		for (int i= 0; i < affectedCUs.length; i++) {
+			ICompilationUnit unit= affectedCUs[i];
+			sub.subTask(unit.getElementName());
+			CompilationUnit root;
+			ASTRewrite rewriter;
+			ImportRewrite importRewrite;
+			List<TextEditGroup> groups;
+			if (owner.equals(unit)) {
+				root= fRoot;
+				rewriter= fRewriter;
+				importRewrite= fImportRewrite;
+				groups= ownerDescriptions;
+			} else {
+				root= new RefactoringASTParser(AST.JLS3).parse(unit, true);
+				rewriter= ASTRewrite.create(root.getAST());
+				importRewrite= StubUtility.createImportRewrite(root, true);
+				groups= new ArrayList<TextEditGroup>();
+				units.add(unit);
+				rewriters.add(rewriter);
+				importRewrites.add(importRewrite);
+				descriptions.add(groups);
+			}
+			checkCompileErrors(result, root, unit);
+			AccessAnalyzerForLongAdder analyzer= new AccessAnalyzerForLongAdder(this, unit, fieldIdentifier, rewriter, importRewrite);
+			root.accept(analyzer);
+			result.merge(analyzer.getStatus());
+			if (result.hasFatalError()) {
+				fChangeManager.clear();
+				return result;
+			}
+			groups.addAll(analyzer.getGroupDescriptions());
+			operations|= analyzer.getOperations();
+			sub.worked(1);
+			if (pm.isCanceled())
+				throw new OperationCanceledException();
+		}
+		sub.done();
+
+		result.merge(checkOperations(operations));
+		if (result.hasError())
+			return result;
+
+		ownerDescriptions.add(addChangeDeclaringType(fRoot, operations));
+		fImportRewrite.addImport(fUseAccumulator ? LONG_ACCUMULATOR : LONG_ADDER);
+		createEdits(owner, fRewriter, ownerDescriptions, fImportRewrite);
+		for (int i= 0; i < units.size(); i++) {
+			createEdits(units.get(i), rewriters.get(i), descriptions.get(i), importRewrites.get(i));
+		}
+
+		IFile[] filesToBeModified= ResourceUtil.getFiles(fChangeManager.getAllCompilationUnits());
+		result.merge(Checks.validateModifiesFiles(filesToBeModified, getValidationContext()));
+		if (result.hasFatalError())
+			return result;
+		ResourceChangeChecker.checkFilesToBeChanged(filesToBeModified, new SubProgressMonitor(pm, 1));
+		return result;
+	}
+
+	private RefactoringStatus checkOperations(int operations) {
+		RefactoringStatus result= new RefactoringStatus();
+		if (operations != 0 && operations != OPERATION_SUM && operations != OPERATION_MAX && operations != OPERATION_MIN) {
+			result.addError(Messages.format(ConcurrencyRefactorings.ConvertToLongAdder_mixed_operations, fField.getElementName()),
+					JavaStatusContext.create(fField));
+			return result;
+		}
+		boolean sum= operations == 0 || operations == OPERATION_SUM;
+		if (sum && (fInitialValue == null || fInitialValue.longValue() != 0)) {
+			// the cells of an adder always start at zero
+			result.addError(Messages.format(ConcurrencyRefactorings.ConvertToLongAdder_nonzero_initializer,
+					new String[] { fField.getElementName(), String.valueOf(fInitialValueExpression) }), JavaStatusContext.create(fField));
+			return result;
+		}
+		if (fUseAccumulator) {
+			IJavaProject project= fField.getJavaProject();
+			if (JavaModelUtil.isVersionLessThan(project.getOption(JavaCore.COMPILER_SOURCE, true), VERSION_1_8))
+				result.addFatalError(ConcurrencyRefactorings.ConvertToLongAdder_method_reference_error);
+		}
+		return result;
+	}
+
+	private TextEditGroup addChangeDeclaringType(CompilationUnit root, int operations) {
+		AST ast= root.getAST();
+		String typeName= fUseAccumulator ? "LongAccumulator" : "LongAdder"; //$NON-NLS-1$ //$NON-NLS-2$
+		FieldDeclaration oldFieldDeclaration= (FieldDeclaration)ASTNodes.getParent(fFieldDeclarationFragment, FieldDeclaration.class);
+		TextEditGroup gd= new TextEditGroup(ConcurrencyRefactorings.ConvertToLongAdder_change_type);
+
+		VariableDeclarationFragment newVariableDeclarationFragment= ast.newVariableDeclarationFragment();
+		newVariableDeclarationFragment.setName(ast.newSimpleName(fField.getElementName()));
+		ClassInstanceCreation creation= ast.newClassInstanceCreation();
+		creation.setType(ast.newSimpleType(ASTNodeFactory.newName(ast, typeName)));
+		if (fUseAccumulator) {
+			// new LongAccumulator(Long::max, identity), the identity is the initial value of the field
+			String function;
+			if (operations == OPERATION_MAX)
+				function= "Long::max"; //$NON-NLS-1$
+			else if (operations == OPERATION_MIN)
+				function= "Long::min"; //$NON-NLS-1$
+			else
+				function= "Long::sum"; //$NON-NLS-1$
+			creation.arguments().add(fRewriter.createStringPlaceholder(function, ASTNode.METHOD_INVOCATION));
+			if (fInitialValueExpression != null)
+				creation.arguments().add(fRewriter.createCopyTarget(fInitialValueExpression));
+			else
+				creation.arguments().add(ast.newNumberLiteral("0L")); //$NON-NLS-1$
+		}
+		newVariableDeclarationFragment.setInitializer(creation);
+
+		FieldDeclaration newFieldDeclaration= ast.newFieldDeclaration(newVariableDeclarationFragment);
+		newFieldDeclaration.setType(ast.newSimpleType(ASTNodeFactory.newName(ast, typeName)));
+		ModifierRewrite.create(fRewriter, newFieldDeclaration).copyAllModifiers(oldFieldDeclaration, gd);
+
+		if (oldFieldDeclaration.fragments().size() > 1) {
+			fRewriter.remove(fFieldDeclarationFragment, gd);
+			ChildListPropertyDescriptor descriptor= getBodyDeclarationsProperty(oldFieldDeclaration.getParent());
+			fRewriter.getListRewrite(oldFieldDeclaration.getParent(), descriptor).insertAfter(newFieldDeclaration, oldFieldDeclaration, gd);
+		} else {
+			fRewriter.replace(oldFieldDeclaration, newFieldDeclaration, gd);
+		}
+		return gd;
+	}
+
+	private ChildListPropertyDescriptor getBodyDeclarationsProperty(ASTNode declaration) {
+		if (declaration instanceof AnonymousClassDeclaration)
+			return AnonymousClassDeclaration.BODY_DECLARATIONS_PROPERTY;
+		else if (declaration instanceof AbstractTypeDeclaration)
+			return ((AbstractTypeDeclaration) declaration).getBodyDeclarationsProperty();
+		Assert.isTrue(false);
+		return null;
+	}
+
+	private void createEdits(ICompilationUnit unit, ASTRewrite rewriter, List<TextEditGroup> groups, ImportRewrite importRewrite) throws CoreException {
+		TextChange change= fChangeManager.get(unit);
+		MultiTextEdit root= new MultiTextEdit();
+		change.setEdit(root);
+
+		TextEdit importEdit= importRewrite.rewriteImports(null);
+		TextChangeCompatibility.addTextEdit(change, ConcurrencyRefactorings.ConcurrencyRefactorings_update_imports, importEdit);
+
+		root.addChild(rewriter.rewriteAST());
+		for (int i= 0; i < groups.size(); i++) {
+			change.addTextEditGroup(groups.get(i));
+		}
+	}
+
+	private RefactoringStatus mappingErrorFound(RefactoringStatus result, ASTNode node) {
+		if (node != null && (node.getFlags() & ASTNode.MALFORMED) != 0 && processCompilerError(result, node))
+			return result;
+		result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertToLongAdder_analyze_error, fField.getElementName()));
+		return result;
+	}
+
+	private boolean processCompilerError(RefactoringStatus result, ASTNode node) {
+		Message[] messages= ASTNodes.getMessages(node, ASTNodes.INCLUDE_ALL_PARENTS);
+		if (messages.length == 0)
+			return false;
+		result.addFatalError(Messages.format(
+			ConcurrencyRefactorings.ConcurrencyRefactorings_field_compile_error,
+			new String[] { fField.getElementName(), messages[0].getMessage()}));
+		return true;
+	}
+
+	@Override
+	public Change createChange(IProgressMonitor pm) throws CoreException,
+			OperationCanceledException {
+		String project= null;
+		IJavaProject javaProject= fField.getJavaProject();
+		if (javaProject != null)
+			project= javaProject.getElementName();
+		int flags= JavaRefactoringDescriptor.JAR_MIGRATION | JavaRefactoringDescriptor.JAR_REFACTORING | RefactoringDescriptor.STRUCTURAL_CHANGE | RefactoringDescriptor.MULTI_CHANGE;
+		final IType declaring= fField.getDeclaringType();
+		try {
+			if (declaring.isAnonymous() || declaring.isLocal())
+				flags|= JavaRefactoringDescriptor.JAR_SOURCE_ATTACHMENT;
+		} catch (JavaModelException exception) {
+			JavaPlugin.log(exception);
+		}
+
+		final Map<String, String> arguments= new HashMap<String, String>();
+		String description= ConcurrencyRefactorings.ConvertToLongAdder_name_user;
+		String comment= Messages.format(ConcurrencyRefactorings.ConvertToLongAdder_comment,
+				new String[] { fField.getElementName(), fUseAccumulator ? "LongAccumulator" : "LongAdder" }); //$NON-NLS-1$ //$NON-NLS-2$
+
+		final JavaRefactoringDescriptor descriptor= new JavaRefactoringDescriptor(IJavaRefactorings.ENCAPSULATE_FIELD, project, description, comment, arguments, flags) {};
+
+		final DynamicValidationRefactoringChange result= new DynamicValidationRefactoringChange(descriptor, getName());
+		TextChange[] changes= fChangeManager.getAllChanges();
+		pm.beginTask(NO_NAME, changes.length);
+		pm.setTaskName(ConcurrencyRefactorings.ConvertToLongAdder_create_changes);
+		for (int i= 0; i < changes.length; i++) {
+			result.add(changes[i]);
+			pm.worked(1);
+		}
+		pm.done();
+		return result;
+	}
+
+	@Override
+	public String getName() {
+		return ConcurrencyRefactorings.ConvertToLongAdder_name_official;
+	}
+
+	public IField getField() {
+		return fField;
+	}
+
+	public String getFieldName() {
+		return fField.getElementName();
+	}
+
+	/**
+	 * Returns whether the converted field is an <code>AtomicLong</code>.
+	 *
+	 * @return <code>true</code> for <code>AtomicLong</code> fields, <code>false</code> for
+	 *         <code>long</code> fields
+	 */
+	public boolean isAtomicLongField() {
+		return fAtomicLongField;
+	}
+
+	public boolean isUseAccumulator() {
+		return fUseAccumulator;
+	}
+
+	/**
+	 * Sets whether the field is converted to a <code>LongAccumulator</code> instead of a
+	 * <code>LongAdder</code>. An accumulator is required for fields updated with
+	 * <code>Math.max</code> or <code>Math.min</code>.
+	 *
+	 * @param useAccumulator <code>true</code> to convert to <code>LongAccumulator</code>
+	 * @return the status of the new setting
+	 */
+	public RefactoringStatus setUseAccumulator(boolean useAccumulator) {
+		fUseAccumulator= useAccumulator;
+		return new RefactoringStatus();
+	}
+
+	/**
+	 * Returns whether the given expression is a constant equal to the initial value of the field.
+	 * Assigning this value can be expressed as <code>reset()</code>.
+	 *
+	 * @param expression the assigned expression
+	 * @return <code>true</code> if the expression is the initial value of the field
+	 */
+	public boolean isInitialValue(Expression expression) {
+		Long value= getConstantValue(expression);
+		return value != null && value.equals(fInitialValue);
+	}
+
+	private static Long getConstantValue(Expression expression) {
+		Object value= expression.resolveConstantExpressionValue();
+		if (value instanceof Number && !(value instanceof Float) && !(value instanceof Double))
+			return new Long(((Number)value).longValue());
+		if (value instanceof Character)
+			return new Long(((Character)value).charValue());
+		return null;
+	}
+
+	private boolean isIgnorableProblem(IProblem problem) {
+		return problem.getID() == IProblem.NotVisibleField;
+	}
+
+	private void checkCompileErrors(RefactoringStatus result, CompilationUnit root, ICompilationUnit element) {
+		IProblem[] messages= root.getProblems();
+		for (int i= 0; i < messages.length; i++) {
+			IProblem problem= messages[i];
+			if (!isIgnorableProblem(problem)) {
+				result.addError(Messages.format(
+						ConcurrencyRefactorings.ConvertToLongAdder_compile_error,
+						element.getElementName()), JavaStatusContext.create(element));
+				return;
+			}
+		}
+	}
+}
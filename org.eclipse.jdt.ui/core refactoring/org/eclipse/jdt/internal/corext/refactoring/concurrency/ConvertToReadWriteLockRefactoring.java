@@ -0,0 +1,817 @@
+package org.eclipse.jdt.internal.corext.refactoring.concurrency;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import org.eclipse.core.resources.IFile;
+
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.TextEdit;
+import org.eclipse.text.edits.TextEditGroup;
+
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.Refactoring;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.TextChange;
+import org.eclipse.ltk.core.refactoring.participants.ResourceChangeChecker;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.ArrayAccess;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CastExpression;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.IfStatement;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.Initializer;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.ReturnStatement;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.SynchronizedStatement;
+import org.eclipse.jdt.core.dom.ThisExpression;
+import org.eclipse.jdt.core.dom.TryStatement;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ImportRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+import org.eclipse.jdt.core.refactoring.IJavaRefactorings;
+import org.eclipse.jdt.core.refactoring.descriptors.JavaRefactoringDescriptor;
+
+import org.eclipse.jdt.internal.corext.codemanipulation.StubUtility;
+import org.eclipse.jdt.internal.corext.dom.Bindings;
+import org.eclipse.jdt.internal.corext.dom.ModifierRewrite;
+import org.eclipse.jdt.internal.corext.refactoring.Checks;
+import org.eclipse.jdt.internal.corext.refactoring.base.JavaStatusContext;
+import org.eclipse.jdt.internal.corext.refactoring.changes.DynamicValidationRefactoringChange;
+import org.eclipse.jdt.internal.corext.refactoring.changes.TextChangeCompatibility;
+import org.eclipse.jdt.internal.corext.refactoring.structure.ASTNodeSearchUtil;
+import org.eclipse.jdt.internal.corext.refactoring.util.RefactoringASTParser;
+import org.eclipse.jdt.internal.corext.refactoring.util.ResourceUtil;
+import org.eclipse.jdt.internal.corext.refactoring.util.TextChangeManager;
+import org.eclipse.jdt.internal.corext.util.Messages;
+
+/**
+ * Replaces the monitor of a read-mostly class by a <code>ReentrantReadWriteLock</code> or a
+ * <code>StampedLock</code>.
+ * <p>
+ * Every synchronized instance method and every <code>synchronized (this)</code> block is classified
+ * with {@link SideEffectsFinder}: a region is read-only if neither it nor the methods of the
+ * compilation unit that it calls write a field, an array element or the object of a field. Regions
+ * that call methods whose effects are unknown, or that let <code>this</code> escape, cannot be
+ * proven to be read-only. They are reported and acquire the write lock.
+ * </p>
+ * <p>
+ * Read-only regions acquire the read lock, the others the write lock, and the lock is released in a
+ * <code>finally</code> block. With a <code>StampedLock</code>, a read-only method that only returns
+ * an expression over fields, and that cannot fail on an inconsistent state, first tries an
+ * optimistic read and only acquires the read lock if the stamp is no longer valid.
+ * </p>
+ */
+public class ConvertToReadWriteLockRefactoring extends Refactoring {
+
+	/**
+	 * Lock kind that uses a <code>java.util.concurrent.locks.ReentrantReadWriteLock</code>.
+	 */
+	public static final int READ_WRITE_LOCK= 0;
+
+	/**
+	 * Lock kind that uses a <code>java.util.concurrent.locks.StampedLock</code>.
+	 */
+	public static final int STAMPED_LOCK= 1;
+
+	private static final String NO_NAME= ConcurrencyRefactorings.ConcurrencyRefactorings_empty_string;
+	private static final String READ_WRITE_LOCK_TYPE= "java.util.concurrent.locks.ReentrantReadWriteLock"; //$NON-NLS-1$
+	private static final String STAMPED_LOCK_TYPE= "java.util.concurrent.locks.StampedLock"; //$NON-NLS-1$
+
+	/**
+	 * A synchronized instance method or a <code>synchronized (this)</code> block.
+	 */
+	private static final class Region {
+
+		private final ASTNode fNode;
+		private final String fName;
+		private boolean fReadOnly;
+		private boolean fOptimistic;
+
+		public Region(ASTNode node, String name) {
+			fNode= node;
+			fName= name;
+		}
+
+		public Block getBody() {
+			if (fNode instanceof MethodDeclaration)
+				return ((MethodDeclaration) fNode).getBody();
+			return ((SynchronizedStatement) fNode).getBody();
+		}
+
+		public BodyDeclaration getBodyDeclaration() {
+			ASTNode node= fNode;
+			while (!(node instanceof BodyDeclaration))
+				node= node.getParent();
+			return (BodyDeclaration) node;
+		}
+	}
+
+	private final IType fType;
+	private ICompilationUnit fCUnit;
+	private CompilationUnit fRoot;
+	private String fSource;
+	private AbstractTypeDeclaration fTypeDeclaration;
+	private ITypeBinding fTypeBinding;
+	private SideEffectsFinder fFinder;
+	private List<Region> fRegions;
+	private List<MethodInvocation> fMonitorCalls;
+	private RefactoringStatus fAnalysisStatus;
+	private TextChangeManager fChangeManager;
+	private String fLockName;
+	private int fLockKind= READ_WRITE_LOCK;
+
+	public ConvertToReadWriteLockRefactoring(IType type) {
+		fType= type;
+		fChangeManager= new TextChangeManager();
+	}
+
+	@Override
+	public RefactoringStatus checkInitialConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+		RefactoringStatus result= new RefactoringStatus();
+		pm.beginTask(NO_NAME, 2);
+		try {
+			pm.setTaskName(ConcurrencyRefactorings.ConvertToReadWriteLock_check_preconditions);
+			result.merge(Checks.checkAvailability(fType));
+			if (result.hasFatalError())
+				return result;
+			fCUnit= fType.getCompilationUnit();
+			if (fCUnit == null || fType.isInterface() || fType.isAnnotation()) {
+				result.addFatalError(ConcurrencyRefactorings.ConvertToReadWriteLock_no_class);
+				return result;
+			}
+			fRoot= new RefactoringASTParser(AST.JLS3).parse(fCUnit, true, new SubProgressMonitor(pm, 1));
+			fSource= fCUnit.getSource();
+			fTypeDeclaration= ASTNodeSearchUtil.getAbstractTypeDeclarationNode(fType, fRoot);
+			fTypeBinding= fTypeDeclaration != null ? fTypeDeclaration.resolveBinding() : null;
+			if (fTypeBinding == null) {
+				result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_analyze_error, fType.getElementName()));
+				return result;
+			}
+			checkCompileErrors(result);
+			if (result.hasError())
+				return result;
+
+			fFinder= new SideEffectsFinder(fRoot);
+			fAnalysisStatus= new RefactoringStatus();
+			collectRegions();
+			if (fRegions.isEmpty()) {
+				result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_no_regions, fType.getElementName()));
+				return result;
+			}
+			classifyRegions();
+			Set<String> names= collectNames(fTypeDeclaration);
+			fLockName= StubUtility.getFieldNameSuggestions(fCUnit.getJavaProject(), "lock", 0, Modifier.PRIVATE | Modifier.FINAL, //$NON-NLS-1$
+					names.toArray(new String[names.size()]))[0];
+			pm.worked(1);
+			return result;
+		} finally {
+			pm.done();
+		}
+	}
+
+	private void checkCompileErrors(RefactoringStatus result) {
+		IProblem[] problems= fRoot.getProblems();
+		for (int i= 0; i < problems.length; i++) {
+			if (problems[i].isError()) {
+				result.addError(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_compile_error,
+						fCUnit.getElementName()), JavaStatusContext.create(fCUnit));
+				return;
+			}
+		}
+	}
+
+	private void collectRegions() {
+		fRegions= new ArrayList<Region>();
+		fMonitorCalls= new ArrayList<MethodInvocation>();
+		List<BodyDeclaration> declarations= fTypeDeclaration.bodyDeclarations();
+		for (int i= 0; i < declarations.size(); i++) {
+			BodyDeclaration declaration= declarations.get(i);
+			if (!(declaration instanceof MethodDeclaration) && !(declaration instanceof Initializer))
+				continue;
+			if (declaration instanceof MethodDeclaration) {
+				MethodDeclaration method= (MethodDeclaration) declaration;
+				if (method.getBody() == null)
+					continue;
+				int modifiers= method.getModifiers();
+				if (Modifier.isSynchronized(modifiers) && !Modifier.isStatic(modifiers))
+					fRegions.add(new Region(method, method.getName().getIdentifier()));
+			}
+			final String name= declaration instanceof MethodDeclaration ? ((MethodDeclaration) declaration).getName().getIdentifier() : fType.getElementName();
+			declaration.accept(new ASTVisitor() {
+				@Override
+				public boolean visit(AnonymousClassDeclaration node) {
+					return false;
+				}
+				@Override
+				public boolean visit(TypeDeclarationStatement node) {
+					return false;
+				}
+				@Override
+				public boolean visit(SynchronizedStatement node) {
+					if (isThis(node.getExpression()))
+						fRegions.add(new Region(node, name));
+					return true;
+				}
+				@Override
+				public boolean visit(MethodInvocation node) {
+					if (isMonitorCall(node))
+						fMonitorCalls.add(node);
+					return true;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Classifies the regions as read-only or mutating. A region is only read-only if this can be
+	 * proven; the reason why a region that does not write fields is still treated as mutating is
+	 * reported.
+	 */
+	private void classifyRegions() {
+		for (int i= 0; i < fRegions.size(); i++) {
+			Region region= fRegions.get(i);
+			SideEffectsFinder.Effects effects= fFinder.getEffects(region.getBody());
+			if (effects.hasWrites())
+				continue;
+			if (!effects.getUnknownCalls().isEmpty()) {
+				fAnalysisStatus.addWarning(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_unknown_call,
+						new String[] { region.fName, effects.getUnknownCalls().iterator().next() }), JavaStatusContext.create(fCUnit, region.fNode));
+			} else if (!effects.getEscapingCalls().isEmpty()) {
+				fAnalysisStatus.addWarning(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_this_escapes,
+						new String[] { region.fName, effects.getEscapingCalls().iterator().next() }), JavaStatusContext.create(fCUnit, region.fNode));
+			} else if (containsMonitorCall(region)) {
+				// reported as an error by checkMonitorCalls()
+			} else {
+				region.fReadOnly= true;
+				region.fOptimistic= isOptimisticRead(region);
+			}
+		}
+	}
+
+	private boolean containsMonitorCall(Region region) {
+		for (int i= 0; i < fMonitorCalls.size(); i++) {
+			if (isInside(fMonitorCalls.get(i), region.fNode))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns whether the region is a method whose body is a single <code>return</code> of an
+	 * expression that can be evaluated on an inconsistent state without failing: it only reads
+	 * fields, locals and constants, and only calls static methods without side effects. Casts,
+	 * boxing and unboxing conversions and string concatenations with non-constant object operands
+	 * are rejected, since they may throw or call <code>toString()</code> on a field that is being
+	 * written.
+	 */
+	private boolean isOptimisticRead(Region region) {
+		if (!(region.fNode instanceof MethodDeclaration))
+			return false;
+		List<Statement> statements= region.getBody().statements();
+		if (statements.size() != 1 || !(statements.get(0) instanceof ReturnStatement))
+			return false;
+		Expression expression= ((ReturnStatement) statements.get(0)).getExpression();
+		if (expression == null)
+			return false;
+		final boolean[] safe= { true };
+		expression.accept(new ASTVisitor() {
+			@Override
+			public boolean preVisit2(ASTNode node) {
+				if (node instanceof Expression) {
+					Expression current= (Expression) node;
+					if (current.resolveBoxing() || current.resolveUnboxing())
+						safe[0]= false;
+				}
+				return safe[0];
+			}
+			@Override
+			public boolean visit(CastExpression node) {
+				safe[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(ArrayAccess node) {
+				safe[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(ClassInstanceCreation node) {
+				safe[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(MethodInvocation node) {
+				IMethodBinding binding= node.resolveMethodBinding();
+				if (binding == null || !Modifier.isStatic(binding.getModifiers()) || !SideEffectsFinder.isSideEffectFree(binding.getDeclaringClass()))
+					safe[0]= false;
+				return safe[0];
+			}
+			@Override
+			public boolean visit(SuperMethodInvocation node) {
+				safe[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(FieldAccess node) {
+				// this.field is fine, other.field may fail on null
+				if (!(getUnparenthesized(node.getExpression()) instanceof ThisExpression))
+					safe[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(QualifiedName node) {
+				IBinding binding= node.resolveBinding();
+				if (!(binding instanceof IVariableBinding) || ((IVariableBinding) binding).getConstantValue() == null)
+					safe[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(InfixExpression node) {
+				InfixExpression.Operator operator= node.getOperator();
+				if (operator == InfixExpression.Operator.DIVIDE || operator == InfixExpression.Operator.REMAINDER)
+					safe[0]= false;
+				else if (operator == InfixExpression.Operator.PLUS && !isPrimitiveOrConstant(node))
+					safe[0]= false;
+				return safe[0];
+			}
+		});
+		return safe[0];
+	}
+
+	/**
+	 * Returns whether all operands of the addition or string concatenation are primitive values or
+	 * constants, so that no <code>toString()</code> is called.
+	 */
+	private static boolean isPrimitiveOrConstant(InfixExpression expression) {
+		if (!isPrimitiveOrConstant(expression.getLeftOperand()) || !isPrimitiveOrConstant(expression.getRightOperand()))
+			return false;
+		List<Expression> extendedOperands= expression.extendedOperands();
+		for (int i= 0; i < extendedOperands.size(); i++) {
+			if (!isPrimitiveOrConstant(extendedOperands.get(i)))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isPrimitiveOrConstant(Expression operand) {
+		if (operand.resolveConstantExpressionValue() != null)
+			return true;
+		ITypeBinding type= operand.resolveTypeBinding();
+		return type != null && type.isPrimitive();
+	}
+
+	@Override
+	public RefactoringStatus checkFinalConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+		RefactoringStatus result= new RefactoringStatus();
+		fChangeManager.clear();
+		pm.beginTask(NO_NAME, 3);
+		try {
+			pm.setTaskName(ConcurrencyRefactorings.ConvertToReadWriteLock_check_preconditions);
+			result.merge(Checks.checkFieldName(fLockName, fCUnit));
+			if (fType.getField(fLockName).exists())
+				result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_duplicate_field, fLockName));
+			IJavaProject project= fCUnit.getJavaProject();
+			String lockType= getLockType();
+			if (project.findType(lockType) == null)
+				result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_missing_type, lockType));
+			if (result.hasFatalError())
+				return result;
+
+			result.merge(fAnalysisStatus);
+			checkMonitorCalls(result);
+			if (fLockKind == STAMPED_LOCK)
+				checkReentrancy(result);
+			boolean hasReadOnlyRegion= false;
+			for (int i= 0; i < fRegions.size(); i++)
+				hasReadOnlyRegion|= fRegions.get(i).fReadOnly;
+			if (!hasReadOnlyRegion)
+				result.addWarning(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_no_read_only_region, fType.getElementName()));
+			if (!Modifier.isPrivate(fTypeBinding.getModifiers())) {
+				result.addWarning(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_clients_warning,
+						fType.getElementName()), JavaStatusContext.create(fCUnit, fTypeDeclaration.getName()));
+			}
+			pm.worked(1);
+			if (result.hasFatalError())
+				return result;
+
+			createEdits();
+			pm.worked(1);
+
+			IFile[] filesToBeModified= ResourceUtil.getFiles(fChangeManager.getAllCompilationUnits());
+			result.merge(Checks.validateModifiesFiles(filesToBeModified, getValidationContext()));
+			if (result.hasFatalError())
+				return result;
+			ResourceChangeChecker.checkFilesToBeChanged(filesToBeModified, new SubProgressMonitor(pm, 1));
+			return result;
+		} finally {
+			pm.done();
+		}
+	}
+
+	/**
+	 * Read-write locks have no monitor, so <code>wait()</code> and <code>notify()</code> on
+	 * <code>this</code> cannot be converted.
+	 */
+	private void checkMonitorCalls(RefactoringStatus result) {
+		for (int i= 0; i < fMonitorCalls.size(); i++) {
+			MethodInvocation call= fMonitorCalls.get(i);
+			result.addError(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_monitor_call,
+					call.getName().getIdentifier()), JavaStatusContext.create(fCUnit, call));
+		}
+	}
+
+	/**
+	 * A <code>StampedLock</code> is not reentrant: a region must neither contain another region nor
+	 * call a synchronized method of the class, directly or through other methods of the compilation
+	 * unit.
+	 */
+	private void checkReentrancy(RefactoringStatus result) {
+		Set<String> regionMethods= new HashSet<String>();
+		for (int i= 0; i < fRegions.size(); i++) {
+			Region region= fRegions.get(i);
+			if (region.fNode instanceof MethodDeclaration) {
+				IMethodBinding binding= ((MethodDeclaration) region.fNode).resolveBinding();
+				if (binding != null)
+					regionMethods.add(binding.getKey());
+			}
+		}
+		for (int i= 0; i < fRegions.size(); i++) {
+			Region region= fRegions.get(i);
+			String nested= findNestedRegion(region.getBody(), regionMethods, new HashSet<String>());
+			if (nested != null) {
+				result.addError(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_reentrant_region,
+						new String[] { region.fName, nested }), JavaStatusContext.create(fCUnit, region.fNode));
+			}
+		}
+	}
+
+	private String findNestedRegion(ASTNode scope, final Set<String> regionMethods, final Set<String> visited) {
+		final String[] result= new String[1];
+		scope.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(AnonymousClassDeclaration node) {
+				return false;
+			}
+			@Override
+			public boolean visit(TypeDeclarationStatement node) {
+				return false;
+			}
+			@Override
+			public boolean visit(SynchronizedStatement node) {
+				if (isThis(node.getExpression()))
+					result[0]= "synchronized (this)"; //$NON-NLS-1$
+				return result[0] == null;
+			}
+			@Override
+			public boolean visit(MethodInvocation node) {
+				Expression receiver= getUnparenthesized(node.getExpression());
+				if (receiver == null || receiver instanceof ThisExpression)
+					check(node.resolveMethodBinding());
+				return result[0] == null;
+			}
+			@Override
+			public boolean visit(SuperMethodInvocation node) {
+				check(node.resolveMethodBinding());
+				return result[0] == null;
+			}
+			private void check(IMethodBinding binding) {
+				if (binding == null || result[0] != null)
+					return;
+				IMethodBinding declaration= binding.getMethodDeclaration();
+				if (regionMethods.contains(declaration.getKey())) {
+					result[0]= declaration.getName();
+				} else if (visited.add(declaration.getKey())) {
+					ASTNode node= fRoot.findDeclaringNode(declaration);
+					if (node instanceof MethodDeclaration && ((MethodDeclaration) node).getBody() != null)
+						result[0]= findNestedRegion(((MethodDeclaration) node).getBody(), regionMethods, visited);
+				}
+			}
+		});
+		return result[0];
+	}
+
+	private void createEdits() throws CoreException {
+		ASTRewrite rewriter= ASTRewrite.create(fRoot.getAST());
+		ImportRewrite importRewrite= StubUtility.createImportRewrite(fRoot, true);
+		AST ast= fRoot.getAST();
+		TextEditGroup declarationGroup= new TextEditGroup(ConcurrencyRefactorings.ConvertToReadWriteLock_add_lock);
+		TextEditGroup readGroup= new TextEditGroup(ConcurrencyRefactorings.ConvertToReadWriteLock_read_lock);
+		TextEditGroup writeGroup= new TextEditGroup(ConcurrencyRefactorings.ConvertToReadWriteLock_write_lock);
+		TextEditGroup optimisticGroup= new TextEditGroup(ConcurrencyRefactorings.ConvertToReadWriteLock_optimistic_read);
+
+		String lockType= importRewrite.addImport(getLockType());
+		VariableDeclarationFragment fragment= ast.newVariableDeclarationFragment();
+		fragment.setName(ast.newSimpleName(fLockName));
+		ClassInstanceCreation creation= ast.newClassInstanceCreation();
+		creation.setType(ast.newSimpleType(ast.newName(lockType)));
+		fragment.setInitializer(creation);
+		FieldDeclaration declaration= ast.newFieldDeclaration(fragment);
+		declaration.setType(ast.newSimpleType(ast.newName(lockType)));
+		declaration.modifiers().addAll(ast.newModifiers(Modifier.PRIVATE | Modifier.FINAL));
+		ListRewrite declarations= rewriter.getListRewrite(fTypeDeclaration, fTypeDeclaration.getBodyDeclarationsProperty());
+		FieldDeclaration lastField= null;
+		List<BodyDeclaration> bodyDeclarations= fTypeDeclaration.bodyDeclarations();
+		for (int i= 0; i < bodyDeclarations.size(); i++) {
+			if (bodyDeclarations.get(i) instanceof FieldDeclaration)
+				lastField= (FieldDeclaration) bodyDeclarations.get(i);
+		}
+		if (lastField != null)
+			declarations.insertAfter(declaration, lastField, declarationGroup);
+		else
+			declarations.insertFirst(declaration, declarationGroup);
+
+		Map<BodyDeclaration, Set<String>> usedNames= new HashMap<BodyDeclaration, Set<String>>();
+		for (int i= 0; i < fRegions.size(); i++) {
+			Region region= fRegions.get(i);
+			BodyDeclaration bodyDeclaration= region.getBodyDeclaration();
+			Set<String> names= usedNames.get(bodyDeclaration);
+			if (names == null) {
+				names= collectNames(bodyDeclaration);
+				usedNames.put(bodyDeclaration, names);
+			}
+			if (fLockKind == STAMPED_LOCK && region.fOptimistic)
+				rewriteOptimisticRead(rewriter, ast, region, names, optimisticGroup);
+			else
+				rewriteRegion(rewriter, ast, region, names, region.fReadOnly ? readGroup : writeGroup);
+		}
+
+		TextChange change= fChangeManager.get(fCUnit);
+		MultiTextEdit root= new MultiTextEdit();
+		change.setEdit(root);
+		TextEdit importEdit= importRewrite.rewriteImports(null);
+		TextChangeCompatibility.addTextEdit(change, ConcurrencyRefactorings.ConcurrencyRefactorings_update_imports, importEdit);
+		root.addChild(rewriter.rewriteAST());
+		change.addTextEditGroup(declarationGroup);
+		change.addTextEditGroup(readGroup);
+		change.addTextEditGroup(writeGroup);
+		change.addTextEditGroup(optimisticGroup);
+	}
+
+	/**
+	 * Replaces the region by <code>lock; try { body } finally { unlock; }</code>.
+	 */
+	private void rewriteRegion(ASTRewrite rewriter, AST ast, Region region, Set<String> names, TextEditGroup group) {
+		String stamp= null;
+		String lockStatement;
+		String unlockStatement;
+		if (fLockKind == STAMPED_LOCK) {
+			stamp= getUniqueName("stamp", names); //$NON-NLS-1$
+			lockStatement= "long " + stamp + "= " + fLockName + (region.fReadOnly ? ".readLock();" : ".writeLock();"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			unlockStatement= fLockName + (region.fReadOnly ? ".unlockRead(" : ".unlockWrite(") + stamp + ");"; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		} else {
+			String lock= fLockName + (region.fReadOnly ? ".readLock()" : ".writeLock()"); //$NON-NLS-1$ //$NON-NLS-2$
+			lockStatement= lock + ".lock();"; //$NON-NLS-1$
+			unlockStatement= lock + ".unlock();"; //$NON-NLS-1$
+		}
+		TryStatement tryStatement= ast.newTryStatement();
+		tryStatement.setBody((Block) rewriter.createMoveTarget(region.getBody()));
+		Block finallyBlock= ast.newBlock();
+		finallyBlock.statements().add(rewriter.createStringPlaceholder(unlockStatement, ASTNode.EXPRESSION_STATEMENT));
+		tryStatement.setFinally(finallyBlock);
+		Statement lock= (Statement) rewriter.createStringPlaceholder(lockStatement, stamp != null ? ASTNode.VARIABLE_DECLARATION_STATEMENT : ASTNode.EXPRESSION_STATEMENT);
+
+		if (region.fNode instanceof MethodDeclaration) {
+			MethodDeclaration method= (MethodDeclaration) region.fNode;
+			ModifierRewrite.create(rewriter, method).setModifiers(method.getModifiers() & ~Modifier.SYNCHRONIZED, group);
+			Block body= ast.newBlock();
+			body.statements().add(lock);
+			body.statements().add(tryStatement);
+			rewriter.replace(method.getBody(), body, group);
+		} else if (region.fNode.getLocationInParent() == Block.STATEMENTS_PROPERTY) {
+			rewriter.replace(region.fNode, rewriter.createGroupNode(new ASTNode[] { lock, tryStatement }), group);
+		} else {
+			Block block= ast.newBlock();
+			block.statements().add(lock);
+			block.statements().add(tryStatement);
+			rewriter.replace(region.fNode, block, group);
+		}
+	}
+
+	/**
+	 * Replaces the body of a method <code>return expression;</code> by an optimistic read that
+	 * falls back to the read lock:
+	 *
+	 * <pre>
+	 * long stamp= lock.tryOptimisticRead();
+	 * T result= expression;
+	 * if (!lock.validate(stamp)) {
+	 *     stamp= lock.readLock();
+	 *     try {
+	 *         result= expression;
+	 *     } finally {
+	 *         lock.unlockRead(stamp);
+	 *     }
+	 * }
+	 * return result;
+	 * </pre>
+	 */
+	private void rewriteOptimisticRead(ASTRewrite rewriter, AST ast, Region region, Set<String> names, TextEditGroup group) {
+		MethodDeclaration method= (MethodDeclaration) region.fNode;
+		Expression expression= ((ReturnStatement) method.getBody().statements().get(0)).getExpression();
+		String value= getSource(expression);
+		String stamp= getUniqueName("stamp", names); //$NON-NLS-1$
+		String result= getUniqueName("result", names); //$NON-NLS-1$
+
+		ModifierRewrite.create(rewriter, method).setModifiers(method.getModifiers() & ~Modifier.SYNCHRONIZED, group);
+		Block body= ast.newBlock();
+		List<Statement> statements= body.statements();
+		statements.add((Statement) rewriter.createStringPlaceholder("long " + stamp + "= " + fLockName + ".tryOptimisticRead();", ASTNode.VARIABLE_DECLARATION_STATEMENT)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+		statements.add((Statement) rewriter.createStringPlaceholder(getSource(method.getReturnType2()) + ' ' + result + "= " + value + ';', ASTNode.VARIABLE_DECLARATION_STATEMENT)); //$NON-NLS-1$
+
+		IfStatement validate= ast.newIfStatement();
+		validate.setExpression((Expression) rewriter.createStringPlaceholder('!' + fLockName + ".validate(" + stamp + ')', ASTNode.PREFIX_EXPRESSION)); //$NON-NLS-1$
+		Block fallback= ast.newBlock();
+		fallback.statements().add(rewriter.createStringPlaceholder(stamp + "= " + fLockName + ".readLock();", ASTNode.EXPRESSION_STATEMENT)); //$NON-NLS-1$ //$NON-NLS-2$
+		TryStatement tryStatement= ast.newTryStatement();
+		tryStatement.getBody().statements().add(rewriter.createStringPlaceholder(result + "= " + value + ';', ASTNode.EXPRESSION_STATEMENT)); //$NON-NLS-1$
+		Block finallyBlock= ast.newBlock();
+		finallyBlock.statements().add(rewriter.createStringPlaceholder(fLockName + ".unlockRead(" + stamp + ");", ASTNode.EXPRESSION_STATEMENT)); //$NON-NLS-1$ //$NON-NLS-2$
+		tryStatement.setFinally(finallyBlock);
+		fallback.statements().add(tryStatement);
+		validate.setThenStatement(fallback);
+		statements.add(validate);
+
+		ReturnStatement returnStatement= ast.newReturnStatement();
+		returnStatement.setExpression(ast.newSimpleName(result));
+		statements.add(returnStatement);
+		rewriter.replace(method.getBody(), body, group);
+	}
+
+	private String getLockType() {
+		return fLockKind == STAMPED_LOCK ? STAMPED_LOCK_TYPE : READ_WRITE_LOCK_TYPE;
+	}
+
+	private static String getUniqueName(String baseName, Set<String> names) {
+		String result= baseName;
+		for (int i= 2; names.contains(result); i++)
+			result= baseName + i;
+		names.add(result);
+		return result;
+	}
+
+	private static Set<String> collectNames(ASTNode scope) {
+		final Set<String> result= new HashSet<String>();
+		scope.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SimpleName node) {
+				result.add(node.getIdentifier());
+				return false;
+			}
+		});
+		return result;
+	}
+
+	private boolean isThis(Expression expression) {
+		expression= getUnparenthesized(expression);
+		if (!(expression instanceof ThisExpression))
+			return false;
+		Name qualifier= ((ThisExpression) expression).getQualifier();
+		return qualifier == null || Bindings.equals(qualifier.resolveBinding(), fTypeBinding);
+	}
+
+	private boolean isMonitorCall(MethodInvocation invocation) {
+		String name= invocation.getName().getIdentifier();
+		if (!"wait".equals(name) && !"notify".equals(name) && !"notifyAll".equals(name)) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			return false;
+		IMethodBinding binding= invocation.resolveMethodBinding();
+		if (binding == null || !"java.lang.Object".equals(binding.getDeclaringClass().getQualifiedName())) //$NON-NLS-1$
+			return false;
+		return invocation.getExpression() == null || isThis(invocation.getExpression());
+	}
+
+	private static boolean isInside(ASTNode node, ASTNode scope) {
+		int start= scope.getStartPosition();
+		return start <= node.getStartPosition() && node.getStartPosition() + node.getLength() <= start + scope.getLength();
+	}
+
+	private static Expression getUnparenthesized(Expression expression) {
+		while (expression instanceof ParenthesizedExpression)
+			expression= ((ParenthesizedExpression) expression).getExpression();
+		return expression;
+	}
+
+	private String getSource(ASTNode node) {
+		return fSource.substring(node.getStartPosition(), node.getStartPosition() + node.getLength());
+	}
+
+	@Override
+	public Change createChange(IProgressMonitor pm) throws CoreException,
+			OperationCanceledException {
+		String project= null;
+		IJavaProject javaProject= fCUnit.getJavaProject();
+		if (javaProject != null)
+			project= javaProject.getElementName();
+		int flags= JavaRefactoringDescriptor.JAR_REFACTORING | JavaRefactoringDescriptor.JAR_SOURCE_ATTACHMENT;
+
+		final Map<String, String> arguments= new HashMap<String, String>();
+		String description= ConcurrencyRefactorings.ConvertToReadWriteLock_name_user;
+		String comment= Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_comment, new String[] { fType.getElementName(), getLockType() });
+
+		final JavaRefactoringDescriptor descriptor= new JavaRefactoringDescriptor(IJavaRefactorings.ENCAPSULATE_FIELD, project, description, comment, arguments, flags) {};
+
+		final DynamicValidationRefactoringChange result= new DynamicValidationRefactoringChange(descriptor, getName());
+		TextChange[] changes= fChangeManager.getAllChanges();
+		pm.beginTask(NO_NAME, changes.length);
+		pm.setTaskName(ConcurrencyRefactorings.ConvertToReadWriteLock_create_changes);
+		for (int i= 0; i < changes.length; i++) {
+			result.add(changes[i]);
+			pm.worked(1);
+		}
+		pm.done();
+		return result;
+	}
+
+	@Override
+	public String getName() {
+		return ConcurrencyRefactorings.ConvertToReadWriteLock_name_official;
+	}
+
+	public IType getType() {
+		return fType;
+	}
+
+	/**
+	 * Returns the names of the read-only or of the mutating regions. A <code>synchronized
+	 * (this)</code> block is named after its enclosing method.
+	 *
+	 * @param readOnly <code>true</code> for the read-only regions
+	 * @return the names of the regions
+	 */
+	public String[] getRegionNames(boolean readOnly) {
+		List<String> result= new ArrayList<String>();
+		for (int i= 0; i < fRegions.size(); i++) {
+			Region region= fRegions.get(i);
+			if (region.fReadOnly == readOnly && !result.contains(region.fName))
+				result.add(region.fName);
+		}
+		return result.toArray(new String[result.size()]);
+	}
+
+	public String getLockName() {
+		return fLockName;
+	}
+
+	public RefactoringStatus setLockName(String name) {
+		fLockName= name;
+		RefactoringStatus result= Checks.checkFieldName(name, fCUnit);
+		if (!result.hasFatalError() && fType.getField(name).exists())
+			result.addFatalError(Messages.format(ConcurrencyRefactorings.ConvertToReadWriteLock_duplicate_field, name));
+		return result;
+	}
+
+	public int getLockKind() {
+		return fLockKind;
+	}
+
+	/**
+	 * Sets the kind of lock that replaces the monitor.
+	 *
+	 * @param lockKind {@link #READ_WRITE_LOCK} or {@link #STAMPED_LOCK}
+	 * @return the status of the new setting
+	 */
+	public RefactoringStatus setLockKind(int lockKind) {
+		fLockKind= lockKind;
+		return new RefactoringStatus();
+	}
+}
@@ -1,63 +1,534 @@
 package org.eclipse.jdt.internal.corext.refactoring.concurrency;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
-import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.ArrayAccess;
+import org.eclipse.jdt.core.dom.ArrayCreation;
+import org.eclipse.jdt.core.dom.ArrayInitializer;
 import org.eclipse.jdt.core.dom.Assignment;
 import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.ConstructorInvocation;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldAccess;
 import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
 import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.QualifiedName;
 import org.eclipse.jdt.core.dom.SimpleName;
-import org.eclipse.jdt.internal.compiler.lookup.FieldBinding;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
+import org.eclipse.jdt.core.dom.SuperFieldAccess;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.ThisExpression;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+
+import org.eclipse.jdt.internal.corext.dom.ASTNodes;
 import org.eclipse.jdt.internal.corext.dom.Bindings;
-import org.eclipse.ltk.core.refactoring.RefactoringStatus;
-
-
-public class SideEffectsFinder extends ASTVisitor {
-
-	private final ICompilationUnit unit;
-	private final int indexBeginningStatement;
-	private final int indexEndStatement;
-	private final IVariableBinding notIncludingField;
-	private final RefactoringStatus status;
-	private final Block enclosingBlock;
-
-	@SuppressWarnings("restriction")
-	public SideEffectsFinder(ICompilationUnit unit,
-			Block enclosingBlock, int indexBeginningStatement, int indexEndStatement,
-			IVariableBinding notIncludingField, RefactoringStatus status) {
-				this.unit = unit;
-				this.enclosingBlock = enclosingBlock;
-				this.indexBeginningStatement = indexBeginningStatement;
-				this.indexEndStatement = indexEndStatement;
-				this.notIncludingField = notIncludingField;
-				this.status = status;
-	}
-	
-	public void findEffects(){
-		final Collection<IVariableBinding> accessedFields = new ArrayList<IVariableBinding>();
-		enclosingBlock.accept(new ASTVisitor() {
-			public boolean visit(SimpleName identifier){
-				IBinding identifierBinding = identifier.resolveBinding();
-				if (identifierBinding instanceof IVariableBinding) {
-					IVariableBinding idBinding = (IVariableBinding) identifierBinding;
-					if (!Bindings.equals(notIncludingField, idBinding) && 
-							(idBinding.isField())) {
-						accessedFields.add(idBinding);
-					}
-				}
-				return false;
+
+/**
+ * Computes the read and write sets of a piece of code: the fields it reads and writes, the arrays
+ * whose elements it writes, the fields whose objects it modifies through method calls, the calls
+ * that let <code>this</code> escape and the calls whose effects are unknown.
+ * <p>
+ * Calls to methods declared in the same compilation unit are followed. The effects of these
+ * methods are cached by the key of their binding, so a finder should be shared by all analyses of
+ * the same AST.
+ * </p>
+ */
+public class SideEffectsFinder {
+
+	private static final Set<String> SIDE_EFFECT_FREE_TYPES= new HashSet<String>(Arrays.asList(new String[] {
+			"java.lang.Object", "java.lang.Math", "java.lang.StrictMath", "java.lang.String", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			"java.lang.Integer", "java.lang.Long", "java.lang.Double", "java.lang.Float", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+			"java.lang.Short", "java.lang.Byte", "java.lang.Character", "java.lang.Boolean" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+
+	private static final Set<String> COLLECTION_READ_METHODS= new HashSet<String>(Arrays.asList(new String[] {
+			"get", "size", "isEmpty", "contains", "containsKey", "containsValue", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+			"containsAll", "indexOf", "lastIndexOf", "equals", "hashCode", "toString" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
+
+	private static final String COLLECTION= "java.util.Collection"; //$NON-NLS-1$
+	private static final String MAP= "java.util.Map"; //$NON-NLS-1$
+
+	/**
+	 * The read and write sets of a piece of code.
+	 */
+	public static final class Effects {
+
+		private final Set<IVariableBinding> fReadFields= new LinkedHashSet<IVariableBinding>();
+		private final Set<IVariableBinding> fWrittenThisFields= new LinkedHashSet<IVariableBinding>();
+		private final Set<IVariableBinding> fWrittenOtherFields= new LinkedHashSet<IVariableBinding>();
+		private final Set<IVariableBinding> fModifiedFields= new LinkedHashSet<IVariableBinding>();
+		private final Set<IVariableBinding> fWrittenArrays= new LinkedHashSet<IVariableBinding>();
+		private final Set<String> fEscapingCalls= new LinkedHashSet<String>();
+		private final Set<String> fUnknownCalls= new LinkedHashSet<String>();
+		private boolean fWritesUnknownArrays;
+
+		/**
+		 * @return the fields that are read
+		 */
+		public Set<IVariableBinding> getReadFields() {
+			return Collections.unmodifiableSet(fReadFields);
+		}
+
+		/**
+		 * @return the instance fields that are written on <code>this</code>
+		 */
+		public Set<IVariableBinding> getWrittenThisFields() {
+			return Collections.unmodifiableSet(fWrittenThisFields);
+		}
+
+		/**
+		 * @return the static fields and the fields that are written on other objects
+		 */
+		public Set<IVariableBinding> getWrittenOtherFields() {
+			return Collections.unmodifiableSet(fWrittenOtherFields);
+		}
+
+		/**
+		 * @return all written fields
+		 */
+		public Set<IVariableBinding> getWrittenFields() {
+			Set<IVariableBinding> result= new LinkedHashSet<IVariableBinding>(fWrittenThisFields);
+			result.addAll(fWrittenOtherFields);
+			return result;
+		}
+
+		/**
+		 * @return the fields whose objects are modified by method calls, e.g. a list field that
+		 *         is added to
+		 */
+		public Set<IVariableBinding> getModifiedFields() {
+			return Collections.unmodifiableSet(fModifiedFields);
+		}
+
+		/**
+		 * @return the variables whose array elements are written
+		 */
+		public Set<IVariableBinding> getWrittenArrays() {
+			return Collections.unmodifiableSet(fWrittenArrays);
+		}
+
+		/**
+		 * @return <code>true</code> if elements of arrays are written that cannot be attributed to
+		 *         a field or local
+		 */
+		public boolean writesUnknownArrays() {
+			return fWritesUnknownArrays;
+		}
+
+		/**
+		 * @return the names of the methods and types that <code>this</code> is passed to
+		 */
+		public Set<String> getEscapingCalls() {
+			return Collections.unmodifiableSet(fEscapingCalls);
+		}
+
+		/**
+		 * @return the names of the invoked methods whose effects are unknown
+		 */
+		public Set<String> getUnknownCalls() {
+			return Collections.unmodifiableSet(fUnknownCalls);
+		}
+
+		/**
+		 * Returns whether the code writes the given field or modifies its object.
+		 *
+		 * @param field the field
+		 * @return <code>true</code> if the field is written or its object is modified
+		 */
+		public boolean writes(IVariableBinding field) {
+			return contains(fWrittenThisFields, field) || contains(fWrittenOtherFields, field) || contains(fModifiedFields, field)
+					|| contains(fWrittenArrays, field);
+		}
+
+		/**
+		 * Returns whether the code reads the given field.
+		 *
+		 * @param field the field
+		 * @return <code>true</code> if the field is read
+		 */
+		public boolean reads(IVariableBinding field) {
+			return contains(fReadFields, field);
+		}
+
+		/**
+		 * @return <code>true</code> if the code writes fields or arrays, or modifies the objects of
+		 *         fields
+		 */
+		public boolean hasWrites() {
+			return !fWrittenThisFields.isEmpty() || !fWrittenOtherFields.isEmpty() || !fModifiedFields.isEmpty()
+					|| !fWrittenArrays.isEmpty() || fWritesUnknownArrays;
+		}
+
+		/**
+		 * Adds the effects of a method invoked by the code.
+		 *
+		 * @param callee the effects of the invoked method
+		 * @param onThis <code>true</code> if the method is invoked on <code>this</code>
+		 */
+		void addCall(Effects callee, boolean onThis) {
+			fReadFields.addAll(callee.fReadFields);
+			if (onThis)
+				fWrittenThisFields.addAll(callee.fWrittenThisFields);
+			else
+				fWrittenOtherFields.addAll(callee.fWrittenThisFields);
+			fWrittenOtherFields.addAll(callee.fWrittenOtherFields);
+			fModifiedFields.addAll(callee.fModifiedFields);
+			for (IVariableBinding array : callee.fWrittenArrays) {
+				// the locals of the callee are not visible to the caller
+				if (array.isField())
+					fWrittenArrays.add(array);
+				else
+					fWritesUnknownArrays= true;
 			}
-		});
-		
-		enclosingBlock.accept(new ASTVisitor() {
-			public boolean visit(Assignment assignment){
-				
-				return true;
+			fWritesUnknownArrays|= callee.fWritesUnknownArrays;
+			fEscapingCalls.addAll(callee.fEscapingCalls);
+			fUnknownCalls.addAll(callee.fUnknownCalls);
+		}
+
+		private static boolean contains(Set<IVariableBinding> set, IVariableBinding variable) {
+			for (IVariableBinding element : set) {
+				if (Bindings.equals(element, variable))
+					return true;
+			}
+			return false;
+		}
+	}
+
+	private final CompilationUnit fRoot;
+	private final Map<String, Effects> fMethodEffects;
+
+	/**
+	 * Creates a finder for the given AST.
+	 *
+	 * @param root the AST of the compilation unit, with bindings
+	 */
+	public SideEffectsFinder(CompilationUnit root) {
+		fRoot= root;
+		fMethodEffects= new HashMap<String, Effects>();
+	}
+
+	/**
+	 * Computes the effects of the given statement or expression.
+	 *
+	 * @param node the node to analyze
+	 * @return the effects of the node
+	 */
+	public Effects getEffects(ASTNode node) {
+		Effects result= new Effects();
+		node.accept(new EffectsCollector(node, result));
+		return result;
+	}
+
+	/**
+	 * Computes the effects of the statements of a block that lie in the given source range.
+	 *
+	 * @param block the block
+	 * @param start the start of the range
+	 * @param length the length of the range
+	 * @return the effects of the statements
+	 */
+	public Effects getEffects(Block block, int start, int length) {
+		Effects result= new Effects();
+		List<Statement> statements= block.statements();
+		for (int i= 0; i < statements.size(); i++) {
+			Statement statement= statements.get(i);
+			if (start <= statement.getStartPosition() && statement.getStartPosition() + statement.getLength() <= start + length)
+				statement.accept(new EffectsCollector(block, result));
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the effects of a method declared in the compilation unit. The effects are computed
+	 * once per method and cached by the key of the method binding.
+	 *
+	 * @param method the method
+	 * @return the effects of the method, or <code>null</code> if the method is not declared in the
+	 *         compilation unit or has no body
+	 */
+	public Effects getMethodEffects(IMethodBinding method) {
+		IMethodBinding declaration= method.getMethodDeclaration();
+		String key= declaration.getKey();
+		Effects result= fMethodEffects.get(key);
+		if (result != null)
+			return result;
+		ASTNode node= fRoot.findDeclaringNode(declaration);
+		if (!(node instanceof MethodDeclaration) || ((MethodDeclaration) node).getBody() == null)
+			return null;
+		result= new Effects();
+		// recursive calls only see the effects collected so far
+		fMethodEffects.put(key, result);
+		Block body= ((MethodDeclaration) node).getBody();
+		body.accept(new EffectsCollector(body, result));
+		return result;
+	}
+
+	/**
+	 * Collects the effects of the visited nodes. Locals declared inside of the scope that hold new
+	 * objects are not visible outside of the scope, so writes to them are ignored.
+	 */
+	private class EffectsCollector extends ASTVisitor {
+
+		private final ASTNode fScope;
+		private final Effects fEffects;
+
+		public EffectsCollector(ASTNode scope, Effects effects) {
+			fScope= scope;
+			fEffects= effects;
+		}
+
+		@Override
+		public boolean visit(AnonymousClassDeclaration node) {
+			// the methods of an anonymous class are not necessarily executed
+			return false;
+		}
+
+		@Override
+		public boolean visit(TypeDeclarationStatement node) {
+			return false;
+		}
+
+		@Override
+		public boolean visit(SimpleName node) {
+			IBinding binding= node.resolveBinding();
+			if (binding instanceof IVariableBinding && ((IVariableBinding) binding).isField() && !node.isDeclaration())
+				fEffects.fReadFields.add(((IVariableBinding) binding).getVariableDeclaration());
+			return true;
+		}
+
+		@Override
+		public boolean visit(Assignment node) {
+			addWrite(node.getLeftHandSide());
+			return true;
+		}
+
+		@Override
+		public boolean visit(PrefixExpression node) {
+			PrefixExpression.Operator operator= node.getOperator();
+			if (operator == PrefixExpression.Operator.INCREMENT || operator == PrefixExpression.Operator.DECREMENT)
+				addWrite(node.getOperand());
+			return true;
+		}
+
+		@Override
+		public boolean visit(PostfixExpression node) {
+			addWrite(node.getOperand());
+			return true;
+		}
+
+		@Override
+		public boolean visit(ThisExpression node) {
+			ASTNode parent= node.getParent();
+			while (parent instanceof ParenthesizedExpression)
+				parent= parent.getParent();
+			if (parent instanceof MethodInvocation && ((MethodInvocation) parent).arguments().contains(node)) {
+				fEffects.fEscapingCalls.add(((MethodInvocation) parent).getName().getIdentifier());
+			} else if (parent instanceof ClassInstanceCreation && ((ClassInstanceCreation) parent).arguments().contains(node)) {
+				fEffects.fEscapingCalls.add(ASTNodes.asString(((ClassInstanceCreation) parent).getType()));
+			} else if (parent instanceof SuperMethodInvocation || parent instanceof ConstructorInvocation || parent instanceof SuperConstructorInvocation) {
+				fEffects.fEscapingCalls.add(parent instanceof SuperMethodInvocation ? ((SuperMethodInvocation) parent).getName().getIdentifier() : "this"); //$NON-NLS-1$
+			} else if (parent instanceof Assignment && ((Assignment) parent).getRightHandSide() == node) {
+				fEffects.fEscapingCalls.add(ASTNodes.asString(((Assignment) parent).getLeftHandSide()));
 			}
-		});
+			return true;
+		}
+
+		@Override
+		public boolean visit(MethodInvocation node) {
+			IMethodBinding binding= node.resolveMethodBinding();
+			if (binding != null)
+				addCall(binding, node.getExpression());
+			return true;
+		}
+
+		@Override
+		public boolean visit(SuperMethodInvocation node) {
+			IMethodBinding binding= node.resolveMethodBinding();
+			if (binding != null)
+				addCall(binding, null);
+			return true;
+		}
+
+		private void addCall(IMethodBinding binding, Expression receiver) {
+			ITypeBinding declaringClass= binding.getDeclaringClass();
+			if (isSideEffectFree(declaringClass))
+				return;
+			receiver= getUnparenthesized(receiver);
+			if (receiver != null && isFreshObject(receiver))
+				return;
+			IVariableBinding receiverField= getField(receiver);
+			if (isCollection(declaringClass) && COLLECTION_READ_METHODS.contains(binding.getName()))
+				return;
+			Effects callee= getMethodEffects(binding);
+			if (callee == null) {
+				if (receiverField != null)
+					fEffects.fModifiedFields.add(receiverField);
+				else
+					fEffects.fUnknownCalls.add(binding.getName());
+				return;
+			}
+			boolean onThis= receiver == null || receiver instanceof ThisExpression;
+			fEffects.addCall(callee, onThis);
+			if (receiverField != null && !callee.fWrittenThisFields.isEmpty())
+				fEffects.fModifiedFields.add(receiverField);
+		}
+
+		private void addWrite(Expression target) {
+			target= getUnparenthesized(target);
+			if (target instanceof ArrayAccess) {
+				Expression array= getUnparenthesized(((ArrayAccess) target).getArray());
+				if (isFreshObject(array))
+					return;
+				IVariableBinding variable= getVariable(array);
+				if (variable != null)
+					fEffects.fWrittenArrays.add(variable.getVariableDeclaration());
+				else
+					fEffects.fWritesUnknownArrays= true;
+				return;
+			}
+			IVariableBinding field= getField(target);
+			if (field == null)
+				return;
+			Expression qualifier= getQualifier(target);
+			if (qualifier != null && isFreshObject(qualifier))
+				return;
+			boolean onThis= qualifier == null || qualifier instanceof ThisExpression;
+			if (onThis && !Modifier.isStatic(field.getModifiers()))
+				fEffects.fWrittenThisFields.add(field);
+			else
+				fEffects.fWrittenOtherFields.add(field);
+		}
+
+		/**
+		 * Returns whether the expression is a new object, or a local of the scope that is
+		 * initialized with a new object.
+		 */
+		private boolean isFreshObject(Expression expression) {
+			if (expression instanceof ClassInstanceCreation || expression instanceof ArrayCreation || expression instanceof ArrayInitializer)
+				return true;
+			if (!(expression instanceof SimpleName))
+				return false;
+			IBinding binding= ((SimpleName) expression).resolveBinding();
+			if (!(binding instanceof IVariableBinding) || ((IVariableBinding) binding).isField())
+				return false;
+			ASTNode declaration= fRoot.findDeclaringNode(binding);
+			if (!(declaration instanceof VariableDeclarationFragment) || !isInside(declaration, fScope))
+				return false;
+			Expression initializer= ((VariableDeclarationFragment) declaration).getInitializer();
+			return initializer instanceof ClassInstanceCreation || initializer instanceof ArrayCreation || initializer instanceof ArrayInitializer;
+		}
 	}
 
+	private static boolean isInside(ASTNode node, ASTNode scope) {
+		int start= scope.getStartPosition();
+		return start <= node.getStartPosition() && node.getStartPosition() + node.getLength() <= start + scope.getLength();
+	}
+
+	/**
+	 * Returns whether methods of the given type never modify state that is visible to the caller.
+	 *
+	 * @param type the declaring class of a method
+	 * @return <code>true</code> if the methods of the type have no side effects
+	 */
+	public static boolean isSideEffectFree(ITypeBinding type) {
+		return type != null && SIDE_EFFECT_FREE_TYPES.contains(type.getErasure().getQualifiedName());
+	}
+
+	/**
+	 * Returns whether the given type is a <code>java.util.Collection</code> or a
+	 * <code>java.util.Map</code>.
+	 *
+	 * @param type the type
+	 * @return <code>true</code> for collections and maps
+	 */
+	public static boolean isCollection(ITypeBinding type) {
+		return type != null && (Bindings.findTypeInHierarchy(type, COLLECTION) != null || Bindings.findTypeInHierarchy(type, MAP) != null);
+	}
+
+	/**
+	 * Returns whether the given method of a collection or map only reads it.
+	 *
+	 * @param method the method
+	 * @return <code>true</code> if the method does not modify the collection
+	 */
+	public static boolean isCollectionRead(IMethodBinding method) {
+		return isCollection(method.getDeclaringClass()) && COLLECTION_READ_METHODS.contains(method.getName());
+	}
+
+	private static IVariableBinding getVariable(Expression expression) {
+		IBinding binding= null;
+		if (expression instanceof Name)
+			binding= ((Name) expression).resolveBinding();
+		else if (expression instanceof FieldAccess)
+			binding= ((FieldAccess) expression).resolveFieldBinding();
+		else if (expression instanceof SuperFieldAccess)
+			binding= ((SuperFieldAccess) expression).resolveFieldBinding();
+		return binding instanceof IVariableBinding ? (IVariableBinding) binding : null;
+	}
+
+	private static IVariableBinding getField(Expression expression) {
+		IVariableBinding variable= getVariable(expression);
+		return variable != null && variable.isField() ? variable.getVariableDeclaration() : null;
+	}
+
+	private static Expression getQualifier(Expression expression) {
+		if (expression instanceof QualifiedName)
+			return getUnparenthesized(((QualifiedName) expression).getQualifier());
+		if (expression instanceof FieldAccess)
+			return getUnparenthesized(((FieldAccess) expression).getExpression());
+		return null;
+	}
+
+	private static Expression getUnparenthesized(Expression expression) {
+		while (expression instanceof ParenthesizedExpression)
+			expression= ((ParenthesizedExpression) expression).getExpression();
+		return expression;
+	}
+
+	/**
+	 * Returns the written fields, arrays and modified objects as a list of names, e.g. for error
+	 * messages.
+	 *
+	 * @param effects the effects
+	 * @param excluded a field to leave out, or <code>null</code>
+	 * @return the names of the written variables
+	 */
+	public static List<String> getWrittenNames(Effects effects, IVariableBinding excluded) {
+		List<String> result= new ArrayList<String>();
+		addNames(result, effects.getWrittenFields(), excluded);
+		addNames(result, effects.fModifiedFields, excluded);
+		addNames(result, effects.fWrittenArrays, excluded);
+		return result;
+	}
+
+	private static void addNames(List<String> result, Set<IVariableBinding> variables, IVariableBinding excluded) {
+		for (IVariableBinding variable : variables) {
+			String name= variable.getName();
+			if (!Bindings.equals(variable, excluded) && !result.contains(name))
+				result.add(name);
+		}
+	}
 }
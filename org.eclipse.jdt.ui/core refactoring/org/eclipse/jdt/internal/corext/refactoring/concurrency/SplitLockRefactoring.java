@@ -0,0 +1,1078 @@
+package org.eclipse.jdt.internal.corext.refactoring.concurrency;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import org.eclipse.core.resources.IFile;
+
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.TextEditGroup;
+
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.Refactoring;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.TextChange;
+import org.eclipse.ltk.core.refactoring.participants.ResourceChangeChecker;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.compiler.IProblem;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.AnonymousClassDeclaration;
+import org.eclipse.jdt.core.dom.ArrayAccess;
+import org.eclipse.jdt.core.dom.ArrayCreation;
+import org.eclipse.jdt.core.dom.Assignment;
+import org.eclipse.jdt.core.dom.Block;
+import org.eclipse.jdt.core.dom.BodyDeclaration;
+import org.eclipse.jdt.core.dom.CharacterLiteral;
+import org.eclipse.jdt.core.dom.ClassInstanceCreation;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.Expression;
+import org.eclipse.jdt.core.dom.FieldAccess;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.ForStatement;
+import org.eclipse.jdt.core.dom.IBinding;
+import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+import org.eclipse.jdt.core.dom.IVariableBinding;
+import org.eclipse.jdt.core.dom.InfixExpression;
+import org.eclipse.jdt.core.dom.Initializer;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
+import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.Modifier;
+import org.eclipse.jdt.core.dom.Name;
+import org.eclipse.jdt.core.dom.NumberLiteral;
+import org.eclipse.jdt.core.dom.ParenthesizedExpression;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
+import org.eclipse.jdt.core.dom.PrimitiveType;
+import org.eclipse.jdt.core.dom.QualifiedName;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.SingleVariableDeclaration;
+import org.eclipse.jdt.core.dom.Statement;
+import org.eclipse.jdt.core.dom.SuperMethodInvocation;
+import org.eclipse.jdt.core.dom.SynchronizedStatement;
+import org.eclipse.jdt.core.dom.ThisExpression;
+import org.eclipse.jdt.core.dom.Type;
+import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
+import org.eclipse.jdt.core.dom.VariableDeclarationExpression;
+import org.eclipse.jdt.core.dom.VariableDeclarationFragment;
+import org.eclipse.jdt.core.dom.rewrite.ASTRewrite;
+import org.eclipse.jdt.core.dom.rewrite.ListRewrite;
+import org.eclipse.jdt.core.refactoring.IJavaRefactorings;
+import org.eclipse.jdt.core.refactoring.descriptors.JavaRefactoringDescriptor;
+
+import org.eclipse.jdt.internal.corext.codemanipulation.StubUtility;
+import org.eclipse.jdt.internal.corext.dom.Bindings;
+import org.eclipse.jdt.internal.corext.dom.JdtASTMatcher;
+import org.eclipse.jdt.internal.corext.dom.ModifierRewrite;
+import org.eclipse.jdt.internal.corext.refactoring.Checks;
+import org.eclipse.jdt.internal.corext.refactoring.base.JavaStatusContext;
+import org.eclipse.jdt.internal.corext.refactoring.changes.DynamicValidationRefactoringChange;
+import org.eclipse.jdt.internal.corext.refactoring.structure.ASTNodeSearchUtil;
+import org.eclipse.jdt.internal.corext.refactoring.util.RefactoringASTParser;
+import org.eclipse.jdt.internal.corext.refactoring.util.ResourceUtil;
+import org.eclipse.jdt.internal.corext.refactoring.util.TextChangeManager;
+import org.eclipse.jdt.internal.corext.util.Messages;
+
+/**
+ * Splits the monitor of a class into several locks.
+ * <p>
+ * The fields used by every synchronized instance method and every <code>synchronized (this)</code>
+ * block of the class are computed with {@link SideEffectsFinder}, which follows calls to methods of
+ * the same compilation unit. Regions that use a common field, or that wait on or notify the
+ * monitor, belong to the same lock domain. Every domain gets a private lock object, and its regions
+ * synchronize on that lock instead of on <code>this</code>.
+ * </p>
+ * <p>
+ * A domain whose only field is a final array, and whose regions each access a single element of
+ * it, can be guarded by an array of locks instead (lock striping). Regions that access the same
+ * element then use the same lock, and regions that access different elements rarely contend.
+ * </p>
+ * <p>
+ * A region that uses fields which no other region uses together is reported, since it is the
+ * reason that otherwise independent domains are merged.
+ * </p>
+ */
+public class SplitLockRefactoring extends Refactoring {
+
+	private static final String NO_NAME= ConcurrencyRefactorings.ConcurrencyRefactorings_empty_string;
+	private static final String OBJECT= "Object"; //$NON-NLS-1$
+	private static final String MAP= "java.util.Map"; //$NON-NLS-1$
+	private static final String LOCK_SUFFIX= "Lock"; //$NON-NLS-1$
+	private static final String LOCKS_SUFFIX= "Locks"; //$NON-NLS-1$
+	private static final int DEFAULT_STRIPE_COUNT= 16;
+
+	/**
+	 * A synchronized instance method or a <code>synchronized (this)</code> block.
+	 */
+	private static final class Region {
+
+		private final ASTNode fNode;
+		private final String fName;
+		private final Set<IVariableBinding> fFields= new LinkedHashSet<IVariableBinding>();
+		private final List<MethodInvocation> fMonitorCalls= new ArrayList<MethodInvocation>();
+		private LockDomain fDomain;
+		private Expression fStripeIndex;
+
+		public Region(ASTNode node, String name) {
+			fNode= node;
+			fName= name;
+		}
+
+		public Block getBody() {
+			if (fNode instanceof MethodDeclaration)
+				return ((MethodDeclaration) fNode).getBody();
+			return ((SynchronizedStatement) fNode).getBody();
+		}
+
+		public boolean isGuarded() {
+			return !fFields.isEmpty() || !fMonitorCalls.isEmpty();
+		}
+	}
+
+	/**
+	 * A set of fields and the regions that use them, which are guarded by one lock.
+	 */
+	private static final class LockDomain {
+
+		private final List<IVariableBinding> fFields= new ArrayList<IVariableBinding>();
+		private final List<Region> fRegions= new ArrayList<Region>();
+		private String fLockName;
+		private String fStripedLockName;
+		private boolean fStripable;
+
+		public boolean isStriped(boolean useStripedLocks) {
+			return useStripedLocks && fStripable;
+		}
+
+		public String getLockName(boolean useStripedLocks) {
+			return isStriped(useStripedLocks) ? fStripedLockName : fLockName;
+		}
+	}
+
+	private final IType fType;
+	private ICompilationUnit fCUnit;
+	private CompilationUnit fRoot;
+	private String fSource;
+	private AbstractTypeDeclaration fTypeDeclaration;
+	private ITypeBinding fTypeBinding;
+	private SideEffectsFinder fFinder;
+	private List<Region> fRegions;
+	private List<LockDomain> fDomains;
+	private RefactoringStatus fAnalysisStatus;
+	private TextChangeManager fChangeManager;
+	private boolean fUseStripedLocks= true;
+	private int fStripeCount= DEFAULT_STRIPE_COUNT;
+
+	public SplitLockRefactoring(IType type) {
+		fType= type;
+		fChangeManager= new TextChangeManager();
+	}
+
+	@Override
+	public RefactoringStatus checkInitialConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+		RefactoringStatus result= new RefactoringStatus();
+		pm.beginTask(NO_NAME, 2);
+		try {
+			pm.setTaskName(ConcurrencyRefactorings.SplitLock_check_preconditions);
+			result.merge(Checks.checkAvailability(fType));
+			if (result.hasFatalError())
+				return result;
+			fCUnit= fType.getCompilationUnit();
+			if (fCUnit == null || fType.isInterface() || fType.isAnnotation()) {
+				result.addFatalError(ConcurrencyRefactorings.SplitLock_no_class);
+				return result;
+			}
+			fRoot= new RefactoringASTParser(AST.JLS3).parse(fCUnit, true, new SubProgressMonitor(pm, 1));
+			fSource= fCUnit.getSource();
+			fTypeDeclaration= ASTNodeSearchUtil.getAbstractTypeDeclarationNode(fType, fRoot);
+			fTypeBinding= fTypeDeclaration != null ? fTypeDeclaration.resolveBinding() : null;
+			if (fTypeBinding == null) {
+				result.addFatalError(Messages.format(ConcurrencyRefactorings.SplitLock_analyze_error, fType.getElementName()));
+				return result;
+			}
+			checkCompileErrors(result);
+			if (result.hasError())
+				return result;
+
+			fFinder= new SideEffectsFinder(fRoot);
+			fAnalysisStatus= new RefactoringStatus();
+			collectRegions();
+			if (fRegions.isEmpty()) {
+				result.addFatalError(Messages.format(ConcurrencyRefactorings.SplitLock_no_regions, fType.getElementName()));
+				return result;
+			}
+			computeDomains();
+			if (fDomains.isEmpty() || (fDomains.size() == 1 && !fDomains.get(0).fStripable)) {
+				result.addFatalError(Messages.format(ConcurrencyRefactorings.SplitLock_single_domain, fType.getElementName()));
+				return result;
+			}
+			pm.worked(1);
+			return result;
+		} finally {
+			pm.done();
+		}
+	}
+
+	private void checkCompileErrors(RefactoringStatus result) {
+		IProblem[] problems= fRoot.getProblems();
+		for (int i= 0; i < problems.length; i++) {
+			if (problems[i].isError()) {
+				result.addError(Messages.format(ConcurrencyRefactorings.SplitLock_compile_error,
+						fCUnit.getElementName()), JavaStatusContext.create(fCUnit));
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Collects the synchronized instance methods and the <code>synchronized (this)</code> blocks of
+	 * the type, together with the fields they use and the calls of <code>wait()</code> and
+	 * <code>notify()</code> on the monitor.
+	 */
+	private void collectRegions() {
+		fRegions= new ArrayList<Region>();
+		final List<MethodInvocation> monitorCalls= new ArrayList<MethodInvocation>();
+		List<BodyDeclaration> declarations= fTypeDeclaration.bodyDeclarations();
+		for (int i= 0; i < declarations.size(); i++) {
+			BodyDeclaration declaration= declarations.get(i);
+			if (!(declaration instanceof MethodDeclaration) && !(declaration instanceof Initializer))
+				continue;
+			if (declaration instanceof MethodDeclaration) {
+				MethodDeclaration method= (MethodDeclaration) declaration;
+				if (method.getBody() == null)
+					continue;
+				int modifiers= method.getModifiers();
+				if (Modifier.isSynchronized(modifiers) && !Modifier.isStatic(modifiers))
+					fRegions.add(new Region(method, method.getName().getIdentifier()));
+			}
+			final String name= declaration instanceof MethodDeclaration ? ((MethodDeclaration) declaration).getName().getIdentifier() : fType.getElementName();
+			declaration.accept(new ASTVisitor() {
+				@Override
+				public boolean visit(AnonymousClassDeclaration node) {
+					return false;
+				}
+				@Override
+				public boolean visit(TypeDeclarationStatement node) {
+					return false;
+				}
+				@Override
+				public boolean visit(SynchronizedStatement node) {
+					if (isThis(node.getExpression()))
+						fRegions.add(new Region(node, name));
+					return true;
+				}
+				@Override
+				public boolean visit(MethodInvocation node) {
+					if (isMonitorCall(node))
+						monitorCalls.add(node);
+					return true;
+				}
+			});
+		}
+
+		Set<IVariableBinding> writtenFields= new HashSet<IVariableBinding>();
+		for (int i= 0; i < fRegions.size(); i++) {
+			Region region= fRegions.get(i);
+			SideEffectsFinder.Effects effects= fFinder.getEffects(region.getBody());
+			addOwnFields(region.fFields, effects.getReadFields());
+			addOwnFields(region.fFields, effects.getWrittenFields());
+			addOwnFields(region.fFields, effects.getModifiedFields());
+			addOwnFields(region.fFields, effects.getWrittenArrays());
+			addOwnFields(writtenFields, effects.getWrittenFields());
+			addOwnFields(writtenFields, effects.getModifiedFields());
+			addOwnFields(writtenFields, effects.getWrittenArrays());
+			for (String call : effects.getEscapingCalls()) {
+				fAnalysisStatus.addWarning(Messages.format(ConcurrencyRefactorings.SplitLock_this_escapes,
+						new String[] { region.fName, call }), JavaStatusContext.create(fCUnit, region.fNode));
+			}
+		}
+		// final fields that no region writes cannot change, so they do not need to be guarded
+		for (int i= 0; i < fRegions.size(); i++) {
+			Region region= fRegions.get(i);
+			for (IVariableBinding field : new ArrayList<IVariableBinding>(region.fFields)) {
+				if (Modifier.isFinal(field.getModifiers()) && !contains(writtenFields, field))
+					region.fFields.remove(field);
+			}
+		}
+
+		for (int i= 0; i < monitorCalls.size(); i++) {
+			MethodInvocation call= monitorCalls.get(i);
+			Region region= findInnermostRegion(call);
+			if (region != null) {
+				region.fMonitorCalls.add(call);
+			} else {
+				fAnalysisStatus.addError(Messages.format(ConcurrencyRefactorings.SplitLock_unguarded_monitor_call,
+						call.getName().getIdentifier()), JavaStatusContext.create(fCUnit, call));
+			}
+		}
+	}
+
+	private void addOwnFields(Set<IVariableBinding> result, Set<IVariableBinding> fields) {
+		for (IVariableBinding field : fields) {
+			if (field.isField() && Bindings.equals(field.getDeclaringClass(), fTypeBinding) && !contains(result, field))
+				result.add(field);
+		}
+	}
+
+	private Region findInnermostRegion(ASTNode node) {
+		Region result= null;
+		for (int i= 0; i < fRegions.size(); i++) {
+			Region region= fRegions.get(i);
+			if (isInside(node, region.fNode) && (result == null || isInside(region.fNode, result.fNode)))
+				result= region;
+		}
+		return result;
+	}
+
+	/**
+	 * Groups the regions into lock domains. Two regions belong to the same domain if they use a
+	 * common field, or if both use the monitor for <code>wait()</code> and <code>notify()</code>.
+	 * Regions that use no fields keep synchronizing on <code>this</code>.
+	 */
+	private void computeDomains() {
+		int[] components= computeComponents(null);
+		Map<Integer, LockDomain> domains= new HashMap<Integer, LockDomain>();
+		fDomains= new ArrayList<LockDomain>();
+		for (int i= 0; i < fRegions.size(); i++) {
+			Region region= fRegions.get(i);
+			if (!region.isGuarded()) {
+				fAnalysisStatus.addInfo(Messages.format(ConcurrencyRefactorings.SplitLock_unguarded_region,
+						new String[] { region.fName, fType.getElementName() }), JavaStatusContext.create(fCUnit, region.fNode));
+				continue;
+			}
+			Integer component= new Integer(find(components, i));
+			LockDomain domain= domains.get(component);
+			if (domain == null) {
+				domain= new LockDomain();
+				domains.put(component, domain);
+				fDomains.add(domain);
+			}
+			domain.fRegions.add(region);
+			region.fDomain= domain;
+			for (IVariableBinding field : region.fFields) {
+				if (!domain.fFields.contains(field))
+					domain.fFields.add(field);
+			}
+		}
+
+		Set<String> excludedNames= collectNames();
+		IJavaProject project= fCUnit.getJavaProject();
+		for (int i= 0; i < fDomains.size(); i++) {
+			LockDomain domain= fDomains.get(i);
+			domain.fStripable= isStripable(domain);
+			String baseName;
+			if (domain.fFields.isEmpty())
+				baseName= "monitor"; //$NON-NLS-1$
+			else
+				baseName= StubUtility.getBaseName(domain.fFields.get(0), project);
+			domain.fLockName= suggestLockName(project, baseName + LOCK_SUFFIX, excludedNames);
+			if (domain.fStripable)
+				domain.fStripedLockName= suggestLockName(project, baseName + LOCKS_SUFFIX, excludedNames);
+
+			if (domain.fFields.size() == 1 && Bindings.findTypeInHierarchy(domain.fFields.get(0).getType(), MAP) != null) {
+				fAnalysisStatus.addInfo(Messages.format(ConcurrencyRefactorings.SplitLock_map_domain,
+						domain.fFields.get(0).getName()), JavaStatusContext.create(fCUnit, domain.fRegions.get(0).fNode));
+			}
+		}
+
+		for (int i= 0; i < fRegions.size(); i++)
+			checkSpanningRegion(fRegions.get(i));
+	}
+
+	private static String suggestLockName(IJavaProject project, String baseName, Set<String> excludedNames) {
+		int modifiers= Modifier.PRIVATE | Modifier.FINAL;
+		String result= StubUtility.getFieldNameSuggestions(project, baseName, 0, modifiers, excludedNames.toArray(new String[excludedNames.size()]))[0];
+		excludedNames.add(result);
+		return result;
+	}
+
+	/**
+	 * Connects the regions that share a field or the monitor.
+	 *
+	 * @param excluded a region that is not connected to the others, or <code>null</code>
+	 * @return the union-find forest of the region indices
+	 */
+	private int[] computeComponents(Region excluded) {
+		int[] parents= new int[fRegions.size()];
+		for (int i= 0; i < parents.length; i++)
+			parents[i]= i;
+		Map<String, Integer> owners= new HashMap<String, Integer>();
+		int monitorOwner= -1;
+		for (int i= 0; i < fRegions.size(); i++) {
+			Region region= fRegions.get(i);
+			if (region == excluded)
+				continue;
+			for (IVariableBinding field : region.fFields) {
+				Integer owner= owners.get(field.getKey());
+				if (owner == null)
+					owners.put(field.getKey(), new Integer(i));
+				else
+					union(parents, owner.intValue(), i);
+			}
+			if (!region.fMonitorCalls.isEmpty()) {
+				if (monitorOwner < 0)
+					monitorOwner= i;
+				else
+					union(parents, monitorOwner, i);
+			}
+		}
+		return parents;
+	}
+
+	private static int find(int[] parents, int element) {
+		while (parents[element] != element) {
+			parents[element]= parents[parents[element]];
+			element= parents[element];
+		}
+		return element;
+	}
+
+	private static void union(int[] parents, int first, int second) {
+		parents[find(parents, first)]= find(parents, second);
+	}
+
+	/**
+	 * Reports a region whose fields would belong to several domains if the region did not exist.
+	 */
+	private void checkSpanningRegion(Region region) {
+		if (region.fDomain == null || region.fFields.size() < 2)
+			return;
+		int[] components= computeComponents(region);
+		Map<Integer, List<String>> groups= new HashMap<Integer, List<String>>();
+		List<List<String>> orderedGroups= new ArrayList<List<String>>();
+		for (IVariableBinding field : region.fFields) {
+			int owner= -1;
+			for (int i= 0; i < fRegions.size() && owner < 0; i++) {
+				Region other= fRegions.get(i);
+				if (other != region && contains(other.fFields, field))
+					owner= find(components, i);
+			}
+			if (owner < 0)
+				continue; // only used by this region
+			Integer key= new Integer(owner);
+			List<String> group= groups.get(key);
+			if (group == null) {
+				group= new ArrayList<String>();
+				groups.put(key, group);
+				orderedGroups.add(group);
+			}
+			group.add(field.getName());
+		}
+		if (orderedGroups.size() < 2)
+			return;
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < orderedGroups.size(); i++) {
+			if (i > 0)
+				buffer.append("; "); //$NON-NLS-1$
+			List<String> group= orderedGroups.get(i);
+			for (int j= 0; j < group.size(); j++) {
+				if (j > 0)
+					buffer.append(", "); //$NON-NLS-1$
+				buffer.append(group.get(j));
+			}
+		}
+		fAnalysisStatus.addWarning(Messages.format(ConcurrencyRefactorings.SplitLock_spanning_region,
+				new String[] { region.fName, buffer.toString(), region.fDomain.fLockName }), JavaStatusContext.create(fCUnit, region.fNode));
+	}
+
+	/**
+	 * Returns whether the domain can be guarded by an array of locks: its only field is a final
+	 * array, and every region accesses a single element of it with an index that does not change
+	 * inside of the region.
+	 */
+	private boolean isStripable(LockDomain domain) {
+		if (domain.fFields.size() != 1)
+			return false;
+		IVariableBinding field= domain.fFields.get(0);
+		if (!field.getType().isArray() || !Modifier.isFinal(field.getModifiers()) || Modifier.isStatic(field.getModifiers()))
+			return false;
+		for (int i= 0; i < domain.fRegions.size(); i++) {
+			Region region= domain.fRegions.get(i);
+			region.fStripeIndex= null;
+			if (!region.fMonitorCalls.isEmpty() || callsMethodUsing(region, field))
+				return false;
+			Expression index= findStripeIndex(region, field);
+			if (index == null)
+				return false;
+			region.fStripeIndex= index;
+		}
+		return true;
+	}
+
+	private boolean callsMethodUsing(Region region, final IVariableBinding field) {
+		final boolean[] result= new boolean[1];
+		region.getBody().accept(new ASTVisitor() {
+			@Override
+			public boolean visit(AnonymousClassDeclaration node) {
+				return false;
+			}
+			@Override
+			public boolean visit(TypeDeclarationStatement node) {
+				return false;
+			}
+			@Override
+			public boolean visit(MethodInvocation node) {
+				check(node.resolveMethodBinding());
+				return !result[0];
+			}
+			@Override
+			public boolean visit(SuperMethodInvocation node) {
+				check(node.resolveMethodBinding());
+				return !result[0];
+			}
+			private void check(IMethodBinding method) {
+				SideEffectsFinder.Effects effects= method != null ? fFinder.getMethodEffects(method) : null;
+				if (effects != null && (effects.reads(field) || effects.writes(field)))
+					result[0]= true;
+			}
+		});
+		return result[0];
+	}
+
+	/**
+	 * Returns the index of the single array element that the region accesses, or
+	 * <code>null</code> if the region uses the array in another way.
+	 */
+	private Expression findStripeIndex(Region region, final IVariableBinding field) {
+		final List<Expression> indices= new ArrayList<Expression>();
+		final boolean[] otherAccess= new boolean[1];
+		region.getBody().accept(new ASTVisitor() {
+			@Override
+			public boolean visit(AnonymousClassDeclaration node) {
+				return false;
+			}
+			@Override
+			public boolean visit(TypeDeclarationStatement node) {
+				return false;
+			}
+			@Override
+			public boolean visit(SimpleName node) {
+				if (!isField(node, field))
+					return false;
+				ASTNode access= node;
+				if (node.getParent() instanceof FieldAccess && ((FieldAccess) node.getParent()).getExpression() instanceof ThisExpression)
+					access= node.getParent();
+				else if (node.getLocationInParent() == QualifiedName.NAME_PROPERTY)
+					otherAccess[0]= true; // the field of another object
+				ASTNode parent= access.getParent();
+				if (parent instanceof ArrayAccess && ((ArrayAccess) parent).getArray() == access)
+					indices.add(((ArrayAccess) parent).getIndex());
+				else if (!(isLengthAccess(access)))
+					otherAccess[0]= true;
+				return false;
+			}
+		});
+		if (otherAccess[0] || indices.isEmpty())
+			return null;
+		Expression index= indices.get(0);
+		for (int i= 1; i < indices.size(); i++) {
+			if (!index.subtreeMatch(new JdtASTMatcher(), indices.get(i)))
+				return null;
+		}
+		return isStableIndex(region, index) ? index : null;
+	}
+
+	private static boolean isLengthAccess(ASTNode array) {
+		ASTNode parent= array.getParent();
+		if (parent instanceof QualifiedName)
+			return ((QualifiedName) parent).getQualifier() == array && "length".equals(((QualifiedName) parent).getName().getIdentifier()); //$NON-NLS-1$
+		if (parent instanceof FieldAccess)
+			return ((FieldAccess) parent).getExpression() == array && "length".equals(((FieldAccess) parent).getName().getIdentifier()); //$NON-NLS-1$
+		return false;
+	}
+
+	/**
+	 * Returns whether the index can be evaluated before the lock is acquired: it only consists of
+	 * constants and of locals that are declared outside of the region and not written inside of
+	 * it.
+	 */
+	private boolean isStableIndex(final Region region, Expression index) {
+		final Set<IVariableBinding> locals= new HashSet<IVariableBinding>();
+		final boolean[] stable= { true };
+		index.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SimpleName node) {
+				IBinding binding= node.resolveBinding();
+				if (binding instanceof IVariableBinding) {
+					IVariableBinding variable= (IVariableBinding) binding;
+					if (variable.isField()) {
+						if (variable.getConstantValue() == null)
+							stable[0]= false;
+					} else {
+						ASTNode declaration= fRoot.findDeclaringNode(variable);
+						if (declaration == null || isInside(declaration, region.getBody())
+								|| (region.fNode instanceof MethodDeclaration && !(declaration instanceof SingleVariableDeclaration)))
+							stable[0]= false;
+						locals.add(variable);
+					}
+				}
+				return false;
+			}
+			@Override
+			public boolean visit(QualifiedName node) {
+				IBinding binding= node.resolveBinding();
+				if (!(binding instanceof IVariableBinding) || ((IVariableBinding) binding).getConstantValue() == null)
+					stable[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(MethodInvocation node) {
+				stable[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(ClassInstanceCreation node) {
+				stable[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(ArrayAccess node) {
+				stable[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(FieldAccess node) {
+				stable[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(Assignment node) {
+				stable[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(PostfixExpression node) {
+				stable[0]= false;
+				return false;
+			}
+			@Override
+			public boolean visit(PrefixExpression node) {
+				PrefixExpression.Operator operator= node.getOperator();
+				if (operator == PrefixExpression.Operator.INCREMENT || operator == PrefixExpression.Operator.DECREMENT)
+					stable[0]= false;
+				return stable[0];
+			}
+		});
+		if (!stable[0])
+			return false;
+		for (IVariableBinding local : locals) {
+			if (isWritten(region.getBody(), local))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isWritten(ASTNode scope, final IVariableBinding variable) {
+		final boolean[] result= new boolean[1];
+		scope.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(Assignment node) {
+				if (isVariable(node.getLeftHandSide(), variable))
+					result[0]= true;
+				return !result[0];
+			}
+			@Override
+			public boolean visit(PrefixExpression node) {
+				PrefixExpression.Operator operator= node.getOperator();
+				if ((operator == PrefixExpression.Operator.INCREMENT || operator == PrefixExpression.Operator.DECREMENT)
+						&& isVariable(node.getOperand(), variable))
+					result[0]= true;
+				return !result[0];
+			}
+			@Override
+			public boolean visit(PostfixExpression node) {
+				if (isVariable(node.getOperand(), variable))
+					result[0]= true;
+				return !result[0];
+			}
+		});
+		return result[0];
+	}
+
+	private static boolean isField(SimpleName name, IVariableBinding field) {
+		IBinding binding= name.resolveBinding();
+		return binding instanceof IVariableBinding && Bindings.equals(((IVariableBinding) binding).getVariableDeclaration(), field);
+	}
+
+	private static boolean isVariable(Expression expression, IVariableBinding variable) {
+		expression= getUnparenthesized(expression);
+		return expression instanceof SimpleName && Bindings.equals(((SimpleName) expression).resolveBinding(), variable);
+	}
+
+	private boolean isThis(Expression expression) {
+		expression= getUnparenthesized(expression);
+		if (!(expression instanceof ThisExpression))
+			return false;
+		Name qualifier= ((ThisExpression) expression).getQualifier();
+		return qualifier == null || Bindings.equals(qualifier.resolveBinding(), fTypeBinding);
+	}
+
+	private boolean isMonitorCall(MethodInvocation invocation) {
+		String name= invocation.getName().getIdentifier();
+		if (!"wait".equals(name) && !"notify".equals(name) && !"notifyAll".equals(name)) //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+			return false;
+		IMethodBinding binding= invocation.resolveMethodBinding();
+		if (binding == null || !"java.lang.Object".equals(binding.getDeclaringClass().getQualifiedName())) //$NON-NLS-1$
+			return false;
+		return invocation.getExpression() == null || isThis(invocation.getExpression());
+	}
+
+	private Set<String> collectNames() {
+		final Set<String> result= new HashSet<String>();
+		fTypeDeclaration.accept(new ASTVisitor() {
+			@Override
+			public boolean visit(SimpleName node) {
+				result.add(node.getIdentifier());
+				return false;
+			}
+		});
+		return result;
+	}
+
+	private static boolean contains(Set<IVariableBinding> fields, IVariableBinding field) {
+		for (IVariableBinding element : fields) {
+			if (Bindings.equals(element, field))
+				return true;
+		}
+		return false;
+	}
+
+	private static boolean isInside(ASTNode node, ASTNode scope) {
+		int start= scope.getStartPosition();
+		return start <= node.getStartPosition() && node.getStartPosition() + node.getLength() <= start + scope.getLength();
+	}
+
+	private static Expression getUnparenthesized(Expression expression) {
+		while (expression instanceof ParenthesizedExpression)
+			expression= ((ParenthesizedExpression) expression).getExpression();
+		return expression;
+	}
+
+	@Override
+	public RefactoringStatus checkFinalConditions(IProgressMonitor pm)
+			throws CoreException, OperationCanceledException {
+		RefactoringStatus result= new RefactoringStatus();
+		fChangeManager.clear();
+		pm.beginTask(NO_NAME, 3);
+		try {
+			pm.setTaskName(ConcurrencyRefactorings.SplitLock_check_preconditions);
+			result.merge(fAnalysisStatus);
+			if (!Modifier.isPrivate(fTypeBinding.getModifiers())) {
+				result.addWarning(Messages.format(ConcurrencyRefactorings.SplitLock_clients_warning,
+						fType.getElementName()), JavaStatusContext.create(fCUnit, fTypeDeclaration.getName()));
+			}
+			pm.worked(1);
+			if (result.hasFatalError())
+				return result;
+
+			createEdits();
+			pm.worked(1);
+
+			IFile[] filesToBeModified= ResourceUtil.getFiles(fChangeManager.getAllCompilationUnits());
+			result.merge(Checks.validateModifiesFiles(filesToBeModified, getValidationContext()));
+			if (result.hasFatalError())
+				return result;
+			ResourceChangeChecker.checkFilesToBeChanged(filesToBeModified, new SubProgressMonitor(pm, 1));
+			return result;
+		} finally {
+			pm.done();
+		}
+	}
+
+	private void createEdits() throws CoreException {
+		ASTRewrite rewriter= ASTRewrite.create(fRoot.getAST());
+		AST ast= fRoot.getAST();
+		TextEditGroup declarationGroup= new TextEditGroup(ConcurrencyRefactorings.SplitLock_add_lock);
+		List<TextEditGroup> groups= new ArrayList<TextEditGroup>();
+		groups.add(declarationGroup);
+
+		ListRewrite declarations= rewriter.getListRewrite(fTypeDeclaration, fTypeDeclaration.getBodyDeclarationsProperty());
+		ASTNode previous= null;
+		List<BodyDeclaration> bodyDeclarations= fTypeDeclaration.bodyDeclarations();
+		for (int i= 0; i < bodyDeclarations.size(); i++) {
+			if (bodyDeclarations.get(i) instanceof FieldDeclaration)
+				previous= bodyDeclarations.get(i);
+		}
+		for (int i= 0; i < fDomains.size(); i++) {
+			LockDomain domain= fDomains.get(i);
+			List<BodyDeclaration> lockDeclarations= new ArrayList<BodyDeclaration>();
+			lockDeclarations.add(createLockDeclaration(ast, domain));
+			if (domain.isStriped(fUseStripedLocks))
+				lockDeclarations.add(createLockInitializer(ast, domain));
+			for (int j= 0; j < lockDeclarations.size(); j++) {
+				BodyDeclaration declaration= lockDeclarations.get(j);
+				if (previous == null)
+					declarations.insertFirst(declaration, declarationGroup);
+				else
+					declarations.insertAfter(declaration, previous, declarationGroup);
+				previous= declaration;
+			}
+
+			String lockName= domain.getLockName(fUseStripedLocks);
+			TextEditGroup group= new TextEditGroup(Messages.format(ConcurrencyRefactorings.SplitLock_use_lock, lockName));
+			groups.add(group);
+			for (int j= 0; j < domain.fRegions.size(); j++) {
+				Region region= domain.fRegions.get(j);
+				Expression lock= createLockExpression(rewriter, ast, domain, region);
+				if (region.fNode instanceof MethodDeclaration)
+					synchronizeBody(rewriter, ast, (MethodDeclaration) region.fNode, lock, group);
+				else
+					rewriter.replace(((SynchronizedStatement) region.fNode).getExpression(), lock, group);
+				for (int k= 0; k < region.fMonitorCalls.size(); k++) {
+					MethodInvocation call= region.fMonitorCalls.get(k);
+					rewriter.set(call, MethodInvocation.EXPRESSION_PROPERTY, ast.newSimpleName(lockName), group);
+				}
+			}
+		}
+
+		TextChange change= fChangeManager.get(fCUnit);
+		MultiTextEdit root= new MultiTextEdit();
+		change.setEdit(root);
+		root.addChild(rewriter.rewriteAST());
+		for (int i= 0; i < groups.size(); i++)
+			change.addTextEditGroup(groups.get(i));
+	}
+
+	/**
+	 * Creates <code>private final Object lock= new Object();</code>, or
+	 * <code>private final Object[] locks= new Object[n];</code> for striped locks.
+	 */
+	private FieldDeclaration createLockDeclaration(AST ast, LockDomain domain) {
+		VariableDeclarationFragment fragment= ast.newVariableDeclarationFragment();
+		fragment.setName(ast.newSimpleName(domain.getLockName(fUseStripedLocks)));
+		Type type;
+		if (domain.isStriped(fUseStripedLocks)) {
+			ArrayCreation creation= ast.newArrayCreation();
+			creation.setType(ast.newArrayType(ast.newSimpleType(ast.newSimpleName(OBJECT))));
+			creation.dimensions().add(ast.newNumberLiteral(String.valueOf(fStripeCount)));
+			fragment.setInitializer(creation);
+			type= ast.newArrayType(ast.newSimpleType(ast.newSimpleName(OBJECT)));
+		} else {
+			ClassInstanceCreation creation= ast.newClassInstanceCreation();
+			creation.setType(ast.newSimpleType(ast.newSimpleName(OBJECT)));
+			fragment.setInitializer(creation);
+			type= ast.newSimpleType(ast.newSimpleName(OBJECT));
+		}
+		FieldDeclaration declaration= ast.newFieldDeclaration(fragment);
+		declaration.setType(type);
+		declaration.modifiers().addAll(ast.newModifiers(Modifier.PRIVATE | Modifier.FINAL));
+		return declaration;
+	}
+
+	/**
+	 * Creates the initializer that fills the array of striped locks:
+	 * <code>{ for (int i= 0; i &lt; locks.length; i++) locks[i]= new Object(); }</code>.
+	 */
+	private Initializer createLockInitializer(AST ast, LockDomain domain) {
+		String lockName= domain.getLockName(fUseStripedLocks);
+		String indexName= "i"; //$NON-NLS-1$
+		VariableDeclarationFragment indexFragment= ast.newVariableDeclarationFragment();
+		indexFragment.setName(ast.newSimpleName(indexName));
+		indexFragment.setInitializer(ast.newNumberLiteral("0")); //$NON-NLS-1$
+		VariableDeclarationExpression indexDeclaration= ast.newVariableDeclarationExpression(indexFragment);
+		indexDeclaration.setType(ast.newPrimitiveType(PrimitiveType.INT));
+
+		InfixExpression condition= ast.newInfixExpression();
+		condition.setLeftOperand(ast.newSimpleName(indexName));
+		condition.setOperator(InfixExpression.Operator.LESS);
+		condition.setRightOperand(ast.newQualifiedName(ast.newSimpleName(lockName), ast.newSimpleName("length"))); //$NON-NLS-1$
+
+		PostfixExpression increment= ast.newPostfixExpression();
+		increment.setOperand(ast.newSimpleName(indexName));
+		increment.setOperator(PostfixExpression.Operator.INCREMENT);
+
+		ArrayAccess element= ast.newArrayAccess();
+		element.setArray(ast.newSimpleName(lockName));
+		element.setIndex(ast.newSimpleName(indexName));
+		ClassInstanceCreation creation= ast.newClassInstanceCreation();
+		creation.setType(ast.newSimpleType(ast.newSimpleName(OBJECT)));
+		Assignment assignment= ast.newAssignment();
+		assignment.setLeftHandSide(element);
+		assignment.setRightHandSide(creation);
+
+		ForStatement loop= ast.newForStatement();
+		loop.initializers().add(indexDeclaration);
+		loop.setExpression(condition);
+		loop.updaters().add(increment);
+		loop.setBody(ast.newExpressionStatement(assignment));
+
+		Initializer initializer= ast.newInitializer();
+		initializer.getBody().statements().add(loop);
+		return initializer;
+	}
+
+	/**
+	 * Creates the lock of a region, e.g. <code>countLock</code> or
+	 * <code>bucketsLocks[Math.abs(index % bucketsLocks.length)]</code>.
+	 */
+	private Expression createLockExpression(ASTRewrite rewriter, AST ast, LockDomain domain, Region region) {
+		String lockName= domain.getLockName(fUseStripedLocks);
+		if (!domain.isStriped(fUseStripedLocks))
+			return ast.newSimpleName(lockName);
+		Expression index= getUnparenthesized(region.fStripeIndex);
+		String indexSource= getSource(index);
+		if (!(index instanceof Name || index instanceof NumberLiteral || index instanceof CharacterLiteral))
+			indexSource= '(' + indexSource + ')';
+		StringBuffer buffer= new StringBuffer();
+		buffer.append(lockName).append("[Math.abs(").append(indexSource).append(" % "); //$NON-NLS-1$ //$NON-NLS-2$
+		buffer.append(lockName).append(".length)]"); //$NON-NLS-1$
+		return (Expression) rewriter.createStringPlaceholder(buffer.toString(), ASTNode.ARRAY_ACCESS);
+	}
+
+	/**
+	 * Removes the <code>synchronized</code> modifier of the method and moves its statements into a
+	 * <code>synchronized</code> block on the given lock.
+	 */
+	private void synchronizeBody(ASTRewrite rewriter, AST ast, MethodDeclaration method, Expression lock, TextEditGroup group) {
+		ModifierRewrite.create(rewriter, method).setModifiers(method.getModifiers() & ~Modifier.SYNCHRONIZED, group);
+		List<Statement> statements= method.getBody().statements();
+		SynchronizedStatement synchronizedStatement= ast.newSynchronizedStatement();
+		synchronizedStatement.setExpression(lock);
+		List<Statement> synchronizedStatements= synchronizedStatement.getBody().statements();
+		if (statements.size() == 1) {
+			synchronizedStatements.add((Statement) rewriter.createMoveTarget(statements.get(0)));
+			rewriter.replace(statements.get(0), synchronizedStatement, group);
+		} else {
+			ListRewrite source= rewriter.getListRewrite(method.getBody(), Block.STATEMENTS_PROPERTY);
+			ASTNode moved= source.createMoveTarget(statements.get(0), statements.get(statements.size() - 1), synchronizedStatement, group);
+			synchronizedStatements.add((Statement) moved);
+		}
+	}
+
+	private String getSource(ASTNode node) {
+		return fSource.substring(node.getStartPosition(), node.getStartPosition() + node.getLength());
+	}
+
+	@Override
+	public Change createChange(IProgressMonitor pm) throws CoreException,
+			OperationCanceledException {
+		String project= null;
+		IJavaProject javaProject= fCUnit.getJavaProject();
+		if (javaProject != null)
+			project= javaProject.getElementName();
+		int flags= JavaRefactoringDescriptor.JAR_REFACTORING | JavaRefactoringDescriptor.JAR_SOURCE_ATTACHMENT;
+
+		final Map<String, String> arguments= new HashMap<String, String>();
+		String description= ConcurrencyRefactorings.SplitLock_name_user;
+		String comment= Messages.format(ConcurrencyRefactorings.SplitLock_comment, new String[] { fType.getElementName(), String.valueOf(fDomains.size()) });
+
+		final JavaRefactoringDescriptor descriptor= new JavaRefactoringDescriptor(IJavaRefactorings.ENCAPSULATE_FIELD, project, description, comment, arguments, flags) {};
+
+		final DynamicValidationRefactoringChange result= new DynamicValidationRefactoringChange(descriptor, getName());
+		TextChange[] changes= fChangeManager.getAllChanges();
+		pm.beginTask(NO_NAME, changes.length);
+		pm.setTaskName(ConcurrencyRefactorings.SplitLock_create_changes);
+		for (int i= 0; i < changes.length; i++) {
+			result.add(changes[i]);
+			pm.worked(1);
+		}
+		pm.done();
+		return result;
+	}
+
+	@Override
+	public String getName() {
+		return ConcurrencyRefactorings.SplitLock_name_official;
+	}
+
+	public IType getType() {
+		return fType;
+	}
+
+	/**
+	 * Returns a description of every lock domain: the name of its lock, the guarded fields and the
+	 * regions that use them, e.g. <code>countLock: count, total (increment, reset)</code>.
+	 *
+	 * @return the descriptions of the lock domains
+	 */
+	public String[] getDomainDescriptions() {
+		String[] result= new String[fDomains.size()];
+		for (int i= 0; i < fDomains.size(); i++) {
+			LockDomain domain= fDomains.get(i);
+			StringBuffer buffer= new StringBuffer(domain.getLockName(fUseStripedLocks));
+			if (domain.isStriped(fUseStripedLocks))
+				buffer.append("[]"); //$NON-NLS-1$
+			buffer.append(": "); //$NON-NLS-1$
+			for (int j= 0; j < domain.fFields.size(); j++) {
+				if (j > 0)
+					buffer.append(", "); //$NON-NLS-1$
+				buffer.append(domain.fFields.get(j).getName());
+			}
+			buffer.append(" ("); //$NON-NLS-1$
+			Set<String> names= new LinkedHashSet<String>();
+			for (int j= 0; j < domain.fRegions.size(); j++)
+				names.add(domain.fRegions.get(j).fName);
+			boolean first= true;
+			for (String name : names) {
+				if (!first)
+					buffer.append(", "); //$NON-NLS-1$
+				buffer.append(name);
+				first= false;
+			}
+			buffer.append(')');
+			result[i]= buffer.toString();
+		}
+		return result;
+	}
+
+	public boolean isUseStripedLocks() {
+		return fUseStripedLocks;
+	}
+
+	/**
+	 * Sets whether domains whose only field is an array that is accessed one element at a time are
+	 * guarded by an array of locks instead of a single lock.
+	 *
+	 * @param useStripedLocks <code>true</code> to use striped locks where possible
+	 * @return the status of the new setting
+	 */
+	public RefactoringStatus setUseStripedLocks(boolean useStripedLocks) {
+		fUseStripedLocks= useStripedLocks;
+		return new RefactoringStatus();
+	}
+
+	public int getStripeCount() {
+		return fStripeCount;
+	}
+
+	/**
+	 * Sets the number of locks of a striped lock array.
+	 *
+	 * @param stripeCount the number of locks, at least 2
+	 * @return the status of the new setting
+	 */
+	public RefactoringStatus setStripeCount(int stripeCount) {
+		if (stripeCount < 2)
+			return RefactoringStatus.createErrorStatus(ConcurrencyRefactorings.SplitLock_invalid_stripe_count);
+		fStripeCount= stripeCount;
+		return new RefactoringStatus();
+	}
+
+	/**
+	 * @return <code>true</code> if at least one domain can be guarded by striped locks
+	 */
+	public boolean hasStripableDomains() {
+		for (int i= 0; i < fDomains.size(); i++) {
+			if (fDomains.get(i).fStripable)
+				return true;
+		}
+		return false;
+	}
+}
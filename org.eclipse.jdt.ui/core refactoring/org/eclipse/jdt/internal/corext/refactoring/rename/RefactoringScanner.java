@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -18,6 +18,7 @@ import org.eclipse.core.runtime.Assert;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.ToolFactory;
+import org.eclipse.jdt.core.compiler.CharOperation;
 import org.eclipse.jdt.core.compiler.IScanner;
 import org.eclipse.jdt.core.compiler.ITerminalSymbols;
 import org.eclipse.jdt.core.compiler.InvalidInputException;
@@ -52,6 +53,7 @@ public class RefactoringScanner {
 	}
 
 	private final String fName;
+	private final char[] fNameChars;
 	private final String fQualifier;
 
 	private IScanner fScanner;
@@ -62,23 +64,12 @@ public class RefactoringScanner {
 		Assert.isNotNull(name);
 		Assert.isNotNull(qualifier);
 		fName= name;
+		fNameChars= name.toCharArray();
 		fQualifier= qualifier;
 	}
 
 	public void scan(ICompilationUnit cu)	throws JavaModelException {
-		char[] chars= cu.getBuffer().getCharacters();
-		fMatches= new HashSet<TextMatch>();
-		fScanner= ToolFactory.createScanner(true, true, false, true);
-		fScanner.setSource(chars);
-
-//		IImportContainer importContainer= cu.getImportContainer();
-//		if (importContainer.exists())
-//			fNoFlyZone= importContainer.getSourceRange();
-//		else
-//			fNoFlyZone= null;
-
-		doScan();
-		fScanner= null;
+		scan(cu.getBuffer().getCharacters());
 	}
 
 	/**
@@ -90,10 +81,29 @@ public class RefactoringScanner {
 	 * @param text the text
 	 */
 	public void scan(String text) {
-		char[] chars= text.toCharArray();
+		scan(text.toCharArray());
+	}
+
+	/**
+	 * Scans the given characters. Characters that do not contain the name are not tokenized.
+	 *
+	 * @param chars the characters of a compilation unit
+	 * @since 3.9
+	 */
+	public void scan(char[] chars) {
 		fMatches= new HashSet<TextMatch>();
+		if (CharOperation.indexOf(fNameChars, chars, true) == -1)
+			return;
+
 		fScanner= ToolFactory.createScanner(true, true, false, true);
 		fScanner.setSource(chars);
+
+//		IImportContainer importContainer= cu.getImportContainer();
+//		if (importContainer.exists())
+//			fNoFlyZone= importContainer.getSourceRange();
+//		else
+//			fNoFlyZone= null;
+
 		doScan();
 		fScanner= null;
 	}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,18 +10,35 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.corext.refactoring.rename;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.eclipse.core.runtime.Assert;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.SubProgressMonitor;
+import org.eclipse.core.runtime.content.IContentDescription;
 
 import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
@@ -42,6 +59,7 @@ import org.eclipse.jdt.core.JavaModelException;
 import org.eclipse.jdt.core.search.IJavaSearchScope;
 import org.eclipse.jdt.core.search.SearchMatch;
 
+import org.eclipse.jdt.internal.corext.Corext;
 import org.eclipse.jdt.internal.corext.refactoring.RefactoringCoreMessages;
 import org.eclipse.jdt.internal.corext.refactoring.SearchResultGroup;
 import org.eclipse.jdt.internal.corext.refactoring.changes.TextChangeCompatibility;
@@ -49,8 +67,20 @@ import org.eclipse.jdt.internal.corext.refactoring.rename.RefactoringScanner.Tex
 import org.eclipse.jdt.internal.corext.refactoring.tagging.ITextUpdating;
 import org.eclipse.jdt.internal.corext.refactoring.util.TextChangeManager;
 
+/**
+ * Updates the textual matches of a renamed element in comments and strings.
+ * <p>
+ * The compilation units in scope are scanned concurrently. Their contents are read from the
+ * file unless they are open, and only tokenized if they contain the name. The matches are added
+ * to the change manager in the order of the compilation units and of their offsets, so that the
+ * resulting changes do not depend on the scheduling of the scans.
+ * </p>
+ */
 class TextMatchUpdater {
 
+	/** The maximum number of compilation units scanned concurrently */
+	private static final int MAX_THREADS= 4;
+
 	private static final String TEXT_EDIT_LABEL= RefactoringCoreMessages.TextMatchUpdater_update;
 
 	private static final GroupCategorySet TEXTUAL_MATCHES= new GroupCategorySet(
@@ -63,7 +93,8 @@ class TextMatchUpdater {
 	private final SearchResultGroup[] fReferences;
 	private final boolean fOnlyQualified;
 
-	private final RefactoringScanner fScanner;
+	private final String fCurrentName;
+	private final String fCurrentQualifier;
 	private final String fNewName;
 	private final int fCurrentNameLength;
 
@@ -77,8 +108,9 @@ class TextMatchUpdater {
 		fOnlyQualified= onlyQualified;
 
 		fNewName= newName;
+		fCurrentName= currentName;
+		fCurrentQualifier= currentQualifier;
 		fCurrentNameLength= currentName.length();
-		fScanner= new RefactoringScanner(currentName, currentQualifier);
 	}
 
 	static void perform(IProgressMonitor pm, IJavaSearchScope scope, String currentName, String currentQualifier, String newName, TextChangeManager manager, SearchResultGroup[] references, boolean onlyQualified) throws JavaModelException{
@@ -93,13 +125,15 @@ class TextMatchUpdater {
 		try{
 			IProject[] projectsInScope= getProjectsInScope();
 
-			pm.beginTask("", projectsInScope.length); //$NON-NLS-1$
+			pm.beginTask("", projectsInScope.length * 2); //$NON-NLS-1$
 
+			List<ICompilationUnit> cus= new ArrayList<ICompilationUnit>();
 			for (int i =0 ; i < projectsInScope.length; i++){
 				if (pm.isCanceled())
 					throw new OperationCanceledException();
-				addTextMatches(projectsInScope[i], new SubProgressMonitor(pm, 1));
+				collectCompilationUnits(projectsInScope[i], cus, new SubProgressMonitor(pm, 1));
 			}
+			addTextMatches(cus, new SubProgressMonitor(pm, projectsInScope.length));
 		} finally{
 			pm.done();
 		}
@@ -120,7 +154,7 @@ class TextMatchUpdater {
 		return projectsInScope.toArray(new IProject[projectsInScope.size()]);
 	}
 
-	private void addTextMatches(IResource resource, IProgressMonitor pm) throws JavaModelException{
+	private void collectCompilationUnits(IResource resource, List<ICompilationUnit> cus, IProgressMonitor pm) throws JavaModelException{
 		try{
 			String task= RefactoringCoreMessages.TextMatchUpdater_searching + resource.getFullPath();
 			if (resource instanceof IFile){
@@ -132,7 +166,7 @@ class TextMatchUpdater {
 					return;
 				if (! fScope.encloses(element))
 					return;
-				addCuTextMatches((ICompilationUnit) element);
+				cus.add((ICompilationUnit) element);
 
 			} else if (resource instanceof IContainer){
 				IResource[] members= ((IContainer) resource).members();
@@ -142,7 +176,7 @@ class TextMatchUpdater {
 					if (pm.isCanceled())
 						throw new OperationCanceledException();
 
-					addTextMatches(members[i], new SubProgressMonitor(pm, 1));
+					collectCompilationUnits(members[i], cus, new SubProgressMonitor(pm, 1));
 				}
 			}
 		} catch (JavaModelException e){
@@ -154,9 +188,119 @@ class TextMatchUpdater {
 		}
 	}
 
-	private void addCuTextMatches(ICompilationUnit cu) throws JavaModelException{
-		fScanner.scan(cu);
-		Set<TextMatch> matches= fScanner.getMatches(); //Set of TextMatch
+	private void addTextMatches(List<ICompilationUnit> cus, IProgressMonitor pm) throws JavaModelException {
+		int threads= Math.max(1, Math.min(Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()), cus.size()));
+		ExecutorService executor= Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int fCount;
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread= new Thread(runnable, "Text Match Scanner " + ++fCount); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			pm.beginTask("", cus.size()); //$NON-NLS-1$
+			List<Future<Set<TextMatch>>> results= new ArrayList<Future<Set<TextMatch>>>(cus.size());
+			for (Iterator<ICompilationUnit> iter= cus.iterator(); iter.hasNext();) {
+				final ICompilationUnit cu= iter.next();
+				results.add(executor.submit(new Callable<Set<TextMatch>>() {
+					public Set<TextMatch> call() throws CoreException {
+						RefactoringScanner scanner= new RefactoringScanner(fCurrentName, fCurrentQualifier);
+						scanner.scan(getContents(cu));
+						return scanner.getMatches();
+					}
+				}));
+			}
+
+			// merge in the order of the compilation units, the change manager is not thread safe
+			for (int i= 0; i < cus.size(); i++) {
+				if (pm.isCanceled())
+					throw new OperationCanceledException();
+				addCuTextMatches(cus.get(i), getMatches(results.get(i)));
+				pm.worked(1);
+			}
+		} finally {
+			executor.shutdownNow();
+			pm.done();
+		}
+	}
+
+	private static Set<TextMatch> getMatches(Future<Set<TextMatch>> result) throws JavaModelException {
+		try {
+			return result.get();
+		} catch (InterruptedException e) {
+			throw new OperationCanceledException();
+		} catch (ExecutionException e) {
+			Throwable cause= e.getCause();
+			if (cause instanceof JavaModelException)
+				throw (JavaModelException) cause;
+			if (cause instanceof CoreException)
+				throw new JavaModelException((CoreException) cause);
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new JavaModelException(new CoreException(new Status(IStatus.ERROR, Corext.getPluginId(), cause.getMessage(), cause)));
+		}
+	}
+
+	/**
+	 * Returns the contents of a compilation unit. Compilation units that are not open are read
+	 * from their file, so that they don't need to be opened. Like the Java model buffer, the
+	 * contents do not include a byte order mark, so that the offsets of the matches are the ones
+	 * of the buffer.
+	 *
+	 * @param cu the compilation unit
+	 * @return the contents
+	 * @throws CoreException if the contents could not be read
+	 */
+	private static char[] getContents(ICompilationUnit cu) throws CoreException {
+		IResource resource= cu.getResource();
+		if (cu.isWorkingCopy() || cu.isOpen() || !(resource instanceof IFile))
+			return cu.getBuffer().getCharacters();
+
+		IFile file= (IFile) resource;
+		InputStream contents= file.getContents();
+		try {
+			skipByteOrderMark(file, contents);
+			Reader reader;
+			try {
+				reader= new InputStreamReader(contents, file.getCharset());
+			} catch (UnsupportedEncodingException e) {
+				reader= new InputStreamReader(contents);
+			}
+			StringBuffer buffer= new StringBuffer();
+			char[] chars= new char[8192];
+			int read;
+			while ((read= reader.read(chars)) != -1)
+				buffer.append(chars, 0, read);
+			char[] result= new char[buffer.length()];
+			buffer.getChars(0, result.length, result, 0);
+			return result;
+		} catch (IOException e) {
+			throw new CoreException(new Status(IStatus.ERROR, Corext.getPluginId(), e.getMessage(), e));
+		} finally {
+			try {
+				contents.close();
+			} catch (IOException e) {
+				// ignore
+			}
+		}
+	}
+
+	private static void skipByteOrderMark(IFile file, InputStream contents) throws CoreException, IOException {
+		IContentDescription description= file.getContentDescription();
+		if (description == null)
+			return;
+		byte[] bom= (byte[]) description.getProperty(IContentDescription.BYTE_ORDER_MARK);
+		if (bom == null)
+			return;
+		for (int i= 0; i < bom.length; i++) {
+			if (contents.read() == -1)
+				return;
+		}
+	}
+
+	private void addCuTextMatches(ICompilationUnit cu, Set<TextMatch> matches) {
 		if (matches.size() == 0)
 			return;
 
@@ -188,7 +332,14 @@ class TextMatchUpdater {
 	}
 
 	private void addTextUpdates(ICompilationUnit cu, Set<TextMatch> matches) {
-		for (Iterator<TextMatch> resultIter= matches.iterator(); resultIter.hasNext();){
+		// add in the order of the offsets, so that the same matches are omitted on conflicts
+		List<TextMatch> sortedMatches= new ArrayList<TextMatch>(matches);
+		Collections.sort(sortedMatches, new Comparator<TextMatch>() {
+			public int compare(TextMatch m1, TextMatch m2) {
+				return m1.getStartPosition() - m2.getStartPosition();
+			}
+		});
+		for (Iterator<TextMatch> resultIter= sortedMatches.iterator(); resultIter.hasNext();){
 			TextMatch match= resultIter.next();
 			if (!match.isQualified() && fOnlyQualified)
 				continue;
@@ -147,6 +147,7 @@ import org.eclipse.jdt.internal.corext.util.JdtFlags;
 import org.eclipse.jdt.internal.corext.util.Messages;
 import org.eclipse.jdt.internal.corext.util.SearchUtils;
 import org.eclipse.jdt.internal.corext.util.Strings;
+import org.eclipse.jdt.internal.corext.util.TypeHierarchyCache;
 
 import org.eclipse.jdt.ui.JavaElementLabels;
 
@@ -2342,7 +2343,7 @@ public final class MoveInstanceMethodProcessor extends MoveProcessor implements
 			try {
 				boolean result= true;
 				boolean found= false;
-				final ITypeHierarchy hierarchy= fMethod.getDeclaringType().newTypeHierarchy(new SubProgressMonitor(monitor, 1));
+				final ITypeHierarchy hierarchy= TypeHierarchyCache.getDefault().getTypeHierarchy(fMethod.getDeclaringType(), new SubProgressMonitor(monitor, 1));
 				IType type= null;
 				IMethod method= null;
 				IType[] types= hierarchy.getAllSubtypes(fMethod.getDeclaringType());
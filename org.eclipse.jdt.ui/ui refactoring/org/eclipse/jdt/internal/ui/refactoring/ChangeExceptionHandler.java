@@ -37,6 +37,7 @@ import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.ltk.core.refactoring.Change;
 import org.eclipse.ltk.core.refactoring.CompositeChange;
 import org.eclipse.ltk.core.refactoring.Refactoring;
+import org.eclipse.ltk.core.refactoring.StreamingChange;
 
 import org.eclipse.jdt.internal.corext.util.Messages;
 
@@ -116,20 +117,23 @@ public class ChangeExceptionHandler {
 	}
 
 	private void handle(Change change, IStatus status) {
+		Change undo= null;
 		if (change instanceof CompositeChange) {
-			Change undo= ((CompositeChange)change).getUndoUntilException();
-			if (undo != null) {
-				JavaPlugin.log(status);
-				final ErrorDialog dialog= new RefactorErrorDialog(fParent,
-						change.getName(),
-						Messages.format(RefactoringMessages.ChangeExceptionHandler_dialog_message, fName),
-						status, IStatus.OK | IStatus.INFO | IStatus.WARNING | IStatus.ERROR);
-				int result= dialog.open();
-				if (result == IDialogConstants.OK_ID) {
-					performUndo(undo);
-				}
-				return;
+			undo= ((CompositeChange)change).getUndoUntilException();
+		} else if (change instanceof StreamingChange) {
+			undo= ((StreamingChange)change).getUndoUntilException();
+		}
+		if (undo != null) {
+			JavaPlugin.log(status);
+			final ErrorDialog dialog= new RefactorErrorDialog(fParent,
+					change.getName(),
+					Messages.format(RefactoringMessages.ChangeExceptionHandler_dialog_message, fName),
+					status, IStatus.OK | IStatus.INFO | IStatus.WARNING | IStatus.ERROR);
+			int result= dialog.open();
+			if (result == IDialogConstants.OK_ID) {
+				performUndo(undo);
 			}
+			return;
 		}
 		ErrorDialog dialog= new ErrorDialog(fParent,
 				change.getName(),
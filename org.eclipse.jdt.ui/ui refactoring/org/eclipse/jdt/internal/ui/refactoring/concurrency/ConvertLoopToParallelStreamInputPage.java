@@ -0,0 +1,81 @@
+package org.eclipse.jdt.internal.ui.refactoring.concurrency;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
+
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.ui.refactoring.UserInputWizardPage;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.ConvertLoopToParallelStreamRefactoring;
+
+public class ConvertLoopToParallelStreamInputPage extends UserInputWizardPage {
+
+	private Text fStreamField;
+	private Button fForEachOrderedButton;
+
+	public ConvertLoopToParallelStreamInputPage(String name) {
+		super(name);
+	}
+
+	public void createControl(Composite parent) {
+		Composite result= new Composite(parent, SWT.NONE);
+
+		setControl(result);
+
+		GridLayout layout= new GridLayout();
+		layout.numColumns= 2;
+		result.setLayout(layout);
+
+		Label label= new Label(result, SWT.NONE);
+		label.setText("&Parallel stream:"); //$NON-NLS-1$
+
+		fStreamField= new Text(result, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		fStreamField.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		fStreamField.setEditable(false);
+
+		ConvertLoopToParallelStreamRefactoring refactoring= getConvertLoopToParallelStreamRefactoring();
+		fStreamField.setText(refactoring.getStreamDescription());
+
+		fForEachOrderedButton= new Button(result, SWT.CHECK);
+		fForEachOrderedButton.setText("Keep the &order of the iterations (forEachOrdered, not used for sums, counts, minimums and maximums)"); //$NON-NLS-1$
+		GridData data= new GridData(GridData.FILL_HORIZONTAL);
+		data.horizontalSpan= 2;
+		data.verticalIndent= 2;
+		fForEachOrderedButton.setLayoutData(data);
+		fForEachOrderedButton.setSelection(refactoring.isForEachOrdered());
+		fForEachOrderedButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				handleInputChanged();
+			}
+		});
+
+		handleInputChanged();
+	}
+
+	private ConvertLoopToParallelStreamRefactoring getConvertLoopToParallelStreamRefactoring() {
+		return (ConvertLoopToParallelStreamRefactoring) getRefactoring();
+	}
+
+	void handleInputChanged() {
+		RefactoringStatus status= new RefactoringStatus();
+		ConvertLoopToParallelStreamRefactoring refactoring= getConvertLoopToParallelStreamRefactoring();
+		status.merge(refactoring.setForEachOrdered(fForEachOrderedButton.getSelection()));
+
+		setPageComplete(!status.hasError());
+		int severity= status.getSeverity();
+		String message= status.getMessageMatchingSeverity(severity);
+		if (severity >= RefactoringStatus.INFO) {
+			setMessage(message, severity);
+		} else {
+			setMessage("", NONE); //$NON-NLS-1$
+		}
+	}
+}
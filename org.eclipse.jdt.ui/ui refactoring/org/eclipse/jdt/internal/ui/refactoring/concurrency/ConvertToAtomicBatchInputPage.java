@@ -0,0 +1,83 @@
+package org.eclipse.jdt.internal.ui.refactoring.concurrency;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.ui.refactoring.UserInputWizardPage;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.ConvertToAtomicBatchRefactoring;
+
+public class ConvertToAtomicBatchInputPage extends UserInputWizardPage {
+
+	private Button fConvertIntButton;
+	private Button fConvertLongButton;
+	private Button fInitializeDeclarationButton;
+
+	public ConvertToAtomicBatchInputPage(String name) {
+		super(name);
+	}
+
+	public void createControl(Composite parent) {
+		Composite result= new Composite(parent, SWT.NONE);
+
+		setControl(result);
+
+		GridLayout layout= new GridLayout();
+		layout.numColumns= 1;
+		result.setLayout(layout);
+
+		Label label= new Label(result, SWT.WRAP);
+		label.setText("Converts all fields in the selection which are modified inside synchronized code:"); //$NON-NLS-1$
+		label.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+
+		fConvertIntButton= createCheckBox(result, "Convert &int fields to AtomicInteger"); //$NON-NLS-1$
+		fConvertLongButton= createCheckBox(result, "Convert &long fields to AtomicLong"); //$NON-NLS-1$
+		fInitializeDeclarationButton= createCheckBox(result, "&Initialize field declarations"); //$NON-NLS-1$
+
+		handleInputChanged();
+	}
+
+	private Button createCheckBox(Composite result, String text) {
+		Button button= new Button(result, SWT.CHECK);
+		button.setText(text);
+		button.setSelection(true);
+		GridData data= new GridData(GridData.FILL_HORIZONTAL);
+		data.verticalIndent= 2;
+		button.setLayoutData(data);
+		button.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				handleInputChanged();
+			}
+		});
+		return button;
+	}
+
+	private ConvertToAtomicBatchRefactoring getConvertToAtomicBatchRefactoring() {
+		return (ConvertToAtomicBatchRefactoring) getRefactoring();
+	}
+
+	void handleInputChanged() {
+		RefactoringStatus status= new RefactoringStatus();
+		ConvertToAtomicBatchRefactoring refactoring= getConvertToAtomicBatchRefactoring();
+		status.merge(refactoring.setConvertIntFields(fConvertIntButton.getSelection()));
+		status.merge(refactoring.setConvertLongFields(fConvertLongButton.getSelection()));
+		status.merge(refactoring.setInitializeDeclarations(fInitializeDeclarationButton.getSelection()));
+
+		setPageComplete(!status.hasError());
+		int severity= status.getSeverity();
+		String message= status.getMessageMatchingSeverity(severity);
+		if (severity >= RefactoringStatus.INFO) {
+			setMessage(message, severity);
+		} else {
+			setMessage("", NONE); //$NON-NLS-1$
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.eclipse.jdt.internal.ui.refactoring.concurrency;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
+
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.ui.refactoring.UserInputWizardPage;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.ConvertToConcurrentCollectionRefactoring;
+
+public class ConvertToConcurrentCollectionInputPage extends UserInputWizardPage {
+
+	private Text fNameField;
+	private Button[] fTargetButtons;
+	private int[] fTargets;
+
+	public ConvertToConcurrentCollectionInputPage(String name) {
+		super(name);
+	}
+
+	public void createControl(Composite parent) {
+		Composite result= new Composite(parent, SWT.NONE);
+
+		setControl(result);
+
+		GridLayout layout= new GridLayout();
+		layout.numColumns= 2;
+		result.setLayout(layout);
+
+		Label label= new Label(result, SWT.NONE);
+		label.setText("&Field name:"); //$NON-NLS-1$
+
+		fNameField= new Text(result, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		fNameField.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		fNameField.setEditable(false);
+
+		ConvertToConcurrentCollectionRefactoring refactoring= getConvertToConcurrentCollectionRefactoring();
+		fNameField.setText(refactoring.getFieldName());
+
+		// one radio button for each collection that can replace the current one
+		fTargets= ConvertToConcurrentCollectionRefactoring.getTargets(refactoring.getSourceType());
+		fTargetButtons= new Button[fTargets.length];
+		for (int i= 0; i < fTargets.length; i++) {
+			fTargetButtons[i]= createRadioButton(result, "Convert to " + ConvertToConcurrentCollectionRefactoring.getTargetDescription(fTargets[i])); //$NON-NLS-1$
+			fTargetButtons[i].setSelection(fTargets[i] == refactoring.getTarget());
+		}
+
+		handleInputChanged();
+	}
+
+	private Button createRadioButton(Composite result, String text) {
+		Button button= new Button(result, SWT.RADIO);
+		button.setText(text);
+		GridData data= new GridData(GridData.FILL_HORIZONTAL);
+		data.horizontalSpan= 2;
+		data.verticalIndent= 2;
+		button.setLayoutData(data);
+		button.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				handleInputChanged();
+			}
+		});
+		return button;
+	}
+
+	private ConvertToConcurrentCollectionRefactoring getConvertToConcurrentCollectionRefactoring() {
+		return (ConvertToConcurrentCollectionRefactoring) getRefactoring();
+	}
+
+	void handleInputChanged() {
+		RefactoringStatus status= new RefactoringStatus();
+		ConvertToConcurrentCollectionRefactoring refactoring= getConvertToConcurrentCollectionRefactoring();
+		for (int i= 0; i < fTargetButtons.length; i++) {
+			if (fTargetButtons[i].getSelection())
+				status.merge(refactoring.setTarget(fTargets[i]));
+		}
+
+		setPageComplete(!status.hasError());
+		int severity= status.getSeverity();
+		String message= status.getMessageMatchingSeverity(severity);
+		if (severity >= RefactoringStatus.INFO) {
+			setMessage(message, severity);
+		} else {
+			setMessage("", NONE); //$NON-NLS-1$
+		}
+	}
+}
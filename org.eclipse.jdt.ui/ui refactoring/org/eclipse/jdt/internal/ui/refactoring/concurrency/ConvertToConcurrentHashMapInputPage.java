@@ -34,6 +34,7 @@ public class ConvertToConcurrentHashMapInputPage extends UserInputWizardPage imp
 
 	Text fNameField;
 	private Button initializeDeclarationButton;
+	private Button fComputeOperationsButton;
 
 	//Combo fTypeCombo;
 
@@ -67,6 +68,19 @@ public class ConvertToConcurrentHashMapInputPage extends UserInputWizardPage imp
 			}
 		});
 
+		fComputeOperationsButton= new Button(result, SWT.CHECK);
+		fComputeOperationsButton.setText("Use atomic &compute operations (computeIfAbsent, compute, merge; requires Java 8)"); //$NON-NLS-1$
+		fComputeOperationsButton.setSelection(refactoring.isUseComputeOperations());
+		GridData data= new GridData(GridData.FILL_HORIZONTAL);
+		data.horizontalSpan= 2;
+		fComputeOperationsButton.setLayoutData(data);
+		fComputeOperationsButton.addSelectionListener(new SelectionAdapter() {
+
+			public void widgetSelected(SelectionEvent event) {
+				handleInputChanged();
+			}
+		});
+
 		handleInputChanged();
 	}
 
@@ -91,6 +105,7 @@ public class ConvertToConcurrentHashMapInputPage extends UserInputWizardPage imp
 		RefactoringStatus status= new RefactoringStatus();
 		ConvertToConcurrentHashMapRefactoring refactoring= getConvertToConcurrentHashMapRefactoring();
 		status.merge(refactoring.setFieldName(fNameField.getText()));
+		status.merge(refactoring.setUseComputeOperations(fComputeOperationsButton.getSelection()));
 
 		setPageComplete(!status.hasError());
 		int severity= status.getSeverity();
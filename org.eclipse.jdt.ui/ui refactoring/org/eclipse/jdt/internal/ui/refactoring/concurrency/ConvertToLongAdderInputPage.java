@@ -0,0 +1,89 @@
+package org.eclipse.jdt.internal.ui.refactoring.concurrency;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
+
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.ui.refactoring.UserInputWizardPage;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.ConvertToLongAdderRefactoring;
+
+public class ConvertToLongAdderInputPage extends UserInputWizardPage {
+
+	private Text fNameField;
+	private Button fLongAdderButton;
+	private Button fLongAccumulatorButton;
+
+	public ConvertToLongAdderInputPage(String name) {
+		super(name);
+	}
+
+	public void createControl(Composite parent) {
+		Composite result= new Composite(parent, SWT.NONE);
+
+		setControl(result);
+
+		GridLayout layout= new GridLayout();
+		layout.numColumns= 2;
+		result.setLayout(layout);
+
+		Label label= new Label(result, SWT.NONE);
+		label.setText("&Field name:"); //$NON-NLS-1$
+
+		fNameField= new Text(result, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		fNameField.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		fNameField.setEditable(false);
+
+		ConvertToLongAdderRefactoring refactoring= getConvertToLongAdderRefactoring();
+		fNameField.setText(refactoring.getFieldName());
+
+		fLongAdderButton= createRadioButton(result, "Convert to Long&Adder (sums, increments and decrements)"); //$NON-NLS-1$
+		fLongAccumulatorButton= createRadioButton(result, "Convert to LongA&ccumulator (also Math.max and Math.min updates)"); //$NON-NLS-1$
+		fLongAdderButton.setSelection(!refactoring.isUseAccumulator());
+		fLongAccumulatorButton.setSelection(refactoring.isUseAccumulator());
+
+		handleInputChanged();
+	}
+
+	private Button createRadioButton(Composite result, String text) {
+		Button button= new Button(result, SWT.RADIO);
+		button.setText(text);
+		GridData data= new GridData(GridData.FILL_HORIZONTAL);
+		data.horizontalSpan= 2;
+		data.verticalIndent= 2;
+		button.setLayoutData(data);
+		button.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				handleInputChanged();
+			}
+		});
+		return button;
+	}
+
+	private ConvertToLongAdderRefactoring getConvertToLongAdderRefactoring() {
+		return (ConvertToLongAdderRefactoring) getRefactoring();
+	}
+
+	void handleInputChanged() {
+		RefactoringStatus status= new RefactoringStatus();
+		ConvertToLongAdderRefactoring refactoring= getConvertToLongAdderRefactoring();
+		status.merge(refactoring.setUseAccumulator(fLongAccumulatorButton.getSelection()));
+
+		setPageComplete(!status.hasError());
+		int severity= status.getSeverity();
+		String message= status.getMessageMatchingSeverity(severity);
+		if (severity >= RefactoringStatus.INFO) {
+			setMessage(message, severity);
+		} else {
+			setMessage("", NONE); //$NON-NLS-1$
+		}
+	}
+}
@@ -0,0 +1,125 @@
+package org.eclipse.jdt.internal.ui.refactoring.concurrency;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
+
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.ui.refactoring.UserInputWizardPage;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.ConvertToReadWriteLockRefactoring;
+
+public class ConvertToReadWriteLockInputPage extends UserInputWizardPage {
+
+	private Text fLockNameField;
+	private Button fReadWriteLockButton;
+	private Button fStampedLockButton;
+
+	public ConvertToReadWriteLockInputPage(String name) {
+		super(name);
+	}
+
+	public void createControl(Composite parent) {
+		Composite result= new Composite(parent, SWT.NONE);
+
+		setControl(result);
+
+		GridLayout layout= new GridLayout();
+		layout.numColumns= 2;
+		result.setLayout(layout);
+
+		ConvertToReadWriteLockRefactoring refactoring= getConvertToReadWriteLockRefactoring();
+
+		Label label= new Label(result, SWT.NONE);
+		label.setText("&Lock field name:"); //$NON-NLS-1$
+
+		fLockNameField= new Text(result, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		fLockNameField.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		fLockNameField.setText(refactoring.getLockName());
+		fLockNameField.addModifyListener(new ModifyListener() {
+			public void modifyText(ModifyEvent event) {
+				handleInputChanged();
+			}
+		});
+
+		SelectionAdapter listener= new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				handleInputChanged();
+			}
+		};
+
+		fReadWriteLockButton= new Button(result, SWT.RADIO);
+		fReadWriteLockButton.setText("Use a &ReentrantReadWriteLock"); //$NON-NLS-1$
+		GridData data= new GridData(GridData.FILL_HORIZONTAL);
+		data.horizontalSpan= 2;
+		data.verticalIndent= 2;
+		fReadWriteLockButton.setLayoutData(data);
+		fReadWriteLockButton.setSelection(refactoring.getLockKind() == ConvertToReadWriteLockRefactoring.READ_WRITE_LOCK);
+		fReadWriteLockButton.addSelectionListener(listener);
+
+		fStampedLockButton= new Button(result, SWT.RADIO);
+		fStampedLockButton.setText("Use a &StampedLock with optimistic reads (Java 8)"); //$NON-NLS-1$
+		data= new GridData(GridData.FILL_HORIZONTAL);
+		data.horizontalSpan= 2;
+		fStampedLockButton.setLayoutData(data);
+		fStampedLockButton.setSelection(refactoring.getLockKind() == ConvertToReadWriteLockRefactoring.STAMPED_LOCK);
+		fStampedLockButton.addSelectionListener(listener);
+
+		addRegions(result, "Read-only:", refactoring.getRegionNames(true)); //$NON-NLS-1$
+		addRegions(result, "Mutating:", refactoring.getRegionNames(false)); //$NON-NLS-1$
+
+		fLockNameField.setFocus();
+		fLockNameField.selectAll();
+		handleInputChanged();
+	}
+
+	private void addRegions(Composite parent, String title, String[] names) {
+		Label label= new Label(parent, SWT.NONE);
+		label.setText(title);
+		GridData data= new GridData();
+		data.verticalIndent= 2;
+		label.setLayoutData(data);
+
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < names.length; i++) {
+			if (i > 0)
+				buffer.append(", "); //$NON-NLS-1$
+			buffer.append(names[i]);
+		}
+		label= new Label(parent, SWT.WRAP);
+		label.setText(buffer.toString());
+		data= new GridData(GridData.FILL_HORIZONTAL);
+		data.verticalIndent= 2;
+		label.setLayoutData(data);
+	}
+
+	private ConvertToReadWriteLockRefactoring getConvertToReadWriteLockRefactoring() {
+		return (ConvertToReadWriteLockRefactoring) getRefactoring();
+	}
+
+	void handleInputChanged() {
+		RefactoringStatus status= new RefactoringStatus();
+		ConvertToReadWriteLockRefactoring refactoring= getConvertToReadWriteLockRefactoring();
+		status.merge(refactoring.setLockName(fLockNameField.getText()));
+		status.merge(refactoring.setLockKind(fStampedLockButton.getSelection()
+				? ConvertToReadWriteLockRefactoring.STAMPED_LOCK : ConvertToReadWriteLockRefactoring.READ_WRITE_LOCK));
+
+		setPageComplete(!status.hasError());
+		int severity= status.getSeverity();
+		String message= status.getMessageMatchingSeverity(severity);
+		if (severity >= RefactoringStatus.INFO) {
+			setMessage(message, severity);
+		} else {
+			setMessage("", NONE); //$NON-NLS-1$
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package org.eclipse.jdt.internal.ui.refactoring.concurrency;
+
+
+import org.eclipse.ltk.ui.refactoring.RefactoringWizard;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.ConvertToReadWriteLockRefactoring;
+
+public class ConvertToReadWriteLockWizard extends RefactoringWizard {
+
+	public ConvertToReadWriteLockWizard(
+			ConvertToReadWriteLockRefactoring refactoring, String string) {
+		super(refactoring, DIALOG_BASED_USER_INTERFACE | PREVIEW_EXPAND_FIRST_NODE);
+		setDefaultPageTitle(string);
+	}
+
+	@Override
+	protected void addUserInputPages() {
+		addPage(new ConvertToReadWriteLockInputPage("ConvertToReadWriteLock")); //$NON-NLS-1$
+	}
+
+}
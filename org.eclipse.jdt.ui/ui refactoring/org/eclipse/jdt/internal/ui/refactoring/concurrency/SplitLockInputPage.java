@@ -0,0 +1,122 @@
+package org.eclipse.jdt.internal.ui.refactoring.concurrency;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.ModifyEvent;
+import org.eclipse.swt.events.ModifyListener;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.layout.GridData;
+import org.eclipse.swt.layout.GridLayout;
+import org.eclipse.swt.widgets.Button;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Label;
+import org.eclipse.swt.widgets.Text;
+
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.ui.refactoring.UserInputWizardPage;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.SplitLockRefactoring;
+
+public class SplitLockInputPage extends UserInputWizardPage {
+
+	private Text fDomainsField;
+	private Button fStripedLocksButton;
+	private Text fStripeCountField;
+
+	public SplitLockInputPage(String name) {
+		super(name);
+	}
+
+	public void createControl(Composite parent) {
+		Composite result= new Composite(parent, SWT.NONE);
+
+		setControl(result);
+
+		GridLayout layout= new GridLayout();
+		layout.numColumns= 2;
+		result.setLayout(layout);
+
+		Label label= new Label(result, SWT.NONE);
+		label.setText("&Lock domains:"); //$NON-NLS-1$
+		GridData data= new GridData(GridData.FILL_HORIZONTAL);
+		data.horizontalSpan= 2;
+		label.setLayoutData(data);
+
+		fDomainsField= new Text(result, SWT.MULTI | SWT.BORDER | SWT.READ_ONLY | SWT.V_SCROLL | SWT.H_SCROLL);
+		data= new GridData(GridData.FILL_BOTH);
+		data.horizontalSpan= 2;
+		data.heightHint= convertHeightInCharsToPixels(6);
+		fDomainsField.setLayoutData(data);
+
+		SplitLockRefactoring refactoring= getSplitLockRefactoring();
+
+		fStripedLocksButton= new Button(result, SWT.CHECK);
+		fStripedLocksButton.setText("Use &striped locks for arrays whose elements are accessed one at a time"); //$NON-NLS-1$
+		data= new GridData(GridData.FILL_HORIZONTAL);
+		data.horizontalSpan= 2;
+		data.verticalIndent= 2;
+		fStripedLocksButton.setLayoutData(data);
+		fStripedLocksButton.setSelection(refactoring.isUseStripedLocks());
+		fStripedLocksButton.setEnabled(refactoring.hasStripableDomains());
+		fStripedLocksButton.addSelectionListener(new SelectionAdapter() {
+			@Override
+			public void widgetSelected(SelectionEvent e) {
+				handleInputChanged();
+			}
+		});
+
+		label= new Label(result, SWT.NONE);
+		label.setText("&Number of striped locks:"); //$NON-NLS-1$
+
+		fStripeCountField= new Text(result, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+		fStripeCountField.setLayoutData(new GridData(GridData.FILL_HORIZONTAL));
+		fStripeCountField.setText(String.valueOf(refactoring.getStripeCount()));
+		fStripeCountField.addModifyListener(new ModifyListener() {
+			public void modifyText(ModifyEvent event) {
+				handleInputChanged();
+			}
+		});
+
+		handleInputChanged();
+	}
+
+	private SplitLockRefactoring getSplitLockRefactoring() {
+		return (SplitLockRefactoring) getRefactoring();
+	}
+
+	void handleInputChanged() {
+		RefactoringStatus status= new RefactoringStatus();
+		SplitLockRefactoring refactoring= getSplitLockRefactoring();
+		boolean striped= fStripedLocksButton.getSelection() && refactoring.hasStripableDomains();
+		status.merge(refactoring.setUseStripedLocks(striped));
+		fStripeCountField.setEnabled(striped);
+		if (striped) {
+			try {
+				status.merge(refactoring.setStripeCount(Integer.parseInt(fStripeCountField.getText().trim())));
+			} catch (NumberFormatException e) {
+				status.addFatalError("The number of striped locks must be a number."); //$NON-NLS-1$
+			}
+		}
+		updateDomains(refactoring);
+
+		setPageComplete(!status.hasError());
+		int severity= status.getSeverity();
+		String message= status.getMessageMatchingSeverity(severity);
+		if (severity >= RefactoringStatus.INFO) {
+			setMessage(message, severity);
+		} else {
+			setMessage("", NONE); //$NON-NLS-1$
+		}
+	}
+
+	private void updateDomains(SplitLockRefactoring refactoring) {
+		String[] descriptions= refactoring.getDomainDescriptions();
+		StringBuffer buffer= new StringBuffer();
+		for (int i= 0; i < descriptions.length; i++) {
+			if (i > 0)
+				buffer.append(fDomainsField.getLineDelimiter());
+			buffer.append(descriptions[i]);
+		}
+		fDomainsField.setText(buffer.toString());
+	}
+}
@@ -16,6 +16,7 @@ import java.lang.reflect.InvocationTargetException;
 import org.eclipse.swt.widgets.Display;
 
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 
 import org.eclipse.jface.operation.IRunnableContext;
 import org.eclipse.jface.operation.IRunnableWithProgress;
@@ -62,6 +63,7 @@ public class CallHierarchyContentProvider implements ITreeContentProvider {
 
     private DeferredTreeContentManager fManager;
     private CallHierarchyViewPart fPart;
+    private ExpandLevelsJob fExpandLevelsJob;
 
     private class MethodWrapperRunnable implements IRunnableWithProgress {
         private MethodWrapper fMethodWrapper;
@@ -99,6 +101,9 @@ public class CallHierarchyContentProvider implements ITreeContentProvider {
 		} else if (parentElement instanceof RealCallers) {
 			MethodWrapper parentWrapper= ((RealCallers)parentElement).getParent();
 			RealCallers element= ((RealCallers)parentElement);
+			if (element.hasCachedCalls()) {
+				return element.getCalls(new NullProgressMonitor());
+			}
 			if (fManager != null) {
 				Object[] children= fManager.getChildren(new DeferredMethodWrapper(this, element));
 				if (children != null)
@@ -144,6 +149,10 @@ public class CallHierarchyContentProvider implements ITreeContentProvider {
 
 					}
 				}
+				if (methodWrapper.hasCachedCalls()) {
+					// known from an earlier search, e.g. by an ExpandLevelsJob
+					return methodWrapper.getCalls(new NullProgressMonitor());
+				}
 				if (fManager != null) {
 					Object[] children= fManager.getChildren(new DeferredMethodWrapper(this, methodWrapper));
 					if (children != null)
@@ -443,6 +452,10 @@ public class CallHierarchyContentProvider implements ITreeContentProvider {
      * @param wrappers the parents to cancel jobs for
      */
     void cancelJobs(MethodWrapper[] wrappers) {
+        if (fExpandLevelsJob != null) {
+        	fExpandLevelsJob.cancel();
+        	fExpandLevelsJob= null;
+        }
         if (fManager != null && wrappers != null) {
         	for (int i= 0; i < wrappers.length; i++) {
 				MethodWrapper wrapper= wrappers[i];
@@ -454,6 +467,22 @@ public class CallHierarchyContentProvider implements ITreeContentProvider {
         }
     }
 
+    /**
+     * Expands the given elements by the given number of levels, searching the children of the
+     * elements of a level concurrently.
+     *
+     * @param wrappers the elements to expand
+     * @param levels the number of levels
+     * @since 3.9
+     */
+    void expandLevels(MethodWrapper[] wrappers, int levels) {
+    	if (fExpandLevelsJob != null)
+    		fExpandLevelsJob.cancel();
+    	fExpandLevelsJob= new ExpandLevelsJob(this, wrappers, levels);
+    	fExpandLevelsJob.setUser(false);
+    	fExpandLevelsJob.schedule();
+    }
+
     /**
      *
      */
@@ -116,6 +116,10 @@ public final class CallHierarchyMessages extends NLS {
 	public static String RefreshSingleElementAction_text;
 	public static String RefreshSingleElementAction_tooltip;
 	public static String RefreshSingleElementAction_description;
+	public static String ExpandLevelsAction_text;
+	public static String ExpandLevelsAction_tooltip;
+	public static String ExpandLevelsAction_description;
+	public static String ExpandLevelsJob_name;
 	public static String SearchScopeActionGroup_searchScope;
 	public static String SearchScopeActionGroup_project_text;
 	public static String SearchScopeActionGroup_project_tooltip;
@@ -230,6 +230,7 @@ public class CallHierarchyViewPart extends ViewPart implements ICallHierarchyVie
     private CallHierarchyFiltersActionGroup fFiltersActionGroup;
     private HistoryDropDownAction fHistoryDropDownAction;
     private RefreshElementAction fRefreshSingleElementAction;
+    private ExpandLevelsAction fExpandLevelsAction;
     private RefreshViewAction fRefreshViewAction;
     private OpenLocationAction fOpenLocationAction;
 	private LocationCopyAction fLocationCopyAction;
@@ -1022,6 +1023,9 @@ public class CallHierarchyViewPart extends ViewPart implements ICallHierarchyVie
         if (fExpandWithConstructorsAction.canActionBeAdded()) {
         	menu.appendToGroup(GROUP_FOCUS, fExpandWithConstructorsAction);
         }
+        if (fExpandLevelsAction.canActionBeAdded()) {
+        	menu.appendToGroup(GROUP_FOCUS, fExpandLevelsAction);
+        }
         
         if (fRemoveFromViewAction.canActionBeAdded()){
         	menu.appendToGroup(GROUP_FOCUS, fRemoveFromViewAction);
@@ -1057,6 +1061,7 @@ public class CallHierarchyViewPart extends ViewPart implements ICallHierarchyVie
     private void makeActions() {
         fRefreshViewAction = new RefreshViewAction(this);
         fRefreshSingleElementAction= new RefreshElementAction(fCallHierarchyViewer);
+        fExpandLevelsAction= new ExpandLevelsAction(fCallHierarchyViewer);
 
 		new CallHierarchyOpenEditorHelper(fLocationViewer);
 		new CallHierarchyOpenEditorHelper(fCallHierarchyViewer);
@@ -146,6 +146,18 @@ class CallHierarchyViewer extends TreeViewer {
         fContentProvider.cancelJobs(fPart.getCurrentMethodWrappers());
     }
 
+	/**
+	 * Expands the given elements by the given number of levels. The children of each level are
+	 * searched concurrently and shown as they are found.
+	 *
+	 * @param elements the elements to expand
+	 * @param levels the number of levels
+	 * @since 3.9
+	 */
+	void expandLevels(MethodWrapper[] elements, int levels) {
+		fContentProvider.expandLevels(elements, levels);
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * 
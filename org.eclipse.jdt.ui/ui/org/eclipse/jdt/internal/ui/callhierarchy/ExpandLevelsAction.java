@@ -0,0 +1,86 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.ui.callhierarchy;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.jface.action.Action;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+
+import org.eclipse.jdt.internal.corext.callhierarchy.MethodWrapper;
+import org.eclipse.jdt.internal.corext.util.Messages;
+
+/**
+ * The action to expand the selected elements of the call hierarchy by several levels at once.
+ *
+ * @since 3.9
+ */
+class ExpandLevelsAction extends Action {
+
+	/**
+	 * The number of levels to expand.
+	 */
+	private static final int LEVELS= 3;
+
+	/**
+	 * The call hierarchy viewer.
+	 */
+	private final CallHierarchyViewer fViewer;
+
+	/**
+	 * Creates the action to expand the selected elements.
+	 *
+	 * @param viewer the call hierarchy viewer
+	 */
+	public ExpandLevelsAction(CallHierarchyViewer viewer) {
+		fViewer= viewer;
+		setText(Messages.format(CallHierarchyMessages.ExpandLevelsAction_text, String.valueOf(LEVELS)));
+		setDescription(CallHierarchyMessages.ExpandLevelsAction_description);
+		setToolTipText(Messages.format(CallHierarchyMessages.ExpandLevelsAction_tooltip, String.valueOf(LEVELS)));
+	}
+
+	/*
+	 * @see Action#run
+	 */
+	@Override
+	public void run() {
+		MethodWrapper[] elements= getSelectedElements();
+		if (elements.length > 0)
+			fViewer.expandLevels(elements, LEVELS);
+	}
+
+	/**
+	 * Checks whether this action can be added for the selected elements in the call hierarchy.
+	 *
+	 * @return <code> true</code> if the action can be added, <code>false</code> otherwise
+	 */
+	public boolean canActionBeAdded() {
+		return getSelectedElements().length > 0;
+	}
+
+	private MethodWrapper[] getSelectedElements() {
+		ISelection selection= fViewer.getSelection();
+		if (!(selection instanceof IStructuredSelection))
+			return new MethodWrapper[0];
+		List<MethodWrapper> elements= new ArrayList<MethodWrapper>();
+		for (Iterator<?> iter= ((IStructuredSelection) selection).iterator(); iter.hasNext();) {
+			Object element= iter.next();
+			if (!(element instanceof MethodWrapper))
+				return new MethodWrapper[0];
+			if (((MethodWrapper) element).canHaveChildren())
+				elements.add((MethodWrapper) element);
+		}
+		return elements.toArray(new MethodWrapper[elements.size()]);
+	}
+}
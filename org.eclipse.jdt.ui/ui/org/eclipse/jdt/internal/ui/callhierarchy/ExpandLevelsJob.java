@@ -0,0 +1,232 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.ui.callhierarchy;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.swt.widgets.Display;
+
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
+
+import org.eclipse.jdt.internal.corext.callhierarchy.CallerMethodWrapper;
+import org.eclipse.jdt.internal.corext.callhierarchy.MethodWrapper;
+import org.eclipse.jdt.internal.corext.callhierarchy.RealCallers;
+
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+
+/**
+ * Expands the call hierarchy below the given elements by a number of levels.
+ * <p>
+ * The tree is expanded level by level. The children of all elements of a level are searched
+ * concurrently on a bounded number of threads, and every element is expanded in the viewer as
+ * soon as its search is done. Elements of the same member are searched only once, the other
+ * elements get their children from the method cache of the {@link MethodWrapper}s.
+ * </p>
+ *
+ * @since 3.9
+ */
+class ExpandLevelsJob extends Job {
+
+	/** The maximum number of concurrent searches */
+	private static final int MAX_THREADS= 4;
+
+	/**
+	 * Forwards cancellation to the job's monitor. Progress monitors are not thread safe, so the
+	 * searches do not report progress.
+	 */
+	private static class CancelMonitor extends NullProgressMonitor {
+
+		private final IProgressMonitor fMonitor;
+
+		CancelMonitor(IProgressMonitor monitor) {
+			fMonitor= monitor;
+		}
+
+		/*
+		 * @see org.eclipse.core.runtime.NullProgressMonitor#isCanceled()
+		 */
+		@Override
+		public boolean isCanceled() {
+			return super.isCanceled() || fMonitor.isCanceled();
+		}
+	}
+
+	private final CallHierarchyContentProvider fProvider;
+	private final MethodWrapper[] fElements;
+	private final int fLevels;
+
+	/**
+	 * Creates the job.
+	 *
+	 * @param provider the content provider of the viewer
+	 * @param elements the elements to expand
+	 * @param levels the number of levels to expand
+	 */
+	public ExpandLevelsJob(CallHierarchyContentProvider provider, MethodWrapper[] elements, int levels) {
+		super(CallHierarchyMessages.ExpandLevelsJob_name);
+		fProvider= provider;
+		fElements= elements;
+		fLevels= levels;
+	}
+
+	/*
+	 * @see org.eclipse.core.runtime.jobs.Job#run(org.eclipse.core.runtime.IProgressMonitor)
+	 */
+	@Override
+	protected IStatus run(IProgressMonitor monitor) {
+		int threads= Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors());
+		ExecutorService executor= Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int fCount;
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread= new Thread(runnable, "Call Hierarchy Search " + ++fCount); //$NON-NLS-1$
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		monitor.beginTask("", fLevels); //$NON-NLS-1$
+		fProvider.startFetching();
+		try {
+			List<MethodWrapper> frontier= new ArrayList<MethodWrapper>();
+			for (int i= 0; i < fElements.length; i++)
+				frontier.add(fElements[i]);
+			for (int level= 0; level < fLevels && !frontier.isEmpty(); level++) {
+				frontier= expand(frontier, executor, monitor);
+				monitor.worked(1);
+			}
+		} catch (OperationCanceledException e) {
+			return Status.CANCEL_STATUS;
+		} catch (InterruptedException e) {
+			return Status.CANCEL_STATUS;
+		} finally {
+			executor.shutdownNow();
+			fProvider.doneFetching();
+			monitor.done();
+		}
+		return Status.OK_STATUS;
+	}
+
+	/**
+	 * Finds the children of the given elements and expands the elements in the viewer.
+	 *
+	 * @param elements the elements of a level
+	 * @param executor the executor for the searches
+	 * @param monitor the progress monitor
+	 * @return the elements of the next level
+	 * @throws InterruptedException if the job's thread has been interrupted
+	 */
+	private List<MethodWrapper> expand(List<MethodWrapper> elements, ExecutorService executor, IProgressMonitor monitor) throws InterruptedException {
+		final IProgressMonitor searchMonitor= new CancelMonitor(monitor);
+		List<MethodWrapper> nextLevel= new ArrayList<MethodWrapper>();
+
+		// elements of the same member share one search
+		Map<String, List<MethodWrapper>> elementsByKey= new LinkedHashMap<String, List<MethodWrapper>>();
+		for (Iterator<MethodWrapper> iter= elements.iterator(); iter.hasNext();) {
+			MethodWrapper element= iter.next();
+			if (!fProvider.hasChildren(element))
+				continue;
+			if (element instanceof CallerMethodWrapper && !(element instanceof RealCallers)) {
+				CallHierarchyContentProvider.ensureDefaultExpandWithConstructors((CallerMethodWrapper) element);
+				if (CallHierarchyContentProvider.isExpandWithConstructors(element)) {
+					// the constructors and real callers are created without searching
+					addChildren(fProvider.getChildren(element), nextLevel);
+					expandInViewer(element);
+					continue;
+				}
+			}
+			String key= element.getMethodCall().getKey();
+			List<MethodWrapper> sameMember= elementsByKey.get(key);
+			if (sameMember == null) {
+				sameMember= new ArrayList<MethodWrapper>();
+				elementsByKey.put(key, sameMember);
+			}
+			sameMember.add(element);
+		}
+
+		CompletionService<List<MethodWrapper>> completionService= new ExecutorCompletionService<List<MethodWrapper>>(executor);
+		for (Iterator<List<MethodWrapper>> iter= elementsByKey.values().iterator(); iter.hasNext();) {
+			final List<MethodWrapper> sameMember= iter.next();
+			completionService.submit(new Callable<List<MethodWrapper>>() {
+				public List<MethodWrapper> call() {
+					sameMember.get(0).getCalls(searchMonitor);
+					return sameMember;
+				}
+			});
+		}
+
+		for (int i= 0, n= elementsByKey.size(); i < n; i++) {
+			List<MethodWrapper> sameMember;
+			try {
+				sameMember= completionService.take().get();
+			} catch (ExecutionException e) {
+				if (e.getCause() instanceof OperationCanceledException)
+					throw (OperationCanceledException) e.getCause();
+				JavaPlugin.log(e.getCause());
+				continue;
+			}
+			if (monitor.isCanceled())
+				throw new OperationCanceledException();
+			for (Iterator<MethodWrapper> iter= sameMember.iterator(); iter.hasNext();) {
+				MethodWrapper element= iter.next();
+				// answered from the method cache
+				addChildren(element.getCalls(searchMonitor), nextLevel);
+				expandInViewer(element);
+			}
+		}
+		return nextLevel;
+	}
+
+	private static void addChildren(Object[] children, List<MethodWrapper> nextLevel) {
+		if (children == null)
+			return;
+		for (int i= 0; i < children.length; i++) {
+			if (children[i] instanceof MethodWrapper)
+				nextLevel.add((MethodWrapper) children[i]);
+		}
+	}
+
+	/**
+	 * Expands the given element in the viewer. The children of the element are known, so the
+	 * content provider returns them without a deferred fetch. The parent has been expanded by an
+	 * earlier runnable, since the runnables are run in the order they are posted.
+	 *
+	 * @param element the element to expand
+	 */
+	private void expandInViewer(final MethodWrapper element) {
+		Display.getDefault().asyncExec(new Runnable() {
+			public void run() {
+				CallHierarchyViewPart viewPart= fProvider.getViewPart();
+				if (viewPart == null)
+					return;
+				CallHierarchyViewer viewer= viewPart.getViewer();
+				if (viewer.getControl().isDisposed())
+					return;
+				viewer.setExpandedState(element, true);
+			}
+		});
+	}
+}
@@ -62,8 +62,16 @@ public class ImportsCleanUp extends AbstractCleanUp {
     	if (compilationUnit == null)
     		return null;
 
-		return ImportsFix.createCleanUp(compilationUnit, fCodeGeneratorSettings,
-				isEnabled(CleanUpConstants.ORGANIZE_IMPORTS), fStatus);
+		if (fStatus == null)
+			return ImportsFix.createCleanUp(compilationUnit, fCodeGeneratorSettings, isEnabled(CleanUpConstants.ORGANIZE_IMPORTS), fStatus);
+
+		// fixes can be created concurrently for different compilation units
+		RefactoringStatus status= new RefactoringStatus();
+		ICleanUpFix fix= ImportsFix.createCleanUp(compilationUnit, fCodeGeneratorSettings, isEnabled(CleanUpConstants.ORGANIZE_IMPORTS), status);
+		synchronized (fStatus) {
+			fStatus.merge(status);
+		}
+		return fix;
 	}
 
     /**
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.ui.javaeditor;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 
 import org.eclipse.core.runtime.IProgressMonitor;
@@ -20,6 +22,15 @@ import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.SafeRunner;
 import org.eclipse.core.runtime.Status;
 
+import org.eclipse.core.resources.IResource;
+
+import org.eclipse.core.filebuffers.FileBuffers;
+import org.eclipse.core.filebuffers.ITextFileBuffer;
+import org.eclipse.core.filebuffers.LocationKind;
+
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension4;
+
 import org.eclipse.ui.IPartListener2;
 import org.eclipse.ui.IWindowListener;
 import org.eclipse.ui.IWorkbenchPart;
@@ -27,6 +38,7 @@ import org.eclipse.ui.IWorkbenchPartReference;
 import org.eclipse.ui.IWorkbenchWindow;
 import org.eclipse.ui.PlatformUI;
 
+import org.eclipse.jdt.core.IClassFile;
 import org.eclipse.jdt.core.ICompilationUnit;
 import org.eclipse.jdt.core.ITypeRoot;
 import org.eclipse.jdt.core.JavaModelException;
@@ -48,6 +60,11 @@ import org.eclipse.jdt.internal.ui.JavaPlugin;
 /**
  * Provides a shared AST for clients. The shared AST is
  * the AST of the active Java editor's input element.
+ * <p>
+ * The ASTs of recently active Java editors are kept in a small LRU cache, so that switching
+ * between editors does not recreate them. A recent AST is reused as long as the document it has
+ * been reconciled from has not been modified and the element has not been reconciled again.
+ * </p>
  *
  * @since 3.0
  */
@@ -110,6 +127,10 @@ public final class ASTProvider {
 
 				activeJavaEditorChanged(null);
 			}
+
+			IWorkbenchPart part= ref.getPart(false);
+			if (part instanceof JavaEditor)
+				removeRecentAST(((JavaEditor)part).getInputJavaElement());
 		}
 
 		/*
@@ -208,10 +229,67 @@ public final class ASTProvider {
 
 	private static final String DEBUG_PREFIX= "ASTProvider > "; //$NON-NLS-1$
 
+	/**
+	 * The maximum number of ASTs of recently active editors that are kept.
+	 * @since 3.9
+	 */
+	private static final int MAX_RECENT_ASTS= 4;
+
+	/**
+	 * The estimated memory used by an AST with bindings per character of source, in bytes.
+	 * @since 3.9
+	 */
+	private static final int BYTES_PER_SOURCE_CHAR= 100;
+
+	/**
+	 * The memory budget for the ASTs of recently active editors, in bytes. Can be set with the
+	 * <code>org.eclipse.jdt.ui.recentASTsBudget</code> system property, in megabytes.
+	 * @since 3.9
+	 */
+	private static final long RECENT_ASTS_BUDGET= Long.getLong("org.eclipse.jdt.ui.recentASTsBudget", Math.min(32, Runtime.getRuntime().maxMemory() / 16 / 1024 / 1024)).longValue() * 1024 * 1024; //$NON-NLS-1$
+
+	/**
+	 * The AST of a recently active editor.
+	 *
+	 * @since 3.9
+	 */
+	private static class RecentAST {
+
+		final CompilationUnit fAST;
+		final long fStamp;
+		final long fWeight;
+
+		RecentAST(CompilationUnit ast, long stamp) {
+			fAST= ast;
+			fStamp= stamp;
+			fWeight= (long)Math.max(1, ast.getLength()) * BYTES_PER_SOURCE_CHAR;
+		}
+	}
+
 
 	private ITypeRoot fReconcilingJavaElement;
+	/**
+	 * The document modification stamp of {@link #fReconcilingJavaElement} when reconciling
+	 * started.
+	 * @since 3.9
+	 */
+	private long fReconcilingStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
 	private ITypeRoot fActiveJavaElement;
 	private CompilationUnit fAST;
+	/**
+	 * The document modification stamp of {@link #fAST}.
+	 * @since 3.9
+	 */
+	private long fASTStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	/**
+	 * The ASTs of recently active editors, in least recently used order.
+	 * @since 3.9
+	 */
+	private final LinkedHashMap<ITypeRoot, RecentAST> fRecentASTs= new LinkedHashMap<ITypeRoot, RecentAST>(MAX_RECENT_ASTS, 0.75f, true);
+	private long fRecentASTsWeight;
+	private int fCacheHits;
+	private int fCacheMisses;
+	private int fCacheEvictions;
 	private ActivationListener fActivationListener;
 	private Object fReconcileLock= new Object();
 	private Object fWaitLock= new Object();
@@ -257,9 +335,15 @@ public final class ASTProvider {
 			javaElement= ((JavaEditor)editor).getInputJavaElement();
 
 		synchronized (this) {
+			if (fActiveJavaElement != null && !fActiveJavaElement.equals(javaElement))
+				addRecentAST(fActiveJavaElement, fAST, fASTStamp);
 			fActiveEditor= editor;
 			fActiveJavaElement= javaElement;
-			cache(null, javaElement);
+			RecentAST recent= javaElement != null ? takeRecentAST(javaElement) : null;
+			if (recent != null)
+				cache(recent.fAST, javaElement, recent.fStamp);
+			else
+				cache(null, javaElement, IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP);
 		}
 
 		if (DEBUG)
@@ -315,9 +399,12 @@ public final class ASTProvider {
 
 		synchronized (fReconcileLock) {
 			fReconcilingJavaElement= javaElement;
+			// the AST is created from the document as it is now or later
+			fReconcilingStamp= getModificationStamp(javaElement);
 			fIsReconciling= true;
 		}
-		cache(null, javaElement);
+		removeRecentAST(javaElement);
+		cache(null, javaElement, IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP);
 	}
 
 	/**
@@ -332,8 +419,9 @@ public final class ASTProvider {
 			System.out.println(getThreadName() + " - " + DEBUG_PREFIX + "disposing AST: " + toString(fAST) + " for: " + toString(fActiveJavaElement)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 
 		fAST= null;
+		fASTStamp= IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
 
-		cache(null, null);
+		cache(null, null, IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP);
 	}
 
 	/**
@@ -372,8 +460,9 @@ public final class ASTProvider {
 	 *
 	 * @param ast the ast
 	 * @param javaElement the java element
+	 * @param stamp the document modification stamp captured before the AST was created
 	 */
-	private synchronized void cache(CompilationUnit ast, ITypeRoot javaElement) {
+	private synchronized void cache(CompilationUnit ast, ITypeRoot javaElement, long stamp) {
 
 		if (fActiveJavaElement != null && !fActiveJavaElement.equals(javaElement)) {
 			if (DEBUG && javaElement != null) // don't report call from disposeAST()
@@ -388,6 +477,7 @@ public final class ASTProvider {
 			disposeAST();
 
 		fAST= ast;
+		fASTStamp= ast != null ? stamp : IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
 
 		// Signal AST change
 		synchronized (fWaitLock) {
@@ -422,6 +512,7 @@ public final class ASTProvider {
 					if (DEBUG)
 						System.out.println(getThreadName() + " - " + DEBUG_PREFIX + "returning cached AST:" + toString(fAST) + " for: " + input.getElementName()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 
+					fCacheHits++;
 					return fAST;
 				}
 				if (waitFlag == SharedASTProvider.WAIT_NO) {
@@ -431,6 +522,15 @@ public final class ASTProvider {
 					return null;
 
 				}
+			} else {
+				RecentAST recent= getRecentAST(input);
+				if (recent != null) {
+					if (DEBUG)
+						System.out.println(getThreadName() + " - " + DEBUG_PREFIX + "returning recent AST:" + toString(recent.fAST) + " for: " + input.getElementName()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
+
+					fCacheHits++;
+					return recent.fAST;
+				}
 			}
 		}
 
@@ -475,7 +575,11 @@ public final class ASTProvider {
 			return null;
 
 
+		synchronized (this) {
+			fCacheMisses++;
+		}
 		CompilationUnit ast= null;
+		long stamp= getModificationStamp(input);
 		try {
 			ast= createAST(input, progressMonitor);
 			if (progressMonitor != null && progressMonitor.isCanceled()) {
@@ -485,14 +589,20 @@ public final class ASTProvider {
 			}
 		} finally {
 			if (isActiveElement) {
-				if (fAST != null) {
+				CompilationUnit reconciledAST;
+				long reconciledStamp;
+				synchronized (this) {
+					reconciledAST= fAST;
+					reconciledStamp= fASTStamp;
+				}
+				if (reconciledAST != null) {
 					// in the meantime, reconcile created a new AST. Return that one
 					if (DEBUG)
 						System.out.println(getThreadName() + " - " + DEBUG_PREFIX + "Ignore created AST for " + input.getElementName() + " - AST from reconciler is newer"); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
-					reconciled(fAST, input, null);
-					return fAST;
+					reconciled(reconciledAST, input, reconciledStamp);
+					return reconciledAST;
 				} else
-					reconciled(ast, input, null);
+					reconciled(ast, input, stamp);
 			}
 		}
 		return ast;
@@ -587,6 +697,10 @@ public final class ASTProvider {
 		fActivationListener= null;
 
 		disposeAST();
+		synchronized (this) {
+			fRecentASTs.clear();
+			fRecentASTsWeight= 0;
+		}
 
 		synchronized (fWaitLock) {
 			fWaitLock.notifyAll();
@@ -604,6 +718,20 @@ public final class ASTProvider {
 	 *      boolean, IProgressMonitor)
 	 */
 	void reconciled(CompilationUnit ast, ITypeRoot javaElement, IProgressMonitor progressMonitor) {
+		synchronized (fReconcileLock) {
+			reconciled(ast, javaElement, fReconcilingStamp);
+		}
+	}
+
+	/**
+	 * Update internal structures after an AST has been created.
+	 *
+	 * @param ast the compilation unit AST or <code>null</code>
+	 * @param javaElement the Java element for which the AST was built
+	 * @param stamp the document modification stamp captured before the AST was created
+	 * @since 3.9
+	 */
+	private void reconciled(CompilationUnit ast, ITypeRoot javaElement, long stamp) {
 		if (DEBUG)
 			System.out.println(getThreadName() + " - " + DEBUG_PREFIX + "reconciled: " + toString(javaElement) + ", AST: " + toString(ast)); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$
 
@@ -621,8 +749,165 @@ public final class ASTProvider {
 
 				return;
 			}
-			cache(ast, javaElement);
+			cache(ast, javaElement, stamp);
+		}
+	}
+
+	/**
+	 * Keeps the AST of an editor that is no longer active.
+	 *
+	 * @param javaElement the input element of the editor
+	 * @param ast the AST or <code>null</code>
+	 * @param stamp the document modification stamp of the AST
+	 * @since 3.9
+	 */
+	private synchronized void addRecentAST(ITypeRoot javaElement, CompilationUnit ast, long stamp) {
+		if (ast == null || stamp == IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP)
+			return;
+
+		RecentAST recent= new RecentAST(ast, stamp);
+		if (recent.fWeight > RECENT_ASTS_BUDGET)
+			return;
+
+		RecentAST old= fRecentASTs.put(javaElement, recent);
+		if (old != null)
+			fRecentASTsWeight-= old.fWeight;
+		fRecentASTsWeight+= recent.fWeight;
+
+		for (Iterator<RecentAST> iter= fRecentASTs.values().iterator(); iter.hasNext() && (fRecentASTs.size() > MAX_RECENT_ASTS || fRecentASTsWeight > RECENT_ASTS_BUDGET);) {
+			RecentAST curr= iter.next();
+			iter.remove();
+			fRecentASTsWeight-= curr.fWeight;
+			fCacheEvictions++;
 		}
+
+		if (DEBUG)
+			System.out.println(getThreadName() + " - " + DEBUG_PREFIX + "keeping recent AST: " + toString(ast) + " for: " + toString(javaElement) + ", " + getCacheStatistics()); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$
+	}
+
+	/**
+	 * Returns the recent AST of the given element if it is still up-to-date. Out-dated ASTs are
+	 * removed.
+	 *
+	 * @param javaElement the Java element
+	 * @return the recent AST or <code>null</code> if none is available
+	 * @since 3.9
+	 */
+	private synchronized RecentAST getRecentAST(ITypeRoot javaElement) {
+		RecentAST recent= fRecentASTs.get(javaElement);
+		if (recent == null)
+			return null;
+
+		if (!javaElement.exists() || recent.fStamp != getModificationStamp(javaElement)) {
+			if (DEBUG)
+				System.out.println(getThreadName() + " - " + DEBUG_PREFIX + "dropping out-dated recent AST for: " + toString(javaElement)); //$NON-NLS-1$ //$NON-NLS-2$
+			removeRecentAST(javaElement);
+			return null;
+		}
+		return recent;
+	}
+
+	/**
+	 * Removes the recent AST of the given element and returns it if it is still up-to-date.
+	 *
+	 * @param javaElement the Java element
+	 * @return the recent AST or <code>null</code> if none is available
+	 * @since 3.9
+	 */
+	private synchronized RecentAST takeRecentAST(ITypeRoot javaElement) {
+		RecentAST recent= getRecentAST(javaElement);
+		if (recent == null)
+			return null;
+
+		removeRecentAST(javaElement);
+		fCacheHits++;
+		return recent;
+	}
+
+	/**
+	 * Removes the recent AST of the given element.
+	 *
+	 * @param javaElement the Java element or <code>null</code>
+	 * @since 3.9
+	 */
+	private synchronized void removeRecentAST(ITypeRoot javaElement) {
+		if (javaElement == null)
+			return;
+
+		RecentAST recent= fRecentASTs.remove(javaElement);
+		if (recent != null)
+			fRecentASTsWeight-= recent.fWeight;
+	}
+
+	/**
+	 * Returns the modification stamp of the document from which an AST for the given element is
+	 * created.
+	 *
+	 * @param javaElement the Java element
+	 * @return the modification stamp or {@link IDocumentExtension4#UNKNOWN_MODIFICATION_STAMP} if
+	 *         the document is not known
+	 * @since 3.9
+	 */
+	private static long getModificationStamp(ITypeRoot javaElement) {
+		if (javaElement instanceof IClassFile)
+			return 0; // class files don't change while they are open
+
+		IResource resource= javaElement.getResource();
+		if (resource == null)
+			return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+
+		ITextFileBuffer buffer= FileBuffers.getTextFileBufferManager().getTextFileBuffer(resource.getFullPath(), LocationKind.IFILE);
+		if (buffer == null)
+			return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+
+		IDocument document= buffer.getDocument();
+		if (document instanceof IDocumentExtension4)
+			return ((IDocumentExtension4)document).getModificationStamp();
+		return IDocumentExtension4.UNKNOWN_MODIFICATION_STAMP;
+	}
+
+	/**
+	 * Returns the number of times an AST has been answered from the cache.
+	 *
+	 * @return the number of cache hits
+	 * @since 3.9
+	 */
+	public synchronized int getCacheHits() {
+		return fCacheHits;
+	}
+
+	/**
+	 * Returns the number of times an AST had to be created.
+	 *
+	 * @return the number of cache misses
+	 * @since 3.9
+	 */
+	public synchronized int getCacheMisses() {
+		return fCacheMisses;
+	}
+
+	/**
+	 * Returns the number of recent ASTs that have been removed to stay within the memory budget.
+	 *
+	 * @return the number of evictions
+	 * @since 3.9
+	 */
+	public synchronized int getCacheEvictions() {
+		return fCacheEvictions;
+	}
+
+	/**
+	 * Returns the estimated memory used by the ASTs of recently active editors.
+	 *
+	 * @return the estimated size in bytes
+	 * @since 3.9
+	 */
+	public synchronized long getRecentASTsWeight() {
+		return fRecentASTsWeight;
+	}
+
+	private String getCacheStatistics() {
+		return "hits: " + fCacheHits + ", misses: " + fCacheMisses + ", evictions: " + fCacheEvictions + ", recent ASTs: " + fRecentASTs.size() + ", weight: " + fRecentASTsWeight + "/" + RECENT_ASTS_BUDGET; //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$
 	}
 
 	private static String getThreadName() {
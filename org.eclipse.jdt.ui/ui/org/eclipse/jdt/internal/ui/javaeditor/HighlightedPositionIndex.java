@@ -0,0 +1,231 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+
+package org.eclipse.jdt.internal.ui.javaeditor;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.jface.text.Position;
+
+import org.eclipse.jdt.internal.ui.javaeditor.SemanticHighlightingManager.HighlightedPosition;
+import org.eclipse.jdt.internal.ui.javaeditor.SemanticHighlightingManager.Highlighting;
+
+
+/**
+ * Offset-sorted index of the highlighted positions of a {@link SemanticHighlightingPresenter},
+ * used by the {@link SemanticHighlightingReconciler} to find the positions that are still valid
+ * after a reconcile.
+ * <p>
+ * The offsets and lengths of the positions are copied into primitive arrays when the index is
+ * reset, and positions are looked up by binary search. The tokens of an AST are reported in
+ * increasing offset order, so a lookup first gallops forward from the result of the previous one,
+ * which makes a reconcile linear in the number of tokens and positions. Every candidate is
+ * confirmed against the live position, which may have been updated by the UI thread.
+ * </p>
+ * <p>
+ * NOTE: Only used from the background thread of the reconciler.
+ * </p>
+ *
+ * @since 3.9
+ */
+class HighlightedPositionIndex {
+
+	/** Orders positions by offset */
+	private static final Comparator<Position> OFFSET_ORDER= new Comparator<Position>() {
+		public int compare(Position p1, Position p2) {
+			int o1= p1.getOffset();
+			int o2= p2.getOffset();
+			return o1 < o2 ? -1 : (o1 == o2 ? 0 : 1);
+		}
+	};
+
+	/** The positions, ordered by offset */
+	private HighlightedPosition[] fPositions= new HighlightedPosition[0];
+	/** The offsets of the positions when the index was reset */
+	private int[] fOffsets= new int[0];
+	/** The lengths of the positions when the index was reset */
+	private int[] fLengths= new int[0];
+	/** <code>true</code> for the positions that have been retained */
+	private boolean[] fRetained= new boolean[0];
+	/** The number of positions */
+	private int fSize;
+	/** The number of retained positions */
+	private int fRetainedCount;
+	/** The result of the last lookup */
+	private int fCursor;
+
+	/**
+	 * Replaces the indexed positions. None of the new positions is retained.
+	 *
+	 * @param positions the highlighted positions, usually ordered by offset
+	 */
+	public void reset(List<Position> positions) {
+		int size= positions.size();
+		if (fPositions.length < size) {
+			int capacity= Math.max(size, fPositions.length * 3 / 2);
+			fPositions= new HighlightedPosition[capacity];
+			fOffsets= new int[capacity];
+			fLengths= new int[capacity];
+			fRetained= new boolean[capacity];
+		} else if (size < fSize) {
+			Arrays.fill(fPositions, size, fSize, null);
+		}
+		positions.toArray(fPositions);
+		if (fPositions.length > size)
+			fPositions[size]= null;
+
+		boolean isSorted= true;
+		for (int i= 0; i < size; i++) {
+			Position position= fPositions[i];
+			fOffsets[i]= position.getOffset();
+			fLengths[i]= position.getLength();
+			if (i > 0 && fOffsets[i - 1] > fOffsets[i])
+				isSorted= false;
+		}
+		if (!isSorted) {
+			Arrays.sort(fPositions, 0, size, OFFSET_ORDER);
+			for (int i= 0; i < size; i++) {
+				fOffsets[i]= fPositions[i].getOffset();
+				fLengths[i]= fPositions[i].getLength();
+			}
+		}
+
+		Arrays.fill(fRetained, 0, size, false);
+		fSize= size;
+		fRetainedCount= 0;
+		fCursor= 0;
+	}
+
+	/**
+	 * Retains the position with the given range and highlighting, if there is one.
+	 *
+	 * @param offset the offset
+	 * @param length the length
+	 * @param highlighting the highlighting
+	 * @return <code>true</code> if a position has been retained, <code>false</code> if a new
+	 *         position is needed
+	 */
+	public boolean retain(int offset, int length, Highlighting highlighting) {
+		for (int i= lowerBound(offset); i < fSize && fOffsets[i] == offset; i++) {
+			if (!fRetained[i] && fLengths[i] == length && fPositions[i].isEqual(offset, length, highlighting)) {
+				fRetained[i]= true;
+				fRetainedCount++;
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Retains all positions that are completely contained in the given range.
+	 *
+	 * @param offset the range offset
+	 * @param length the range length
+	 */
+	public void retainRange(int offset, int length) {
+		int end= offset + length;
+		for (int i= lowerBound(offset); i < fSize && fOffsets[i] < end; i++) {
+			if (!fRetained[i] && fOffsets[i] + fLengths[i] <= end && fPositions[i].isContained(offset, length)) {
+				fRetained[i]= true;
+				fRetainedCount++;
+			}
+		}
+	}
+
+	/**
+	 * Retains all positions that do not overlap the given range, unless they have been deleted.
+	 *
+	 * @param offset the range offset
+	 * @param length the range length
+	 */
+	public void retainOutside(int offset, int length) {
+		int end= offset + length;
+		int first= lowerBound(offset);
+		for (int i= 0; i < first; i++) {
+			if (!fRetained[i] && fOffsets[i] + fLengths[i] <= offset && !fPositions[i].isDeleted()) {
+				fRetained[i]= true;
+				fRetainedCount++;
+			}
+		}
+		for (int i= lowerBound(end); i < fSize; i++) {
+			if (!fRetained[i] && !fPositions[i].isDeleted()) {
+				fRetained[i]= true;
+				fRetainedCount++;
+			}
+		}
+		fCursor= first;
+	}
+
+	/**
+	 * Adds the positions that have not been retained to the given list, ordered by offset.
+	 *
+	 * @param removedPositions the list to add the positions to
+	 */
+	public void addRemovedPositions(List<Position> removedPositions) {
+		if (fRetainedCount == fSize)
+			return;
+		for (int i= 0; i < fSize; i++) {
+			if (!fRetained[i])
+				removedPositions.add(fPositions[i]);
+		}
+	}
+
+	/**
+	 * Releases the indexed positions.
+	 */
+	public void clear() {
+		Arrays.fill(fPositions, 0, fSize, null);
+		fSize= 0;
+		fRetainedCount= 0;
+		fCursor= 0;
+	}
+
+	/**
+	 * Returns the index of the first position with an offset equal or greater than the given
+	 * offset. If the offset is not smaller than the one of the previous lookup, the search
+	 * gallops forward from the previous result, otherwise it is a binary search.
+	 *
+	 * @param offset the offset
+	 * @return the index of the first position with an offset equal or greater than the given
+	 *         offset, or the number of positions if there is none
+	 */
+	private int lowerBound(int offset) {
+		int low;
+		int high;
+		if (fCursor > 0 && fOffsets[fCursor - 1] >= offset) {
+			low= -1;
+			high= fCursor - 1;
+		} else {
+			low= fCursor - 1;
+			high= fCursor;
+			int step= 1;
+			while (high < fSize && fOffsets[high] < offset) {
+				low= high;
+				high+= step;
+				step<<= 1;
+			}
+			if (high > fSize)
+				high= fSize;
+		}
+		// invariant: offsets[low] < offset <= offsets[high]
+		while (high - low > 1) {
+			int mid= (low + high) >>> 1;
+			if (fOffsets[mid] >= offset)
+				high= mid;
+			else
+				low= mid;
+		}
+		fCursor= high;
+		return high;
+	}
+}
@@ -12,7 +12,6 @@
 package org.eclipse.jdt.internal.ui.javaeditor;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 import org.eclipse.swt.custom.StyleRange;
@@ -258,16 +257,17 @@ public class SemanticHighlightingPresenter implements ITextPresentationListener,
 	}
 
 	/**
-	 * Adds all current positions to the given list.
+	 * Resets the given index to the current positions.
 	 * <p>
 	 * NOTE: Called from background thread.
 	 * </p>
 	 *
-	 * @param list The list
+	 * @param index the index
+	 * @since 3.9
 	 */
-	public void addAllPositions(List<Position> list) {
+	public void indexPositions(HighlightedPositionIndex index) {
 		synchronized (fPositionLock) {
-			list.addAll(fPositions);
+			index.reset(fPositions);
 		}
 	}
 
@@ -379,8 +379,6 @@ public class SemanticHighlightingPresenter implements ITextPresentationListener,
 
 		String positionCategory= getPositionCategory();
 
-		List<HighlightedPosition> removedPositionsList= Arrays.asList(removedPositions);
-
 		try {
 			synchronized (fPositionLock) {
 				List<Position> oldPositions= fPositions;
@@ -391,18 +389,23 @@ public class SemanticHighlightingPresenter implements ITextPresentationListener,
 				 * sorted by position.offset, into one new list. The first of the two is the
 				 * previous list of positions (oldPositions), from which any deleted positions get
 				 * removed on the fly. The second of two is the list of added positions. The result
-				 * is stored in newPositions.
+				 * is stored in newPositions. The removed positions are sorted by offset as well, so
+				 * they are matched against the old positions by advancing a third cursor (r).
 				 */
 				List<Position> newPositions= new ArrayList<Position>(newSize);
 				Position position= null;
 				Position addedPosition= null;
+				int r= 0;
 				for (int i= 0, j= 0, n= oldPositions.size(), m= addedPositions.length; i < n || position != null || j < m || addedPosition != null;) {
 					// loop variant: i + j < old(i + j)
 
 					// a) find the next non-deleted Position from the old list
 					while (position == null && i < n) {
 						position= oldPositions.get(i++);
-						if (position.isDeleted() || contain(removedPositionsList, position)) {
+						int offset= position.getOffset();
+						while (r < removedPositions.length && removedPositions[r].getOffset() < offset)
+							r++;
+						if (position.isDeleted() || isRemoved(removedPositions, r, position)) {
 							document.removePosition(positionCategory, position);
 							position= null;
 						}
@@ -460,30 +463,22 @@ public class SemanticHighlightingPresenter implements ITextPresentationListener,
 //	}
 
 	/**
-	 * Returns <code>true</code> iff the positions contain the position.
-	 * @param positions the positions, must be ordered by offset but may overlap
-	 * @param position the position
-	 * @return <code>true</code> iff the positions contain the position
-	 */
-	private boolean contain(List<? extends Position> positions, Position position) {
-		return indexOf(positions, position) != -1;
-	}
-
-	/**
-	 * Returns index of the position in the positions, <code>-1</code> if not found.
-	 * @param positions the positions, must be ordered by offset but may overlap
+	 * Returns <code>true</code> iff the removed positions contain the position.
+	 *
+	 * @param removedPositions the removed positions, must be ordered by offset but may overlap
+	 * @param start the index of the first removed position with an offset equal or greater than
+	 *            the offset of the position
 	 * @param position the position
-	 * @return the index
+	 * @return <code>true</code> iff the removed positions contain the position
+	 * @since 3.9
 	 */
-	private int indexOf(List<? extends Position> positions, Position position) {
-		int index= computeIndexAtOffset(positions, position.getOffset());
-		int size= positions.size();
-		while (index < size) {
-			if (positions.get(index) == position)
-				return index;
-			index++;
+	private boolean isRemoved(HighlightedPosition[] removedPositions, int start, Position position) {
+		int offset= position.getOffset();
+		for (int i= start; i < removedPositions.length && removedPositions[i].getOffset() == offset; i++) {
+			if (removedPositions[i] == position)
+				return true;
 		}
-		return -1;
+		return false;
 	}
 
 	/**
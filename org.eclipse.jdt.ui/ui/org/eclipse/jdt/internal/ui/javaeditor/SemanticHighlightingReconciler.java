@@ -22,7 +22,9 @@ import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
 import org.eclipse.core.runtime.jobs.Job;
 
+import org.eclipse.jface.text.DocumentEvent;
 import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentListener;
 import org.eclipse.jface.text.ITextInputListener;
 import org.eclipse.jface.text.Position;
 import org.eclipse.jface.text.TextPresentation;
@@ -32,12 +34,17 @@ import org.eclipse.ui.IWorkbenchPartSite;
 
 import org.eclipse.jdt.core.ITypeRoot;
 import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.Block;
 import org.eclipse.jdt.core.dom.BooleanLiteral;
 import org.eclipse.jdt.core.dom.CharacterLiteral;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jdt.core.dom.ConstructorInvocation;
+import org.eclipse.jdt.core.dom.EnumDeclaration;
 import org.eclipse.jdt.core.dom.Expression;
 import org.eclipse.jdt.core.dom.IMethodBinding;
+import org.eclipse.jdt.core.dom.Initializer;
+import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.NumberLiteral;
 import org.eclipse.jdt.core.dom.SimpleName;
 import org.eclipse.jdt.core.dom.SuperConstructorInvocation;
@@ -47,7 +54,6 @@ import org.eclipse.jdt.internal.corext.dom.GenericVisitor;
 import org.eclipse.jdt.ui.SharedASTProvider;
 
 import org.eclipse.jdt.internal.ui.JavaPlugin;
-import org.eclipse.jdt.internal.ui.javaeditor.SemanticHighlightingManager.HighlightedPosition;
 import org.eclipse.jdt.internal.ui.javaeditor.SemanticHighlightingManager.Highlighting;
 import org.eclipse.jdt.internal.ui.javaeditor.SemanticHighlightings.DeprecatedMemberHighlighting;
 import org.eclipse.jdt.internal.ui.text.java.IJavaReconcilingListener;
@@ -185,21 +191,7 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 		 * @param highlighting The highlighting
 		 */
 		private void addPosition(int offset, int length, Highlighting highlighting) {
-			boolean isExisting= false;
-			// TODO: use binary search
-			for (int i= 0, n= fRemovedPositions.size(); i < n; i++) {
-				HighlightedPosition position= (HighlightedPosition) fRemovedPositions.get(i);
-				if (position == null)
-					continue;
-				if (position.isEqual(offset, length, highlighting)) {
-					isExisting= true;
-					fRemovedPositions.set(i, null);
-					fNOfRemovedPositions--;
-					break;
-				}
-			}
-
-			if (!isExisting) {
+			if (!fPositionIndex.retain(offset, length, highlighting)) {
 				Position position= fJobPresenter.createHighlightedPosition(offset, length, highlighting);
 				fAddedPositions.add(position);
 			}
@@ -211,19 +203,134 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 		 * @param length The range length
 		 */
 		private void retainPositions(int offset, int length) {
-			// TODO: use binary search
-			for (int i= 0, n= fRemovedPositions.size(); i < n; i++) {
-				HighlightedPosition position= (HighlightedPosition) fRemovedPositions.get(i);
-				if (position != null && position.isContained(offset, length)) {
-					fRemovedPositions.set(i, null);
-					fNOfRemovedPositions--;
-				}
+			fPositionIndex.retainRange(offset, length);
+		}
+	}
+
+	/**
+	 * The smallest range of a document that covers a sequence of document changes. The
+	 * document is unchanged before the range, and the text after the range has been shifted
+	 * by the length delta.
+	 *
+	 * @since 3.9
+	 */
+	private static class ChangedRange {
+
+		/** The start offset */
+		private int fStart;
+		/** The end offset in the changed document */
+		private int fEnd;
+		/** The difference between the length of the changed and the original document */
+		private int fDelta;
+
+		/**
+		 * Creates a changed range for a single change.
+		 *
+		 * @param offset the offset of the replaced text
+		 * @param length the length of the replaced text
+		 * @param textLength the length of the replacement text
+		 */
+		public ChangedRange(int offset, int length, int textLength) {
+			fStart= offset;
+			fEnd= offset + textLength;
+			fDelta= textLength - length;
+		}
+
+		/**
+		 * Extends this range by a change that happened after the changes covered so far.
+		 *
+		 * @param offset the offset of the replaced text
+		 * @param length the length of the replaced text
+		 * @param textLength the length of the replacement text
+		 */
+		public void add(int offset, int length, int textLength) {
+			int end;
+			if (fEnd <= offset)
+				end= fEnd;
+			else if (fEnd >= offset + length)
+				end= fEnd + textLength - length;
+			else
+				end= offset + textLength;
+			fStart= Math.min(fStart, offset);
+			fEnd= Math.max(end, offset + textLength);
+			fDelta+= textLength - length;
+		}
+
+		/**
+		 * Extends this range by the changes covered by the given range, which happened after the
+		 * changes covered so far.
+		 *
+		 * @param range the range
+		 */
+		public void add(ChangedRange range) {
+			add(range.fStart, range.getOriginalEnd() - range.fStart, range.fEnd - range.fStart);
+		}
+
+		/**
+		 * @return the end offset in the original document
+		 */
+		public int getOriginalEnd() {
+			return fEnd - fDelta;
+		}
+	}
+
+	/**
+	 * Collects the changes of the document between reconciles.
+	 *
+	 * @since 3.9
+	 */
+	private class ChangeTracker implements IDocumentListener, ITextInputListener {
+
+		/*
+		 * @see org.eclipse.jface.text.IDocumentListener#documentAboutToBeChanged(org.eclipse.jface.text.DocumentEvent)
+		 */
+		public void documentAboutToBeChanged(DocumentEvent event) {
+			// Do nothing
+		}
+
+		/*
+		 * @see org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.jface.text.DocumentEvent)
+		 */
+		public void documentChanged(DocumentEvent event) {
+			String text= event.getText();
+			int textLength= text == null ? 0 : text.length();
+			synchronized (fChangeLock) {
+				if (fChangedRange == null)
+					fChangedRange= new ChangedRange(event.getOffset(), event.getLength(), textLength);
+				else
+					fChangedRange.add(event.getOffset(), event.getLength(), textLength);
+			}
+		}
+
+		/*
+		 * @see org.eclipse.jface.text.ITextInputListener#inputDocumentAboutToBeChanged(org.eclipse.jface.text.IDocument, org.eclipse.jface.text.IDocument)
+		 */
+		public void inputDocumentAboutToBeChanged(IDocument oldInput, IDocument newInput) {
+			if (oldInput != null)
+				oldInput.removeDocumentListener(this);
+		}
+
+		/*
+		 * @see org.eclipse.jface.text.ITextInputListener#inputDocumentChanged(org.eclipse.jface.text.IDocument, org.eclipse.jface.text.IDocument)
+		 */
+		public void inputDocumentChanged(IDocument oldInput, IDocument newInput) {
+			if (newInput != null)
+				newInput.addDocumentListener(this);
+			synchronized (fChangeLock) {
+				fChangedRange= null;
+				fReconcileChangedRange= null;
+				fIsFullReconcileNeeded= true;
 			}
 		}
 	}
 
 	/** Position collector */
 	private PositionCollector fCollector= new PositionCollector();
+	/**
+	 * Document change tracker, only installed on compilation unit editors
+	 * @since 3.9
+	 */
+	private ChangeTracker fChangeTracker;
 
 	/** The Java editor this semantic highlighting reconciler is installed on */
 	private JavaEditor fEditor;
@@ -240,8 +347,11 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 	private List<Position> fAddedPositions= new ArrayList<Position>();
 	/** Background job's removed highlighted positions */
 	private List<Position> fRemovedPositions= new ArrayList<Position>();
-	/** Number of removed positions */
-	private int fNOfRemovedPositions;
+	/**
+	 * Background job's index of the highlighted positions, positions which are not retained are removed
+	 * @since 3.9
+	 */
+	private HighlightedPositionIndex fPositionIndex= new HighlightedPositionIndex();
 
 	/** Background job */
 	private Job fJob;
@@ -259,6 +369,33 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 	 */
 	private boolean fIsReconciling= false;
 
+	/**
+	 * Document change lock.
+	 * @since 3.9
+	 */
+	private final Object fChangeLock= new Object();
+	/**
+	 * Changes of the document since the last call to {@link #aboutToBeReconciled()}, guarded by <code>fChangeLock</code>.
+	 * @since 3.9
+	 */
+	private ChangedRange fChangedRange;
+	/**
+	 * Changes of the document that the next reconcile has to process, guarded by <code>fChangeLock</code>.
+	 * @since 3.9
+	 */
+	private ChangedRange fReconcileChangedRange;
+	/**
+	 * <code>true</code> if the next reconcile has to visit the whole AST, guarded by <code>fChangeLock</code>.
+	 * @since 3.9
+	 */
+	private boolean fIsFullReconcileNeeded= true;
+	/**
+	 * Offsets and lengths of the members of the last reconciled AST, <code>null</code> if none.
+	 * Only accessed from the background thread.
+	 * @since 3.9
+	 */
+	private int[] fMemberRanges;
+
 	/** The semantic highlighting presenter - cache for background thread, only valid during {@link #reconciled(CompilationUnit, boolean, IProgressMonitor)} */
 	private SemanticHighlightingPresenter fJobPresenter;
 	/** Semantic highlightings - cache for background thread, only valid during {@link #reconciled(CompilationUnit, boolean, IProgressMonitor)} */
@@ -276,7 +413,15 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 	 * @see org.eclipse.jdt.internal.ui.text.java.IJavaReconcilingListener#aboutToBeReconciled()
 	 */
 	public void aboutToBeReconciled() {
-		// Do nothing
+		synchronized (fChangeLock) {
+			if (fChangedRange != null) {
+				if (fReconcileChangedRange == null)
+					fReconcileChangedRange= fChangedRange;
+				else
+					fReconcileChangedRange.add(fChangedRange);
+				fChangedRange= null;
+			}
+		}
 	}
 
 	/*
@@ -285,15 +430,26 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 	public void reconciled(CompilationUnit ast, boolean forced, IProgressMonitor progressMonitor) {
 		// ensure at most one thread can be reconciling at any time
 		synchronized (fReconcileLock) {
-			if (fIsReconciling)
+			if (fIsReconciling) {
+				markFullReconcileNeeded();
 				return;
-			else
+			} else
 				fIsReconciling= true;
 		}
 		fJobPresenter= fPresenter;
 		fJobSemanticHighlightings= fSemanticHighlightings;
 		fJobHighlightings= fHighlightings;
 
+		ChangedRange changedRange;
+		boolean isFullReconcileNeeded;
+		synchronized (fChangeLock) {
+			changedRange= fReconcileChangedRange;
+			fReconcileChangedRange= null;
+			isFullReconcileNeeded= fIsFullReconcileNeeded;
+			fIsFullReconcileNeeded= false;
+		}
+		boolean isCompleted= false;
+
 		try {
 			if (fJobPresenter == null || fJobSemanticHighlightings == null || fJobHighlightings == null)
 				return;
@@ -303,7 +459,8 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 			if (ast == null || fJobPresenter.isCanceled())
 				return;
 
-			ASTNode[] subtrees= getAffectedSubtrees(ast);
+			int[] memberRanges= getMemberRanges(ast);
+			ASTNode[] subtrees= getAffectedSubtrees(ast, memberRanges, forced || isFullReconcileNeeded ? null : changedRange);
 			if (subtrees.length == 0)
 				return;
 
@@ -328,8 +485,15 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 			if (!fJobPresenter.isCanceled())
 				updatePresentation(textPresentation, fAddedPositions, fRemovedPositions);
 
+			if (!fJobPresenter.isCanceled() && (textPresentation != null || fAddedPositions.isEmpty() && fRemovedPositions.isEmpty())) {
+				fMemberRanges= memberRanges;
+				isCompleted= true;
+			}
+
 			stopReconcilingPositions();
 		} finally {
+			if (!isCompleted)
+				markFullReconcileNeeded();
 			fJobPresenter= null;
 			fJobSemanticHighlightings= null;
 			fJobHighlightings= null;
@@ -341,20 +505,141 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 	}
 
 	/**
-	 * @param node Root node
+	 * Returns the subtrees that may be affected by the document changes since the last reconcile.
+	 * <p>
+	 * The changes can only affect the highlighting inside a method or initializer body if they are
+	 * contained in the body, and if the members of the types are the same as in the last
+	 * reconciled AST once shifted by the changes. Otherwise the whole AST is affected.
+	 * </p>
+	 *
+	 * @param ast the AST
+	 * @param memberRanges the offsets and lengths of the members in the AST
+	 * @param changedRange the changes since the last reconcile, or <code>null</code> if the whole
+	 *            AST has to be reconciled
 	 * @return Array of subtrees that may be affected by past document changes
 	 */
-	private ASTNode[] getAffectedSubtrees(ASTNode node) {
-		// TODO: only return nodes which are affected by document changes - would require an 'anchor' concept for taking distant effects into account
-		return new ASTNode[] { node };
+	private ASTNode[] getAffectedSubtrees(CompilationUnit ast, int[] memberRanges, ChangedRange changedRange) {
+		if (changedRange != null && fMemberRanges != null && areMembersShifted(fMemberRanges, memberRanges, changedRange)) {
+			Block body= getChangedBody(getMembers(ast), changedRange);
+			if (body != null)
+				return new ASTNode[] { body };
+		}
+		return new ASTNode[] { ast };
+	}
+
+	/**
+	 * Returns the type declarations, enum constants and body declarations of the types in the AST,
+	 * in pre-order. Local and anonymous types are not included.
+	 *
+	 * @param ast the AST
+	 * @return the members
+	 * @since 3.9
+	 */
+	private static List<ASTNode> getMembers(CompilationUnit ast) {
+		List<ASTNode> members= new ArrayList<ASTNode>();
+		addMembers(ast.types(), members);
+		return members;
+	}
+
+	private static void addMembers(List<?> declarations, List<ASTNode> members) {
+		for (int i= 0, n= declarations.size(); i < n; i++) {
+			ASTNode declaration= (ASTNode) declarations.get(i);
+			members.add(declaration);
+			if (declaration instanceof EnumDeclaration)
+				addMembers(((EnumDeclaration) declaration).enumConstants(), members);
+			if (declaration instanceof AbstractTypeDeclaration)
+				addMembers(((AbstractTypeDeclaration) declaration).bodyDeclarations(), members);
+		}
+	}
+
+	/**
+	 * @param ast the AST
+	 * @return the offsets and lengths of the members of the AST, see {@link #getMembers(CompilationUnit)}
+	 * @since 3.9
+	 */
+	private static int[] getMemberRanges(CompilationUnit ast) {
+		List<ASTNode> members= getMembers(ast);
+		int[] ranges= new int[2 * members.size()];
+		for (int i= 0, n= members.size(); i < n; i++) {
+			ASTNode member= members.get(i);
+			ranges[2 * i]= member.getStartPosition();
+			ranges[2 * i + 1]= member.getLength();
+		}
+		return ranges;
+	}
+
+	/**
+	 * Tells whether the members of the new AST are the members of the old AST shifted by the
+	 * changes, i.e. whether the changes left the structure of the types intact.
+	 *
+	 * @param oldRanges the offsets and lengths of the members of the old AST
+	 * @param newRanges the offsets and lengths of the members of the new AST
+	 * @param changedRange the changes between the old and the new AST
+	 * @return <code>true</code> iff each new member range is the shifted old member range
+	 * @since 3.9
+	 */
+	private static boolean areMembersShifted(int[] oldRanges, int[] newRanges, ChangedRange changedRange) {
+		if (oldRanges.length != newRanges.length)
+			return false;
+		int changeStart= changedRange.fStart;
+		int changeEnd= changedRange.getOriginalEnd();
+		for (int i= 0, n= oldRanges.length; i < n; i+= 2) {
+			int start= oldRanges[i];
+			int end= start + oldRanges[i + 1];
+			if (end <= changeStart) {
+				// before the changes
+			} else if (start >= changeEnd) {
+				start+= changedRange.fDelta;
+				end+= changedRange.fDelta;
+			} else if (start <= changeStart && end >= changeEnd) {
+				end+= changedRange.fDelta;
+			} else {
+				return false;
+			}
+			if (newRanges[i] != start || newRanges[i] + newRanges[i + 1] != end)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the method or initializer body that contains the changes.
+	 *
+	 * @param members the members, see {@link #getMembers(CompilationUnit)}
+	 * @param changedRange the changes
+	 * @return the body strictly enclosing the changes, or <code>null</code> if none
+	 * @since 3.9
+	 */
+	private static Block getChangedBody(List<ASTNode> members, ChangedRange changedRange) {
+		for (int i= 0, n= members.size(); i < n; i++) {
+			ASTNode member= members.get(i);
+			Block body= null;
+			if (member instanceof MethodDeclaration)
+				body= ((MethodDeclaration) member).getBody();
+			else if (member instanceof Initializer)
+				body= ((Initializer) member).getBody();
+			if (body != null && body.getStartPosition() < changedRange.fStart && changedRange.fEnd < body.getStartPosition() + body.getLength())
+				return body;
+		}
+		return null;
+	}
+
+	/**
+	 * Makes the next reconcile visit the whole AST.
+	 *
+	 * @since 3.9
+	 */
+	private void markFullReconcileNeeded() {
+		synchronized (fChangeLock) {
+			fIsFullReconcileNeeded= true;
+		}
 	}
 
 	/**
 	 * Start reconciling positions.
 	 */
 	private void startReconcilingPositions() {
-		fJobPresenter.addAllPositions(fRemovedPositions);
-		fNOfRemovedPositions= fRemovedPositions.size();
+		fJobPresenter.indexPositions(fPositionIndex);
 	}
 
 	/**
@@ -363,20 +648,13 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 	 * @param subtrees the AST subtrees
 	 */
 	private void reconcilePositions(ASTNode[] subtrees) {
-		// FIXME: remove positions not covered by subtrees
-
-
+		// positions outside of a changed body are not affected
+		if (subtrees.length == 1 && !(subtrees[0] instanceof CompilationUnit))
+			fPositionIndex.retainOutside(subtrees[0].getStartPosition(), subtrees[0].getLength());
 
 		for (int i= 0, n= subtrees.length; i < n; i++)
 			subtrees[i].accept(fCollector);
-		List<Position> oldPositions= fRemovedPositions;
-		List<Position> newPositions= new ArrayList<Position>(fNOfRemovedPositions);
-		for (int i= 0, n= oldPositions.size(); i < n; i ++) {
-			Position current= oldPositions.get(i);
-			if (current != null)
-				newPositions.add(current);
-		}
-		fRemovedPositions= newPositions;
+		fPositionIndex.addRemovedPositions(fRemovedPositions);
 	}
 
 	/**
@@ -415,7 +693,7 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 	 */
 	private void stopReconcilingPositions() {
 		fRemovedPositions.clear();
-		fNOfRemovedPositions= 0;
+		fPositionIndex.clear();
 		fAddedPositions.clear();
 	}
 
@@ -436,6 +714,11 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 		fSourceViewer= sourceViewer;
 
 		if (fEditor instanceof CompilationUnitEditor) {
+			fChangeTracker= new ChangeTracker();
+			fSourceViewer.addTextInputListener(fChangeTracker);
+			IDocument document= fSourceViewer.getDocument();
+			if (document != null)
+				document.addDocumentListener(fChangeTracker);
 			((CompilationUnitEditor)fEditor).addReconcileListener(this);
 		} else if (fEditor == null) {
 			fSourceViewer.addTextInputListener(this);
@@ -451,10 +734,16 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 			fPresenter.setCanceled(true);
 
 		if (fEditor != null) {
-			if (fEditor instanceof CompilationUnitEditor)
+			if (fEditor instanceof CompilationUnitEditor) {
 				((CompilationUnitEditor)fEditor).removeReconcileListener(this);
-			else
+				fSourceViewer.removeTextInputListener(fChangeTracker);
+				IDocument document= fSourceViewer.getDocument();
+				if (document != null)
+					document.removeDocumentListener(fChangeTracker);
+				fChangeTracker= null;
+			} else {
 				fSourceViewer.removeTextInputListener(this);
+			}
 			fEditor= null;
 		}
 
@@ -534,6 +823,7 @@ public class SemanticHighlightingReconciler implements IJavaReconcilingListener,
 	 * @since 3.2
 	 */
 	public void refresh() {
+		markFullReconcileNeeded();
 		scheduleJob();
 	}
 }
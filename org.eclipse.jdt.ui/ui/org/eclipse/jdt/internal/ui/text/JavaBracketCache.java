@@ -0,0 +1,472 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.ui.text;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.DocumentEvent;
+import org.eclipse.jface.text.DocumentPartitioningChangedEvent;
+import org.eclipse.jface.text.IDocument;
+import org.eclipse.jface.text.IDocumentExtension3;
+import org.eclipse.jface.text.IDocumentExtension4;
+import org.eclipse.jface.text.IDocumentListener;
+import org.eclipse.jface.text.IDocumentPartitioningListener;
+import org.eclipse.jface.text.IDocumentPartitioningListenerExtension2;
+import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextUtilities;
+
+
+/**
+ * Caches the positions of the brackets of a document that reside in a given partition,
+ * together with the matching peer of each bracket.
+ * <p>
+ * The cache is attached to its document and is updated incrementally on document and
+ * partitioning changes: only the replaced text and the partitions that changed with it are
+ * scanned again. The matching peers of a bracket kind are recomputed lazily after a bracket
+ * of that kind has been added or removed. With the peers known, searching for the opening or
+ * closing peer skips whole scopes instead of scanning the document character by character.
+ * </p>
+ * <p>
+ * The cache does not reference its document, so that it does not prevent the document from
+ * being garbage collected.
+ * </p>
+ *
+ * @see JavaHeuristicScanner#findOpeningPeer(int, int, char, char)
+ * @see JavaHeuristicScanner#findClosingPeer(int, int, char, char)
+ * @since 3.9
+ */
+public final class JavaBracketCache implements IDocumentListener, IDocumentPartitioningListener, IDocumentPartitioningListenerExtension2 {
+
+	/**
+	 * Documents shorter than this are scanned directly, since the cache would not pay off.
+	 */
+	private static final int MIN_DOCUMENT_LENGTH= 10000;
+
+	/**
+	 * Returned by the find methods if the document could not be scanned.
+	 */
+	public static final int UNKNOWN= -3;
+
+	/** The opening brackets */
+	private static final char[] OPENING_PEERS= { '(', '[', '{' };
+
+	/** The closing brackets, in the order of the opening brackets */
+	private static final char[] CLOSING_PEERS= { ')', ']', '}' };
+
+	/** The caches of a document */
+	private static final Map<IDocument, List<JavaBracketCache>> fgCaches= new WeakHashMap<IDocument, List<JavaBracketCache>>();
+
+	/**
+	 * The positions of the brackets of one kind and their matching peers.
+	 */
+	private static final class Brackets {
+
+		/** The sorted offsets of the opening and closing brackets */
+		int[] fOffsets= new int[16];
+		/** Whether the bracket at the same index is an opening bracket */
+		boolean[] fOpening= new boolean[16];
+		/** The number of brackets */
+		int fSize;
+		/**
+		 * The index of the matching peer of the bracket at the same index, or <code>-1</code>
+		 * for an unmatched bracket. <code>null</code> if the peers need to be computed.
+		 */
+		int[] fPeers;
+
+		/**
+		 * Returns the index of the first bracket at or after <code>offset</code>.
+		 *
+		 * @param offset the offset
+		 * @return the index of the first bracket with an offset &gt;= <code>offset</code>
+		 */
+		int indexOf(int offset) {
+			int low= 0;
+			int high= fSize;
+			while (low < high) {
+				int middle= (low + high) >>> 1;
+				if (fOffsets[middle] < offset)
+					low= middle + 1;
+				else
+					high= middle;
+			}
+			return low;
+		}
+
+		/**
+		 * Replaces the brackets in <code>[start, end)</code> with the given brackets.
+		 *
+		 * @param start the start offset of the range
+		 * @param end the end offset of the range
+		 * @param offsets the offsets of the new brackets, all in the range
+		 * @param opening whether the new brackets are opening brackets
+		 * @param count the number of new brackets
+		 */
+		void replace(int start, int end, int[] offsets, boolean[] opening, int count) {
+			int from= indexOf(start);
+			int to= indexOf(end);
+			if (from == to && count == 0)
+				return;
+
+			int size= fSize - (to - from) + count;
+			if (size > fOffsets.length) {
+				int capacity= Math.max(size, fOffsets.length * 2);
+				int[] newOffsets= new int[capacity];
+				boolean[] newOpening= new boolean[capacity];
+				System.arraycopy(fOffsets, 0, newOffsets, 0, from);
+				System.arraycopy(fOpening, 0, newOpening, 0, from);
+				System.arraycopy(fOffsets, to, newOffsets, from + count, fSize - to);
+				System.arraycopy(fOpening, to, newOpening, from + count, fSize - to);
+				fOffsets= newOffsets;
+				fOpening= newOpening;
+			} else {
+				System.arraycopy(fOffsets, to, fOffsets, from + count, fSize - to);
+				System.arraycopy(fOpening, to, fOpening, from + count, fSize - to);
+			}
+			if (count > 0) {
+				System.arraycopy(offsets, 0, fOffsets, from, count);
+				System.arraycopy(opening, 0, fOpening, from, count);
+			}
+			fSize= size;
+			fPeers= null;
+		}
+
+		/**
+		 * Removes the brackets in <code>[start, end)</code> and shifts the following brackets.
+		 *
+		 * @param start the start offset of the removed range
+		 * @param end the end offset of the removed range
+		 * @param delta the amount to shift the brackets after the range by
+		 */
+		void remove(int start, int end, int delta) {
+			replace(start, end, null, null, 0);
+			if (delta != 0) {
+				for (int i= indexOf(start); i < fSize; i++)
+					fOffsets[i]+= delta;
+			}
+		}
+
+		/**
+		 * Returns the indices of the matching peers, computing them if needed.
+		 *
+		 * @return the indices of the matching peers
+		 */
+		int[] getPeers() {
+			if (fPeers == null) {
+				int[] peers= new int[fSize];
+				int[] stack= new int[16];
+				int depth= 0;
+				for (int i= 0; i < fSize; i++) {
+					if (fOpening[i]) {
+						if (depth == stack.length) {
+							int[] newStack= new int[depth * 2];
+							System.arraycopy(stack, 0, newStack, 0, depth);
+							stack= newStack;
+						}
+						stack[depth++]= i;
+						peers[i]= -1;
+					} else if (depth > 0) {
+						int peer= stack[--depth];
+						peers[peer]= i;
+						peers[i]= peer;
+					} else {
+						peers[i]= -1;
+					}
+				}
+				fPeers= peers;
+			}
+			return fPeers;
+		}
+	}
+
+	/** The partitioning of the cached brackets */
+	private final String fPartitioning;
+	/** The partition of the cached brackets */
+	private final String fPartition;
+	/**
+	 * The brackets, one entry for each kind, or <code>null</code> if the document has not been
+	 * scanned yet.
+	 */
+	private Brackets[] fBrackets;
+	/** The partitions changed by the current document change, in the new document */
+	private IRegion fChangedPartitions;
+	/** Whether a document change is in progress */
+	private boolean fIsChanging;
+
+	private JavaBracketCache(String partitioning, String partition) {
+		fPartitioning= partitioning;
+		fPartition= partition;
+	}
+
+	/**
+	 * Returns the bracket cache for the given document, partitioning and partition. The cache is
+	 * created and attached to the document the first time it is requested.
+	 *
+	 * @param document the document
+	 * @param partitioning the partitioning
+	 * @param partition the partition in which brackets are considered
+	 * @return the cache or <code>null</code> if the document should be scanned directly, e.g.
+	 *         because it is small or does not have the partitioning
+	 */
+	public static JavaBracketCache getCache(IDocument document, String partitioning, String partition) {
+		if (document.getLength() < MIN_DOCUMENT_LENGTH)
+			return null;
+		if (!(document instanceof IDocumentExtension3) || ((IDocumentExtension3) document).getDocumentPartitioner(partitioning) == null)
+			return null;
+		if (document instanceof IDocumentExtension4 && ((IDocumentExtension4) document).getActiveRewriteSession() != null)
+			return null;
+
+		synchronized (fgCaches) {
+			List<JavaBracketCache> caches= fgCaches.get(document);
+			if (caches == null) {
+				caches= new ArrayList<JavaBracketCache>(1);
+				fgCaches.put(document, caches);
+			}
+			for (int i= 0; i < caches.size(); i++) {
+				JavaBracketCache cache= caches.get(i);
+				if (cache.fPartitioning.equals(partitioning) && cache.fPartition.equals(partition))
+					return cache;
+			}
+			JavaBracketCache cache= new JavaBracketCache(partitioning, partition);
+			document.addDocumentListener(cache);
+			document.addDocumentPartitioningListener(cache);
+			caches.add(cache);
+			return cache;
+		}
+	}
+
+	/**
+	 * Tells whether the given characters are a pair of brackets handled by the cache.
+	 *
+	 * @param openingPeer the opening peer character
+	 * @param closingPeer the closing peer character
+	 * @return <code>true</code> if the cache can find peers of the given characters
+	 */
+	public static boolean isBracketPair(char openingPeer, char closingPeer) {
+		int kind= getKind(openingPeer);
+		return kind >= 0 && CLOSING_PEERS[kind] == closingPeer;
+	}
+
+	private static int getKind(char openingPeer) {
+		for (int i= 0; i < OPENING_PEERS.length; i++) {
+			if (OPENING_PEERS[i] == openingPeer)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the position of the opening peer. Same as
+	 * {@link JavaHeuristicScanner#findOpeningPeer(int, int, char, char)}.
+	 *
+	 * @param document the document of this cache
+	 * @param start the first position to consider
+	 * @param bound the first position to not consider any more, with <code>bound</code> &lt;
+	 *            <code>start</code>, or <code>JavaHeuristicScanner.UNBOUND</code>
+	 * @param openingPeer the opening peer character, one of '(', '[' and '{'
+	 * @param closingPeer the closing peer of <code>openingPeer</code>
+	 * @return the position of the opening peer, <code>JavaHeuristicScanner.NOT_FOUND</code> or
+	 *         {@link #UNKNOWN}
+	 */
+	public synchronized int findOpeningPeer(IDocument document, int start, int bound, char openingPeer, char closingPeer) {
+		if (bound == JavaHeuristicScanner.UNBOUND)
+			bound= -1;
+
+		Brackets brackets= getBrackets(document, openingPeer);
+		if (brackets == null)
+			return UNKNOWN;
+		int[] peers= brackets.getPeers();
+		int i= brackets.indexOf(start + 1) - 1;
+		while (i >= 0 && brackets.fOffsets[i] > bound) {
+			if (brackets.fOpening[i])
+				return brackets.fOffsets[i];
+			// skip the scope of the closing bracket
+			if (peers[i] == -1)
+				return JavaHeuristicScanner.NOT_FOUND;
+			i= peers[i] - 1;
+		}
+		return JavaHeuristicScanner.NOT_FOUND;
+	}
+
+	/**
+	 * Returns the position of the closing peer. Same as
+	 * {@link JavaHeuristicScanner#findClosingPeer(int, int, char, char)}.
+	 *
+	 * @param document the document of this cache
+	 * @param start the first position to consider
+	 * @param bound the first position to not consider any more, with <code>bound</code> &gt;
+	 *            <code>start</code>, or <code>JavaHeuristicScanner.UNBOUND</code>
+	 * @param openingPeer the opening peer character, one of '(', '[' and '{'
+	 * @param closingPeer the closing peer of <code>openingPeer</code>
+	 * @return the position of the closing peer, <code>JavaHeuristicScanner.NOT_FOUND</code> or
+	 *         {@link #UNKNOWN}
+	 */
+	public synchronized int findClosingPeer(IDocument document, int start, int bound, char openingPeer, char closingPeer) {
+		if (bound == JavaHeuristicScanner.UNBOUND)
+			bound= document.getLength();
+
+		Brackets brackets= getBrackets(document, openingPeer);
+		if (brackets == null)
+			return UNKNOWN;
+		int[] peers= brackets.getPeers();
+		int i= brackets.indexOf(start);
+		while (i < brackets.fSize && brackets.fOffsets[i] < bound) {
+			if (!brackets.fOpening[i])
+				return brackets.fOffsets[i];
+			// skip the scope of the opening bracket
+			if (peers[i] == -1)
+				return JavaHeuristicScanner.NOT_FOUND;
+			i= peers[i] + 1;
+		}
+		return JavaHeuristicScanner.NOT_FOUND;
+	}
+
+	/**
+	 * Returns the brackets of the given kind, scanning the document if needed.
+	 *
+	 * @param document the document
+	 * @param openingPeer the opening bracket of the kind
+	 * @return the brackets or <code>null</code> if the document could not be scanned
+	 */
+	private Brackets getBrackets(IDocument document, char openingPeer) {
+		if (fBrackets == null) {
+			Brackets[] brackets= new Brackets[OPENING_PEERS.length];
+			for (int i= 0; i < brackets.length; i++)
+				brackets[i]= new Brackets();
+			fBrackets= brackets;
+			if (!scan(document, 0, document.getLength()))
+				fBrackets= null;
+		}
+		return fBrackets != null ? fBrackets[getKind(openingPeer)] : null;
+	}
+
+	/**
+	 * Scans the given range of the document and replaces the cached brackets in it.
+	 *
+	 * @param document the document
+	 * @param start the start offset of the range
+	 * @param end the end offset of the range
+	 * @return <code>true</code> if the range could be scanned, <code>false</code> otherwise
+	 */
+	private boolean scan(IDocument document, int start, int end) {
+		int[][] offsets= new int[OPENING_PEERS.length][];
+		boolean[][] opening= new boolean[OPENING_PEERS.length][];
+		int[] counts= new int[OPENING_PEERS.length];
+		for (int i= 0; i < OPENING_PEERS.length; i++) {
+			offsets[i]= new int[16];
+			opening[i]= new boolean[16];
+		}
+
+		try {
+			ITypedRegion[] partitions= TextUtilities.computePartitioning(document, fPartitioning, start, end - start, false);
+			for (int i= 0; i < partitions.length; i++) {
+				ITypedRegion partition= partitions[i];
+				if (!fPartition.equals(partition.getType()))
+					continue;
+				int offset= Math.max(start, partition.getOffset());
+				String text= document.get(offset, Math.min(end, partition.getOffset() + partition.getLength()) - offset);
+				for (int j= 0; j < text.length(); j++) {
+					char ch= text.charAt(j);
+					for (int kind= 0; kind < OPENING_PEERS.length; kind++) {
+						if (ch != OPENING_PEERS[kind] && ch != CLOSING_PEERS[kind])
+							continue;
+						int count= counts[kind];
+						if (count == offsets[kind].length) {
+							int[] newOffsets= new int[count * 2];
+							boolean[] newOpening= new boolean[count * 2];
+							System.arraycopy(offsets[kind], 0, newOffsets, 0, count);
+							System.arraycopy(opening[kind], 0, newOpening, 0, count);
+							offsets[kind]= newOffsets;
+							opening[kind]= newOpening;
+						}
+						offsets[kind][count]= offset + j;
+						opening[kind][count]= ch == OPENING_PEERS[kind];
+						counts[kind]++;
+						break;
+					}
+				}
+			}
+		} catch (BadLocationException e) {
+			return false;
+		}
+
+		for (int kind= 0; kind < OPENING_PEERS.length; kind++)
+			fBrackets[kind].replace(start, end, offsets[kind], opening[kind], counts[kind]);
+		return true;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentListener#documentAboutToBeChanged(org.eclipse.jface.text.DocumentEvent)
+	 */
+	public synchronized void documentAboutToBeChanged(DocumentEvent event) {
+		fIsChanging= true;
+		fChangedPartitions= null;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentListener#documentChanged(org.eclipse.jface.text.DocumentEvent)
+	 */
+	public synchronized void documentChanged(DocumentEvent event) {
+		fIsChanging= false;
+		IRegion changedPartitions= fChangedPartitions;
+		fChangedPartitions= null;
+		if (fBrackets == null)
+			return;
+
+		IDocument document= event.getDocument();
+		if (document.getLength() < MIN_DOCUMENT_LENGTH || document instanceof IDocumentExtension4 && ((IDocumentExtension4) document).getActiveRewriteSession() != null) {
+			// rescanned when needed again
+			fBrackets= null;
+			return;
+		}
+
+		int offset= event.getOffset();
+		int textLength= event.getText() == null ? 0 : event.getText().length();
+		for (int kind= 0; kind < fBrackets.length; kind++)
+			fBrackets[kind].remove(offset, offset + event.getLength(), textLength - event.getLength());
+
+		if (!scan(document, offset, offset + textLength)
+				|| changedPartitions != null && !scan(document, changedPartitions.getOffset(), changedPartitions.getOffset() + changedPartitions.getLength()))
+			fBrackets= null;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentPartitioningListener#documentPartitioningChanged(org.eclipse.jface.text.IDocument)
+	 */
+	public synchronized void documentPartitioningChanged(IDocument document) {
+		fBrackets= null;
+	}
+
+	/*
+	 * @see org.eclipse.jface.text.IDocumentPartitioningListenerExtension2#documentPartitioningChanged(org.eclipse.jface.text.DocumentPartitioningChangedEvent)
+	 */
+	public synchronized void documentPartitioningChanged(DocumentPartitioningChangedEvent event) {
+		IRegion region= event.getChangedRegion(fPartitioning);
+		if (region == null)
+			return;
+
+		if (!fIsChanging) {
+			// e.g. a new partitioner has been set
+			fBrackets= null;
+		} else if (fChangedPartitions == null) {
+			fChangedPartitions= region;
+		} else {
+			int start= Math.min(fChangedPartitions.getOffset(), region.getOffset());
+			int end= Math.max(fChangedPartitions.getOffset() + fChangedPartitions.getLength(), region.getOffset() + region.getLength());
+			fChangedPartitions= new Region(start, end - start);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -556,6 +556,13 @@ public final class JavaHeuristicScanner implements Symbols {
 	public int findClosingPeer(int start, int bound, final char openingPeer, final char closingPeer) {
 		Assert.isLegal(start >= 0);
 
+		JavaBracketCache cache= getBracketCache(openingPeer, closingPeer);
+		if (cache != null) {
+			int peer= cache.findClosingPeer(fDocument, start, bound, openingPeer, closingPeer);
+			if (peer != JavaBracketCache.UNKNOWN)
+				return setPeerPosition(peer, closingPeer);
+		}
+
 		try {
 			CharacterMatch match= new CharacterMatch(new char[] {openingPeer, closingPeer});
 			int depth= 1;
@@ -611,6 +618,13 @@ public final class JavaHeuristicScanner implements Symbols {
 	public int findOpeningPeer(int start, int bound, char openingPeer, char closingPeer) {
 		Assert.isLegal(start < fDocument.getLength());
 
+		JavaBracketCache cache= getBracketCache(openingPeer, closingPeer);
+		if (cache != null) {
+			int peer= cache.findOpeningPeer(fDocument, start, bound, openingPeer, closingPeer);
+			if (peer != JavaBracketCache.UNKNOWN)
+				return setPeerPosition(peer, openingPeer);
+		}
+
 		try {
 			final CharacterMatch match= new CharacterMatch(new char[] {openingPeer, closingPeer});
 			int depth= 1;
@@ -634,6 +648,38 @@ public final class JavaHeuristicScanner implements Symbols {
 		}
 	}
 
+	/**
+	 * Returns the bracket cache of the document if the given characters are brackets and the
+	 * document is large enough for the cache to pay off.
+	 *
+	 * @param openingPeer the opening peer character
+	 * @param closingPeer the closing peer character
+	 * @return the bracket cache or <code>null</code> if the document has to be scanned
+	 * @since 3.9
+	 */
+	private JavaBracketCache getBracketCache(char openingPeer, char closingPeer) {
+		if (!JavaBracketCache.isBracketPair(openingPeer, closingPeer))
+			return null;
+		return JavaBracketCache.getCache(fDocument, fPartitioning, fPartition);
+	}
+
+	/**
+	 * Sets the internal scan state to a peer found in the bracket cache, as if the document had
+	 * been scanned up to the peer.
+	 *
+	 * @param peer the position of the peer or <code>NOT_FOUND</code>
+	 * @param ch the peer character
+	 * @return <code>peer</code>
+	 * @since 3.9
+	 */
+	private int setPeerPosition(int peer, char ch) {
+		if (peer != NOT_FOUND) {
+			fPos= peer;
+			fChar= ch;
+		}
+		return peer;
+	}
+
 	/**
 	 * Computes the surrounding block around <code>offset</code>. The search is started at the
 	 * beginning of <code>offset</code>, i.e. an opening brace at <code>offset</code> will not be
@@ -1935,6 +1935,14 @@ public final class JavaIndenter {
 	 *         otherwise
 	 */
 	private boolean skipScope(int openToken, int closeToken) {
+		switch (openToken) {
+			case Symbols.TokenLPAREN:
+				return skipScope('(', ')');
+			case Symbols.TokenLBRACKET:
+				return skipScope('[', ']');
+			case Symbols.TokenLBRACE:
+				return skipScope('{', '}');
+		}
 
 		int depth= 1;
 
@@ -1952,4 +1960,29 @@ public final class JavaIndenter {
 			}
 		}
 	}
+
+	/**
+	 * Finds the matching opening peer of the closing bracket at the internal cursor
+	 * (<code>fPosition</code>) with the heuristic scanner, which can look it up in the bracket
+	 * cache of large documents. The internal state is set as if the tokens had been scanned up to
+	 * the opening peer.
+	 *
+	 * @param openingPeer the opening bracket
+	 * @param closingPeer the closing bracket
+	 * @return <code>true</code> if a matching peer was found, <code>false</code> otherwise
+	 * @since 3.9
+	 */
+	private boolean skipScope(char openingPeer, char closingPeer) {
+		int closingOffset= fPosition;
+		int peer= fScanner.findOpeningPeer(closingOffset - 1, openingPeer, closingPeer);
+		if (peer == JavaHeuristicScanner.NOT_FOUND) {
+			nextToken(0);
+			return false;
+		}
+
+		nextToken(peer + 1);
+		int previousPos= fScanner.findNonWhitespaceForward(peer + 1, closingOffset);
+		fPreviousPos= previousPos == JavaHeuristicScanner.NOT_FOUND ? closingOffset : previousPos;
+		return true;
+	}
 }
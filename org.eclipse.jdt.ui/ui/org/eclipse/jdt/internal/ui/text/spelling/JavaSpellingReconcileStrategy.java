@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,12 +10,21 @@
  *******************************************************************************/
 package org.eclipse.jdt.internal.ui.text.spelling;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.content.IContentType;
 
+import org.eclipse.jface.preference.IPreferenceStore;
+
 import org.eclipse.jface.text.BadLocationException;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.IRegion;
+import org.eclipse.jface.text.ITypedRegion;
+import org.eclipse.jface.text.Region;
+import org.eclipse.jface.text.TextUtilities;
 import org.eclipse.jface.text.source.IAnnotationModel;
 import org.eclipse.jface.text.source.ISourceViewer;
 
@@ -24,6 +33,7 @@ import org.eclipse.ui.IEditorInput;
 import org.eclipse.ui.texteditor.IDocumentProvider;
 import org.eclipse.ui.texteditor.ITextEditor;
 import org.eclipse.ui.texteditor.spelling.ISpellingProblemCollector;
+import org.eclipse.ui.texteditor.spelling.SpellingContext;
 import org.eclipse.ui.texteditor.spelling.SpellingProblem;
 import org.eclipse.ui.texteditor.spelling.SpellingReconcileStrategy;
 import org.eclipse.ui.texteditor.spelling.SpellingService;
@@ -34,41 +44,94 @@ import org.eclipse.jdt.core.IProblemRequestor;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.compiler.IProblem;
 
+import org.eclipse.jdt.ui.PreferenceConstants;
+import org.eclipse.jdt.ui.text.IJavaPartitions;
+
+import org.eclipse.jdt.internal.ui.text.spelling.engine.ISpellChecker;
+
 
 /**
  * Reconcile strategy for spell checking comments.
+ * <p>
+ * The strategy spell checks incrementally: it remembers the text and the problems of the last
+ * check, only checks the partitions that overlap the text that has changed since, and reports
+ * the remaining problems again with shifted offsets.
+ * </p>
  *
  * @since 3.1
  */
 public class JavaSpellingReconcileStrategy extends SpellingReconcileStrategy {
 
 
+	/**
+	 * A reported spelling problem that is remembered for the next reconcile.
+	 *
+	 * @since 3.9
+	 */
+	private static class CheckedProblem {
+
+		final int fOffset;
+		final int fLength;
+		final String fMessage;
+		final boolean fDictionaryMatch;
+		final boolean fSentenceStart;
+
+		CheckedProblem(int offset, int length, String message, boolean dictionaryMatch, boolean sentenceStart) {
+			fOffset= offset;
+			fLength= length;
+			fMessage= message;
+			fDictionaryMatch= dictionaryMatch;
+			fSentenceStart= sentenceStart;
+		}
+
+		CheckedProblem shift(int delta) {
+			return delta == 0 ? this : new CheckedProblem(fOffset + delta, fLength, fMessage, fDictionaryMatch, fSentenceStart);
+		}
+	}
+
 	/**
 	 * Spelling problem collector that forwards {@link SpellingProblem}s as
 	 * {@link IProblem}s to the {@link IProblemRequestor}.
 	 */
 	private class SpellingProblemCollector implements ISpellingProblemCollector {
 
+		/**
+		 * The problems of the last check outside the checked regions, reported again.
+		 * @since 3.9
+		 */
+		private List<CheckedProblem> fRescuedProblems= new ArrayList<CheckedProblem>();
+
+		/**
+		 * All problems reported in the current check.
+		 * @since 3.9
+		 */
+		private List<CheckedProblem> fReportedProblems= new ArrayList<CheckedProblem>();
+
 		/*
 		 * @see org.eclipse.ui.texteditor.spelling.ISpellingProblemCollector#accept(org.eclipse.ui.texteditor.spelling.SpellingProblem)
 		 */
 		public void accept(SpellingProblem problem) {
+			boolean dictionaryMatch= false;
+			boolean sentenceStart= false;
+			if (problem instanceof JavaSpellingProblem) {
+				dictionaryMatch= ((JavaSpellingProblem)problem).isDictionaryMatch();
+				sentenceStart= ((JavaSpellingProblem) problem).isSentenceStart();
+			}
+			report(new CheckedProblem(problem.getOffset(), problem.getLength(), problem.getMessage(), dictionaryMatch, sentenceStart));
+		}
+
+		private void report(CheckedProblem problem) {
 			IProblemRequestor requestor= fRequestor;
 			if (requestor != null) {
 				try {
-					int line= getDocument().getLineOfOffset(problem.getOffset()) + 1;
-					String word= getDocument().get(problem.getOffset(), problem.getLength());
-					boolean dictionaryMatch= false;
-					boolean sentenceStart= false;
-					if (problem instanceof JavaSpellingProblem) {
-						dictionaryMatch= ((JavaSpellingProblem)problem).isDictionaryMatch();
-						sentenceStart= ((JavaSpellingProblem) problem).isSentenceStart();
-					}
+					int line= getDocument().getLineOfOffset(problem.fOffset) + 1;
+					String word= getDocument().get(problem.fOffset, problem.fLength);
 					// see https://bugs.eclipse.org/bugs/show_bug.cgi?id=81514
 					IEditorInput editorInput= fEditor.getEditorInput();
 					if (editorInput != null) {
-						CoreSpellingProblem iProblem= new CoreSpellingProblem(problem.getOffset(), problem.getOffset() + problem.getLength() - 1, line, problem.getMessage(), word, dictionaryMatch, sentenceStart, getDocument(), editorInput.getName());
+						CoreSpellingProblem iProblem= new CoreSpellingProblem(problem.fOffset, problem.fOffset + problem.fLength - 1, line, problem.fMessage, word, problem.fDictionaryMatch, problem.fSentenceStart, getDocument(), editorInput.getName());
 						requestor.acceptProblem(iProblem);
+						fReportedProblems.add(problem);
 					}
 				} catch (BadLocationException x) {
 					// drop this SpellingProblem
@@ -76,12 +139,35 @@ public class JavaSpellingReconcileStrategy extends SpellingReconcileStrategy {
 			}
 		}
 
+		/**
+		 * Prepares the next check.
+		 *
+		 * @param rescuedProblems the problems of the last check that are still valid
+		 * @since 3.9
+		 */
+		void prepare(List<CheckedProblem> rescuedProblems) {
+			fRescuedProblems= rescuedProblems;
+			fReportedProblems= new ArrayList<CheckedProblem>();
+		}
+
+		/**
+		 * Returns the problems reported in the last check.
+		 *
+		 * @return the reported problems
+		 * @since 3.9
+		 */
+		List<CheckedProblem> getReportedProblems() {
+			return fReportedProblems;
+		}
+
 		/*
 		 * @see org.eclipse.ui.texteditor.spelling.ISpellingProblemCollector#beginCollecting()
 		 */
 		public void beginCollecting() {
 			if (fRequestor != null)
 				fRequestor.beginReporting();
+			for (int i= 0; i < fRescuedProblems.size(); i++)
+				report(fRescuedProblems.get(i));
 		}
 
 		/*
@@ -106,6 +192,37 @@ public class JavaSpellingReconcileStrategy extends SpellingReconcileStrategy {
 	/** The problem requester. */
 	private IProblemRequestor fRequestor;
 
+	/**
+	 * The problem collector.
+	 * @since 3.9
+	 */
+	private SpellingProblemCollector fCollector;
+
+	/**
+	 * The progress monitor.
+	 * @since 3.9
+	 */
+	private IProgressMonitor fProgressMonitor;
+
+	/**
+	 * The text of the last complete check, or <code>null</code> if the next check has to check
+	 * the whole document.
+	 * @since 3.9
+	 */
+	private String fCheckedText;
+
+	/**
+	 * The spelling settings of the last check.
+	 * @since 3.9
+	 */
+	private String fCheckedSettings;
+
+	/**
+	 * The problems of the last check.
+	 * @since 3.9
+	 */
+	private List<CheckedProblem> fCheckedProblems;
+
 
 	/**
 	 * Creates a new comment reconcile strategy.
@@ -123,8 +240,136 @@ public class JavaSpellingReconcileStrategy extends SpellingReconcileStrategy {
 	 */
 	@Override
 	public void reconcile(IRegion region) {
-		if (fRequestor != null && isSpellingEnabled())
+		if (fRequestor == null || !isSpellingEnabled())
+			return;
+
+		IDocument document= getDocument();
+		if (document == null || fCollector == null || region.getOffset() != 0 || region.getLength() != document.getLength()) {
+			fCheckedText= null;
+			if (fCollector != null)
+				fCollector.prepare(new ArrayList<CheckedProblem>());
 			super.reconcile(region);
+			return;
+		}
+
+		String text= document.get();
+		String settings= getSettings();
+		List<CheckedProblem> rescuedProblems= new ArrayList<CheckedProblem>();
+		IRegion[] regions;
+		if (fCheckedText != null && settings.equals(fCheckedSettings)) {
+			IRegion checkRegion= computeCheckRegion(document, text, rescuedProblems);
+			regions= checkRegion != null ? new IRegion[] { checkRegion } : new IRegion[0];
+		} else {
+			regions= new IRegion[] { region };
+		}
+
+		fCheckedText= null;
+		fCollector.prepare(rescuedProblems);
+		SpellingContext context= new SpellingContext();
+		context.setContentType(getContentType());
+		EditorsUI.getSpellingService().check(document, regions, context, fCollector, fProgressMonitor);
+
+		if ((fProgressMonitor == null || !fProgressMonitor.isCanceled()) && text.equals(document.get())) {
+			fCheckedText= text;
+			fCheckedSettings= settings;
+			fCheckedProblems= fCollector.getReportedProblems();
+		}
+	}
+
+	/**
+	 * Computes the region that has to be checked after the document has changed from the text
+	 * of the last check to the given text. The region covers the partitions that overlap the
+	 * changed text. The problems of the last check outside that region are shifted to the new
+	 * offsets and added to the given list.
+	 *
+	 * @param document the document
+	 * @param text the current text of the document
+	 * @param rescuedProblems the list to which the still valid problems are added
+	 * @return the region to check or <code>null</code> if the text has not changed
+	 * @since 3.9
+	 */
+	private IRegion computeCheckRegion(IDocument document, String text, List<CheckedProblem> rescuedProblems) {
+		String oldText= fCheckedText;
+		int oldLength= oldText.length();
+		int newLength= text.length();
+		int maxPrefix= Math.min(oldLength, newLength);
+		int prefix= 0;
+		while (prefix < maxPrefix && oldText.charAt(prefix) == text.charAt(prefix))
+			prefix++;
+		int maxSuffix= maxPrefix - prefix;
+		int suffix= 0;
+		while (suffix < maxSuffix && oldText.charAt(oldLength - suffix - 1) == text.charAt(newLength - suffix - 1))
+			suffix++;
+
+		IRegion checkRegion= null;
+		int checkStart= newLength;
+		int checkEnd= newLength;
+		if (prefix != oldLength || prefix != newLength) {
+			try {
+				// partitions may merge at the boundaries of the change
+				ITypedRegion first= TextUtilities.getPartition(document, IJavaPartitions.JAVA_PARTITIONING, Math.max(0, prefix - 1), false);
+				ITypedRegion last= TextUtilities.getPartition(document, IJavaPartitions.JAVA_PARTITIONING, newLength - suffix, false);
+				checkStart= first.getOffset();
+				checkEnd= Math.max(last.getOffset() + last.getLength(), newLength - suffix);
+			} catch (BadLocationException x) {
+				checkStart= 0;
+				checkEnd= newLength;
+			}
+			checkRegion= new Region(checkStart, checkEnd - checkStart);
+		}
+
+		ISpellChecker checker= SpellCheckEngine.getInstance().getSpellChecker();
+		int delta= newLength - oldLength;
+		for (int i= 0; i < fCheckedProblems.size(); i++) {
+			CheckedProblem problem= fCheckedProblems.get(i);
+			if (problem.fOffset >= oldLength - suffix)
+				problem= problem.shift(delta); // after the change
+			else if (problem.fOffset + problem.fLength > prefix)
+				continue; // inside the change
+
+			if (problem.fOffset < checkEnd && problem.fOffset + problem.fLength > checkStart)
+				continue; // will be checked again
+
+			if (!problem.fDictionaryMatch && checker != null && checker.isCorrect(text.substring(problem.fOffset, problem.fOffset + problem.fLength)))
+				continue; // e.g. the word has been added to the dictionary
+
+			rescuedProblems.add(problem);
+		}
+		return checkRegion;
+	}
+
+	/**
+	 * Returns a string that identifies the spell checker and the preferences that influence the
+	 * spelling problems of a document.
+	 *
+	 * @return the spelling settings
+	 * @since 3.9
+	 */
+	private static String getSettings() {
+		IPreferenceStore store= PreferenceConstants.getPreferenceStore();
+		StringBuffer buffer= new StringBuffer();
+		buffer.append(System.identityHashCode(SpellCheckEngine.getInstance().getSpellChecker()));
+		buffer.append(EditorsUI.getPreferenceStore().getString(SpellingService.PREFERENCE_SPELLING_ENGINE));
+		buffer.append(store.getBoolean(PreferenceConstants.SPELLING_IGNORE_DIGITS));
+		buffer.append(store.getBoolean(PreferenceConstants.SPELLING_IGNORE_MIXED));
+		buffer.append(store.getBoolean(PreferenceConstants.SPELLING_IGNORE_SENTENCE));
+		buffer.append(store.getBoolean(PreferenceConstants.SPELLING_IGNORE_UPPER));
+		buffer.append(store.getBoolean(PreferenceConstants.SPELLING_IGNORE_URLS));
+		buffer.append(store.getBoolean(PreferenceConstants.SPELLING_IGNORE_SINGLE_LETTERS));
+		buffer.append(store.getBoolean(PreferenceConstants.SPELLING_IGNORE_NON_LETTERS));
+		buffer.append(store.getBoolean(PreferenceConstants.SPELLING_IGNORE_JAVA_STRINGS));
+		buffer.append(store.getInt(PreferenceConstants.SPELLING_PROBLEMS_THRESHOLD));
+		return buffer.toString();
+	}
+
+	/*
+	 * @see org.eclipse.ui.texteditor.spelling.SpellingReconcileStrategy#setProgressMonitor(org.eclipse.core.runtime.IProgressMonitor)
+	 * @since 3.9
+	 */
+	@Override
+	public void setProgressMonitor(IProgressMonitor monitor) {
+		super.setProgressMonitor(monitor);
+		fProgressMonitor= monitor;
 	}
 
 	private boolean isSpellingEnabled() {
@@ -137,7 +382,8 @@ public class JavaSpellingReconcileStrategy extends SpellingReconcileStrategy {
 	 */
 	@Override
 	protected ISpellingProblemCollector createSpellingProblemCollector() {
-		return new SpellingProblemCollector();
+		fCollector= new SpellingProblemCollector();
+		return fCollector;
 	}
 
 	/*
@@ -154,6 +400,8 @@ public class JavaSpellingReconcileStrategy extends SpellingReconcileStrategy {
 	 */
 	@Override
 	public void setDocument(IDocument document) {
+		fCheckedText= null;
+		fCheckedProblems= null;
 		super.setDocument(document);
 		updateProblemRequester();
 	}
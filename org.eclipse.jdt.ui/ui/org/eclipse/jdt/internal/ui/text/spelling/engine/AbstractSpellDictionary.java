@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -11,6 +11,7 @@
 package org.eclipse.jdt.internal.ui.text.spelling.engine;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
@@ -18,17 +19,22 @@ import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
 import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.MalformedInputException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.zip.CRC32;
 
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Status;
@@ -104,6 +110,18 @@ public abstract class AbstractSpellDictionary implements ISpellDictionary {
 	 */
 	private static final String UTF_8= "UTF-8"; //$NON-NLS-1$
 
+	/**
+	 * The directory of the compiled dictionaries in the plug-in state location
+	 * @since 3.9
+	 */
+	private static final String COMPILED_DICTIONARIES_DIR= "spelling"; //$NON-NLS-1$
+
+	/**
+	 * The file extension of compiled dictionaries
+	 * @since 3.9
+	 */
+	private static final String COMPILED_DICTIONARY_EXTENSION= ".compiled"; //$NON-NLS-1$
+
 	/** The bucket capacity */
 	protected static final int BUCKET_CAPACITY= 4;
 
@@ -123,7 +141,14 @@ public abstract class AbstractSpellDictionary implements ISpellDictionary {
 	private IPhoneticDistanceAlgorithm fDistanceAlgorithm= new DefaultPhoneticDistanceAlgorithm();
 
 	/** The mapping from phonetic hashes to word lists */
-	private final Map<ByteArrayWrapper, Object> fHashBuckets= new HashMap<ByteArrayWrapper, Object>(getInitialSize(), LOAD_FACTOR);
+	private Map<ByteArrayWrapper, Object> fHashBuckets= new HashMap<ByteArrayWrapper, Object>(getInitialSize(), LOAD_FACTOR);
+
+	/**
+	 * The memory-mapped precompiled word list, or <code>null</code> if the word list has been
+	 * loaded into {@link #fHashBuckets}. Words added later are still kept in the hash buckets.
+	 * @since 3.9
+	 */
+	private CompiledSpellDictionary fCompiled;
 
 	/** The phonetic hash provider */
 	private IPhoneticHashProvider fHashProvider= new DefaultPhoneticHashProvider();
@@ -152,6 +177,18 @@ public abstract class AbstractSpellDictionary implements ISpellDictionary {
 		return 32;
 	}
 
+	/**
+	 * Tells whether the word list of this dictionary is precompiled into a memory-mapped file
+	 * instead of being loaded onto the heap. The compiled file is rebuilt whenever the word list
+	 * changes.
+	 *
+	 * @return <code>true</code> if the word list is compiled
+	 * @since 3.9
+	 */
+	protected boolean isCompiled() {
+		return false;
+	}
+
 	/**
 	 * Returns all candidates with the same phonetic hash.
 	 *
@@ -167,7 +204,22 @@ public abstract class AbstractSpellDictionary implements ISpellDictionary {
 			JavaPlugin.log(e);
 			return null;
 		}
-		return fHashBuckets.get(hashBytes);
+		Object candidates= fHashBuckets.get(hashBytes);
+		CompiledSpellDictionary compiled= fCompiled;
+		if (compiled == null)
+			return candidates;
+
+		ArrayList<byte[]> compiledCandidates= compiled.getWords(hashBytes.byteArray);
+		if (compiledCandidates == null)
+			return candidates;
+		if (candidates instanceof byte[]) {
+			compiledCandidates.add((byte[])candidates);
+		} else if (candidates != null) {
+			@SuppressWarnings("unchecked")
+			ArrayList<byte[]> candidateList= (ArrayList<byte[]>)candidates;
+			compiledCandidates.addAll(candidateList);
+		}
+		return compiledCandidates;
 	}
 
 	/**
@@ -325,7 +377,7 @@ public abstract class AbstractSpellDictionary implements ISpellDictionary {
 	 * @since 3.3
 	 */
 	protected boolean isEmpty() {
-		return fHashBuckets.size() == 0;
+		return fHashBuckets.size() == 0 && (fCompiled == null || fCompiled.isEmpty());
 	}
 
 	/**
@@ -611,69 +663,207 @@ public abstract class AbstractSpellDictionary implements ISpellDictionary {
 		 if (!fMustLoad)
 			 return fLoaded;
 
-		if (url != null) {
-			InputStream stream= null;
-			int line= 0;
+		if (url == null)
+			return false;
+
+		try {
+			if (isCompiled() && loadCompiled(url))
+				return true;
+			return loadWordList(url);
+		} finally {
+			fMustLoad= false;
+		}
+	}
+
+	/**
+	 * Maps the compiled word list, after compiling it if it is missing or out-dated.
+	 *
+	 * @param url the URL of the word list
+	 * @return <code>true</code> if the word list could be loaded, <code>false</code> if it has to
+	 *         be loaded onto the heap
+	 * @since 3.9
+	 */
+	private boolean loadCompiled(final URL url) {
+		String stamp= getStamp(url);
+		if (stamp == null)
+			return false;
+
+		String name= getCompiledFileName(url);
+		if (name == null)
+			return false;
+
+		File file= JavaPlugin.getDefault().getStateLocation().append(COMPILED_DICTIONARIES_DIR).append(name).toFile();
+		CompiledSpellDictionary compiled= CompiledSpellDictionary.open(file, stamp);
+		if (compiled == null) {
+			if (!loadWordList(url))
+				return false;
+
+			List<byte[]> hashes= new ArrayList<byte[]>(fHashBuckets.size());
+			List<List<byte[]>> words= new ArrayList<List<byte[]>>(fHashBuckets.size());
+			for (Iterator<Map.Entry<ByteArrayWrapper, Object>> iter= fHashBuckets.entrySet().iterator(); iter.hasNext();) {
+				Map.Entry<ByteArrayWrapper, Object> entry= iter.next();
+				hashes.add(entry.getKey().byteArray);
+				if (entry.getValue() instanceof byte[]) {
+					List<byte[]> bucket= new ArrayList<byte[]>(1);
+					bucket.add((byte[])entry.getValue());
+					words.add(bucket);
+				} else {
+					@SuppressWarnings("unchecked")
+					List<byte[]> bucket= (List<byte[]>)entry.getValue();
+					words.add(bucket);
+				}
+			}
 			try {
-				stream= url.openStream();
-				if (stream != null) {
-					String word= null;
-
-					// Setup a reader with a decoder in order to read over malformed input if needed.
-					CharsetDecoder decoder= Charset.forName(getEncoding()).newDecoder();
-					decoder.onMalformedInput(CodingErrorAction.REPORT);
-					decoder.onUnmappableCharacter(CodingErrorAction.REPORT);
-					final BufferedReader reader= new BufferedReader(new InputStreamReader(stream, decoder));
-
-					boolean doRead= true;
-					while (doRead) {
-						try {
-							word= reader.readLine();
-						} catch (MalformedInputException ex) {
-							// Tell the decoder to replace malformed input in order to read the line.
-							decoder.onMalformedInput(CodingErrorAction.REPLACE);
-							decoder.reset();
-							word= reader.readLine();
-							decoder.onMalformedInput(CodingErrorAction.REPORT);
-
-							String message= Messages.format(JavaUIMessages.AbstractSpellingDictionary_encodingError, new String[] { word, decoder.replacement(), BasicElementLabels.getURLPart(url.toString()) });
-							IStatus status= new Status(IStatus.ERROR, JavaUI.ID_PLUGIN, IStatus.OK, message, ex);
-							JavaPlugin.log(status);
-
-							doRead= word != null;
-							continue;
-						}
-						doRead= word != null;
-						if (doRead)
-							hashWord(word);
-					}
-					return true;
+				CompiledSpellDictionary.write(file, stamp, hashes, words);
+			} catch (IOException exception) {
+				JavaPlugin.log(exception);
+				return true; // keep the word list on the heap
+			}
+			compiled= CompiledSpellDictionary.open(file, stamp);
+			if (compiled == null)
+				return true;
+		}
+
+		fHashBuckets= new HashMap<ByteArrayWrapper, Object>(BUCKET_CAPACITY, LOAD_FACTOR);
+		fCompiled= compiled;
+		return true;
+	}
+
+	/**
+	 * Returns the name of the compiled file of the given word list. The name is the SHA-1 digest
+	 * of the URL, so that different word lists do not share a compiled file.
+	 *
+	 * @param url the URL of the word list
+	 * @return the file name or <code>null</code> if the digest cannot be computed
+	 * @since 3.9
+	 */
+	private static String getCompiledFileName(final URL url) {
+		byte[] digest;
+		try {
+			digest= MessageDigest.getInstance("SHA-1").digest(url.toExternalForm().getBytes(UTF_8)); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException e) {
+			JavaPlugin.log(e);
+			return null;
+		} catch (UnsupportedEncodingException e) {
+			JavaPlugin.log(e);
+			return null;
+		}
+		StringBuffer name= new StringBuffer(2 * digest.length + COMPILED_DICTIONARY_EXTENSION.length());
+		for (int i= 0; i < digest.length; i++) {
+			name.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+			name.append(Character.forDigit(digest[i] & 0xf, 16));
+		}
+		return name.append(COMPILED_DICTIONARY_EXTENSION).toString();
+	}
+
+	/**
+	 * Returns the stamp that identifies the current content of the word list, together with
+	 * the settings that influence the compiled dictionary.
+	 *
+	 * @param url the URL of the word list
+	 * @return the stamp or <code>null</code> if the word list cannot be accessed
+	 * @since 3.9
+	 */
+	private String getStamp(final URL url) {
+		InputStream stream= null;
+		try {
+			URLConnection connection= url.openConnection();
+			long modified= connection.getLastModified();
+			long length= connection.getContentLength();
+			stream= connection.getInputStream();
+			if (modified == 0) {
+				// no time stamp available, use a checksum of the content
+				CRC32 checksum= new CRC32();
+				byte[] buffer= new byte[8192];
+				length= 0;
+				for (int read= stream.read(buffer); read != -1; read= stream.read(buffer)) {
+					checksum.update(buffer, 0, read);
+					length+= read;
 				}
-			} catch (FileNotFoundException ex) {
-				String urlString= url.toString();
-				String lowercaseUrlString= urlString.toLowerCase();
-				if (urlString.equals(lowercaseUrlString))
-					JavaPlugin.log(ex);
-				else
+				modified= checksum.getValue();
+			}
+			return url.toExternalForm() + '|' + getEncoding() + '|' + fHashProvider.getClass().getName() + '|' + length + '|' + modified;
+		} catch (IOException exception) {
+			return null;
+		} finally {
+			try {
+				if (stream != null)
+					stream.close();
+			} catch (IOException x) {
+			}
+		}
+	}
+
+	/**
+	 * Loads a dictionary word list onto the heap.
+	 *
+	 * @param url
+	 *                   The URL of the word list to load
+	 * @return <code>true</code> iff the word list could be loaded, <code>false</code>
+	 *               otherwise
+	 * @since 3.9
+	 */
+	private boolean loadWordList(final URL url) {
+		InputStream stream= null;
+		int line= 0;
+		try {
+			stream= url.openStream();
+			if (stream != null) {
+				String word= null;
+
+				// Setup a reader with a decoder in order to read over malformed input if needed.
+				CharsetDecoder decoder= Charset.forName(getEncoding()).newDecoder();
+				decoder.onMalformedInput(CodingErrorAction.REPORT);
+				decoder.onUnmappableCharacter(CodingErrorAction.REPORT);
+				final BufferedReader reader= new BufferedReader(new InputStreamReader(stream, decoder));
+
+				boolean doRead= true;
+				while (doRead) {
 					try {
-						return load(new URL(lowercaseUrlString));
-					} catch (MalformedURLException e) {
-						JavaPlugin.log(e);
+						word= reader.readLine();
+					} catch (MalformedInputException ex) {
+						// Tell the decoder to replace malformed input in order to read the line.
+						decoder.onMalformedInput(CodingErrorAction.REPLACE);
+						decoder.reset();
+						word= reader.readLine();
+						decoder.onMalformedInput(CodingErrorAction.REPORT);
+
+						String message= Messages.format(JavaUIMessages.AbstractSpellingDictionary_encodingError, new String[] { word, decoder.replacement(), BasicElementLabels.getURLPart(url.toString()) });
+						IStatus status= new Status(IStatus.ERROR, JavaUI.ID_PLUGIN, IStatus.OK, message, ex);
+						JavaPlugin.log(status);
+
+						doRead= word != null;
+						continue;
 					}
-			} catch (IOException exception) {
-				if (line > 0) {
-					String message= Messages.format(JavaUIMessages.AbstractSpellingDictionary_encodingError, new Object[] { new Integer(line), BasicElementLabels.getURLPart(url.toString()) });
-					IStatus status= new Status(IStatus.ERROR, JavaUI.ID_PLUGIN, IStatus.OK, message, exception);
-					JavaPlugin.log(status);
-				} else
-					JavaPlugin.log(exception);
-			} finally {
-				fMustLoad= false;
+					doRead= word != null;
+					if (doRead)
+						hashWord(word);
+				}
+				return true;
+			}
+		} catch (FileNotFoundException ex) {
+			String urlString= url.toString();
+			String lowercaseUrlString= urlString.toLowerCase();
+			if (urlString.equals(lowercaseUrlString))
+				JavaPlugin.log(ex);
+			else
 				try {
-					if (stream != null)
-						stream.close();
-				} catch (IOException x) {
+					return loadWordList(new URL(lowercaseUrlString));
+				} catch (MalformedURLException e) {
+					JavaPlugin.log(e);
 				}
+		} catch (IOException exception) {
+			if (line > 0) {
+				String message= Messages.format(JavaUIMessages.AbstractSpellingDictionary_encodingError, new Object[] { new Integer(line), BasicElementLabels.getURLPart(url.toString()) });
+				IStatus status= new Status(IStatus.ERROR, JavaUI.ID_PLUGIN, IStatus.OK, message, exception);
+				JavaPlugin.log(status);
+			} else
+				JavaPlugin.log(exception);
+		} finally {
+			try {
+				if (stream != null)
+					stream.close();
+			} catch (IOException x) {
 			}
 		}
 		return false;
@@ -720,6 +910,7 @@ public abstract class AbstractSpellDictionary implements ISpellDictionary {
 		fLoaded= false;
 		fMustLoad= true;
 		fHashBuckets.clear();
+		fCompiled= null;
 	}
 
 	/*
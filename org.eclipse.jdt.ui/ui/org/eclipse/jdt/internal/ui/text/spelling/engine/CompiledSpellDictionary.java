@@ -0,0 +1,256 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.jdt.internal.ui.text.spelling.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+
+
+/**
+ * A precompiled, memory-mapped dictionary.
+ * <p>
+ * The file consists of a header with the stamp of the word list it has been compiled from,
+ * a table of the phonetic hashes sorted by their bytes and terminated by a sentinel entry,
+ * a table of word offsets and a pool with the UTF-8 bytes of all hashes followed by all
+ * words. The words of a hash are stored consecutively, so that the words of the hash at
+ * index <code>i</code> are the words from the first word of entry <code>i</code> up to the
+ * first word of entry <code>i + 1</code>.
+ * </p>
+ * <p>
+ * Lookups use absolute reads on the mapped buffer and can be performed concurrently.
+ * </p>
+ *
+ * @since 3.9
+ */
+final class CompiledSpellDictionary {
+
+	/** The file magic */
+	private static final int MAGIC= 0x4A445344;
+
+	/** The file format version */
+	private static final int VERSION= 1;
+
+	/** The size of an entry in the hash table: hash offset, hash length and first word */
+	private static final int ENTRY_SIZE= 12;
+
+	/** The mapped data */
+	private final ByteBuffer fBuffer;
+
+	/** The number of hashes */
+	private final int fEntryCount;
+
+	/** The position of the word offsets table */
+	private final int fWordTable;
+
+	/** The position of the pool */
+	private final int fPool;
+
+	private CompiledSpellDictionary(ByteBuffer buffer) {
+		fBuffer= buffer;
+		fEntryCount= buffer.getInt(0);
+		int wordCount= buffer.getInt(4);
+		fWordTable= 8 + (fEntryCount + 1) * ENTRY_SIZE;
+		fPool= fWordTable + (wordCount + 1) * 4;
+	}
+
+	/**
+	 * Opens a compiled dictionary.
+	 *
+	 * @param file the compiled dictionary file
+	 * @param stamp the stamp of the current word list
+	 * @return the compiled dictionary or <code>null</code> if the file does not exist, is corrupt
+	 *         or has been compiled from a different word list
+	 */
+	public static CompiledSpellDictionary open(File file, String stamp) {
+		if (!file.isFile())
+			return null;
+
+		RandomAccessFile input= null;
+		try {
+			input= new RandomAccessFile(file, "r"); //$NON-NLS-1$
+			if (input.readInt() != MAGIC || input.readInt() != VERSION || !stamp.equals(input.readUTF()))
+				return null;
+
+			long position= input.getFilePointer();
+			FileChannel channel= input.getChannel();
+			ByteBuffer buffer= channel.map(FileChannel.MapMode.READ_ONLY, position, channel.size() - position);
+			return new CompiledSpellDictionary(buffer); // the mapping stays valid after the file is closed
+		} catch (IOException exception) {
+			JavaPlugin.log(exception);
+			return null;
+		} finally {
+			try {
+				if (input != null)
+					input.close();
+			} catch (IOException e) {
+			}
+		}
+	}
+
+	/**
+	 * Compiles a dictionary into the given file.
+	 *
+	 * @param file the file to write
+	 * @param stamp the stamp of the word list
+	 * @param hashes the UTF-8 bytes of the phonetic hashes
+	 * @param words the UTF-8 bytes of the words, one list for each hash
+	 * @throws IOException if the file could not be written
+	 */
+	public static void write(File file, String stamp, List<byte[]> hashes, List<List<byte[]>> words) throws IOException {
+		Integer[] order= new Integer[hashes.size()];
+		for (int i= 0; i < order.length; i++)
+			order[i]= new Integer(i);
+		final List<byte[]> keys= hashes;
+		Arrays.sort(order, new Comparator<Integer>() {
+			public int compare(Integer i1, Integer i2) {
+				return compareBytes(keys.get(i1.intValue()), keys.get(i2.intValue()));
+			}
+		});
+
+		ByteArrayOutputStream pool= new ByteArrayOutputStream();
+		int[] hashOffsets= new int[order.length];
+		int[] firstWords= new int[order.length + 1];
+		List<Integer> wordOffsets= new ArrayList<Integer>();
+		for (int i= 0; i < order.length; i++) {
+			hashOffsets[i]= pool.size();
+			pool.write(hashes.get(order[i].intValue()));
+		}
+		// the words follow the hashes, so that a word ends where the next word starts
+		for (int i= 0; i < order.length; i++) {
+			firstWords[i]= wordOffsets.size();
+			List<byte[]> bucket= words.get(order[i].intValue());
+			for (int j= 0; j < bucket.size(); j++) {
+				wordOffsets.add(new Integer(pool.size()));
+				pool.write(bucket.get(j));
+			}
+		}
+		firstWords[order.length]= wordOffsets.size();
+		wordOffsets.add(new Integer(pool.size()));
+
+		file.getParentFile().mkdirs();
+		File temp= new File(file.getPath() + ".tmp"); //$NON-NLS-1$
+		DataOutputStream output= new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			output.writeInt(MAGIC);
+			output.writeInt(VERSION);
+			output.writeUTF(stamp);
+			output.writeInt(order.length);
+			output.writeInt(wordOffsets.size() - 1);
+			for (int i= 0; i < order.length; i++) {
+				output.writeInt(hashOffsets[i]);
+				output.writeInt(hashes.get(order[i].intValue()).length);
+				output.writeInt(firstWords[i]);
+			}
+			output.writeInt(pool.size()); // sentinel entry
+			output.writeInt(0);
+			output.writeInt(firstWords[order.length]);
+			for (int i= 0; i < wordOffsets.size(); i++)
+				output.writeInt(wordOffsets.get(i).intValue());
+			pool.writeTo(output);
+		} finally {
+			output.close();
+		}
+		if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+			temp.delete();
+			throw new IOException("Could not write compiled dictionary: " + file); //$NON-NLS-1$
+		}
+	}
+
+	/**
+	 * Tells whether this dictionary contains no words.
+	 *
+	 * @return <code>true</code> if this dictionary is empty
+	 */
+	public boolean isEmpty() {
+		return fEntryCount == 0;
+	}
+
+	/**
+	 * Returns the words with the given phonetic hash.
+	 *
+	 * @param hash the UTF-8 bytes of the phonetic hash
+	 * @return the UTF-8 bytes of the words or <code>null</code> if there are none
+	 */
+	public ArrayList<byte[]> getWords(byte[] hash) {
+		int entry= find(hash);
+		if (entry < 0)
+			return null;
+
+		int first= fBuffer.getInt(8 + entry * ENTRY_SIZE + 8);
+		int last= fBuffer.getInt(8 + (entry + 1) * ENTRY_SIZE + 8);
+		ArrayList<byte[]> result= new ArrayList<byte[]>(last - first);
+		for (int i= first; i < last; i++) {
+			int start= fBuffer.getInt(fWordTable + i * 4);
+			int end= fBuffer.getInt(fWordTable + (i + 1) * 4);
+			byte[] word= new byte[end - start];
+			for (int j= 0; j < word.length; j++)
+				word[j]= fBuffer.get(fPool + start + j);
+			result.add(word);
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the entry of the given hash with a binary search.
+	 *
+	 * @param hash the hash
+	 * @return the index of the entry or <code>-1</code> if not found
+	 */
+	private int find(byte[] hash) {
+		int low= 0;
+		int high= fEntryCount - 1;
+		while (low <= high) {
+			int middle= (low + high) >>> 1;
+			int position= 8 + middle * ENTRY_SIZE;
+			int comparison= compareBytes(fPool + fBuffer.getInt(position), fBuffer.getInt(position + 4), hash);
+			if (comparison < 0)
+				low= middle + 1;
+			else if (comparison > 0)
+				high= middle - 1;
+			else
+				return middle;
+		}
+		return -1;
+	}
+
+	private int compareBytes(int offset, int length, byte[] bytes) {
+		int n= Math.min(length, bytes.length);
+		for (int i= 0; i < n; i++) {
+			int difference= (fBuffer.get(offset + i) & 0xff) - (bytes[i] & 0xff);
+			if (difference != 0)
+				return difference;
+		}
+		return length - bytes.length;
+	}
+
+	private static int compareBytes(byte[] bytes1, byte[] bytes2) {
+		int n= Math.min(bytes1.length, bytes2.length);
+		for (int i= 0; i < n; i++) {
+			int difference= (bytes1[i] & 0xff) - (bytes2[i] & 0xff);
+			if (difference != 0)
+				return difference;
+		}
+		return bytes1.length - bytes2.length;
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2011 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -45,6 +45,7 @@ import org.eclipse.jdt.core.JavaModelException;
 
 import org.eclipse.jdt.internal.corext.util.JavaModelUtil;
 import org.eclipse.jdt.internal.corext.util.Messages;
+import org.eclipse.jdt.internal.corext.util.TypeHierarchyCache;
 
 import org.eclipse.jdt.internal.ui.JavaPlugin;
 
@@ -296,7 +297,8 @@ public class TypeHierarchyLifeCycle implements ITypeHierarchyChangedListener, IE
 			if (fIsSuperTypesOnly) {
 				return type.newSupertypeHierarchy(pm);
 			} else {
-				return type.newTypeHierarchy(pm);
+				// shared with refactorings and other views
+				return TypeHierarchyCache.getDefault().getTypeHierarchy(type, pm);
 			}
 		} else {
 			IRegion region= JavaCore.newRegion();
@@ -318,6 +320,10 @@ public class TypeHierarchyLifeCycle implements ITypeHierarchyChangedListener, IE
 	}
 
 
+	private boolean isCached(IJavaElement[] elements) {
+		return !fIsSuperTypesOnly && elements.length == 1 && elements[0].getElementType() == IJavaElement.TYPE;
+	}
+
 	public void doHierarchyRefresh(IJavaElement[] elements, IProgressMonitor pm) throws JavaModelException {
 		boolean hierachyCreationNeeded= (fHierarchy == null || !Arrays.equals(elements, fInputElements));
 		// to ensure the order of the two listeners always remove / add listeners on operations
@@ -332,6 +338,12 @@ public class TypeHierarchyLifeCycle implements ITypeHierarchyChangedListener, IE
 				throw new OperationCanceledException();
 			}
 			fInputElements= elements;
+		} else if (isCached(elements)) {
+			// don't refresh the shared hierarchy, other clients may still use it
+			TypeHierarchyCache.getDefault().invalidate(fHierarchy);
+			fHierarchy= createTypeHierarchy(elements, pm);
+			if (pm != null && pm.isCanceled())
+				throw new OperationCanceledException();
 		} else {
 			fHierarchy.refresh(pm);
 			if (pm != null && pm.isCanceled())
@@ -0,0 +1,68 @@
+package org.eclipse.jdt.ui.actions;
+
+import org.eclipse.swt.widgets.Shell;
+
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ISelection;
+
+import org.eclipse.jface.text.ITextSelection;
+
+import org.eclipse.ui.IEditorActionDelegate;
+import org.eclipse.ui.IEditorPart;
+
+import org.eclipse.ltk.ui.refactoring.RefactoringWizard;
+import org.eclipse.ltk.ui.refactoring.RefactoringWizardOpenOperation;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.ConvertLoopToParallelStreamRefactoring;
+
+import org.eclipse.jdt.internal.ui.actions.SelectionConverter;
+import org.eclipse.jdt.internal.ui.javaeditor.JavaEditor;
+import org.eclipse.jdt.internal.ui.refactoring.concurrency.ConvertLoopToParallelStreamWizard;
+
+public class ConvertLoopToParallelStreamAction implements IEditorActionDelegate {
+
+	private JavaEditor fEditor;
+	private ITextSelection fSelection;
+
+	public void setActiveEditor(IAction action, IEditorPart targetEditor) {
+		fEditor= null;
+		if (targetEditor instanceof JavaEditor) {
+			fEditor= (JavaEditor) targetEditor;
+		}
+	}
+
+	public void run(IAction action) {
+		if (fEditor != null && fSelection != null) {
+			ICompilationUnit unit= SelectionConverter.getInputAsCompilationUnit(fEditor);
+			if (unit != null) {
+				ConvertLoopToParallelStreamRefactoring refactoring= new ConvertLoopToParallelStreamRefactoring(unit, fSelection.getOffset(), fSelection.getLength());
+				run(new ConvertLoopToParallelStreamWizard(refactoring, "Convert Loop to Parallel Stream"), getShell(), "Convert Loop to Parallel Stream"); //$NON-NLS-1$ //$NON-NLS-2$
+				return;
+			}
+		}
+		MessageDialog.openError(getShell(), "Error ConvertLoopToParallelStream", "ConvertLoopToParallelStream not applicable for current selection"); //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void run(RefactoringWizard wizard, Shell parent, String dialogTitle) {
+		try {
+			RefactoringWizardOpenOperation operation= new RefactoringWizardOpenOperation(wizard);
+			operation.run(parent, dialogTitle);
+		} catch (InterruptedException exception) {
+			// Do nothing
+		}
+	}
+
+	private Shell getShell() {
+		return fEditor.getSite().getShell();
+	}
+
+	public void selectionChanged(IAction action, ISelection selection) {
+		fSelection= null;
+		if (selection instanceof ITextSelection) {
+			fSelection= (ITextSelection) selection;
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package org.eclipse.jdt.ui.actions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.swt.widgets.Shell;
+
+import org.eclipse.core.runtime.IAdaptable;
+
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+
+import org.eclipse.ui.IActionDelegate;
+import org.eclipse.ui.IObjectActionDelegate;
+import org.eclipse.ui.IWorkbenchPart;
+import org.eclipse.ui.IWorkingSet;
+
+import org.eclipse.ltk.ui.refactoring.RefactoringWizard;
+import org.eclipse.ltk.ui.refactoring.RefactoringWizardOpenOperation;
+
+import org.eclipse.jdt.core.IJavaElement;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.ConvertToAtomicBatchRefactoring;
+
+import org.eclipse.jdt.internal.ui.refactoring.concurrency.ConvertToAtomicBatchWizard;
+
+public class ConvertToAtomicBatchAction implements IObjectActionDelegate {
+
+	private Shell shell;
+	private IJavaElement[] fElements;
+
+	public ConvertToAtomicBatchAction() {
+		super();
+	}
+
+	/**
+	 * @see IObjectActionDelegate#setActivePart(IAction, IWorkbenchPart)
+	 */
+	public void setActivePart(IAction action, IWorkbenchPart targetPart) {
+		shell = targetPart.getSite().getShell();
+	}
+
+	/**
+	 * @see IActionDelegate#run(IAction)
+	 */
+	public void run(IAction action) {
+		if (fElements != null && fElements.length > 0 && shell != null) {
+			ConvertToAtomicBatchRefactoring refactoring= new ConvertToAtomicBatchRefactoring(fElements);
+			run(new ConvertToAtomicBatchWizard(refactoring, "Convert Contended Counters to Atomics"), shell, "Convert Contended Counters to Atomics"); //$NON-NLS-1$ //$NON-NLS-2$
+		} else
+			MessageDialog.openError(shell, "Error ConvertToAtomicBatch", "ConvertToAtomicBatch not applicable for current selection");  //$NON-NLS-1$ //$NON-NLS-2$
+	}
+
+	public void run(RefactoringWizard wizard, Shell parent, String dialogTitle) {
+		try {
+			RefactoringWizardOpenOperation operation= new RefactoringWizardOpenOperation(wizard);
+			operation.run(parent, dialogTitle);
+		} catch (InterruptedException exception) {
+			// Do nothing
+		}
+	}
+
+	/**
+	 * @see IActionDelegate#selectionChanged(IAction, ISelection)
+	 */
+	public void selectionChanged(IAction action, ISelection selection) {
+		fElements= null;
+		if (selection instanceof IStructuredSelection) {
+			Object[] selected= ((IStructuredSelection) selection).toArray();
+			List<IJavaElement> elements= new ArrayList<IJavaElement>();
+			for (int i= 0; i < selected.length; i++) {
+				if (selected[i] instanceof IWorkingSet) {
+					IAdaptable[] contents= ((IWorkingSet) selected[i]).getElements();
+					for (int j= 0; j < contents.length; j++) {
+						addJavaElement(contents[j], elements);
+					}
+				} else if (selected[i] instanceof IAdaptable) {
+					addJavaElement((IAdaptable) selected[i], elements);
+				}
+			}
+			fElements= elements.toArray(new IJavaElement[elements.size()]);
+		}
+	}
+
+	private void addJavaElement(IAdaptable adaptable, List<IJavaElement> elements) {
+		IJavaElement element= (IJavaElement) adaptable.getAdapter(IJavaElement.class);
+		if (element != null && element.getElementType() <= IJavaElement.COMPILATION_UNIT && element.getElementType() != IJavaElement.JAVA_MODEL) {
+			elements.add(element);
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package org.eclipse.jdt.ui.actions;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.eclipse.swt.widgets.Shell;
+
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+
+import org.eclipse.ui.IActionDelegate;
+import org.eclipse.ui.IObjectActionDelegate;
+import org.eclipse.ui.IWorkbenchPart;
+
+import org.eclipse.ltk.ui.refactoring.RefactoringWizard;
+import org.eclipse.ltk.ui.refactoring.RefactoringWizardOpenOperation;
+
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.Signature;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.ConvertToConcurrentCollectionRefactoring;
+
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+import org.eclipse.jdt.internal.ui.refactoring.concurrency.ConvertToConcurrentCollectionWizard;
+
+public class ConvertToConcurrentCollectionAction implements IObjectActionDelegate {
+
+	private static final Set<String> COLLECTION_TYPES= new HashSet<String>(Arrays.asList(new String[] {
+			"ArrayList", "LinkedList", "TreeMap", "HashSet", "PriorityQueue", //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$
+			"List", "Queue", "Deque", "Map", "SortedMap", "NavigableMap", "Set", "Collection" })); //$NON-NLS-1$ //$NON-NLS-2$ //$NON-NLS-3$ //$NON-NLS-4$ //$NON-NLS-5$ //$NON-NLS-6$ //$NON-NLS-7$ //$NON-NLS-8$
+
+	private Shell shell;
+	private IField fField;
+
+	public ConvertToConcurrentCollectionAction() {
+		super();
+	}
+
+	/**
+	 * @see IObjectActionDelegate#setActivePart(IAction, IWorkbenchPart)
+	 */
+	public void setActivePart(IAction action, IWorkbenchPart targetPart) {
+		shell = targetPart.getSite().getShell();
+	}
+
+	/**
+	 * @see IActionDelegate#run(IAction)
+	 */
+	public void run(IAction action) {
+		try {
+			if (fField != null && shell != null && isConvertToConcurrentCollectionAvailable()) {
+				ConvertToConcurrentCollectionRefactoring refactoring= new ConvertToConcurrentCollectionRefactoring(fField);
+				run(new ConvertToConcurrentCollectionWizard(refactoring, "Convert to Concurrent Collection"), shell, "Convert to Concurrent Collection"); //$NON-NLS-1$ //$NON-NLS-2$
+			} else
+				MessageDialog.openError(shell, "Error ConvertToConcurrentCollection", "ConvertToConcurrentCollection not applicable for current selection"); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (JavaModelException e) {
+			JavaPlugin.log(e);
+		}
+	}
+
+	public void run(RefactoringWizard wizard, Shell parent, String dialogTitle) {
+		try {
+			RefactoringWizardOpenOperation operation= new RefactoringWizardOpenOperation(wizard);
+			operation.run(parent, dialogTitle);
+		} catch (InterruptedException exception) {
+			// Do nothing
+		}
+	}
+
+	/**
+	 * @see IActionDelegate#selectionChanged(IAction, ISelection)
+	 */
+	public void selectionChanged(IAction action, ISelection selection) {
+		fField= null;
+		if (selection instanceof IStructuredSelection) {
+			Object[] elements= ((IStructuredSelection) selection).toArray();
+			if (elements.length == 1 && elements[0] instanceof IField) {
+				fField= (IField) elements[0];
+			}
+		}
+	}
+
+	private boolean isConvertToConcurrentCollectionAvailable() throws JavaModelException {
+		if (fField == null || !fField.exists() || !fField.isStructureKnown() || fField.getDeclaringType().isAnnotation())
+			return false;
+		// the collection class is only known after parsing, so accept the collection types it can be declared with
+		String type= Signature.getSimpleName(Signature.toString(Signature.getTypeErasure(fField.getTypeSignature())));
+		return COLLECTION_TYPES.contains(type);
+	}
+
+}
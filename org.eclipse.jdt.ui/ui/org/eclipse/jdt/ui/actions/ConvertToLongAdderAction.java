@@ -0,0 +1,87 @@
+package org.eclipse.jdt.ui.actions;
+
+import org.eclipse.swt.widgets.Shell;
+
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+
+import org.eclipse.ui.IActionDelegate;
+import org.eclipse.ui.IObjectActionDelegate;
+import org.eclipse.ui.IWorkbenchPart;
+
+import org.eclipse.ltk.ui.refactoring.RefactoringWizard;
+import org.eclipse.ltk.ui.refactoring.RefactoringWizardOpenOperation;
+
+import org.eclipse.jdt.core.IField;
+import org.eclipse.jdt.core.JavaModelException;
+import org.eclipse.jdt.core.Signature;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.ConvertToLongAdderRefactoring;
+
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+import org.eclipse.jdt.internal.ui.refactoring.concurrency.ConvertToLongAdderWizard;
+
+public class ConvertToLongAdderAction implements IObjectActionDelegate {
+
+	private Shell shell;
+	private IField fField;
+
+	public ConvertToLongAdderAction() {
+		super();
+	}
+
+	/**
+	 * @see IObjectActionDelegate#setActivePart(IAction, IWorkbenchPart)
+	 */
+	public void setActivePart(IAction action, IWorkbenchPart targetPart) {
+		shell = targetPart.getSite().getShell();
+	}
+
+	/**
+	 * @see IActionDelegate#run(IAction)
+	 */
+	public void run(IAction action) {
+		try {
+			if (fField != null && shell != null && isConvertToLongAdderAvailable()) {
+				ConvertToLongAdderRefactoring refactoring= new ConvertToLongAdderRefactoring(fField);
+				run(new ConvertToLongAdderWizard(refactoring, "Convert to LongAdder"), shell, "Convert to LongAdder"); //$NON-NLS-1$ //$NON-NLS-2$
+			} else
+				MessageDialog.openError(shell, "Error ConvertToLongAdder", "ConvertToLongAdder not applicable for current selection"); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (JavaModelException e) {
+			JavaPlugin.log(e);
+		}
+	}
+
+	public void run(RefactoringWizard wizard, Shell parent, String dialogTitle) {
+		try {
+			RefactoringWizardOpenOperation operation= new RefactoringWizardOpenOperation(wizard);
+			operation.run(parent, dialogTitle);
+		} catch (InterruptedException exception) {
+			// Do nothing
+		}
+	}
+
+	/**
+	 * @see IActionDelegate#selectionChanged(IAction, ISelection)
+	 */
+	public void selectionChanged(IAction action, ISelection selection) {
+		fField= null;
+		if (selection instanceof IStructuredSelection) {
+			Object[] elements= ((IStructuredSelection) selection).toArray();
+			if (elements.length == 1 && elements[0] instanceof IField) {
+				fField= (IField) elements[0];
+			}
+		}
+	}
+
+	private boolean isConvertToLongAdderAvailable() throws JavaModelException {
+		if (fField == null || !fField.exists() || !fField.isStructureKnown() || fField.getDeclaringType().isAnnotation())
+			return false;
+		String signature= fField.getTypeSignature();
+		// long, or AtomicLong whether or not it is qualified in the source
+		return Signature.SIG_LONG.equals(signature) || "AtomicLong".equals(Signature.getSimpleName(Signature.toString(signature))); //$NON-NLS-1$
+	}
+
+}
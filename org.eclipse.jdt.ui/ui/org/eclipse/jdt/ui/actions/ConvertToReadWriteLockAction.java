@@ -0,0 +1,84 @@
+package org.eclipse.jdt.ui.actions;
+
+import org.eclipse.swt.widgets.Shell;
+
+import org.eclipse.jface.action.IAction;
+import org.eclipse.jface.dialogs.MessageDialog;
+import org.eclipse.jface.viewers.ISelection;
+import org.eclipse.jface.viewers.IStructuredSelection;
+
+import org.eclipse.ui.IActionDelegate;
+import org.eclipse.ui.IObjectActionDelegate;
+import org.eclipse.ui.IWorkbenchPart;
+
+import org.eclipse.ltk.ui.refactoring.RefactoringWizard;
+import org.eclipse.ltk.ui.refactoring.RefactoringWizardOpenOperation;
+
+import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaModelException;
+
+import org.eclipse.jdt.internal.corext.refactoring.concurrency.ConvertToReadWriteLockRefactoring;
+
+import org.eclipse.jdt.internal.ui.JavaPlugin;
+import org.eclipse.jdt.internal.ui.refactoring.concurrency.ConvertToReadWriteLockWizard;
+
+public class ConvertToReadWriteLockAction implements IObjectActionDelegate {
+
+	private Shell shell;
+	private IType fType;
+
+	public ConvertToReadWriteLockAction() {
+		super();
+	}
+
+	/**
+	 * @see IObjectActionDelegate#setActivePart(IAction, IWorkbenchPart)
+	 */
+	public void setActivePart(IAction action, IWorkbenchPart targetPart) {
+		shell = targetPart.getSite().getShell();
+	}
+
+	/**
+	 * @see IActionDelegate#run(IAction)
+	 */
+	public void run(IAction action) {
+		try {
+			if (fType != null && shell != null && isConvertToReadWriteLockAvailable()) {
+				ConvertToReadWriteLockRefactoring refactoring= new ConvertToReadWriteLockRefactoring(fType);
+				run(new ConvertToReadWriteLockWizard(refactoring, "Convert to Read-Write Lock"), shell, "Convert to Read-Write Lock"); //$NON-NLS-1$ //$NON-NLS-2$
+			} else
+				MessageDialog.openError(shell, "Error ConvertToReadWriteLock", "ConvertToReadWriteLock not applicable for current selection"); //$NON-NLS-1$ //$NON-NLS-2$
+		} catch (JavaModelException e) {
+			JavaPlugin.log(e);
+		}
+	}
+
+	public void run(RefactoringWizard wizard, Shell parent, String dialogTitle) {
+		try {
+			RefactoringWizardOpenOperation operation= new RefactoringWizardOpenOperation(wizard);
+			operation.run(parent, dialogTitle);
+		} catch (InterruptedException exception) {
+			// Do nothing
+		}
+	}
+
+	/**
+	 * @see IActionDelegate#selectionChanged(IAction, ISelection)
+	 */
+	public void selectionChanged(IAction action, ISelection selection) {
+		fType= null;
+		if (selection instanceof IStructuredSelection) {
+			Object[] elements= ((IStructuredSelection) selection).toArray();
+			if (elements.length == 1 && elements[0] instanceof IType) {
+				fType= (IType) elements[0];
+			} else if (elements.length == 1 && elements[0] instanceof ICompilationUnit) {
+				fType= ((ICompilationUnit) elements[0]).findPrimaryType();
+			}
+		}
+	}
+
+	private boolean isConvertToReadWriteLockAvailable() throws JavaModelException {
+		return fType != null && fType.exists() && fType.isStructureKnown() && !fType.isBinary() && fType.isClass();
+	}
+}
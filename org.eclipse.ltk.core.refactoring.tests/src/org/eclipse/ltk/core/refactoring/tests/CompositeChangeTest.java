@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ltk.core.refactoring.tests;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.CompositeChange;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+
+
+public class CompositeChangeTest extends TestCase {
+
+	private static class TestChange extends Change {
+		private final String fMessage;
+		private final int fSeverity;
+		private final boolean fFail;
+		int fInitializeCalls;
+		int fIsValidCalls;
+
+		public TestChange(String message, int severity, boolean fail) {
+			fMessage= message;
+			fSeverity= severity;
+			fFail= fail;
+		}
+
+		public String getName() {
+			return "test change";
+		}
+
+		public void initializeValidationData(IProgressMonitor pm) {
+			fInitializeCalls++;
+		}
+
+		public RefactoringStatus isValid(IProgressMonitor pm) throws CoreException, OperationCanceledException {
+			fIsValidCalls++;
+			if (fFail)
+				throw new CoreException(new Status(IStatus.ERROR, "org.eclipse.ltk.core.refactoring.tests", getName()));
+			RefactoringStatus status= new RefactoringStatus();
+			if (fSeverity != RefactoringStatus.OK)
+				status.addEntry(fSeverity, fMessage, null, null, 0);
+			return status;
+		}
+
+		public Change perform(IProgressMonitor pm) throws CoreException {
+			return null;
+		}
+
+		public Object getModifiedElement() {
+			return null;
+		}
+	}
+
+	private static final int CHILDREN= 200;
+
+	private TestChange[] createChildren(int fatalIndex, int disabledIndex) {
+		TestChange[] children= new TestChange[CHILDREN];
+		for (int i= 0; i < CHILDREN; i++) {
+			int severity= i % 3 == 0 ? RefactoringStatus.WARNING : RefactoringStatus.OK;
+			if (i == fatalIndex)
+				severity= RefactoringStatus.FATAL;
+			children[i]= new TestChange(String.valueOf(i), severity, false);
+		}
+		if (disabledIndex != -1)
+			children[disabledIndex].setEnabled(false);
+		return children;
+	}
+
+	private RefactoringStatus validate(Change[] children, boolean parallel) throws CoreException {
+		CompositeChange change= new CompositeChange("composite");
+		change.addAll(children);
+		change.add(new CompositeChange("nested", new Change[] { new TestChange("nested", RefactoringStatus.INFO, false) }));
+		change.setParallelValidation(parallel);
+		change.initializeValidationData(new NullProgressMonitor());
+		return change.isValid(new NullProgressMonitor());
+	}
+
+	private void assertSameStatus(RefactoringStatus expected, RefactoringStatus actual) {
+		assertEquals(expected.getSeverity(), actual.getSeverity());
+		assertEquals(expected.getEntries().length, actual.getEntries().length);
+		for (int i= 0; i < expected.getEntries().length; i++) {
+			assertEquals(expected.getEntries()[i].getSeverity(), actual.getEntries()[i].getSeverity());
+			assertEquals(expected.getEntries()[i].getMessage(), actual.getEntries()[i].getMessage());
+		}
+	}
+
+	public void testParallelValidation() throws Exception {
+		RefactoringStatus sequential= validate(createChildren(-1, 5), false);
+		TestChange[] children= createChildren(-1, 5);
+		RefactoringStatus parallel= validate(children, true);
+
+		assertSameStatus(sequential, parallel);
+		assertEquals(RefactoringStatus.WARNING, parallel.getSeverity());
+		assertEquals("nested", parallel.getEntries()[parallel.getEntries().length - 1].getMessage());
+		for (int i= 0; i < CHILDREN; i++) {
+			assertEquals(1, children[i].fInitializeCalls);
+			assertEquals(i == 5 ? 0 : 1, children[i].fIsValidCalls);
+		}
+	}
+
+	public void testParallelValidationFatalError() throws Exception {
+		RefactoringStatus sequential= validate(createChildren(50, -1), false);
+		TestChange[] children= createChildren(50, -1);
+		RefactoringStatus parallel= validate(children, true);
+
+		assertSameStatus(sequential, parallel);
+		assertEquals(RefactoringStatus.FATAL, parallel.getSeverity());
+		assertEquals(RefactoringStatus.FATAL, parallel.getEntries()[parallel.getEntries().length - 1].getSeverity());
+		for (int i= 0; i <= 50; i++)
+			assertEquals(1, children[i].fIsValidCalls);
+	}
+
+	public void testParallelValidationException() throws Exception {
+		TestChange[] children= createChildren(-1, -1);
+		children[70]= new TestChange("70", RefactoringStatus.OK, true);
+		CompositeChange change= new CompositeChange("composite", children);
+		change.setParallelValidation(true);
+		try {
+			change.isValid(new NullProgressMonitor());
+		} catch (CoreException e) {
+			for (int i= 0; i <= 70; i++)
+				assertEquals(1, children[i].fIsValidCalls);
+			return; // expected
+		}
+		fail("exception of child must be rethrown");
+	}
+}
@@ -0,0 +1,188 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ltk.core.refactoring.tests;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.Status;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IFolder;
+import org.eclipse.core.resources.ResourcesPlugin;
+
+import org.eclipse.text.edits.DeleteEdit;
+import org.eclipse.text.edits.InsertEdit;
+import org.eclipse.text.edits.MultiTextEdit;
+import org.eclipse.text.edits.ReplaceEdit;
+
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.CompositeChange;
+import org.eclipse.ltk.core.refactoring.PerformChangeOperation;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.StreamingChange;
+import org.eclipse.ltk.core.refactoring.TextFileChange;
+import org.eclipse.ltk.core.refactoring.tests.util.SimpleTestProject;
+
+
+public class StreamingChangeTest extends TestCase {
+
+	private static final String CONTENT= "section one section two section three";
+
+	private static final int FILES= 10;
+
+	private SimpleTestProject fProject;
+	private IFile[] fFiles;
+
+	private class TestChange extends StreamingChange {
+		private final int fBatchSize;
+		private final int fFailingFile;
+		private int fNext;
+		int fBatches;
+
+		public TestChange(int batchSize) {
+			this(batchSize, -1);
+		}
+
+		public TestChange(int batchSize, int failingFile) {
+			super("streaming change");
+			fBatchSize= batchSize;
+			fFailingFile= failingFile;
+		}
+
+		protected Change[] createNextChanges(IProgressMonitor pm) throws CoreException {
+			if (fNext == fFiles.length)
+				return null;
+			fBatches++;
+			int count= Math.min(fBatchSize, fFiles.length - fNext);
+			Change[] result= new Change[count];
+			for (int i= 0; i < count; i++) {
+				if (fNext == fFailingFile) {
+					result[i]= new FailingChange();
+					fNext++;
+					continue;
+				}
+				TextFileChange change= new TextFileChange("", fFiles[fNext++]);
+				MultiTextEdit root= new MultiTextEdit();
+				root.addChild(new ReplaceEdit(8, 3, "1"));
+				root.addChild(new InsertEdit(19, "-"));
+				root.addChild(new DeleteEdit(24, 8));
+				change.setEdit(root);
+				result[i]= change;
+			}
+			return result;
+		}
+	}
+
+	private static class FailingChange extends Change {
+		public String getName() {
+			return "failing change";
+		}
+		public void initializeValidationData(IProgressMonitor pm) {
+		}
+		public RefactoringStatus isValid(IProgressMonitor pm) {
+			return new RefactoringStatus();
+		}
+		public Change perform(IProgressMonitor pm) throws CoreException {
+			throw new CoreException(new Status(IStatus.ERROR, "org.eclipse.ltk.core.refactoring.tests", "perform failed"));
+		}
+		public Object getModifiedElement() {
+			return null;
+		}
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		fProject= new SimpleTestProject();
+		IFolder folder= fProject.createFolder("test");
+		fFiles= new IFile[FILES];
+		for (int i= 0; i < FILES; i++)
+			fFiles[i]= fProject.createFile(folder, "test" + i + ".txt", CONTENT);
+	}
+
+	protected void tearDown() throws Exception {
+		fProject.delete();
+		super.tearDown();
+	}
+
+	public void testPerformAndUndo() throws Exception {
+		TestChange change= new TestChange(3);
+		PerformChangeOperation operation= new PerformChangeOperation(change);
+		ResourcesPlugin.getWorkspace().run(operation, null);
+		assertTrue(operation.changeExecuted());
+		assertEquals(4, change.fBatches);
+		for (int i= 0; i < FILES; i++)
+			assertEquals("section 1 section- two three", fProject.getContent(fFiles[i]));
+
+		Change undo= operation.getUndoChange();
+		assertNotNull(undo);
+		PerformChangeOperation undoOperation= new PerformChangeOperation(undo);
+		ResourcesPlugin.getWorkspace().run(undoOperation, null);
+		assertTrue(undoOperation.changeExecuted());
+		for (int i= 0; i < FILES; i++)
+			assertEquals(CONTENT, fProject.getContent(fFiles[i]));
+
+		Change redo= undoOperation.getUndoChange();
+		assertNotNull(redo);
+		PerformChangeOperation redoOperation= new PerformChangeOperation(redo);
+		ResourcesPlugin.getWorkspace().run(redoOperation, null);
+		for (int i= 0; i < FILES; i++)
+			assertEquals("section 1 section- two three", fProject.getContent(fFiles[i]));
+		redoOperation.getUndoChange().dispose();
+	}
+
+	public void testUndoUntilException() throws Exception {
+		TestChange change= new TestChange(3, 5);
+		try {
+			change.perform(new NullProgressMonitor());
+			fail("perform should fail");
+		} catch (CoreException e) {
+			// expected
+		}
+		assertEquals(2, change.fBatches);
+		assertPerformedUntil(5);
+
+		Change undo= change.getUndoUntilException();
+		assertNotNull(undo);
+		PerformChangeOperation undoOperation= new PerformChangeOperation(undo);
+		ResourcesPlugin.getWorkspace().run(undoOperation, null);
+		assertTrue(undoOperation.changeExecuted());
+		assertPerformedUntil(0);
+		undoOperation.getUndoChange().dispose();
+	}
+
+	public void testUndoUntilExceptionInCompositeChange() throws Exception {
+		CompositeChange change= new CompositeChange("composite change", new Change[] { new TestChange(3, 8) });
+		try {
+			change.perform(new NullProgressMonitor());
+			fail("perform should fail");
+		} catch (CoreException e) {
+			// expected
+		}
+		assertPerformedUntil(8);
+
+		Change undo= change.getUndoUntilException();
+		assertNotNull(undo);
+		PerformChangeOperation undoOperation= new PerformChangeOperation(undo);
+		ResourcesPlugin.getWorkspace().run(undoOperation, null);
+		assertTrue(undoOperation.changeExecuted());
+		assertPerformedUntil(0);
+		undoOperation.getUndoChange().dispose();
+	}
+
+	private void assertPerformedUntil(int end) throws Exception {
+		for (int i= 0; i < FILES; i++)
+			assertEquals(i < end ? "section 1 section- two three" : CONTENT, fProject.getContent(fFiles[i]));
+	}
+}
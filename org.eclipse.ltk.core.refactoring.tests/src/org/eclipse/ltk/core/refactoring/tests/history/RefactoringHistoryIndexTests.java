@@ -0,0 +1,150 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ltk.core.refactoring.tests.history;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileStore;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.NullProgressMonitor;
+
+import org.eclipse.ltk.core.refactoring.RefactoringDescriptorProxy;
+import org.eclipse.ltk.core.refactoring.tests.FileSystemHelper;
+import org.eclipse.ltk.internal.core.refactoring.history.DefaultRefactoringDescriptorProxy;
+import org.eclipse.ltk.internal.core.refactoring.history.RefactoringHistoryIndex;
+import org.eclipse.ltk.internal.core.refactoring.history.RefactoringHistoryManager;
+import org.eclipse.ltk.internal.core.refactoring.history.RefactoringHistoryService;
+
+public class RefactoringHistoryIndexTests extends TestCase {
+
+	private static final long WEEK= 7L * 24 * 60 * 60 * 1000;
+
+	private IFileStore fStore;
+
+	private static void readTree(IFileStore store, Collection collection) throws Exception {
+		IFileStore[] children= store.childStores(EFS.NONE, null);
+		for (int i= 0; i < children.length; i++) {
+			if (children[i].fetchInfo().isDirectory()) {
+				readTree(children[i], collection);
+			} else if (children[i].getName().equals(RefactoringHistoryService.NAME_INDEX_FILE)) {
+				InputStream stream= children[i].openInputStream(EFS.NONE, null);
+				try {
+					RefactoringDescriptorProxy[] proxies= RefactoringHistoryManager.readRefactoringDescriptorProxies(stream, null, 0, Long.MAX_VALUE);
+					for (int j= 0; j < proxies.length; j++)
+						collection.add(proxies[j]);
+				} finally {
+					stream.close();
+				}
+			}
+		}
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		fStore= EFS.getLocalFileSystem().getStore(FileSystemHelper.getRandomLocation(FileSystemHelper.getTempDir()));
+		fStore.mkdir(EFS.NONE, null);
+	}
+
+	protected void tearDown() throws Exception {
+		fStore.delete(EFS.NONE, null);
+		super.tearDown();
+	}
+
+	private RefactoringDescriptorProxy[] query(long start, long end) throws CoreException {
+		List list= new ArrayList();
+		RefactoringHistoryIndex.getIndex(fStore).readRefactoringDescriptorProxies("project", list, start, end, new NullProgressMonitor());
+		return (RefactoringDescriptorProxy[]) list.toArray(new RefactoringDescriptorProxy[list.size()]);
+	}
+
+	private IPath writeIndexFile(long[] stamps) throws Exception {
+		RefactoringDescriptorProxy[] proxies= new RefactoringDescriptorProxy[stamps.length];
+		for (int i= 0; i < stamps.length; i++)
+			proxies[i]= new DefaultRefactoringDescriptorProxy("refactoring " + stamps[i], null, stamps[i]);
+		IPath path= RefactoringHistoryManager.stampToPath(stamps[0]).append(RefactoringHistoryService.NAME_INDEX_FILE);
+		IFileStore file= fStore.getFileStore(path);
+		file.getParent().mkdir(EFS.NONE, null);
+		OutputStream stream= file.openOutputStream(EFS.NONE, null);
+		try {
+			RefactoringHistoryManager.writeRefactoringDescriptorProxies(stream, proxies);
+		} finally {
+			stream.close();
+		}
+		return path;
+	}
+
+	private void assertStamps(long[] expected, RefactoringDescriptorProxy[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i= 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i].getTimeStamp());
+			assertEquals("refactoring " + expected[i], actual[i].getDescription());
+			assertEquals("project", actual[i].getProject());
+		}
+	}
+
+	public void testRangeQueries() throws Exception {
+		long base= 1000 * WEEK;
+		writeIndexFile(new long[] { base + 30, base + 10, base + 20 });
+		writeIndexFile(new long[] { base + WEEK + 5, base + WEEK + 15 });
+
+		assertStamps(new long[] { base + 10, base + 20, base + 30, base + WEEK + 5, base + WEEK + 15 }, query(0, Long.MAX_VALUE));
+		assertStamps(new long[] { base + 20, base + 30, base + WEEK + 5 }, query(base + 20, base + WEEK + 5));
+		assertStamps(new long[] { base + 20, base + 30 }, query(base + 11, base + 31));
+		assertStamps(new long[0], query(base + 31, base + WEEK + 4));
+		assertStamps(new long[0], query(base + 2 * WEEK, Long.MAX_VALUE));
+	}
+
+	public void testUpdates() throws Exception {
+		long base= 1200 * WEEK;
+		IPath first= writeIndexFile(new long[] { base + 1, base + 2 });
+		IPath second= writeIndexFile(new long[] { base + WEEK + 1 });
+		assertStamps(new long[] { base + 1, base + 2, base + WEEK + 1 }, query(0, Long.MAX_VALUE));
+
+		writeIndexFile(new long[] { base + 1, base + 2, base + 3 });
+		RefactoringHistoryIndex.indexFileChanged(fStore, first);
+		writeIndexFile(new long[] { base + 2 * WEEK + 1 });
+		fStore.getFileStore(second).delete(EFS.NONE, null);
+		assertStamps(new long[] { base + 1, base + 2, base + 3, base + 2 * WEEK + 1 }, query(0, Long.MAX_VALUE));
+		assertStamps(new long[] { base + 3, base + 2 * WEEK + 1 }, query(base + 3, Long.MAX_VALUE));
+	}
+
+	public void testManyIndexFiles() throws Exception {
+		final int weeks= 50;
+		final int perWeek= 20;
+		long base= 1500 * WEEK;
+		for (int week= 0; week < weeks; week++) {
+			long[] stamps= new long[perWeek];
+			for (int i= 0; i < perWeek; i++)
+				stamps[i]= base + week * WEEK + i * 1000;
+			writeIndexFile(stamps);
+		}
+
+		List tree= new ArrayList();
+		readTree(fStore, tree);
+		assertEquals(weeks * perWeek, tree.size());
+		assertEquals(weeks * perWeek, query(0, Long.MAX_VALUE).length);
+
+		for (int week= 0; week < weeks; week+= 5) {
+			RefactoringDescriptorProxy[] proxies= query(base + week * WEEK, base + week * WEEK + WEEK - 1);
+			assertEquals(perWeek, proxies.length);
+			assertEquals(base + week * WEEK, proxies[0].getTimeStamp());
+			assertEquals(base + week * WEEK + (perWeek - 1) * 1000, proxies[perWeek - 1].getTimeStamp());
+		}
+	}
+}
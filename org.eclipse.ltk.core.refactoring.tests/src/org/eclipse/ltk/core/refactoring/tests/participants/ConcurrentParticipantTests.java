@@ -0,0 +1,205 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ltk.core.refactoring.tests.participants;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.CompositeChange;
+import org.eclipse.ltk.core.refactoring.NullChange;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+import org.eclipse.ltk.core.refactoring.RefactoringStatusEntry;
+import org.eclipse.ltk.core.refactoring.participants.CheckConditionsContext;
+import org.eclipse.ltk.core.refactoring.participants.IConcurrentParticipant;
+import org.eclipse.ltk.core.refactoring.participants.RefactoringParticipant;
+import org.eclipse.ltk.core.refactoring.participants.RenameArguments;
+import org.eclipse.ltk.core.refactoring.participants.RenameParticipant;
+import org.eclipse.ltk.core.refactoring.participants.RenameProcessor;
+import org.eclipse.ltk.core.refactoring.participants.RenameRefactoring;
+import org.eclipse.ltk.core.refactoring.participants.SharableParticipants;
+
+public class ConcurrentParticipantTests extends TestCase {
+
+	private static final int FATAL= 1;
+	private static final int FAILING= 2;
+
+	private Thread fTestThread;
+
+	private class TestParticipant extends RenameParticipant {
+		private final int fIndex;
+		private final long fDelay;
+		private final int fOptions;
+		boolean fChecked;
+		boolean fOnTestThread;
+
+		public TestParticipant(int index, long delay, int options) {
+			fIndex= index;
+			fDelay= delay;
+			fOptions= options;
+		}
+
+		protected boolean initialize(Object element) {
+			return true;
+		}
+
+		public String getName() {
+			return "participant " + fIndex;
+		}
+
+		public RefactoringStatus checkConditions(IProgressMonitor pm, CheckConditionsContext context) throws OperationCanceledException {
+			fChecked= true;
+			fOnTestThread= Thread.currentThread() == fTestThread;
+			sleep();
+			if ((fOptions & FAILING) != 0)
+				throw new IllegalStateException();
+			if ((fOptions & FATAL) != 0)
+				return RefactoringStatus.createFatalErrorStatus(getName());
+			return RefactoringStatus.createInfoStatus(getName());
+		}
+
+		public Change createChange(IProgressMonitor pm) throws CoreException, OperationCanceledException {
+			sleep();
+			return new NullChange(getName());
+		}
+
+		private void sleep() {
+			try {
+				Thread.sleep(fDelay);
+			} catch (InterruptedException e) {
+				fail();
+			}
+		}
+	}
+
+	private class ConcurrentTestParticipant extends TestParticipant implements IConcurrentParticipant {
+		public ConcurrentTestParticipant(int index, long delay, int options) {
+			super(index, delay, options);
+		}
+	}
+
+	private static class TestProcessor extends RenameProcessor {
+		private final Object fElement= new Object();
+		private final TestParticipant[] fParticipants;
+
+		public TestProcessor(TestParticipant[] participants) {
+			fParticipants= participants;
+		}
+
+		public Object[] getElements() {
+			return new Object[] { fElement };
+		}
+
+		public String getIdentifier() {
+			return TestProcessor.class.getName();
+		}
+
+		public String getProcessorName() {
+			return TestProcessor.class.getName();
+		}
+
+		public boolean isApplicable() throws CoreException {
+			return true;
+		}
+
+		public RefactoringStatus checkInitialConditions(IProgressMonitor pm) throws CoreException, OperationCanceledException {
+			return new RefactoringStatus();
+		}
+
+		public RefactoringStatus checkFinalConditions(IProgressMonitor pm, CheckConditionsContext context) throws CoreException, OperationCanceledException {
+			return new RefactoringStatus();
+		}
+
+		public Change createChange(IProgressMonitor pm) throws CoreException, OperationCanceledException {
+			return new NullChange("processor");
+		}
+
+		public RefactoringParticipant[] loadParticipants(RefactoringStatus status, SharableParticipants sharedParticipants) throws CoreException {
+			for (int i= 0; i < fParticipants.length; i++)
+				fParticipants[i].initialize(this, fElement, new RenameArguments("new", true));
+			return fParticipants;
+		}
+	}
+
+	protected void setUp() throws Exception {
+		super.setUp();
+		fTestThread= Thread.currentThread();
+	}
+
+	private static void assertEntries(String[] expected, RefactoringStatus status) {
+		RefactoringStatusEntry[] entries= status.getEntries();
+		assertEquals(expected.length, entries.length);
+		for (int i= 0; i < expected.length; i++)
+			assertEquals(expected[i], entries[i].getMessage());
+	}
+
+	private static void assertChanges(String[] expected, Change change) {
+		Change[] children= ((CompositeChange) change).getChildren();
+		assertEquals(expected.length, children.length);
+		for (int i= 0; i < expected.length; i++)
+			assertEquals(expected[i], children[i].getName());
+	}
+
+	public void testMergeOrder() throws Exception {
+		TestParticipant[] participants= new TestParticipant[] {
+			new ConcurrentTestParticipant(0, 200, 0),
+			new TestParticipant(1, 0, 0),
+			new ConcurrentTestParticipant(2, 100, 0),
+			new ConcurrentTestParticipant(3, 0, 0)
+		};
+		RenameRefactoring refactoring= new RenameRefactoring(new TestProcessor(participants));
+		assertTrue(refactoring.checkInitialConditions(new NullProgressMonitor()).isOK());
+		RefactoringStatus status= refactoring.checkFinalConditions(new NullProgressMonitor());
+		assertEntries(new String[] { "participant 0", "participant 1", "participant 2", "participant 3" }, status);
+		assertFalse(participants[0].fOnTestThread);
+		assertTrue(participants[1].fOnTestThread);
+		assertFalse(participants[2].fOnTestThread);
+		assertFalse(participants[3].fOnTestThread);
+
+		Change change= refactoring.createChange(new NullProgressMonitor());
+		assertChanges(new String[] { "processor", "participant 0", "participant 1", "participant 2", "participant 3" }, change);
+	}
+
+	public void testFatalError() throws Exception {
+		TestParticipant[] participants= new TestParticipant[] {
+			new TestParticipant(0, 0, 0),
+			new ConcurrentTestParticipant(1, 100, FATAL),
+			new ConcurrentTestParticipant(2, 0, 0),
+			new TestParticipant(3, 0, 0)
+		};
+		RenameRefactoring refactoring= new RenameRefactoring(new TestProcessor(participants));
+		RefactoringStatus status= refactoring.checkFinalConditions(new NullProgressMonitor());
+		assertTrue(status.hasFatalError());
+		assertEntries(new String[] { "participant 0", "participant 1" }, status);
+		assertFalse(participants[3].fChecked);
+	}
+
+	public void testFailingParticipant() throws Exception {
+		TestParticipant[] participants= new TestParticipant[] {
+			new ConcurrentTestParticipant(0, 0, 0),
+			new ConcurrentTestParticipant(1, 100, FAILING),
+			new TestParticipant(2, 0, 0)
+		};
+		RenameRefactoring refactoring= new RenameRefactoring(new TestProcessor(participants));
+		RefactoringStatus status= refactoring.checkFinalConditions(new NullProgressMonitor());
+		assertEquals(RefactoringStatus.ERROR, status.getSeverity());
+		assertEquals(3, status.getEntries().length);
+		assertEquals("participant 0", status.getEntries()[0].getMessage());
+		assertEquals("participant 2", status.getEntries()[2].getMessage());
+
+		Change change= refactoring.createChange(new NullProgressMonitor());
+		assertChanges(new String[] { "processor", "participant 0", "participant 2" }, change);
+	}
+}
@@ -24,6 +24,7 @@ import org.eclipse.core.runtime.OperationCanceledException;
 import org.eclipse.core.runtime.SafeRunner;
 import org.eclipse.core.runtime.SubProgressMonitor;
 
+import org.eclipse.ltk.internal.core.refactoring.ParallelChangeValidator;
 import org.eclipse.ltk.internal.core.refactoring.RefactoringCoreMessages;
 import org.eclipse.ltk.internal.core.refactoring.RefactoringCorePlugin;
 
@@ -44,6 +45,7 @@ public class CompositeChange extends Change {
 	private String fName;
 	private List fChanges;
 	private boolean fIsSynthetic;
+	private boolean fParallelValidation;
 	private Change fUndoUntilException;
 
 	/**
@@ -93,6 +95,43 @@ public class CompositeChange extends Change {
 		fIsSynthetic= true;
 	}
 
+	/**
+	 * Returns whether this change validates its children in parallel.
+	 *
+	 * @return <code>true</code> if the children are validated in parallel;
+	 *  otherwise <code>false</code>
+	 *
+	 * @see #setParallelValidation(boolean)
+	 *
+	 * @since 3.6
+	 */
+	public boolean isParallelValidation() {
+		return fParallelValidation;
+	}
+
+	/**
+	 * Sets whether this change validates its children in parallel. If enabled,
+	 * <code>initializeValidationData</code> and <code>isValid</code> are sent to
+	 * the children that are not composite changes on a bounded number of worker
+	 * threads. Composite children are still processed by the calling thread. The
+	 * resulting status is the same as the one of a sequential validation. However,
+	 * children following a child whose status has a severity of <code>FATAL</code>
+	 * might already have been validated.
+	 * <p>
+	 * Parallel validation is disabled by default. It must only be enabled if the
+	 * validation of the children is thread safe and does not acquire scheduling
+	 * rules, since the caller may already own a rule. The setting has no effect
+	 * on {@link #perform(IProgressMonitor)}.
+	 * </p>
+	 *
+	 * @param parallel <code>true</code> to validate the children in parallel
+	 *
+	 * @since 3.6
+	 */
+	public void setParallelValidation(boolean parallel) {
+		fParallelValidation= parallel;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -203,13 +242,20 @@ public class CompositeChange extends Change {
 	 * {@inheritDoc}
 	 * <p>
 	 * The composite change sends <code>initializeValidationData</code> to all its
-	 * children.
+	 * children. The children are processed in parallel if parallel validation
+	 * is enabled.
 	 * </p>
 	 * <p>
 	 * Client are allowed to extend this method.
 	 * </p>
+	 *
+	 * @see #setParallelValidation(boolean)
 	 */
 	public void initializeValidationData(IProgressMonitor pm) {
+		if (fParallelValidation) {
+			ParallelChangeValidator.initializeValidationData(getChildren(), pm);
+			return;
+		}
 		pm.beginTask("", fChanges.size()); //$NON-NLS-1$
 		for (Iterator iter= fChanges.iterator(); iter.hasNext();) {
 			Change change= (Change)iter.next();
@@ -224,13 +270,19 @@ public class CompositeChange extends Change {
 	 * The composite change sends <code>isValid</code> to all its children
 	 * until the first one returns a status with a severity of <code>FATAL
 	 * </code>. If one of the children throws an exception the remaining children
-	 * will not receive the <code>isValid</code> call.
+	 * will not receive the <code>isValid</code> call. If parallel validation is
+	 * enabled, the children are validated concurrently, but their statuses are
+	 * merged in the same order.
 	 * </p>
 	 * <p>
 	 * Client are allowed to extend this method.
 	 * </p>
+	 *
+	 * @see #setParallelValidation(boolean)
 	 */
 	public RefactoringStatus isValid(IProgressMonitor pm) throws CoreException {
+		if (fParallelValidation)
+			return ParallelChangeValidator.isValid(getChildren(), pm);
 		RefactoringStatus result= new RefactoringStatus();
 		pm.beginTask("", fChanges.size()); //$NON-NLS-1$
 		for (Iterator iter= fChanges.iterator(); iter.hasNext() && !result.hasFatalError();) {
@@ -331,11 +383,14 @@ public class CompositeChange extends Change {
 			fUndoUntilException= null;
 			return;
 		}
+		Change partUndoChange= null;
 		if (failedChange instanceof CompositeChange) {
-			Change partUndoChange= ((CompositeChange)failedChange).getUndoUntilException();
-			if (partUndoChange != null) {
-				undos.add(partUndoChange);
-			}
+			partUndoChange= ((CompositeChange)failedChange).getUndoUntilException();
+		} else if (failedChange instanceof StreamingChange) {
+			partUndoChange= ((StreamingChange)failedChange).getUndoUntilException();
+		}
+		if (partUndoChange != null) {
+			undos.add(partUndoChange);
 		}
 		if (undos.size() == 0) {
 			fUndoUntilException= null;
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -47,6 +47,11 @@ import org.eclipse.ltk.internal.core.refactoring.NotCancelableProgressMonitor;
  * undo stack.
  * </p>
  * <p>
+ * Changes affecting a large number of files can be provided as a {@link StreamingChange}.
+ * Its children are created, performed and disposed in batches, which bounds the memory
+ * needed to perform the change.
+ * </p>
+ * <p>
  * The operation should be executed via the run method offered by
  * <code>IWorkspace</code> to achieve proper delta batching.
  * </p>
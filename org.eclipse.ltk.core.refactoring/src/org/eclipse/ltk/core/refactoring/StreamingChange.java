@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ltk.core.refactoring;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.ISafeRunnable;
+import org.eclipse.core.runtime.SafeRunner;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import org.eclipse.ltk.internal.core.refactoring.RefactoringCoreMessages;
+import org.eclipse.ltk.internal.core.refactoring.RefactoringCorePlugin;
+import org.eclipse.ltk.internal.core.refactoring.UndoSpillFile;
+
+/**
+ * A change whose children are created in batches while the change is performed.
+ * <p>
+ * Each batch is validated, performed and disposed before the next batch is requested,
+ * and the undo edits of text file changes are moved to a temporary file. The memory
+ * needed to perform a streaming change therefore depends on the size of the batches
+ * rather than on the number of affected files. The undo change is a regular
+ * {@link CompositeChange} and can be pushed onto an {@link IUndoManager}.
+ * </p>
+ * <p>
+ * Since the children do not exist before the change is performed, they are validated
+ * one by one right before they are performed. If a child's validation status has a
+ * severity of <code>FATAL</code>, the remaining children are not performed and a
+ * <code>CoreException</code> is thrown. In this case {@link #getUndoUntilException()}
+ * returns the undo of the children performed so far. A {@link CompositeChange}
+ * containing a streaming change includes this undo in its own
+ * {@link CompositeChange#getUndoUntilException()}.
+ * </p>
+ * <p>
+ * Clients may subclass this class.
+ * </p>
+ *
+ * @since 3.6
+ */
+public abstract class StreamingChange extends Change {
+
+	private String fName;
+	private Change fUndoUntilException;
+
+	/**
+	 * Creates a new streaming change with the given name.
+	 *
+	 * @param name the human readable name of the change. Will
+	 *  be used to display the change in the user interface
+	 */
+	public StreamingChange(String name) {
+		Assert.isNotNull(name);
+		fName= name;
+	}
+
+	/**
+	 * Creates the next batch of children. This method is called while the
+	 * change is performed, until it returns <code>null</code>.
+	 *
+	 * @param pm a progress monitor to report progress
+	 *
+	 * @return the next batch of changes or <code>null</code> if all changes
+	 *  have been created
+	 *
+	 * @throws CoreException if the changes could not be created
+	 */
+	protected abstract Change[] createNextChanges(IProgressMonitor pm) throws CoreException;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public String getName() {
+		return fName;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Object getModifiedElement() {
+		return null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The children are initialized right before they are performed.
+	 * </p>
+	 */
+	public void initializeValidationData(IProgressMonitor pm) {
+		pm.done();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * The batches do not exist before the change is performed. Creating them here
+	 * to validate them would keep all children in memory at once, which is what a
+	 * streaming change avoids, and they could be stale by the time they are
+	 * performed. So this method returns an OK status, and each child is validated
+	 * right before it is performed. A child with a <code>FATAL</code> validation
+	 * status makes {@link #perform(IProgressMonitor)} throw a <code>CoreException</code>,
+	 * and the children performed so far can be undone with the change returned by
+	 * {@link #getUndoUntilException()}.
+	 * </p>
+	 */
+	public RefactoringStatus isValid(IProgressMonitor pm) throws CoreException {
+		pm.done();
+		return new RefactoringStatus();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Change perform(IProgressMonitor pm) throws CoreException {
+		fUndoUntilException= null;
+		pm.beginTask("", IProgressMonitor.UNKNOWN); //$NON-NLS-1$
+		pm.setTaskName(RefactoringCoreMessages.CompositeChange_performingChangesTask_name);
+		UndoSpillFile spillFile= UndoSpillFile.create();
+		List undos= new ArrayList();
+		try {
+			for (Change[] changes= createNextChanges(new SubProgressMonitor(pm, 1)); changes != null; changes= createNextChanges(new SubProgressMonitor(pm, 1))) {
+				try {
+					for (int i= 0; i < changes.length; i++) {
+						Change change= changes[i];
+						if (!change.isEnabled())
+							continue;
+						change.initializeValidationData(new SubProgressMonitor(pm, 1));
+						RefactoringStatus status= change.isValid(new SubProgressMonitor(pm, 1));
+						if (status.hasFatalError())
+							throw new CoreException(status.getEntryWithHighestSeverity().toStatus());
+						Change undo= change.perform(new SubProgressMonitor(pm, 1));
+						if (undos != null) {
+							if (undo == null) {
+								disposeAll(undos);
+								undos= null;
+							} else {
+								undos.add(undo);
+								spill(undo, spillFile);
+							}
+						}
+					}
+				} finally {
+					for (int i= 0; i < changes.length; i++)
+						disposeChange(changes[i]);
+				}
+			}
+			return createUndoChange(undos);
+		} catch (CoreException e) {
+			fUndoUntilException= createUndoChange(undos);
+			throw e;
+		} catch (RuntimeException e) {
+			fUndoUntilException= createUndoChange(undos);
+			throw e;
+		} finally {
+			spillFile.release();
+			pm.done();
+		}
+	}
+
+	/**
+	 * Returns the undo of the children performed before an exception occurred
+	 * in {@link #perform(IProgressMonitor)}. Returns <code>null</code> if no
+	 * exception occurred or if one of the performed children does not provide
+	 * an undo.
+	 *
+	 * @return the undo change of the performed children or <code>null</code>
+	 */
+	public Change getUndoUntilException() {
+		return fUndoUntilException;
+	}
+
+	private Change createUndoChange(List undos) {
+		if (undos == null)
+			return null;
+		Collections.reverse(undos);
+		return new CompositeChange(getName(), (Change[]) undos.toArray(new Change[undos.size()]));
+	}
+
+	private static void spill(Change undo, UndoSpillFile spillFile) {
+		if (undo instanceof UndoTextFileChange) {
+			try {
+				((UndoTextFileChange) undo).spill(spillFile);
+			} catch (CoreException e) {
+				// keep the undo edit in memory
+				RefactoringCorePlugin.log(e);
+			}
+		} else if (undo instanceof CompositeChange) {
+			Change[] children= ((CompositeChange) undo).getChildren();
+			for (int i= 0; i < children.length; i++)
+				spill(children[i], spillFile);
+		}
+	}
+
+	private static void disposeAll(List changes) {
+		for (Iterator iter= changes.iterator(); iter.hasNext();)
+			disposeChange((Change) iter.next());
+	}
+
+	private static void disposeChange(final Change change) {
+		SafeRunner.run(new ISafeRunnable() {
+			public void run() throws Exception {
+				change.dispose();
+			}
+			public void handleException(Throwable exception) {
+				RefactoringCorePlugin.log(exception);
+			}
+		});
+	}
+}
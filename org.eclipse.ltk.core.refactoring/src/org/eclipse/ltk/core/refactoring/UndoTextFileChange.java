@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -30,6 +30,7 @@ import org.eclipse.text.edits.TextEdit;
 import org.eclipse.text.edits.UndoEdit;
 
 import org.eclipse.jface.text.BadLocationException;
+import org.eclipse.jface.text.Document;
 import org.eclipse.jface.text.IDocument;
 import org.eclipse.jface.text.link.LinkedModeModel;
 
@@ -38,6 +39,7 @@ import org.eclipse.ltk.internal.core.refactoring.Changes;
 import org.eclipse.ltk.internal.core.refactoring.ContentStamps;
 import org.eclipse.ltk.internal.core.refactoring.Lock;
 import org.eclipse.ltk.internal.core.refactoring.RefactoringCorePlugin;
+import org.eclipse.ltk.internal.core.refactoring.UndoSpillFile;
 
 /**
  * A change to perform the reverse change of a {@link TextFileChange}.
@@ -56,6 +58,8 @@ public class UndoTextFileChange extends Change {
 	private String fName;
 	private UndoEdit fUndo;
 	private IFile fFile;
+	private UndoSpillFile fSpillFile;
+	private long fSpillPosition;
 	private ContentStamp fContentStampToRestore;
 	private int fSaveMode;
 
@@ -278,7 +282,7 @@ public class UndoTextFileChange extends Change {
 	private UndoEdit doPerformEdits(IDocument document, boolean[] setContentStampSuccess) throws MalformedTreeException, BadLocationException, CoreException {
 		// perform the changes
 		LinkedModeModel.closeAllModels(document);
-		UndoEdit redo= fUndo.apply(document, TextEdit.CREATE_UNDO);
+		UndoEdit redo= getUndo().apply(document, TextEdit.CREATE_UNDO);
 
 		// try to restore the document content stamp
 		setContentStampSuccess[0]= ContentStamps.set(document, fContentStampToRestore);
@@ -292,6 +296,57 @@ public class UndoTextFileChange extends Change {
 		if (fValidationState != null) {
 			fValidationState.dispose();
 		}
+		if (fSpillFile != null) {
+			fSpillFile.release();
+			fSpillFile= null;
+		}
+	}
+
+	/**
+	 * Moves the undo edit of this change into the given spill file. The
+	 * edit is stored as a single replacement of the region which differs
+	 * between the current and the original content of the file.
+	 *
+	 * @param file the spill file
+	 *
+	 * @throws CoreException if the edit could not be stored
+	 */
+	/* package */ void spill(UndoSpillFile file) throws CoreException {
+		if (fSpillFile != null)
+			return;
+		ITextFileBufferManager manager= FileBuffers.getTextFileBufferManager();
+		manager.connect(fFile.getFullPath(), LocationKind.IFILE, null);
+		try {
+			String current= manager.getTextFileBuffer(fFile.getFullPath(), LocationKind.IFILE).getDocument().get();
+			IDocument document= new Document(current);
+			fUndo.copy().apply(document, TextEdit.NONE);
+			String original= document.get();
+
+			int max= Math.min(current.length(), original.length());
+			int prefix= 0;
+			while (prefix < max && current.charAt(prefix) == original.charAt(prefix))
+				prefix++;
+			int suffix= 0;
+			while (suffix < max - prefix && current.charAt(current.length() - 1 - suffix) == original.charAt(original.length() - 1 - suffix))
+				suffix++;
+
+			fSpillPosition= file.write(prefix, current.length() - prefix - suffix, original.substring(prefix, original.length() - suffix));
+			file.acquire();
+			fSpillFile= file;
+			fUndo= null;
+		} catch (BadLocationException e) {
+			throw Changes.asCoreException(e);
+		} catch (MalformedTreeException e) {
+			throw Changes.asCoreException(e);
+		} finally {
+			manager.disconnect(fFile.getFullPath(), LocationKind.IFILE, null);
+		}
+	}
+
+	private TextEdit getUndo() throws CoreException {
+		if (fSpillFile != null)
+			return fSpillFile.read(fSpillPosition);
+		return fUndo;
 	}
 
 	private boolean needsSaving() {
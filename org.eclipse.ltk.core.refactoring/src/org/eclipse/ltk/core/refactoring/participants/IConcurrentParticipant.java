@@ -0,0 +1,43 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ltk.core.refactoring.participants;
+
+/**
+ * A tagging interface to mark a {@link RefactoringParticipant} as thread-safe. The
+ * {@link ProcessorBasedRefactoring} calls <code>checkConditions</code>, <code>createPreChange</code>
+ * and <code>createChange</code> of participants tagged with this interface on worker threads,
+ * concurrently with the other participants. The results of all participants are merged in the
+ * order in which the participants have been loaded, so the outcome does not depend on the
+ * order in which the participants finish.
+ * <p>
+ * A concurrent participant must synchronize on the refactoring returned by
+ * <code>getProcessor().getRefactoring()</code> while it accesses state which is shared with
+ * other participants, namely the {@link CheckConditionsContext} and its condition checkers,
+ * and the text changes returned by {@link RefactoringParticipant#getTextChange(Object)}.
+ * Participants not tagged with this interface are called while the refactoring's lock is held.
+ * A concurrent participant must not acquire scheduling rules or wait for other threads while
+ * it holds the lock.
+ * </p>
+ * <p>
+ * Since the text changes of the other participants are created concurrently,
+ * {@link RefactoringParticipant#getTextChange(Object)} may not return text changes created by
+ * participants that have been loaded before a concurrent participant. The text changes of the
+ * refactoring processor are always available.
+ * </p>
+ * <p>
+ * Clients may implement this interface to tag participants as thread-safe.
+ * </p>
+ *
+ * @see RefactoringParticipant
+ * @since 3.6
+ */
+public interface IConcurrentParticipant {
+}
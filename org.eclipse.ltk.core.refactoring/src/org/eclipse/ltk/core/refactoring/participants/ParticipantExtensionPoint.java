@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2008 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -12,8 +12,10 @@ package org.eclipse.ltk.core.refactoring.participants;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.expressions.EvaluationContext;
 
@@ -43,11 +45,20 @@ import org.eclipse.ltk.internal.core.refactoring.RefactoringCorePlugin;
  */
 public class ParticipantExtensionPoint {
 
+	/** The maximal number of element type and nature combinations with cached enablements */
+	private static final int MAX_CACHED_ENABLEMENTS= 64;
+
 	private String fParticipantID;
 	private List fParticipants;
 	private Class fParticipantClass;
 	private String fPluginId;
 
+	/**
+	 * The cached enablements of participants with a static enablement expression, keyed by
+	 * the element type, the processor identifier and the affected natures
+	 */
+	private Map/*<List, Map<ParticipantDescriptor, Boolean>>*/ fEnablements= new HashMap();
+
 	/**
 	 * Creates a {@link ParticipantExtensionPoint}.
 	 *
@@ -82,6 +93,7 @@ public class ParticipantExtensionPoint {
 			init();
 
 		EvaluationContext evalContext= createEvaluationContext(processor, element, affectedNatures);
+		Map enablements= getCachedEnablements(processor, element, affectedNatures);
 		List result= new ArrayList();
 		for (Iterator iter= fParticipants.iterator(); iter.hasNext();) {
 			ParticipantDescriptor descriptor= (ParticipantDescriptor)iter.next();
@@ -90,7 +102,7 @@ public class ParticipantExtensionPoint {
 			} else {
 				try {
 					RefactoringStatus filterStatus= new RefactoringStatus();
-					if (descriptor.matches(evalContext, filter, filterStatus)) {
+					if (isEnabled(descriptor, evalContext, enablements) && descriptor.select(filter, filterStatus)) {
 						RefactoringParticipant participant= shared.get(descriptor);
 						if (participant != null) {
 							((ISharableParticipant)participant).addElement(element, arguments);
@@ -130,6 +142,35 @@ public class ParticipantExtensionPoint {
 		return (RefactoringParticipant[])result.toArray(new RefactoringParticipant[result.size()]);
 	}
 
+	private static boolean isEnabled(ParticipantDescriptor descriptor, EvaluationContext evalContext, Map enablements) throws CoreException {
+		if (!descriptor.hasStaticEnablement())
+			return descriptor.isEnabledFor(evalContext);
+		synchronized (enablements) {
+			Boolean enabled= (Boolean) enablements.get(descriptor);
+			if (enabled != null)
+				return enabled.booleanValue();
+		}
+		boolean enabled= descriptor.isEnabledFor(evalContext);
+		synchronized (enablements) {
+			enablements.put(descriptor, Boolean.valueOf(enabled));
+		}
+		return enabled;
+	}
+
+	private synchronized Map getCachedEnablements(RefactoringProcessor processor, Object element, String[] affectedNatures) {
+		String[] natures= (String[]) affectedNatures.clone();
+		Arrays.sort(natures);
+		List key= Arrays.asList(new Object[] { element.getClass(), processor.getIdentifier(), Arrays.asList(natures) });
+		Map result= (Map) fEnablements.get(key);
+		if (result == null) {
+			if (fEnablements.size() >= MAX_CACHED_ENABLEMENTS)
+				fEnablements.clear();
+			result= new HashMap();
+			fEnablements.put(key, result);
+		}
+		return result;
+	}
+
 	private void logMalfunctioningParticipant(RefactoringStatus status, ParticipantDescriptor descriptor, Throwable e) {
 		status.addError(Messages.format(
 			RefactoringCoreMessages.ParticipantExtensionPoint_participant_removed,
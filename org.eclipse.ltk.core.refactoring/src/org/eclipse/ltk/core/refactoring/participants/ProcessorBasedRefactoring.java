@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2010 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -39,6 +39,7 @@ import org.eclipse.ltk.core.refactoring.RefactoringStatus;
 import org.eclipse.ltk.core.refactoring.TextChange;
 import org.eclipse.ltk.core.refactoring.TextFileChange;
 import org.eclipse.ltk.internal.core.refactoring.Messages;
+import org.eclipse.ltk.internal.core.refactoring.ParallelParticipantRunner;
 import org.eclipse.ltk.internal.core.refactoring.ParticipantDescriptor;
 import org.eclipse.ltk.internal.core.refactoring.RefactoringCoreMessages;
 import org.eclipse.ltk.internal.core.refactoring.RefactoringCorePlugin;
@@ -53,6 +54,8 @@ import org.eclipse.ltk.internal.core.refactoring.RefactoringCorePlugin;
  * <p>Since 3.4, this class is non abstract and can be instantiated. {@link #getProcessor()} will
  * return the processor passed in {@link #ProcessorBasedRefactoring(RefactoringProcessor)} or
  * the processor set by {@link #setProcessor(RefactoringProcessor)}.
+ * <p>Since 3.6, participants tagged with {@link IConcurrentParticipant} are checked and create their
+ * changes concurrently with the other participants.
  *
  * @since 3.0
  */
@@ -215,8 +218,8 @@ public class ProcessorBasedRefactoring extends Refactoring {
 	public RefactoringStatus checkFinalConditions(IProgressMonitor pm) throws CoreException {
 		if (pm == null)
 			pm= new NullProgressMonitor();
-		RefactoringStatus result= new RefactoringStatus();
-		CheckConditionsContext context= createCheckConditionsContext();
+		final RefactoringStatus result= new RefactoringStatus();
+		final CheckConditionsContext context= createCheckConditionsContext();
 
 		pm.beginTask("", 9); //$NON-NLS-1$
 		pm.setTaskName(RefactoringCoreMessages.ProcessorBasedRefactoring_final_conditions);
@@ -246,31 +249,42 @@ public class ProcessorBasedRefactoring extends Refactoring {
 		IProgressMonitor sm= new SubProgressMonitor(pm, 2);
 
 		sm.beginTask("", fParticipants.size()); //$NON-NLS-1$
-		for (Iterator iter= fParticipants.iterator(); iter.hasNext() && !result.hasFatalError(); ) {
-
-			RefactoringParticipant participant= (RefactoringParticipant) iter.next();
-
-			final PerformanceStats stats= PerformanceStats.getStats(PERF_CHECK_CONDITIONS, getName() + ", " + participant.getName()); //$NON-NLS-1$
-			stats.startRun();
-
-			try {
-				result.merge(participant.checkConditions(new SubProgressMonitor(sm, 1), context));
-			} catch (OperationCanceledException e) {
-				throw e;
-			} catch (RuntimeException e) {
-				// remove the participant so that it will be ignored during change execution.
-				RefactoringCorePlugin.log(e);
-				result.merge(RefactoringStatus.createErrorStatus(Messages.format(
-					RefactoringCoreMessages.ProcessorBasedRefactoring_check_condition_participant_failed,
-					participant.getName())));
-				iter.remove();
+		final List/*<RefactoringParticipant>*/ failedParticipants= new ArrayList();
+		new ParallelParticipantRunner(getParticipants(), this) {
+			protected Object process(RefactoringParticipant participant, IProgressMonitor monitor) {
+				final PerformanceStats stats= PerformanceStats.getStats(PERF_CHECK_CONDITIONS, getName() + ", " + participant.getName()); //$NON-NLS-1$
+				stats.startRun();
+
+				RefactoringStatus status= participant.checkConditions(monitor, context);
+
+				stats.endRun();
+				return status;
 			}
 
-			stats.endRun();
+			protected boolean isFinal(Object status) {
+				return status instanceof RefactoringStatus && ((RefactoringStatus) status).hasFatalError();
+			}
 
-			if (sm.isCanceled())
-				throw new OperationCanceledException();
-		}
+			protected boolean merge(RefactoringParticipant participant, Object status) throws CoreException {
+				if (status instanceof OperationCanceledException) {
+					throw (OperationCanceledException) status;
+				} else if (status instanceof RuntimeException) {
+					// remove the participant so that it will be ignored during change execution.
+					RefactoringCorePlugin.log((RuntimeException) status);
+					result.merge(RefactoringStatus.createErrorStatus(Messages.format(
+						RefactoringCoreMessages.ProcessorBasedRefactoring_check_condition_participant_failed,
+						participant.getName())));
+					failedParticipants.add(participant);
+				} else if (status instanceof CoreException) {
+					throw (CoreException) status;
+				} else {
+					result.merge((RefactoringStatus) status);
+				}
+				return !result.hasFatalError();
+			}
+		}.run(sm);
+		if (!failedParticipants.isEmpty())
+			fParticipants.removeAll(failedParticipants);
 		sm.done();
 		if (result.hasFatalError()) {
 			pm.done();
@@ -296,21 +310,43 @@ public class ProcessorBasedRefactoring extends Refactoring {
 		fTextChangeMap= new HashMap();
 		addToTextChangeMap(processorChange);
 
-		List/*<Change>*/ changes= new ArrayList();
-		List/*<Change>*/ preChanges= new ArrayList();
-		Map/*<Change, RefactoringParticipant>*/ participantMap= new HashMap();
-		for (Iterator iter= fParticipants.iterator(); iter.hasNext();) {
-			final RefactoringParticipant participant= (RefactoringParticipant) iter.next();
-
-			try {
-				final PerformanceStats stats= PerformanceStats.getStats(PERF_CREATE_CHANGES, getName() + ", " + participant.getName()); //$NON-NLS-1$
-				stats.startRun();
+		final List/*<Change>*/ changes= new ArrayList();
+		final List/*<Change>*/ preChanges= new ArrayList();
+		final Map/*<Change, RefactoringParticipant>*/ participantMap= new HashMap();
+		new ParallelParticipantRunner(getParticipants(), this) {
+			protected Object process(RefactoringParticipant participant, IProgressMonitor monitor) throws CoreException {
+				monitor.beginTask("", 2); //$NON-NLS-1$
+				try {
+					final PerformanceStats stats= PerformanceStats.getStats(PERF_CREATE_CHANGES, getName() + ", " + participant.getName()); //$NON-NLS-1$
+					stats.startRun();
+
+					Change preChange= participant.createPreChange(new SubProgressMonitor(monitor, 1));
+					Change change= participant.createChange(new SubProgressMonitor(monitor, 1));
+
+					stats.endRun();
+					return new Change[] { preChange, change };
+				} finally {
+					monitor.done();
+				}
+			}
 
-				Change preChange= participant.createPreChange(new SubProgressMonitor(pm, 1));
-				Change change= participant.createChange(new SubProgressMonitor(pm, 1));
+			protected boolean isFinal(Object changePair) {
+				return changePair instanceof Throwable;
+			}
 
-				stats.endRun();
+			protected boolean merge(RefactoringParticipant participant, Object changePair) throws CoreException {
+				if (changePair instanceof OperationCanceledException) {
+					throw (OperationCanceledException) changePair;
+				} else if (changePair instanceof CoreException) {
+					disableParticipant(participant, (CoreException) changePair);
+					throw (CoreException) changePair;
+				} else if (changePair instanceof RuntimeException) {
+					disableParticipant(participant, (RuntimeException) changePair);
+					throw (RuntimeException) changePair;
+				}
 
+				Change preChange= ((Change[]) changePair)[0];
+				Change change= ((Change[]) changePair)[1];
 				if (preChange != null) {
 					if (fPreChangeParticipants == null)
 						fPreChangeParticipants= new ArrayList();
@@ -325,19 +361,9 @@ public class ProcessorBasedRefactoring extends Refactoring {
 					participantMap.put(change, participant);
 					addToTextChangeMap(change);
 				}
-
-			} catch (CoreException e) {
-				disableParticipant(participant, e);
-				throw e;
-			} catch (OperationCanceledException e) {
-				throw e;
-			} catch (RuntimeException e) {
-				disableParticipant(participant, e);
-				throw e;
+				return true;
 			}
-			if (pm.isCanceled())
-				throw new OperationCanceledException();
-		}
+		}.run(pm);
 
 		fTextChangeMap= null;
 
@@ -370,7 +396,7 @@ public class ProcessorBasedRefactoring extends Refactoring {
 	 *
 	 * @since 3.1
 	 */
-	public TextChange getTextChange(Object element) {
+	public synchronized TextChange getTextChange(Object element) {
 		if (fTextChangeMap == null)
 			return null;
 		return (TextChange) fTextChangeMap.get(element);
@@ -409,6 +435,10 @@ public class ProcessorBasedRefactoring extends Refactoring {
 
 	//---- Helper methods ---------------------------------------------------------------------
 
+	private RefactoringParticipant[] getParticipants() {
+		return (RefactoringParticipant[]) fParticipants.toArray(new RefactoringParticipant[fParticipants.size()]);
+	}
+
 	private CheckConditionsContext createCheckConditionsContext() throws CoreException {
 		CheckConditionsContext result= new CheckConditionsContext();
 		result.add(new ValidateEditChecker(getValidationContext()));
@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ltk.internal.core.refactoring;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import org.eclipse.ltk.core.refactoring.Change;
+import org.eclipse.ltk.core.refactoring.CompositeChange;
+import org.eclipse.ltk.core.refactoring.RefactoringStatus;
+
+/**
+ * Validates the children of a composite change on a bounded number of worker threads.
+ * <p>
+ * Only leaf changes are handed to the workers. Composite children are processed by the
+ * calling thread, which also merges the results of the leaf changes in the order of the
+ * children. The outcome is therefore the same as if the children had been processed one
+ * after the other: the status entries appear in the same order and no status of a child
+ * following the first fatal error is merged. Workers stop picking up new children as soon
+ * as a fatal error has been merged, but children that are already being validated at
+ * that time are allowed to finish.
+ * </p>
+ * <p>
+ * The workers do not acquire any scheduling rules and must not wait for rules held by
+ * the calling thread.
+ * </p>
+ *
+ * @since 3.6
+ */
+public final class ParallelChangeValidator {
+
+	/** The maximal number of worker threads */
+	private static final int MAX_THREADS= 4;
+
+	/** The interval in milliseconds in which the caller polls for cancellation */
+	private static final long CANCEL_POLL_INTERVAL= 100;
+
+	private final Change[] fChanges;
+	private final boolean fValidate;
+
+	/** <code>true</code> for the children which are processed by the workers */
+	private final boolean[] fParallel;
+	/** The result of each child: a status, a throwable or <code>null</code> */
+	private final Object[] fResults;
+	private final boolean[] fDone;
+
+	/** The index of the next child to be picked up by a worker */
+	private int fNext;
+	/** Workers do not pick up children at or after this index */
+	private int fLimit;
+	private boolean fCanceled;
+
+	private ParallelChangeValidator(Change[] changes, boolean validate) {
+		fChanges= changes;
+		fValidate= validate;
+		fParallel= new boolean[changes.length];
+		fResults= new Object[changes.length];
+		fDone= new boolean[changes.length];
+		fLimit= changes.length;
+		for (int i= 0; i < changes.length; i++) {
+			Change change= changes[i];
+			fParallel[i]= !(change instanceof CompositeChange) && (!validate || change.isEnabled());
+		}
+	}
+
+	/**
+	 * Sends <code>initializeValidationData</code> to all the given changes.
+	 *
+	 * @param changes the changes
+	 * @param pm a progress monitor
+	 */
+	public static void initializeValidationData(Change[] changes, IProgressMonitor pm) {
+		ParallelChangeValidator validator= new ParallelChangeValidator(changes, false);
+		try {
+			validator.run(pm);
+		} catch (CoreException e) {
+			// initializeValidationData does not throw checked exceptions
+			RefactoringCorePlugin.log(e);
+		}
+	}
+
+	/**
+	 * Sends <code>isValid</code> to all the given enabled changes until the first one
+	 * returns a status with a severity of <code>FATAL</code>.
+	 *
+	 * @param changes the changes
+	 * @param pm a progress monitor
+	 * @return the merged status of the validated changes
+	 * @throws CoreException if a change throws an exception
+	 * @throws OperationCanceledException if the operation has been canceled
+	 */
+	public static RefactoringStatus isValid(Change[] changes, IProgressMonitor pm) throws CoreException {
+		return new ParallelChangeValidator(changes, true).run(pm);
+	}
+
+	private RefactoringStatus run(IProgressMonitor pm) throws CoreException {
+		RefactoringStatus result= new RefactoringStatus();
+		pm.beginTask("", fChanges.length); //$NON-NLS-1$
+		Worker[] workers= startWorkers();
+		try {
+			for (int i= 0; i < fChanges.length && !result.hasFatalError(); i++) {
+				Change change= fChanges[i];
+				if (fParallel[i]) {
+					Object childResult= waitFor(i, pm);
+					pm.worked(1);
+					if (childResult instanceof Throwable)
+						rethrow((Throwable) childResult);
+					if (childResult != null)
+						result.merge((RefactoringStatus) childResult);
+				} else if (!fValidate) {
+					change.initializeValidationData(new SubProgressMonitor(pm, 1));
+				} else if (change.isEnabled()) {
+					result.merge(change.isValid(new SubProgressMonitor(pm, 1)));
+				} else {
+					pm.worked(1);
+				}
+				if (fValidate && pm.isCanceled())
+					throw new OperationCanceledException();
+			}
+		} finally {
+			stopWorkers(workers);
+		}
+		pm.done();
+		return result;
+	}
+
+	private Worker[] startWorkers() {
+		int count= 0;
+		for (int i= 0; i < fParallel.length; i++) {
+			if (fParallel[i])
+				count++;
+		}
+		count= Math.min(count, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+		Worker[] workers= new Worker[count];
+		for (int i= 0; i < count; i++) {
+			workers[i]= new Worker(i + 1);
+			workers[i].start();
+		}
+		return workers;
+	}
+
+	private void stopWorkers(Worker[] workers) {
+		synchronized (this) {
+			fLimit= 0;
+			fCanceled= true;
+			notifyAll();
+		}
+		boolean interrupted= false;
+		for (int i= 0; i < workers.length; i++) {
+			while (workers[i].isAlive()) {
+				try {
+					workers[i].join();
+				} catch (InterruptedException e) {
+					interrupted= true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private Object waitFor(int index, IProgressMonitor pm) {
+		boolean interrupted= false;
+		try {
+			synchronized (this) {
+				while (!fDone[index]) {
+					if (fValidate && pm.isCanceled()) {
+						fCanceled= true;
+						throw new OperationCanceledException();
+					}
+					try {
+						wait(CANCEL_POLL_INTERVAL);
+					} catch (InterruptedException e) {
+						interrupted= true;
+					}
+				}
+				return fResults[index];
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void rethrow(Throwable throwable) throws CoreException {
+		if (throwable instanceof CoreException)
+			throw (CoreException) throwable;
+		if (throwable instanceof RuntimeException)
+			throw (RuntimeException) throwable;
+		if (throwable instanceof Error)
+			throw (Error) throwable;
+		throw new CoreException(new Status(IStatus.ERROR, RefactoringCorePlugin.getPluginId(), IStatus.ERROR, throwable.getMessage(), throwable));
+	}
+
+	private synchronized int nextIndex() {
+		while (fNext < fLimit && !fParallel[fNext])
+			fNext++;
+		return fNext < fLimit ? fNext++ : -1;
+	}
+
+	private synchronized void done(int index, Object result) {
+		fResults[index]= result;
+		fDone[index]= true;
+		notifyAll();
+	}
+
+	private synchronized boolean isCanceled() {
+		return fCanceled;
+	}
+
+	private void process(int index, IProgressMonitor monitor) {
+		Object result= null;
+		try {
+			if (fValidate)
+				result= fChanges[index].isValid(monitor);
+			else
+				fChanges[index].initializeValidationData(monitor);
+		} catch (Throwable e) {
+			result= e;
+		}
+		synchronized (this) {
+			if (result instanceof RefactoringStatus && ((RefactoringStatus) result).hasFatalError())
+				fLimit= Math.min(fLimit, index + 1);
+		}
+		done(index, result);
+	}
+
+	private class Worker extends Thread {
+
+		public Worker(int number) {
+			super("Change Validation " + number); //$NON-NLS-1$
+			setDaemon(true);
+		}
+
+		public void run() {
+			// workers must not report progress on the caller's monitor, but forward cancellation
+			IProgressMonitor monitor= new NullProgressMonitor() {
+				public boolean isCanceled() {
+					return ParallelChangeValidator.this.isCanceled();
+				}
+			};
+			for (int index= nextIndex(); index != -1; index= nextIndex())
+				process(index, monitor);
+		}
+	}
+}
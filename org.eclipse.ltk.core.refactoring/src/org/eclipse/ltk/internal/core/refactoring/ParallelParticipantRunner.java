@@ -0,0 +1,265 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ltk.internal.core.refactoring;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import org.eclipse.ltk.core.refactoring.participants.IConcurrentParticipant;
+import org.eclipse.ltk.core.refactoring.participants.RefactoringParticipant;
+
+/**
+ * Calls a set of refactoring participants, processing the participants tagged with
+ * {@link IConcurrentParticipant} on a bounded number of worker threads.
+ * <p>
+ * The other participants are processed by the calling thread while it holds the given
+ * lock. The calling thread also merges the results of all participants in the order of
+ * the participants, while holding the lock. The merged outcome is therefore the same as
+ * if the participants had been processed one after the other: no result following a
+ * result which stops the processing is merged. Workers stop picking up new participants
+ * as soon as such a result has been produced, but participants that are already being
+ * processed at that time are allowed to finish.
+ * </p>
+ *
+ * @since 3.6
+ */
+public abstract class ParallelParticipantRunner {
+
+	/** The maximal number of worker threads */
+	private static final int MAX_THREADS= 4;
+
+	/** The interval in milliseconds in which the caller polls for cancellation */
+	private static final long CANCEL_POLL_INTERVAL= 100;
+
+	private final RefactoringParticipant[] fParticipants;
+	private final Object fLock;
+
+	/** <code>true</code> for the participants which are processed by the workers */
+	private final boolean[] fParallel;
+	/** The result of each participant: the processing result or a throwable */
+	private final Object[] fResults;
+	private final boolean[] fDone;
+
+	/** The index of the next participant to be picked up by a worker */
+	private int fNext;
+	/** Workers do not pick up participants at or after this index */
+	private int fLimit;
+	private boolean fCanceled;
+
+	/**
+	 * Creates a new runner.
+	 *
+	 * @param participants the participants to process
+	 * @param lock the lock to hold while participants which are not thread-safe are processed
+	 *  and while results are merged
+	 */
+	protected ParallelParticipantRunner(RefactoringParticipant[] participants, Object lock) {
+		fParticipants= participants;
+		fLock= lock;
+		fParallel= new boolean[participants.length];
+		fResults= new Object[participants.length];
+		fDone= new boolean[participants.length];
+		fLimit= participants.length;
+		for (int i= 0; i < participants.length; i++)
+			fParallel[i]= participants[i] instanceof IConcurrentParticipant;
+	}
+
+	/**
+	 * Processes the given participant. This method is called on a worker thread for
+	 * concurrent participants.
+	 *
+	 * @param participant the participant
+	 * @param pm a progress monitor
+	 * @return the result of the participant
+	 * @throws CoreException if the participant fails
+	 */
+	protected abstract Object process(RefactoringParticipant participant, IProgressMonitor pm) throws CoreException;
+
+	/**
+	 * Returns whether the given result stops the processing of the following participants.
+	 * This method is called on the thread which has processed the participant.
+	 *
+	 * @param result the result of a participant or the exception it has thrown
+	 * @return <code>true</code> if no further participants should be processed
+	 */
+	protected boolean isFinal(Object result) {
+		return false;
+	}
+
+	/**
+	 * Merges the result of the given participant. This method is called on the calling
+	 * thread, in the order of the participants.
+	 *
+	 * @param participant the participant
+	 * @param result the result of the participant or the exception it has thrown
+	 * @return <code>true</code> to continue with the next participant, <code>false</code>
+	 *  to stop
+	 * @throws CoreException to abort the processing
+	 */
+	protected abstract boolean merge(RefactoringParticipant participant, Object result) throws CoreException;
+
+	/**
+	 * Processes and merges the participants.
+	 *
+	 * @param pm a progress monitor to which one tick is reported for each participant
+	 * @throws CoreException if {@link #merge(RefactoringParticipant, Object)} throws an exception
+	 * @throws OperationCanceledException if the operation has been canceled
+	 */
+	public final void run(IProgressMonitor pm) throws CoreException {
+		Worker[] workers= startWorkers();
+		try {
+			for (int i= 0; i < fParticipants.length; i++) {
+				Object result;
+				if (fParallel[i]) {
+					result= waitFor(i, pm);
+					pm.worked(1);
+				} else {
+					synchronized (fLock) {
+						result= processSafely(fParticipants[i], new SubProgressMonitor(pm, 1));
+					}
+					if (isFinal(result))
+						limit(i + 1);
+				}
+				if (result instanceof Error)
+					throw (Error) result;
+				boolean proceed;
+				synchronized (fLock) {
+					proceed= merge(fParticipants[i], result);
+				}
+				if (!proceed)
+					break;
+				if (pm.isCanceled())
+					throw new OperationCanceledException();
+			}
+		} finally {
+			stopWorkers(workers);
+		}
+	}
+
+	private Object processSafely(RefactoringParticipant participant, IProgressMonitor pm) {
+		try {
+			return process(participant, pm);
+		} catch (Throwable e) {
+			return e;
+		}
+	}
+
+	private Worker[] startWorkers() {
+		int count= 0;
+		for (int i= 0; i < fParallel.length; i++) {
+			if (fParallel[i])
+				count++;
+		}
+		count= Math.min(count, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+		Worker[] workers= new Worker[count];
+		for (int i= 0; i < count; i++) {
+			workers[i]= new Worker(i + 1);
+			workers[i].start();
+		}
+		return workers;
+	}
+
+	private void stopWorkers(Worker[] workers) {
+		synchronized (this) {
+			fLimit= 0;
+			fCanceled= true;
+			notifyAll();
+		}
+		boolean interrupted= false;
+		for (int i= 0; i < workers.length; i++) {
+			while (workers[i].isAlive()) {
+				try {
+					workers[i].join();
+				} catch (InterruptedException e) {
+					interrupted= true;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+	}
+
+	private Object waitFor(int index, IProgressMonitor pm) {
+		boolean interrupted= false;
+		try {
+			synchronized (this) {
+				while (!fDone[index]) {
+					if (pm.isCanceled()) {
+						fCanceled= true;
+						throw new OperationCanceledException();
+					}
+					try {
+						wait(CANCEL_POLL_INTERVAL);
+					} catch (InterruptedException e) {
+						interrupted= true;
+					}
+				}
+				return fResults[index];
+			}
+		} finally {
+			if (interrupted)
+				Thread.currentThread().interrupt();
+		}
+	}
+
+	private synchronized int nextIndex() {
+		while (fNext < fLimit && !fParallel[fNext])
+			fNext++;
+		return fNext < fLimit ? fNext++ : -1;
+	}
+
+	private synchronized void limit(int limit) {
+		fLimit= Math.min(fLimit, limit);
+	}
+
+	private synchronized boolean isCanceled() {
+		return fCanceled;
+	}
+
+	private void processParallel(int index, IProgressMonitor monitor) {
+		Object result= processSafely(fParticipants[index], monitor);
+		boolean isFinal= false;
+		try {
+			isFinal= isFinal(result);
+		} catch (RuntimeException e) {
+			RefactoringCorePlugin.log(e);
+		}
+		synchronized (this) {
+			if (isFinal)
+				fLimit= Math.min(fLimit, index + 1);
+			fResults[index]= result;
+			fDone[index]= true;
+			notifyAll();
+		}
+	}
+
+	private class Worker extends Thread {
+
+		public Worker(int number) {
+			super("Refactoring Participants " + number); //$NON-NLS-1$
+			setDaemon(true);
+		}
+
+		public void run() {
+			// workers must not report progress on the caller's monitor, but forward cancellation
+			IProgressMonitor monitor= new NullProgressMonitor() {
+				public boolean isCanceled() {
+					return ParallelParticipantRunner.this.isCanceled();
+				}
+			};
+			for (int index= nextIndex(); index != -1; index= nextIndex())
+				processParallel(index, monitor);
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2000, 2009 IBM Corporation and others.
+ * Copyright (c) 2000, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -10,6 +10,8 @@
  *******************************************************************************/
 package org.eclipse.ltk.internal.core.refactoring;
 
+import java.util.Arrays;
+
 import org.eclipse.core.expressions.EvaluationResult;
 import org.eclipse.core.expressions.Expression;
 import org.eclipse.core.expressions.ExpressionConverter;
@@ -30,11 +32,17 @@ public class ParticipantDescriptor {
 
 	private IConfigurationElement fConfigurationElement;
 	private boolean fEnabled;
+	private Expression fEnablement;
+	private Boolean fStaticEnablement;
 
 	private static final String ID= "id"; //$NON-NLS-1$
 	private static final String NAME= "name";  //$NON-NLS-1$
 	private static final String CLASS= "class"; //$NON-NLS-1$
 	private static final String PROCESS_ON_CANCEL= "processOnCancel";  //$NON-NLS-1$
+	private static final String VARIABLE= "variable"; //$NON-NLS-1$
+
+	/** The variables whose values are not objects to be refactored */
+	private static final String[] VALUE_VARIABLES= { "affectedNatures", "processorIdentifier" }; //$NON-NLS-1$ //$NON-NLS-2$
 
 	public ParticipantDescriptor(IConfigurationElement element) {
 		fConfigurationElement= element;
@@ -68,17 +76,50 @@ public class ParticipantDescriptor {
 	}
 
 	public boolean matches(IEvaluationContext context, IParticipantDescriptorFilter filter, RefactoringStatus status) throws CoreException {
-		IConfigurationElement[] elements= fConfigurationElement.getChildren(ExpressionTagNames.ENABLEMENT);
-		if (elements.length == 0)
-			return false;
-		Assert.isTrue(elements.length == 1);
-		Expression exp= ExpressionConverter.getDefault().perform(elements[0]);
-		if (!convert(exp.evaluate(context)))
+		if (!isEnabledFor(context))
 			return false;
-		if (filter != null && !filter.select(fConfigurationElement, status))
+		return select(filter, status);
+	}
+
+	/**
+	 * Evaluates the enablement expression of this participant.
+	 *
+	 * @param context the evaluation context
+	 * @return <code>true</code> if the participant is enabled in the given context
+	 * @throws CoreException if the expression could not be evaluated
+	 */
+	public boolean isEnabledFor(IEvaluationContext context) throws CoreException {
+		Expression exp= getEnablement();
+		if (exp == null)
 			return false;
+		return convert(exp.evaluate(context));
+	}
 
-		return true;
+	/**
+	 * Applies the given participant filter to this participant.
+	 *
+	 * @param filter the filter, or <code>null</code>
+	 * @param status a status to report problems
+	 * @return <code>true</code> if the participant passes the filter
+	 */
+	public boolean select(IParticipantDescriptorFilter filter, RefactoringStatus status) {
+		return filter == null || filter.select(fConfigurationElement, status);
+	}
+
+	/**
+	 * Returns whether the enablement of this participant only depends on the type of
+	 * the element to be refactored, the affected natures and the processor identifier.
+	 * The result of {@link #isEnabledFor(IEvaluationContext)} can be cached for such
+	 * participants.
+	 *
+	 * @return <code>true</code> if the enablement can be cached
+	 */
+	public boolean hasStaticEnablement() {
+		if (fStaticEnablement == null) {
+			IConfigurationElement[] elements= fConfigurationElement.getChildren(ExpressionTagNames.ENABLEMENT);
+			fStaticEnablement= Boolean.valueOf(elements.length == 1 && isStatic(elements[0], false));
+		}
+		return fStaticEnablement.booleanValue();
 	}
 
 	public RefactoringParticipant createParticipant() throws CoreException {
@@ -100,6 +141,48 @@ public class ParticipantDescriptor {
 		return Boolean.valueOf(attr).booleanValue();
 	}
 
+	private Expression getEnablement() throws CoreException {
+		if (fEnablement == null) {
+			IConfigurationElement[] elements= fConfigurationElement.getChildren(ExpressionTagNames.ENABLEMENT);
+			if (elements.length == 0)
+				return null;
+			Assert.isTrue(elements.length == 1);
+			fEnablement= ExpressionConverter.getDefault().perform(elements[0]);
+		}
+		return fEnablement;
+	}
+
+	/*
+	 * An expression is static if it only tests the type of the element with instanceof,
+	 * or compares the values of the affected natures and the processor identifier.
+	 */
+	private static boolean isStatic(IConfigurationElement element, boolean value) {
+		String name= element.getName();
+		if (ExpressionTagNames.INSTANCEOF.equals(name))
+			return true;
+		if (ExpressionTagNames.WITH.equals(name)) {
+			String variable= element.getAttribute(VARIABLE);
+			if ("element".equals(variable)) //$NON-NLS-1$
+				value= false;
+			else if (Arrays.asList(VALUE_VARIABLES).contains(variable))
+				value= true;
+			else
+				return false;
+		} else if (ExpressionTagNames.EQUALS.equals(name) || ExpressionTagNames.ITERATE.equals(name) || ExpressionTagNames.COUNT.equals(name)) {
+			if (!value)
+				return false;
+		} else if (!ExpressionTagNames.ENABLEMENT.equals(name) && !ExpressionTagNames.AND.equals(name)
+				&& !ExpressionTagNames.OR.equals(name) && !ExpressionTagNames.NOT.equals(name)) {
+			return false;
+		}
+		IConfigurationElement[] children= element.getChildren();
+		for (int i= 0; i < children.length; i++) {
+			if (!isStatic(children[i], value))
+				return false;
+		}
+		return true;
+	}
+
 	private boolean convert(EvaluationResult eval) {
 		if (eval == EvaluationResult.FALSE)
 			return false;
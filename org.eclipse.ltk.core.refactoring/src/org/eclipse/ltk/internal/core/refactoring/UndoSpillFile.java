@@ -0,0 +1,149 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ltk.internal.core.refactoring;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+import org.eclipse.text.edits.ReplaceEdit;
+
+/**
+ * A temporary file which holds the undo edits of text file changes, so that they do not
+ * have to be kept in memory.
+ * <p>
+ * Every edit is stored as a single replacement. The file is reference counted: each change
+ * whose edit is stored in the file holds a reference, and the file is deleted as soon as the
+ * last reference has been released.
+ * </p>
+ *
+ * @since 3.6
+ */
+public final class UndoSpillFile {
+
+	private static final String ENCODING= "UTF-8"; //$NON-NLS-1$
+
+	private final File fLocation;
+	private RandomAccessFile fFile;
+	private int fReferences;
+
+	private UndoSpillFile(File location, RandomAccessFile file) {
+		fLocation= location;
+		fFile= file;
+		fReferences= 1;
+	}
+
+	/**
+	 * Creates a new spill file. The caller holds the initial reference.
+	 *
+	 * @return the spill file
+	 * @throws CoreException if the file could not be created
+	 */
+	public static UndoSpillFile create() throws CoreException {
+		try {
+			File directory= null;
+			RefactoringCorePlugin plugin= RefactoringCorePlugin.getDefault();
+			if (plugin != null) {
+				directory= plugin.getStateLocation().toFile();
+				directory.mkdirs();
+			}
+			File location= File.createTempFile("undo", ".tmp", directory); //$NON-NLS-1$ //$NON-NLS-2$
+			location.deleteOnExit();
+			return new UndoSpillFile(location, new RandomAccessFile(location, "rw")); //$NON-NLS-1$
+		} catch (IOException e) {
+			throw asCoreException(e);
+		}
+	}
+
+	/**
+	 * Adds a reference to this file.
+	 */
+	public synchronized void acquire() {
+		fReferences++;
+	}
+
+	/**
+	 * Releases a reference to this file. The file is deleted when the last reference has
+	 * been released.
+	 */
+	public synchronized void release() {
+		if (--fReferences > 0 || fFile == null)
+			return;
+		try {
+			fFile.close();
+		} catch (IOException e) {
+			RefactoringCorePlugin.log(e);
+		}
+		fFile= null;
+		fLocation.delete();
+	}
+
+	/**
+	 * Appends a replacement to this file.
+	 *
+	 * @param offset the offset of the replaced region
+	 * @param length the length of the replaced region
+	 * @param text the replacement text
+	 * @return the position of the replacement in this file
+	 * @throws CoreException if the replacement could not be written
+	 */
+	public synchronized long write(int offset, int length, String text) throws CoreException {
+		try {
+			byte[] bytes= text.getBytes(ENCODING);
+			long position= fFile.length();
+			byte[] record= new byte[12 + bytes.length];
+			putInt(record, 0, offset);
+			putInt(record, 4, length);
+			putInt(record, 8, bytes.length);
+			System.arraycopy(bytes, 0, record, 12, bytes.length);
+			fFile.seek(position);
+			fFile.write(record);
+			return position;
+		} catch (IOException e) {
+			throw asCoreException(e);
+		}
+	}
+
+	/**
+	 * Reads the replacement at the given position.
+	 *
+	 * @param position the position returned by {@link #write(int, int, String)}
+	 * @return the replacement
+	 * @throws CoreException if the replacement could not be read
+	 */
+	public synchronized ReplaceEdit read(long position) throws CoreException {
+		try {
+			fFile.seek(position);
+			int offset= fFile.readInt();
+			int length= fFile.readInt();
+			byte[] bytes= new byte[fFile.readInt()];
+			fFile.readFully(bytes);
+			return new ReplaceEdit(offset, length, new String(bytes, ENCODING));
+		} catch (IOException e) {
+			throw asCoreException(e);
+		}
+	}
+
+	private static void putInt(byte[] bytes, int index, int value) {
+		bytes[index]= (byte) (value >>> 24);
+		bytes[index + 1]= (byte) (value >>> 16);
+		bytes[index + 2]= (byte) (value >>> 8);
+		bytes[index + 3]= (byte) value;
+	}
+
+	private static CoreException asCoreException(IOException e) {
+		return new CoreException(new Status(IStatus.ERROR, RefactoringCorePlugin.getPluginId(), IStatus.ERROR, e.getMessage(), e));
+	}
+}
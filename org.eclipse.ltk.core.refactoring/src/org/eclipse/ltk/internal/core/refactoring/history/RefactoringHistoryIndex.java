@@ -0,0 +1,601 @@
+/*******************************************************************************
+ * Copyright (c) 2012 IBM Corporation and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Contributors:
+ *     IBM Corporation - initial API and implementation
+ *******************************************************************************/
+package org.eclipse.ltk.internal.core.refactoring.history;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.filesystem.EFS;
+import org.eclipse.core.filesystem.IFileInfo;
+import org.eclipse.core.filesystem.IFileStore;
+
+import org.eclipse.core.runtime.Assert;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Path;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.SubProgressMonitor;
+
+import org.eclipse.ltk.core.refactoring.IRefactoringCoreStatusCodes;
+import org.eclipse.ltk.core.refactoring.RefactoringCore;
+import org.eclipse.ltk.core.refactoring.RefactoringDescriptorProxy;
+import org.eclipse.ltk.internal.core.refactoring.IRefactoringSerializationConstants;
+import org.eclipse.ltk.internal.core.refactoring.RefactoringCoreMessages;
+import org.eclipse.ltk.internal.core.refactoring.RefactoringCorePlugin;
+
+/**
+ * Binary index of the refactoring descriptor proxies of a refactoring history
+ * store.
+ * <p>
+ * The index is an append-only log in the state location of the plug-in. Each
+ * record either replaces the entries of one index file of the history store,
+ * together with the modification stamp and length the file had when it was
+ * read, or drops them. Before the index is queried, the history store is
+ * traversed without reading any file, and only the index files which have been
+ * added, changed or removed since are read again. The first query therefore
+ * migrates an existing history. The log is compacted when it contains
+ * considerably more records than index files.
+ * </p>
+ * <p>
+ * The entries are kept sorted by time stamp, so that time range queries are
+ * answered by a binary search.
+ * </p>
+ *
+ * @since 3.6
+ */
+public final class RefactoringHistoryIndex {
+
+	/** An index file of the history store and its entries */
+	private static final class IndexFile {
+
+		/** The descriptions of the entries */
+		private final String[] fDescriptions;
+
+		/** The length of the file */
+		private final long fLength;
+
+		/** The modification stamp of the file */
+		private final long fModified;
+
+		/** The time stamps of the entries */
+		private final long[] fStamps;
+
+		private IndexFile(final long modified, final long length, final long[] stamps, final String[] descriptions) {
+			fModified= modified;
+			fLength= length;
+			fStamps= stamps;
+			fDescriptions= descriptions;
+		}
+
+		private boolean isUpToDate(final IFileInfo info) {
+			return fModified == info.getLastModified() && fLength == info.getLength();
+		}
+	}
+
+	/** The file magic */
+	private static final int MAGIC= 0x52484958;
+
+	/** Maximal number of indexes kept in memory */
+	private static final int MAX_INDEXES= 4;
+
+	/** The name of the folder containing the index logs */
+	private static final String NAME_INDEX_FOLDER= ".indexes"; //$NON-NLS-1$
+
+	/** The record replacing the entries of an index file */
+	private static final int RECORD_FILE= 1;
+
+	/** The record dropping the entries of an index file */
+	private static final int RECORD_DROP= 2;
+
+	/** The file format version */
+	private static final int VERSION= 1;
+
+	/**
+	 * The index cache (element type:
+	 * <code>&lt;IFileStore, RefactoringHistoryIndex&gt;</code>)
+	 */
+	private static final Map fgIndexes= new LinkedHashMap(MAX_INDEXES, 0.75f, true) {
+
+		private static final long serialVersionUID= 1L;
+
+		protected final boolean removeEldestEntry(final Map.Entry entry) {
+			return size() > MAX_INDEXES;
+		}
+	};
+
+	/**
+	 * Returns the index of the specified history store.
+	 *
+	 * @param store
+	 *            the history file store
+	 * @return the index
+	 */
+	public static RefactoringHistoryIndex getIndex(final IFileStore store) {
+		synchronized (fgIndexes) {
+			RefactoringHistoryIndex index= (RefactoringHistoryIndex) fgIndexes.get(store);
+			if (index == null) {
+				final File folder= RefactoringCorePlugin.getDefault().getStateLocation().append(NAME_INDEX_FOLDER).toFile();
+				index= new RefactoringHistoryIndex(store, new File(folder, getLogName(store.toURI().toString())));
+				fgIndexes.put(store, index);
+			}
+			return index;
+		}
+	}
+
+	/**
+	 * Returns the name of the log of the specified history store. The name is
+	 * the SHA-1 digest of the store location, so that the logs of different
+	 * stores do not overwrite each other. The location is also written to the
+	 * header of the log and checked when it is loaded.
+	 *
+	 * @param uri
+	 *            the location of the history store
+	 * @return the name of the log
+	 */
+	private static String getLogName(final String uri) {
+		try {
+			final byte[] digest= MessageDigest.getInstance("SHA-1").digest(uri.getBytes(IRefactoringSerializationConstants.OUTPUT_ENCODING)); //$NON-NLS-1$
+			final StringBuffer buffer= new StringBuffer(2 * digest.length + 4);
+			for (int index= 0; index < digest.length; index++) {
+				buffer.append(Character.forDigit((digest[index] >> 4) & 0xf, 16));
+				buffer.append(Character.forDigit(digest[index] & 0xf, 16));
+			}
+			return buffer.append(".bin").toString(); //$NON-NLS-1$
+		} catch (NoSuchAlgorithmException exception) {
+			// Every Java platform supports SHA-1
+			throw new IllegalStateException(exception.getMessage());
+		} catch (UnsupportedEncodingException exception) {
+			// Every Java platform supports UTF-8
+			throw new IllegalStateException(exception.getMessage());
+		}
+	}
+
+	/**
+	 * Informs the index of the specified history store that an index file has
+	 * been written. The entries of the file are read again on the next query,
+	 * even if its modification stamp and length are unchanged.
+	 *
+	 * @param store
+	 *            the history file store
+	 * @param path
+	 *            the path of the index file, relative to the store
+	 */
+	public static void indexFileChanged(final IFileStore store, final IPath path) {
+		getIndex(store).drop(path.makeRelative().toString());
+	}
+
+	private static CoreException createCoreException(final Throwable exception) {
+		return new CoreException(new Status(IStatus.ERROR, RefactoringCore.ID_PLUGIN, IRefactoringCoreStatusCodes.REFACTORING_HISTORY_IO_ERROR, exception.getLocalizedMessage(), exception));
+	}
+
+	private static String readString(final DataInputStream stream) throws IOException {
+		final byte[] bytes= new byte[stream.readInt()];
+		stream.readFully(bytes);
+		return new String(bytes, IRefactoringSerializationConstants.OUTPUT_ENCODING);
+	}
+
+	private static void writeString(final DataOutputStream stream, final String string) throws IOException {
+		final byte[] bytes= string.getBytes(IRefactoringSerializationConstants.OUTPUT_ENCODING);
+		stream.writeInt(bytes.length);
+		stream.write(bytes);
+	}
+
+	/** The sorted descriptions of all entries, or <code>null</code> */
+	private String[] fDescriptions= null;
+
+	/**
+	 * The index files read so far (element type:
+	 * <code>&lt;String, IndexFile&gt;</code>)
+	 */
+	private final Map fFiles= new HashMap();
+
+	/** Has the log been loaded? */
+	private boolean fLoaded= false;
+
+	/** The location of the log */
+	private final File fLocation;
+
+	/** The number of records in the log */
+	private int fRecords= 0;
+
+	/** The sorted time stamps of all entries, or <code>null</code> */
+	private long[] fStamps= null;
+
+	/** The history file store */
+	private final IFileStore fStore;
+
+	/**
+	 * Creates a new refactoring history index.
+	 *
+	 * @param store
+	 *            the history file store
+	 * @param location
+	 *            the location of the log
+	 */
+	RefactoringHistoryIndex(final IFileStore store, final File location) {
+		Assert.isNotNull(store);
+		Assert.isNotNull(location);
+		fStore= store;
+		fLocation= location;
+	}
+
+	/**
+	 * Appends the specified records to the log.
+	 *
+	 * @param paths
+	 *            the paths of the index files
+	 * @param files
+	 *            the index files, or <code>null</code> for dropped files
+	 * @throws IOException
+	 *             if an input/output error occurs
+	 */
+	private void appendRecords(final List paths, final List files) throws IOException {
+		if (!fLocation.isFile() || fRecords + paths.size() > 2 * fFiles.size() + 32) {
+			writeLog();
+			return;
+		}
+		final DataOutputStream stream= new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fLocation, true)));
+		try {
+			for (int index= 0; index < paths.size(); index++)
+				writeRecord(stream, (String) paths.get(index), (IndexFile) files.get(index));
+		} finally {
+			stream.close();
+		}
+		fRecords+= paths.size();
+	}
+
+	/**
+	 * Collects the index files of the history store.
+	 *
+	 * @param store
+	 *            the file store to traverse
+	 * @param path
+	 *            the path of the file store, relative to the history store
+	 * @param infos
+	 *            the map of paths to file infos to fill in
+	 * @param monitor
+	 *            the progress monitor to use
+	 * @throws CoreException
+	 *             if an error occurs
+	 */
+	private void collectIndexFiles(final IFileStore store, final IPath path, final Map infos, final IProgressMonitor monitor) throws CoreException {
+		final IFileInfo[] children= store.childInfos(EFS.NONE, monitor);
+		for (int index= 0; index < children.length; index++) {
+			final IFileInfo info= children[index];
+			final String name= info.getName();
+			if (info.isDirectory())
+				collectIndexFiles(store.getChild(name), path.append(name), infos, monitor);
+			else if (name.equalsIgnoreCase(RefactoringHistoryService.NAME_INDEX_FILE))
+				infos.put(path.append(name).toString(), info);
+		}
+	}
+
+	/**
+	 * Drops the entries of the specified index file.
+	 *
+	 * @param path
+	 *            the path of the index file, relative to the history store
+	 */
+	private synchronized void drop(final String path) {
+		load();
+		if (fFiles.remove(path) != null) {
+			fStamps= null;
+			fDescriptions= null;
+			try {
+				appendRecords(Collections.singletonList(path), Collections.singletonList(null));
+			} catch (IOException exception) {
+				RefactoringCorePlugin.log(exception);
+				fLocation.delete();
+			}
+		}
+	}
+
+	/**
+	 * Loads the log if not yet done.
+	 */
+	private void load() {
+		if (fLoaded)
+			return;
+		fLoaded= true;
+		if (!fLocation.isFile())
+			return;
+		boolean valid= false;
+		DataInputStream stream= null;
+		try {
+			stream= new DataInputStream(new BufferedInputStream(new FileInputStream(fLocation)));
+			if (stream.readInt() == MAGIC && stream.readInt() == VERSION && fStore.toURI().toString().equals(readString(stream))) {
+				for (int type= stream.read(); type != -1; type= stream.read()) {
+					final String path= readString(stream);
+					if (type == RECORD_FILE) {
+						final long modified= stream.readLong();
+						final long length= stream.readLong();
+						final int count= stream.readInt();
+						final long[] stamps= new long[count];
+						final String[] descriptions= new String[count];
+						for (int index= 0; index < count; index++) {
+							stamps[index]= stream.readLong();
+							descriptions[index]= readString(stream);
+						}
+						fFiles.put(path, new IndexFile(modified, length, stamps, descriptions));
+					} else if (type == RECORD_DROP)
+						fFiles.remove(path);
+					else
+						throw new IOException("Corrupt refactoring history index: " + fLocation); //$NON-NLS-1$
+					fRecords++;
+				}
+				valid= true;
+			}
+		} catch (IOException exception) {
+			// Keep the complete records and rewrite the log below
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException exception) {
+					// Do nothing
+				}
+			}
+		}
+		if (!valid) {
+			try {
+				writeLog();
+			} catch (IOException exception) {
+				RefactoringCorePlugin.log(exception);
+				fLocation.delete();
+			}
+		}
+	}
+
+	/**
+	 * Reads the entries of the specified index file.
+	 *
+	 * @param path
+	 *            the path of the index file, relative to the history store
+	 * @param info
+	 *            the file info of the index file
+	 * @param monitor
+	 *            the progress monitor to use
+	 * @return the index file
+	 * @throws CoreException
+	 *             if an error occurs
+	 */
+	private IndexFile readIndexFile(final String path, final IFileInfo info, final IProgressMonitor monitor) throws CoreException {
+		InputStream stream= null;
+		try {
+			stream= fStore.getFileStore(new Path(path)).openInputStream(EFS.NONE, monitor);
+			final RefactoringDescriptorProxy[] proxies= RefactoringHistoryManager.readRefactoringDescriptorProxies(stream, null, 0, Long.MAX_VALUE);
+			RefactoringHistoryManager.sortRefactoringDescriptorsAscending(proxies);
+			final long[] stamps= new long[proxies.length];
+			final String[] descriptions= new String[proxies.length];
+			for (int index= 0; index < proxies.length; index++) {
+				stamps[index]= proxies[index].getTimeStamp();
+				descriptions[index]= proxies[index].getDescription();
+			}
+			return new IndexFile(info.getLastModified(), info.getLength(), stamps, descriptions);
+		} catch (IOException exception) {
+			throw createCoreException(exception);
+		} finally {
+			if (stream != null) {
+				try {
+					stream.close();
+				} catch (IOException exception) {
+					// Do nothing
+				}
+			}
+		}
+	}
+
+	/**
+	 * Reads refactoring descriptor proxies.
+	 *
+	 * @param project
+	 *            the name of the project, or <code>null</code> for the
+	 *            workspace
+	 * @param collection
+	 *            the collection of proxies to fill in
+	 * @param start
+	 *            the start time stamp, inclusive
+	 * @param end
+	 *            the end time stamp, inclusive
+	 * @param monitor
+	 *            the progress monitor to use
+	 * @throws CoreException
+	 *             if an error occurs
+	 */
+	public synchronized void readRefactoringDescriptorProxies(final String project, final Collection collection, final long start, final long end, final IProgressMonitor monitor) throws CoreException {
+		try {
+			monitor.beginTask(RefactoringCoreMessages.RefactoringHistoryService_retrieving_history, 10);
+			update(new SubProgressMonitor(monitor, 9, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL));
+			if (fStamps == null)
+				sortEntries();
+			int low= 0;
+			int high= fStamps.length;
+			while (low < high) {
+				final int middle= (low + high) >>> 1;
+				if (fStamps[middle] < start)
+					low= middle + 1;
+				else
+					high= middle;
+			}
+			for (int index= low; index < fStamps.length && fStamps[index] <= end; index++)
+				collection.add(new DefaultRefactoringDescriptorProxy(fDescriptions[index], project, fStamps[index]));
+			monitor.worked(1);
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Merges the entries of all index files into the sorted arrays.
+	 */
+	private void sortEntries() {
+		final List stamps= new ArrayList();
+		final List descriptions= new ArrayList();
+		for (final Iterator iterator= fFiles.values().iterator(); iterator.hasNext();) {
+			final IndexFile file= (IndexFile) iterator.next();
+			for (int index= 0; index < file.fStamps.length; index++) {
+				stamps.add(new Long(file.fStamps[index]));
+				descriptions.add(file.fDescriptions[index]);
+			}
+		}
+		final Integer[] order= new Integer[stamps.size()];
+		for (int index= 0; index < order.length; index++)
+			order[index]= new Integer(index);
+		Arrays.sort(order, new Comparator() {
+
+			public final int compare(final Object first, final Object second) {
+				return ((Long) stamps.get(((Integer) first).intValue())).compareTo((Long) stamps.get(((Integer) second).intValue()));
+			}
+		});
+		fStamps= new long[order.length];
+		fDescriptions= new String[order.length];
+		for (int index= 0; index < order.length; index++) {
+			final int position= order[index].intValue();
+			fStamps[index]= ((Long) stamps.get(position)).longValue();
+			fDescriptions[index]= (String) descriptions.get(position);
+		}
+	}
+
+	/**
+	 * Brings the index up to date with the history store.
+	 *
+	 * @param monitor
+	 *            the progress monitor to use
+	 * @throws CoreException
+	 *             if an error occurs
+	 */
+	private void update(final IProgressMonitor monitor) throws CoreException {
+		try {
+			monitor.beginTask(RefactoringCoreMessages.RefactoringHistoryService_retrieving_history, 10);
+			load();
+			final Map infos= new HashMap();
+			if (fStore.fetchInfo(EFS.NONE, new SubProgressMonitor(monitor, 1, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL)).exists())
+				collectIndexFiles(fStore, Path.EMPTY, infos, new SubProgressMonitor(monitor, 3, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL));
+			final List paths= new ArrayList();
+			final List files= new ArrayList();
+			for (final Iterator iterator= fFiles.keySet().iterator(); iterator.hasNext();) {
+				final String path= (String) iterator.next();
+				if (!infos.containsKey(path)) {
+					iterator.remove();
+					paths.add(path);
+					files.add(null);
+				}
+			}
+			final IProgressMonitor subMonitor= new SubProgressMonitor(monitor, 6, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL);
+			try {
+				subMonitor.beginTask(RefactoringCoreMessages.RefactoringHistoryService_retrieving_history, infos.size());
+				for (final Iterator iterator= infos.entrySet().iterator(); iterator.hasNext();) {
+					final Map.Entry entry= (Map.Entry) iterator.next();
+					final String path= (String) entry.getKey();
+					final IFileInfo info= (IFileInfo) entry.getValue();
+					final IndexFile existing= (IndexFile) fFiles.get(path);
+					if (existing == null || !existing.isUpToDate(info)) {
+						final IndexFile file= readIndexFile(path, info, new SubProgressMonitor(subMonitor, 1, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL));
+						fFiles.put(path, file);
+						paths.add(path);
+						files.add(file);
+					} else
+						subMonitor.worked(1);
+				}
+			} finally {
+				subMonitor.done();
+			}
+			if (!paths.isEmpty()) {
+				fStamps= null;
+				fDescriptions= null;
+				try {
+					appendRecords(paths, files);
+				} catch (IOException exception) {
+					RefactoringCorePlugin.log(exception);
+					fLocation.delete();
+				}
+			}
+		} finally {
+			monitor.done();
+		}
+	}
+
+	/**
+	 * Rewrites the log with one record per index file.
+	 *
+	 * @throws IOException
+	 *             if an input/output error occurs
+	 */
+	private void writeLog() throws IOException {
+		fLocation.getParentFile().mkdirs();
+		final File temp= new File(fLocation.getPath() + ".tmp"); //$NON-NLS-1$
+		final DataOutputStream stream= new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			stream.writeInt(MAGIC);
+			stream.writeInt(VERSION);
+			writeString(stream, fStore.toURI().toString());
+			for (final Iterator iterator= fFiles.entrySet().iterator(); iterator.hasNext();) {
+				final Map.Entry entry= (Map.Entry) iterator.next();
+				writeRecord(stream, (String) entry.getKey(), (IndexFile) entry.getValue());
+			}
+		} finally {
+			stream.close();
+		}
+		if (fLocation.exists() && !fLocation.delete() || !temp.renameTo(fLocation)) {
+			temp.delete();
+			throw new IOException("Could not write refactoring history index: " + fLocation); //$NON-NLS-1$
+		}
+		fRecords= fFiles.size();
+	}
+
+	/**
+	 * Writes a record to the log.
+	 *
+	 * @param stream
+	 *            the stream to write to
+	 * @param path
+	 *            the path of the index file
+	 * @param file
+	 *            the index file, or <code>null</code> if it has been dropped
+	 * @throws IOException
+	 *             if an input/output error occurs
+	 */
+	private void writeRecord(final DataOutputStream stream, final String path, final IndexFile file) throws IOException {
+		stream.write(file != null ? RECORD_FILE : RECORD_DROP);
+		writeString(stream, path);
+		if (file != null) {
+			stream.writeLong(file.fModified);
+			stream.writeLong(file.fLength);
+			stream.writeInt(file.fStamps.length);
+			for (int index= 0; index < file.fStamps.length; index++) {
+				stream.writeLong(file.fStamps[index]);
+				writeString(stream, file.fDescriptions[index]);
+			}
+		}
+	}
+}
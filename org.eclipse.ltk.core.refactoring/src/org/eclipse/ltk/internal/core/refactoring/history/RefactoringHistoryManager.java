@@ -1,5 +1,5 @@
 /*******************************************************************************
- * Copyright (c) 2005, 2010 IBM Corporation and others.
+ * Copyright (c) 2005, 2012 IBM Corporation and others.
  * All rights reserved. This program and the accompanying materials
  * are made available under the terms of the Eclipse Public License v1.0
  * which accompanies this distribution, and is available at
@@ -29,6 +29,7 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -89,6 +90,32 @@ import org.eclipse.ltk.internal.core.refactoring.RefactoringSessionTransformer;
  */
 public final class RefactoringHistoryManager {
 
+	/**
+	 * A cached session descriptor together with the state of the history file
+	 * it has been read from.
+	 */
+	private static final class CachedSession {
+
+		/** The session descriptor */
+		final RefactoringSessionDescriptor fDescriptor;
+
+		/** The length of the history file */
+		final long fLength;
+
+		/** The last modification time of the history file */
+		final long fModified;
+
+		CachedSession(final RefactoringSessionDescriptor descriptor, final IFileInfo info) {
+			fDescriptor= descriptor;
+			fLength= info.getLength();
+			fModified= info.getLastModified();
+		}
+
+		boolean isCurrent(final IFileInfo info) {
+			return info.getLastModified() == fModified && info.getLength() == fLength;
+		}
+	}
+
 	/** The index component delimiter */
 	public static final char DELIMITER_COMPONENT= '\t';
 
@@ -98,6 +125,9 @@ public final class RefactoringHistoryManager {
 	/** The calendar instance */
 	private static final Calendar fgCalendar= Calendar.getInstance(TimeZone.getTimeZone("GMT+00:00")); //$NON-NLS-1$
 
+	/** Maximal number of cached session descriptors */
+	private static final int MAX_CACHED_SESSIONS= 16;
+
 	/**
 	 * Checks whether the argument map is well-formed.
 	 * <p>
@@ -247,6 +277,37 @@ public final class RefactoringHistoryManager {
 		}
 	}
 
+	/**
+	 * Reads refactoring descriptor proxies using the binary index of the
+	 * specified history store.
+	 *
+	 * @param store
+	 *            the history file store
+	 * @param project
+	 *            the name of the project, or <code>null</code> for the
+	 *            workspace
+	 * @param collection
+	 *            the collection of proxies to fill in
+	 * @param start
+	 *            the start time stamp, inclusive
+	 * @param end
+	 *            the end time stamp, inclusive
+	 * @param monitor
+	 *            the progress monitor to use
+	 * @param task
+	 *            the task label to use
+	 * @throws CoreException
+	 *             if an error occurs
+	 */
+	private static void readIndexedDescriptorProxies(final IFileStore store, final String project, final Collection collection, final long start, final long end, final IProgressMonitor monitor, final String task) throws CoreException {
+		try {
+			RefactoringHistoryIndex.getIndex(store).readRefactoringDescriptorProxies(project, collection, start, end, monitor);
+		} catch (CoreException exception) {
+			RefactoringCorePlugin.log(exception);
+			readRefactoringDescriptorProxies(store, project, collection, start, end, new NullProgressMonitor(), task);
+		}
+	}
+
 	/**
 	 * Reads refactoring descriptor proxies from the specified input stream.
 	 * <p>
@@ -768,17 +829,24 @@ public final class RefactoringHistoryManager {
 		writer.flush();
 	}
 
-	/** The cached session descriptor, or <code>null</code> */
-	private RefactoringSessionDescriptor fCachedDescriptor= null;
-
 	/** The cached document, or <code>null</code> */
 	private Document fCachedDocument= null;
 
 	/** The cached path, or <code>null</code> */
 	private IPath fCachedPath= null;
 
-	/** The cached file store, or <code>null</code> */
-	private IFileStore fCachedStore= null;
+	/**
+	 * The cached session descriptors (element type:
+	 * <code>&lt;IFileStore, CachedSession&gt;</code>)
+	 */
+	private final Map fCachedSessions= new LinkedHashMap(MAX_CACHED_SESSIONS, 0.75f, true) {
+
+		private static final long serialVersionUID= 1L;
+
+		protected final boolean removeEldestEntry(final Map.Entry entry) {
+			return size() > MAX_CACHED_SESSIONS;
+		}
+	};
 
 	/** The history file store */
 	private final IFileStore fHistoryStore;
@@ -895,6 +963,7 @@ public final class RefactoringHistoryManager {
 						throw createCoreException(exception);
 					}
 				}
+				RefactoringHistoryIndex.indexFileChanged(fHistoryStore, path.append(RefactoringHistoryService.NAME_INDEX_FILE));
 			}
 		} finally {
 			monitor.done();
@@ -928,26 +997,46 @@ public final class RefactoringHistoryManager {
 	}
 
 	/**
-	 * Returns the cached refactoring session descriptor.
+	 * Returns the cached refactoring session descriptor of the specified
+	 * history file, if the file has not changed since it has been read.
+	 *
+	 * @param store
+	 *            the file store of the descriptor
+	 * @param info
+	 *            the current file info of the store
+	 * @return the cached refactoring session descriptor, or <code>null</code>
+	 */
+	private RefactoringSessionDescriptor getCachedSession(final IFileStore store, final IFileInfo info) {
+		final CachedSession cached= (CachedSession) fCachedSessions.get(store);
+		if (cached == null)
+			return null;
+		if (info.exists() && cached.isCurrent(info))
+			return cached.fDescriptor;
+		fCachedSessions.remove(store);
+		return null;
+	}
+
+	/**
+	 * Reads the refactoring session descriptor of the specified history file
+	 * and caches it.
 	 *
 	 * @param store
 	 *            the file store of the descriptor
+	 * @param info
+	 *            the file info of the store
 	 * @param projectName
 	 *            project name, or <code>null</code> for the workspace
 	 * @param input
 	 *            the input stream where to read the descriptor
-	 * @return the cached refactoring session descriptor
+	 * @return the refactoring session descriptor
 	 * @throws CoreException
 	 *             if an error occurs while reading the session
 	 */
-	private RefactoringSessionDescriptor getCachedSession(final IFileStore store, String projectName, final InputStream input) throws CoreException {
-		if (store.equals(fCachedStore) && fCachedDescriptor != null)
-			return fCachedDescriptor;
+	private RefactoringSessionDescriptor readCachedSession(final IFileStore store, final IFileInfo info, String projectName, final InputStream input) throws CoreException {
 		final RefactoringSessionDescriptor descriptor;
 		try {
 			descriptor= new RefactoringSessionReader(false, projectName).readSession(new InputSource(input));
-			fCachedDescriptor= descriptor;
-			fCachedStore= store;
+			fCachedSessions.put(store, new CachedSession(descriptor, info));
 			return descriptor;
 		} catch (CoreException e) {
 			throw new CoreException(new MultiStatus(
@@ -959,6 +1048,27 @@ public final class RefactoringHistoryManager {
 		}
 	}
 
+	/**
+	 * Evicts the cached documents and session descriptors of the history files
+	 * in the specified folder and its sub folders.
+	 *
+	 * @param folder
+	 *            the removed folder
+	 */
+	private void evictCachedEntries(final IFileStore folder) {
+		if (fCachedPath != null) {
+			final IFileStore cached= fHistoryStore.getFileStore(fCachedPath);
+			if (folder.equals(cached) || folder.isParentOf(cached)) {
+				fCachedDocument= null;
+				fCachedPath= null;
+			}
+		}
+		for (final Iterator iterator= fCachedSessions.keySet().iterator(); iterator.hasNext();) {
+			if (folder.isParentOf((IFileStore) iterator.next()))
+				iterator.remove();
+		}
+	}
+
 	/**
 	 * Reads the refactoring history from disk.
 	 *
@@ -976,10 +1086,10 @@ public final class RefactoringHistoryManager {
 			final Set set= new HashSet();
 			try {
 				if (fHistoryStore.fetchInfo(EFS.NONE, new SubProgressMonitor(monitor, 20, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL)).exists())
-					readRefactoringDescriptorProxies(fHistoryStore, fProjectName, set, start, end, new SubProgressMonitor(monitor, 80), RefactoringCoreMessages.RefactoringHistoryService_retrieving_history);
+					readIndexedDescriptorProxies(fHistoryStore, fProjectName, set, start, end, new SubProgressMonitor(monitor, 80), RefactoringCoreMessages.RefactoringHistoryService_retrieving_history);
 				final IFileStore store= EFS.getLocalFileSystem().getStore(RefactoringCorePlugin.getDefault().getStateLocation()).getChild(RefactoringHistoryService.NAME_HISTORY_FOLDER).getChild(RefactoringHistoryService.NAME_WORKSPACE_PROJECT);
 				if (store.fetchInfo(EFS.NONE, new SubProgressMonitor(monitor, 20, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL)).exists())
-					readRefactoringDescriptorProxies(store, null, set, start, end, new SubProgressMonitor(monitor, 80), RefactoringCoreMessages.RefactoringHistoryService_retrieving_history);
+					readIndexedDescriptorProxies(store, null, set, start, end, new SubProgressMonitor(monitor, 80), RefactoringCoreMessages.RefactoringHistoryService_retrieving_history);
 			} catch (CoreException exception) {
 				RefactoringCorePlugin.log(exception);
 			}
@@ -1017,9 +1127,13 @@ public final class RefactoringHistoryManager {
 			if (index.fetchInfo(EFS.NONE, new SubProgressMonitor(monitor, 1, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL)).exists()) {
 				final Set resultingProxies= new HashSet(64);
 				readRefactoringDescriptorProxies(index, null, resultingProxies, 0, Long.MAX_VALUE, new SubProgressMonitor(monitor, 1), task);
-				if (resultingProxies.size() == proxies.length)
-					removeIndexTree(folder, new SubProgressMonitor(monitor, 1), task);
-				else {
+				if (resultingProxies.size() == proxies.length) {
+					try {
+						removeIndexTree(folder, new SubProgressMonitor(monitor, 1), task);
+					} finally {
+						evictCachedEntries(folder);
+					}
+				} else {
 					final IFileStore history= folder.getChild(RefactoringHistoryService.NAME_HISTORY_FILE);
 					if (history.fetchInfo(EFS.NONE, new SubProgressMonitor(monitor, 1, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL)).exists()) {
 						InputStream input= null;
@@ -1075,6 +1189,7 @@ public final class RefactoringHistoryManager {
 						} catch (IOException exception) {
 							throw createCoreException(exception);
 						}
+						RefactoringHistoryIndex.indexFileChanged(fHistoryStore, path.append(RefactoringHistoryService.NAME_INDEX_FILE));
 					}
 				}
 			}
@@ -1144,16 +1259,18 @@ public final class RefactoringHistoryManager {
 				try {
 					final IFileStore folder= fHistoryStore.getFileStore(stampToPath(stamp));
 					final IFileStore file= folder.getChild(RefactoringHistoryService.NAME_HISTORY_FILE);
-					if (file.fetchInfo(EFS.NONE, new SubProgressMonitor(monitor, 1, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL)).exists()) {
+					final IFileInfo info= file.fetchInfo(EFS.NONE, new SubProgressMonitor(monitor, 1, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL));
+					RefactoringSessionDescriptor descriptor= getCachedSession(file, info);
+					if (descriptor == null && info.exists()) {
 						input= new BufferedInputStream(file.openInputStream(EFS.NONE, new SubProgressMonitor(monitor, 1, SubProgressMonitor.SUPPRESS_SUBTASK_LABEL)));
-						final RefactoringSessionDescriptor descriptor= getCachedSession(file, fProjectName, input);
-						if (descriptor != null) {
-							final RefactoringDescriptor[] descriptors= descriptor.getRefactorings();
-							for (int index= 0; index < descriptors.length; index++) {
-								final RefactoringDescriptor refactoringDescriptor= descriptors[index];
-								if (refactoringDescriptor.getTimeStamp() == stamp) {
-									return refactoringDescriptor;
-								}
+						descriptor= readCachedSession(file, info, fProjectName, input);
+					}
+					if (descriptor != null) {
+						final RefactoringDescriptor[] descriptors= descriptor.getRefactorings();
+						for (int index= 0; index < descriptors.length; index++) {
+							final RefactoringDescriptor refactoringDescriptor= descriptors[index];
+							if (refactoringDescriptor.getTimeStamp() == stamp) {
+								return refactoringDescriptor;
 							}
 						}
 					}
@@ -1261,8 +1378,7 @@ public final class RefactoringHistoryManager {
 				} finally {
 					fCachedDocument= null;
 					fCachedPath= null;
-					fCachedDescriptor= null;
-					fCachedStore= null;
+					fCachedSessions.remove(file);
 				if (output != null) {
 					try {
 						output.close();
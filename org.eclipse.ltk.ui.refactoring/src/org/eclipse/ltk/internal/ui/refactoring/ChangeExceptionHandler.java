@@ -36,6 +36,7 @@ import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.ltk.core.refactoring.Change;
 import org.eclipse.ltk.core.refactoring.CompositeChange;
 import org.eclipse.ltk.core.refactoring.Refactoring;
+import org.eclipse.ltk.core.refactoring.StreamingChange;
 
 public class ChangeExceptionHandler {
 
@@ -92,20 +93,23 @@ public class ChangeExceptionHandler {
 	}
 
 	private void handle(Change change, IStatus status) {
+		Change undo= null;
 		if (change instanceof CompositeChange) {
-			Change undo= ((CompositeChange)change).getUndoUntilException();
-			if (undo != null) {
-				RefactoringUIPlugin.log(status);
-				final ErrorDialog dialog= new RefactorErrorDialog(fParent,
-						change.getName(),
-						Messages.format(RefactoringUIMessages.ChangeExceptionHandler_unexpected_exception, fName),
-						status, IStatus.OK | IStatus.INFO | IStatus.WARNING | IStatus.ERROR);
-				int result= dialog.open();
-				if (result == IDialogConstants.OK_ID) {
-					performUndo(undo);
-				}
-				return;
+			undo= ((CompositeChange)change).getUndoUntilException();
+		} else if (change instanceof StreamingChange) {
+			undo= ((StreamingChange)change).getUndoUntilException();
 		}
+		if (undo != null) {
+			RefactoringUIPlugin.log(status);
+			final ErrorDialog dialog= new RefactorErrorDialog(fParent,
+					change.getName(),
+					Messages.format(RefactoringUIMessages.ChangeExceptionHandler_unexpected_exception, fName),
+					status, IStatus.OK | IStatus.INFO | IStatus.WARNING | IStatus.ERROR);
+			int result= dialog.open();
+			if (result == IDialogConstants.OK_ID) {
+				performUndo(undo);
+			}
+			return;
 		}
 		ErrorDialog dialog= new ErrorDialog(fParent,
 				change.getName(),